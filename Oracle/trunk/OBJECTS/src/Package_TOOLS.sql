@@ -395,6 +395,35 @@ As
   Function ST_GetSridType(p_srid In integer)
     Return varchar2 deterministic;
 
+  /****f* TOOLS/ST_SC4O_Available
+  *  NAME
+  *    ST_SC4O_Available - Says whether the SC4O (Spatial Companion For Oracle) package can be called.
+  *  SYNOPSIS
+  *    Function ST_SC4O_Available
+  *      Return Integer;
+  *  DESCRIPTION
+  *    T_GEOMETRY methods hand some planar processing to the Java based SC4O package when it is installed.
+  *    SC4O is called dynamically so T_GEOMETRY installs and runs without it.
+  *    This function says whether a VALID SC4O package is in the current schema or is reached through a
+  *    private or public synonym. The answer is found once per current schema and kept for the rest of
+  *    the session, so methods can check it on every call without looking SC4O up (or failing to call it)
+  *    each time. It is looked up again if the current schema changes (eg ALTER SESSION SET CURRENT_SCHEMA
+  *    or a call through a definer's rights unit), as TOOLS runs with the caller's rights.
+  *  RESULT
+  *    BOOLEAN (INTEGER) -- 1 if SC4O can be called, else 0.
+  *  NOTES
+  *    A session that started before SC4O was installed (or granted) must reconnect to use it.
+  *  EXAMPLE
+  *    select TOOLS.ST_SC4O_Available() as sc4o_available
+  *      from dual;
+  *
+  *    SC4O_AVAILABLE
+  *    --------------
+  *                 1
+  ******/
+  Function ST_SC4O_Available
+    Return integer;
+
 END TOOLS;
 /
 show errors
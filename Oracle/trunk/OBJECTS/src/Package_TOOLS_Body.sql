@@ -10,6 +10,11 @@ ALTER SESSION SET PLSQL_WARNINGS='ERROR:ALL';
 CREATE OR REPLACE PACKAGE BODY &&INSTALL_SCHEMA..TOOLS
 AS
 
+  -- NULL until ST_SC4O_Available first looks for SC4O in this session.
+  -- TOOLS is AUTHID CURRENT_USER so the answer is kept for the schema it was found for.
+  g_sc4o_available pls_integer   := NULL;
+  g_sc4o_schema    varchar2(128) := NULL;
+
   Function ST_DB_Version
   Return number
   IS
@@ -173,6 +178,30 @@ AS
     RETURN v_srid_type;
   END ST_GetSridType;
 
+  Function ST_SC4O_Available
+    Return integer
+  As
+    v_schema varchar2(128) := SYS_CONTEXT('USERENV','CURRENT_SCHEMA');
+  Begin
+    If ( g_sc4o_available is null OR g_sc4o_schema <> v_schema ) Then
+      g_sc4o_schema := v_schema;
+      SELECT case when COUNT(*) > 0 then 1 else 0 end
+        INTO g_sc4o_available
+        FROM all_objects o
+       WHERE o.object_name = 'SC4O'
+         AND o.object_type = 'PACKAGE'
+         AND o.status      = 'VALID'
+         AND ( o.owner = v_schema
+               OR EXISTS (SELECT 1
+                            FROM all_synonyms s
+                           WHERE s.synonym_name = 'SC4O'
+                             AND s.owner        IN (v_schema,'PUBLIC')
+                             AND s.table_owner  = o.owner
+                             AND s.table_name   = o.object_name) );
+    End If;
+    Return g_sc4o_available;
+  End ST_SC4O_Available;
+
 END TOOLS;
 /
 show errors
@@ -5691,6 +5691,9 @@ AS OBJECT (
  *    All other Z values should be given values below 9. So, z=5 could denote a major road, while z=1 is a local street, and z=0 might mean a walking track.
  *    When determining the next point to move to, this z ordering is used in determining where to move.
  *    If the set of nearby objects contained a z=9 object, it would be removed from the set and the next highest chosen.
+ *    If SELF.projected = 1 and SC4O is installed, the route is built by SC4O.ST_TravellingSalesman which uses KdTree and STRtree
+ *    indexes and so is much faster for large point sets: there a fence linestring with Z of 9 (or every linestring of a 2D fence) is never crossed
+ *    unless all remaining points are fenced off, and p_unit is not used.
  *  ARGUMENTS
  *    p_start_gid          (integer) - A vertex that exists in the underlying geometry whose Z has this value.
  *    p_start_point (sdo_point_type) - A vertex that may not exist in the underlying geometry, algorithm finds nearest point in underlying geometry to start.
@@ -6203,6 +6206,8 @@ AS OBJECT (
  *      geom sdo_geometry -- The polygon geometry covering the area of the Tile.
  *    )
  *  NOTES
+ *    Planar (projected, p_unit null) 2D linestrings and polygons with TILE or BOTH grids are tiled by SC4O.ST_Tile
+ *    when it is installed: only tiles on the geometry's boundary are tested, interior tiles being returned whole.
  *    Following exceptions can the thrown:
  *      -20120 'Geometry must not be null or empty (*ERR*)'
  *      -20121 'Unsupported geometry type (*GTYPE*)'
@@ -6982,6 +6987,8 @@ AS OBJECT (
   *             Return &&INSTALL_SCHEMA..T_GEOMETRY Deterministic,
   *  DESCRIPTION
   *    Wrapper member function allowing split point to be determined by a measure
+  *    If SELF.projected = 1, p_unit is null, and SC4O is installed, the line is split by SC4O.ST_LRS_Split
+  *    which reads it once for both parts.
   *  SEE ALSO
   *    ST_Split(p_vetex in T_VERTEX...);
   *  ARGUMENTS
@@ -7422,6 +7429,8 @@ AS OBJECT (
   *    However, where ST_Snap may return more than one result point if p_point was
   *    equidistant from two separate segments/segments of the line-string, ST_Project_Point
   *    returns the first.
+  *    If SELF.projected = 1, p_unit is null, and SC4O is installed, the point is snapped by SC4O.ST_LRS_Project_Point
+  *    which searches an STRtree of the line's segments.
   *  ARGUMENTS
   *    p_point (MDSYS.SDO_GEOMETRY) - A point(2001) mdsys.sdo_geometry object describing the point for splitting the linestring.
   *    p_unit  (VarChar2)           - Unit of measure for distance calculations.
@@ -7449,6 +7458,8 @@ AS OBJECT (
   *  DESCRIPTION
   *    Given a point near a measured linestring, this function returns the measures
   *    of all lines that have same distance to the linestring.
+  *    If SELF.projected = 1, p_unit is null, SELF is measured, p_geom is a single point, p_measureN is 1 and SC4O is installed,
+  *    the measure is found by SC4O.ST_LRS_Find_Measure.
   *  ARGUMENTS
   *    p_geom     (MDSYS.SDO_GEOMETRY) - Geometry for which a measure is needed.
   *    p_measureN (Integer)            - Particular measure to be returned. 0 = all possible measures, 1 is the first etc.
@@ -7663,6 +7674,7 @@ AS OBJECT (
   *    the measure values of all in between coordinates. In addition, if p_shift_measure
   *    is not 0 (zero), the supplied value is added to each modified measure value
   *    performing a translation/shift of those values.
+  *    If SELF.projected = 1 and SC4O is installed, the measures are scaled by SC4O.ST_LRS_Scale_Measures.
   *  ARGUMENTS
   *    p_start_measure (Number) - Measure defining start point for geometry.
   *    p_end_measure   (Number) - Measure defining end point for geometry.
@@ -7905,6 +7917,8 @@ AS OBJECT (
   *  DESCRIPTION
   *    Given a measure or length, this function returns a mdsys.sdo_geometry point
   *    at that measure or offset the supplied amount.
+  *    If SELF.projected = 1, p_unit is null, and SC4O is installed, the point is located by SC4O.ST_LRS_Locate_Measure
+  *    which tables the line's measures once and finds the measure by binary search.
   *  NOTES
   *    Handles line-strings with reversed measures.
   *  ARGUMENTS
@@ -7988,6 +8002,7 @@ AS OBJECT (
   *    Given two measures or lengths, this function returns the point defined by
   *    those measure (if equal) or a line-string if not. The geometry may be offset
   *    the supplied amount.
+  *    If SELF.projected = 1, p_unit is null, and SC4O is installed, the segment is extracted by SC4O.ST_LRS_Locate_Between.
   *  NOTES
   *    Currently does not handle line-strings with reversed measures.
   *  ARGUMENTS
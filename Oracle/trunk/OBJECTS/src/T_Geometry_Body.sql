@@ -4325,6 +4325,23 @@ AS
       Return null;
     End If;
 
+    -- Planar data is routed by the KdTree based SC4O.ST_TravellingSalesman if it is installed.
+    If ( SELF.projected = 1 AND &&INSTALL_SCHEMA..TOOLS.ST_SC4O_Available() = 1 ) Then
+      If ( p_start_gid is null ) Then
+        v_current_point_geom := mdsys.sdo_geometry(case when p_start_point.z is null then 2001 else 3001 end,
+                                                   SELF.geom.sdo_srid,
+                                                   p_start_point,NULL,NULL);
+      End If;
+      EXECUTE IMMEDIATE 'SELECT SC4O.ST_TravellingSalesman(:1,:2,:3,:4,:5) FROM DUAL'
+                   INTO v_line_geom
+                  USING SELF.geom,
+                        p_start_gid,
+                        v_current_point_geom,
+                        p_geo_fence,
+                        SELF.dPrecision;
+      Return &&INSTALL_SCHEMA..T_GEOMETRY(v_line_geom,SELF.tolerance,SELF.dPrecision,SELF.projected);
+    End If;
+
     v_geo_fence       := NULL;
     v_geo_fence_class := 0;
     IF ( p_geo_fence IS NOT NULL ) THEN
@@ -6395,6 +6412,9 @@ SELECT CASE A.rin
     v_mbr            mdsys.sdo_geometry;
     v_geometry       mdsys.sdo_geometry;
     v_clip_tgeom     &&INSTALL_SCHEMA..T_GEOMETRY;
+    c_batch_size     Constant pls_integer := 10000;
+    v_grid_cursor    SYS_REFCURSOR;
+    v_grids          &&INSTALL_SCHEMA..T_Grids;
    Begin
     If ( SELF.ST_GType() NOT IN (1,2,3,5,6,7) ) THEN
        raise_application_error(c_i_unsupported,
@@ -6439,6 +6459,40 @@ SELECT CASE A.rin
        END LOOP;
        RETURN;
     End If;
+
+    -- Planar TILE/BOTH grids are generated by SC4O.ST_Tile if it is installed: only boundary tiles are tested.
+    -- Tiles are fetched, and piped, 10,000 at a time so the grid is not also held as one T_Grids collection.
+    If ( SELF.projected = 1 AND p_unit is null AND v_grid_type IN ('TILE','BOTH') AND SELF.ST_Dims() = 2 AND SELF.ST_HasCircularArcs() = 0 AND &&INSTALL_SCHEMA..TOOLS.ST_SC4O_Available() = 1 ) Then
+      BEGIN
+        OPEN v_grid_cursor
+         FOR 'SELECT &&INSTALL_SCHEMA..T_Grid(t.gcol,t.grow,t.geom) FROM TABLE(SC4O.ST_Tile(:1,:2,:3,:4,:5,:6)) t'
+       USING SELF.geom,
+             p_Tile_X,
+             p_Tile_Y,
+             v_grid_type,
+             v_option_value,
+             SELF.dPrecision;
+        LOOP
+          FETCH v_grid_cursor BULK COLLECT INTO v_grids LIMIT c_batch_size;
+          FOR i IN 1..v_grids.COUNT LOOP
+            PIPE ROW (v_grids(i));
+          END LOOP;
+          EXIT WHEN v_grids.COUNT < c_batch_size;
+        END LOOP;
+        CLOSE v_grid_cursor;
+        RETURN;
+        EXCEPTION
+          WHEN NO_DATA_NEEDED THEN
+            CLOSE v_grid_cursor;
+            RETURN;
+          WHEN OTHERS THEN
+            If ( v_grid_cursor%ISOPEN ) Then
+              CLOSE v_grid_cursor;
+            End If;
+            RAISE;
+      END;
+    End If;
+
     v_mbr := SELF.ST_MBR().geom;
     -- Check for horizontal/vertical
     if (v_mbr.sdo_ordinates(1+SELF.ST_Dims()) - v_mbr.sdo_ordinates(1) < p_Tile_X ) Then
@@ -7893,6 +7947,7 @@ SELECT CASE A.rin
     v_vertex         &&INSTALL_SCHEMA..t_Vertex;
     v_geom           mdsys.sdo_geometry;
     v_geometries     &&INSTALL_SCHEMA..T_Geometries := &&INSTALL_SCHEMA..T_Geometries(&&INSTALL_SCHEMA..T_GEOMETRY_ROW(0,NULL,SELF.tolerance,SELF.dPrecision,SELF.projected));
+    v_parts          mdsys.sdo_geometry_array;
   Begin
     if ( p_measure is null ) Then
        raise_application_error(c_i_null_measure,
@@ -7904,6 +7959,23 @@ SELECT CASE A.rin
     End If;
     v_geometries.DELETE;
     v_geometries.EXTEND(2);
+
+    -- Planar lines are split by SC4O.ST_LRS_Split if it is installed: the line is read once for both parts.
+    If ( SELF.projected = 1 AND p_unit is null AND SELF.ST_HasCircularArcs() = 0 AND &&INSTALL_SCHEMA..TOOLS.ST_SC4O_Available() = 1 ) Then
+      EXECUTE IMMEDIATE 'SELECT SC4O.ST_LRS_Split(:1,:2,:3) FROM DUAL'
+                   INTO v_parts
+                  USING SELF.geom,
+                        p_measure,
+                        SELF.dPrecision;
+      If ( v_parts is null ) Then
+        Return null;
+      End If;
+      FOR i IN 1..2 LOOP
+        v_geometries(i) := &&INSTALL_SCHEMA..T_GEOMETRY_ROW(i,v_parts(i),SELF.tolerance,SELF.dPrecision,SELF.projected);
+      END LOOP;
+      Return v_geometries;
+    End If;
+
     v_geometries(1) := &&INSTALL_SCHEMA..T_GEOMETRY_ROW(
                          1,
                          SELF.ST_LRS_Locate_Measures(
@@ -9684,6 +9756,7 @@ SELECT CASE A.rin
     v_sum_new_measure    number := 0.0;
     v_orig_start_measure number;
     v_orig_end_measure   number;
+    v_geom               mdsys.sdo_geometry;
   Begin
     if ( SELF.tolerance is null ) Then
        raise_application_error(c_i_null_tolerance,
@@ -9717,6 +9790,18 @@ SELECT CASE A.rin
 
     v_measure_range := v_orig_end_measure - v_orig_start_measure;
 
+    -- Planar measures are rescaled by SC4O.ST_LRS_Scale_Measures if it is installed.
+    If ( SELF.projected = 1 AND SELF.ST_HasCircularArcs() = 0 AND &&INSTALL_SCHEMA..TOOLS.ST_SC4O_Available() = 1 ) Then
+      EXECUTE IMMEDIATE 'SELECT SC4O.ST_LRS_Scale_Measures(:1,:2,:3,:4,:5) FROM DUAL'
+                   INTO v_geom
+                  USING SELF.geom,
+                        p_start_measure,
+                        p_end_measure,
+                        v_shift_measure,
+                        SELF.dPrecision;
+      Return case when v_geom is null then null else &&INSTALL_SCHEMA..T_GEOMETRY(v_geom,SELF.tolerance,SELF.dPrecision,SELF.projected) end;
+    End If;
+
     v_ordinates     := new mdsys.sdo_ordinate_array(1);
     v_ordinates.DELETE;
     v_ordinates.EXTEND(SELF.geom.sdo_ordinates.count);
@@ -9976,6 +10061,16 @@ SELECT CASE A.rin
                                          '*GTYPE2*','Point'),TRUE);
     End If;
 
+    -- The first measure of a single point on a planar measured line is found by SC4O.ST_LRS_Find_Measure if it is installed.
+    If ( SELF.projected = 1 AND p_unit is null AND SELF.ST_HasCircularArcs() = 0 AND SELF.ST_Lrs_Dim() > 0 AND v_geom.ST_GType() = 1 AND v_measureN = 1 AND &&INSTALL_SCHEMA..TOOLS.ST_SC4O_Available() = 1 ) Then
+      EXECUTE IMMEDIATE 'SELECT SC4O.ST_LRS_Find_Measure(:1,:2,:3) FROM DUAL'
+                   INTO v_measure
+                  USING SELF.geom,
+                        p_geom,
+                        SELF.dPrecision;
+      Return new mdsys.sdo_ordinate_array(v_measure);
+    End If;
+
     -- Use getVertices to convert passed in point/multipoint to a set of single vertices
     --
     v_vertices := mdsys.sdo_util.getVertices(p_geom);
@@ -10094,6 +10189,17 @@ SELECT CASE A.rin
                                          '*GTYPE1*',SELF.ST_GeometryType()),
                                          '*GTYPE2*','Linestring'),TRUE);
     End If;
+
+    -- Planar points are snapped by SC4O.ST_LRS_Project_Point (an STRtree of the segments) if it is installed.
+    If ( SELF.projected = 1 AND p_unit is null AND SELF.ST_HasCircularArcs() = 0 AND p_point is not null AND &&INSTALL_SCHEMA..TOOLS.ST_SC4O_Available() = 1 ) Then
+      EXECUTE IMMEDIATE 'SELECT SC4O.ST_LRS_Project_Point(:1,:2,:3) FROM DUAL'
+                   INTO v_point
+                  USING SELF.geom,
+                        p_point,
+                        SELF.dPrecision;
+      Return case when v_point is null then null else &&INSTALL_SCHEMA..T_GEOMETRY(v_point,SELF.tolerance,SELF.dPrecision,SELF.projected) end;
+    End If;
+
     v_geometries := SELF.ST_Snap(p_point,p_unit);
     if ( v_geometries is null or v_geometries.COUNT=0 ) Then
        Return null;
@@ -10126,6 +10232,7 @@ SELECT CASE A.rin
     v_measure_ord       pls_integer;
     v_coord_dimension   pls_integer;
     v_segments           &&INSTALL_SCHEMA..T_Segments;
+    v_geom               mdsys.sdo_geometry;
   Begin
     -- DEBUG dbms_output.put_line('ST_LRS_Locate_Measure');
     -- Only makes sense to snap a point to a linestring
@@ -10140,6 +10247,18 @@ SELECT CASE A.rin
        raise_application_error(c_i_null_tolerance,
                                c_s_null_tolerance,TRUE);
     End If;
+
+    -- Planar measures are located by SC4O.ST_LRS_Locate_Measure (a binary search of tabled measures) if it is installed.
+    If ( SELF.projected = 1 AND p_unit is null AND SELF.ST_HasCircularArcs() = 0 AND p_measure is not null AND &&INSTALL_SCHEMA..TOOLS.ST_SC4O_Available() = 1 ) Then
+      EXECUTE IMMEDIATE 'SELECT SC4O.ST_LRS_Locate_Measure(:1,:2,:3,:4) FROM DUAL'
+                   INTO v_geom
+                  USING SELF.geom,
+                        p_measure,
+                        NVL(p_offset,0),
+                        SELF.dPrecision;
+      Return case when v_geom is null then null else &&INSTALL_SCHEMA..T_GEOMETRY(v_geom,SELF.tolerance,SELF.dPrecision,SELF.projected) end;
+    End If;
+
     v_coord_dimension := SELF.ST_Dims();
     v_measure_ord     := SELF.ST_Lrs_Dim();
     v_num_elements    := SELF.ST_NumElements();
@@ -10411,6 +10530,18 @@ SELECT CASE A.rin
                                          p_unit    => p_unit);
     End If;
 
+    -- Planar segments are extracted by SC4O.ST_LRS_Locate_Between if it is installed.
+    If ( SELF.projected = 1 AND p_unit is null AND SELF.ST_HasCircularArcs() = 0 AND &&INSTALL_SCHEMA..TOOLS.ST_SC4O_Available() = 1 ) Then
+      EXECUTE IMMEDIATE 'SELECT SC4O.ST_LRS_Locate_Between(:1,:2,:3,:4,:5) FROM DUAL'
+                   INTO v_geom
+                  USING SELF.geom,
+                        p_start_measure,
+                        p_end_measure,
+                        NVL(p_offset,0),
+                        SELF.dPrecision;
+      Return case when v_geom is null then null else &&INSTALL_SCHEMA..T_GEOMETRY(v_geom,SELF.tolerance,SELF.dPrecision,SELF.projected) end;
+    End If;
+
     v_num_elements := SELF.ST_NumElements();
     -- DEBUG dbms_output.put_line('ST_LRS_Locate_Measures(' || p_start_measure || ',' || p_end_measure ||','||NVL(p_offset,0)||','||NVL(p_unit,'NO UNIT')||'), dPrecision=' || v_precision || ', tolerance=' || v_tolerance);
     -- DEBUG dbms_output.put_line('<FOR_ALL_ELEMENTS>');
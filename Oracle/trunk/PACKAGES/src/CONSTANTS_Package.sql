@@ -33,6 +33,15 @@ AS
   FUNCTION MinLong
     RETURN NUMBER;
 
+  /** Returns 1 if a VALID SC4O package is in the current schema or is reached through a
+  *   private or public synonym, else 0. Packages hand some processing to SC4O, calling it
+  *   dynamically so they install and run without it. The answer is found once per session and
+  *   current schema so callers can check it before each call rather than fail to call a missing SC4O.
+  *   It is looked up again if the current schema changes, as CONSTANTS runs with the caller's rights.
+  */
+  FUNCTION SC4O_Available
+    RETURN INTEGER;
+
   -- ###########################################################################
   -- Public Enumerations describing SDO_GEOMETRY structure
   -- ###########################################################################
@@ -313,6 +322,11 @@ show errors
 create or replace
 package body Constants AS
 
+  -- NULL until SC4O_Available first looks for SC4O in this session.
+  -- CONSTANTS is AUTHID CURRENT_USER so the answer is kept for the schema it was found for.
+  g_sc4o_available PLS_INTEGER   := NULL;
+  g_sc4o_schema    VARCHAR2(128) := NULL;
+
   Function PI
            Return number
   Is
@@ -348,6 +362,30 @@ package body Constants AS
      Return &&defaultSchema..constants.c_MinLong;
   End MinLong;
 
+  FUNCTION SC4O_Available
+           Return integer
+  Is
+    v_schema varchar2(128) := SYS_CONTEXT('USERENV','CURRENT_SCHEMA');
+  Begin
+     If ( g_sc4o_available is null OR g_sc4o_schema <> v_schema ) Then
+       g_sc4o_schema := v_schema;
+       SELECT case when COUNT(*) > 0 then 1 else 0 end
+         INTO g_sc4o_available
+         FROM all_objects o
+        WHERE o.object_name = 'SC4O'
+          AND o.object_type = 'PACKAGE'
+          AND o.status      = 'VALID'
+          AND ( o.owner = v_schema
+                OR EXISTS (SELECT 1
+                             FROM all_synonyms s
+                            WHERE s.synonym_name = 'SC4O'
+                              AND s.owner        IN (v_schema,'PUBLIC')
+                              AND s.table_owner  = o.owner
+                              AND s.table_name   = o.object_name) );
+     End If;
+     Return g_sc4o_available;
+  End SC4O_Available;
+
 end constants;
 /
 show errors
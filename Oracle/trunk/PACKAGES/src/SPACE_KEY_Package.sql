@@ -60,6 +60,9 @@ AS
     --               END;
     --               /
     -- @note       : Ignores any 3rd dimension.
+    -- @note       : With SC4O installed features are counted exactly, as stored; without it SDO_ANYINTERACT
+    --               also counts a feature within the layer's tolerance of a quad. A feature that only comes
+    --               within tolerance of a quad can therefore change the tiles produced.
     -- @history    : Simon Greener (SpatialDB Advisor) - March 2006 - Original Coding as a single function
     -- @history    : Simon Greener (SpatialDB Advisor) - June 2006  - Turned original code into an Oracle Package
     -- @copyright  : Licensed under a Creative Commons Attribution-Share Alike 2.5 Australia License. (http://creativecommons.org/licenses/by-sa/2.5/au/)
@@ -163,6 +166,8 @@ AS
     -- @return     : Geometries  : Table of 2003 Optimised Rectangle geometries.
     -- @rtnType    : Geometries  : &&defaultSchema..T_GeometrySet
     -- @note       : Ignores any 3rd dimension.
+    -- @note       : Cells are computed arithmetically and piped as generated, with no spatial test, so
+    --               there is no SC4O version: building each cell in Java would add a call per cell.
     -- @history    : Simon Greener - Aug 2006 - Original coding.
     -- @copyright  : Licensed under a Creative Commons Attribution-Share Alike 2.5 Australia License. (http://creativecommons.org/licenses/by-sa/2.5/au/)
  */
@@ -332,6 +337,48 @@ AS
     End If;
   END SetSQL;
 
+  -- Builds the whole quadtree with SC4O.ST_QuadTree and inserts its tiles in one statement.
+  -- SC4O reads the features once and tests each quad only against its parent's features,
+  -- rather than running a SDO_ANYINTERACT count per quad and inserting tiles one at a time.
+  -- Counts are exact (no tolerance), unlike the SDO_ANYINTERACT counts of the recursion.
+  -- Tiles are numbered from p_QuadId, as QuadTree numbers them.
+  -- Returns p_QuadId plus the number of tiles inserted (the next quad id, as QuadTree returns),
+  -- or NULL if SC4O is not installed (see CONSTANTS.SC4O_Available).
+  --
+  Function SC4OQuadTree( p_QuadId IN NUMBER,
+                         p_LL     IN MDSYS.SDO_POINT_TYPE,
+                         p_UR     IN MDSYS.SDO_POINT_TYPE )
+    Return INTEGER
+  Is
+    v_sql VARCHAR2(4000);
+  Begin
+    If ( &&defaultSchema..CONSTANTS.SC4O_Available() = 0 ) Then
+      Return NULL;
+    End If;
+    v_sql := 'INSERT INTO ' || v_TargetTable ||
+             ' (quad_id,quad_level,space_key,feature_count,xlo,ylo,xhi,yhi,' || v_TargetColumn || ') ' ||
+             'SELECT :1 + t.quad_id,t.quad_level,&&defaultSchema..SPACE_KEY.SPACE_KEY(MDSYS.SDO_POINT_TYPE(t.xlo,t.ylo,NULL),MDSYS.SDO_POINT_TYPE(t.xhi,t.yhi,NULL)),t.feature_count,t.xlo,t.ylo,t.xhi,t.yhi,';
+    If ( DBMS_DB_VERSION.VERSION < 10 ) OR ( v_format = c_SDO) Then
+      v_sql := v_sql || 'MDSYS.SDO_GEOMETRY(2003,' || v_SRID || ',NULL,' ||
+                        'MDSYS.SDO_ELEM_INFO_ARRAY(1,1003,3),MDSYS.SDO_ORDINATE_ARRAY(t.xlo,t.ylo,t.xhi,t.yhi))';
+    Else
+      v_sql := v_sql || 'MDSYS.ST_POLYGON.ST_BDPOLYFROMTEXT(''POLYGON(('' || t.xlo || '' '' || t.ylo || '', '' || ' ||
+                                                                         't.xhi || '' '' || t.ylo || '', '' || ' ||
+                                                                         't.xhi || '' '' || t.yhi || '', '' || ' ||
+                                                                         't.xlo || '' '' || t.yhi || '', '' || ' ||
+                                                                         't.xlo || '' '' || t.ylo || ''))'',' || v_SRID || ')';
+    End If;
+    v_sql := v_sql || '  FROM TABLE(SC4O.ST_QuadTree(CURSOR(SELECT a.' || v_SearchColumn || ' FROM ' || v_SearchTable || ' a),' ||
+                      ':2,:3,:4,:5,:6,:7)) t';
+    EXECUTE IMMEDIATE v_sql
+                USING p_QuadId,
+                      p_LL.X, p_LL.Y,
+                      p_UR.X, p_UR.Y,
+                      v_MaxQuadLevel,
+                      v_MaxCount;
+    Return p_QuadId + SQL%ROWCOUNT;
+  End SC4OQuadTree;
+
   Procedure SetGeom2SQLMM
   Is
   Begin
@@ -687,6 +734,13 @@ AS
     If ( p_QuadId = 0 And p_QuadLevel = 0 ) Then
       CreateTargetTableMetadata( MDSYS.SDO_DIM_ARRAY(MDSYS.SDO_DIM_ELEMENT('X',p_LL.X,p_UR.x,0.5),
                                                      MDSYS.SDO_DIM_ELEMENT('Y',p_LL.Y,p_UR.Y,0.5)) );
+      -- Build the whole tree in SC4O if it is installed
+      If ( v_MaxQuadLevel BETWEEN 1 AND 31 AND v_MaxCount >= 1 ) Then
+        v_QuadId := SC4OQuadTree( p_QuadId, p_LL, p_UR );
+        If ( v_QuadId IS NOT NULL ) Then
+          Return v_QuadId;
+        End If;
+      End If;
     End If;
     v_QuadId    := p_QuadId;
     v_QuadLevel := p_QuadLevel;
@@ -162,6 +162,63 @@ AS
                            p_digits_of_precision in Number,
                            p_commit              in Number );
 
+ /****f* EXPORTER/WriteShapefile(refCursor,SpatialIndex)
+  *  NAME
+  *    WriteShapefile -- Procedure that writes an ESRI shapefile, and optionally a spatial index, from an existing refcursor
+  *  SYNOPSIS
+  *  ARGUMENTS
+  *    As WriteShapefile(refCursor) plus
+  *    p_spatial_index       - 1 to also write a .qix quadtree spatial index; 0 not to.
+  *  DESCRIPTION
+  *    The .qix is the quadtree index created by MapServer's shptree utility.
+  *    MapServer, GDAL/OGR and GeoTools use it to read only the shapes in a requested extent
+  *    rather than scanning the whole .shp. It is built from the shapes as they are written
+  *    so no separate indexing step is needed.
+  *  NOTES
+  *    Throws Exception if anything goes wrong.
+  ******/
+  Procedure WriteShapefile(p_RefCursor           in &&defaultSchema..EXPORTER.refcur_t,
+                           p_output_dir          in VarChar2,
+                           p_file_name           in VarChar2,
+                           p_shape_type          in VarChar2,
+                           p_geometry_name       in VarChar2,
+                           p_ring_orientation    in VarChar2,
+                           p_dbase_type          in VarChar2,
+                           p_geometry_format     in VarChar2,
+                           p_prj_string          in VarChar2,
+                           p_digits_of_precision in Number,
+                           p_commit              in Number,
+                           p_spatial_index       in Number );
+
+ /****f* EXPORTER/WriteShapefile(refCursor,SpatialIndex,PartSize)
+  *  NAME
+  *    WriteShapefile -- Procedure that writes an ESRI shapefile as one or more parts of limited size from an existing refcursor
+  *  SYNOPSIS
+  *  ARGUMENTS
+  *    As WriteShapefile(refCursor,SpatialIndex) plus
+  *    p_part_size_mb        - Size in megabytes at which a new part is started; 0 never splits.
+  *                            1907 is just under the 2GB limit.
+  *  DESCRIPTION
+  *    No .shp or .dbf may exceed 2GB. When the .shp or .dbf being written reaches p_part_size_mb,
+  *    it is closed and writing continues in p_file_name_001, p_file_name_002 etc.
+  *    Each part is a complete shapefile with its own .shx, .dbf, .prj and .qix.
+  *  NOTES
+  *    Throws Exception if anything goes wrong.
+  ******/
+  Procedure WriteShapefile(p_RefCursor           in &&defaultSchema..EXPORTER.refcur_t,
+                           p_output_dir          in VarChar2,
+                           p_file_name           in VarChar2,
+                           p_shape_type          in VarChar2,
+                           p_geometry_name       in VarChar2,
+                           p_ring_orientation    in VarChar2,
+                           p_dbase_type          in VarChar2,
+                           p_geometry_format     in VarChar2,
+                           p_prj_string          in VarChar2,
+                           p_digits_of_precision in Number,
+                           p_commit              in Number,
+                           p_spatial_index       in Number,
+                           p_part_size_mb        in Number );
+
  /****f* EXPORTER/WriteShapefile(varchar2)
   *  NAME
   *    WriteShapefile -- Procedure that writes an ESRI shapefile from a SQL SELECT statement (string)
@@ -182,6 +239,9 @@ AS
   *                            If you do not have a valid PRJ file/string visit http://www.spatialreference.org/
   *    p_digits_of_precision - number of decimal places of ordinates
   *    p_commit              - When to write batch to disk
+  *    p_spatial_index       - 1 to also write a .qix quadtree spatial index (MapServer shptree format)
+  *    p_part_size_mb        - Size in megabytes at which p_file_name_001, p_file_name_002 ... are started;
+  *                            0 never splits. The default, 1907, is just under the 2GB limit of a .shp or .dbf.
   *  DESCRIPTION
   *  NOTES
   *    Throws Exception if anything goes wrong.
@@ -202,7 +262,45 @@ AS
                            p_geometry_format     in VarChar2 := &&defaultSchema..EXPORTER.c_WKT,
                            p_prj_string          in VarChar2 := NULL,
                            p_digits_of_precision in Number   := 3,
-                           p_commit              in Number   := 100 );
+                           p_commit              in Number   := 100,
+                           p_spatial_index       in Number   := 0,
+                           p_part_size_mb        in Number   := 1907 );
+
+ /****f* EXPORTER/WriteShapefileParts
+  *  NAME
+  *    WriteShapefileParts -- Procedure that writes the rows of a SQL SELECT statement as N shapefiles concurrently
+  *  SYNOPSIS
+  *  ARGUMENTS
+  *    p_sql                 - A SELECT Statement that include a geometry column.
+  *    p_partition_key       - Column of p_sql's select list used to allocate rows to parts.
+  *                            If NULL, ROWID is used (p_sql must then select from a single table).
+  *    p_parts               - Number of parts to write.
+  *    Others as WriteShapefile(varchar2).
+  *  DESCRIPTION
+  *    Part i (p_file_name_001 ... ) holds the rows of p_sql for which ORA_HASH(p_partition_key,p_parts-1) = i-1,
+  *    so every row is written to exactly one part. Parts are written by separate threads, each
+  *    with its own query. Any part reaching p_part_size_mb is itself split (p_file_name_001_001 ...).
+  *  NOTES
+  *    Throws Exception if anything goes wrong.
+  *    Threads do not run concurrently inside the Oracle JVM so, inside the database, parts are
+  *    effectively written in turn. Called from a Java client (WriteSHPFile.write(Connection[],...))
+  *    with a connection per part, the parts are read and written in parallel.
+  ******/
+  Procedure WriteShapefileParts(p_sql                 in VarChar2,
+                                p_partition_key       in VarChar2,
+                                p_parts               in Number,
+                                p_output_dir          in VarChar2,
+                                p_file_name           in VarChar2,
+                                p_shape_type          in VarChar2,
+                                p_geometry_name       in VarChar2,
+                                p_ring_orientation    in VarChar2 := &&defaultSchema..EXPORTER.c_Ring_Inverse,
+                                p_dbase_type          in VarChar2 := &&defaultSchema..EXPORTER.c_DBASEIII,
+                                p_geometry_format     in VarChar2 := &&defaultSchema..EXPORTER.c_WKT,
+                                p_prj_string          in VarChar2 := NULL,
+                                p_digits_of_precision in Number   := 3,
+                                p_commit              in Number   := 100,
+                                p_spatial_index       in Number   := 0,
+                                p_part_size_mb        in Number   := 1907 );
 
  /****f* EXPORTER/WriteTabFile(RefCursor)
   *  NAME
@@ -337,6 +435,55 @@ AS
                            p_digits_of_precision in Number,
                            p_commit              in Number);
 
+ /****f* EXPORTER/WriteKMLFile(RefCursor,KMZ)
+  *  NAME
+  *    WriteKMLFile -- Exports SQL Select refCursor to KML or KMZ file.
+  *  SYNOPSIS
+  *  ARGUMENTS
+  *    p_kmz (Number) -- 1 writes a KMZ file (KML deflated into a zip as doc.kml) with extension .kmz; 0 writes KML.
+  *  RETURNS
+  *  DESCRIPTION
+  *    As WriteKMLFile but the KML document can be written compressed, as a KMZ.
+  *    The document is deflated as it is written: no temporary KML file is created.
+  ******/
+  Procedure WriteKMLFile(  p_RefCursor           in &&defaultSchema..EXPORTER.refcur_t,
+                           p_output_dir          in VarChar2,
+                           p_file_name           in VarChar2,
+                           p_geometry_name       in VarChar2,
+                           p_date_format         in VarChar2, /* Java SimpleDateFormat */
+                           p_geometry_format     in VarChar2,
+                           p_digits_of_precision in Number,
+                           p_commit              in Number,
+                           p_kmz                 in Number);
+
+ /****f* EXPORTER/WriteKMLFile(RefCursor,SuperOverlay)
+  *  NAME
+  *    WriteKMLFile -- Exports SQL Select refCursor to a KML super-overlay (Region based tiles).
+  *  SYNOPSIS
+  *  ARGUMENTS
+  *    p_kmz           (Number) -- 1 writes each document as a KMZ; 0 writes KML.
+  *    p_tile_features (Number) -- Placemarks in a tile before it is split into four; 0 writes a single document.
+  *  RETURNS
+  *  DESCRIPTION
+  *    Large layers written as one KML document are slow or impossible for viewers to load.
+  *    With p_tile_features > 0 the layer's extent is divided into a quadtree of tiles, each a
+  *    KML document with a Region and NetworkLinks to its child tiles. The file p_file_name
+  *    holds the top tile; the others are written to the directory <p_file_name>_tiles.
+  *    Tiles above the leaves hold the largest placemarks with geometry simplified to one pixel,
+  *    so a viewer loads only the tiles in view at a level of detail suiting the scale.
+  *    Geometries must be longitude/latitude (eg SRID 4326).
+  ******/
+  Procedure WriteKMLFile(  p_RefCursor           in &&defaultSchema..EXPORTER.refcur_t,
+                           p_output_dir          in VarChar2,
+                           p_file_name           in VarChar2,
+                           p_geometry_name       in VarChar2,
+                           p_date_format         in VarChar2, /* Java SimpleDateFormat */
+                           p_geometry_format     in VarChar2,
+                           p_digits_of_precision in Number,
+                           p_commit              in Number,
+                           p_kmz                 in Number,
+                           p_tile_features       in Number);
+
  /****f* EXPORTER/WriteGeoJson(RefCursor)
   *  NAME
   *    WriteGeoJson - Writes result of SQL Select to a GeoJson file.
@@ -442,6 +589,7 @@ AS
   *    p_dateFormat          - Format for output dates
   *    p_timeFormat          - Format for output times
   *    p_digits_of_precision - Number of decimal places of coordinates
+  *    p_xlsx                - 1 writes an Excel 2007 (.xlsx) workbook, 0 (default) an XLS workbook.
   *  DESCRIPTION
   *    Creates and writes an Excel XLS format spreadsheet from the passed in resultSet.
   *    Overflow of resultSet across Sheets is controlled by _stratification.
@@ -456,9 +604,13 @@ AS
   *
   *    If > MAX_COLS exist and _stratification is H or N then only 255 columns will be output in
   *    the first sheet: if > MAX_ROWS also exists then overflow is controlled by _stratification = H or N.
+  *
+  *    If p_xlsx is 1 an .xlsx workbook is streamed to disk a row at a time so memory use does not
+  *    grow with the number of rows. Sheets hold up to 1,048,576 rows (MAX_ROWS) and 16,384 columns:
+  *    a new sheet is started every 1,048,576 rows whatever the _stratification, so no row is lost.
+  *    Sheet names are made unique within their first 31 characters.
   *  NOTES
-  *    Does not write any modern XML format spreadsheets.
-  *    Maximum size of an Excel spreadsheet cell is 32768 characters.
+  *    Maximum size of an Excel spreadsheet cell is 32767 characters.
   *  AUTHOR
   *    Simon Greener
   *  HISTORY
@@ -475,7 +627,8 @@ AS
                              p_DateFormat          In varchar2 default &&defaultSchema..EXPORTER.c_DATEFORMAT,
                              p_TimeFormat          In varchar2 default &&defaultSchema..EXPORTER.c_TIMEFORMAT,
                              p_charSetName         In varchar  default 'US-ASCII',
-                             p_digits_of_precision In number   default 7
+                             p_digits_of_precision In number   default 7,
+                             p_xlsx                In number   default 0
                            );
 
   /****f* EXPORTER/writeSpreadsheet(varchar2)
@@ -492,6 +645,7 @@ AS
   *    p_dateFormat          - Format for output dates
   *    p_timeFormat          - Format for output times
   *    p_digits_of_precision - Number of decimal places of coordinates
+  *    p_xlsx                - 1 writes an Excel 2007 (.xlsx) workbook, 0 (default) an XLS workbook.
   *  DESCRIPTION
   *    Creates and writes an Excel XLS format spreadsheet from the passed in resultSet.
   *    Overflow of resultSet across Sheets is controlled by _stratification.
@@ -506,9 +660,13 @@ AS
   *
   *    If > MAX_COLS exist and _stratification is H or N then only 255 columns will be output in
   *    the first sheet: if > MAX_ROWS also exists then overflow is controlled by _stratification = H or N.
+  *
+  *    If p_xlsx is 1 an .xlsx workbook is streamed to disk a row at a time so memory use does not
+  *    grow with the number of rows. Sheets hold up to 1,048,576 rows (MAX_ROWS) and 16,384 columns:
+  *    a new sheet is started every 1,048,576 rows whatever the _stratification, so no row is lost.
+  *    Sheet names are made unique within their first 31 characters.
   *  NOTES
-  *    Does not write any modern XML format spreadsheets.
-  *    Maximum size of an Excel spreadsheet cell is 32768 characters.
+  *    Maximum size of an Excel spreadsheet cell is 32767 characters.
   *  AUTHOR
   *    Simon Greener
   *  HISTORY
@@ -525,7 +683,8 @@ AS
                              p_DateFormat          In varchar2 default &&defaultSchema..EXPORTER.c_DATEFORMAT,
                              p_TimeFormat          In varchar2 default &&defaultSchema..EXPORTER.c_TIMEFORMAT,
                              p_charSetName         In varchar  default 'US-ASCII',
-                             p_digits_of_precision In number   default 7);
+                             p_digits_of_precision In number   default 7,
+                             p_xlsx                In number   default 0);
 
  /****f* EXPORTER/RunCommand
   *  NAME
@@ -548,6 +707,21 @@ AS
   Function RunCommand( p_command in varchar2 )
     Return Number Deterministic;
 
+ /****f* EXPORTER/SetFetchMemoryBudget
+  *  NAME
+  *    SetFetchMemoryBudget -- Sets how much data each fetch from an export's cursor should hold.
+  *  SYNOPSIS
+  *    Procedure SetFetchMemoryBudget(p_bytes in number);
+  *  ARGUMENTS
+  *    p_bytes - Bytes per fetch; 0 or less restores the default of 4194304 (4MB).
+  *  DESCRIPTION
+  *    The Write procedures choose the fetch size of their cursor so each fetch holds about p_bytes,
+  *    adjusting it from the measured size of the first rows read. Wide rows (large geometries)
+  *    therefore get small fetches and narrow rows large ones.
+  *    Applies to the rest of the session, and to SC4O's cursor based functions (see SC4O.ST_SetFetchMemoryBudget).
+  ******/
+  Procedure SetFetchMemoryBudget(p_bytes in number);
+
 End Exporter;
 /
 SHOW ERRORS
@@ -572,6 +746,37 @@ AS
   As language java name
      'com.spdba.dbutils.io.exp.shp.WriteSHPFile.write(java.sql.ResultSet,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,int,int)';
 
+  Procedure WriteShapefile(p_RefCursor           in &&defaultSchema..EXPORTER.refcur_t,
+                           p_output_dir          in VarChar2,
+                           p_file_name           in VarChar2,
+                           p_shape_type          in VarChar2,
+                           p_geometry_name       in VarChar2,
+                           p_ring_orientation    in VarChar2,
+                           p_dbase_type          in VarChar2,
+                           p_geometry_format     in VarChar2,
+                           p_prj_string          in VarChar2,
+                           p_digits_of_precision in Number,
+                           p_commit              in Number,
+                           p_spatial_index       in Number )
+  As language java name
+     'com.spdba.dbutils.io.exp.shp.WriteSHPFile.write(java.sql.ResultSet,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,int,int,int)';
+
+  Procedure WriteShapefile(p_RefCursor           in &&defaultSchema..EXPORTER.refcur_t,
+                           p_output_dir          in VarChar2,
+                           p_file_name           in VarChar2,
+                           p_shape_type          in VarChar2,
+                           p_geometry_name       in VarChar2,
+                           p_ring_orientation    in VarChar2,
+                           p_dbase_type          in VarChar2,
+                           p_geometry_format     in VarChar2,
+                           p_prj_string          in VarChar2,
+                           p_digits_of_precision in Number,
+                           p_commit              in Number,
+                           p_spatial_index       in Number,
+                           p_part_size_mb        in Number )
+  As language java name
+     'com.spdba.dbutils.io.exp.shp.WriteSHPFile.write(java.sql.ResultSet,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,int,int,int,int)';
+
   Procedure WriteShapefile(p_sql                 in VarChar2,
                            p_output_dir          in VarChar2,
                            p_file_name           in VarChar2,
@@ -582,7 +787,9 @@ AS
                            p_geometry_format     in VarChar2 := &&defaultSchema..EXPORTER.c_WKT,
                            p_prj_string          in VarChar2 := NULL,
                            p_digits_of_precision in Number   := 3,
-                           p_commit              in Number   := 100 )
+                           p_commit              in Number   := 100,
+                           p_spatial_index       in Number   := 0,
+                           p_part_size_mb        in Number   := 1907 )
   As
     c_refcursor GIS.EXPORTER.refcur_t;
   Begin
@@ -598,10 +805,30 @@ AS
               p_geometry_format     => p_geometry_format,
               p_prj_string          => p_prj_string,
               p_digits_of_precision => p_digits_of_precision,
-              p_commit              => p_commit
+              p_commit              => p_commit,
+              p_spatial_index       => p_spatial_index,
+              p_part_size_mb        => p_part_size_mb
     );
   End WriteShapefile;
 
+  Procedure WriteShapefileParts(p_sql                 in VarChar2,
+                                p_partition_key       in VarChar2,
+                                p_parts               in Number,
+                                p_output_dir          in VarChar2,
+                                p_file_name           in VarChar2,
+                                p_shape_type          in VarChar2,
+                                p_geometry_name       in VarChar2,
+                                p_ring_orientation    in VarChar2 := &&defaultSchema..EXPORTER.c_Ring_Inverse,
+                                p_dbase_type          in VarChar2 := &&defaultSchema..EXPORTER.c_DBASEIII,
+                                p_geometry_format     in VarChar2 := &&defaultSchema..EXPORTER.c_WKT,
+                                p_prj_string          in VarChar2 := NULL,
+                                p_digits_of_precision in Number   := 3,
+                                p_commit              in Number   := 100,
+                                p_spatial_index       in Number   := 0,
+                                p_part_size_mb        in Number   := 1907 )
+  As language java name
+     'com.spdba.dbutils.io.exp.shp.WriteSHPFile.write(java.lang.String,java.lang.String,int,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,int,int,int,int)';
+
   Procedure WriteTabfile(p_RefCursor           in &&defaultSchema..EXPORTER.refcur_t,
                          p_output_dir          in VarChar2,
                          p_file_name           in VarChar2,
@@ -660,6 +887,31 @@ AS
   As language java name
      'com.spdba.dbutils.io.exp.kml.WriteKMLFile.write(java.sql.ResultSet,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,int,int)';
 
+  Procedure WriteKMLFile(  p_RefCursor           in &&defaultSchema..EXPORTER.refcur_t,
+                           p_output_dir          in VarChar2,
+                           p_file_name           in VarChar2,
+                           p_geometry_name       in VarChar2,
+                           p_date_format         in VarChar2, /* Java SimpleDateFormat */
+                           p_geometry_format     in VarChar2,
+                           p_digits_of_precision in NUMBER,
+                           p_commit              in Number,
+                           p_kmz                 in Number)
+  As language java name
+     'com.spdba.dbutils.io.exp.kml.WriteKMLFile.write(java.sql.ResultSet,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,int,int,int)';
+
+  Procedure WriteKMLFile(  p_RefCursor           in &&defaultSchema..EXPORTER.refcur_t,
+                           p_output_dir          in VarChar2,
+                           p_file_name           in VarChar2,
+                           p_geometry_name       in VarChar2,
+                           p_date_format         in VarChar2, /* Java SimpleDateFormat */
+                           p_geometry_format     in VarChar2,
+                           p_digits_of_precision in NUMBER,
+                           p_commit              in Number,
+                           p_kmz                 in Number,
+                           p_tile_features       in Number)
+  As language java name
+     'com.spdba.dbutils.io.exp.kml.WriteKMLFile.write(java.sql.ResultSet,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,int,int,int,int)';
+
   Procedure WriteGeoJson(  p_RefCursor             in &&defaultSchema..EXPORTER.refcur_t,
                            p_output_dir            in VarChar2,
                            p_file_name             in VarChar2,
@@ -712,9 +964,10 @@ AS
                                  p_DateFormat          In varchar2,
                                  p_TimeFormat          In varchar2,
                                  p_charSetName         In varchar,
-                                 p_digits_of_precision In number)
+                                 p_digits_of_precision In number,
+                                 p_xlsx                In number)
   As language java name
-     'com.spdba.dbutils.io.exp.spreadsheet.WriteExcelFile.write(java.sql.ResultSet,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,int)';
+     'com.spdba.dbutils.io.exp.spreadsheet.WriteExcelFile.write(java.sql.ResultSet,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,java.lang.String,int,int)';
 
   Procedure writeSpreadsheet(p_RefCursor            In &&defaultSchema..EXPORTER.refcur_t,
                              p_outputDirectory     In VarChar2,
@@ -725,7 +978,8 @@ AS
                              p_DateFormat          In varchar2 default &&defaultSchema..EXPORTER.c_DATEFORMAT,
                              p_TimeFormat          In varchar2 default &&defaultSchema..EXPORTER.c_TIMEFORMAT,
                              p_charSetName         In varchar  default 'US-ASCII',
-                             p_digits_of_precision In number   default 7)
+                             p_digits_of_precision In number   default 7,
+                             p_xlsx                In number   default 0)
   As
   Begin
     WriteSpreadsheetIMPL(p_RefCursor,
@@ -737,7 +991,8 @@ AS
                          p_DateFormat,
                          p_TimeFormat,
                          p_charSetName,
-                         p_digits_of_precision);
+                         p_digits_of_precision,
+                         p_xlsx);
   End writeSpreadsheet;
 
   Procedure writeSpreadsheet(p_sql                 In VarChar2,
@@ -749,7 +1004,8 @@ AS
                              p_DateFormat          In varchar2 default &&defaultSchema..EXPORTER.c_DATEFORMAT,
                              p_TimeFormat          In varchar2 default &&defaultSchema..EXPORTER.c_TIMEFORMAT,
                              p_charSetName         In varchar  default 'US-ASCII',
-                             p_digits_of_precision In number   default 7)
+                             p_digits_of_precision In number   default 7,
+                             p_xlsx                In number   default 0)
   As
     c_refcursor GIS.EXPORTER.refcur_t;
   Begin
@@ -763,7 +1019,8 @@ AS
                          p_DateFormat,
                          p_TimeFormat,
                          p_charSetName,
-                         p_digits_of_precision);
+                         p_digits_of_precision,
+                         p_xlsx);
   End writeSpreadsheet;
 
   Procedure ExportTables(p_tables       In &&defaultSchema..EXPORTER.tablist_t,
@@ -910,6 +1167,10 @@ AS
         As language java name
            'com.spdba.dbutils.tools.FileUtils.RunCommand(java.lang.String) return int';
 
+  Procedure SetFetchMemoryBudget(p_bytes in number)
+        As language java name
+           'com.spdba.dbutils.sql.FetchSizer.setDefaultMemoryBudget(long)';
+
 END Exporter;
 /
 SHOW ERRORS
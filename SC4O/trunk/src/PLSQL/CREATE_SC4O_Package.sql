@@ -4,6 +4,72 @@ SET VERIFY OFF;
 
 WHENEVER SQLERROR EXIT FAILURE;
 
+create or replace type &&defaultSchema..T_BlobSet
+As Table Of BLOB;
+/
+show errors
+
+create or replace type &&defaultSchema..T_JoinPair
+As Object (
+  id1      varchar2(4000),
+  id2      varchar2(4000),
+  relation varchar2(4000)
+);
+/
+show errors
+
+create or replace type &&defaultSchema..T_JoinPairSet
+As Table Of &&defaultSchema..T_JoinPair;
+/
+show errors
+
+create or replace type &&defaultSchema..T_LocatedEvent
+As Object (
+  route_id varchar2(4000),
+  event_id varchar2(4000),
+  geom     mdsys.sdo_geometry
+);
+/
+show errors
+
+create or replace type &&defaultSchema..T_LocatedEventSet
+As Table Of &&defaultSchema..T_LocatedEvent;
+/
+show errors
+
+create or replace type &&defaultSchema..T_QuadTile
+As Object (
+  quad_id       number,
+  quad_level    number,
+  morton_key    number,
+  feature_count number,
+  xlo           number,
+  ylo           number,
+  xhi           number,
+  yhi           number
+);
+/
+show errors
+
+create or replace type &&defaultSchema..T_QuadTileSet
+As Table Of &&defaultSchema..T_QuadTile;
+/
+show errors
+
+create or replace type &&defaultSchema..T_GridCell
+As Object (
+  gcol  number,
+  grow  number,
+  geom  mdsys.sdo_geometry
+);
+/
+show errors
+
+create or replace type &&defaultSchema..T_GridCellSet
+As Table Of &&defaultSchema..T_GridCell;
+/
+show errors
+
 create or replace
 package SC4O
 AUTHID CURRENT_USER
@@ -1334,6 +1400,7 @@ AS
   *  NOTES
   *    LICENSE is Creative Commons Attribution-Share Alike 2.5 Australia License.
   *               http://creativecommons.org/licenses/by-sa/2.5/au/
+  *    Converted geometries are cached for the session: see ST_PreparedCacheStatistics.
   ******/
   Function ST_Relate(p_geom1     in mdsys.sdo_geometry,
                      p_mask      in varchar2,
@@ -1341,6 +1408,126 @@ AS
                      p_precision in number)
     Return varchar2 Deterministic;
 
+ /****f* SC4O/ST_PreparedCacheStatistics
+  *  NAME
+  *    ST_PreparedCacheStatistics - Reports use of the cache of geometries compared by ST_Relate.
+  *  SYNOPSIS
+  *    Function ST_PreparedCacheStatistics
+  *      Return varchar2;
+  *  DESCRIPTION
+  *    ST_Relate keeps the most recently compared geometries, converted, validated and
+  *    reduced to the precision, in a cache held by the session. A geometry compared with
+  *    many others (eg a query polygon) is then converted once and, after its first use, is
+  *    prepared so that ANYINTERACT, INTERSECTS, DISJOINT, CONTAINS, COVERS, WITHIN and COVEREDBY
+  *    masks are answered with JTS prepared geometry predicates.
+  *    This function reports the cache's hits, misses and number of entries.
+  *  RESULT
+  *    Statistics (varchar2) - eg hits=9999,misses=10001,entries=64
+  *  EXAMPLE
+  *    Select SC4O.ST_PreparedCacheStatistics() as stats from dual;
+  *
+  *    STATS
+  *    ------------------------------
+  *    hits=9999,misses=10001,entries=64
+  ******/
+  Function ST_PreparedCacheStatistics
+    Return varchar2;
+
+ /****f* SC4O/ST_PreparedCacheClear
+  *  NAME
+  *    ST_PreparedCacheClear - Empties the cache of geometries compared by ST_Relate and resets its counters.
+  *  SYNOPSIS
+  *    Procedure ST_PreparedCacheClear;
+  ******/
+  Procedure ST_PreparedCacheClear;
+
+ /****f* SC4O/ST_SetPreparedCacheSize
+  *  NAME
+  *    ST_SetPreparedCacheSize - Sets the number of geometries ST_Relate keeps in its cache.
+  *  SYNOPSIS
+  *    Procedure ST_SetPreparedCacheSize(p_entries in number);
+  *  DESCRIPTION
+  *    The default is 64. The least recently used geometries are discarded first.
+  *    A size of 0 turns the cache off.
+  *  ARGUMENTS
+  *    p_entries (integer) -- Number of geometries to keep.
+  ******/
+  Procedure ST_SetPreparedCacheSize(p_entries in number);
+
+ /****f* SC4O/ST_SetFetchMemoryBudget
+  *  NAME
+  *    ST_SetFetchMemoryBudget - Sets how much data each cursor fetch made by SC4O should hold.
+  *  SYNOPSIS
+  *    Procedure ST_SetFetchMemoryBudget(p_bytes in number);
+  *  DESCRIPTION
+  *    The functions that read a cursor (ST_AggrUnionPolygons, ST_SpatialJoin etc) choose its
+  *    fetch size so each fetch holds about p_bytes, adjusting it from the measured size of the
+  *    first rows read. The default is 4194304 (4MB). Applies to the rest of the session,
+  *    including the EXPORTER package's Write procedures (see EXPORTER.SetFetchMemoryBudget).
+  *  ARGUMENTS
+  *    p_bytes (integer) -- Bytes per fetch; 0 or less restores the default.
+  ******/
+  Procedure ST_SetFetchMemoryBudget(p_bytes in number);
+
+ /****f* SC4O/ST_SpatialJoin
+  *  NAME
+  *    ST_SpatialJoin - Finds the pairs of geometries in two sets that have a spatial relationship.
+  *  SYNOPSIS
+  *    Function ST_SpatialJoin(p_resultSet1 in &&defaultSchema..SC4O.refcur_t,
+  *                            p_resultSet2 in &&defaultSchema..SC4O.refcur_t,
+  *                            p_mask       in varchar2,
+  *                            p_precision  in number)
+  *      Return &&defaultSchema..T_JoinPairSet Pipelined;
+  *    Function ST_SpatialJoin(p_geomSet1   in mdsys.sdo_geometry_array,
+  *                            p_geomSet2   in mdsys.sdo_geometry_array,
+  *                            p_mask       in varchar2,
+  *                            p_precision  in number)
+  *      Return &&defaultSchema..T_JoinPairSet Pipelined;
+  *  DESCRIPTION
+  *    Relates two sets of geometries in one call rather than calling ST_Relate for each pair.
+  *    The second set is loaded into an STRtree index. Each geometry of the first set is prepared
+  *    and related, as ST_Relate would, to each geometry of the second set whose envelope it interacts with.
+  *    A pair is returned if the result is not FALSE (or DISJOINT for DETERMINE).
+  *    Each geometry is converted once, so joining n geometries to m costs n + m conversions
+  *    and one call instead of n * m.
+  *    A cursor is read from its first sdo_geometry column; the id of each row is its first other column,
+  *    or the row number if there is none. The ids of array elements are their positions.
+  *  ARGUMENTS
+  *    p_resultSet1   (refcur_t) -- Cursor of the first set eg select id, geom from parcels
+  *    p_resultSet2   (refcur_t) -- Cursor of the second set, which is indexed.
+  *    p_geomSet1  (sdo_geometry_array) -- First set of geometries
+  *    p_geomSet2  (sdo_geometry_array) -- Second set of geometries, which is indexed.
+  *    p_mask         (varchar2) -- As ST_Relate, but a mask cannot include DISJOINT or be a pattern
+  *                               disjoint geometries satisfy (eg FF*FF****).
+  *    p_precision     (integer) -- Number of decimal places of precision of a geometry
+  *  RESULT
+  *    pairs      (T_JoinPairSet) -- (id1, id2, relation) for each pair, in the order of the first then second set.
+  *  EXAMPLE
+  *    select p.id1 as parcel_id, p.id2 as building_id, p.relation
+  *      from table(SC4O.ST_SpatialJoin(CURSOR(select a.id, a.geom from parcels a),
+  *                                     CURSOR(select b.id, b.geom from buildings b),
+  *                                     'CONTAINS,COVERS',
+  *                                     3)) p;
+  *  ERRORS
+  *    Unlike ST_Relate, errors are raised rather than returned:
+  *      Sdo_Geometry n of first set is invalid.
+  *      Sdo_Geometry n of second set has circular arcs that JTS does not support.
+  *      SRIDs of Sdo_Geometries must be equal
+  *      A spatial join cannot find DISJOINT geometries.
+  *      A spatial join cannot find DISJOINT geometries: mask m does not require the geometries to intersect.
+  ******/
+  Function ST_SpatialJoin(p_resultSet1 in &&defaultSchema..SC4O.refcur_t,
+                          p_resultSet2 in &&defaultSchema..SC4O.refcur_t,
+                          p_mask       in varchar2,
+                          p_precision  in number)
+    Return &&defaultSchema..T_JoinPairSet Pipelined;
+
+  Function ST_SpatialJoin(p_geomSet1   in mdsys.sdo_geometry_array,
+                          p_geomSet2   in mdsys.sdo_geometry_array,
+                          p_mask       in varchar2,
+                          p_precision  in number)
+    Return &&defaultSchema..T_JoinPairSet Pipelined;
+
   /**  ======================== PROCESSING ================== **/
 
  /****f* SC4O/ST_MinimumBoundingCircle
@@ -2570,6 +2757,504 @@ AS
                       p_precision in number)
     Return mdsys.sdo_geometry Deterministic;
 
+ /****f* SC4O/ST_TravellingSalesman
+  *  NAME
+  *    ST_TravellingSalesman - Constructs a nearest neighbour route through a set of points.
+  *  SYNOPSIS
+  *    Function ST_TravellingSalesman(p_points      in mdsys.sdo_geometry,
+  *                                   p_start_id    in number,
+  *                                   p_start_point in mdsys.sdo_geometry,
+  *                                   p_geo_fence   in mdsys.sdo_geometry,
+  *                                   p_precision   in number)
+  *      Return mdsys.sdo_geometry Deterministic;
+  *  DESCRIPTION
+  *    Builds a simple travelling salesman's route through the points of a MultiPoint in one call.
+  *    From the start the route moves to the nearest point not yet visited, found with a KdTree of the points.
+  *    When p_geo_fence is provided the route moves to the nearest point it can reach without crossing a fence,
+  *    tested against an STRtree of the fence segments:
+  *      - If p_geo_fence is 2D, all its linestrings are hard boundaries.
+  *      - If p_geo_fence has a Z ordinate, linestrings with Z of 9 are hard boundaries and those below 9 may be crossed.
+  *    If every point left is fenced off, the route moves to the nearest point regardless.
+  *    Distances are planar. T_GEOMETRY.ST_TravellingSalesman uses this function for projected data.
+  *  ARGUMENTS
+  *    p_points      (sdo_geometry) -- MultiPoint (or collection of points) to visit
+  *    p_start_id          (number) -- Start at the point whose Z ordinate has this value.
+  *                                   If no point has, the route starts at the first point.
+  *    p_start_point (sdo_geometry) -- If p_start_id is NULL, start at this point, which need not be in p_points.
+  *    p_geo_fence   (sdo_geometry) -- Linestrings (eg street centrelines) the route should not cross.
+  *    p_precision        (integer) -- Number of decimal places of precision
+  *  RESULT
+  *    route         (sdo_geometry) -- Linestring through the start and each point in the order visited;
+  *                                   NULL if p_points is not a set of points or no start is given.
+  *  EXAMPLE
+  *    select SC4O.ST_TravellingSalesman(a.stops,null,sdo_geometry(2001,28355,sdo_point_type(359052.5,5407258.2,NULL),null,null),null,2) as route
+  *      from deliveries a;
+  ******/
+  Function ST_TravellingSalesman(p_points      in mdsys.sdo_geometry,
+                                 p_start_id    in number,
+                                 p_start_point in mdsys.sdo_geometry,
+                                 p_geo_fence   in mdsys.sdo_geometry,
+                                 p_precision   in number)
+    Return mdsys.sdo_geometry Deterministic;
+
+ /****f* SC4O/ST_LRS_Locate_Measure
+  *  NAME
+  *    ST_LRS_Locate_Measure - Returns the point at a measure along a linestring, with an optional offset.
+  *  SYNOPSIS
+  *    Function ST_LRS_Locate_Measure(p_lrs_segment in mdsys.sdo_geometry,
+  *                                   p_measure     in number,
+  *                                   p_offset      in number,
+  *                                   p_precision   in number)
+  *      Return mdsys.sdo_geometry Deterministic;
+  *  DESCRIPTION
+  *    Finds the point at p_measure along a (multi)linestring, offset perpendicular to it by p_offset.
+  *    The measures of the line's vertices are tabled once and the measure found by binary search.
+  *    If the line is not measured, the measure is the (planar) length along the line and is added to the point.
+  *    T_GEOMETRY.ST_LRS_Locate_Measure uses this function for projected data.
+  *  ARGUMENTS
+  *    p_lrs_segment (sdo_geometry) -- Linestring without circular arcs
+  *    p_measure           (number) -- Measure to locate
+  *    p_offset            (number) -- Offset: negative is left, positive right
+  *    p_precision        (integer) -- Number of decimal places of precision
+  *  RESULT
+  *    point         (sdo_geometry) -- Point at the measure; NULL if the measure is not on the line.
+  *  EXAMPLE
+  *    select SC4O.ST_LRS_Locate_Measure(sdo_geometry(3302,null,null,sdo_elem_info_array(1,2,1),sdo_ordinate_array(0,0,0,10,0,10,10,10,20)),15,0,3) as point
+  *      from dual;
+  ******/
+  Function ST_LRS_Locate_Measure(p_lrs_segment in mdsys.sdo_geometry,
+                                 p_measure     in number,
+                                 p_offset      in number,
+                                 p_precision   in number)
+    Return mdsys.sdo_geometry Deterministic;
+
+ /****f* SC4O/ST_LRS_Locate_Between
+  *  NAME
+  *    ST_LRS_Locate_Between - Returns the part of a linestring between two measures.
+  *  SYNOPSIS
+  *    Function ST_LRS_Locate_Between(p_lrs_segment   in mdsys.sdo_geometry,
+  *                                   p_start_measure in number,
+  *                                   p_end_measure   in number,
+  *                                   p_offset        in number,
+  *                                   p_precision     in number)
+  *      Return mdsys.sdo_geometry Deterministic;
+  *  DESCRIPTION
+  *    Extracts the part of a (multi)linestring, whose measures increase, between two measures, offset by p_offset.
+  *    If the measures are equal a point is returned.
+  *    T_GEOMETRY.ST_LRS_Locate_Measures uses this function for projected data.
+  *  ARGUMENTS
+  *    p_lrs_segment (sdo_geometry) -- Linestring without circular arcs
+  *    p_start_measure     (number) -- Start measure, 0 if NULL
+  *    p_end_measure       (number) -- End measure, the line's end measure if NULL
+  *    p_offset            (number) -- Offset: negative is left, positive right
+  *    p_precision        (integer) -- Number of decimal places of precision
+  *  RESULT
+  *    segment       (sdo_geometry) -- (Multi)linestring; NULL if the measures are not on the line.
+  ******/
+  Function ST_LRS_Locate_Between(p_lrs_segment   in mdsys.sdo_geometry,
+                                 p_start_measure in number,
+                                 p_end_measure   in number,
+                                 p_offset        in number,
+                                 p_precision     in number)
+    Return mdsys.sdo_geometry Deterministic;
+
+ /****f* SC4O/ST_LRS_Project_Point
+  *  NAME
+  *    ST_LRS_Project_Point - Snaps a point to a linestring.
+  *  SYNOPSIS
+  *    Function ST_LRS_Project_Point(p_lrs_segment in mdsys.sdo_geometry,
+  *                                  p_point       in mdsys.sdo_geometry,
+  *                                  p_precision   in number)
+  *      Return mdsys.sdo_geometry Deterministic;
+  *  DESCRIPTION
+  *    Returns the point on a (multi)linestring nearest p_point, with Z and M interpolated.
+  *    Long lines are searched with an STRtree of their segments.
+  *    T_GEOMETRY.ST_LRS_Project_Point uses this function for projected data.
+  *  ARGUMENTS
+  *    p_lrs_segment (sdo_geometry) -- Linestring without circular arcs
+  *    p_point       (sdo_geometry) -- Point
+  *    p_precision        (integer) -- Number of decimal places of precision
+  *  RESULT
+  *    point         (sdo_geometry) -- Nearest point on the line.
+  ******/
+  Function ST_LRS_Project_Point(p_lrs_segment in mdsys.sdo_geometry,
+                                p_point       in mdsys.sdo_geometry,
+                                p_precision   in number)
+    Return mdsys.sdo_geometry Deterministic;
+
+ /****f* SC4O/ST_LRS_Find_Measure
+  *  NAME
+  *    ST_LRS_Find_Measure - Returns the measure of the point on a linestring nearest a point.
+  *  SYNOPSIS
+  *    Function ST_LRS_Find_Measure(p_lrs_segment in mdsys.sdo_geometry,
+  *                                 p_point       in mdsys.sdo_geometry,
+  *                                 p_precision   in number)
+  *      Return number Deterministic;
+  *  DESCRIPTION
+  *    Snaps p_point to a (multi)linestring, as ST_LRS_Project_Point, and returns the measure at that point.
+  *    T_GEOMETRY.ST_LRS_Find_Measure uses this function for projected, measured data.
+  *  ARGUMENTS
+  *    p_lrs_segment (sdo_geometry) -- Linestring without circular arcs
+  *    p_point       (sdo_geometry) -- Point
+  *    p_precision        (integer) -- Number of decimal places of precision
+  *  RESULT
+  *    measure             (number) -- Measure (length along the line if it is not measured).
+  ******/
+  Function ST_LRS_Find_Measure(p_lrs_segment in mdsys.sdo_geometry,
+                               p_point       in mdsys.sdo_geometry,
+                               p_precision   in number)
+    Return number Deterministic;
+
+ /****f* SC4O/ST_LRS_Scale_Measures
+  *  NAME
+  *    ST_LRS_Scale_Measures - Rescales the measures of a linestring.
+  *  SYNOPSIS
+  *    Function ST_LRS_Scale_Measures(p_lrs_segment   in mdsys.sdo_geometry,
+  *                                   p_start_measure in number,
+  *                                   p_end_measure   in number,
+  *                                   p_shift_measure in number,
+  *                                   p_precision     in number)
+  *      Return mdsys.sdo_geometry Deterministic;
+  *  DESCRIPTION
+  *    Scales the measures of a measured (multi)linestring to run from p_start_measure to p_end_measure,
+  *    then adds p_shift_measure to each.
+  *    T_GEOMETRY.ST_LRS_Scale_Measures uses this function for projected data.
+  *  ARGUMENTS
+  *    p_lrs_segment (sdo_geometry) -- Measured linestring without circular arcs
+  *    p_start_measure     (number) -- New start measure
+  *    p_end_measure       (number) -- New end measure
+  *    p_shift_measure     (number) -- Amount added to each measure
+  *    p_precision        (integer) -- Number of decimal places of precision
+  *  RESULT
+  *    line          (sdo_geometry) -- Linestring with new measures.
+  ******/
+  Function ST_LRS_Scale_Measures(p_lrs_segment   in mdsys.sdo_geometry,
+                                 p_start_measure in number,
+                                 p_end_measure   in number,
+                                 p_shift_measure in number,
+                                 p_precision     in number)
+    Return mdsys.sdo_geometry Deterministic;
+
+ /****f* SC4O/ST_LRS_Split
+  *  NAME
+  *    ST_LRS_Split - Splits a linestring in two at a measure.
+  *  SYNOPSIS
+  *    Function ST_LRS_Split(p_lrs_segment in mdsys.sdo_geometry,
+  *                          p_measure     in number,
+  *                          p_precision   in number)
+  *      Return mdsys.sdo_geometry_array Deterministic;
+  *  DESCRIPTION
+  *    Returns the part of a (multi)linestring up to p_measure and the part from it, reading the line once for both.
+  *    T_GEOMETRY.ST_Split(p_measure) uses this function for projected data.
+  *  ARGUMENTS
+  *    p_lrs_segment (sdo_geometry) -- Linestring without circular arcs whose measures increase
+  *    p_measure           (number) -- Measure at which to split the line
+  *    p_precision        (integer) -- Number of decimal places of precision
+  *  RESULT
+  *    parts   (sdo_geometry_array) -- The two parts; a part is a point if p_measure is at that end of the line.
+  *                                    NULL if p_measure is not on the line.
+  ******/
+  Function ST_LRS_Split(p_lrs_segment in mdsys.sdo_geometry,
+                        p_measure     in number,
+                        p_precision   in number)
+    Return mdsys.sdo_geometry_array Deterministic;
+
+ /****f* SC4O/ST_LRS_Locate_Measures
+  *  NAME
+  *    ST_LRS_Locate_Measures - Returns the points at many measures along one linestring.
+  *  SYNOPSIS
+  *    Function ST_LRS_Locate_Measures(p_lrs_segment in mdsys.sdo_geometry,
+  *                                    p_measures    in mdsys.sdo_number_array,
+  *                                    p_offsets     in mdsys.sdo_number_array,
+  *                                    p_precision   in number)
+  *      Return mdsys.sdo_geometry_array Deterministic;
+  *  DESCRIPTION
+  *    Locates each of p_measures along a (multi)linestring in one call, so the line is read,
+  *    and its measures tabled, once for all the measures rather than once per measure.
+  *  ARGUMENTS
+  *    p_lrs_segment      (sdo_geometry) -- Linestring without circular arcs
+  *    p_measures     (sdo_number_array) -- Measures to locate
+  *    p_offsets      (sdo_number_array) -- Offset of each measure; NULL for none
+  *    p_precision             (integer) -- Number of decimal places of precision
+  *  RESULT
+  *    points       (sdo_geometry_array) -- Point at each measure, in order; NULL where a measure is not on the line.
+  *  EXAMPLE
+  *    select SC4O.ST_LRS_Locate_Measures(r.geom,
+  *                                       cast(collect(e.measure order by e.event_id) as mdsys.sdo_number_array),
+  *                                       null,3) as points
+  *      from routes r join events e on (e.route_id = r.route_id)
+  *     group by r.route_id, r.geom;
+  ******/
+  Function ST_LRS_Locate_Measures(p_lrs_segment in mdsys.sdo_geometry,
+                                  p_measures    in mdsys.sdo_number_array,
+                                  p_offsets     in mdsys.sdo_number_array,
+                                  p_precision   in number)
+    Return mdsys.sdo_geometry_array Deterministic;
+
+ /****f* SC4O/ST_LRS_Find_Measures
+  *  NAME
+  *    ST_LRS_Find_Measures - Returns the measures of many points against one linestring.
+  *  SYNOPSIS
+  *    Function ST_LRS_Find_Measures(p_lrs_segment in mdsys.sdo_geometry,
+  *                                  p_points      in mdsys.sdo_geometry_array,
+  *                                  p_precision   in number)
+  *      Return mdsys.sdo_number_array Deterministic;
+  *  DESCRIPTION
+  *    Finds the measure of each of p_points against a (multi)linestring in one call, as ST_LRS_Find_Measure.
+  *  ARGUMENTS
+  *    p_lrs_segment      (sdo_geometry) -- Linestring without circular arcs
+  *    p_points     (sdo_geometry_array) -- Points
+  *    p_precision             (integer) -- Number of decimal places of precision
+  *  RESULT
+  *    measures       (sdo_number_array) -- Measure of each point, in order; NULL where a point is NULL.
+  ******/
+  Function ST_LRS_Find_Measures(p_lrs_segment in mdsys.sdo_geometry,
+                                p_points      in mdsys.sdo_geometry_array,
+                                p_precision   in number)
+    Return mdsys.sdo_number_array Deterministic;
+
+ /****f* SC4O/ST_LRS_Dynamic_Segment
+  *  NAME
+  *    ST_LRS_Dynamic_Segment - Locates many point and linear events against many routes in one call.
+  *  SYNOPSIS
+  *    Function ST_LRS_Dynamic_Segment(p_events    in &&defaultSchema..SC4O.refcur_t,
+  *                                    p_routes    in &&defaultSchema..SC4O.refcur_t,
+  *                                    p_precision in number)
+  *      Return &&defaultSchema..T_LocatedEventSet Pipelined;
+  *  DESCRIPTION
+  *    Dynamic segmentation as a set operation, rather than calling ST_LRS.LOCATE_PT or
+  *    ST_LRS.DYNAMIC_SEGMENT for each event, each call reading and scanning its route again.
+  *    Both cursors must be ordered by route id. They are merged in one pass: each route is read once
+  *    and, if it has events, its measures are tabled once for all its events (see ST_LRS_Locate_Measure).
+  *    An event with a NULL end measure is a point event, located as ST_LRS_Locate_Measure;
+  *    otherwise it is a linear event, extracted as ST_LRS_Locate_Between.
+  *    Route ids are compared as numbers if both route id columns are numeric, otherwise as strings,
+  *    so character route ids must be ordered with NLS_SORT=BINARY.
+  *    Offsets are negative to the left and positive to the right, as T_GEOMETRY (the reverse of ST_LRS.LOCATE_PT).
+  *    Routes must be planar linestrings without circular arcs.
+  *    Events are located, and piped, a batch of 10,000 at a time, so memory use does not grow with the
+  *    number of events.
+  *  ARGUMENTS
+  *    p_events  (refcur_t) -- Cursor of route_id, event_id, measure [, end_measure [, offset]] ordered by route_id.
+  *    p_routes  (refcur_t) -- Cursor of route_id and route geometry ordered by route_id.
+  *    p_precision (integer) -- Number of decimal places of precision
+  *  RESULT
+  *    events (T_LocatedEventSet) -- (route_id, event_id, geom) for each event in cursor order;
+  *                                  geom is NULL if the event's route does not exist, is not a linestring without
+  *                                  circular arcs, or (for a linear event) has decreasing measures, or if the
+  *                                  event's measures are not on the route.
+  *  NOTES
+  *    Java threads in the database do not run in parallel, so large jobs are split by route id range,
+  *    eg with DBMS_PARALLEL_EXECUTE, and each range is run in its own session.
+  *  EXAMPLE
+  *    insert into located_events (route_id, event_id, geom)
+  *    select l.route_id, l.event_id, l.geom
+  *      from table(SC4O.ST_LRS_Dynamic_Segment(
+  *                   CURSOR(select e.route_id, e.event_id, e.from_measure, e.to_measure, e.offset
+  *                            from events e
+  *                           where e.route_id between :start_id and :end_id
+  *                           order by e.route_id),
+  *                   CURSOR(select r.route_id, r.geom
+  *                            from routes r
+  *                           where r.route_id between :start_id and :end_id
+  *                           order by r.route_id),
+  *                   3)) l;
+  *  ERRORS
+  *    Events are not in route id order: route n follows a later route.
+  *    Routes are not in route id order: route n follows a later route.
+  ******/
+  Function ST_LRS_Dynamic_Segment(p_events    in &&defaultSchema..SC4O.refcur_t,
+                                  p_routes    in &&defaultSchema..SC4O.refcur_t,
+                                  p_precision in number)
+    Return &&defaultSchema..T_LocatedEventSet Pipelined;
+
+ /****f* SC4O/ST_Morton
+  *  NAME
+  *    ST_Morton - Returns the Morton (Z-order) key of a cell of a grid.
+  *  SYNOPSIS
+  *    Function ST_Morton(p_col in number,
+  *                       p_row in number)
+  *      Return number Deterministic;
+  *  DESCRIPTION
+  *    Interleaves the bits of the column and row of a cell, column bits in the even bits of the key
+  *    and row bits in the odd bits, as TESSELATE.Morton and SPACE_KEY.Morton do bit pair by bit pair.
+  *    The grid's origin is its lower left cell (0,0).
+  *  ARGUMENTS
+  *    p_col (integer) -- Column of cell (0..4294967295)
+  *    p_row (integer) -- Row of cell (0..4294967295)
+  *  RESULT
+  *    key   (integer) -- Morton key
+  *  ERRORS
+  *    A column or row outside 0..4294967295 raises an IllegalArgumentException (ORA-29532).
+  *  EXAMPLE
+  *    select SC4O.ST_Morton(3,5) as key from dual;
+  *
+  *    KEY
+  *    ---
+  *     39
+  ******/
+  Function ST_Morton(p_col in number,
+                     p_row in number)
+    Return number Deterministic;
+
+ /****f* SC4O/ST_QuadTree
+  *  NAME
+  *    ST_QuadTree - Tessellates an extent with a quadtree whose tiles each hold no more than a given number of features.
+  *  SYNOPSIS
+  *    Function ST_QuadTree(p_features  in &&defaultSchema..SC4O.refcur_t,
+  *                         p_xmin      in number,
+  *                         p_ymin      in number,
+  *                         p_xmax      in number,
+  *                         p_ymax      in number,
+  *                         p_max_level in number,
+  *                         p_max_count in number)
+  *      Return &&defaultSchema..T_QuadTileSet;
+  *  DESCRIPTION
+  *    Builds the quadtree TESSELATE.QuadTree and SPACE_KEY.QuadTree build, in one call.
+  *    The features are read once and each quad is only tested against the features that interact
+  *    with its parent: a feature whose envelope the quad covers is counted without a test, and a
+  *    feature straddling the quad's edge is tested with its JTS PreparedGeometry, prepared once.
+  *    As the PL/SQL: the extent (level 0) is always subdivided; a quad with 1..p_max_count features
+  *    is a tile; a quad with none, or with more than p_max_count at p_max_level, is dropped.
+  *    Tiles are numbered from 0 in the order visited: lower left, upper left, lower right, upper right.
+  *    Each tile's morton_key is that of its lower left cell in the 2^p_max_level by 2^p_max_level grid
+  *    of the extent, so keys are unique and ordering by morton_key orders tiles along the Z curve.
+  *    The tiles come back as one collection, to be inserted with INSERT ... SELECT FROM TABLE() or
+  *    fetched with BULK COLLECT and inserted with FORALL.
+  *    TESSELATE.QuadTree and SPACE_KEY.QuadTree use this function when SC4O is installed.
+  *  ARGUMENTS
+  *    p_features  (refcur_t) -- Cursor of features. The first sdo_geometry column is used.
+  *    p_xmin        (number) -- Lower left X of the extent to tessellate
+  *    p_ymin        (number) -- Lower left Y
+  *    p_xmax        (number) -- Upper right X
+  *    p_ymax        (number) -- Upper right Y
+  *    p_max_level  (integer) -- Deepest level of the tree (1..31)
+  *    p_max_count  (integer) -- Most features a tile may hold
+  *  RESULT
+  *    tiles (T_QuadTileSet) -- (quad_id, quad_level, morton_key, feature_count, xlo, ylo, xhi, yhi) for each tile in quad_id order.
+  *  NOTES
+  *    Features are used as stored: no tolerance is applied, whereas SDO_ANYINTERACT (used by the
+  *    PL/SQL when SC4O is not installed) also counts a feature within tolerance of a quad. A feature
+  *    that only comes within tolerance of a quad can therefore give different tiles with and without
+  *    SC4O. Features must not have circular arcs.
+  *  EXAMPLE
+  *    insert into parcel_quads (quad_id, quad_level, morton_key, feature_count, geom)
+  *    select t.quad_id, t.quad_level, t.morton_key, t.feature_count,
+  *           mdsys.sdo_geometry(2003,28355,NULL,mdsys.sdo_elem_info_array(1,1003,3),
+  *                              mdsys.sdo_ordinate_array(t.xlo,t.ylo,t.xhi,t.yhi))
+  *      from table(SC4O.ST_QuadTree(CURSOR(select p.geom from parcels p),
+  *                                  300000,5000000,400000,5100000,12,200)) t;
+  ******/
+  Function ST_QuadTree(p_features  in &&defaultSchema..SC4O.refcur_t,
+                       p_xmin      in number,
+                       p_ymin      in number,
+                       p_xmax      in number,
+                       p_ymax      in number,
+                       p_max_level in number,
+                       p_max_count in number)
+    Return &&defaultSchema..T_QuadTileSet;
+
+ /****f* SC4O/ST_QuadTree_To_File
+  *  NAME
+  *    ST_QuadTree_To_File - Tessellates an extent with a quadtree and writes its tiles to a staging file.
+  *  SYNOPSIS
+  *    Function ST_QuadTree_To_File(p_features   in &&defaultSchema..SC4O.refcur_t,
+  *                                 p_xmin       in number,
+  *                                 p_ymin       in number,
+  *                                 p_xmax       in number,
+  *                                 p_ymax       in number,
+  *                                 p_max_level  in number,
+  *                                 p_max_count  in number,
+  *                                 p_output_dir in varchar2,
+  *                                 p_file_name  in varchar2)
+  *      Return number;
+  *  DESCRIPTION
+  *    Builds the same tiles as ST_QuadTree but writes them to a comma separated file, headed by
+  *    quad_id,quad_level,morton_key,feature_count,xlo,ylo,xhi,yhi, rather than returning them,
+  *    so very large trees can be loaded with SQL*Loader (direct path) or read as an external table.
+  *  ARGUMENTS
+  *    p_features   (refcur_t) -- Cursor of features. The first sdo_geometry column is used.
+  *    p_xmin         (number) -- Lower left X of the extent to tessellate
+  *    p_ymin         (number) -- Lower left Y
+  *    p_xmax         (number) -- Upper right X
+  *    p_ymax         (number) -- Upper right Y
+  *    p_max_level   (integer) -- Deepest level of the tree (1..31)
+  *    p_max_count   (integer) -- Most features a tile may hold
+  *    p_output_dir (varchar2) -- The directory to write the file to.
+  *    p_file_name  (varchar2) -- The file name; its suffix is always .csv
+  *  RESULT
+  *    tiles         (integer) -- Number of tiles written
+  *  NOTES
+  *    The schema needs write permission on p_output_dir (see GRANT_DIRECTORY_Permissions.sql).
+  *  EXAMPLE
+  *    select SC4O.ST_QuadTree_To_File(CURSOR(select p.geom from parcels p),
+  *                                    300000,5000000,400000,5100000,12,200,
+  *                                    '/u01/staging','parcel_quads') as tiles
+  *      from dual;
+  ******/
+  Function ST_QuadTree_To_File(p_features   in &&defaultSchema..SC4O.refcur_t,
+                               p_xmin       in number,
+                               p_ymin       in number,
+                               p_xmax       in number,
+                               p_ymax       in number,
+                               p_max_level  in number,
+                               p_max_count  in number,
+                               p_output_dir in varchar2,
+                               p_file_name  in varchar2)
+    Return number;
+
+ /****f* SC4O/ST_Tile
+  *  NAME
+  *    ST_Tile - Covers a linestring or polygon with a grid of tiles.
+  *  SYNOPSIS
+  *    Function ST_Tile(p_geom      in mdsys.sdo_geometry,
+  *                     p_tile_x    in number,
+  *                     p_tile_y    in number,
+  *                     p_grid_type in varchar2 default 'TILE',
+  *                     p_option    in varchar2 default 'TOUCH',
+  *                     p_precision in number   default 3)
+  *      Return &&defaultSchema..T_GridCellSet Pipelined;
+  *  DESCRIPTION
+  *    Returns the same tiles as T_GEOMETRY.ST_Tile, in the same (column by column) order, without
+  *    testing every tile of the grid against the geometry.
+  *    The edges of the geometry mark the tiles they pass through as boundary tiles, row by row, and a
+  *    scanline along the middle of each row finds the tiles inside a polygon. Interior tiles are returned
+  *    without any test; boundary tiles are tested with a prepared geometry or, when clipping, clipped by
+  *    a small part of the polygon found by halving the grid and cutting the polygon down to each half.
+  *    Tiles outside the geometry are never looked at.
+  *  ARGUMENTS
+  *    p_geom   (sdo_geometry) -- Planar linestring, polygon or their multi forms, without circular arcs.
+  *    p_tile_x       (number) -- Width of a tile
+  *    p_tile_y       (number) -- Height of a tile
+  *    p_grid_type  (varchar2) -- TILE (rectangle) or BOTH (rectangle with its centre in sdo_point).
+  *    p_option     (varchar2) -- MBR, TOUCH, CLIP, HALFCLIP or HALFTOUCH, as T_GEOMETRY.ST_Tile.
+  *                               CLIP, HALFCLIP and HALFTOUCH only clip polygons.
+  *    p_precision   (integer) -- Number of decimal places of precision of clipped tiles
+  *  RESULT
+  *    tiles (T_GridCellSet) -- (gcol, grow, geom) for each tile.
+  *  NOTES
+  *    No tolerance is applied: a tile must touch the geometry to be returned.
+  *    Interior tiles are returned as optimized rectangles, even when clipping.
+  *    The tiles of a call are held in memory before being piped.
+  *  EXAMPLE
+  *    select t.gcol, t.grow, t.geom
+  *      from parcels p,
+  *           table(SC4O.ST_Tile(p.geom,25,25,'TILE','TOUCH',3)) t
+  *     where p.parcel_id = :id;
+  *  ERRORS
+  *    ST_Tile: Grid type (x) must be TILE or BOTH.
+  *    ST_Tile: Geometry must be a linestring, polygon or their multi forms.
+  *    ST_Tile: Geometry has circular arcs that JTS does not support.
+  *    ST_Tile: Grid of n by m tiles is too large.
+  ******/
+  Function ST_Tile(p_geom      in mdsys.sdo_geometry,
+                   p_tile_x    in number,
+                   p_tile_y    in number,
+                   p_grid_type in varchar2 default 'TILE',
+                   p_option    in varchar2 default 'TOUCH',
+                   p_precision in number   default 3)
+    Return &&defaultSchema..T_GridCellSet Pipelined;
+
   /****f* SC4O/ST_Voronoi(sdo_geometry_array)
   *  NAME
   *    ST_Voronoi - Creates a Voronoi diagram from coordinates of an array of geometry objects.
@@ -3729,11 +4414,14 @@ AS
   *  SYNOPSIS
   *    Function ST_GeomFromGML(p_gml in varchar2)
   *      Return mdsys.sdo_geometry Deterministic;
+  *    Function ST_GeomFromGML(p_gml in CLOB)
+  *      Return mdsys.sdo_geometry Deterministic;
   *  DESCRIPTION
-  *    Creates SDO_GEOMETRY object from from Geography Markup Language 2 formatted string.
+  *    Creates SDO_GEOMETRY object from from Geography Markup Language 2 or 3 formatted string.
+  *    The GML is read as a stream so large documents, such as a FeatureCollection, can be supplied as a CLOB:
+  *    if the document contains more than one geometry they are returned as a single collection.
   *  ARGUMENTS
-  *    p_wkt        (varchar2) -- GML string (.
-  *    p_srid        (integer) -- SRID for when no SRID is supplied with the EWKT.
+  *    p_gml   (varchar2/CLOB) -- GML string.
   *  RESULT
   *    geometry (sdo_geometry) -- Sdo_Geometry object.
   *  EXAMPLE
@@ -3744,7 +4432,8 @@ AS
   *    --------------------------------------------------------------------------------------------------
   *    SDO_GEOMETRY(2003,NULL,NULL,SDO_ELEM_INFO_ARRAY(1,1003,1),SDO_ORDINATE_ARRAY(5,1,8,1,8,6,5,7,5,1))
   *  NOTES
-  *    Supports GML2 only.
+  *    Supports GML2, GML 3.1 and GML 3.2.
+  *    SRID is taken from the number at the end of srsName eg EPSG:4326, urn:ogc:def:crs:EPSG::4326; otherwise it is NULL.
   *  AUTHOR
   *    Simon Greener
   *  HISTORY
@@ -3758,6 +4447,9 @@ AS
   Function ST_GeomFromGML(p_gml in varchar2)
     Return mdsys.sdo_geometry Deterministic;
 
+  Function ST_GeomFromGML(p_gml in CLOB)
+    Return mdsys.sdo_geometry Deterministic;
+
   -- Output
 
   /****f* SC4O/ST_AsText
@@ -4000,6 +4692,53 @@ AS
                      p_endian in varchar2)
     Return BLOB deterministic;
 
+  /****f* SC4O/ST_AsEWKB(geometrySet)
+  *  NAME
+  *    ST_AsEWKB, ST_AsBinary -- Creates (Extended) Well Known Binary for a set of SDO_GEOMETRY objects.
+  *  SYNOPSIS
+  *    Function ST_AsEWKB(p_geomSet   in mdsys.sdo_geometry_array,
+  *                       p_endian    in varchar2 default NULL)
+  *      Return &&defaultSchema..T_BlobSet;
+  *    Function ST_AsEWKB(p_resultSet in &&defaultSchema..SC4O.refcur_t,
+  *                       p_endian    in varchar2 default NULL)
+  *      Return &&defaultSchema..T_BlobSet;
+  *    Function ST_AsBinary(p_geomSet   in mdsys.sdo_geometry_array,
+  *                         p_endian    in varchar2 default NULL)
+  *      Return &&defaultSchema..T_BlobSet;
+  *    Function ST_AsBinary(p_resultSet in &&defaultSchema..SC4O.refcur_t,
+  *                         p_endian    in varchar2 default NULL)
+  *      Return &&defaultSchema..T_BlobSet;
+  *  DESCRIPTION
+  *    Converts a set of geometries to EWKB (ST_AsEWKB) or WKB (ST_AsBinary) in one call.
+  *    The geometries are read with one reader and written with one writer, so bulk conversion
+  *    avoids the per call overhead of the single geometry functions.
+  *    A cursor is read from its first sdo_geometry column.
+  *  ARGUMENTS
+  *    p_geomSet   (sdo_geometry_array) -- Array of sdo_geometry objects.
+  *    p_resultSet           (refcur_t) -- Cursor with an sdo_geometry column eg select id, geom from parcels order by id
+  *    p_endian              (varchar2) -- "NDR" (little-endian) or "XDR" (big-endian). NULL gives NDR.
+  *  RESULT
+  *    blobs              (T_BlobSet) -- A blob for each geometry, in order. A NULL geometry (or empty one for WKB) gives a NULL element.
+  *  EXAMPLE
+  *    select count(*)
+  *      from table(SC4O.ST_AsEWKB(CURSOR(select a.geom from parcels a order by a.id)));
+  ******/
+  Function ST_AsEWKB(p_geomSet   in mdsys.sdo_geometry_array,
+                     p_endian    in varchar2 default NULL)
+    Return &&defaultSchema..T_BlobSet;
+
+  Function ST_AsEWKB(p_resultSet in &&defaultSchema..SC4O.refcur_t,
+                     p_endian    in varchar2 default NULL)
+    Return &&defaultSchema..T_BlobSet;
+
+  Function ST_AsBinary(p_geomSet   in mdsys.sdo_geometry_array,
+                       p_endian    in varchar2 default NULL)
+    Return &&defaultSchema..T_BlobSet;
+
+  Function ST_AsBinary(p_resultSet in &&defaultSchema..SC4O.refcur_t,
+                       p_endian    in varchar2 default NULL)
+    Return &&defaultSchema..T_BlobSet;
+
   /****f* SC4O/ST_GeomFromBinary
   *  NAME
   *    ST_GeomFromBinary -- Create SDO_GEOMETRY object from Extended Well Known Binary object.
@@ -4104,6 +4843,39 @@ AS
                            p_srid in number)
     Return mdsys.sdo_geometry Deterministic;
 
+  /****f* SC4O/ST_GeomFromEWKB(blobSet)
+  *  NAME
+  *    ST_GeomFromEWKB -- Creates SDO_GEOMETRY objects from a set of (Extended) Well Known Binary objects.
+  *  SYNOPSIS
+  *    Function ST_GeomFromEWKB(p_ewkbSet   in &&defaultSchema..T_BlobSet,
+  *                             p_srid      in number default -1)
+  *      Return mdsys.sdo_geometry_array;
+  *    Function ST_GeomFromEWKB(p_resultSet in &&defaultSchema..SC4O.refcur_t,
+  *                             p_srid      in number default -1)
+  *      Return mdsys.sdo_geometry_array;
+  *  DESCRIPTION
+  *    Converts a set of WKB or EWKB blobs, such as a staging table loaded from another database, in one call.
+  *    Each blob is read in blocks into a buffer that is reused for the whole set, and the geometries are
+  *    written with one writer, so bulk conversion avoids the per call overhead of ST_GeomFromEWKB(blob).
+  *    A cursor is read from its first blob column.
+  *  ARGUMENTS
+  *    p_ewkbSet  (T_BlobSet) -- Array of WKB/EWKB blobs.
+  *    p_resultSet (refcur_t) -- Cursor with a blob column eg select id, wkb from staging order by id
+  *    p_srid       (integer) -- Srid given to geometries with no srid encoded in their EWKB; -1 for none.
+  *  RESULT
+  *    geometries (sdo_geometry_array) -- A geometry for each blob, in order. A NULL blob, or one holding an empty geometry, gives a NULL element.
+  *  EXAMPLE
+  *    select count(*)
+  *      from table(SC4O.ST_GeomFromEWKB(CURSOR(select a.wkb from staging a order by a.id),28355));
+  ******/
+  Function ST_GeomFromEWKB(p_ewkbSet   in &&defaultSchema..T_BlobSet,
+                           p_srid      in number default -1)
+    Return mdsys.sdo_geometry_array;
+
+  Function ST_GeomFromEWKB(p_resultSet in &&defaultSchema..SC4O.refcur_t,
+                           p_srid      in number default -1)
+    Return mdsys.sdo_geometry_array;
+
   /** =========================================================== */
   /** ========================== Aggregate ====================== */
   /** =========================================================== */
@@ -4246,6 +5018,8 @@ AS
   *    The underlying JTS code uses planar arithmetic. For long/lat data it is highly recommended that
   *    the geometries in p_geomset are projected into a suitable SRID before calling and then tranformed back
   *    to the original SRID after processing. See example:
+  *    Rows are read and unioned in batches of 1000 geometries, with the partial results merged
+  *    as they are produced, so that the whole table is never held in memory at once.
   *  ARGUMENTS
   *    p_tableName         (varchar2) - name of existing table/view etc whose contents will be unioned.
   *    p_columnName        (varchar2) - Name of sdo_geometry column in p_tableName holding polygons for unioning.
@@ -4328,6 +5102,8 @@ AS
   *    The underlying JTS code uses planar arithmetic. For long/lat data it is highly recommended that
   *    the geometries in p_geomset are projected into a suitable SRID before calling and then tranformed back
   *    to the original SRID after processing. See example:
+  *    Rows are read and unioned in batches of 1000 geometries, with the partial results merged
+  *    as they are produced, so that the whole table is never held in memory at once.
   *  ARGUMENTS
   *    p_tableName         (varchar2) - Name of existing table/view etc whose contents will be unioned.
   *    p_columnName        (varchar2) - Name of sdo_geometry column in p_tableName holding polygons for unioning.
@@ -4355,6 +5131,286 @@ AS
                              p_distanceTolerance in Number)
     Return mdsys.sdo_geometry Deterministic;
 
+  /****f* SC4O/ST_AggrUnionPolygons(geomSet,parallelism)
+  *  NAME
+  *    ST_AggrUnionPolygons -- Unions a set of sdo_geometry polygons by spatial partition.
+  *  SYNOPSIS
+  *    Function ST_AggrUnionPolygons(p_geomset           in mdsys.sdo_geometry_array,
+  *                                  p_precision         in number,
+  *                                  p_distanceTolerance in Number,
+  *                                  p_parallelism       in integer,
+  *                                  p_partitionSize     in integer)
+  *      Return mdsys.sdo_geometry Deterministic;
+  *  DESCRIPTION
+  *    As for the version of ST_AggrUnionPolygons without p_parallelism and p_partitionSize,
+  *    except that the input is divided into spatially clustered partitions of at most p_partitionSize
+  *    geometries (via an STRtree). Each partition is unioned separately, and the partial results
+  *    are then merged pairwise with their neighbours until one geometry remains. This bounds the
+  *    memory needed by each union step, and lets p_parallelism partitions be unioned at once.
+  *    Within the Oracle JVM all threads of a session share a single session thread, so
+  *    p_parallelism only shortens elapsed time when the Java is run outside the database.
+  *  ARGUMENTS
+  *    p_geomset           (sdo_geometry_array) - Collection of SDO_GEOMETRY polygon objects.
+  *    p_precision         (integer)            - Number of decimal places of precision when comparing ordinates.
+  *    p_distanceTolerance (Number)             - Optional maximum distance difference (see ST_TopologyPreservingSimplify)
+  *                                               for use with simplifying the resultant geometry. Enter 0.0 for no simplification.
+  *    p_parallelism       (integer)            - Number of partitions to union at once (1 is serial).
+  *    p_partitionSize     (integer)            - Maximum number of geometries in a partition (0 defaults to 1000).
+  *  RETURNS
+  *    Union Geometry (sdo_geometry)
+  *  EXAMPLE
+  *    select sdo_cs.transform(
+  *                    sc4o.ST_AggrUnionPolygons(
+  *                            CAST(COLLECT(sdo_cs.transform(a.geom,32630)) as mdsys.sdo_geometry_array),
+  *                            2,
+  *                            0.5,
+  *                            4,
+  *                            500),
+  *                    8307) as uGeom
+  *     from provinces a;
+  *  NOTES
+  *    LICENSE is Creative Commons Attribution-Share Alike 2.5 Australia License.
+  *               http://creativecommons.org/licenses/by-sa/2.5/au/
+  ******/
+  Function ST_AggrUnionPolygons(p_geomset           in mdsys.sdo_geometry_array,
+                                p_precision         in number,
+                                p_distanceTolerance in Number,
+                                p_parallelism       in integer,
+                                p_partitionSize     in integer)
+    Return mdsys.sdo_geometry Deterministic;
+
+  /****f* SC4O/ST_AggrUnionMixed(geomSet,parallelism)
+  *  NAME
+  *    ST_AggrUnionMixed -- Unions a set of sdo_geometry objects (can be mix of polygons, lines etc) by spatial partition.
+  *  SYNOPSIS
+  *    Function ST_AggrUnionMixed(p_geomset           in mdsys.sdo_geometry_array,
+  *                               p_precision         in number,
+  *                               p_distanceTolerance in Number,
+  *                               p_parallelism       in integer,
+  *                               p_partitionSize     in integer)
+  *      Return mdsys.sdo_geometry Deterministic;
+  *  DESCRIPTION
+  *    As for the version of ST_AggrUnionMixed without p_parallelism and p_partitionSize,
+  *    except that the input is divided into spatially clustered partitions of at most p_partitionSize
+  *    geometries (via an STRtree). Each partition is unioned separately, and the partial results
+  *    are then merged pairwise with their neighbours until one geometry remains. This bounds the
+  *    memory needed by each union step, and lets p_parallelism partitions be unioned at once.
+  *    Within the Oracle JVM all threads of a session share a single session thread, so
+  *    p_parallelism only shortens elapsed time when the Java is run outside the database.
+  *  ARGUMENTS
+  *    p_geomset           (sdo_geometry_array) - Collection of SDO_GEOMETRY objects.
+  *    p_precision         (integer)            - Number of decimal places of precision when comparing ordinates.
+  *    p_distanceTolerance (Number)             - Optional maximum distance difference (see ST_TopologyPreservingSimplify)
+  *                                               for use with simplifying the resultant geometry. Enter 0.0 for no simplification.
+  *    p_parallelism       (integer)            - Number of partitions to union at once (1 is serial).
+  *    p_partitionSize     (integer)            - Maximum number of geometries in a partition (0 defaults to 1000).
+  *  RETURNS
+  *    Union Geometry (sdo_geometry)
+  *  EXAMPLE
+  *    select sdo_cs.transform(
+  *                    sc4o.ST_AggrUnionMixed(
+  *                            CAST(COLLECT(sdo_cs.transform(a.geom,32630)) as mdsys.sdo_geometry_array),
+  *                            2,
+  *                            0.5,
+  *                            4,
+  *                            500),
+  *                    8307) as uGeom
+  *     from provinces a;
+  *  NOTES
+  *    LICENSE is Creative Commons Attribution-Share Alike 2.5 Australia License.
+  *               http://creativecommons.org/licenses/by-sa/2.5/au/
+  ******/
+  Function ST_AggrUnionMixed(p_geomset           in mdsys.sdo_geometry_array,
+                             p_precision         in number,
+                             p_distanceTolerance in Number,
+                             p_parallelism       in integer,
+                             p_partitionSize     in integer)
+    Return mdsys.sdo_geometry Deterministic;
+
+  /****f* SC4O/ST_AggrUnionPolygons(refCur,parallelism)
+  *  NAME
+  *    ST_AggrUnionPolygons -- Unions a result set of sdo_geometry polygons by spatial partition.
+  *  SYNOPSIS
+  *    Function ST_AggrUnionPolygons(p_resultSet         in &&defaultSchema..SC4O.refcur_t,
+  *                                  p_precision         in number,
+  *                                  p_distanceTolerance in Number,
+  *                                  p_parallelism       in integer,
+  *                                  p_partitionSize     in integer)
+  *      Return mdsys.sdo_geometry Deterministic;
+  *  DESCRIPTION
+  *    As for the version of ST_AggrUnionPolygons without p_parallelism and p_partitionSize,
+  *    except that the input is divided into spatially clustered partitions of at most p_partitionSize
+  *    geometries (via an STRtree). Each partition is unioned separately, and the partial results
+  *    are then merged pairwise with their neighbours until one geometry remains. This bounds the
+  *    memory needed by each union step, and lets p_parallelism partitions be unioned at once.
+  *    Within the Oracle JVM all threads of a session share a single session thread, so
+  *    p_parallelism only shortens elapsed time when the Java is run outside the database.
+  *  ARGUMENTS
+  *    p_resultSet         (SC4O.refcur_t)      - SQL statement defining a ref cursor collection of SDO_GEOMETRY polygon objects.
+  *    p_precision         (integer)            - Number of decimal places of precision when comparing ordinates.
+  *    p_distanceTolerance (Number)             - Optional maximum distance difference (see ST_TopologyPreservingSimplify)
+  *                                               for use with simplifying the resultant geometry. Enter 0.0 for no simplification.
+  *    p_parallelism       (integer)            - Number of partitions to union at once (1 is serial).
+  *    p_partitionSize     (integer)            - Maximum number of geometries in a partition (0 defaults to 1000).
+  *  RETURNS
+  *    Union Geometry (sdo_geometry)
+  *  EXAMPLE
+  *    select sdo_cs.transform(
+  *                   sc4o.ST_AggrUnionPolygons(
+  *                           CURSOR(SELECT sdo_cs.transform(b.geom,32630) FROM provinces b),
+  *                           2,
+  *                           0.5,
+  *                           4,
+  *                           500),
+  *                   8307) as uGeom
+  *     from dual a;
+  *  NOTES
+  *    LICENSE is Creative Commons Attribution-Share Alike 2.5 Australia License.
+  *               http://creativecommons.org/licenses/by-sa/2.5/au/
+  ******/
+  Function ST_AggrUnionPolygons(p_resultSet         in &&defaultSchema..SC4O.refcur_t,
+                                p_precision         in number,
+                                p_distanceTolerance in Number,
+                                p_parallelism       in integer,
+                                p_partitionSize     in integer)
+    Return mdsys.sdo_geometry Deterministic;
+
+  /****f* SC4O/ST_AggrUnionMixed(refCur,parallelism)
+  *  NAME
+  *    ST_AggrUnionMixed -- Unions a result set of sdo_geometry objects (can be mix of polygons, lines etc) by spatial partition.
+  *  SYNOPSIS
+  *    Function ST_AggrUnionMixed(p_resultSet         in &&defaultSchema..SC4O.refcur_t,
+  *                               p_precision         in number,
+  *                               p_distanceTolerance in Number,
+  *                               p_parallelism       in integer,
+  *                               p_partitionSize     in integer)
+  *      Return mdsys.sdo_geometry Deterministic;
+  *  DESCRIPTION
+  *    As for the version of ST_AggrUnionMixed without p_parallelism and p_partitionSize,
+  *    except that the input is divided into spatially clustered partitions of at most p_partitionSize
+  *    geometries (via an STRtree). Each partition is unioned separately, and the partial results
+  *    are then merged pairwise with their neighbours until one geometry remains. This bounds the
+  *    memory needed by each union step, and lets p_parallelism partitions be unioned at once.
+  *    Within the Oracle JVM all threads of a session share a single session thread, so
+  *    p_parallelism only shortens elapsed time when the Java is run outside the database.
+  *  ARGUMENTS
+  *    p_resultSet         (SC4O.refcur_t)      - SQL statement defining a ref cursor collection of SDO_GEOMETRY objects.
+  *    p_precision         (integer)            - Number of decimal places of precision when comparing ordinates.
+  *    p_distanceTolerance (Number)             - Optional maximum distance difference (see ST_TopologyPreservingSimplify)
+  *                                               for use with simplifying the resultant geometry. Enter 0.0 for no simplification.
+  *    p_parallelism       (integer)            - Number of partitions to union at once (1 is serial).
+  *    p_partitionSize     (integer)            - Maximum number of geometries in a partition (0 defaults to 1000).
+  *  RETURNS
+  *    Union Geometry (sdo_geometry)
+  *  EXAMPLE
+  *    select sdo_cs.transform(
+  *                   sc4o.ST_AggrUnionMixed(
+  *                           CURSOR(SELECT sdo_cs.transform(b.geom,32630) FROM provinces b),
+  *                           2,
+  *                           0.5,
+  *                           4,
+  *                           500),
+  *                   8307) as uGeom
+  *     from dual a;
+  *  NOTES
+  *    LICENSE is Creative Commons Attribution-Share Alike 2.5 Australia License.
+  *               http://creativecommons.org/licenses/by-sa/2.5/au/
+  ******/
+  Function ST_AggrUnionMixed(p_resultSet         in &&defaultSchema..SC4O.refcur_t,
+                             p_precision         in number,
+                             p_distanceTolerance in Number,
+                             p_parallelism       in integer,
+                             p_partitionSize     in integer)
+    Return mdsys.sdo_geometry Deterministic;
+
+  /****f* SC4O/ST_AggrUnionPolygons(table,parallelism)
+  *  NAME
+  *    ST_AggrUnionPolygons -- Unions all sdo_geometry polygon objects in a column of a database object by spatial partition.
+  *  SYNOPSIS
+  *    Function ST_AggrUnionPolygons(p_tableName         in varchar2,
+  *                                  p_columnName        in varchar2,
+  *                                  p_precision         in number,
+  *                                  p_distanceTolerance in Number,
+  *                                  p_parallelism       in integer,
+  *                                  p_partitionSize     in integer)
+  *      Return mdsys.sdo_geometry Deterministic;
+  *  DESCRIPTION
+  *    As for the version of ST_AggrUnionPolygons without p_parallelism and p_partitionSize,
+  *    except that the input is divided into spatially clustered partitions of at most p_partitionSize
+  *    geometries (via an STRtree). Each partition is unioned separately, and the partial results
+  *    are then merged pairwise with their neighbours until one geometry remains. This bounds the
+  *    memory needed by each union step, and lets p_parallelism partitions be unioned at once.
+  *    Within the Oracle JVM all threads of a session share a single session thread, so
+  *    p_parallelism only shortens elapsed time when the Java is run outside the database.
+  *  ARGUMENTS
+  *    p_tableName         (varchar2)           - Name of existing table/view etc whose contents will be unioned.
+  *    p_columnName        (varchar2)           - Name of sdo_geometry column in p_tableName holding polygons for unioning.
+  *    p_precision         (integer)            - Number of decimal places of precision when comparing ordinates.
+  *    p_distanceTolerance (Number)             - Optional maximum distance difference (see ST_TopologyPreservingSimplify)
+  *                                               for use with simplifying the resultant geometry. Enter 0.0 for no simplification.
+  *    p_parallelism       (integer)            - Number of partitions to union at once (1 is serial).
+  *    p_partitionSize     (integer)            - Maximum number of geometries in a partition (0 defaults to 1000).
+  *  RETURNS
+  *    Union Geometry (sdo_geometry)
+  *  EXAMPLE
+  *    select sdo_cs.transform(sc4o.ST_AggrUnionPolygons('PROVS32630','GEOM',2,0.5,4,500),8307) as uGeom
+  *      from dual a;
+  *  NOTES
+  *    LICENSE is Creative Commons Attribution-Share Alike 2.5 Australia License.
+  *               http://creativecommons.org/licenses/by-sa/2.5/au/
+  ******/
+  Function ST_AggrUnionPolygons(p_tableName         in varchar2,
+                                p_columnName        in varchar2,
+                                p_precision         in number,
+                                p_distanceTolerance in Number,
+                                p_parallelism       in integer,
+                                p_partitionSize     in integer)
+    Return mdsys.sdo_geometry Deterministic;
+
+  /****f* SC4O/ST_AggrUnionMixed(table,parallelism)
+  *  NAME
+  *    ST_AggrUnionMixed -- Unions all sdo_geometry objects (can be mix of polygons, lines etc) in a column of a database object by spatial partition.
+  *  SYNOPSIS
+  *    Function ST_AggrUnionMixed(p_tableName         in varchar2,
+  *                               p_columnName        in varchar2,
+  *                               p_precision         in number,
+  *                               p_distanceTolerance in Number,
+  *                               p_parallelism       in integer,
+  *                               p_partitionSize     in integer)
+  *      Return mdsys.sdo_geometry Deterministic;
+  *  DESCRIPTION
+  *    As for the version of ST_AggrUnionMixed without p_parallelism and p_partitionSize,
+  *    except that the input is divided into spatially clustered partitions of at most p_partitionSize
+  *    geometries (via an STRtree). Each partition is unioned separately, and the partial results
+  *    are then merged pairwise with their neighbours until one geometry remains. This bounds the
+  *    memory needed by each union step, and lets p_parallelism partitions be unioned at once.
+  *    Within the Oracle JVM all threads of a session share a single session thread, so
+  *    p_parallelism only shortens elapsed time when the Java is run outside the database.
+  *  ARGUMENTS
+  *    p_tableName         (varchar2)           - Name of existing table/view etc whose contents will be unioned.
+  *    p_columnName        (varchar2)           - Name of sdo_geometry column in p_tableName holding geometries for unioning.
+  *    p_precision         (integer)            - Number of decimal places of precision when comparing ordinates.
+  *    p_distanceTolerance (Number)             - Optional maximum distance difference (see ST_TopologyPreservingSimplify)
+  *                                               for use with simplifying the resultant geometry. Enter 0.0 for no simplification.
+  *    p_parallelism       (integer)            - Number of partitions to union at once (1 is serial).
+  *    p_partitionSize     (integer)            - Maximum number of geometries in a partition (0 defaults to 1000).
+  *  RETURNS
+  *    Union Geometry (sdo_geometry)
+  *  EXAMPLE
+  *    select sdo_cs.transform(sc4o.ST_AggrUnionMixed('PROVS32630','GEOM',2,0.5,4,500),8307) as uGeom
+  *      from dual a;
+  *  NOTES
+  *    LICENSE is Creative Commons Attribution-Share Alike 2.5 Australia License.
+  *               http://creativecommons.org/licenses/by-sa/2.5/au/
+  ******/
+  Function ST_AggrUnionMixed(p_tableName         in varchar2,
+                             p_columnName        in varchar2,
+                             p_precision         in number,
+                             p_distanceTolerance in Number,
+                             p_parallelism       in integer,
+                             p_partitionSize     in integer)
+    Return mdsys.sdo_geometry Deterministic;
+
 End SC4O;
 /
 SHOW ERRORS
@@ -4520,6 +5576,62 @@ PACKAGE BODY SC4O AS
         As language java name
            'com.spdba.dbutils.aggr.Aggregate.aggrUnionMixed(java.lang.String,java.lang.String,int,double) return oracle.sql.STRUCT';
 
+  Function ST_AggrUnionPolygons(p_geomset           in mdsys.sdo_geometry_array,
+                                p_precision         in number,
+                                p_distanceTolerance in Number,
+                                p_parallelism       in integer,
+                                p_partitionSize     in integer)
+    Return mdsys.sdo_geometry
+        As language java name
+           'com.spdba.dbutils.aggr.Aggregate.aggrUnionPolygons(oracle.sql.ARRAY,int,double,int,int) return oracle.sql.STRUCT';
+
+  Function ST_AggrUnionMixed(p_geomset           in mdsys.sdo_geometry_array,
+                             p_precision         in number,
+                             p_distanceTolerance in Number,
+                             p_parallelism       in integer,
+                             p_partitionSize     in integer)
+    Return mdsys.sdo_geometry
+        As language java name
+           'com.spdba.dbutils.aggr.Aggregate.aggrUnionMixed(oracle.sql.ARRAY,int,double,int,int) return oracle.sql.STRUCT';
+
+  Function ST_AggrUnionPolygons(p_resultSet         in &&defaultSchema..SC4O.refcur_t,
+                                p_precision         in number,
+                                p_distanceTolerance in Number,
+                                p_parallelism       in integer,
+                                p_partitionSize     in integer)
+    Return mdsys.sdo_geometry
+        As language java name
+           'com.spdba.dbutils.aggr.Aggregate.aggrUnionPolygons(java.sql.ResultSet,int,double,int,int) return oracle.sql.STRUCT';
+
+  Function ST_AggrUnionMixed(p_resultSet         in &&defaultSchema..SC4O.refcur_t,
+                             p_precision         in number,
+                             p_distanceTolerance in Number,
+                             p_parallelism       in integer,
+                             p_partitionSize     in integer)
+    Return mdsys.sdo_geometry
+        As language java name
+           'com.spdba.dbutils.aggr.Aggregate.aggrUnionMixed(java.sql.ResultSet,int,double,int,int) return oracle.sql.STRUCT';
+
+  Function ST_AggrUnionPolygons(p_tableName         in varchar2,
+                                p_columnName        in varchar2,
+                                p_precision         in number,
+                                p_distanceTolerance in Number,
+                                p_parallelism       in integer,
+                                p_partitionSize     in integer)
+    Return mdsys.sdo_geometry
+        As language java name
+           'com.spdba.dbutils.aggr.Aggregate.aggrUnionPolygons(java.lang.String,java.lang.String,int,double,int,int) return oracle.sql.STRUCT';
+
+  Function ST_AggrUnionMixed(p_tableName         in varchar2,
+                             p_columnName        in varchar2,
+                             p_precision         in number,
+                             p_distanceTolerance in Number,
+                             p_parallelism       in integer,
+                             p_partitionSize     in integer)
+    Return mdsys.sdo_geometry
+        As language java name
+           'com.spdba.dbutils.aggr.Aggregate.aggrUnionMixed(java.lang.String,java.lang.String,int,double,int,int) return oracle.sql.STRUCT';
+
   Function ST_Difference(p_geom1     in mdsys.sdo_geometry,
                          p_geom2     in mdsys.sdo_geometry,
                          p_precision in number)
@@ -4574,6 +5686,79 @@ PACKAGE BODY SC4O AS
         As language java name
            'com.spdba.dbutils.Comparitor.ST_Relate(oracle.sql.STRUCT,java.lang.String,oracle.sql.STRUCT,int) return java.lang.String';
 
+  Function ST_PreparedCacheStatistics
+    Return varchar2
+        As language java name
+           'com.spdba.dbutils.PreparedGeometryCache.getStatistics() return java.lang.String';
+
+  Procedure ST_PreparedCacheClear
+        As language java name
+           'com.spdba.dbutils.PreparedGeometryCache.clear()';
+
+  Procedure ST_SetPreparedCacheSize(p_entries in number)
+        As language java name
+           'com.spdba.dbutils.PreparedGeometryCache.setMaximumSize(int)';
+
+  Procedure ST_SetFetchMemoryBudget(p_bytes in number)
+        As language java name
+           'com.spdba.dbutils.sql.FetchSizer.setDefaultMemoryBudget(long)';
+
+  Function ST_SpatialJoinIMPL(p_resultSet1  in &&defaultSchema..SC4O.refcur_t,
+                              p_resultSet2  in &&defaultSchema..SC4O.refcur_t,
+                              p_mask        in varchar2,
+                              p_precision   in number,
+                              p_pairType    in varchar2,
+                              p_pairSetType in varchar2)
+    Return &&defaultSchema..T_JoinPairSet
+    As language java name
+           'com.spdba.dbutils.SpatialJoin.ST_SpatialJoin(java.sql.ResultSet, java.sql.ResultSet, java.lang.String, int, java.lang.String, java.lang.String) return oracle.sql.ARRAY';
+
+  Function ST_SpatialJoinIMPL(p_geomSet1    in mdsys.sdo_geometry_array,
+                              p_geomSet2    in mdsys.sdo_geometry_array,
+                              p_mask        in varchar2,
+                              p_precision   in number,
+                              p_pairType    in varchar2,
+                              p_pairSetType in varchar2)
+    Return &&defaultSchema..T_JoinPairSet
+    As language java name
+           'com.spdba.dbutils.SpatialJoin.ST_SpatialJoin(oracle.sql.ARRAY, oracle.sql.ARRAY, java.lang.String, int, java.lang.String, java.lang.String) return oracle.sql.ARRAY';
+
+  Function ST_SpatialJoin(p_resultSet1 in &&defaultSchema..SC4O.refcur_t,
+                          p_resultSet2 in &&defaultSchema..SC4O.refcur_t,
+                          p_mask       in varchar2,
+                          p_precision  in number)
+    Return &&defaultSchema..T_JoinPairSet Pipelined
+  As
+    v_pairs &&defaultSchema..T_JoinPairSet;
+  Begin
+    v_pairs := ST_SpatialJoinIMPL(p_resultSet1,p_resultSet2,p_mask,p_precision,
+                                  '&&defaultSchema..T_JOINPAIR','&&defaultSchema..T_JOINPAIRSET');
+    If ( v_pairs is not null ) Then
+      For i in 1..v_pairs.COUNT Loop
+        PIPE ROW (v_pairs(i));
+      End Loop;
+    End If;
+    Return;
+  End ST_SpatialJoin;
+
+  Function ST_SpatialJoin(p_geomSet1   in mdsys.sdo_geometry_array,
+                          p_geomSet2   in mdsys.sdo_geometry_array,
+                          p_mask       in varchar2,
+                          p_precision  in number)
+    Return &&defaultSchema..T_JoinPairSet Pipelined
+  As
+    v_pairs &&defaultSchema..T_JoinPairSet;
+  Begin
+    v_pairs := ST_SpatialJoinIMPL(p_geomSet1,p_geomSet2,p_mask,p_precision,
+                                  '&&defaultSchema..T_JOINPAIR','&&defaultSchema..T_JOINPAIRSET');
+    If ( v_pairs is not null ) Then
+      For i in 1..v_pairs.COUNT Loop
+        PIPE ROW (v_pairs(i));
+      End Loop;
+    End If;
+    Return;
+  End ST_SpatialJoin;
+
   /** ============================== PROCESSING ================================= */
 
   Function ST_Buffer(p_geom             in mdsys.sdo_geometry,
@@ -4764,6 +5949,205 @@ PACKAGE BODY SC4O AS
         As language java name
            'com.spdba.dbutils.JTS.ST_Voronoi(java.sql.ResultSet,oracle.sql.STRUCT,double,int) return oracle.sql.STRUCT';
 
+  Function ST_TravellingSalesman(p_points      in mdsys.sdo_geometry,
+                                 p_start_id    in number,
+                                 p_start_point in mdsys.sdo_geometry,
+                                 p_geo_fence   in mdsys.sdo_geometry,
+                                 p_precision   in number)
+    Return mdsys.sdo_geometry
+        As language java name
+           'com.spdba.dbutils.TravellingSalesman.ST_TravellingSalesman(oracle.sql.STRUCT,java.lang.Integer,oracle.sql.STRUCT,oracle.sql.STRUCT,int) return oracle.sql.STRUCT';
+
+  Function ST_LRS_Locate_Measure(p_lrs_segment in mdsys.sdo_geometry,
+                                 p_measure     in number,
+                                 p_offset      in number,
+                                 p_precision   in number)
+    Return mdsys.sdo_geometry
+        As language java name
+           'com.spdba.dbutils.lrs.LRS.ST_LRS_Locate_Measure(oracle.sql.STRUCT,double,double,int) return oracle.sql.STRUCT';
+
+  Function ST_LRS_Locate_Between(p_lrs_segment   in mdsys.sdo_geometry,
+                                 p_start_measure in number,
+                                 p_end_measure   in number,
+                                 p_offset        in number,
+                                 p_precision     in number)
+    Return mdsys.sdo_geometry
+        As language java name
+           'com.spdba.dbutils.lrs.LRS.ST_LRS_Locate_Between(oracle.sql.STRUCT,java.lang.Double,java.lang.Double,double,int) return oracle.sql.STRUCT';
+
+  Function ST_LRS_Project_Point(p_lrs_segment in mdsys.sdo_geometry,
+                                p_point       in mdsys.sdo_geometry,
+                                p_precision   in number)
+    Return mdsys.sdo_geometry
+        As language java name
+           'com.spdba.dbutils.lrs.LRS.ST_LRS_Project_Point(oracle.sql.STRUCT,oracle.sql.STRUCT,int) return oracle.sql.STRUCT';
+
+  Function ST_LRS_Find_Measure(p_lrs_segment in mdsys.sdo_geometry,
+                               p_point       in mdsys.sdo_geometry,
+                               p_precision   in number)
+    Return number
+        As language java name
+           'com.spdba.dbutils.lrs.LRS.ST_LRS_Find_Measure(oracle.sql.STRUCT,oracle.sql.STRUCT,int) return java.lang.Double';
+
+  Function ST_LRS_Scale_Measures(p_lrs_segment   in mdsys.sdo_geometry,
+                                 p_start_measure in number,
+                                 p_end_measure   in number,
+                                 p_shift_measure in number,
+                                 p_precision     in number)
+    Return mdsys.sdo_geometry
+        As language java name
+           'com.spdba.dbutils.lrs.LRS.ST_LRS_Scale_Measures(oracle.sql.STRUCT,double,double,double,int) return oracle.sql.STRUCT';
+
+  Function ST_LRS_Split(p_lrs_segment in mdsys.sdo_geometry,
+                        p_measure     in number,
+                        p_precision   in number)
+    Return mdsys.sdo_geometry_array
+        As language java name
+           'com.spdba.dbutils.lrs.LRS.ST_LRS_Split(oracle.sql.STRUCT,double,int) return oracle.sql.ARRAY';
+
+  Function ST_LRS_Locate_Measures(p_lrs_segment in mdsys.sdo_geometry,
+                                  p_measures    in mdsys.sdo_number_array,
+                                  p_offsets     in mdsys.sdo_number_array,
+                                  p_precision   in number)
+    Return mdsys.sdo_geometry_array
+        As language java name
+           'com.spdba.dbutils.lrs.LRS.ST_LRS_Locate_Measures(oracle.sql.STRUCT,oracle.sql.ARRAY,oracle.sql.ARRAY,int) return oracle.sql.ARRAY';
+
+  Function ST_LRS_Find_Measures(p_lrs_segment in mdsys.sdo_geometry,
+                                p_points      in mdsys.sdo_geometry_array,
+                                p_precision   in number)
+    Return mdsys.sdo_number_array
+        As language java name
+           'com.spdba.dbutils.lrs.LRS.ST_LRS_Find_Measures(oracle.sql.STRUCT,oracle.sql.ARRAY,int) return oracle.sql.ARRAY';
+
+  Function ST_LRS_Dynamic_Segment_Open(p_events       in &&defaultSchema..SC4O.refcur_t,
+                                       p_routes       in &&defaultSchema..SC4O.refcur_t,
+                                       p_precision    in number,
+                                       p_eventType    in varchar2,
+                                       p_eventSetType in varchar2)
+    Return number
+    As language java name
+           'com.spdba.dbutils.lrs.DynamicSegmentation.ST_LRS_Dynamic_Segment_Open(java.sql.ResultSet, java.sql.ResultSet, int, java.lang.String, java.lang.String) return int';
+
+  Function ST_LRS_Dynamic_Segment_Fetch(p_handle     in number,
+                                        p_batch_size in number)
+    Return &&defaultSchema..T_LocatedEventSet
+    As language java name
+           'com.spdba.dbutils.lrs.DynamicSegmentation.ST_LRS_Dynamic_Segment_Fetch(int, int) return oracle.sql.ARRAY';
+
+  Procedure ST_LRS_Dynamic_Segment_Close(p_handle in number)
+    As language java name
+           'com.spdba.dbutils.lrs.DynamicSegmentation.ST_LRS_Dynamic_Segment_Close(int)';
+
+  Function ST_LRS_Dynamic_Segment(p_events    in &&defaultSchema..SC4O.refcur_t,
+                                  p_routes    in &&defaultSchema..SC4O.refcur_t,
+                                  p_precision in number)
+    Return &&defaultSchema..T_LocatedEventSet Pipelined
+  As
+    c_batch_size CONSTANT PLS_INTEGER := 10000;
+    v_handle     number;
+    v_events     &&defaultSchema..T_LocatedEventSet;
+  Begin
+    v_handle := ST_LRS_Dynamic_Segment_Open(p_events,p_routes,p_precision,
+                                            '&&defaultSchema..T_LOCATEDEVENT','&&defaultSchema..T_LOCATEDEVENTSET');
+    -- The handle is closed by the fetch that finds no more events
+    LOOP
+      v_events := ST_LRS_Dynamic_Segment_Fetch(v_handle,c_batch_size);
+      EXIT WHEN v_events is null;
+      For i in 1..v_events.COUNT Loop
+        PIPE ROW (v_events(i));
+      End Loop;
+    END LOOP;
+    Return;
+    EXCEPTION
+      WHEN NO_DATA_NEEDED THEN
+        ST_LRS_Dynamic_Segment_Close(v_handle);
+        Return;
+      WHEN OTHERS THEN
+        If ( v_handle is not null ) Then
+          ST_LRS_Dynamic_Segment_Close(v_handle);
+        End If;
+        RAISE;
+  End ST_LRS_Dynamic_Segment;
+
+  Function ST_Morton(p_col in number,
+                     p_row in number)
+    Return number
+        As language java name
+           'com.spdba.dbutils.Space.Morton(long,long) return long';
+
+  Function ST_QuadTreeIMPL(p_features    in &&defaultSchema..SC4O.refcur_t,
+                           p_xmin        in number,
+                           p_ymin        in number,
+                           p_xmax        in number,
+                           p_ymax        in number,
+                           p_max_level   in number,
+                           p_max_count   in number,
+                           p_tileType    in varchar2,
+                           p_tileSetType in varchar2)
+    Return &&defaultSchema..T_QuadTileSet
+    As language java name
+           'com.spdba.dbutils.QuadTree.ST_QuadTree(java.sql.ResultSet, double, double, double, double, int, int, java.lang.String, java.lang.String) return oracle.sql.ARRAY';
+
+  Function ST_QuadTree(p_features  in &&defaultSchema..SC4O.refcur_t,
+                       p_xmin      in number,
+                       p_ymin      in number,
+                       p_xmax      in number,
+                       p_ymax      in number,
+                       p_max_level in number,
+                       p_max_count in number)
+    Return &&defaultSchema..T_QuadTileSet
+  As
+  Begin
+    Return ST_QuadTreeIMPL(p_features,p_xmin,p_ymin,p_xmax,p_ymax,p_max_level,p_max_count,
+                           '&&defaultSchema..T_QUADTILE','&&defaultSchema..T_QUADTILESET');
+  End ST_QuadTree;
+
+  Function ST_QuadTree_To_File(p_features   in &&defaultSchema..SC4O.refcur_t,
+                               p_xmin       in number,
+                               p_ymin       in number,
+                               p_xmax       in number,
+                               p_ymax       in number,
+                               p_max_level  in number,
+                               p_max_count  in number,
+                               p_output_dir in varchar2,
+                               p_file_name  in varchar2)
+    Return number
+        As language java name
+           'com.spdba.dbutils.QuadTree.ST_QuadTree_To_File(java.sql.ResultSet, double, double, double, double, int, int, java.lang.String, java.lang.String) return int';
+
+  Function ST_TileIMPL(p_geom        in mdsys.sdo_geometry,
+                       p_tile_x      in number,
+                       p_tile_y      in number,
+                       p_grid_type   in varchar2,
+                       p_option      in varchar2,
+                       p_precision   in number,
+                       p_cellType    in varchar2,
+                       p_cellSetType in varchar2)
+    Return &&defaultSchema..T_GridCellSet
+    As language java name
+           'com.spdba.dbutils.Grid.ST_Tile(oracle.sql.STRUCT, double, double, java.lang.String, java.lang.String, int, java.lang.String, java.lang.String) return oracle.sql.ARRAY';
+
+  Function ST_Tile(p_geom      in mdsys.sdo_geometry,
+                   p_tile_x    in number,
+                   p_tile_y    in number,
+                   p_grid_type in varchar2 default 'TILE',
+                   p_option    in varchar2 default 'TOUCH',
+                   p_precision in number   default 3)
+    Return &&defaultSchema..T_GridCellSet Pipelined
+  As
+    v_cells &&defaultSchema..T_GridCellSet;
+  Begin
+    v_cells := ST_TileIMPL(p_geom,p_tile_x,p_tile_y,p_grid_type,p_option,p_precision,
+                           '&&defaultSchema..T_GRIDCELL','&&defaultSchema..T_GRIDCELLSET');
+    If ( v_cells is not null ) Then
+      For i in 1..v_cells.COUNT Loop
+        PIPE ROW (v_cells(i));
+      End Loop;
+    End If;
+    Return;
+  End ST_Tile;
+
   Function ST_Voronoi(p_geomset   in mdsys.sdo_geometry_array,
                       p_envelope  in mdsys.sdo_geometry,
                       p_tolerance in number,
@@ -4873,6 +6257,11 @@ PACKAGE BODY SC4O AS
         As language java name
            'com.spdba.dbutils.JTS.ST_GeomFromGML(java.lang.String) return oracle.sql.STRUCT';
 
+  Function ST_GeomFromGML(p_gml in CLOB)
+    Return mdsys.sdo_geometry
+        As language java name
+           'com.spdba.dbutils.JTS.ST_GeomFromGML(oracle.sql.CLOB) return oracle.sql.STRUCT';
+
   Function ST_GeomFromEWKT(p_ewkt in CLOB)
     Return mdsys.sdo_geometry
         As language java name
@@ -4930,6 +6319,18 @@ PACKAGE BODY SC4O AS
     As language java name
            'com.spdba.dbutils.io.imp.wkb.EWKBImporter.ST_GeomFromEWKB(oracle.sql.BLOB, int) return oracle.sql.STRUCT';
 
+  Function ST_GeomFromEWKB(p_ewkbSet   in &&defaultSchema..T_BlobSet,
+                           p_srid      in number default -1)
+    Return mdsys.sdo_geometry_array
+    As language java name
+           'com.spdba.dbutils.io.imp.wkb.EWKBImporter.ST_GeomFromEWKB(oracle.sql.ARRAY, int) return oracle.sql.ARRAY';
+
+  Function ST_GeomFromEWKB(p_resultSet in &&defaultSchema..SC4O.refcur_t,
+                           p_srid      in number default -1)
+    Return mdsys.sdo_geometry_array
+    As language java name
+           'com.spdba.dbutils.io.imp.wkb.EWKBImporter.ST_GeomFromEWKB(java.sql.ResultSet, int) return oracle.sql.ARRAY';
+
   Function ST_GeomFromBinary(p_ewkb in BLOB)
     Return mdsys.sdo_geometry
     As language java name
@@ -4980,6 +6381,68 @@ PACKAGE BODY SC4O AS
     As language java name
            'com.spdba.dbutils.io.exp.wkb.EWKBExporter.ST_AsEWKB(oracle.sql.STRUCT, java.lang.String) return oracle.sql.BLOB';
 
+  -- Set based binary output: the collection type is passed so it is found whatever the current schema
+
+  Function ST_AsEWKBIMPL(p_geomSet   in mdsys.sdo_geometry_array,
+                         p_endian    in varchar2,
+                         p_blobType  in varchar2)
+    Return &&defaultSchema..T_BlobSet
+    As language java name
+           'com.spdba.dbutils.io.exp.wkb.EWKBExporter.ST_AsEWKB(oracle.sql.ARRAY, java.lang.String, java.lang.String) return oracle.sql.ARRAY';
+
+  Function ST_AsEWKBIMPL(p_resultSet in &&defaultSchema..SC4O.refcur_t,
+                         p_endian    in varchar2,
+                         p_blobType  in varchar2)
+    Return &&defaultSchema..T_BlobSet
+    As language java name
+           'com.spdba.dbutils.io.exp.wkb.EWKBExporter.ST_AsEWKB(java.sql.ResultSet, java.lang.String, java.lang.String) return oracle.sql.ARRAY';
+
+  Function ST_AsBinaryIMPL(p_geomSet   in mdsys.sdo_geometry_array,
+                           p_endian    in varchar2,
+                           p_blobType  in varchar2)
+    Return &&defaultSchema..T_BlobSet
+    As language java name
+           'com.spdba.dbutils.io.exp.wkb.EWKBExporter.ST_AsBinary(oracle.sql.ARRAY, java.lang.String, java.lang.String) return oracle.sql.ARRAY';
+
+  Function ST_AsBinaryIMPL(p_resultSet in &&defaultSchema..SC4O.refcur_t,
+                           p_endian    in varchar2,
+                           p_blobType  in varchar2)
+    Return &&defaultSchema..T_BlobSet
+    As language java name
+           'com.spdba.dbutils.io.exp.wkb.EWKBExporter.ST_AsBinary(java.sql.ResultSet, java.lang.String, java.lang.String) return oracle.sql.ARRAY';
+
+  Function ST_AsEWKB(p_geomSet   in mdsys.sdo_geometry_array,
+                     p_endian    in varchar2 default NULL)
+    Return &&defaultSchema..T_BlobSet
+  As
+  Begin
+    Return ST_AsEWKBIMPL(p_geomSet,p_endian,'&&defaultSchema..T_BLOBSET');
+  End ST_AsEWKB;
+
+  Function ST_AsEWKB(p_resultSet in &&defaultSchema..SC4O.refcur_t,
+                     p_endian    in varchar2 default NULL)
+    Return &&defaultSchema..T_BlobSet
+  As
+  Begin
+    Return ST_AsEWKBIMPL(p_resultSet,p_endian,'&&defaultSchema..T_BLOBSET');
+  End ST_AsEWKB;
+
+  Function ST_AsBinary(p_geomSet   in mdsys.sdo_geometry_array,
+                       p_endian    in varchar2 default NULL)
+    Return &&defaultSchema..T_BlobSet
+  As
+  Begin
+    Return ST_AsBinaryIMPL(p_geomSet,p_endian,'&&defaultSchema..T_BLOBSET');
+  End ST_AsBinary;
+
+  Function ST_AsBinary(p_resultSet in &&defaultSchema..SC4O.refcur_t,
+                       p_endian    in varchar2 default NULL)
+    Return &&defaultSchema..T_BlobSet
+  As
+  Begin
+    Return ST_AsBinaryIMPL(p_resultSet,p_endian,'&&defaultSchema..T_BLOBSET');
+  End ST_AsBinary;
+
 END SC4O;
 /
 show errors
@@ -5008,6 +6471,15 @@ END;
 SHOW ERRORS
 
 grant execute on SC4O to public;
+grant execute on T_BlobSet to public;
+grant execute on T_JoinPair to public;
+grant execute on T_JoinPairSet to public;
+grant execute on T_LocatedEvent to public;
+grant execute on T_LocatedEventSet to public;
+grant execute on T_QuadTile to public;
+grant execute on T_QuadTileSet to public;
+grant execute on T_GridCell to public;
+grant execute on T_GridCellSet to public;
 
 quit;
 
@@ -4,6 +4,15 @@ SET VERIFY OFF;
 
 drop package body SC4O;
 drop package      SC4O;
+drop type         T_BlobSet;
+drop type         T_JoinPairSet;
+drop type         T_JoinPair;
+drop type         T_LocatedEventSet;
+drop type         T_LocatedEvent;
+drop type         T_QuadTileSet;
+drop type         T_QuadTile;
+drop type         T_GridCellSet;
+drop type         T_GridCell;
 drop package body EXPORTER;
 drop package      EXPORTER;
 
@@ -17,12 +17,13 @@ import org.locationtech.jts.operation.relate.RelateOp;
 import java.sql.SQLException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.StringTokenizer;
 
 import oracle.sql.STRUCT;
 
-import org.locationtech.jts.precision.GeometryPrecisionReducer;
 
 
 public class Comparitor {
@@ -55,7 +56,6 @@ public class Comparitor {
                                                      int    _precision)
   throws SQLException
   {
-        Tools.setPrecisionScale(_precision);
         return _SimilarityMeasure(_geom1, _geom2, _precision, Comparitor.HAUSDORFF);
   }
 
@@ -81,7 +81,6 @@ public class Comparitor {
                                                  int    _precision)
   throws SQLException
   {
-        Tools.setPrecisionScale(_precision);
         return _SimilarityMeasure(_geom1, _geom2, _precision, Comparitor.AREA);
   }
   
@@ -211,23 +210,34 @@ public class Comparitor {
           if (SDO.hasArc(_geom1) ) {throw new SQLException("First geometry has circular arcs that JTS does not support.");}
           if (SDO.hasArc(_geom2) ) {throw new SQLException("Second geometry has circular arcs that JTS does not support.");}
 
-          PrecisionModel  pm = new PrecisionModel(Tools.getPrecisionScale(_precision));
-          GeometryFactory gf = new GeometryFactory(pm,SRID); 
-          OraReader       or = new OraReader(gf);
-          Geometry      geo1 = or.read(_geom1);
-          Geometry      geo2 = or.read(_geom2);
-          
-          // Check converted geometries are valid
+          // Converted, valid and precision reduced geometries are cached
+          // as the same geometry is often compared with many others
           //
-          if (   geo1 == null  ) { throw new SQLException("Converted first geometry is NULL."); }
-          if ( ! geo1.isValid()) { throw new SQLException("Converted first geometry is invalid."); }
-          if (   geo2 == null  ) { throw new SQLException("Converted second geometry is NULL."); }
-          if ( ! geo2.isValid()) { throw new SQLException("Converted second geometry is invalid." ); }
+          PreparedGeometryCache.Entry first = PreparedGeometryCache.get(_geom1,_precision,"first");
+          PreparedGeometryCache.Entry second = PreparedGeometryCache.get(_geom2,_precision,"second");
+          return relate(first,mask,second);
+        } catch (Exception e) {
+            returnString = "ERROR: " + e.toString();
+        }
+      return returnString;
+    }
+
+    /**
+     * Relates two converted geometries as described for ST_Relate.
+     * @param _first  : PreparedGeometryCache.Entry : First geometry
+     * @param _mask   : String : DETERMINE, ANYINTERACT, list of relationships or DE-9IM Matrix string
+     * @param _second : PreparedGeometryCache.Entry : Second geometry
+     * @return String : Result of comparison.
+     */
+    static String relate(PreparedGeometryCache.Entry _first,
+                         String                      _mask,
+                         PreparedGeometryCache.Entry _second)
+    {
+          String mask = _mask;
+          String returnString = "";
+          Geometry geo1 = _first.getGeometry();
+          Geometry geo2 = _second.getGeometry();
 
-          // Reduce each geometry to common precision
-          geo1 = GeometryPrecisionReducer.reduce(geo1,pm);
-          geo2 = GeometryPrecisionReducer.reduce(geo2,pm);
-          
           /* The pattern is a 9-character string, with symbols drawn from the following set:
            *  <UL>
            *    <LI> 0 (dimension 0)
@@ -238,16 +248,23 @@ public class Comparitor {
            *    <LI> * ( matches any value)
            *  </UL>
           */
-          if ( _mask.length() == 9 && 
-               (_mask.contains("0") ||
-                _mask.contains("1") ||
-                _mask.contains("2") ||
-                _mask.contains("F") ||
-                _mask.contains("*") ) ) {
-              boolean equalsMask = geo1.relate(geo2,_mask);
+          if ( mask.length() == 9 && 
+               (mask.contains("0") ||
+                mask.contains("1") ||
+                mask.contains("2") ||
+                mask.contains("F") ||
+                mask.contains("*") ) ) {
+              boolean equalsMask = geo1.relate(geo2,mask);
               return equalsMask ? "TRUE" : "FALSE";
           }
 
+          // Masks that can be answered by prepared geometry predicates
+          // do not need the full intersection matrix
+          String preparedResult = preparedRelate(_first,mask,_second);
+          if ( preparedResult != null ) {
+              return preparedResult;
+          }
+
           // Now get relationship mask
           IntersectionMatrix im = RelateOp.relate(geo1,geo2);
           // Process relationship mask
@@ -311,10 +328,105 @@ public class Comparitor {
                   }
               }
           }
-        } catch (Exception e) {
-            returnString = "ERROR: " + e.toString();
-        }
       return returnString;
     }
-    
+
+    /** Relationships that preparedRelate can determine */
+    private static final List PREPARED_MASKS = Arrays.asList(new String[] {
+        "CONTAINS", "COVEREDBY", "COVERS", "DISJOINT", "INTERSECTS", "WITHIN" });
+
+    /**
+     * Answers ANYINTERACT, or a list of relationships all in PREPARED_MASKS, with
+     * prepared geometry predicates. Prepared fast paths are used for a geometry that
+     * is already prepared or has been seen before; a geometry seen once is not prepared.
+     * <p>
+     * As ST_Relate returns EQUAL for topologically equal geometries whatever the mask,
+     * a result is only returned if the geometries' envelopes differ or a predicate has
+     * shown the geometries are not equal.
+     * @return String : Result, or null if the full intersection matrix is needed.
+     */
+    private static String preparedRelate(PreparedGeometryCache.Entry _first,
+                                         String                      _mask,
+                                         PreparedGeometryCache.Entry _second)
+    {
+        boolean mayBeEqual = _first.getEnvelope().equals(_second.getEnvelope());
+        if ( _mask.equalsIgnoreCase("ANYINTERACT") ) {
+            if ( ! intersects(_first,_second) ) {
+                return "FALSE";
+            }
+            return mayBeEqual ? null : "TRUE";
+        }
+        List tokens = new ArrayList();
+        StringTokenizer st = new StringTokenizer(_mask.toUpperCase(),",");
+        while ( st.hasMoreTokens() ) {
+            String token = st.nextToken();
+            if ( ! PREPARED_MASKS.contains(token) ) {
+                return null;
+            }
+            tokens.add(token);
+        }
+        if ( tokens.size() == 0 ) {
+            return null;
+        }
+        boolean notEqual = ! mayBeEqual;
+        String returnString = "";
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = (String)tokens.get(i);
+            boolean holds;
+            if ( token.equals("INTERSECTS") ) {
+                holds = intersects(_first,_second);
+            } else if ( token.equals("DISJOINT") ) {
+                holds = ! intersects(_first,_second);
+            } else if ( token.equals("CONTAINS") ) {
+                holds = isWorthPreparing(_first)
+                        ? _first.getPrepared().contains(_second.getGeometry())
+                        : _first.getGeometry().contains(_second.getGeometry());
+            } else if ( token.equals("COVERS") ) {
+                holds = isWorthPreparing(_first)
+                        ? _first.getPrepared().covers(_second.getGeometry())
+                        : _first.getGeometry().covers(_second.getGeometry());
+            } else if ( token.equals("WITHIN") ) {
+                holds = isWorthPreparing(_second)
+                        ? _second.getPrepared().contains(_first.getGeometry())
+                        : _second.getGeometry().contains(_first.getGeometry());
+            } else {
+                // COVEREDBY
+                holds = isWorthPreparing(_second)
+                        ? _second.getPrepared().covers(_first.getGeometry())
+                        : _second.getGeometry().covers(_first.getGeometry());
+            }
+            // Equal geometries are not disjoint and have all the other relationships
+            notEqual = notEqual || (token.equals("DISJOINT") ? holds : ! holds);
+            if ( holds ) {
+                returnString += token + ",";
+            }
+        }
+        if ( ! notEqual ) {
+            return null;
+        }
+        return returnString.length() == 0
+               ? "FALSE"
+               : returnString.substring(0, returnString.length()-1);
+    }
+
+    private static boolean isWorthPreparing(PreparedGeometryCache.Entry _entry) {
+        return _entry.isPrepared() || _entry.getUses() > 0;
+    }
+
+    /**
+     * Intersects is symmetric so the geometry seen most often is prepared.
+     */
+    private static boolean intersects(PreparedGeometryCache.Entry _first,
+                                      PreparedGeometryCache.Entry _second)
+    {
+        if ( isWorthPreparing(_second) &&
+             ( _second.getUses() > _first.getUses() || ( _second.isPrepared() && ! _first.isPrepared() ) ) ) {
+            return _second.getPrepared().intersects(_first.getGeometry());
+        }
+        if ( isWorthPreparing(_first) ) {
+            return _first.getPrepared().intersects(_second.getGeometry());
+        }
+        return _first.getGeometry().intersects(_second.getGeometry());
+    }
+
 }
@@ -0,0 +1,477 @@
+package com.spdba.dbutils;
+
+import com.spdba.dbutils.spatial.SDO;
+import com.spdba.dbutils.sql.DBConnection;
+import com.spdba.dbutils.tools.Strings;
+import com.spdba.dbutils.tools.Tools;
+
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import oracle.jdbc.OracleConnection;
+
+import oracle.sql.ARRAY;
+import oracle.sql.ArrayDescriptor;
+import oracle.sql.Datum;
+import oracle.sql.NUMBER;
+import oracle.sql.STRUCT;
+import oracle.sql.StructDescriptor;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygonal;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.geom.util.LinearComponentExtracter;
+import org.locationtech.jts.io.oracle.OraDescriptorCache;
+import org.locationtech.jts.io.oracle.OraReader;
+import org.locationtech.jts.io.oracle.OraUtil;
+import org.locationtech.jts.io.oracle.OraWriter;
+
+/**
+ * Covers a linestring or polygon with a grid of tiles, as T_GEOMETRY.ST_Tile does,
+ * without testing every cell of the grid against the geometry.
+ * <p>
+ * The cells are classified a row at a time:
+ * <ul>
+ * <li>each edge of the geometry marks the cells it passes through or touches in each
+ *     row it spans as boundary candidates;</li>
+ * <li>for a polygon, a scanline along the centre of each row (with an active edge list)
+ *     gives the intervals inside the polygon, and the cells of those intervals that no
+ *     edge touches are interior.</li>
+ * </ul>
+ * Interior cells are returned without any geometric test. Boundary candidates are tested
+ * with the geometry's {@link PreparedGeometry} or, when clipping, clipped by a small part of
+ * the polygon found by halving the grid (columns, then rows) and cutting the polygon down
+ * to each half. All other cells are outside and never looked at.
+ * <p>
+ * As the PL/SQL, cell (col,row) covers col*tileX..(col+1)*tileX by row*tileY..(row+1)*tileY;
+ * the columns and rows run from TRUNC(min/tile) to CEIL(max/tile)-1 of the geometry's
+ * envelope (widened by half a tile when narrower than one); and cells are returned column
+ * by column. No tolerance is applied: a cell must touch the geometry to be returned.
+ */
+public class Grid
+{
+    /** Object type of the cells returned when none is given */
+    public static final String DEFAULT_CELL_TYPE     = "T_GRIDCELL";
+    /** Collection type of the cells returned when none is given */
+    public static final String DEFAULT_CELL_SET_TYPE = "T_GRIDCELLSET";
+
+    private static final byte CANDIDATE = 1;        // An edge passes through or touches the cell
+    private static final byte INTERIOR  = 2;        // Inside the polygon, away from its boundary
+    /** In cells: widens the span of an edge so that cells sharing a side with it are candidates */
+    private static final double EPSILON = 1.0E-9;
+    /** Number of points below which a part of the polygon is no longer cut down before clipping cells */
+    private static final int SMALL_PIECE = 64;
+
+    /**
+     * Receives each cell to be returned, column by column.
+     */
+    interface Visitor
+    {
+        /**
+         * @param _col  : long : Column of cell
+         * @param _row  : long : Row of cell
+         * @param _clip : Geometry : Part of the polygon in the cell, or NULL for the whole cell
+         */
+        void visit(long _col, long _row, Geometry _clip) throws SQLException;
+    }
+
+    private static final Comparator<double[]> BY_MINIMUM_Y = new Comparator<double[]>() {
+        public int compare(double[] _edge1, double[] _edge2) {
+            return Double.compare(Math.min(_edge1[1],_edge1[3]),Math.min(_edge2[1],_edge2[3]));
+        }
+    };
+
+    /**
+     * Covers a linestring or polygon with a grid of tiles.
+     * @param _geom        : STRUCT : Linestring, polygon or their multi forms
+     * @param _tileX       : double : Width of a tile
+     * @param _tileY       : double : Height of a tile
+     * @param _gridType    : String : TILE (rectangle) or BOTH (rectangle with centre point in SDO_POINT)
+     * @param _option      : String : MBR, TOUCH, CLIP, HALFCLIP or HALFTOUCH, as T_GEOMETRY.ST_Tile
+     * @param _precision   : int    : Number of decimal places of precision of clipped tiles
+     * @param _cellType    : String : Object type of the cells eg GIS.T_GRIDCELL; NULL for DEFAULT_CELL_TYPE
+     * @param _cellSetType : String : Collection type eg GIS.T_GRIDCELLSET; NULL for DEFAULT_CELL_SET_TYPE
+     * @return ARRAY : (gcol, grow, geom) for each tile, column by column
+     * @throws SQLException
+     */
+    public static ARRAY ST_Tile(STRUCT _geom,
+                                double _tileX,
+                                double _tileY,
+                                String _gridType,
+                                String _option,
+                                int    _precision,
+                                String _cellType,
+                                String _cellSetType)
+    throws SQLException
+    {
+        if ( _geom == null ) {
+            throw new SQLException("ST_Tile: Supplied Sdo_Geometry is NULL.");
+        }
+        if ( _tileX <= 0.0 || _tileY <= 0.0 ) {
+            throw new SQLException("ST_Tile: Tile sizes must be greater than 0.");
+        }
+        String gridType = Strings.isEmpty(_gridType) ? "TILE"  : _gridType.toUpperCase(),
+                 option = Strings.isEmpty(_option)   ? "TOUCH" : _option.toUpperCase();
+        if ( ! gridType.equals("TILE") && ! gridType.equals("BOTH") ) {
+            throw new SQLException("ST_Tile: Grid type (" + gridType + ") must be TILE or BOTH.");
+        }
+        if ( ! Arrays.asList("MBR","TOUCH","CLIP","HALFCLIP","HALFTOUCH").contains(option) ) {
+            throw new SQLException("ST_Tile: Option (" + option + ") must be MBR, TOUCH, CLIP, HALFCLIP or HALFTOUCH.");
+        }
+        int gType = SDO.getGType(_geom);
+        if ( gType != 2 && gType != 3 && gType != 6 && gType != 7 ) {
+            throw new SQLException("ST_Tile: Geometry must be a linestring, polygon or their multi forms.");
+        }
+        if ( SDO.hasArc(_geom) ) {
+            throw new SQLException("ST_Tile: Geometry has circular arcs that JTS does not support.");
+        }
+        final int            srid = SDO.getSRID(_geom,SDO.SRID_NULL);
+        PrecisionModel         pm = new PrecisionModel(Tools.getPrecisionScale(_precision));
+        Geometry             geom = new OraReader(new GeometryFactory(pm,srid)).read(_geom);
+        if ( geom == null || geom.isEmpty() ) {
+            throw new SQLException("ST_Tile: Converted geometry is NULL or empty.");
+        }
+
+        final OracleConnection  conn = DBConnection.getConnection();
+        String cellType    = Strings.isEmpty(_cellType)    ? DEFAULT_CELL_TYPE     : _cellType.toUpperCase(),
+               cellSetType = Strings.isEmpty(_cellSetType) ? DEFAULT_CELL_SET_TYPE : _cellSetType.toUpperCase();
+        final StructDescriptor cellDescriptor = OraDescriptorCache.getStructDescriptor(cellType,conn);
+        final ARRAY              rectangle = OraUtil.toARRAY(new int[] { 1, 1003, 3 },SDO.TAG_MDSYS_SDO_ELEM_ARRAY,conn);
+        final OraWriter             writer = new OraWriter(2);
+        final boolean           centrePoint = gridType.equals("BOTH");
+        final double tileX = _tileX,
+                     tileY = _tileY;
+        final List<STRUCT> cells = new ArrayList<STRUCT>();
+        tile(geom,_tileX,_tileY,option,new Visitor() {
+            public void visit(long _col, long _row, Geometry _clip) throws SQLException {
+                STRUCT tile;
+                if ( _clip != null ) {
+                    tile = writer.write(_clip,conn);
+                } else {
+                    double x = _col * tileX,
+                           y = _row * tileY;
+                    STRUCT point = null;
+                    if ( centrePoint ) {
+                        point = OraUtil.toSTRUCT(new Datum[] { OraUtil.toNUMBER(x + tileX / 2.0),
+                                                               OraUtil.toNUMBER(y + tileY / 2.0),
+                                                               null },
+                                                 SDO.TAG_MDSYS_SDO_POINT_TYPE,conn);
+                    }
+                    tile = OraUtil.toSTRUCT(new Datum[] { new NUMBER(2003),
+                                                          srid == SDO.SRID_NULL ? null : new NUMBER(srid),
+                                                          point,
+                                                          rectangle,
+                                                          OraUtil.toARRAY(new double[] { x, y, x + tileX, y + tileY },SDO.TAG_MDSYS_SDO_ORD_ARRAY,conn) },
+                                            SDO.TAG_MDSYS_SDO_GEOMETRY,conn);
+                }
+                cells.add(new STRUCT(cellDescriptor,conn,new Object[] { Long.valueOf(_col), Long.valueOf(_row), tile }));
+            }
+        });
+        ArrayDescriptor descriptor = OraDescriptorCache.getArrayDescriptor(cellSetType,conn);
+        return new ARRAY(descriptor,conn,cells.toArray(new STRUCT[cells.size()]));
+    }
+
+    /**
+     * Passes each tile covering _geom for _option to _visitor, column by column.
+     * @param _geom    : Geometry : Lineal or polygonal geometry
+     * @param _tileX   : double : Width of a tile
+     * @param _tileY   : double : Height of a tile
+     * @param _option  : String : MBR, TOUCH, CLIP, HALFCLIP or HALFTOUCH
+     * @param _visitor : Visitor : Receives the tiles
+     * @throws SQLException if the grid has too many cells, or _visitor fails
+     */
+    static void tile(Geometry _geom,
+                     double   _tileX,
+                     double   _tileY,
+                     String   _option,
+                     Visitor  _visitor)
+    throws SQLException
+    {
+        // Extent, widened by half a tile if less than one, and its columns and rows as the PL/SQL
+        Envelope mbr = _geom.getEnvelopeInternal();
+        double  minX = mbr.getMinX(), maxX = mbr.getMaxX(),
+                minY = mbr.getMinY(), maxY = mbr.getMaxY();
+        if ( maxX - minX < _tileX ) { minX -= _tileX / 2.0; maxX += _tileX / 2.0; }
+        if ( maxY - minY < _tileY ) { minY -= _tileY / 2.0; maxY += _tileY / 2.0; }
+        long loCol = (long)(minX / _tileX),
+             loRow = (long)(minY / _tileY),
+             hiCol = (long)Math.ceil(maxX / _tileX) - 1,
+             hiRow = (long)Math.ceil(maxY / _tileY) - 1;
+        if ( hiCol < loCol || hiRow < loRow ) {
+            return;
+        }
+        if ( _option.equals("MBR") ) {
+            for (long col = loCol; col <= hiCol; col++) {
+                for (long row = loRow; row <= hiRow; row++) {
+                    _visitor.visit(col,row,null);
+                }
+            }
+            return;
+        }
+        long cols = hiCol - loCol + 1,
+             rows = hiRow - loRow + 1;
+        if ( cols * rows > Integer.MAX_VALUE - 8 ) {
+            throw new SQLException("ST_Tile: Grid of " + cols + " by " + rows + " tiles is too large.");
+        }
+        Grid grid = new Grid(_tileX,_tileY,loCol,loRow,hiCol,hiRow);
+
+        // Classify cells
+        List<double[]> edges = edges(_geom);
+        grid.markEdges(edges);
+        boolean polygonal = _geom instanceof Polygonal;
+        if ( polygonal ) {
+            grid.markInterior(edges);
+        }
+        edges = null;
+
+        // Boundary cells are tested against the whole geometry, or clipped by the part of it around them
+        if ( polygonal && ! _option.equals("TOUCH") ) {
+            grid.clip(_geom,loCol,hiCol,_option,_visitor);
+            return;
+        }
+        PreparedGeometry prepared = PreparedGeometryFactory.prepare(_geom);
+        for (long col = loCol; col <= hiCol; col++) {
+            for (long row = loRow; row <= hiRow; row++) {
+                byte state = grid.cells[grid.index(col,row)];
+                if ( state == INTERIOR ||
+                     ( state == CANDIDATE && prepared.intersects(grid.cell(_geom.getFactory(),col,col,row,row)) ) ) {
+                    _visitor.visit(col,row,null);
+                }
+            }
+        }
+    }
+
+    private final double tileX, tileY;
+    private final long   loCol, loRow, hiCol, hiRow;
+    private final int    rows;
+    private final byte[] cells;  // Column by column
+
+    private Grid(double _tileX, double _tileY, long _loCol, long _loRow, long _hiCol, long _hiRow)
+    {
+        this.tileX = _tileX;
+        this.tileY = _tileY;
+        this.loCol = _loCol;
+        this.loRow = _loRow;
+        this.hiCol = _hiCol;
+        this.hiRow = _hiRow;
+        this.rows  = (int)(_hiRow - _loRow + 1);
+        this.cells = new byte[(int)((_hiCol - _loCol + 1) * this.rows)];
+    }
+
+    private int index(long _col, long _row) {
+        return (int)((_col - this.loCol) * this.rows + (_row - this.loRow));
+    }
+
+    /**
+     * @return Geometry : Polygon covering columns _col1.._col2 and rows _row1.._row2
+     */
+    private Geometry cell(GeometryFactory _gf, long _col1, long _col2, long _row1, long _row2) {
+        return _gf.toGeometry(new Envelope(_col1 * this.tileX,(_col2 * this.tileX) + this.tileX,
+                                           _row1 * this.tileY,(_row2 * this.tileY) + this.tileY));
+    }
+
+    /**
+     * Intersects each part of _piece with _rectangle, skipping the overlay for parts within or
+     * outside it.
+     */
+    private static Geometry intersection(Geometry _piece, Geometry _rectangle) {
+        Envelope rectangle = _rectangle.getEnvelopeInternal();
+        if ( rectangle.covers(_piece.getEnvelopeInternal()) ) {
+            return _piece;
+        }
+        List<Geometry> parts = new ArrayList<Geometry>();
+        for (int i = 0; i < _piece.getNumGeometries(); i++) {
+            Geometry part = _piece.getGeometryN(i);
+            if ( rectangle.covers(part.getEnvelopeInternal()) ) {
+                parts.add(part);
+            } else if ( rectangle.intersects(part.getEnvelopeInternal()) ) {
+                Geometry clipped = part.intersection(_rectangle);
+                for (int j = 0; j < clipped.getNumGeometries(); j++) {
+                    if ( ! clipped.getGeometryN(j).isEmpty() ) {
+                        parts.add(clipped.getGeometryN(j));
+                    }
+                }
+            }
+        }
+        return _piece.getFactory().buildGeometry(parts);
+    }
+
+    /**
+     * @return boolean : True if a cell of columns _col1.._col2, rows _row1.._row2 is a candidate
+     */
+    private boolean hasCandidate(long _col1, long _col2, long _row1, long _row2) {
+        for (long col = _col1; col <= _col2; col++) {
+            for (int i = index(col,_row1), last = index(col,_row2); i <= last; i++) {
+                if ( this.cells[i] == CANDIDATE ) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Passes the cells of columns _col1.._col2 to _visitor, column by column, clipping boundary cells.
+     * The columns are halved, and _piece cut down to each half, until _piece is small or one column
+     * is left, so each boundary cell is clipped by a small part of the polygon, not all of it.
+     * @param _piece : Geometry : The polygon within columns _col1.._col2
+     */
+    private void clip(Geometry _piece,
+                      long     _col1,
+                      long     _col2,
+                      String   _option,
+                      Visitor  _visitor)
+    throws SQLException
+    {
+        if ( _col1 < _col2 && _piece.getNumPoints() > SMALL_PIECE && hasCandidate(_col1,_col2,this.loRow,this.hiRow) ) {
+            long mid = _col1 + (_col2 - _col1) / 2;
+            clip(intersection(_piece,cell(_piece.getFactory(),_col1,mid,this.loRow,this.hiRow)),_col1,mid,_option,_visitor);
+            clip(intersection(_piece,cell(_piece.getFactory(),mid + 1,_col2,this.loRow,this.hiRow)),mid + 1,_col2,_option,_visitor);
+            return;
+        }
+        for (long col = _col1; col <= _col2; col++) {
+            clip(_piece,col,this.loRow,this.hiRow,_option,_visitor);
+        }
+    }
+
+    /**
+     * Passes the cells of rows _row1.._row2 of column _col to _visitor, clipping boundary cells.
+     * The rows are halved, and _piece cut down to each half, as the columns are.
+     * @param _piece : Geometry : The polygon within the cells
+     */
+    private void clip(Geometry _piece,
+                      long     _col,
+                      long     _row1,
+                      long     _row2,
+                      String   _option,
+                      Visitor  _visitor)
+    throws SQLException
+    {
+        if ( _row1 < _row2 && _piece.getNumPoints() > SMALL_PIECE && hasCandidate(_col,_col,_row1,_row2) ) {
+            long mid = _row1 + (_row2 - _row1) / 2;
+            clip(intersection(_piece,cell(_piece.getFactory(),_col,_col,_row1,mid)),_col,_row1,mid,_option,_visitor);
+            clip(intersection(_piece,cell(_piece.getFactory(),_col,_col,mid + 1,_row2)),_col,mid + 1,_row2,_option,_visitor);
+            return;
+        }
+        double halfTile = this.tileX * this.tileY / 2.0;
+        for (long row = _row1; row <= _row2; row++) {
+            byte state = this.cells[index(_col,row)];
+            if ( state == INTERIOR ) {
+                _visitor.visit(_col,row,null);
+                continue;
+            }
+            if ( state != CANDIDATE ) {
+                continue;
+            }
+            Geometry clipped = intersection(_piece,cell(_piece.getFactory(),_col,_col,row,row));
+            if ( clipped.isEmpty() ) {
+                continue;
+            }
+            if ( _option.equals("CLIP") ) {
+                _visitor.visit(_col,row,clipped);
+            } else if ( clipped.getArea() >= halfTile ) {
+                _visitor.visit(_col,row,_option.equals("HALFCLIP") ? clipped : null);
+            }
+        }
+    }
+
+    /**
+     * Marks the cells each edge passes through or touches, row by row, as candidates.
+     */
+    private void markEdges(List<double[]> _edges)
+    {
+        for (double[] edge : _edges) {
+            double x1 = edge[0], y1 = edge[1], x2 = edge[2], y2 = edge[3];
+            double ylo = Math.min(y1,y2),
+                   yhi = Math.max(y1,y2);
+            long firstRow = Math.max(this.loRow,(long)Math.floor(ylo / this.tileY - EPSILON)),
+                  lastRow = Math.min(this.hiRow,(long)Math.floor(yhi / this.tileY + EPSILON));
+            for (long row = firstRow; row <= lastRow; row++) {
+                // Part of edge in row
+                double xa = x1, xb = x2;
+                if ( y1 != y2 ) {
+                    double bandLo = Math.max(ylo,row * this.tileY),
+                           bandHi = Math.min(yhi,(row * this.tileY) + this.tileY);
+                    xa = x1 + (bandLo - y1) / (y2 - y1) * (x2 - x1);
+                    xb = x1 + (bandHi - y1) / (y2 - y1) * (x2 - x1);
+                }
+                long firstCol = Math.max(this.loCol,(long)Math.floor(Math.min(xa,xb) / this.tileX - EPSILON)),
+                      lastCol = Math.min(this.hiCol,(long)Math.floor(Math.max(xa,xb) / this.tileX + EPSILON));
+                for (long col = firstCol; col <= lastCol; col++) {
+                    this.cells[index(col,row)] = CANDIDATE;
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the cells whose centres are inside the polygon, and that no edge touches, as interior.
+     * Crossings of each row's centre line are found from the edges spanning it (an active edge list).
+     */
+    private void markInterior(List<double[]> _edges)
+    {
+        Collections.sort(_edges,BY_MINIMUM_Y);
+        List<double[]> active = new ArrayList<double[]>();
+        double[]    crossings = new double[16];
+        int              next = 0;
+        for (long row = this.loRow; row <= this.hiRow; row++) {
+            double y = (row * this.tileY) + this.tileY / 2.0;
+            while ( next < _edges.size() && Math.min(_edges.get(next)[1],_edges.get(next)[3]) <= y ) {
+                active.add(_edges.get(next++));
+            }
+            // An edge crosses y if it starts on or below it and ends above it
+            int count = 0;
+            for (int i = active.size() - 1; i >= 0; i--) {
+                double[] edge = active.get(i);
+                if ( Math.max(edge[1],edge[3]) <= y ) {
+                    active.set(i,active.get(active.size() - 1));
+                    active.remove(active.size() - 1);
+                    continue;
+                }
+                if ( count == crossings.length ) {
+                    crossings = Arrays.copyOf(crossings,count * 2);
+                }
+                crossings[count++] = edge[0] + (y - edge[1]) / (edge[3] - edge[1]) * (edge[2] - edge[0]);
+            }
+            Arrays.sort(crossings,0,count);
+            for (int i = 0; i + 1 < count; i += 2) {
+                long firstCol = Math.max(this.loCol,(long)Math.ceil(crossings[i] / this.tileX - 0.5)),
+                      lastCol = Math.min(this.hiCol,(long)Math.floor(crossings[i + 1] / this.tileX - 0.5));
+                for (long col = firstCol; col <= lastCol; col++) {
+                    int index = index(col,row);
+                    if ( this.cells[index] == 0 ) {
+                        this.cells[index] = INTERIOR;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return List : { x1, y1, x2, y2 } of each segment of each linestring or ring
+     */
+    private static List<double[]> edges(Geometry _geom)
+    {
+        List<double[]> edges = new ArrayList<double[]>(_geom.getNumPoints());
+        List         lines = LinearComponentExtracter.getLines(_geom);
+        for (int l = 0; l < lines.size(); l++) {
+            Coordinate[] coords = ((LineString)lines.get(l)).getCoordinates();
+            for (int i = 1; i < coords.length; i++) {
+                edges.add(new double[] { coords[i - 1].x, coords[i - 1].y, coords[i].x, coords[i].y });
+            }
+        }
+        return edges;
+    }
+
+}
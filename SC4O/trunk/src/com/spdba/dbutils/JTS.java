@@ -4,15 +4,15 @@ import com.spdba.dbutils.editors.AddPoint;
 import com.spdba.dbutils.editors.GeometryEditor;
 import com.spdba.dbutils.editors.RemovePoint;
 import com.spdba.dbutils.filters.ChangePointFilter;
+import com.spdba.dbutils.io.imp.gml.GMLImporter;
 import com.spdba.dbutils.spatial.SDO;
 import com.spdba.dbutils.sql.DBConnection;
+import com.spdba.dbutils.sql.FetchSizer;
 import com.spdba.dbutils.sql.SQLConversionTools;
 import com.spdba.dbutils.tools.MathUtils;
 import com.spdba.dbutils.tools.Strings;
 import com.spdba.dbutils.tools.Tools;
 
-import java.io.IOException;
-
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -22,8 +22,6 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 
-import javax.xml.parsers.ParserConfigurationException;
-
 import oracle.jdbc.OracleTypes;
 
 import oracle.sql.ARRAY;
@@ -46,7 +44,6 @@ import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.geom.PrecisionModel;
 import org.locationtech.jts.geom.Triangle;
-import org.locationtech.jts.io.gml2.GMLReader;
 import org.locationtech.jts.io.gml2.GMLWriter;
 import org.locationtech.jts.io.oracle.OraReader;
 import org.locationtech.jts.io.oracle.OraWriter;
@@ -67,7 +64,6 @@ import org.locationtech.jts.triangulate.DelaunayTriangulationBuilder;
 import org.locationtech.jts.triangulate.VertexTaggedGeometryDataMapper;
 import org.locationtech.jts.triangulate.VoronoiDiagramBuilder;
 
-import org.xml.sax.SAXException;
 //import org.locationtech.jts.geom.util.GeometryEditor;
 // Visvalingam-Whyatt Simplifier
 
@@ -77,11 +73,16 @@ public class JTS
     protected static final int mixedCoordinateDimensions = -9;
     protected static final int                mixedSRIDs = -9;
     
-    private static class Result {
-        protected static GeometryFactory      gf = null;
-        protected static Collection        geoms = null;
-        protected static int                SRID = 0; // If -9 then mixedSRIDs in set
-        protected static int coordinateDimension = 0; // If -9 then mixedCoordinateDimensions in set
+    /**
+     * Holds the state of a single ARRAY/ResultSet conversion.
+     * A new instance is created by each call to _convertArray/_convertResultSet
+     * so that concurrent calls do not share conversion state.
+     */
+    static final class Result {
+        GeometryFactory      gf = null;
+        Collection        geoms = null;
+        int                SRID = 0; // If -9 then mixedSRIDs in set
+        int coordinateDimension = 0; // If -9 then mixedCoordinateDimensions in set
     }
 
     protected static final boolean   THROW_SQL_EXCEPTION = true;
@@ -221,8 +222,8 @@ public class JTS
             // Create GeometryFactory with FIXED PrecisionModel with NULL SRID 
             int            SRID = -9999;
             OraReader        or = null;
-            _resultSet.setFetchDirection(ResultSet.FETCH_FORWARD);
-            _resultSet.setFetchSize(150);
+            FetchSizer       fs = new FetchSizer();
+            fs.start(_resultSet);
             ResultSetMetaData metaData = _resultSet.getMetaData();
             while(_resultSet.next()) 
             {
@@ -231,6 +232,7 @@ public class JTS
                     continue;
                 }
                 struct = (STRUCT)_resultSet.getObject(geometryColumnIndex);
+                fs.rowFetched(_resultSet,struct);
                 if (struct == null) { continue; }
                 if (SRID == -9999) {
                     SRID = SDO.getSRID(struct, SDO.SRID_NULL);
@@ -283,8 +285,7 @@ public class JTS
                                   int    _precision)
     throws SQLException
     {
-        Tools.setPrecisionScale(_precision);
-        return _overlay(_geom1, _geom2, OverlayOp.UNION);
+        return _overlay(_geom1, _geom2, OverlayOp.UNION, _precision);
     }
 
     /**
@@ -304,8 +305,7 @@ public class JTS
                                        int    _precision)
     throws SQLException
     {
-        Tools.setPrecisionScale(_precision);
-        return _overlay(_geom1, _geom2, OverlayOp.DIFFERENCE);
+        return _overlay(_geom1, _geom2, OverlayOp.DIFFERENCE, _precision);
     }
 
     /**
@@ -325,8 +325,7 @@ public class JTS
                                          int    _precision)
     throws SQLException
     {
-        Tools.setPrecisionScale(_precision);
-        return _overlay(_geom1, _geom2, OverlayOp.INTERSECTION);
+        return _overlay(_geom1, _geom2, OverlayOp.INTERSECTION, _precision);
     }
 
     /**
@@ -346,14 +345,14 @@ public class JTS
                                 int    _precision)
     throws SQLException
     {
-        Tools.setPrecisionScale(_precision);
-        return _overlay(_geom1, _geom2, OverlayOp.SYMDIFFERENCE);
+        return _overlay(_geom1, _geom2, OverlayOp.SYMDIFFERENCE, _precision);
     }
 
     /**
      * @param _geom1         : STRUCT : First geometry subject to overlay action
      * @param _geom2         : STRUCT : Second geometry subject to overlay action
      * @param _operationType : int    : See OverlayOp eg INTERSECTION, UNION etc
+     * @param _precision     : int    : Number of decimal places of precision when comparing ordinates.
      * @return SDO_GEOMETRY  : Result of overlay as SDO_Geometry
      * @throws SQLException
      * @author Simon Greener
@@ -361,7 +360,8 @@ public class JTS
      */
     private static STRUCT _overlay(STRUCT _geom1,
                                    STRUCT _geom2,
-                                   int    _operationType)
+                                   int    _operationType,
+                                   int    _precision)
      throws SQLException
     {
         String opType = "ST_";
@@ -387,7 +387,7 @@ public class JTS
             }
             // Convert Geometries
             //
-            PrecisionModel  pm = new PrecisionModel(Tools.getPrecisionScale());
+            PrecisionModel  pm = new PrecisionModel(Tools.getPrecisionScale(_precision));
             GeometryFactory gf = new GeometryFactory(pm,SRID); 
             OraReader       or = new OraReader(gf);
             Geometry      geo1 = or.read(_geom1);
@@ -980,8 +980,6 @@ public class JTS
         STRUCT resultSDOGeom = null;
         try
         {
-            Tools.setPrecisionScale(_precision);
-            
             OraWriter       ow = new OraWriter(dims);
             PrecisionModel  pm = new PrecisionModel(Tools.getPrecisionScale(_precision));
             GeometryFactory gf = new GeometryFactory(pm, SRID);
@@ -1026,6 +1024,39 @@ public class JTS
         return resultSDOGeom;
     }
 
+     /**
+      * Merges lines to form maximal-length linestrings.
+      * Holds no state outside the call so may be called concurrently.
+      * @param _lines : Collection      : JTS LineStrings (other geometry types are ignored)
+      * @param _gf    : GeometryFactory : Factory for the result
+      * @return Geometry : LineString, MultiLineString or null
+      */
+     static Geometry lineMerger(Collection      _lines,
+                                GeometryFactory _gf)
+     {
+        if (_lines == null || _lines.size()==0) {
+            return null;
+        }
+        // Try to merges lines to form maximal-length linestrings.
+        //
+        LineMerger lm = new LineMerger();
+        // Add will only add LineStrings to LineMerger
+        //
+        lm.add(_lines);
+        Collection mlines = lm.getMergedLineStrings();
+        if ( mlines == null || mlines.size() == 0 ) {
+            return null;
+        }
+        // Construct an appropriate Geometry for return...
+        //
+        // GeometryCollection mergedLineStrings = new GeometryCollection(((Geometry[])mlines.toArray(new Geometry[0])),_gf);
+        if ( mlines.size()==1) {
+            Iterator ilines = mlines.iterator();
+            return (LineString)ilines.next();
+        }
+        return new MultiLineString(((LineString[])mlines.toArray(new LineString[0])),_gf);
+     }
+
      private static STRUCT _LineMerger(Collection      _lines,
                                        GeometryFactory _gf)
      throws SQLException
@@ -1035,27 +1066,11 @@ public class JTS
         }
         try
         {
-            // Try to merges lines to form maximal-length linestrings.
-            //
-            LineMerger lm = new LineMerger();
-            // Add will only add LineStrings to LineMerger
-            //
-            lm.add(_lines);
-            Collection mlines = lm.getMergedLineStrings();
-            if ( mlines == null || mlines.size() == 0 ) {
+            Geometry mergedLines = lineMerger(_lines,_gf);
+            if ( mergedLines == null ) {
                 return null;
             }
-            // Construct an appropriate Geometry for return...
-            //
-            // GeometryCollection mergedLineStrings = new GeometryCollection(((Geometry[])mlines.toArray(new Geometry[0])),_gf);
-            Geometry mergedLines = null;
-            if ( mlines.size()==1) {
-                Iterator ilines = mlines.iterator();
-                mergedLines = (LineString)ilines.next();
-            } else {
-                mergedLines = new MultiLineString(((LineString[])mlines.toArray(new LineString[0])),_gf);
-            }
-            if (mergedLines==null || mergedLines.isEmpty()) {
+            if (mergedLines.isEmpty()) {
                 JTS.log("ST_LineMerger: Failed to convert merged line strings to suitable geometry type.",THROW_SQL_EXCEPTION);
                 return null;
             } 
@@ -1131,6 +1146,9 @@ public class JTS
            }
            try { 
                Result linesObj = _convertResultSet(_resultSet,_precision,true);
+               if ( linesObj == null ) {
+                   return null;
+               }
                // Result GeometryFactory is created in _convertResultSet
                return _LineMerger(linesObj.geoms,linesObj.gf);
            } catch (SQLException sqle) {
@@ -1367,15 +1385,20 @@ public class JTS
 
      /* =============================================================================================== */
 
-     private static STRUCT _polygonBuilder(Collection      _lines,
-                                           GeometryFactory _gf,
-                                           OraWriter       _ow) 
+     /**
+      * Builds polygons from a collection of (noded) linestrings.
+      * Holds no state outside the call so may be called concurrently.
+      * @param _lines : Collection      : JTS LineStrings
+      * @param _gf    : GeometryFactory : Factory for the result
+      * @return Geometry : Polygon, GeometryCollection of Polygons, or null if no polygons formed
+      * @throws SQLException
+      */
+     static Geometry polygonBuilder(Collection      _lines,
+                                    GeometryFactory _gf) 
      throws SQLException
      {
-         STRUCT resultSDOGeom = null;
          // Now try and create polygons from linestrings in lines collection
          //
-         int maxDimension = 2;
          Polygonizer polygonizer = new Polygonizer();
          polygonizer.add(_lines); // mlines);
          Collection polys = polygonizer.getPolygons();
@@ -1384,35 +1407,44 @@ public class JTS
              // Iterate over all formed polygons and create single result
              //
              Iterator it = polys.iterator();
-             if ( it != null ) {
-                 int i = 0;
-                 Object p = null; 
-                 while ( it.hasNext() ) 
-                 {
-                     p = it.next();
-                     // System.out.println("Type is " + ((Geometry)p).getGeometryType());
-                     if ( p instanceof Polygon ) {
-                         polygons.add(p);
-                         maxDimension = Math.max(maxDimension,(Tools.getCoordDim((Geometry)p)));
-                     }
+             Object p = null; 
+             while ( it.hasNext() ) 
+             {
+                 p = it.next();
+                 if ( p instanceof Polygon ) {
+                     polygons.add(p);
                  }
-                 _ow.setDimension(maxDimension);
-                 if ( polygons.size()==0 ) {
-                     return null;
-                 } else if ( polygons.size() == 1 ) {
-                     Geometry poly = (Geometry)polygons.toArray(new Geometry[0])[0];
-                     resultSDOGeom = _ow.write(poly,DBConnection.getConnection());
-                 } else if ( polygons.size() > 1 ) {
-                     GeometryCollection coll = new GeometryCollection(((Geometry[])polygons.toArray(new Geometry[0])),_gf);
-                     resultSDOGeom = _ow.write(coll,DBConnection.getConnection());
-                 } 
+             }
+             if ( polygons.size()==0 ) {
+                 return null;
+             } else if ( polygons.size() == 1 ) {
+                 return (Geometry)polygons.toArray(new Geometry[0])[0];
+             } else {
+                 return new GeometryCollection(((Geometry[])polygons.toArray(new Geometry[0])),_gf);
              }
          } else {
              Collection remains = polygonizer.getDangles(); if (remains!=null) JTS.log("Dangles "+remains.size(),WRITE_MESSAGE_TO_LOG);
              remains = polygonizer.getCutEdges();           if (remains!=null) JTS.log("CutEdges "+remains.size(),WRITE_MESSAGE_TO_LOG);
              remains = polygonizer.getInvalidRingLines();   if (remains!=null) JTS.log("InvalidRings "+remains.size(),WRITE_MESSAGE_TO_LOG); 
          }
-         return resultSDOGeom;
+         return null;
+     }
+
+     private static STRUCT _polygonBuilder(Collection      _lines,
+                                           GeometryFactory _gf,
+                                           OraWriter       _ow) 
+     throws SQLException
+     {
+         Geometry polygons = polygonBuilder(_lines,_gf);
+         if ( polygons == null ) {
+             return null;
+         }
+         int maxDimension = 2;
+         for (int i=0; i<polygons.getNumGeometries(); i++) {
+             maxDimension = Math.max(maxDimension,(Tools.getCoordDim(polygons.getGeometryN(i))));
+         }
+         _ow.setDimension(maxDimension);
+         return _ow.write(polygons,DBConnection.getConnection());
      }
 
     /**
@@ -2321,6 +2353,24 @@ public class JTS
     
     /* ============= Delaunay/Voronoi etc methods =============== */
     
+    /**
+     * Computes the Delaunay triangles of the vertices of a collection of geometries.
+     * Holds no state outside the call so may be called concurrently.
+     * @param _geoms     : Collection      : JTS Geometries providing the sites
+     * @param _tolerance : double          : Snapping tolerance
+     * @param _gf        : GeometryFactory : Factory for the result
+     * @return Geometry  : GeometryCollection of triangles (Polygons)
+     */
+    static Geometry createTriangles(Collection      _geoms,
+                                    double          _tolerance,
+                                    GeometryFactory _gf) 
+    {
+        DelaunayTriangulationBuilder builder = new DelaunayTriangulationBuilder();
+        builder.setTolerance(_tolerance);
+        builder.setSites(new GeometryCollection(((Geometry[])_geoms.toArray(new Geometry[0])),_gf));
+        return builder.getTriangles(_gf);
+    }
+
     private static STRUCT _createTriangles(Collection      _geoms,
                                            double          _tolerance,
                                            GeometryFactory _gf) 
@@ -2329,13 +2379,9 @@ public class JTS
         STRUCT retSTRUCT = null;
         try {
             /* Now do the triangulation */
-            DelaunayTriangulationBuilder builder = new DelaunayTriangulationBuilder();
-            builder.setTolerance(_tolerance);
-            GeometryCollection gcIn = null;
-            gcIn = new GeometryCollection(((Geometry[])_geoms.toArray(new Geometry[0])),_gf);
-            builder.setSites(gcIn);
-            Geometry gOut = builder.getTriangles(_gf);
+            Geometry gOut = createTriangles(_geoms,_tolerance,_gf);
             if ( gOut != null && gOut.getNumGeometries()>0 ) {
+                Geometry gcIn = new GeometryCollection(((Geometry[])_geoms.toArray(new Geometry[0])),_gf);
                 OraWriter ow = new OraWriter(Tools.getCoordDim(gcIn));
                 retSTRUCT    = ow.write(gOut,
                                         DBConnection.getConnection());
@@ -2483,6 +2529,38 @@ public class JTS
 
     /* ================= VORONOI ================== */
     
+    /**
+     * Computes the Voronoi diagram of the vertices of a collection of geometries.
+     * Holds no state outside the call so may be called concurrently.
+     * @param _geoms     : Collection      : JTS Geometries providing the sites
+     * @param _clipGeom  : Geometry        : Optional geometry whose envelope clips the diagram
+     * @param _tolerance : double          : Snapping tolerance
+     * @param _gf        : GeometryFactory : Factory for the result
+     * @return Geometry  : GeometryCollection of Voronoi cells (Polygons)
+     */
+    static Geometry createVoronoi(Collection      _geoms,
+                                  Geometry        _clipGeom,
+                                  double          _tolerance,
+                                  GeometryFactory _gf) 
+    {
+        VertexTaggedGeometryDataMapper mapper = new VertexTaggedGeometryDataMapper();
+        mapper.loadSourceGeometries(_geoms);
+        VoronoiDiagramBuilder builder = new VoronoiDiagramBuilder();
+        builder.setSites(mapper.getCoordinates());
+        builder.setTolerance(_tolerance);
+        if (_clipGeom != null && _clipGeom.isValid()) {
+            builder.setClipEnvelope(_clipGeom.getEnvelopeInternal());
+        } else {
+            GeometryCollection gcIn = null;
+            gcIn = new GeometryCollection(((Geometry[])_geoms.toArray(new Geometry[0])),_gf);
+            Envelope e = new Envelope(gcIn.getEnvelopeInternal());  // SGG
+            e.expandBy(gcIn.getEnvelopeInternal().getWidth()/0.25,
+                       gcIn.getEnvelopeInternal().getHeight()/0.25);  // SGG
+            builder.setClipEnvelope(e);  // SGG                
+        }
+        return builder.getDiagram(_gf);
+    }
+
     private static STRUCT _createVoronoi(Collection      _geoms,
                                          Geometry        _clipGeom,
                                          double          _tolerance,
@@ -2491,22 +2569,7 @@ public class JTS
     {
         STRUCT retSTRUCT = null;
         try {
-            VertexTaggedGeometryDataMapper mapper = new VertexTaggedGeometryDataMapper();
-            mapper.loadSourceGeometries(_geoms);
-            VoronoiDiagramBuilder builder = new VoronoiDiagramBuilder();
-            builder.setSites(mapper.getCoordinates());
-            builder.setTolerance(_tolerance);
-            if (_clipGeom != null && _clipGeom.isValid()) {
-                builder.setClipEnvelope(_clipGeom.getEnvelopeInternal());
-            } else {
-                GeometryCollection gcIn = null;
-                gcIn = new GeometryCollection(((Geometry[])_geoms.toArray(new Geometry[0])),_gf);
-                Envelope e = gcIn.getEnvelopeInternal();  // SGG
-                e.expandBy(gcIn.getEnvelopeInternal().getWidth()/0.25,
-                           gcIn.getEnvelopeInternal().getHeight()/0.25);  // SGG
-                builder.setClipEnvelope(e);  // SGG                
-            }
-            Geometry gOut = builder.getDiagram(_gf);
+            Geometry gOut = createVoronoi(_geoms,_clipGeom,_tolerance,_gf);
             if ( gOut != null && gOut.getNumGeometries()>0 ) {
                 OraWriter ow = new OraWriter(Tools.getCoordDim(gOut));
                 retSTRUCT    = ow.write(gOut,DBConnection.getConnection());
@@ -2550,7 +2613,7 @@ public class JTS
              // (This sets geometryFactory etc)
              //
              Result r = _convertArray(_group,_precision,THROW_SQL_EXCEPTION);
-             if (r.geoms == null || r.geoms.size()==0) {
+             if (r == null || r.geoms == null || r.geoms.size()==0) {
                  return null;
              }
 
@@ -2600,7 +2663,7 @@ public class JTS
           try 
           {
               Result r = _convertResultSet(_resultSet,_precision,THROW_SQL_EXCEPTION);
-              if ( r.geoms == null || r.geoms.size()==0 ) {
+              if ( r == null || r.geoms == null || r.geoms.size()==0 ) {
                   return null;
               }
               OraReader     or = new OraReader(r.gf);
@@ -2904,6 +2967,12 @@ public class JTS
         return null;
     }
 
+    /**
+     * Converts GML 2, 3.1 or 3.2 to an SDO_Geometry using the streaming GMLImporter.
+     * The SRID is taken from the srsName (eg EPSG:4326, urn:ogc:def:crs:EPSG::4326).
+     * @param _gml : String : A GML geometry, or a document (eg FeatureCollection) containing geometries
+     * @return STRUCT : SDO_Geometry
+     */
     public static STRUCT ST_GeomFromGML(String _gml)
     throws SQLException 
     {
@@ -2911,35 +2980,27 @@ public class JTS
             JTS.log("ST_GeomFromGML: Supplied GML is NULL.",THROW_SQL_EXCEPTION);
            return null;
         }
-        // TODO: GML does not handle the SRID
-        STRUCT resultSDOGeom = null;        
         try {
-            // Convert Geometries
-            //
-            PrecisionModel  pm = new PrecisionModel(PrecisionModel.FIXED);
-            GeometryFactory gf = new GeometryFactory(pm, SDO.SRID_NULL);
-            GMLReader       gr = new GMLReader();
-            try 
-            {
-                Geometry  geom = gr.read(_gml,gf);
-                if (geom != null) {
-                    OraWriter  ow = new OraWriter(Tools.getCoordDim(geom));
-                    resultSDOGeom = ow.write(geom,DBConnection.getConnection());
-                }
-            } catch (NullPointerException npe) {
-                npe.printStackTrace();
-                throw new Exception("ST_GeomFromGMLNullPointerException caught: " + npe.toString());
-            }
-        } catch (IOException e) {
-            JTS.log("ST_GeomFromGMLIOException caught: " + e.toString(),THROW_SQL_EXCEPTION);
-        } catch (SAXException e) {
-            JTS.log("ST_GeomFromGMLSAXException caught: " + e.toString(),THROW_SQL_EXCEPTION);
-        } catch (ParserConfigurationException e) {
-            JTS.log("ST_GeomFromGMLParserConfigurationException caught: " + e.toString(),THROW_SQL_EXCEPTION);
+            return GMLImporter.ST_GeomFromGML(_gml);
         } catch (Exception e) {
             JTS.log("ST_GeomFromGML: Failed with " + e.getMessage(),THROW_SQL_EXCEPTION);
         }
-        return resultSDOGeom;
+        return null;
+    }
+
+    public static STRUCT ST_GeomFromGML(CLOB _gml)
+    throws SQLException 
+    {
+        if (_gml == null || _gml.length()==0 ) {
+            JTS.log("ST_GeomFromGML: Supplied GML is NULL.",THROW_SQL_EXCEPTION);
+           return null;
+        }
+        try {
+            return GMLImporter.ST_GeomFromGML(_gml);
+        } catch (Exception e) {
+            JTS.log("ST_GeomFromGML: Failed with " + e.getMessage(),THROW_SQL_EXCEPTION);
+        }
+        return null;
     }
 
     /**
@@ -3123,6 +3184,9 @@ public class JTS
               PrecisionModel  pm = new PrecisionModel(Tools.getPrecisionScale());
               GeometryFactory gf = new GeometryFactory(pm, SDO.getSRID(_geom, SDO.SRID_NULL)); 
               OraReader       or = new OraReader(gf);
+              // ChangePointFilter updates coordinates in place (including M)
+              // so read into the factory's coordinate sequences, not packed ones
+              or.setPackedCoordinates(false);
               Geometry      geom = or.read(_geom); // The target geometry
               Geometry     point = or.read(_vertex); // The Point Geometry
               // Check converted geometries are valid
@@ -0,0 +1,328 @@
+package com.spdba.dbutils;
+
+import com.spdba.dbutils.spatial.SDO;
+import com.spdba.dbutils.tools.Tools;
+
+import java.sql.SQLException;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import oracle.sql.ARRAY;
+import oracle.sql.Datum;
+import oracle.sql.STRUCT;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.io.WKBWriter;
+import org.locationtech.jts.io.oracle.OraReader;
+import org.locationtech.jts.io.oracle.OraUtil;
+import org.locationtech.jts.precision.GeometryPrecisionReducer;
+
+/**
+ * Caches geometries converted for comparison by ST_Relate.
+ * <p>
+ * A geometry compared against many others (eg a query polygon in
+ * <code>WHERE SC4O.ST_Relate(:poly,'ANYINTERACT',t.geom,3) = 'TRUE'</code>)
+ * would otherwise be converted from SDO_GEOMETRY, checked for validity and
+ * reduced to the precision on every call. Each entry holds the result of that work,
+ * plus a JTS {@link PreparedGeometry} that is created the first time the entry is
+ * used for a predicate with a prepared fast path (intersects, contains, covers).
+ * <p>
+ * Entries are keyed on the whole content of the SDO_GEOMETRY (gtype, SRID, point,
+ * element info and ordinates) and the precision, so a hit is never a different geometry.
+ * The cache holds at most {@link #getMaximumSize()} entries and a total of
+ * {@link #MAXIMUM_ORDINATES} ordinates, discarding the least recently used first.
+ * Invalid geometries are not cached.
+ */
+public class PreparedGeometryCache
+{
+    public static final int DEFAULT_MAXIMUM_SIZE = 64;
+    /** Bound on the ordinates held by all entries, so a few huge geometries cannot exhaust the session's memory */
+    public static final int MAXIMUM_ORDINATES    = 4 * 1024 * 1024;
+
+    /**
+     * A converted, validated and precision reduced geometry.
+     */
+    public static class Entry
+    {
+        private final Geometry geometry;
+        private final Envelope envelope;
+        private final int      ordinates;
+        private PreparedGeometry prepared = null;
+        private int                  uses = 0;
+
+        Entry(Geometry _geometry,
+              int      _ordinates)
+        {
+            this.geometry  = _geometry;
+            this.envelope  = _geometry.getEnvelopeInternal();
+            this.ordinates = _ordinates;
+        }
+
+        public Geometry getGeometry() {
+            return this.geometry;
+        }
+
+        public Envelope getEnvelope() {
+            return this.envelope;
+        }
+
+        /**
+         * @return int : Number of times the entry has been found in the cache
+         */
+        public synchronized int getUses() {
+            return this.uses;
+        }
+
+        synchronized void used() {
+            this.uses++;
+        }
+
+        public synchronized boolean isPrepared() {
+            return this.prepared != null;
+        }
+
+        /**
+         * @return PreparedGeometry : Created on first use.
+         */
+        public synchronized PreparedGeometry getPrepared() {
+            if ( this.prepared == null ) {
+                this.prepared = PreparedGeometryFactory.prepare(this.geometry);
+            }
+            return this.prepared;
+        }
+    }
+
+    private static final class Key
+    {
+        private final int[]    header;
+        private final double[] ordinates;
+        private final byte[]   wkb;
+        private final int      hash;
+
+        Key(int[]    _header,
+            double[] _ordinates,
+            byte[]   _wkb)
+        {
+            this.header    = _header;
+            this.ordinates = _ordinates;
+            this.wkb       = _wkb;
+            this.hash      = 31 * (31 * Arrays.hashCode(_header) + Arrays.hashCode(_ordinates)) + Arrays.hashCode(_wkb);
+        }
+
+        public int hashCode() {
+            return this.hash;
+        }
+
+        public boolean equals(Object _other) {
+            if ( this == _other ) {
+                return true;
+            }
+            if ( !(_other instanceof Key) ) {
+                return false;
+            }
+            Key other = (Key)_other;
+            return this.hash == other.hash &&
+                   Arrays.equals(this.header,other.header) &&
+                   Arrays.equals(this.ordinates,other.ordinates) &&
+                   Arrays.equals(this.wkb,other.wkb);
+        }
+    }
+
+    private static final LinkedHashMap<Key,Entry> cache = new LinkedHashMap<Key,Entry>(16,0.75f,true);
+
+    private static boolean  isEnabled = true;
+    private static int    maximumSize = DEFAULT_MAXIMUM_SIZE;
+    private static long heldOrdinates = 0;
+    private static long          hits = 0;
+    private static long        misses = 0;
+
+    /**
+     * Sets whether geometries are cached.
+     * If caching is disabled every geometry is converted on every call.
+     * The default setting is <code>true</code>.
+     * @param _enabled : boolean : whether to cache geometries
+     */
+    public static synchronized void setEnabled(boolean _enabled) {
+        isEnabled = _enabled;
+        if ( ! _enabled ) {
+            clear();
+        }
+    }
+
+    public static synchronized boolean isEnabled() {
+        return isEnabled;
+    }
+
+    /**
+     * Sets the number of geometries held, discarding the least recently used if there are more.
+     * @param _maximumSize : int : Number of geometries; 0 or less disables the cache.
+     */
+    public static synchronized void setMaximumSize(int _maximumSize) {
+        maximumSize = Math.max(0,_maximumSize);
+        setEnabled(maximumSize > 0);
+        trim();
+    }
+
+    public static synchronized int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Discards all cached geometries and resets the hit/miss counters.
+     */
+    public static synchronized void clear() {
+        cache.clear();
+        heldOrdinates = 0;
+        hits          = 0;
+        misses        = 0;
+    }
+
+    public static synchronized int getSize() {
+        return cache.size();
+    }
+
+    public static synchronized long getHits() {
+        return hits;
+    }
+
+    public static synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return String : eg hits=1999,misses=1001,entries=64
+     */
+    public static synchronized String getStatistics() {
+        return "hits=" + hits + ",misses=" + misses + ",entries=" + cache.size();
+    }
+
+    /**
+     * Gets the converted, validated and precision reduced form of a SDO_GEOMETRY.
+     * @param _geom      : STRUCT : SDO_GEOMETRY
+     * @param _precision : int    : Number of decimal places of precision
+     * @param _name      : String : Name of the geometry used in errors eg first
+     * @return Entry : Cached geometry
+     * @throws SQLException if the geometry converts to a NULL or invalid geometry
+     */
+    public static Entry get(STRUCT _geom,
+                            int    _precision,
+                            String _name)
+    throws SQLException
+    {
+        Datum data[] = _geom.getOracleAttributes();
+        int      gType = OraUtil.toInteger(data[0],0);
+        // As OraReader: 2D ordinates cannot be NULL so are read as primitives
+        double point[] = OraUtil.toDoubleArray((STRUCT)data[2],Double.NaN),
+           ordinates[] = OraUtil.toDoubleArray((ARRAY)data[4],Double.NaN,(gType / 1000) == 2);
+        int elemInfo[] = OraUtil.toIntArray((ARRAY)data[3],0);
+        int   header[] = new int[4 + (elemInfo == null ? 0 : elemInfo.length)];
+        header[0] = _precision;
+        header[1] = gType;
+        header[2] = OraUtil.toInteger(data[1],SDO.SRID_NULL);
+        header[3] = point == null ? -1 : point.length;
+        if ( elemInfo != null ) {
+            System.arraycopy(elemInfo,0,header,4,elemInfo.length);
+        }
+        if ( point != null ) {
+            double[] all = new double[point.length + (ordinates == null ? 0 : ordinates.length)];
+            System.arraycopy(point,0,all,0,point.length);
+            if ( ordinates != null ) {
+                System.arraycopy(ordinates,0,all,point.length,ordinates.length);
+            }
+            ordinates = all;
+        }
+        Key key = new Key(header,ordinates,null);
+        Entry entry = lookup(key);
+        if ( entry != null ) {
+            return entry;
+        }
+        PrecisionModel pm = new PrecisionModel(Tools.getPrecisionScale(_precision));
+        OraReader      or = new OraReader(new GeometryFactory(pm,header[2]));
+        entry = convert(or.read(_geom),pm,_name,ordinates == null ? 0 : ordinates.length);
+        store(key,entry);
+        return entry;
+    }
+
+    /**
+     * Gets the validated and precision reduced form of a JTS geometry,
+     * keyed on its WKB.
+     * @param _geom      : Geometry : Geometry to cache
+     * @param _precision : int      : Number of decimal places of precision
+     * @param _name      : String   : Name of the geometry used in errors eg first
+     * @return Entry : Cached geometry
+     * @throws SQLException if the geometry is NULL or invalid
+     */
+    public static Entry get(Geometry _geom,
+                            int      _precision,
+                            String   _name)
+    throws SQLException
+    {
+        if ( _geom == null ) {
+            throw new SQLException("Converted " + _name + " geometry is NULL.");
+        }
+        Key key = new Key(new int[] { _precision, _geom.getSRID() },
+                          null,
+                          new WKBWriter(Math.max(2,Tools.getCoordDim(_geom))).write(_geom));
+        Entry entry = lookup(key);
+        if ( entry != null ) {
+            return entry;
+        }
+        entry = convert(_geom,new PrecisionModel(Tools.getPrecisionScale(_precision)),_name,
+                        _geom.getNumPoints() * Math.max(2,Tools.getCoordDim(_geom)));
+        store(key,entry);
+        return entry;
+    }
+
+    private static Entry convert(Geometry       _geom,
+                                 PrecisionModel _pm,
+                                 String         _name,
+                                 int            _ordinates)
+    throws SQLException
+    {
+        if (   _geom == null  ) { throw new SQLException("Converted " + _name + " geometry is NULL."); }
+        if ( ! _geom.isValid()) { throw new SQLException("Converted " + _name + " geometry is invalid."); }
+        return new Entry(GeometryPrecisionReducer.reduce(_geom,_pm),_ordinates);
+    }
+
+    private static synchronized Entry lookup(Key _key) {
+        Entry entry = isEnabled ? cache.get(_key) : null;
+        if ( entry == null ) {
+            misses++;
+        } else {
+            hits++;
+            entry.used();
+        }
+        return entry;
+    }
+
+    private static synchronized void store(Key   _key,
+                                           Entry _entry)
+    {
+        if ( ! isEnabled || _entry.ordinates > MAXIMUM_ORDINATES ) {
+            return;
+        }
+        Entry previous = cache.put(_key,_entry);
+        if ( previous != null ) {
+            heldOrdinates -= previous.ordinates;
+        }
+        heldOrdinates += _entry.ordinates;
+        trim();
+    }
+
+    private static void trim() {
+        Iterator<Map.Entry<Key,Entry>> iter = cache.entrySet().iterator();
+        while ( iter.hasNext() && (cache.size() > maximumSize || heldOrdinates > MAXIMUM_ORDINATES) ) {
+            heldOrdinates -= iter.next().getValue().ordinates;
+            iter.remove();
+        }
+    }
+
+}
@@ -0,0 +1,460 @@
+package com.spdba.dbutils;
+
+import com.spdba.dbutils.spatial.SDO;
+import com.spdba.dbutils.sql.DBConnection;
+import com.spdba.dbutils.sql.FetchSizer;
+import com.spdba.dbutils.tools.FileUtils;
+import com.spdba.dbutils.tools.Strings;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import java.math.BigDecimal;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import oracle.jdbc.OracleConnection;
+
+import oracle.sql.ARRAY;
+import oracle.sql.ArrayDescriptor;
+import oracle.sql.STRUCT;
+import oracle.sql.StructDescriptor;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.io.oracle.OraDescriptorCache;
+import org.locationtech.jts.io.oracle.OraReader;
+
+/**
+ * Tessellates an extent with a quadtree whose tiles each hold no more than a given
+ * number of features, as TESSELATE.QuadTree and SPACE_KEY.QuadTree do, but in memory.
+ * <p>
+ * The features are read once. Each quad is then only tested against the features that
+ * interact with its parent: a feature whose envelope misses the quad is dropped, one whose
+ * envelope the quad covers is counted without a test, and the rest are tested with the
+ * feature's {@link org.locationtech.jts.geom.prep.PreparedGeometry}, which is prepared
+ * the first time it is needed and reused for every quad the feature straddles.
+ * Features are used as stored: no tolerance is applied.
+ * <p>
+ * As the PL/SQL: the extent (level 0) is always subdivided; a quad with 1..maxCount features
+ * is a tile; a quad with no features, or with more than maxCount at maxLevel, is dropped.
+ * Quads are visited lower left, upper left, lower right then upper right and tiles are
+ * numbered from 0 in that order.
+ * <p>
+ * Each tile also has a Morton (Z-order) key: that of its lower left cell in the
+ * 2^maxLevel by 2^maxLevel grid of the extent. As tiles do not overlap their keys are
+ * unique, and ordering tiles by key orders them along the Z curve.
+ * <p>
+ * The four top level quadrants are built as separate tasks on a thread pool of the requested
+ * parallelism. Inside the Oracle JVM all threads of a session are scheduled on the one
+ * session thread, so parallelism only reduces elapsed time when SC4O is used as a Java
+ * library outside the database.
+ */
+public class QuadTree
+{
+    /** Object type of the tiles returned when none is given */
+    public static final String DEFAULT_TILE_TYPE     = "T_QUADTILE";
+    /** Collection type of the tiles returned when none is given */
+    public static final String DEFAULT_TILE_SET_TYPE = "T_QUADTILESET";
+    /** Deepest level whose Morton keys fit in a long */
+    public static final int    MAXIMUM_LEVEL         = 31;
+    public static final int    DEFAULT_PARALLELISM   = 1;
+
+    /**
+     * A quad holding between 1 and maxCount features.
+     */
+    public static class Tile
+    {
+        private int          quadId;
+        private final int    level;
+        private final long   mortonKey;
+        private final int    featureCount;
+        private final double xlo, ylo, xhi, yhi;
+
+        Tile(int _level, long _mortonKey, int _featureCount, double _xlo, double _ylo, double _xhi, double _yhi) {
+            this.level        = _level;
+            this.mortonKey    = _mortonKey;
+            this.featureCount = _featureCount;
+            this.xlo          = _xlo;
+            this.ylo          = _ylo;
+            this.xhi          = _xhi;
+            this.yhi          = _yhi;
+        }
+
+        public int getQuadId()       { return this.quadId; }
+        public int getLevel()        { return this.level; }
+        public long getMortonKey()   { return this.mortonKey; }
+        public int getFeatureCount() { return this.featureCount; }
+        public double getXlo()       { return this.xlo; }
+        public double getYlo()       { return this.ylo; }
+        public double getXhi()       { return this.xhi; }
+        public double getYhi()       { return this.yhi; }
+    }
+
+    private final List<PreparedGeometryCache.Entry> features;
+    private final GeometryFactory                   gf;
+    private final int                               maxLevel;
+    private final int                               maxCount;
+    private final int                               parallelism;
+
+    /**
+     * @param _features    : List<Geometry> : Features to count; NULL and empty geometries are ignored
+     * @param _maxLevel    : int : Deepest level of the tree (1..MAXIMUM_LEVEL)
+     * @param _maxCount    : int : Most features a tile may hold
+     * @param _parallelism : int : Number of threads to use; 1 or less runs on the calling thread
+     * @throws IllegalArgumentException if _maxLevel or _maxCount is out of range
+     */
+    public QuadTree(List<Geometry> _features,
+                    int            _maxLevel,
+                    int            _maxCount,
+                    int            _parallelism)
+    {
+        if ( _maxLevel < 1 || _maxLevel > MAXIMUM_LEVEL ) {
+            throw new IllegalArgumentException("Maximum quad level must be between 1 and " + MAXIMUM_LEVEL + ".");
+        }
+        if ( _maxCount < 1 ) {
+            throw new IllegalArgumentException("Maximum feature count must be 1 or more.");
+        }
+        this.features = new ArrayList<PreparedGeometryCache.Entry>(_features.size());
+        for (Geometry feature : _features) {
+            if ( feature != null && ! feature.isEmpty() ) {
+                this.features.add(new PreparedGeometryCache.Entry(feature,feature.getNumPoints()));
+            }
+        }
+        this.gf          = new GeometryFactory();
+        this.maxLevel    = _maxLevel;
+        this.maxCount    = _maxCount;
+        this.parallelism = Math.max(1,_parallelism);
+    }
+
+    /**
+     * Builds the quadtree over one table (or query) of features.
+     * @param _features    : ResultSet : Features eg SELECT geom FROM parcels. The first SDO_GEOMETRY column is used.
+     * @param _xmin        : double : Lower left X of the extent to tessellate
+     * @param _ymin        : double : Lower left Y
+     * @param _xmax        : double : Upper right X
+     * @param _ymax        : double : Upper right Y
+     * @param _maxLevel    : int    : Deepest level of the tree (1..31)
+     * @param _maxCount    : int    : Most features a tile may hold
+     * @param _tileType    : String : Object type of the tiles eg GIS.T_QUADTILE; NULL for DEFAULT_TILE_TYPE
+     * @param _tileSetType : String : Collection type eg GIS.T_QUADTILESET; NULL for DEFAULT_TILE_SET_TYPE
+     * @return ARRAY : (quad_id, quad_level, morton_key, feature_count, xlo, ylo, xhi, yhi) for each tile in quad_id order.
+     * @throws SQLException
+     */
+    public static ARRAY ST_QuadTree(ResultSet _features,
+                                    double    _xmin,
+                                    double    _ymin,
+                                    double    _xmax,
+                                    double    _ymax,
+                                    int       _maxLevel,
+                                    int       _maxCount,
+                                    String    _tileType,
+                                    String    _tileSetType)
+    throws SQLException
+    {
+        List<Tile> tiles = build(_features,_xmin,_ymin,_xmax,_ymax,_maxLevel,_maxCount);
+        OracleConnection conn = DBConnection.getConnection();
+        String tileType    = Strings.isEmpty(_tileType)    ? DEFAULT_TILE_TYPE     : _tileType.toUpperCase(),
+               tileSetType = Strings.isEmpty(_tileSetType) ? DEFAULT_TILE_SET_TYPE : _tileSetType.toUpperCase();
+        StructDescriptor tileDescriptor = OraDescriptorCache.getStructDescriptor(tileType,conn);
+        STRUCT[] structs = new STRUCT[tiles.size()];
+        for (int i = 0; i < structs.length; i++) {
+            Tile tile = tiles.get(i);
+            structs[i] = new STRUCT(tileDescriptor,conn,new Object[] { Integer.valueOf(tile.quadId),
+                                                                       Integer.valueOf(tile.level),
+                                                                       BigDecimal.valueOf(tile.mortonKey),
+                                                                       Integer.valueOf(tile.featureCount),
+                                                                       Double.valueOf(tile.xlo),
+                                                                       Double.valueOf(tile.ylo),
+                                                                       Double.valueOf(tile.xhi),
+                                                                       Double.valueOf(tile.yhi) });
+        }
+        ArrayDescriptor descriptor = OraDescriptorCache.getArrayDescriptor(tileSetType,conn);
+        return new ARRAY(descriptor,conn,structs);
+    }
+
+    /**
+     * Builds the quadtree over one table (or query) of features and writes its tiles to a
+     * comma separated file for loading with SQL*Loader or an external table.
+     * @param _features        : ResultSet : Features eg SELECT geom FROM parcels. The first SDO_GEOMETRY column is used.
+     * @param _xmin            : double : Lower left X of the extent to tessellate
+     * @param _ymin            : double : Lower left Y
+     * @param _xmax            : double : Upper right X
+     * @param _ymax            : double : Upper right Y
+     * @param _maxLevel        : int    : Deepest level of the tree (1..31)
+     * @param _maxCount        : int    : Most features a tile may hold
+     * @param _outputDirectory : String : Directory to write to
+     * @param _fileName        : String : Name of file; its suffix is always .csv
+     * @return int : Number of tiles written
+     * @throws SQLException
+     */
+    public static int ST_QuadTree_To_File(ResultSet _features,
+                                          double    _xmin,
+                                          double    _ymin,
+                                          double    _xmax,
+                                          double    _ymax,
+                                          int       _maxLevel,
+                                          int       _maxCount,
+                                          String    _outputDirectory,
+                                          String    _fileName)
+    throws SQLException
+    {
+        String fileName;
+        try {
+            fileName = FileUtils.FileNameBuilder(_outputDirectory,_fileName,"csv");
+        } catch (IllegalArgumentException iae) {
+            throw new SQLException(iae.getMessage());
+        }
+        List<Tile> tiles = build(_features,_xmin,_ymin,_xmax,_ymax,_maxLevel,_maxCount);
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new FileWriter(fileName),64 * 1024);
+            write(tiles,writer);
+        } catch (IOException ioe) {
+            throw new SQLException("Writing " + fileName + ": " + ioe.getMessage());
+        } finally {
+            if ( writer != null ) {
+                try { writer.close(); } catch (IOException ioe) { }
+            }
+        }
+        return tiles.size();
+    }
+
+    private static List<Tile> build(ResultSet _features,
+                                    double    _xmin,
+                                    double    _ymin,
+                                    double    _xmax,
+                                    double    _ymax,
+                                    int       _maxLevel,
+                                    int       _maxCount)
+    throws SQLException
+    {
+        if ( _xmax <= _xmin || _ymax <= _ymin ) {
+            throw new SQLException("Extent to tessellate must have an upper right above and to the right of its lower left.");
+        }
+        try {
+            if ( _features == null ) {
+                throw new SQLException("Supplied ResultSet is NULL.");
+            }
+            QuadTree quadTree;
+            try {
+                quadTree = new QuadTree(read(_features),_maxLevel,_maxCount,DEFAULT_PARALLELISM);
+            } catch (IllegalArgumentException iae) {
+                throw new SQLException(iae.getMessage());
+            }
+            return quadTree.build(new Envelope(_xmin,_xmax,_ymin,_ymax));
+        } finally {
+            if ( _features != null ) { _features.close(); }
+        }
+    }
+
+    private static List<Geometry> read(ResultSet _resultSet)
+    throws SQLException
+    {
+        int geometryColumn = JTS.firstSdoGeometryColumn(_resultSet.getMetaData());
+        if ( geometryColumn == -1 ) {
+            throw new SQLException("No SDO_GEOMETRY column can be found in resultset.");
+        }
+        List<Geometry> features = new ArrayList<Geometry>();
+        OraReader         or = new OraReader(new GeometryFactory());
+        FetchSizer fetchSizer = new FetchSizer();
+        fetchSizer.start(_resultSet);
+        while ( _resultSet.next() ) {
+            STRUCT geom = (STRUCT)_resultSet.getObject(geometryColumn);
+            fetchSizer.rowFetched(_resultSet,geom);
+            if ( geom == null ) {
+                continue;
+            }
+            if ( SDO.hasArc(geom) ) {
+                throw new SQLException("Sdo_Geometry " + (features.size() + 1) + " has circular arcs that JTS does not support.");
+            }
+            features.add(or.read(geom));
+        }
+        return features;
+    }
+
+    /**
+     * Builds the tiles of the quadtree over an extent.
+     * @param _extent : Envelope : Extent to tessellate (level 0)
+     * @return List<Tile> : Tiles in quad_id order, numbered from 0
+     */
+    public List<Tile> build(Envelope _extent)
+    {
+        double xmid = _extent.getMinX() + _extent.getWidth()  / 2.0,
+               ymid = _extent.getMinY() + _extent.getHeight() / 2.0;
+        List<Quadrant> quadrants = new ArrayList<Quadrant>(4);
+        quadrants.add(new Quadrant(_extent.getMinX(),_extent.getMinY(),xmid,ymid,0,0));
+        quadrants.add(new Quadrant(_extent.getMinX(),ymid,xmid,_extent.getMaxY(),0,1));
+        quadrants.add(new Quadrant(xmid,_extent.getMinY(),_extent.getMaxX(),ymid,1,0));
+        quadrants.add(new Quadrant(xmid,ymid,_extent.getMaxX(),_extent.getMaxY(),1,1));
+
+        List<Tile> tiles = new ArrayList<Tile>();
+        if ( this.features.size() == 0 ) {
+            return tiles;
+        }
+        ExecutorService pool = this.parallelism > 1
+                               ? Executors.newFixedThreadPool(Math.min(this.parallelism,quadrants.size()))
+                               : null;
+        try {
+            if ( pool == null ) {
+                for (Quadrant quadrant : quadrants) {
+                    tiles.addAll(quadrant.call());
+                }
+            } else {
+                List<Future<List<Tile>>> futures = new ArrayList<Future<List<Tile>>>(quadrants.size());
+                for (Quadrant quadrant : quadrants) {
+                    futures.add(pool.submit(quadrant));
+                }
+                for (Future<List<Tile>> future : futures) {
+                    tiles.addAll(future.get());
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("QuadTree interrupted.");
+        } catch (ExecutionException ee) {
+            if ( ee.getCause() instanceof RuntimeException ) {
+                throw (RuntimeException)ee.getCause();
+            }
+            throw new IllegalStateException("QuadTree failed with " + ee.getCause());
+        } finally {
+            if ( pool != null ) {
+                pool.shutdown();
+            }
+        }
+        for (int i = 0; i < tiles.size(); i++) {
+            tiles.get(i).quadId = i;
+        }
+        return tiles;
+    }
+
+    /**
+     * Writes tiles as comma separated lines, headed by their column names.
+     * @param _tiles  : List<Tile> : Tiles
+     * @param _writer : Writer : Destination
+     * @throws IOException
+     */
+    public static void write(List<Tile> _tiles,
+                             Writer     _writer)
+    throws IOException
+    {
+        _writer.write("quad_id,quad_level,morton_key,feature_count,xlo,ylo,xhi,yhi\n");
+        StringBuffer line = new StringBuffer(128);
+        for (Tile tile : _tiles) {
+            line.setLength(0);
+            line.append(tile.quadId).append(',')
+                .append(tile.level).append(',')
+                .append(tile.mortonKey).append(',')
+                .append(tile.featureCount).append(',')
+                .append(tile.xlo).append(',')
+                .append(tile.ylo).append(',')
+                .append(tile.xhi).append(',')
+                .append(tile.yhi).append('\n');
+            _writer.write(line.toString());
+        }
+    }
+
+    /**
+     * Adds the tiles of one quad, and of its descendants, to _tiles.
+     * @param _col      : long : Column of the quad in the 2^_level by 2^_level grid of the extent
+     * @param _row      : long : Row of the quad
+     * @param _features : List : Features interacting with the quad's parent
+     */
+    private void subdivide(double                            _xlo,
+                           double                            _ylo,
+                           double                            _xhi,
+                           double                            _yhi,
+                           int                               _level,
+                           long                              _col,
+                           long                              _row,
+                           List<PreparedGeometryCache.Entry> _features,
+                           List<Tile>                        _tiles)
+    {
+        List<PreparedGeometryCache.Entry> interacting = interacting(new Envelope(_xlo,_xhi,_ylo,_yhi),_features);
+        if ( interacting.size() == 0 ) {
+            return;
+        }
+        if ( interacting.size() <= this.maxCount ) {
+            int shift = this.maxLevel - _level;
+            _tiles.add(new Tile(_level,Space.Morton(_col << shift,_row << shift),interacting.size(),_xlo,_ylo,_xhi,_yhi));
+            return;
+        }
+        if ( _level == this.maxLevel ) {
+            return;
+        }
+        double xmid = _xlo + (_xhi - _xlo) / 2.0,
+               ymid = _ylo + (_yhi - _ylo) / 2.0;
+        int   level = _level + 1;
+        long    col = _col << 1,
+                row = _row << 1;
+        subdivide(_xlo,_ylo,xmid,ymid,level,col,    row,    interacting,_tiles);
+        subdivide(_xlo,ymid,xmid,_yhi,level,col,    row + 1,interacting,_tiles);
+        subdivide(xmid,_ylo,_xhi,ymid,level,col + 1,row,    interacting,_tiles);
+        subdivide(xmid,ymid,_xhi,_yhi,level,col + 1,row + 1,interacting,_tiles);
+    }
+
+    /**
+     * @return List : Those of _features that intersect (ANYINTERACT) _quad, in the order given
+     */
+    private List<PreparedGeometryCache.Entry> interacting(Envelope                          _quad,
+                                                          List<PreparedGeometryCache.Entry> _features)
+    {
+        List<PreparedGeometryCache.Entry> interacting = new ArrayList<PreparedGeometryCache.Entry>();
+        Geometry rectangle = null;
+        for (PreparedGeometryCache.Entry feature : _features) {
+            Envelope envelope = feature.getEnvelope();
+            if ( ! _quad.intersects(envelope) ) {
+                continue;
+            }
+            if ( _quad.covers(envelope) ) {
+                interacting.add(feature);
+                continue;
+            }
+            if ( rectangle == null ) {
+                rectangle = this.gf.toGeometry(_quad);
+            }
+            if ( feature.getPrepared().intersects(rectangle) ) {
+                interacting.add(feature);
+            }
+        }
+        return interacting;
+    }
+
+    /**
+     * A top level quadrant and its descendants.
+     */
+    private class Quadrant
+       implements Callable<List<Tile>>
+    {
+        private final double xlo, ylo, xhi, yhi;
+        private final long   col, row;
+
+        Quadrant(double _xlo, double _ylo, double _xhi, double _yhi, long _col, long _row) {
+            this.xlo = _xlo;
+            this.ylo = _ylo;
+            this.xhi = _xhi;
+            this.yhi = _yhi;
+            this.col = _col;
+            this.row = _row;
+        }
+
+        public List<Tile> call() {
+            List<Tile> tiles = new ArrayList<Tile>();
+            subdivide(this.xlo,this.ylo,this.xhi,this.yhi,1,this.col,this.row,QuadTree.this.features,tiles);
+            return tiles;
+        }
+    }
+
+}
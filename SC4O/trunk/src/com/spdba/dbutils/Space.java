@@ -36,23 +36,54 @@ public class Space
      * It is up to the caller to determine size of grid and conversion of
      * X,Y coordinates into grid row/col address.
      * @note Space curve grid computed with origin bottom left.
+     * @note Bits of col and row are interleaved with masks rather than a loop over each bit pair:
+     *       col bits are the even bits of the key, row bits the odd bits.
+     * @throws IllegalArgumentException if col or row is outside 0..4294967295 (32 bits)
     */
     public static long Morton(long col, long row)
     {
-        long key = 0L;
-        long left_bit;
-        long right_bit;
-        long quadrant;
-        for(long level = 0L; row > 0L || col > 0L; level++)
-        {
-            left_bit = row % 2L;
-            right_bit = col % 2L;
-            quadrant = right_bit + 2L * left_bit;
-            key += quadrant << (int)(2L * level);
-            row /= 2L;
-            col /= 2L;
+        if ( col < 0L || col > 0xFFFFFFFFL || row < 0L || row > 0xFFFFFFFFL ) {
+            throw new IllegalArgumentException("Morton column and row must be between 0 and " + 0xFFFFFFFFL + " (" + col + "," + row + ").");
         }
-        return key;
+        return spread(col) | (spread(row) << 1);
+    }
+
+    /**
+     * Inverse of Morton.
+     * @param key : long : Morton key
+     * @return long[] : { col, row }
+     */
+    public static long[] MortonColRow(long key)
+    {
+        return new long[] { compact(key), compact(key >>> 1) };
+    }
+
+    /**
+     * Spreads the low 32 bits of a value over the even bits of a long.
+     */
+    private static long spread(long value)
+    {
+        long v = value & 0x00000000FFFFFFFFL;
+        v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v <<  8)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v <<  4)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v <<  2)) & 0x3333333333333333L;
+        v = (v | (v <<  1)) & 0x5555555555555555L;
+        return v;
+    }
+
+    /**
+     * Gathers the even bits of a long into its low 32 bits.
+     */
+    private static long compact(long value)
+    {
+        long v = value & 0x5555555555555555L;
+        v = (v | (v >>>  1)) & 0x3333333333333333L;
+        v = (v | (v >>>  2)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v >>>  4)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v >>>  8)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v >>> 16)) & 0x00000000FFFFFFFFL;
+        return v;
     }
 
 }
@@ -0,0 +1,330 @@
+package com.spdba.dbutils;
+
+import com.spdba.dbutils.spatial.SDO;
+import com.spdba.dbutils.sql.DBConnection;
+import com.spdba.dbutils.sql.FetchSizer;
+import com.spdba.dbutils.tools.Strings;
+import com.spdba.dbutils.tools.Tools;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import oracle.jdbc.OracleConnection;
+
+import oracle.sql.ARRAY;
+import oracle.sql.ArrayDescriptor;
+import oracle.sql.STRUCT;
+import oracle.sql.StructDescriptor;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.locationtech.jts.io.oracle.OraDescriptorCache;
+import org.locationtech.jts.io.oracle.OraReader;
+import org.locationtech.jts.precision.GeometryPrecisionReducer;
+
+/**
+ * Relates two sets of geometries in one call.
+ * <p>
+ * The second set is bulk loaded into an STRtree. Each geometry of the first set is
+ * prepared and the tree queried with its envelope; each candidate is related to it
+ * as ST_Relate would relate the pair. Only geometries whose envelopes interact are
+ * compared, so a mask that DISJOINT geometries can satisfy cannot be used.
+ */
+public class SpatialJoin
+{
+    /** Object type of the pairs returned when none is given */
+    public static final String DEFAULT_PAIR_TYPE     = "T_JOINPAIR";
+    /** Collection type of the pairs returned when none is given */
+    public static final String DEFAULT_PAIR_SET_TYPE = "T_JOINPAIRSET";
+
+    /**
+     * A geometry of the second set held in the tree.
+     */
+    private static class Item
+    {
+        final int                         position;
+        final String                      id;
+        final PreparedGeometryCache.Entry entry;
+
+        Item(int _position, String _id, PreparedGeometryCache.Entry _entry) {
+            this.position = _position;
+            this.id       = _id;
+            this.entry    = _entry;
+        }
+    }
+
+    private static final Comparator<Item> BY_POSITION = new Comparator<Item>() {
+        public int compare(Item _item1, Item _item2) {
+            return _item1.position < _item2.position ? -1 : (_item1.position == _item2.position ? 0 : 1);
+        }
+    };
+
+    /**
+     * Relates every geometry of one array to every geometry of another whose envelope interacts with it.
+     * @param _geomSet1    : ARRAY  : First set eg MDSYS.SDO_GEOMETRY_ARRAY. Ids are the (1 based) positions of the geometries.
+     * @param _geomSet2    : ARRAY  : Second set, which is indexed.
+     * @param _mask        : String : As ST_Relate, except masks including DISJOINT or patterns it satisfies (eg FF*FF****)
+     * @param _precision   : int    : Number of decimal places of precision of a geometry
+     * @param _pairType    : String : Object type of the pairs eg GIS.T_JOINPAIR; NULL for DEFAULT_PAIR_TYPE
+     * @param _pairSetType : String : Collection type of the pairs eg GIS.T_JOINPAIRSET; NULL for DEFAULT_PAIR_SET_TYPE
+     * @return ARRAY : (id1, id2, relation) for each related pair, in order of the first then second set.
+     * @throws SQLException
+     */
+    public static ARRAY ST_SpatialJoin(ARRAY  _geomSet1,
+                                       ARRAY  _geomSet2,
+                                       String _mask,
+                                       int    _precision,
+                                       String _pairType,
+                                       String _pairSetType)
+    throws SQLException
+    {
+        if ( _geomSet1 == null || _geomSet2 == null ) {
+            throw new SQLException("One or other of supplied Sdo_Geometry arrays is NULL.");
+        }
+        PrecisionModel pm = new PrecisionModel(Tools.getPrecisionScale(_precision));
+        List<String>   ids1 = new ArrayList<String>(),
+                       ids2 = new ArrayList<String>();
+        List<Geometry> set1 = new ArrayList<Geometry>(),
+                       set2 = new ArrayList<Geometry>();
+        read(_geomSet1,pm,"first",ids1,set1);
+        read(_geomSet2,pm,"second",ids2,set2);
+        return toARRAY(join(ids1,set1,ids2,set2,_mask,_precision),_pairType,_pairSetType);
+    }
+
+    /**
+     * Relates every geometry of one cursor to every geometry of another whose envelope interacts with it.
+     * @param _resultSet1  : ResultSet : First set eg SELECT id, geom FROM parcels.
+     *                                   Ids are the first column that is not the first SDO_GEOMETRY column, or the row number if there is none.
+     * @param _resultSet2  : ResultSet : Second set, which is indexed.
+     * @param _mask        : String : As ST_Relate, except masks including DISJOINT or patterns it satisfies (eg FF*FF****)
+     * @param _precision   : int    : Number of decimal places of precision of a geometry
+     * @param _pairType    : String : Object type of the pairs eg GIS.T_JOINPAIR; NULL for DEFAULT_PAIR_TYPE
+     * @param _pairSetType : String : Collection type of the pairs eg GIS.T_JOINPAIRSET; NULL for DEFAULT_PAIR_SET_TYPE
+     * @return ARRAY : (id1, id2, relation) for each related pair, in order of the first then second set.
+     * @throws SQLException
+     */
+    public static ARRAY ST_SpatialJoin(ResultSet _resultSet1,
+                                       ResultSet _resultSet2,
+                                       String    _mask,
+                                       int       _precision,
+                                       String    _pairType,
+                                       String    _pairSetType)
+    throws SQLException
+    {
+        try {
+            if ( _resultSet1 == null || _resultSet2 == null ) {
+                throw new SQLException("One or other of supplied ResultSets is NULL.");
+            }
+            PrecisionModel pm = new PrecisionModel(Tools.getPrecisionScale(_precision));
+            List<String>   ids1 = new ArrayList<String>(),
+                           ids2 = new ArrayList<String>();
+            List<Geometry> set1 = new ArrayList<Geometry>(),
+                           set2 = new ArrayList<Geometry>();
+            read(_resultSet1,pm,"first",ids1,set1);
+            read(_resultSet2,pm,"second",ids2,set2);
+            return toARRAY(join(ids1,set1,ids2,set2,_mask,_precision),_pairType,_pairSetType);
+        } finally {
+            if ( _resultSet1 != null ) { _resultSet1.close(); }
+            if ( _resultSet2 != null ) { _resultSet2.close(); }
+        }
+    }
+
+    /**
+     * Relates two sets of JTS geometries.
+     * @param _ids1      : List<String>   : Id of each geometry of the first set
+     * @param _set1      : List<Geometry> : First set; NULL geometries are skipped
+     * @param _ids2      : List<String>   : Id of each geometry of the second set
+     * @param _set2      : List<Geometry> : Second set, which is indexed; NULL geometries are skipped
+     * @param _mask      : String : As ST_Relate, except masks including DISJOINT or patterns it satisfies (eg FF*FF****)
+     * @param _precision : int    : Number of decimal places of precision of a geometry
+     * @return List<String[]> : { id1, id2, relation } for each related pair
+     * @throws SQLException if a geometry is invalid, SRIDs differ or disjoint geometries can satisfy the mask
+     */
+    static List<String[]> join(List<String>   _ids1,
+                               List<Geometry> _set1,
+                               List<String>   _ids2,
+                               List<Geometry> _set2,
+                               String         _mask,
+                               int            _precision)
+    throws SQLException
+    {
+        String mask = Strings.isEmpty(_mask) ? "DETERMINE" : _mask;
+        StringTokenizer st = new StringTokenizer(mask.toUpperCase(),",");
+        while ( st.hasMoreTokens() ) {
+            if ( st.nextToken().equals("DISJOINT") ) {
+                throw new SQLException("A spatial join cannot find DISJOINT geometries.");
+            }
+        }
+        if ( isDisjointPattern(mask) ) {
+            throw new SQLException("A spatial join cannot find DISJOINT geometries: mask " + mask + " does not require the geometries to intersect.");
+        }
+        PrecisionModel pm = new PrecisionModel(Tools.getPrecisionScale(_precision));
+
+        // Index second set
+        //
+        STRtree tree = new STRtree();
+        for (int i = 0; i < _set2.size(); i++) {
+            if ( _set2.get(i) != null ) {
+                PreparedGeometryCache.Entry entry = toEntry(_set2.get(i),pm,"second",i + 1);
+                tree.insert(entry.getEnvelope(),new Item(i,_ids2.get(i),entry));
+            }
+        }
+        tree.build();
+
+        // Probe with first set
+        //
+        List<String[]> pairs = new ArrayList<String[]>();
+        for (int i = 0; i < _set1.size(); i++) {
+            if ( _set1.get(i) == null ) {
+                continue;
+            }
+            PreparedGeometryCache.Entry probe = toEntry(_set1.get(i),pm,"first",i + 1);
+            List<Item> candidates = tree.query(probe.getEnvelope());
+            if ( candidates.size() == 0 ) {
+                continue;
+            }
+            // Prepared once, relate then uses it for all candidates
+            probe.getPrepared();
+            Collections.sort(candidates,BY_POSITION);
+            for (Item candidate : candidates) {
+                if ( probe.getGeometry().getSRID() != candidate.entry.getGeometry().getSRID() ) {
+                    throw new SQLException("SRIDs of Sdo_Geometries must be equal");
+                }
+                String relation;
+                try {
+                    relation = Comparitor.relate(probe,mask,candidate.entry);
+                } catch (Exception e) {
+                    throw new SQLException("Relating " + _ids1.get(i) + " and " + candidate.id + ": " + e.toString());
+                }
+                if ( ! relation.equals("FALSE") && ! relation.equals("DISJOINT") ) {
+                    pairs.add(new String[] { _ids1.get(i), candidate.id, relation });
+                }
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * A DE-9IM pattern (eg FF*FF****) is satisfied by disjoint geometries unless one of its
+     * interior/boundary cells (II, IB, BI, BB) requires a non-empty intersection (T, 0, 1 or 2).
+     */
+    private static boolean isDisjointPattern(String _mask)
+    {
+        String pattern = _mask.toUpperCase();
+        if ( pattern.length() != 9 ) {
+            return false;
+        }
+        // Keywords of nine letters (eg DETERMINE) are not patterns
+        for (int i = 0; i < pattern.length(); i++) {
+            if ( "TF*012".indexOf(pattern.charAt(i)) < 0 ) {
+                return false;
+            }
+        }
+        int[] cells = { 0, 1, 3, 4 };
+        for (int i = 0; i < cells.length; i++) {
+            if ( "T012".indexOf(pattern.charAt(cells[i])) >= 0 ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static PreparedGeometryCache.Entry toEntry(Geometry       _geom,
+                                                       PrecisionModel _pm,
+                                                       String         _set,
+                                                       int            _element)
+    throws SQLException
+    {
+        if ( ! _geom.isValid() ) {
+            throw new SQLException("Sdo_Geometry " + _element + " of " + _set + " set is invalid.");
+        }
+        return new PreparedGeometryCache.Entry(GeometryPrecisionReducer.reduce(_geom,_pm),_geom.getNumPoints());
+    }
+
+    private static void read(ARRAY          _geomSet,
+                             PrecisionModel _pm,
+                             String         _set,
+                             List<String>   _ids,
+                             List<Geometry> _geometries)
+    throws SQLException
+    {
+        Object[] geoms = (Object[])_geomSet.getArray();
+        OraReader   or = new OraReader(new GeometryFactory(_pm));
+        for (int i = 0; i < geoms.length; i++) {
+            _ids.add(String.valueOf(i + 1));
+            _geometries.add(toGeometry(or,(STRUCT)geoms[i],_set,i + 1));
+        }
+    }
+
+    private static void read(ResultSet      _resultSet,
+                             PrecisionModel _pm,
+                             String         _set,
+                             List<String>   _ids,
+                             List<Geometry> _geometries)
+    throws SQLException
+    {
+        int geometryColumn = JTS.firstSdoGeometryColumn(_resultSet.getMetaData());
+        if ( geometryColumn == -1 ) {
+            throw new SQLException("No SDO_GEOMETRY column can be found in " + _set + " resultset.");
+        }
+        int idColumn = geometryColumn == 1 ? 2 : 1;
+        if ( idColumn > _resultSet.getMetaData().getColumnCount() ) {
+            idColumn = -1;
+        }
+        OraReader         or = new OraReader(new GeometryFactory(_pm));
+        FetchSizer fetchSizer = new FetchSizer();
+        fetchSizer.start(_resultSet);
+        while ( _resultSet.next() ) {
+            STRUCT geom = (STRUCT)_resultSet.getObject(geometryColumn);
+            fetchSizer.rowFetched(_resultSet,geom);
+            int row = _geometries.size() + 1;
+            _ids.add(idColumn == -1 ? String.valueOf(row) : _resultSet.getString(idColumn));
+            _geometries.add(toGeometry(or,geom,_set,row));
+        }
+    }
+
+    private static Geometry toGeometry(OraReader _reader,
+                                       STRUCT    _geom,
+                                       String    _set,
+                                       int       _element)
+    throws SQLException
+    {
+        if ( _geom == null ) {
+            return null;
+        }
+        if ( SDO.hasArc(_geom) ) {
+            throw new SQLException("Sdo_Geometry " + _element + " of " + _set + " set has circular arcs that JTS does not support.");
+        }
+        Geometry geo = _reader.read(_geom);
+        if ( geo == null ) {
+            throw new SQLException("Sdo_Geometry " + _element + " of " + _set + " set converted to a NULL geometry.");
+        }
+        return geo;
+    }
+
+    private static ARRAY toARRAY(List<String[]> _pairs,
+                                 String         _pairType,
+                                 String         _pairSetType)
+    throws SQLException
+    {
+        OracleConnection conn = DBConnection.getConnection();
+        String pairType    = Strings.isEmpty(_pairType)    ? DEFAULT_PAIR_TYPE     : _pairType.toUpperCase(),
+               pairSetType = Strings.isEmpty(_pairSetType) ? DEFAULT_PAIR_SET_TYPE : _pairSetType.toUpperCase();
+        StructDescriptor pairDescriptor = OraDescriptorCache.getStructDescriptor(pairType,conn);
+        STRUCT[] pairs = new STRUCT[_pairs.size()];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = new STRUCT(pairDescriptor,conn,_pairs.get(i));
+        }
+        ArrayDescriptor descriptor = OraDescriptorCache.getArrayDescriptor(pairSetType,conn);
+        return new ARRAY(descriptor,conn,pairs);
+    }
+
+}
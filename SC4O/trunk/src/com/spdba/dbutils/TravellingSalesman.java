@@ -0,0 +1,299 @@
+package com.spdba.dbutils;
+
+import com.spdba.dbutils.spatial.SDO;
+import com.spdba.dbutils.sql.DBConnection;
+import com.spdba.dbutils.tools.Tools;
+
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import oracle.sql.STRUCT;
+
+import org.locationtech.jts.algorithm.RobustLineIntersector;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.geom.util.LinearComponentExtracter;
+import org.locationtech.jts.index.kdtree.KdNode;
+import org.locationtech.jts.index.kdtree.KdNodeVisitor;
+import org.locationtech.jts.index.kdtree.KdTree;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.locationtech.jts.io.oracle.OraReader;
+import org.locationtech.jts.io.oracle.OraWriter;
+
+/**
+ * Builds a nearest neighbour (travelling salesman) route through a set of points.
+ * <p>
+ * From the start, the route moves to the nearest point not yet visited whose move does
+ * not cross a geo-fence, found by searching a KdTree of the points with a widening envelope.
+ * Moves are tested against an STRtree of the fence segments that cannot be crossed:
+ * all of them for a 2D fence, those with a Z of {@link #HARD_FENCE_Z} or more for a 3D fence.
+ * If every unvisited point is fenced off the route moves to the nearest, ignoring the fence.
+ * <p>
+ * Distances are planar.
+ */
+public class TravellingSalesman
+{
+    /** Z value of a fence linestring that forms a hard boundary (eg a physical fence) */
+    public static final double HARD_FENCE_Z = 9.0;
+
+    /** Visited points are dropped from the tree when they exceed this proportion of it */
+    private static final double REBUILD_PROPORTION = 0.5;
+
+    private final Coordinate[] points;
+    private final boolean[]    visited;
+    private final int[]        rejected;   // Step at which a point's move was found to cross a fence
+    private final STRtree      fences;
+    private final double       diagonal;
+    private final double       minimumRadius;
+    private final RobustLineIntersector intersector = new RobustLineIntersector();
+
+    private KdTree tree;
+    private int    treeSize = 0;
+    private int    remaining;
+    private double radius;
+
+    /**
+     * Builds a route as described for ST_TravellingSalesman.
+     * @param _points     : STRUCT  : MultiPoint (or collection of points) to visit
+     * @param _startId    : Integer : Start at the point whose Z has this value (may be NULL)
+     * @param _startPoint : STRUCT  : Start at this point, which need not be one of the points, if _startId is NULL
+     * @param _geoFence   : STRUCT  : Linestrings that are not to be crossed (may be NULL)
+     * @param _precision  : int     : Number of decimal places of precision
+     * @return STRUCT : Linestring through the points in the order visited;
+     *                  NULL if _points is not a set of points, or no start is given.
+     * @throws SQLException
+     */
+    public static STRUCT ST_TravellingSalesman(STRUCT  _points,
+                                               Integer _startId,
+                                               STRUCT  _startPoint,
+                                               STRUCT  _geoFence,
+                                               int     _precision)
+    throws SQLException
+    {
+        if ( _points == null || ( _startId == null && _startPoint == null ) ) {
+            return null;
+        }
+        int gType = SDO.getGType(_points);
+        if ( gType != 4 && gType != 5 ) {
+            return null;
+        }
+        PrecisionModel  pm = new PrecisionModel(Tools.getPrecisionScale(_precision));
+        GeometryFactory gf = new GeometryFactory(pm,SDO.getSRID(_points,SDO.SRID_NULL));
+        OraReader       or = new OraReader(gf);
+        Geometry    points = or.read(_points);
+        if ( points == null || points.isEmpty() ) {
+            return null;
+        }
+        Coordinate start = null;
+        if ( _startId == null ) {
+            Geometry startPoint = or.read(_startPoint);
+            if ( !(startPoint instanceof Point) ) {
+                throw new SQLException("ST_TravellingSalesman: Start point is not a point.");
+            }
+            start = startPoint.getCoordinate();
+        }
+        List<LineString> fence = null;
+        if ( _geoFence != null ) {
+            fence = LinearComponentExtracter.getLines(or.read(_geoFence));
+        }
+        Coordinate[] route = route(points.getCoordinates(),
+                                   _startId == null ? null : Double.valueOf(_startId.doubleValue()),
+                                   start,
+                                   fence);
+        LineString line = gf.createLineString(route);
+        OraWriter ow = new OraWriter(Tools.getCoordDim(line));
+        return ow.write(line,DBConnection.getConnection());
+    }
+
+    /**
+     * Builds a route through points.
+     * @param _points  : Coordinate[] : Points to visit
+     * @param _startId : Double : Start at the first point whose Z has this value; or the first point if none has.
+     * @param _start   : Coordinate : Start here if _startId is null
+     * @param _fence   : List<LineString> : Fence linestrings, null for none.
+     * @return Coordinate[] : The start followed by each point in the order visited.
+     */
+    public static Coordinate[] route(Coordinate[]     _points,
+                                     Double           _startId,
+                                     Coordinate       _start,
+                                     List<LineString> _fence)
+    {
+        return new TravellingSalesman(_points,_fence).route(_startId,_start);
+    }
+
+    private TravellingSalesman(Coordinate[]     _points,
+                               List<LineString> _fence)
+    {
+        this.points    = _points;
+        this.visited   = new boolean[_points.length];
+        this.rejected  = new int[_points.length];
+        this.remaining = _points.length;
+        this.fences    = hardFences(_fence);
+        Envelope extent = new Envelope();
+        for (int i = 0; i < _points.length; i++) {
+            extent.expandToInclude(_points[i]);
+        }
+        this.diagonal = Math.sqrt(extent.getWidth() * extent.getWidth() + extent.getHeight() * extent.getHeight());
+        this.minimumRadius = this.diagonal > 0.0 ? this.diagonal / _points.length : 1.0;
+        // Envelope expected to hold a few points
+        this.radius   = Math.max(Math.sqrt(extent.getArea() / _points.length),this.minimumRadius);
+        buildTree();
+    }
+
+    private Coordinate[] route(Double     _startId,
+                               Coordinate _start)
+    {
+        List<Coordinate> route = new ArrayList<Coordinate>(this.points.length + 1);
+        Coordinate current = _start;
+        if ( _startId != null ) {
+            int start = 0;
+            for (int i = 0; i < this.points.length; i++) {
+                if ( this.points[i].z == _startId.doubleValue() ) {
+                    start = i;
+                    break;
+                }
+            }
+            visit(start);
+            current = this.points[start];
+        }
+        route.add(current);
+        for (int step = 1; this.remaining > 0; step++) {
+            int next = nearest(current,step);
+            visit(next);
+            current = this.points[next];
+            route.add(current);
+        }
+        return route.toArray(new Coordinate[route.size()]);
+    }
+
+    private static STRtree hardFences(List<LineString> _fence) {
+        if ( _fence == null ) {
+            return null;
+        }
+        STRtree tree = new STRtree();
+        boolean hasZ = false;
+        for (LineString line : _fence) {
+            for (int i = 0; i < line.getNumPoints() && ! hasZ; i++) {
+                hasZ = ! Double.isNaN(line.getCoordinateN(i).z);
+            }
+        }
+        for (LineString line : _fence) {
+            Coordinate[] coords = line.getCoordinates();
+            for (int i = 1; i < coords.length; i++) {
+                double z = Math.max(coords[i - 1].z,coords[i].z);
+                if ( ! hasZ || Double.isNaN(z) || z >= HARD_FENCE_Z ) {
+                    Coordinate[] segment = new Coordinate[] { coords[i - 1], coords[i] };
+                    tree.insert(new Envelope(coords[i - 1],coords[i]),segment);
+                }
+            }
+        }
+        return tree.size() == 0 ? null : tree;
+    }
+
+    /**
+     * Points are inserted in random order as the KdTree is not balanced.
+     * The data of each node is the list of the positions of the points at it.
+     */
+    private void buildTree() {
+        List<Integer> order = new ArrayList<Integer>(this.remaining);
+        for (int i = 0; i < this.points.length; i++) {
+            if ( ! this.visited[i] ) {
+                order.add(Integer.valueOf(i));
+            }
+        }
+        Collections.shuffle(order,new Random(this.points.length));
+        this.tree = new KdTree();
+        for (Integer i : order) {
+            KdNode node = this.tree.insert(this.points[i.intValue()],new ArrayList<Integer>(1));
+            ((List<Integer>)node.getData()).add(i);
+        }
+        this.treeSize = order.size();
+    }
+
+    private void visit(int _point) {
+        this.visited[_point] = true;
+        this.remaining--;
+        if ( this.remaining > 0 && this.remaining < this.treeSize * REBUILD_PROPORTION ) {
+            buildTree();
+        }
+    }
+
+    /**
+     * Finds the nearest unvisited point whose move does not cross a fence,
+     * or the nearest unvisited point if all are fenced off.
+     */
+    private int nearest(final Coordinate _from,
+                        final int        _step)
+    {
+        int    nearestFenced = -1;
+        double radius = this.radius;
+        while ( true ) {
+            final List<Integer>   candidates = new ArrayList<Integer>();
+            final double        searchRadius = radius;
+            Envelope search = new Envelope(_from);
+            search.expandBy(radius);
+            this.tree.query(search,new KdNodeVisitor() {
+                public void visit(KdNode _node) {
+                    if ( _node.getCoordinate().distance(_from) > searchRadius ) {
+                        return;
+                    }
+                    for (Integer i : (List<Integer>)_node.getData()) {
+                        if ( ! visited[i.intValue()] && rejected[i.intValue()] != _step ) {
+                            candidates.add(i);
+                        }
+                    }
+                }
+            });
+            Collections.sort(candidates,new Comparator<Integer>() {
+                public int compare(Integer _i1, Integer _i2) {
+                    int compare = Double.compare(points[_i1.intValue()].distance(_from),points[_i2.intValue()].distance(_from));
+                    return compare != 0 ? compare : _i1.compareTo(_i2);
+                }
+            });
+            for (Integer i : candidates) {
+                if ( ! crossesFence(_from,this.points[i.intValue()]) ) {
+                    // Next search starts at about this distance
+                    this.radius = Math.max(this.points[i.intValue()].distance(_from),this.minimumRadius);
+                    return i.intValue();
+                }
+                this.rejected[i.intValue()] = _step;
+                if ( nearestFenced == -1 ) {
+                    nearestFenced = i.intValue();
+                }
+            }
+            if ( radius > this.diagonal + _from.distance(this.points[0]) ) {
+                // Everything searched: all unvisited points are fenced off
+                return nearestFenced;
+            }
+            radius *= 2.0;
+        }
+    }
+
+    private boolean crossesFence(Coordinate _from,
+                                 Coordinate _to)
+    {
+        if ( this.fences == null ) {
+            return false;
+        }
+        List segments = this.fences.query(new Envelope(_from,_to));
+        for (int i = 0; i < segments.size(); i++) {
+            Coordinate[] segment = (Coordinate[])segments.get(i);
+            this.intersector.computeIntersection(_from,_to,segment[0],segment[1]);
+            if ( this.intersector.hasIntersection() ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
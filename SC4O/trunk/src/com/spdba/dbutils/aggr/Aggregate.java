@@ -3,6 +3,7 @@ package com.spdba.dbutils.aggr;
 import com.spdba.dbutils.JTS;
 import com.spdba.dbutils.spatial.SDO;
 import com.spdba.dbutils.sql.DBConnection;
+import com.spdba.dbutils.sql.FetchSizer;
 import com.spdba.dbutils.tools.Strings;
 import com.spdba.dbutils.tools.Tools;
 
@@ -24,6 +25,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -67,11 +69,42 @@ public class Aggregate {
         return aggrUnion(_group,_precision,false,_distanceTolerance);
     }
 
+    public static STRUCT aggrUnionPolygons(oracle.sql.ARRAY _group,
+                                           int              _precision,
+                                           double           _distanceTolerance,
+                                           int              _parallelism,
+                                           int              _partitionSize) 
+    throws SQLException
+    {
+        return aggrUnion(_group,_precision,true,_distanceTolerance,_parallelism,_partitionSize);
+    }
+    
+    public static STRUCT aggrUnionMixed(oracle.sql.ARRAY _group,
+                                        int              _precision,
+                                        double           _distanceTolerance,
+                                        int              _parallelism,
+                                        int              _partitionSize)
+    throws SQLException
+    {
+        return aggrUnion(_group,_precision,false,_distanceTolerance,_parallelism,_partitionSize);
+    }
+
     public static STRUCT aggrUnion(oracle.sql.ARRAY _group,
                                    int              _precision,
                                    boolean          _polygons,
                                    double           _distanceTolerance) 
     throws SQLException
+    {
+        return aggrUnion(_group,_precision,_polygons,_distanceTolerance,PartitionedUnion.DEFAULT_PARALLELISM,0);
+    }
+
+    public static STRUCT aggrUnion(oracle.sql.ARRAY _group,
+                                   int              _precision,
+                                   boolean          _polygons,
+                                   double           _distanceTolerance,
+                                   int              _parallelism,
+                                   int              _partitionSize) 
+    throws SQLException
     {
       STRUCT resultSTRUCT = null;
       try
@@ -94,20 +127,35 @@ public class Aggregate {
           GeometryFactory gf = new GeometryFactory(pm,SRID); // PrecisionModel will be FIXED
           OraReader       or = new OraReader(gf);
           
-          // Convert passed in array to Collection of JTS Geometries
+          // Convert passed in array to Collection of JTS Geometries,
+          // or feed each one straight to a partitioned union
           //
+          PartitionedUnion pu = partitionedUnion(gf,_polygons,_parallelism,_partitionSize);
           STRUCT    struct = null;
-          Collection geoms = new ArrayList(_group.length());
+          Collection geoms = new ArrayList(pu == null ? _group.length() : 0);
           Geometry    poly = null;
-          for (int i=0;i<_group.length();i++) {
-              struct = (oracle.sql.STRUCT)nestedObjects[i];
-              if ( _polygons ) {
+          try {
+              for (int i=0;i<_group.length();i++) {
+                  struct = (oracle.sql.STRUCT)nestedObjects[i];
+                  nestedObjects[i] = null;
                   poly = or.read(struct);
-                  if (poly instanceof Polygon || poly instanceof MultiPolygon ) {
-                     geoms.add(poly);
+                  if ( _polygons && !(poly instanceof Polygon || poly instanceof MultiPolygon) ) {
+                      continue;
+                  }
+                  if ( pu != null ) {
+                      pu.add(poly);
+                  } else {
+                      geoms.add(poly);
                   }
-              } else {
-                  geoms.add(or.read(struct));
+              }
+              if ( pu != null ) {
+                  if ( pu.getCount() == 0 )
+                      return null;
+                  return toSTRUCT(pu.getResult(),gf,pm,new OraWriter(),_polygons,_distanceTolerance);
+              }
+          } finally {
+              if ( pu != null ) {
+                  pu.close();
               }
           }
           if (geoms.size()==0)
@@ -142,6 +190,26 @@ public class Aggregate {
         return aggrUnion(_resultSet,_precision,false,_distanceTolerance);
     }
 
+    public static STRUCT aggrUnionPolygons(ResultSet _resultSet,
+                                           int       _precision,
+                                           double    _distanceTolerance,
+                                           int       _parallelism,
+                                           int       _partitionSize) 
+    throws SQLException
+    {
+        return aggrUnion(_resultSet,_precision,true,_distanceTolerance,_parallelism,_partitionSize);
+    }
+    
+    public static STRUCT aggrUnionMixed(ResultSet _resultSet,
+                                        int       _precision,
+                                        double    _distanceTolerance,
+                                        int       _parallelism,
+                                        int       _partitionSize) 
+    throws SQLException
+    {
+        return aggrUnion(_resultSet,_precision,false,_distanceTolerance,_parallelism,_partitionSize);
+    }
+
     /* ================= TableName based union ===============
      */
       public static STRUCT aggrUnionPolygons(String _tableName,
@@ -150,26 +218,34 @@ public class Aggregate {
                                              double _distanceTolerance) 
       throws SQLException
       {
-          if (Strings.isEmpty(_tableName) ) {
-            Aggregate.log("No table/view name passed to ST_aggrUnionPolygons.",false); 
+          ResultSet rSet = tableResultSet(_tableName,_columnName,true,"ST_aggrUnionPolygons");
+          if ( rSet == null ) {
               return null;
           }
-          if (Strings.isEmpty(_columnName) ) {
-            Aggregate.log("No sdo_geometry column name passed to ST_aggrUnionPolygons.",false); 
+          try {
+              return aggrUnionStreaming(rSet,_precision,true,_distanceTolerance,StreamingUnion.DEFAULT_BATCH_SIZE);
+          } finally {
+              close(rSet);
+          }
+      }
+
+      public static STRUCT aggrUnionPolygons(String _tableName,
+                                             String _columnName,
+                                             int    _precision,
+                                             double _distanceTolerance,
+                                             int    _parallelism,
+                                             int    _partitionSize) 
+      throws SQLException
+      {
+          ResultSet rSet = tableResultSet(_tableName,_columnName,true,"ST_aggrUnionPolygons");
+          if ( rSet == null ) {
               return null;
           }
-          
-          // Ensure global connection is a valid connection
-          // Precision set
-          // SRID exposed
-          //
-          OracleConnection conn = DBConnection.getConnection();
-          PreparedStatement pStatement = conn.prepareStatement(
-                                  "SELECT " + _columnName + 
-                                   " FROM " + _tableName + " A " + 
-                                  " WHERE a." + _columnName + " IS NOT NULL AND a." + _columnName + ".get_gtype() in (3,7)");
-          OracleResultSet ors = (OracleResultSet)pStatement.executeQuery();
-          return aggrUnion(ors,_precision,true,_distanceTolerance);
+          try {
+              return aggrUnion(rSet,_precision,true,_distanceTolerance,_parallelism,_partitionSize);
+          } finally {
+              close(rSet);
+          }
       }
       
       public static STRUCT aggrUnionMixed(String _tableName,
@@ -177,24 +253,80 @@ public class Aggregate {
                                           int    _precision,
                                           double _distanceTolerance) 
       throws SQLException
+      {
+          ResultSet rSet = tableResultSet(_tableName,_columnName,false,"ST_aggrUnionMixed");
+          if ( rSet == null ) {
+              return null;
+          }
+          try {
+              return aggrUnionStreaming(rSet,_precision,false,_distanceTolerance,StreamingUnion.DEFAULT_BATCH_SIZE);
+          } finally {
+              close(rSet);
+          }
+      }
+
+      public static STRUCT aggrUnionMixed(String _tableName,
+                                          String _columnName,
+                                          int    _precision,
+                                          double _distanceTolerance,
+                                          int    _parallelism,
+                                          int    _partitionSize) 
+      throws SQLException
+      {
+          ResultSet rSet = tableResultSet(_tableName,_columnName,false,"ST_aggrUnionMixed");
+          if ( rSet == null ) {
+              return null;
+          }
+          try {
+              return aggrUnion(rSet,_precision,false,_distanceTolerance,_parallelism,_partitionSize);
+          } finally {
+              close(rSet);
+          }
+      }
+
+      /**
+       * Opens a cursor over the non-null geometries (polygons only if _polygons) in a table's column.
+       * Returns null (after logging) if table or column name is missing.
+       */
+      private static ResultSet tableResultSet(String  _tableName,
+                                              String  _columnName,
+                                              boolean _polygons,
+                                              String  _function)
+      throws SQLException
       {
           if (Strings.isEmpty(_tableName) ) {
-            Aggregate.log("No table/view name passed to ST_aggrUnionMixed.",false);
+            Aggregate.log("No table/view name passed to " + _function + ".",false);
               return null;
           }
           if (Strings.isEmpty(_columnName) ) {
-            Aggregate.log("No sdo_geometry column name passed to ST_aggrUnionMixed.",false);
+            Aggregate.log("No sdo_geometry column name passed to " + _function + ".",false);
               return null;
           }
           
           // Ensure global connection is a valid connection
           // Precision set
-          // SRID exosed
+          // SRID exposed
           //
           OracleConnection conn = DBConnection.getConnection();
-          PreparedStatement pStatement = conn.prepareStatement("SELECT " + _columnName + " FROM " + _tableName + " A WHERE a." + _columnName + " IS NOT NULL");
-          OracleResultSet ors = (OracleResultSet)pStatement.executeQuery();
-          return aggrUnion(ors,_precision,false,_distanceTolerance);
+          PreparedStatement pStatement = conn.prepareStatement(
+                                  "SELECT " + _columnName + 
+                                   " FROM " + _tableName + " A " + 
+                                  " WHERE a." + _columnName + " IS NOT NULL" +
+                                  (_polygons ? " AND a." + _columnName + ".get_gtype() in (3,7)" : ""));
+          return (OracleResultSet)pStatement.executeQuery();
+      }
+
+      private static void close(ResultSet _resultSet)
+      {
+          try {
+              Statement stmt = _resultSet.getStatement();
+              _resultSet.close();
+              if ( stmt != null ) {
+                  stmt.close();
+              }
+          } catch (SQLException sqle) {
+              System.err.println(sqle.getMessage());
+          }
       }
 
       public static STRUCT aggrUnion(ResultSet _resultSet,
@@ -202,6 +334,17 @@ public class Aggregate {
                                      boolean   _polygons,
                                      double    _distanceTolerance) 
       throws SQLException
+      {
+          return aggrUnion(_resultSet,_precision,_polygons,_distanceTolerance,PartitionedUnion.DEFAULT_PARALLELISM,0);
+      }
+
+      public static STRUCT aggrUnion(ResultSet _resultSet,
+                                     int       _precision,
+                                     boolean   _polygons,
+                                     double    _distanceTolerance,
+                                     int       _parallelism,
+                                     int       _partitionSize) 
+      throws SQLException
       {
           if ( _resultSet == null ) {
             Aggregate.log("No ResultSet passed to aggrUnion.",false);
@@ -222,43 +365,153 @@ public class Aggregate {
               PrecisionModel  pm = new PrecisionModel(Tools.getPrecisionScale(_precision));
               GeometryFactory gf = null;
               OraReader       or = null;
+              PartitionedUnion pu = null;
               
               Collection geoms           = new ArrayList();
-              _resultSet.setFetchDirection(ResultSet.FETCH_FORWARD);
-              _resultSet.setFetchSize(150);
+              FetchSizer fetchSizer      = new FetchSizer();
+              fetchSizer.start(_resultSet);
               ResultSetMetaData metaData = _resultSet.getMetaData();
+              try {
+                  while(_resultSet.next()) 
+                  {
+                      if( metaData.getColumnType(geometryColumnIndex) != OracleTypes.STRUCT || 
+                         !metaData.getColumnTypeName(geometryColumnIndex).equalsIgnoreCase(SDO.TAG_MDSYS_SDO_GEOMETRY))
+                          continue;
+                      jGeoStruct = (STRUCT)_resultSet.getObject(geometryColumnIndex);
+                      fetchSizer.rowFetched(_resultSet,jGeoStruct);
+                      if (jGeoStruct == null) {
+                          continue;
+                      }
+                      // We create the geometryFactory when we have the first valid SDO_Geometry so we can get its SRID
+                      //
+                      if ( gf == null ) {
+                        int SRID = SDO.getSRID(jGeoStruct,0);
+                        // Create GeometryFactory with FIXED PrecisionModel with SRID
+                        gf = new GeometryFactory(pm,SRID);
+                        or = new OraReader(gf);
+                        pu = partitionedUnion(gf,_polygons,_parallelism,_partitionSize);
+                      }
+                      Geometry geom = or.read(jGeoStruct);
+                      if(geom == null) {
+                          continue;
+                      }
+                      // Union partition by partition as read, or add converted geometry to collection
+                      //
+                      if ( pu != null ) {
+                          pu.add(geom);
+                      } else {
+                          geoms.add(geom);
+                      }
+                  }
+                  if ( pu != null ) {
+                      jGeoStruct = null;
+                      if ( pu.getCount() == 0 ) {
+                          return null;
+                      }
+                      return toSTRUCT(pu.getResult(),gf,pm,new OraWriter(),_polygons,_distanceTolerance);
+                  }
+              } finally {
+                  if ( pu != null ) {
+                      pu.close();
+                  }
+              }
+              if (geoms.size()==0) {
+                  return null;
+              }
+              // Use common method do do union
+              //
+              OraWriter ow = new OraWriter();
+              jGeoStruct   = aggrUnion(geoms,gf,pm,ow,_polygons,_distanceTolerance);
+              
+          } catch (SQLException sqle) {
+              System.err.println(sqle.getMessage());
+          }
+          return jGeoStruct;
+      }
+      
+      /**
+       * Unions the geometries in a ResultSet as they are read, in batches of _batchSize
+       * (see StreamingUnion), so that the whole ResultSet is never held in memory.
+       * @param _resultSet         : ResultSet : Cursor whose first SDO_GEOMETRY column is to be unioned
+       * @param _precision         : int       : Number of decimal places of precision when comparing ordinates.
+       * @param _polygons          : boolean   : If true only polygons are unioned
+       * @param _distanceTolerance : double    : Optional simplification tolerance applied to result (0.0 for none)
+       * @param _batchSize         : int       : Number of geometries unioned at once
+       * @return STRUCT : Union as SDO_GEOMETRY
+       */
+      public static STRUCT aggrUnionStreaming(ResultSet _resultSet,
+                                              int       _precision,
+                                              boolean   _polygons,
+                                              double    _distanceTolerance,
+                                              int       _batchSize) 
+      throws SQLException
+      {
+          return aggrUnionStreaming(_resultSet,_precision,_polygons,_distanceTolerance,_batchSize,FetchSizer.getDefaultMemoryBudget());
+      }
+
+      /**
+       * As aggrUnionStreaming, with the ResultSet's fetch size chosen (and adjusted as rows
+       * are read) so each fetch holds about _fetchMemoryBudget bytes (see FetchSizer).
+       * @param _fetchMemoryBudget : long : Approximate bytes per fetch
+       */
+      public static STRUCT aggrUnionStreaming(ResultSet _resultSet,
+                                              int       _precision,
+                                              boolean   _polygons,
+                                              double    _distanceTolerance,
+                                              int       _batchSize,
+                                              long      _fetchMemoryBudget) 
+      throws SQLException
+      {
+          if ( _resultSet == null ) {
+            Aggregate.log("No ResultSet passed to aggrUnionStreaming.",false);
+              return null;
+          }
+          STRUCT jGeoStruct = null;
+          try
+          {
+              int geometryColumnIndex = JTS.firstSdoGeometryColumn(_resultSet.getMetaData());
+              if (geometryColumnIndex == -1) {
+                Aggregate.log("No SDO_GEOMETRY column can be found in data to be exported.",false);
+                  return null; 
+              }
+      
+              PrecisionModel  pm = new PrecisionModel(Tools.getPrecisionScale(_precision));
+              GeometryFactory gf = null;
+              OraReader       or = null;
+              StreamingUnion  su = null;
+              FetchSizer      fs = new FetchSizer(_fetchMemoryBudget);
+              
+              fs.start(_resultSet);
+              ResultSetMetaData metaData = _resultSet.getMetaData();
+              if( metaData.getColumnType(geometryColumnIndex) != OracleTypes.STRUCT || 
+                 !metaData.getColumnTypeName(geometryColumnIndex).equalsIgnoreCase(SDO.TAG_MDSYS_SDO_GEOMETRY)) {
+                  return null;
+              }
               while(_resultSet.next()) 
               {
-                  if( metaData.getColumnType(geometryColumnIndex) != OracleTypes.STRUCT || 
-                     !metaData.getColumnTypeName(geometryColumnIndex).equalsIgnoreCase(SDO.TAG_MDSYS_SDO_GEOMETRY))
-                      continue;
                   jGeoStruct = (STRUCT)_resultSet.getObject(geometryColumnIndex);
+                  fs.rowFetched(_resultSet,jGeoStruct);
                   if (jGeoStruct == null) {
                       continue;
                   }
                   // We create the geometryFactory when we have the first valid SDO_Geometry so we can get its SRID
                   //
                   if ( gf == null ) {
-                    int SRID = SDO.getSRID(jGeoStruct,0);
-                    // Create GeometryFactory with FIXED PrecisionModel with SRID
-                    gf = new GeometryFactory(pm,SRID);
+                    gf = new GeometryFactory(pm,SDO.getSRID(jGeoStruct,0));
                     or = new OraReader(gf);
+                    su = new StreamingUnion(gf,_polygons,_batchSize);
                   }
                   Geometry geom = or.read(jGeoStruct);
-                  if(geom == null) {
+                  if ( _polygons && !(geom instanceof Polygon || geom instanceof MultiPolygon) ) {
                       continue;
                   }
-                  // Add converted geometry to collection
-                  //
-                  geoms.add(geom);
+                  su.add(geom);
               }
-              if (geoms.size()==0) {
+              jGeoStruct = null;
+              if ( su == null || su.getCount() == 0 ) {
                   return null;
               }
-              // Use common method do do union
-              //
-              OraWriter ow = new OraWriter();
-              jGeoStruct   = aggrUnion(geoms,gf,pm,ow,_polygons,_distanceTolerance);
+              jGeoStruct = toSTRUCT(su.getResult(),gf,pm,new OraWriter(),_polygons,_distanceTolerance);
               
           } catch (SQLException sqle) {
               System.err.println(sqle.getMessage());
@@ -266,6 +519,26 @@ public class Aggregate {
           return jGeoStruct;
       }
       
+      /**
+       * If a parallelism greater than 1 or a partition size is supplied, the union is
+       * computed partition by partition as the geometries are read (see PartitionedUnion),
+       * otherwise in one operation once all are read.
+       * @return PartitionedUnion to add the geometries to, or null for a single union
+       **/
+    private static PartitionedUnion partitionedUnion(GeometryFactory _gf,
+                                                     boolean         _polygons,
+                                                     int             _parallelism,
+                                                     int             _partitionSize)
+    {
+        if ( _parallelism > 1 || _partitionSize > 0 ) {
+            return new PartitionedUnion(_gf,
+                                        _polygons,
+                                        _parallelism,
+                                        _partitionSize > 0 ? _partitionSize : PartitionedUnion.DEFAULT_PARTITION_SIZE);
+        }
+        return null;
+    }
+
       /** =============== Common Union method for ARRAY and ResultSet based methods ===============
        **/
     private static STRUCT aggrUnion(Collection      _geoms,
@@ -276,7 +549,6 @@ public class Aggregate {
                                     double          _distanceTolerance) 
     throws SQLException
     {
-        STRUCT resultSTRUCT = null;
         // Now execute union 
         //
         Geometry geo = null;
@@ -285,6 +557,21 @@ public class Aggregate {
         } else {
             geo = UnaryUnionOp.union(_geoms,_gf);
         }
+        return toSTRUCT(geo,_gf,_pm,_ow,_polygons,_distanceTolerance);
+    }
+
+    /** Does optional simplification, precision reduction and conversion of union result to STRUCT
+     **/
+    private static STRUCT toSTRUCT(Geometry        _geo,
+                                   GeometryFactory _gf,
+                                   PrecisionModel  _pm,
+                                   OraWriter       _ow,
+                                   boolean         _polygons,
+                                   double          _distanceTolerance) 
+    throws SQLException
+    {
+        STRUCT resultSTRUCT = null;
+        Geometry geo = _geo;
         
         // Do optional simplification and/or convert to STRUCT
         //
@@ -0,0 +1,357 @@
+package com.spdba.dbutils.aggr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.locationtech.jts.operation.union.CascadedPolygonUnion;
+import org.locationtech.jts.operation.union.UnaryUnionOp;
+
+/**
+ * Unions a large collection of geometries by spatial partition.
+ * <p>
+ * The input is bulk loaded into an STRtree whose node capacity is the partition size,
+ * so that each leaf of the tree holds at most partitionSize spatially clustered geometries.
+ * Each leaf is unioned as a separate task, and the partial results are then merged
+ * pairwise, in tree order, until one geometry remains. As neighbouring partial results
+ * are merged first, each merge works on geometries that largely share boundaries.
+ * <p>
+ * The working set of each task is bounded by the partition size (or by two partial results
+ * when merging), rather than by the whole input.
+ * <p>
+ * Input read from a cursor can instead be streamed with {@link #add(Geometry)} and
+ * {@link #getResult()}. Each partitionSize geometries, in the order added, are submitted
+ * as a task as soon as they are read, and finished partial results are merged (also as
+ * tasks) by a {@link UnionCounter}, as in StreamingUnion. Reading blocks while more than
+ * parallelism tasks are outstanding, so at most parallelism+1 partitions plus
+ * log2(partitions) partial results are held at any one time. As partitions are not
+ * spatially sorted, the cursor should return the geometries in a spatially clustered
+ * order (eg by a spatial key) for the partial results to stay small.
+ * <p>
+ * Tasks are run on a fixed size thread pool of the requested parallelism. A parallelism
+ * of 1 (or less) runs all tasks on the calling thread. Note that inside the Oracle JVM
+ * all threads of a session are scheduled on the one session thread, so parallelism
+ * only reduces elapsed time when SC4O is used as a Java library outside the database.
+ */
+public class PartitionedUnion {
+
+    public static final int DEFAULT_PARTITION_SIZE = 1000;
+    public static final int DEFAULT_PARALLELISM    = 1;
+
+    private final GeometryFactory gf;
+    private final boolean         polygons;
+    private final int             parallelism;
+    private final int             partitionSize;
+
+    // Streaming state, see add() and getResult()
+    private ExecutorService pool    = null;
+    private List            batch   = null;
+    private LinkedList      pending = new LinkedList();  // Partials, oldest first
+    private long            count   = 0;
+
+    // Finished partial results; a merge of two is submitted as a task for the next level
+    private final UnionCounter levels = new UnionCounter() {
+        protected Geometry merge(Geometry _occupant, Geometry _partial, int _level) {
+            List pair = new ArrayList(2);
+            pair.add(_occupant);
+            pair.add(_partial);
+            submit(pair,_level);
+            return null;
+        }
+    };
+
+    /**
+     * @param _gf            : GeometryFactory : Factory for results
+     * @param _polygons      : boolean : true if input is all polygons (CascadedPolygonUnion is used), false for mixed input (UnaryUnionOp)
+     * @param _parallelism   : int     : Number of threads to use; 1 or less runs on the calling thread
+     * @param _partitionSize : int     : Maximum number of input geometries unioned by each task (minimum 2)
+     */
+    public PartitionedUnion(GeometryFactory _gf,
+                            boolean         _polygons,
+                            int             _parallelism,
+                            int             _partitionSize)
+    {
+        this.gf            = _gf;
+        this.polygons      = _polygons;
+        this.parallelism   = Math.max(1,_parallelism);
+        this.partitionSize = _partitionSize < 2 ? DEFAULT_PARTITION_SIZE : _partitionSize;
+    }
+
+    /**
+     * Unions the supplied geometries.
+     * @param _geoms : Collection : JTS Geometries to union
+     * @return Geometry : Union of all geometries, or null if none supplied
+     */
+    public Geometry union(Collection _geoms)
+    {
+        if ( _geoms == null || _geoms.size() == 0 ) {
+            return null;
+        }
+        if ( _geoms.size() <= this.partitionSize ) {
+            return unionPartition(_geoms);
+        }
+        List partitions = partition(_geoms);
+        ExecutorService pool = this.parallelism > 1
+                               ? Executors.newFixedThreadPool(this.parallelism)
+                               : null;
+        try {
+            // Union each partition
+            //
+            List tasks = new ArrayList(partitions.size());
+            for (int i = 0; i < partitions.size(); i++) {
+                tasks.add(new UnionTask((List)partitions.get(i)));
+            }
+            partitions = null;
+            return mergePairwise(pool,run(pool,tasks));
+        } finally {
+            if ( pool != null ) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Adds a geometry to a streamed union. When partitionSize geometries have been added
+     * they are submitted as a union task; if more than parallelism tasks are then
+     * outstanding this waits for the oldest to finish.
+     * @param _geom : Geometry : Geometry to add (null or empty geometries are ignored)
+     */
+    public void add(Geometry _geom)
+    {
+        if ( _geom == null || _geom.isEmpty() ) {
+            return;
+        }
+        if ( this.batch == null ) {
+            this.batch = new ArrayList(this.partitionSize);
+        }
+        this.batch.add(_geom);
+        this.count++;
+        if ( this.batch.size() >= this.partitionSize ) {
+            submit(this.batch,0);
+            this.batch = null;
+            drain(this.parallelism);
+        }
+    }
+
+    /**
+     * @return long : Number of geometries added to a streamed union
+     */
+    public long getCount()
+    {
+        return this.count;
+    }
+
+    /**
+     * Finishes a streamed union: unions any remaining geometries, waits for all tasks
+     * and merges the partial results.
+     * @return Geometry : Union of all geometries added, or null if none added
+     */
+    public Geometry getResult()
+    {
+        try {
+            if ( this.batch != null && this.batch.size() > 0 ) {
+                submit(this.batch,0);
+            }
+            this.batch = null;
+            drain(0);
+            // Merge the partial result of each level, smallest first
+            //
+            return mergePairwise(this.pool,this.levels.removeAll());
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Stops the thread pool of a streamed union, abandoning any outstanding tasks.
+     * Called by getResult(); call it directly only if the union is abandoned part way.
+     */
+    public void close()
+    {
+        if ( this.pool != null ) {
+            this.pool.shutdownNow();
+            this.pool = null;
+        }
+        this.pending.clear();
+        this.levels.clear();
+        this.batch = null;
+    }
+
+    private void submit(List _geoms, int _level)
+    {
+        UnionTask task = new UnionTask(_geoms);
+        Future future = null;
+        if ( this.parallelism > 1 ) {
+            if ( this.pool == null ) {
+                this.pool = Executors.newFixedThreadPool(this.parallelism);
+            }
+            future = this.pool.submit(task);
+        } else {
+            FutureTask now = new FutureTask(task);
+            now.run();
+            future = now;
+        }
+        this.pending.addLast(new Partial(future,_level));
+    }
+
+    /**
+     * Waits for the oldest tasks until no more than _maxPending are outstanding.
+     * Each finished partial result is carried into its level; if the level is occupied
+     * the two are submitted as a merge task for the next level.
+     */
+    private void drain(int _maxPending)
+    {
+        while ( this.pending.size() > _maxPending ) {
+            Partial partial = (Partial)this.pending.removeFirst();
+            this.levels.carry((Geometry)get(partial.future),partial.level);
+        }
+    }
+
+    /**
+     * Merges partial results pairwise, in order, until one remains.
+     * @param _pool     : ExecutorService : Pool to run merges on, or null for the calling thread
+     * @param _partials : List : Partial results
+     * @return Geometry : Union of the partial results, or null if there are none
+     */
+    private Geometry mergePairwise(ExecutorService _pool, List _partials)
+    {
+        List partials = _partials;
+        while ( partials.size() > 1 ) {
+            List tasks = new ArrayList((partials.size() + 1) / 2);
+            for (int i = 0; i < partials.size(); i += 2) {
+                List pair = new ArrayList(2);
+                pair.add(partials.get(i));
+                if ( i + 1 < partials.size() ) {
+                    pair.add(partials.get(i + 1));
+                }
+                tasks.add(new UnionTask(pair));
+            }
+            partials = run(_pool,tasks);
+        }
+        return partials.size() == 0 ? null : (Geometry)partials.get(0);
+    }
+
+    private static class Partial {
+        final Future future;
+        final int    level;
+        Partial(Future _future, int _level) {
+            this.future = _future;
+            this.level  = _level;
+        }
+    }
+
+    /**
+     * Groups geometries into spatially clustered partitions of at most partitionSize geometries.
+     * @param _geoms : Collection : JTS Geometries
+     * @return List of Lists of Geometries, in STRtree order.
+     */
+    List partition(Collection _geoms)
+    {
+        STRtree tree = new STRtree(this.partitionSize);
+        Iterator iter = _geoms.iterator();
+        while ( iter.hasNext() ) {
+            Geometry geom = (Geometry)iter.next();
+            if ( geom != null ) {
+                tree.insert(geom.getEnvelopeInternal(), geom);
+            }
+        }
+        List leaves = new ArrayList();
+        collectLeaves(tree.itemsTree(),leaves);
+        return leaves;
+    }
+
+    private static void collectLeaves(List _node, List _leaves)
+    {
+        List items = null;
+        for (int i = 0; i < _node.size(); i++) {
+            Object child = _node.get(i);
+            if ( child instanceof List ) {
+                collectLeaves((List)child,_leaves);
+            } else {
+                if ( items == null ) {
+                    items = new ArrayList();
+                    _leaves.add(items);
+                }
+                items.add(child);
+            }
+        }
+    }
+
+    private Geometry unionPartition(Collection _geoms)
+    {
+        if ( _geoms.size() == 1 ) {
+            return (Geometry)_geoms.iterator().next();
+        }
+        return this.polygons
+               ? CascadedPolygonUnion.union(_geoms)
+               : UnaryUnionOp.union(_geoms,this.gf);
+    }
+
+    private List run(ExecutorService _pool, List _tasks)
+    {
+        List results = new ArrayList(_tasks.size());
+        if ( _pool == null ) {
+            for (int i = 0; i < _tasks.size(); i++) {
+                addResult(results,((UnionTask)_tasks.get(i)).call());
+            }
+            return results;
+        }
+        List futures = new ArrayList(_tasks.size());
+        for (int i = 0; i < _tasks.size(); i++) {
+            futures.add(_pool.submit((UnionTask)_tasks.get(i)));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            addResult(results,get((Future)futures.get(i)));
+        }
+        return results;
+    }
+
+    private static Object get(Future _future)
+    {
+        try {
+            return _future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Union interrupted.");
+        } catch (ExecutionException ee) {
+            if ( ee.getCause() instanceof RuntimeException ) {
+                throw (RuntimeException)ee.getCause();
+            }
+            throw new IllegalStateException("Union failed with " + ee.getCause());
+        }
+    }
+
+    private static void addResult(List _results, Object _geom)
+    {
+        if ( _geom != null && ! ((Geometry)_geom).isEmpty() ) {
+            _results.add(_geom);
+        }
+    }
+
+    private class UnionTask
+       implements Callable
+    {
+        private Collection geoms;
+
+        UnionTask(Collection _geoms) {
+            this.geoms = _geoms;
+        }
+
+        public Object call() {
+            Geometry result = unionPartition(this.geoms);
+            this.geoms = null; // Release input for garbage collection
+            return result;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.spdba.dbutils.aggr;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.operation.union.CascadedPolygonUnion;
+import org.locationtech.jts.operation.union.UnaryUnionOp;
+
+/**
+ * Unions a stream of geometries without holding the whole stream in memory.
+ * <p>
+ * Geometries are added one at a time, and are unioned in batches of batchSize.
+ * Each batch result is then carried into a {@link UnionCounter}: the partial result
+ * at level k covers 2^k batches, and when a new partial result arrives at an occupied
+ * level the two are unioned and carried up to the next level. At most one batch plus
+ * log2(batches) partial results are therefore held at any one time, and each union
+ * merges partial results of similar size.
+ * <p>
+ * Call {@link #getResult()} once all geometries have been added.
+ */
+public class StreamingUnion {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final GeometryFactory gf;
+    private final boolean         polygons;
+    private final int             batchSize;
+
+    private List batch;
+    private long count  = 0;
+
+    private final UnionCounter levels = new UnionCounter() {
+        protected Geometry merge(Geometry _occupant, Geometry _partial, int _level) {
+            return union(_occupant,_partial);
+        }
+    };
+
+    /**
+     * @param _gf        : GeometryFactory : Factory for results
+     * @param _polygons  : boolean : true if input is all polygons (CascadedPolygonUnion is used), false for mixed input (UnaryUnionOp)
+     * @param _batchSize : int     : Number of geometries unioned at once (minimum 2)
+     */
+    public StreamingUnion(GeometryFactory _gf,
+                          boolean         _polygons,
+                          int             _batchSize)
+    {
+        this.gf        = _gf;
+        this.polygons  = _polygons;
+        this.batchSize = _batchSize < 2 ? DEFAULT_BATCH_SIZE : _batchSize;
+        this.batch     = new ArrayList(this.batchSize);
+    }
+
+    /**
+     * Adds a geometry to the union.
+     * @param _geom : Geometry : Geometry to add (null or empty geometries are ignored)
+     */
+    public void add(Geometry _geom)
+    {
+        if ( _geom == null || _geom.isEmpty() ) {
+            return;
+        }
+        this.batch.add(_geom);
+        this.count++;
+        if ( this.batch.size() >= this.batchSize ) {
+            flushBatch();
+        }
+    }
+
+    /**
+     * @return long : Number of geometries added
+     */
+    public long getCount()
+    {
+        return this.count;
+    }
+
+    /**
+     * Unions any remaining batch with all partial results.
+     * @return Geometry : Union of all geometries added, or null if none added
+     */
+    public Geometry getResult()
+    {
+        flushBatch();
+        // Merge from the smallest level up so each union is between similar sized geometries
+        //
+        List partials = this.levels.removeAll();
+        Geometry result = null;
+        for (int i = 0; i < partials.size(); i++) {
+            Geometry partial = (Geometry)partials.get(i);
+            result = result == null ? partial : union(partial,result);
+        }
+        return result;
+    }
+
+    private void flushBatch()
+    {
+        if ( this.batch.size() == 0 ) {
+            return;
+        }
+        Geometry carry = this.batch.size() == 1
+                         ? (Geometry)this.batch.get(0)
+                         : union(this.batch);
+        this.batch = new ArrayList(this.batchSize);
+        this.levels.carry(carry,0);
+    }
+
+    private Geometry union(Geometry _geom1, Geometry _geom2)
+    {
+        List pair = new ArrayList(2);
+        pair.add(_geom1);
+        pair.add(_geom2);
+        return union(pair);
+    }
+
+    private Geometry union(List _geoms)
+    {
+        Geometry result = this.polygons
+                          ? CascadedPolygonUnion.union(_geoms)
+                          : UnaryUnionOp.union(_geoms,this.gf);
+        return result == null || result.isEmpty() ? null : result;
+    }
+}
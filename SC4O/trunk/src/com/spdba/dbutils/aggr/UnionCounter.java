@@ -0,0 +1,78 @@
+package com.spdba.dbutils.aggr;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.locationtech.jts.geom.Geometry;
+
+/**
+ * Holds the partial results of a streamed union in the manner of a binary counter.
+ * <p>
+ * The partial result at level k covers 2^k batches. When a partial result is carried
+ * into an occupied level the occupant is removed and the two are handed to
+ * {@link #merge(Geometry, Geometry, int)}, whose result is carried into the next level.
+ * At most log2(batches) partial results are therefore held at any one time, and each
+ * merge is between partial results of similar size.
+ * <p>
+ * Used by StreamingUnion, which merges on the calling thread, and by PartitionedUnion,
+ * which submits each merge as a task and carries its result in when the task finishes.
+ */
+abstract class UnionCounter {
+
+    private final List levels = new ArrayList();  // Partial result for each level, or null
+
+    /**
+     * Merges two partial results of the same level.
+     * @param _occupant : Geometry : Partial result that held the level
+     * @param _partial  : Geometry : Partial result carried into the level
+     * @param _level    : int      : Level of the merged result
+     * @return Geometry : Merged result to carry into _level, or null if there is none yet
+     *                    (eg the merge was submitted as a task)
+     */
+    protected abstract Geometry merge(Geometry _occupant, Geometry _partial, int _level);
+
+    /**
+     * Carries a partial result into a level, merging with each occupied level on the way up.
+     * @param _partial : Geometry : Partial result (null or empty results are ignored)
+     * @param _level   : int      : Level of the partial result (0 for a single batch)
+     */
+    void carry(Geometry _partial, int _level)
+    {
+        Geometry carry = _partial;
+        int      level = _level;
+        while ( carry != null && ! carry.isEmpty() ) {
+            while ( this.levels.size() <= level ) {
+                this.levels.add(null);
+            }
+            Geometry occupant = (Geometry)this.levels.get(level);
+            if ( occupant == null ) {
+                this.levels.set(level,carry);
+                return;
+            }
+            this.levels.set(level,null);
+            level++;
+            carry = merge(occupant,carry,level);
+        }
+    }
+
+    /**
+     * Removes all partial results.
+     * @return List : Partial results, smallest level first
+     */
+    List removeAll()
+    {
+        List partials = new ArrayList();
+        for (int level = 0; level < this.levels.size(); level++) {
+            if ( this.levels.get(level) != null ) {
+                partials.add(this.levels.get(level));
+            }
+        }
+        this.levels.clear();
+        return partials;
+    }
+
+    void clear()
+    {
+        this.levels.clear();
+    }
+}
@@ -0,0 +1,257 @@
+package com.spdba.dbutils.io.exp;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import org.locationtech.jts.geom.PrecisionModel;
+
+/**
+ * Base of the streaming text encoders (GeoJSON, GML ...).
+ * <p>
+ * Text is appended to the writer's own character buffer, which is written to the
+ * underlying Writer when full, so no intermediate Strings are built per row.
+ * Ordinates are written with the number of decimal places of the PrecisionModel
+ * (trailing zeros dropped) using long arithmetic, or the shortest text that reads
+ * back as the same double for a floating PrecisionModel. Where the decimal places
+ * asked for exceed the 15 to 16 significant digits a double holds (eg 9 decimal places
+ * of a 7 digit easting) as many are written as fit in a long, rather than the
+ * binary noise beyond them.
+ * <p>
+ * Not thread safe: use one instance per output.
+ */
+public class BufferedTextWriter {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /** Largest scaled ordinate that can be rounded exactly via a long */
+    private static final double MAX_SCALED = 9.0E15;
+    private static final long[] POWERS_OF_TEN = new long[16];
+    static {
+        POWERS_OF_TEN[0] = 1L;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1] * 10L;
+        }
+    }
+
+    private final Writer      out;
+    private final char[]   buffer;
+    private int          position = 0;
+
+    private int     decimalPlaces = -1;   // < 0 for shortest round trip text
+    private long            scale = 1L;
+    private final char[]   digits = new char[20];
+
+    /**
+     * @param _out            : Writer : Destination; need not be buffered
+     * @param _precisionModel : PrecisionModel : Sets decimal places of ordinates
+     * @param _bufferSize     : int : Characters buffered before writing to _out
+     */
+    public BufferedTextWriter(Writer         _out,
+                              PrecisionModel _precisionModel,
+                              int            _bufferSize)
+    {
+        this.out    = _out;
+        this.buffer = new char[Math.max(1024,_bufferSize)];
+        setPrecisionModel(_precisionModel);
+    }
+
+    /**
+     * @param _precisionModel : PrecisionModel : FIXED models write the decimal places of their scale;
+     *                                           FLOATING models (or null) write the shortest round trip text.
+     */
+    public void setPrecisionModel(PrecisionModel _precisionModel) {
+        if ( _precisionModel == null || _precisionModel.isFloating() ) {
+            this.decimalPlaces = -1;
+            this.scale         = 1L;
+        } else {
+            // eg scale 1000 is 3 decimal places
+            int places = (int)Math.ceil(Math.log(_precisionModel.getScale()) / Math.log(10) - 1.0E-9);
+            this.decimalPlaces = Math.max(0,Math.min(POWERS_OF_TEN.length - 1,places));
+            this.scale         = POWERS_OF_TEN[this.decimalPlaces];
+        }
+    }
+
+    /**
+     * @return int : Decimal places written, or -1 if floating
+     */
+    public int getDecimalPlaces() {
+        return this.decimalPlaces;
+    }
+
+    /**
+     * Writes a double rounded to the writer's decimal places without
+     * trailing zeros, or as the shortest round trip text if floating.
+     */
+    public void appendNumber(double _value)
+    throws IOException
+    {
+        if ( Double.isNaN(_value) || Double.isInfinite(_value) ) {
+            appendNonFinite(_value);
+            return;
+        }
+        if ( this.decimalPlaces < 0 ) {
+            append(Double.toString(_value));
+            return;
+        }
+        int    decimals = this.decimalPlaces;
+        long      scale = this.scale;
+        double   scaled = _value * scale;
+        while ( Math.abs(scaled) >= MAX_SCALED && decimals > 0 ) {
+            decimals--;
+            scale  = POWERS_OF_TEN[decimals];
+            scaled = _value * scale;
+        }
+        if ( Math.abs(scaled) >= MAX_SCALED ) {
+            // Beyond a long even without decimal places
+            append(new BigDecimal(_value).setScale(0,RoundingMode.HALF_UP).toPlainString());
+            return;
+        }
+        // HALF_UP on the magnitude, so -0.5 rounds to -1 as 0.5 rounds to 1
+        // (Math.round rounds halves towards positive infinity)
+        long rounded = (long)Math.floor(Math.abs(scaled) + 0.5);
+        if ( rounded == 0L ) {
+            append('0');
+            return;
+        }
+        if ( scaled < 0.0 ) {
+            append('-');
+        }
+        long whole    = rounded / scale;
+        long fraction = rounded % scale;
+        appendLong(whole);
+        if ( fraction != 0L ) {
+            int places = decimals;
+            while ( fraction % 10L == 0L ) {
+                fraction /= 10L;
+                places--;
+            }
+            append('.');
+            // Fraction digits, including leading zeros, right to left
+            for (int i = places - 1; i >= 0; i--) {
+                this.digits[i] = (char)('0' + (fraction % 10L));
+                fraction /= 10L;
+            }
+            append(this.digits,0,places);
+        }
+    }
+
+    /**
+     * Writes NaN or an infinite value; the formats' text for a missing number differ.
+     */
+    protected void appendNonFinite(double _value)
+    throws IOException
+    {
+        append(Double.isNaN(_value) ? "NaN" : (_value > 0 ? "INF" : "-INF"));
+    }
+
+    public void appendLong(long _value)
+    throws IOException
+    {
+        if ( _value < 0L ) {
+            if ( _value == Long.MIN_VALUE ) {
+                append(String.valueOf(_value));
+                return;
+            }
+            append('-');
+            _value = -_value;
+        }
+        if ( _value == 0L ) {
+            append('0');
+            return;
+        }
+        int i = this.digits.length;
+        while ( _value > 0L ) {
+            this.digits[--i] = (char)('0' + (_value % 10L));
+            _value /= 10L;
+        }
+        append(this.digits,i,this.digits.length - i);
+    }
+
+    /**
+     * Appends text escaping the XML special characters.
+     */
+    public void appendXMLText(String _text)
+    throws IOException
+    {
+        for (int i = 0; i < _text.length(); i++) {
+            char c = _text.charAt(i);
+            switch (c) {
+                case '&'  : append("&amp;");  break;
+                case '<'  : append("&lt;");   break;
+                case '>'  : append("&gt;");   break;
+                case '"'  : append("&quot;"); break;
+                default   : append(c);
+            }
+        }
+    }
+
+    public void append(char _c)
+    throws IOException
+    {
+        if ( this.position == this.buffer.length ) {
+            flushBuffer();
+        }
+        this.buffer[this.position++] = _c;
+    }
+
+    public void append(String _s)
+    throws IOException
+    {
+        int length = _s.length();
+        if ( length > this.buffer.length - this.position ) {
+            flushBuffer();
+            if ( length > this.buffer.length ) {
+                this.out.write(_s);
+                return;
+            }
+        }
+        _s.getChars(0,length,this.buffer,this.position);
+        this.position += length;
+    }
+
+    public void append(char[] _chars, int _offset, int _length)
+    throws IOException
+    {
+        if ( _length > this.buffer.length - this.position ) {
+            flushBuffer();
+            if ( _length > this.buffer.length ) {
+                this.out.write(_chars,_offset,_length);
+                return;
+            }
+        }
+        System.arraycopy(_chars,_offset,this.buffer,this.position,_length);
+        this.position += _length;
+    }
+
+    private void flushBuffer()
+    throws IOException
+    {
+        if ( this.position > 0 ) {
+            this.out.write(this.buffer,0,this.position);
+            this.position = 0;
+        }
+    }
+
+    /**
+     * Writes buffered text to, and flushes, the underlying Writer.
+     */
+    public void flush()
+    throws IOException
+    {
+        flushBuffer();
+        this.out.flush();
+    }
+
+    /**
+     * Flushes and closes the underlying Writer.
+     */
+    public void close()
+    throws IOException
+    {
+        flush();
+        this.out.close();
+    }
+}
@@ -3,11 +3,13 @@ package com.spdba.dbutils.io.exp;
 import com.spdba.dbutils.Constants;
 import com.spdba.dbutils.io.GeometryProperties;
 import com.spdba.dbutils.io.exp.gml.GMLExporter;
+import com.spdba.dbutils.io.exp.kml.KMLExporter;
 import com.spdba.dbutils.io.exp.shp.SHPExporter;
 import com.spdba.dbutils.io.exp.tab.TABExporter;
 import com.spdba.dbutils.io.exp.xbase.DBaseWriter;
 import com.spdba.dbutils.spatial.SDO;
 import com.spdba.dbutils.sql.DBConnection;
+import com.spdba.dbutils.sql.FetchSizer;
 import com.spdba.dbutils.sql.OraRowSetMetaDataImpl;
 import com.spdba.dbutils.sql.SQLConversionTools;
 import com.spdba.dbutils.tools.Strings;
@@ -47,6 +49,11 @@ public class ExportTask {
     private String                             geoColumnName = "GEOM";
     private int                                totalRowCount = 0;
     private IExporter                            geoExporter = null;
+    private FetchSizer                            fetchSizer = new FetchSizer();
+
+    // Set up by prepareColumns() once the exporter has started
+    private boolean                          processGeometry = false;
+    private boolean[]                       supportedColumns = null;
     
     public ExportTask(IExporter _exporter) 
     throws Exception 
@@ -72,12 +79,11 @@ public class ExportTask {
             if ( this.conn == null && geoExporter.getConnection()==null ) {
                 this.conn = DBConnection.getConnection();
             }
-            this.resultSet.setFetchDirection(OracleResultSet.FETCH_FORWARD);
-            this.resultSet.setFetchSize(getFetchSize());
             this.meta           = (OracleResultSetMetaData)this.resultSet.getMetaData();           
             this.geoColumnIndex = geoExporter.getGeoColumnIndex();
             this.geoColumnName  = geoExporter.getGeoColumnName();
             this.resultMeta     = SQLConversionTools.getExportMetadata(this.meta);
+            this.fetchSizer.start(this.resultSet,this.resultMeta);
             geoExporter.setExportMetadata(this.resultMeta);
 
             // Extract geometry metadata from first SDO_GEOMETRY structure in resultSet
@@ -92,85 +98,13 @@ public class ExportTask {
                 throw new Exception("Spatial Column " + geoExporter.getGeoColumnName() + " is not of type SDO_GEOMETRY (" + this.meta.getColumnTypeName(geoExporter.getGeoColumnIndex()) + ")");
             }
             geoExporter.setGeometryProperties(SDO.getGeometryProperties(geoStruct));
-            OraRowSetMetaDataImpl rsMD = new OraRowSetMetaDataImpl();
-            
             geoExporter.start(DBConnection.getCharacterSet(conn));
+            prepareColumns();
             do 
             {
-                geoExporter.startRow();  // writes recordIdentifier if needed
-                this.totalRowCount += 1;
-                
-                // Process geometry first to see if we can skip the whole row.
-                //
-                if (this.geoColumnIndex > 0 
-                    &&
-                    //geoExporter instanceof XSVExporter ||
-                    //geoExporter instanceof DBFExporter ||
-                    geoExporter instanceof GMLExporter ||
-                    geoExporter instanceof SHPExporter ||
-                    geoExporter instanceof TABExporter ) 
-                {
-                    try 
-                    {
-                        geoStruct = (oracle.sql.STRUCT)this.resultSet.getOracleObject(geoExporter.getGeoColumnName());
-                        if ( this.resultSet.wasNull() || geoStruct == null ) {
-                            if ( geoExporter.skipNullGeometry() ) {
-                                continue;
-                            } 
-                        }
-                        // Now write object to SHP File
-                        // Data Type already validated.
-                        //
-                        rsMD = (OraRowSetMetaDataImpl)this.resultMeta.get(geoExporter.getGeoColumnIndex());
-                        rsMD.setCatalogName(1,geoExporter.getGeoColumnName());
-                        geoExporter.printColumn(geoStruct,rsMD);
-                        geoExporter.updateExtent(SDO.getGeoMBR(geoStruct));
-                    }
-                    catch (SQLException sqle) {
-                        LOGGER.warning(sqle.getLocalizedMessage());
-                        continue;
-                    }
-                } 
-
-                // If no attributes, recordIdentifier should be written
-                if ( geoExporter.generateIdentifier() ) {
-                    geoExporter.printColumn(
-                         /* String _object         */ String.valueOf(this.totalRowCount),
-                         /* String _columnName     */ geoExporter.getRecordIdentifier(),
-                         /* String _columnTypeName */ ""
-                    );
-                } 
-                
-                // Now iterate over columns and export values
-                //
-                Object oracleObject = null;
-                for (int col = 1; col <= this.meta.getColumnCount(); col++) 
-                {
-                    try 
-                    {
-                        rsMD = (OraRowSetMetaDataImpl)this.resultMeta.get(col);
-                        if (rsMD.getColumnName(1).equalsIgnoreCase(geoExporter.getGeoColumnName()) )  {
-                            // Already processed
-                            continue;
-                        }
-                        
-                        if ( geoExporter.isSupportedType(rsMD.getColumnType(1),
-                                                         rsMD.getColumnTypeName(1)) ) 
-                        {
-                            oracleObject = this.resultSet.getObject(col);
-                            geoExporter.printColumn(oracleObject,rsMD);
-                        } else {
-                            if ( geoExporter.getRowCount() == 0 ) {
-                                LOGGER.severe("ExporterWriter.run(): Column " + rsMD.getColumnName(1) + " of type " + rsMD.getColumnTypeName(1) + " is not supported");
-                            }
-                        }
-                    } catch (SQLException e) {
-                      LOGGER.severe("ExporterWriter.run(): Error converting column/type " + rsMD.getColumnName(1) + "/" + rsMD.getColumnType(1));                      
-                    }
-                }
-                // Write everything
-                geoExporter.endRow();
+                exportRow();
             } while (this.resultSet.next());
+            LOGGER.info("ExportTask: Exported " + this.totalRowCount + " rows, " + this.fetchSizer.toString());
             
         } catch (IOException ioe) {
             ioe.printStackTrace();
@@ -209,8 +143,133 @@ public class ExportTask {
         this.totalRowCount = _rowCount;
     }
 
-    private int getFetchSize() {
-        return 100;
+    /**
+     * Sets a fixed JDBC fetch size.
+     * By default (0) the fetch size is chosen and adjusted by a FetchSizer.
+     * @param _fetchSize : int : Rows per fetch, or 0 to size fetches from the memory budget
+     */
+    public void setFetchSize(int _fetchSize) {
+        this.fetchSizer.setFixedFetchSize(_fetchSize);
+    }
+
+    /**
+     * @return int : Current fetch size (that chosen by the FetchSizer once export has started)
+     */
+    public int getFetchSize() {
+        return this.fetchSizer.getFixedFetchSize() > 0 
+               ? this.fetchSizer.getFixedFetchSize() 
+               : this.fetchSizer.getFetchSize();
+    }
+
+    /**
+     * @return FetchSizer : Fetch sizes chosen for the export
+     */
+    public FetchSizer getFetchSizer() {
+        return this.fetchSizer;
+    }
+
+    /**
+     * Works out, once, whether the exporter writes the geometry column
+     * and which attribute columns it supports.
+     */
+    private void prepareColumns() 
+    throws SQLException 
+    {
+        this.processGeometry = this.geoColumnIndex > 0 
+                               &&
+                               //geoExporter instanceof XSVExporter ||
+                               //geoExporter instanceof DBFExporter ||
+                              (geoExporter instanceof GMLExporter ||
+                               geoExporter instanceof KMLExporter ||
+                               geoExporter instanceof SHPExporter ||
+                               geoExporter instanceof TABExporter );
+        OraRowSetMetaDataImpl rsMD = null;
+        this.supportedColumns = new boolean[this.meta.getColumnCount() + 1];
+        for (int col = 1; col <= this.meta.getColumnCount(); col++) 
+        {
+            rsMD = (OraRowSetMetaDataImpl)this.resultMeta.get(col);
+            if (rsMD.getColumnName(1).equalsIgnoreCase(geoExporter.getGeoColumnName()) )  {
+                // Processed separately
+                continue;
+            }
+            this.supportedColumns[col] = geoExporter.isSupportedType(rsMD.getColumnType(1),
+                                                                     rsMD.getColumnTypeName(1));
+            if ( ! this.supportedColumns[col] ) {
+                LOGGER.severe("ExporterWriter.run(): Column " + rsMD.getColumnName(1) + " of type " + rsMD.getColumnTypeName(1) + " is not supported");
+            }
+        }
+    }
+
+    /**
+     * Writes the ResultSet's current row through the exporter.
+     */
+    private void exportRow() 
+    throws IOException, SQLException 
+    {
+        geoExporter.startRow();  // writes recordIdentifier if needed
+        this.totalRowCount += 1;
+        
+        // Process geometry first to see if we can skip the whole row.
+        //
+        OraRowSetMetaDataImpl rsMD = null;
+        STRUCT geoStruct = null;
+        if (this.processGeometry) 
+        {
+            geoStruct = (oracle.sql.STRUCT)this.resultSet.getOracleObject(geoExporter.getGeoColumnName());
+            if ( this.resultSet.wasNull() ) {
+                geoStruct = null;
+            }
+        }
+        this.fetchSizer.rowFetched(this.resultSet,geoStruct);
+        if (this.processGeometry) 
+        {
+            try 
+            {
+                if ( geoStruct == null ) {
+                    if ( geoExporter.skipNullGeometry() ) {
+                        return;
+                    } 
+                }
+                // Now write object to SHP File
+                // Data Type already validated.
+                //
+                rsMD = (OraRowSetMetaDataImpl)this.resultMeta.get(geoExporter.getGeoColumnIndex());
+                rsMD.setCatalogName(1,geoExporter.getGeoColumnName());
+                geoExporter.printColumn(geoStruct,rsMD);
+                geoExporter.updateExtent(SDO.getGeoMBR(geoStruct));
+            }
+            catch (SQLException sqle) {
+                LOGGER.warning(sqle.getLocalizedMessage());
+                return;
+            }
+        } 
+
+        // If no attributes, recordIdentifier should be written
+        if ( geoExporter.generateIdentifier() ) {
+            geoExporter.printColumn(
+                 /* String _object         */ String.valueOf(this.totalRowCount),
+                 /* String _columnName     */ geoExporter.getRecordIdentifier(),
+                 /* String _columnTypeName */ ""
+            );
+        } 
+        
+        // Now iterate over columns and export values
+        //
+        for (int col = 1; col < this.supportedColumns.length; col++) 
+        {
+            if ( ! this.supportedColumns[col] ) {
+                continue;
+            }
+            try 
+            {
+                rsMD = (OraRowSetMetaDataImpl)this.resultMeta.get(col);
+                geoExporter.printColumn(this.resultSet.getObject(col),rsMD);
+            } catch (SQLException e) {
+              LOGGER.severe("ExporterWriter.run(): Error converting column/type " + rsMD.getColumnName(1) + "/" + rsMD.getColumnType(1));                      
+            }
+        }
+        // Write everything
+        geoExporter.endRow();
     }
             
     protected void done() {
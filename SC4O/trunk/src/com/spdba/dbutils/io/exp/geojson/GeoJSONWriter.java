@@ -1,704 +1,391 @@
 package com.spdba.dbutils.io.exp.geojson;
 
-import com.spdba.dbutils.tools.Strings;
+import com.spdba.dbutils.io.exp.BufferedTextWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.PrecisionModel;
+
+/**
+ * Streaming GeoJSON encoder.
+ * <p>
+ * Writes a FeatureCollection (or, when there are no attributes, a GeometryCollection)
+ * one member at a time straight to a Writer, through a BufferedTextWriter, so
+ * a document of any size is never held in memory. Geometries are written on a single
+ * line from their CoordinateSequences.
+ * <p>
+ * All state is per instance: use one GeoJSONWriter per document.
+ */
+public class GeoJSONWriter
+extends BufferedTextWriter
+{
+
+    /** Z ordinate value for positions written without a Z */
+    public static final int         NO_Z = -1;
+
+    private static final int      INDENT = 2;
+    private static final int  MAX_INDENT = 16;
+    private static final char[]   SPACES = new char[INDENT * MAX_INDENT];
+    static {
+        java.util.Arrays.fill(SPACES,' ');
+    }
+
+    private final char[]  newLine;
+
+    private int        indentLevel = 0;
+    private int            members = 0;   // members written to the document's collection
+    private int         properties = 0;   // properties written to the current feature
+    private int          zOrdinate = CoordinateSequence.Z;
 
-import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.*;
-import org.locationtech.jts.util.*;
-import java.io.*;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-
-public class GeoJSONWriter {
-
-    private static int INDENT = 2;
-
-    private static int CURRENT = 0;
-    
-    private static DecimalFormat formatter;
-
-    private static String  newLine = System.getProperty("line.separator");
-
-    public GeoJSONWriter() {
-        super();
-    }
-
-    /** =============== Public methods ================= **/
-    
-    public static void startDocument(StringBuffer _buffer) {
-        _buffer.append("{" + newLine);
-        CURRENT = 0;
-    }
-
-    public static void endDocument(StringBuffer _buffer) {
-        CURRENT = 0;
-        _buffer.append(newLine + "}");
-    }
-    
-    public static void appendFeatureCollectionBeginText(Geometry     _bbox,
-                                                        Object       _idValue,
-                                                        StringBuffer _buffer)
-    throws IOException 
-    {
-        CURRENT = 2;
-        indent(CURRENT,_buffer,"{",                                true );
-        CURRENT++;
-        indent(CURRENT,_buffer,"\"type\": \"FeatureCollection\",", true );
-        if ( _idValue != null ) {
-            if ( _idValue instanceof String ) {
-                indent(CURRENT,_buffer,"\"id\": \"" + ((String)_idValue) + "\",", true );
-            } else {
-                indent(CURRENT,_buffer,"\"id\": " + ((String)_idValue) + ",", true );
-            }
-        }
-        if ( _bbox != null ) {
-            writeBBox(_bbox,CURRENT,_buffer);
-        }
-        indent(CURRENT,_buffer,"\"features\": [",false);
-        CURRENT++;
-    }
-    
-    public static void appendFeatureCollectionEndText(StringBuffer _buffer) 
-    throws IOException 
-    {
-        CURRENT--;
-        indent(0,_buffer,"],",true);
-    }
-
-    public static void appendFeatureBeginText(Geometry     _bbox,
-                                              Object       _idValue,
-                                              StringBuffer _buffer)
-    throws IOException 
+    /**
+     * @param _out            : Writer : Destination (eg OutputStreamWriter with UTF-8 encoding); need not be buffered
+     * @param _precisionModel : PrecisionModel : Sets decimal places of ordinates
+     */
+    public GeoJSONWriter(Writer         _out,
+                         PrecisionModel _precisionModel)
     {
-        CURRENT = 2;
-        indent(CURRENT,_buffer,"{",                      true );
-        CURRENT++;
-        indent(CURRENT,_buffer,"\"type\": \"Feature\",", true );
-        if ( _idValue != null ) {
-            if ( _idValue instanceof String ) {
-                indent(CURRENT,_buffer,"\"id\": \"" + _idValue + "\",", true );
-            } else {
-                indent(CURRENT,_buffer,"\"id\": " + _idValue + ",", true );
-            }
-        }
-        // Create BBOX at feature level?
-        if ( _bbox != null ) {
-            writeBBox(_bbox,CURRENT,_buffer);
-        }
-        indent(CURRENT,_buffer,"\"geometry\": ",false);
+        this(_out,_precisionModel,DEFAULT_BUFFER_SIZE);
     }
 
-    public static void appendFeatureEndText(boolean      _attributes,
-                                            StringBuffer _buffer) 
-    throws IOException 
+    public GeoJSONWriter(Writer         _out,
+                         PrecisionModel _precisionModel,
+                         int            _bufferSize)
     {
-        setCURRENT(CURRENT-1);
-        indent(_buffer,"}" + (_attributes?",":newLine), false);
+        super(_out,_precisionModel,_bufferSize);
+        this.newLine = System.getProperty("line.separator","\n").toCharArray();
     }
 
     /**
-     * Converts a <code>Geometry</code> to its GeoJSON representation.
-     * 
-     * @param geometry
-     *        a <code>Geometry</code> to process
+     * Sets the ordinate of each coordinate written as the Z of a position.
+     * GeoJSON positions have no measure: for a measured geometry the measure is
+     * never written, so use NO_Z for XYM (eg 3302) and 3 for XYMZ (4302) geometries.
+     * @param _zOrdinate : int : Ordinate index (CoordinateSequence.Z by default), or NO_Z
      */
-    public static void write(Geometry     _geometry, 
-                             String       _featureType,
-                             boolean      _bbox,
-                             StringBuffer _buffer) 
-    throws IOException 
-    {
-        if (formatter == null) {
-            formatter = createFormatter(_geometry.getPrecisionModel());
-        }
-        CURRENT++;
-        appendGeometryTaggedText(_geometry, CURRENT, _featureType, _bbox, _buffer);
+    public void setZOrdinate(int _zOrdinate) {
+        this.zOrdinate = _zOrdinate;
     }
 
-    /** ========================================================================= **/
-    /** =========================== Private methods ============================= **/
-    /** ========================================================================= **/
-    
+    /** =============== Document structure ================= **/
+
     /**
-     * Creates the <code>DecimalFormat</code> used to write
-     * <code>double</code> s with a sufficient number of decimal places.
-     * 
-     * @param precisionModel
-     *        the <code>PrecisionModel</code> used to determine the number
-     *        of decimal places to write.
-     * @return a <code>DecimalFormat</code> that write <code>double</code> s
-     *         without scientific notation.
+     * Starts the document as a FeatureCollection (_features true) or GeometryCollection.
      */
-    private static DecimalFormat createFormatter(PrecisionModel precisionModel) 
+    public void startDocument(boolean _features)
+    throws IOException
+    {
+        this.members     = 0;
+        this.indentLevel = 0;
+        append('{');
+        this.indentLevel++;
+        newLine();
+        append(_features ? "\"type\": \"FeatureCollection\"," : "\"type\": \"GeometryCollection\",");
+        newLine();
+        append(_features ? "\"features\": [" : "\"geometries\": [");
+        this.indentLevel++;
+    }
+
+    public void endDocument()
+    throws IOException
     {
-        // the default number of decimal places is 16, which is sufficient
-        // to accomodate the maximum precision of a double.
-        int decimalPlaces = precisionModel.getMaximumSignificantDigits();
-        // specify decimal separator explicitly to avoid problems in other
-        // locales
-        DecimalFormatSymbols symbols = new DecimalFormatSymbols();
-        symbols.setDecimalSeparator('.');
-        return new DecimalFormat("#" + 
-                                 (decimalPlaces > 0 ? "." : "") + Strings.stringOfChar('#', decimalPlaces), 
-                                 symbols);
+        this.indentLevel--;
+        newLine();
+        append(']');
+        this.indentLevel--;
+        newLine();
+        append('}');
+        newLine();
+        flush();
     }
 
     /**
-     * @param level
-     * @param _buffer
-     * @throws IOException
+     * Starts a Feature member of the document. Follow with writeGeometry, then
+     * optionally startProperties/writeProperty/endProperties, then endFeature.
+     * @param _id   : Object   : Feature id (Numbers are written unquoted) or null
+     * @param _bbox : Envelope : Feature bbox or null
      */
-    private static void indent(int          _level, 
-                               StringBuffer _buffer) 
-    throws IOException 
+    public void startFeature(Object   _id,
+                             Envelope _bbox)
+    throws IOException
     {
-        _buffer.append(Strings.stringOfChar(' ', INDENT * _level));
+        startMember();
+        append('{');
+        this.indentLevel++;
+        newLine();
+        append("\"type\": \"Feature\",");
+        if ( _id != null ) {
+            newLine();
+            append("\"id\": ");
+            if ( _id instanceof Number ) {
+                append(_id.toString());
+            } else {
+                appendString(_id.toString());
+            }
+            append(',');
+        }
+        if ( _bbox != null && ! _bbox.isNull() ) {
+            newLine();
+            appendBBox(_bbox);
+            append(',');
+        }
+        newLine();
+        append("\"geometry\": ");
     }
 
-    public  static void indent(int          _level, 
-                               StringBuffer _buffer,
-                               String       _value,
-                               boolean      _newLine) 
-    throws IOException 
+    public void endFeature()
+    throws IOException
     {
-        _buffer.append(Strings.stringOfChar(' ', INDENT * (_level-1)) + 
-                      _value + 
-                      (_newLine?newLine:""));
+        this.indentLevel--;
+        newLine();
+        append('}');
     }
 
-    public  static void indent(StringBuffer _buffer,
-                               String       _value,
-                               boolean      _newLine) 
-    throws IOException 
+    public void startProperties()
+    throws IOException
     {
-        _buffer.append(Strings.stringOfChar(' ', INDENT * (CURRENT-1)) + 
-                       _value + 
-                       (_newLine?newLine:""));
+        this.properties = 0;
+        append(',');
+        newLine();
+        append("\"properties\": {");
+        this.indentLevel++;
     }
 
     /**
-     * Converts a <code>double</code> to a <code>String</code>, not in
-     * scientific notation.
-     * 
-     * @param d
-     *        the <code>double</code> to convert
-     * @return the <code>double</code> as a <code>String</code>, not in
-     *         scientific notation
+     * @param _name     : String  : Property name
+     * @param _value    : String  : Value as text, or null for a JSON null
+     * @param _isString : boolean : Quote (and escape) value
      */
-    private static String writeNumber(double d) {
-        return formatter!=null ? formatter.format(d) : String.valueOf(d);
-    }
-
-    private static void writeBBox(Geometry     _geometry,
-                                  int          _level,
-                                  StringBuffer _buffer) 
-    throws IOException 
+    public void writeProperty(String  _name,
+                              String  _value,
+                              boolean _isString)
+    throws IOException
     {
-        Geometry envelope = _geometry.getEnvelope();
-        // Returns:
-        // empty, returns an empty Point.
-        // a point, returns a Point.
-        // a line parallel to an axis, a two-vertex LineString
-        // otherwise, returns a Polygon whose vertices are (minx miny, maxx miny, maxx maxy, minx maxy, minx miny).
-        if ( envelope instanceof Polygon) {
-            Coordinate[] coords = ((Polygon)envelope).getCoordinates();
-            String envelopeString = "\"bbox\": [" + 
-                         writeNumber(coords[0].x) +
-                         ", " +
-                         writeNumber(coords[0].y) +
-                         ", " +
-                         (Double.isNaN(coords[0].z) ? "" : ", " + writeNumber(coords[0].z))
-                         +
-                         writeNumber(coords[2].x) +
-                         ", " +
-                         writeNumber(coords[2].y) +
-                         (Double.isNaN(coords[2].z) ? "" : ", " + writeNumber(coords[2].z)) + "],";
-            indent(_level,
-                   _buffer,
-                   envelopeString,
-                   true);
+        if ( this.properties++ > 0 ) {
+            append(',');
         }
-    }
-
-    /**
-     * Converts a <code>Geometry</code> to &lt;Geometry Tagged Text&gt;
-     * format, then appends it to the _buffer.
-     * 
-     * @param geometry
-     *            the <code>Geometry</code> to process
-     * @param _buffer
-     *            the output _buffer to append to
-     */
-    private static void appendGeometryTaggedText(Geometry     _geometry, 
-                                                 int          _level,
-                                                 String       _featureOption,
-                                                 boolean      _bbox,
-                                                 StringBuffer _buffer) 
-    throws IOException 
-    {
-        boolean isFeature = _featureOption.toUpperCase().startsWith(WriteGeoJSONFile.featureOption);
-        _buffer.append("{" + newLine);
-        setCURRENT(_level);
-        if (_geometry instanceof Point) {
-            Point point = (Point) _geometry;
-            indent(_buffer,"\"type\": \"Point\",", true );
-            indent(_buffer,"\"coordinates\": ",    false);
-            _buffer.append(getCoordinate(point.getCoordinate()) + newLine);
-        } else if (_geometry instanceof LinearRing) {
-            indent(_buffer,"\"type\": \"LineString\",", true );
-            if ( isFeature==false && _bbox ) { writeBBox(_geometry, CURRENT, _buffer); }
-            indent(_buffer,"\"coordinates\": [", true);
-            appendLinearRingTaggedText((LinearRing) _geometry, CURRENT+1, _buffer);
-            indent(_buffer,"]",true);
-        } else if (_geometry instanceof LineString) {
-            indent(_buffer,"\"type\": \"LineString\",", true );
-            if ( isFeature==false && _bbox ) { writeBBox(_geometry,CURRENT,_buffer); }
-            indent(_buffer,"\"coordinates\": [", true);
-            appendLineStringTaggedText((LineString) _geometry, CURRENT+1, _buffer);
-            indent(_buffer,"]",true);
-        } else if (_geometry instanceof Polygon) {
-            indent(_buffer,"\"type\": \"Polygon\",", true );
-            if ( isFeature==false && _bbox ) { writeBBox(_geometry, CURRENT, _buffer); }
-            indent(_buffer,"\"coordinates\": [", true);
-            appendPolygonTaggedText((Polygon) _geometry, CURRENT+2, _buffer);
-            indent(_buffer,"]",true);
-        } else if (_geometry instanceof MultiPoint) {
-            indent(_buffer,"\"type\": \"MultiPoint\",", true );
-            if ( isFeature==false && _bbox ) { writeBBox(_geometry, CURRENT,_buffer); }
-            indent(_buffer,"\"coordinates\": [", true);
-            appendMultiPointTaggedText((MultiPoint) _geometry, CURRENT+1, _buffer);
-            indent(_buffer,"]",true);
-        } else if (_geometry instanceof MultiLineString) {
-            indent(_buffer,"\"type\": \"MultiLineString\",", true );
-            if ( isFeature==false && _bbox ) { writeBBox(_geometry, CURRENT,_buffer); }
-            indent(_buffer,"\"coordinates\": [", true);
-            appendMultiLineStringTaggedText((MultiLineString) _geometry, CURRENT+1, _buffer);
-            indent(_buffer,"]",true);
-        } else if (_geometry instanceof MultiPolygon) {
-            indent(_buffer,"\"type\": \"MultiPolygon\",", true );
-            if ( isFeature==false && _bbox ) { writeBBox(_geometry ,CURRENT, _buffer); }
-            indent(_buffer,"\"coordinates\": [", true);
-            appendMultiPolygonTaggedText((MultiPolygon) _geometry, CURRENT+1, _buffer);
-            indent(_buffer,"]",true);
-        } else if (_geometry instanceof GeometryCollection) {
-            indent(_buffer,"\"type\": \"GeometryCollection\",", true );
-            if ( isFeature==false && _bbox ) { writeBBox(_geometry, CURRENT, _buffer); }
-            indent(CURRENT+1, _buffer,"\"geometries\": [", true);
-            appendGeometryCollectionTaggedText((GeometryCollection) _geometry, CURRENT+1, _featureOption, _bbox, _buffer);
-            indent(_buffer,"]",true);
+        newLine();
+        appendString(_name);
+        append(": ");
+        if ( _value == null ) {
+            append("null");
+        } else if ( _isString ) {
+            appendString(_value);
         } else {
-            Assert.shouldNeverReachHere("Unsupported Geometry implementation:" + _geometry.getClass());
+            append(_value);
         }
-        if ( _featureOption.toUpperCase().startsWith(WriteGeoJSONFile.featureOption) ) {
-          setCURRENT(CURRENT-1);
-          indent(_buffer,"}", false);
-        }
-    }
-
-    /**
-     * Converts a <code>Coordinate</code> to &lt;Point Tagged Text&gt; format,
-     * then appends it to the _buffer.
-     * 
-     * @param coordinate
-     *        the <code>Coordinate</code> to process
-     * @param _buffer
-     *        the output _buffer to append to
-     * @param precisionModel
-     *        the <code>PrecisionModel</code> to use to convert from a
-     *        precise coordinate to an external coordinate
-     */
-    private static void appendPointTaggedText(Coordinate   _coordinate, 
-                                              int          _level,
-                                              StringBuffer _buffer) 
-    throws IOException {
-        appendPointText(_coordinate, _level, _buffer);
-    }
-
-    /**
-     * Converts a <code>LineString</code> to &lt;LineString Tagged Text&gt;
-     * format, then appends it to the _buffer.
-     * 
-     * @param lineString
-     *        the <code>LineString</code> to process
-     * @param _buffer
-     *        the output _buffer to append to
-     */
-    private static void appendLineStringTaggedText(LineString   _lineString, 
-                                                   int          _level,
-                                                   StringBuffer _buffer) 
-    throws IOException {
-        appendLineStringText(_lineString, _level, true, _buffer);
-    }
-
-    /**
-     * Converts a <code>LinearRing</code> to &lt;LinearRing Tagged Text&gt;
-     * format, then appends it to the _buffer.
-     * 
-     * @param linearRing
-     *        the <code>LinearRing</code> to process
-     * @param _buffer
-     *        the output _buffer to append to
-     */
-    private static void appendLinearRingTaggedText(LinearRing   _linearRing, 
-                                                   int          _level,
-                                                   StringBuffer _buffer) 
-    throws IOException {
-        appendLineStringText(_linearRing, _level, true, _buffer);
-    }
-
-    /**
-     * Converts a <code>Polygon</code> to &lt;Polygon Tagged Text&gt; format,
-     * then appends it to the _buffer.
-     * 
-     * @param polygon
-     *        the <code>Polygon</code> to process
-     * @param _buffer
-     *        the output _buffer to append to
-     */
-    private static void appendPolygonTaggedText(Polygon      _polygon, 
-                                                int          _level,
-                                                StringBuffer _buffer) 
-    throws IOException {
-        appendPolygonText(_polygon, _level, false, _buffer);
     }
 
-    /**
-     * Converts a <code>MultiPoint</code> to &lt;MultiPoint Tagged Text&gt;
-     * format, then appends it to the _buffer.
-     * 
-     * @param multipoint
-     *        the <code>MultiPoint</code> to process
-     * @param _buffer
-     *        the output _buffer to append to
-     */
-    private static void appendMultiPointTaggedText(MultiPoint   _multiPoint, 
-                                                   int          _level,
-                                                   StringBuffer _buffer) 
-    throws IOException {
-        appendMultiPointText(_multiPoint, _level, _buffer);
-    }
-
-    /**
-     * Converts a <code>MultiLineString</code> to &lt;MultiLineString Tagged
-     * Text&gt; format, then appends it to the _buffer.
-     * 
-     * @param multiLineString
-     *        the <code>MultiLineString</code> to process
-     * @param _buffer
-     *        the output _buffer to append to
-     */
-    private static void appendMultiLineStringTaggedText(MultiLineString _multiLineString, 
-                                                        int             _level, 
-                                                        StringBuffer    _buffer)
-    throws IOException {
-        appendMultiLineStringText(_multiLineString, _level, false, _buffer);
-    }
-
-    /**
-     * Converts a <code>MultiPolygon</code> to &lt;MultiPolygon Tagged
-     * Text&gt; format, then appends it to the _buffer.
-     * 
-     * @param multiPolygon
-     *        the <code>MultiPolygon</code> to process
-     * @param _buffer
-     *        the output _buffer to append to
-     */
-    private static void appendMultiPolygonTaggedText(MultiPolygon _multiPolygon,
-                                                     int          _level,
-                                                     StringBuffer _buffer) 
-    throws IOException {
-        appendMultiPolygonText(_multiPolygon, _level, _buffer);
+    public void endProperties()
+    throws IOException
+    {
+        this.indentLevel--;
+        if ( this.properties > 0 ) {
+            newLine();
+        }
+        append('}');
     }
 
     /**
-     * Converts a <code>GeometryCollection</code> to &lt;GeometryCollection
-     * Tagged Text&gt; format, then appends it to the _buffer.
-     * 
-     * @param geometryCollection
-     *        the <code>GeometryCollection</code> to process
-     * @param _buffer
-     *        the output _buffer to append to
+     * Writes a geometry as a member of a GeometryCollection document.
      */
-    private static void appendGeometryCollectionTaggedText(GeometryCollection _geometryCollection, 
-                                                           int                _level, 
-                                                           String             _featureOption,
-                                                           boolean            _bbox,
-                                                           StringBuffer       _buffer)
-    throws IOException {
-        appendGeometryCollectionText(_geometryCollection, _level, _featureOption, _bbox, _buffer);
-    }
-
-    private static String getCoordinate(Coordinate _coordinate) 
+    public void writeMember(Geometry _geometry,
+                            boolean  _bbox)
+    throws IOException
     {
-        return "[" 
-               + writeNumber(_coordinate.x)
-               + ", "
-               + writeNumber(_coordinate.y)
-               + (Double.isNaN(_coordinate.z) 
-               ? "" 
-               : ", " + writeNumber(_coordinate.z))
-               + "]";
+        if ( _geometry == null ) {
+            return;
+        }
+        startMember();
+        writeGeometry(_geometry,_bbox);
     }
 
-    /**
-     * Converts a <code>Coordinate</code> to &lt;Point Text&gt; format, then
-     * appends it to the _buffer.
-     * The value of the geometry member SHALL be either a Geometry object or, 
-     * in the case that the Feature is unlocated, a JSON null value.
-     * @param coordinate
-     *        the <code>Coordinate</code> to process
-     * @param _buffer
-     *        the output _buffer to append to
-     * @param precisionModel
-     *        the <code>PrecisionModel</code> to use to convert from a
-     *        precise coordinate to an external coordinate
-     */
-    private static void appendPointText(Coordinate   _coordinate, 
-                                        int          _level,
-                                        StringBuffer _buffer) 
-    throws IOException {
-        indent(_level, _buffer);
-        if (_coordinate == null) {
-            _buffer.append("null");
-        } else {
-            appendCoordinate(_coordinate, _buffer);
-            _buffer.append(newLine);
+    private void startMember()
+    throws IOException
+    {
+        if ( this.members++ > 0 ) {
+            append(',');
         }
+        newLine();
     }
 
-    /**
-     * Converts a <code>Coordinate</code> to &lt;Point&gt; format, then
-     * appends it to the _buffer.
-     * 
-     * @param coordinate
-     *        the <code>Coordinate</code> to process
-     * @param _buffer
-     *        the output _buffer to append to
-     */
-    private static void appendCoordinate(Coordinate   _coordinate, 
-                                         StringBuffer _buffer) 
-    throws IOException {
-        indent(CURRENT,_buffer,getCoordinate(_coordinate),false);
-    }
+    /** =============== Geometry ================= **/
 
     /**
-     * Converts a <code>LineString</code> to &lt;LineString Text&gt; format,
-     * then appends it to the _buffer.
-     * The value of the geometry member SHALL be either a Geometry object or, 
-     * in the case that the Feature is unlocated, a JSON null value.
-     * 
-     * @param lineString
-     *        the <code>LineString</code> to process
-     * @param _buffer
-     *        the output _buffer to append to
+     * Writes a GeoJSON geometry object (or null) on one line.
+     * @param _geometry : Geometry : Geometry to write
+     * @param _bbox     : boolean  : Add bbox member to the geometry
      */
-    private static void appendLineStringText(LineString   _lineString, 
-                                             int          _level,
-                                             boolean      _doIndent, 
-                                             StringBuffer _buffer) 
-    throws IOException 
+    public void writeGeometry(Geometry _geometry,
+                              boolean  _bbox)
+    throws IOException
     {
-        if (_doIndent) {
-            indent(_level, _buffer);
+        if ( _geometry == null ) {
+            append("null");
+            return;
         }
-        if (_lineString.isEmpty()) {
-            _buffer.append("null");
-        } else {
-            for (int i = 0; i < _lineString.getNumPoints(); i++) {
-                if (i > 0) {
-                    _buffer.append(", ");
-                    if (i % 10 == 0)
-                    {
-                        _buffer.append(newLine);
-                        // Only indent after newLine and not last point
-                        if ( i+1 != _lineString.getNumPoints() ) {
-                            indent(_level, _buffer);
-                        }
-                    }
+        append("{\"type\": \"");
+        append(typeName(_geometry));
+        append("\", ");
+        if ( _bbox && ! _geometry.isEmpty() ) {
+            appendBBox(_geometry.getEnvelopeInternal());
+            append(", ");
+        }
+        if ( _geometry instanceof GeometryCollection
+             && !(_geometry instanceof MultiPoint || _geometry instanceof MultiLineString || _geometry instanceof MultiPolygon) )
+        {
+            append("\"geometries\": [");
+            for (int i = 0; i < _geometry.getNumGeometries(); i++) {
+                if ( i > 0 ) {
+                    append(", ");
                 }
-                _buffer.append(getCoordinate(_lineString.getCoordinateN(i)));
+                writeGeometry(_geometry.getGeometryN(i),false);
             }
+            append("]}");
+            return;
         }
-        _buffer.append(newLine);
+        append("\"coordinates\": ");
+        appendCoordinates(_geometry);
+        append('}');
     }
 
-    /**
-     * Converts a <code>Polygon</code> to &lt;Polygon Text&gt; format, then
-     * appends it to the _buffer.
-     * The value of the geometry member SHALL be either a Geometry object or, 
-     * in the case that the Feature is unlocated, a JSON null value.
-     * @param polygon
-     *        the <code>Polygon</code> to process
-     * @param _buffer
-     *        the output _buffer to append to
-     */
-    private static void appendPolygonText(Polygon      _polygon, 
-                                          int          _level,
-                                          boolean      _indentFirst, 
-                                          StringBuffer _buffer) 
-    throws IOException {
-        if (_polygon.isEmpty()) {
-            _buffer.append("null");
-        } else {
-            if (_indentFirst) {
-                indent(_level, _buffer);
-            }
-            appendLineStringText(_polygon.getExteriorRing(), _level, false,_buffer);
-            for (int i = 0; i < _polygon.getNumInteriorRing(); i++) {
-                indent(_level,_buffer,", ",true);
-                appendLineStringText(_polygon.getInteriorRingN(i), _level + 1, true, _buffer);
-            }
-        }
+    private static String typeName(Geometry _geometry) {
+        if ( _geometry instanceof Point )           return "Point";
+        if ( _geometry instanceof LineString )      return "LineString";  // Includes LinearRing
+        if ( _geometry instanceof Polygon )         return "Polygon";
+        if ( _geometry instanceof MultiPoint )      return "MultiPoint";
+        if ( _geometry instanceof MultiLineString ) return "MultiLineString";
+        if ( _geometry instanceof MultiPolygon )    return "MultiPolygon";
+        return "GeometryCollection";
     }
 
-    /**
-     * Converts a <code>MultiPoint</code> to &lt;MultiPoint Text&gt; format,
-     * then appends it to the _buffer.
-     * The value of the geometry member SHALL be either a Geometry object or, 
-     * in the case that the Feature is unlocated, a JSON null value.
-     * 
-     * @param multiPoint
-     *        the <code>MultiPoint</code> to process
-     * @param _buffer
-     *        the output _buffer to append to
-     */
-    private static  void appendMultiPointText(MultiPoint   _multiPoint, 
-                                              int          _level,
-                                              StringBuffer _buffer) 
-    throws IOException 
+    private void appendCoordinates(Geometry _geometry)
+    throws IOException
     {
-        indent(_level,_buffer,"",false);
-        if (_multiPoint.isEmpty()) {
-            _buffer.append("null");
-        } else {
-            for (int i = 0; i < _multiPoint.getNumGeometries(); i++) {
-                if (i > 0) {
-                    _buffer.append(", " + newLine);
-                    if ( i+1 != _multiPoint.getNumGeometries() ) {
-                        indent(_level,_buffer,"",false);
-                    }
+        if ( _geometry instanceof Point ) {
+            if ( _geometry.isEmpty() ) {
+                append("[]");
+            } else {
+                appendPosition(((Point)_geometry).getCoordinateSequence(),0);
+            }
+        } else if ( _geometry instanceof LineString ) {
+            appendPositions(((LineString)_geometry).getCoordinateSequence());
+        } else if ( _geometry instanceof Polygon ) {
+            Polygon polygon = (Polygon)_geometry;
+            append('[');
+            if ( ! polygon.isEmpty() ) {
+                appendPositions(polygon.getExteriorRing().getCoordinateSequence());
+                for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                    append(", ");
+                    appendPositions(polygon.getInteriorRingN(i).getCoordinateSequence());
                 }
-                _buffer.append(getCoordinate(_multiPoint.getGeometryN(i).getCoordinate()));
             }
-        }
-    }
-
-    /**
-     * Converts a <code>MultiLineString</code> to &lt;MultiLineString Text&gt;
-     * format, then appends it to the _buffer.
-     * The value of the geometry member SHALL be either a Geometry object or, 
-     * in the case that the Feature is unlocated, a JSON null value.
-     * 
-     * @param multiLineString
-     *        the <code>MultiLineString</code> to process
-     * @param _buffer
-     *        the output _buffer to append to
-     */
-    private static void appendMultiLineStringText(MultiLineString _multiLineString,
-                                                  int             _level, 
-                                                  boolean         _indentFirst, 
-                                                  StringBuffer    _buffer) 
-    throws IOException {
-        if (_multiLineString.isEmpty()) {
-            _buffer.append("null");
+            append(']');
         } else {
-            int level2 = _level;
-            boolean doIndent = _indentFirst;
-            for (int i = 0; i < _multiLineString.getNumGeometries(); i++) {
-                if (i > 0) {
-                        _buffer.append(", " + newLine);
-                        level2 = _level + 1;
-                        doIndent = true;
+            // MultiPoint, MultiLineString, MultiPolygon
+            append('[');
+            for (int i = 0; i < _geometry.getNumGeometries(); i++) {
+                if ( i > 0 ) {
+                    append(", ");
                 }
-                appendLineStringText((LineString) _multiLineString.getGeometryN(i), 
-                                     level2, 
-                                     doIndent, 
-                                     _buffer);
+                appendCoordinates(_geometry.getGeometryN(i));
             }
+            append(']');
         }
     }
 
-    /**
-     * Converts a <code>MultiPolygon</code> to &lt;MultiPolygon Text&gt;
-     * format, then appends it to the _buffer.
-     * The value of the geometry member SHALL be either a Geometry object or, 
-     * in the case that the Feature is unlocated, a JSON null value.
-     * 
-     * @param multiPolygon
-     *        the <code>MultiPolygon</code> to process
-     * @param _buffer
-     *        the output _buffer to append to
-     */
-    private static void appendMultiPolygonText(MultiPolygon _multiPolygon, 
-                                               int          _level,
-                                               StringBuffer _buffer) 
-    throws IOException {
-        if (_multiPolygon.isEmpty()) {
-            _buffer.append("null");
-        } else {
-            int level2 = _level;
-            boolean doIndent = false;
-            _buffer.append("(");
-            for (int i = 0; i < _multiPolygon.getNumGeometries(); i++) {
-                if (i > 0) {
-                    _buffer.append(", " + newLine);
-                    level2 = _level + 1;
-                    doIndent = true;
-                }
-                appendPolygonText((Polygon) _multiPolygon.getGeometryN(i),
-                                  level2, 
-                                  doIndent, 
-                                  _buffer);
+    private void appendPositions(CoordinateSequence _sequence)
+    throws IOException
+    {
+        append('[');
+        for (int i = 0; i < _sequence.size(); i++) {
+            if ( i > 0 ) {
+                append(", ");
             }
+            appendPosition(_sequence,i);
         }
+        append(']');
     }
 
-    /**
-     * Converts a <code>GeometryCollection</code> to
-     * &lt;GeometryCollectionText&gt; format, then appends it to the _buffer.
-     * The value of the geometry member SHALL be either a Geometry object or, 
-     * in the case that the Feature is unlocated, a JSON null value.
-     * 
-     * @param geometryCollection
-     *        the <code>GeometryCollection</code> to process
-     * @param _buffer
-     *        the output _buffer to append to
-     */
-    private static  void appendGeometryCollectionText(GeometryCollection _geometryCollection, 
-                                                      int                _level,
-                                                      String             _featureOption,
-                                                      boolean            _bbox,
-                                                      StringBuffer       _buffer)
-    throws IOException {
-        if (_geometryCollection.isEmpty()) {
-            _buffer.append("null");
-        } else {
-            int level2 = _level;
-            for (int i = 0; i < _geometryCollection.getNumGeometries(); i++) {
-                if (i > 0) {
-                    _buffer.append(", " + newLine);
-                    level2 = _level + 1;
-                }
-                _buffer.append("{" + newLine);
-                appendGeometryTaggedText(_geometryCollection.getGeometryN(i),level2,_featureOption,_bbox,_buffer);
-                _buffer.append("}");
+    private void appendPosition(CoordinateSequence _sequence,
+                                int                _index)
+    throws IOException
+    {
+        append('[');
+        appendNumber(_sequence.getX(_index));
+        append(", ");
+        appendNumber(_sequence.getY(_index));
+        if ( this.zOrdinate != NO_Z && _sequence.getDimension() > this.zOrdinate ) {
+            double z = _sequence.getOrdinate(_index,this.zOrdinate);
+            if ( ! Double.isNaN(z) ) {
+                append(", ");
+                appendNumber(z);
             }
         }
+        append(']');
     }
 
-    public static void setFormatter(PrecisionModel _precisionModel) {
-        GeoJSONWriter.formatter = createFormatter(_precisionModel);
+    private void appendBBox(Envelope _envelope)
+    throws IOException
+    {
+        append("\"bbox\": [");
+        appendNumber(_envelope.getMinX()); append(", ");
+        appendNumber(_envelope.getMinY()); append(", ");
+        appendNumber(_envelope.getMaxX()); append(", ");
+        appendNumber(_envelope.getMaxY());
+        append(']');
     }
 
-    public static DecimalFormat getFormatter() {
-        return formatter;
+    /** =============== Text output ================= **/
+
+    /** JSON has no NaN or Infinity */
+    @Override
+    protected void appendNonFinite(double _value)
+    throws IOException
+    {
+        append("null");
     }
 
-    public static int getCURRENT() {
-        return CURRENT;
+    /** Writes a JSON string with quotes, escaping as required */
+    private void appendString(String _value)
+    throws IOException
+    {
+        append('"');
+        for (int i = 0; i < _value.length(); i++) {
+            char c = _value.charAt(i);
+            switch (c) {
+                case '"'  : append("\\\""); break;
+                case '\\' : append("\\\\"); break;
+                case '\n' : append("\\n");  break;
+                case '\r' : append("\\r");  break;
+                case '\t' : append("\\t");  break;
+                default   : if ( c < 0x20 ) {
+                                String hex = Integer.toHexString(c);
+                                append("\\u");
+                                append("0000".substring(hex.length()));
+                                append(hex);
+                            } else {
+                                append(c);
+                            }
+            }
+        }
+        append('"');
     }
 
-    public static void setCURRENT(int CURRENT) {
-        GeoJSONWriter.CURRENT = CURRENT;
+    private void newLine()
+    throws IOException
+    {
+        append(this.newLine,0,this.newLine.length);
+        int spaces = INDENT * Math.min(this.indentLevel,MAX_INDENT);
+        append(SPACES,0,spaces);
     }
 }
@@ -3,23 +3,22 @@ package com.spdba.dbutils.io.exp.geojson;
 import com.spdba.dbutils.spatial.Renderer;
 import com.spdba.dbutils.spatial.SDO;
 import com.spdba.dbutils.sql.DBConnection;
+import com.spdba.dbutils.sql.FetchSizer;
 import com.spdba.dbutils.sql.SQLConversionTools;
 import com.spdba.dbutils.tools.FileUtils;
 import com.spdba.dbutils.tools.Strings;
 import com.spdba.dbutils.tools.Tools;
 
+import org.locationtech.jts.geom.CoordinateSequence;
 import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.GeometryCollection;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.PrecisionModel;
 import org.locationtech.jts.io.oracle.OraReader;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.io.Writer;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -39,45 +38,44 @@ import oracle.sql.STRUCT;
 
 public class WriteGeoJSONFile {
 
-    private static String DATEFORMAT =  "yyyy/MM/dd hh:mm:ss a";
+    private static final String DEFAULT_DATEFORMAT = "yyyy/MM/dd hh:mm:ss a";
 
     /** JSON Writer Specific variables 
     */
 
     private static final    int     idColumnDoesNotExist = -1;
-    private static       String             idColumnName = "";
-    private static          int            idColumnIndex = idColumnDoesNotExist;
     private static final String      geomColumnFindFirst = "FIRST";
     private static final String     geomColumnNamePrefix = "NAME:";
-    private static       String           geomColumnName = "";
     private static final String    geomColumnIndexPrefix = "INDEX:";
-    private static          int          geomColumnIndex = Integer.MIN_VALUE;
-    
-    private static         List       geomCollectionList = null;
-    private static         List        geomColumnIndices = null;
-    private static         List        attrColumnIndices = null;
     
     public  static final String   geometryCollectionOption = "GEOMETRY_COLLECTION";
     private static final String             geometryOption = "GEOMETRY";
-    private static       String      geoJsonGeometryOption = null;
 
     public  static final String            noFeatureOption = "NO_FEATURES";
     public  static final String    featureCollectionOption = "FEATURE_COLLECTION";
     public  static final String              featureOption = "FEATURE";
-    private static       String       geoJsonFeatureOption = noFeatureOption;
-    
-    private static      boolean                       bbox = false;    
-    private static SimpleDateFormat                    sdf = null; 
-
-    private static       String                    newLine = System.getProperty("line.separator");
-    private static          int                     commit = 100;
-    private static          int                        row = 0;
-    private static       String               jsonFileName = "";
-    private static       String          jsonFileExtension = "geojson";
-    private static       Writer             jsonFileWriter = null;
-    private static StringBuffer             jsonFileBuffer = null;
-
-    private static void setGeometryProcessingOptions(OracleResultSetMetaData _metadata,
+
+    private static final String          jsonFileExtension = "geojson";
+
+    // All state is per export
+    //
+    private                 String             idColumnName = "";
+    private                    int            idColumnIndex = idColumnDoesNotExist;
+    private                 String           geomColumnName = "";
+    private                    int          geomColumnIndex = Integer.MIN_VALUE;
+    private                   List        geomColumnIndices = null;
+    private                   List        attrColumnIndices = null;
+    private                 String    geoJsonGeometryOption = null;
+    private                 String     geoJsonFeatureOption = noFeatureOption;
+    private                boolean                     bbox = false;    
+    private                    int                      row = 0;
+    private          GeoJSONWriter               jsonWriter = null;
+
+    private WriteGeoJSONFile() {
+        super();
+    }
+
+    private void setGeometryProcessingOptions(OracleResultSetMetaData _metadata,
                                                      boolean                 _aggregateMultipleGeomColumns) 
     throws SQLException 
     {
@@ -167,14 +165,15 @@ public class WriteGeoJSONFile {
     /**
      * Main execution method.
      * <p>
-     * Writes the given result as delimited text files 
+     * Writes the given result as a GeoJSON file: a FeatureCollection when there are
+     * attributes, otherwise a GeometryCollection. The file is streamed as rows are read.
      *  For GeoJSON, Polygon rings MUST follow the right-hand rule for orientation
      *  (counterclockwise external rings, clockwise internal rings).
      * @param _resultSet the result set, including a geometry column.
      * @param _outputDirectory the directory to write output files to.
      * @param _fileName the file name of output files.
      * @param _sDateFormat SimpleDateFormat string.
-     * @param _commit Commit interval (default 100).
+     * @param _commit No longer used: the file is written as GeoJSONWriter's buffer fills (kept for compatibility).
      * @throws SQLException if anything goes wrong.
      */
     public static void write(java.sql.ResultSet _resultSet, 
@@ -191,6 +190,34 @@ public class WriteGeoJSONFile {
     throws  SQLException, 
             IllegalArgumentException,
             IOException 
+    {
+        new WriteGeoJSONFile().export(_resultSet,
+                                      _outputDirectory,
+                                      _fileName,
+                                      _geomColumn,
+                                      _idColumn,
+                                      _sDateFormat,
+                                      _geomRenderFormat,
+                                      _aggregateMultipleGeometryColumns,
+                                      _bbox,
+                                      _decimalDigitsOfPrecision,
+                                      _commit);
+    }
+
+    private void export(java.sql.ResultSet _resultSet, 
+                        java.lang.String   _outputDirectory, 
+                        java.lang.String   _fileName, 
+                        java.lang.String   _geomColumn,
+                        java.lang.String   _idColumn,
+                        java.lang.String   _sDateFormat,
+                        java.lang.String   _geomRenderFormat,
+                        int                _aggregateMultipleGeometryColumns,
+                        int                _bbox,
+                        int                _decimalDigitsOfPrecision,
+                        int                _commit) 
+    throws  SQLException, 
+            IllegalArgumentException,
+            IOException 
     {
         if ( _resultSet == null )  {
             // though this may not work inside Oracle if user calling procedure has not had granted write permissions
@@ -201,7 +228,8 @@ public class WriteGeoJSONFile {
         DBConnection.setConnection((oracle.jdbc.driver.OracleConnection) conn); // Will find default if conn==null
         OracleResultSetMetaData metaData = (OracleResultSetMetaData)_resultSet.getMetaData();
         OracleResultSet     oraResultSet = (OracleResultSet)        _resultSet;
-        oraResultSet.setFetchDirection(ResultSet.FETCH_FORWARD);
+        FetchSizer            fetchSizer = new FetchSizer();
+        fetchSizer.start(oraResultSet);
 
         // Check input
         if (Strings.isEmpty(_outputDirectory) ) {
@@ -211,9 +239,7 @@ public class WriteGeoJSONFile {
         if (Strings.isEmpty(_fileName) ) {
             throw new IllegalArgumentException("Filename must be provided");
         }
-        if ( !Strings.isEmpty(_sDateFormat) ) {
-            DATEFORMAT = _sDateFormat;
-        }
+        SimpleDateFormat sdf = new SimpleDateFormat(Strings.isEmpty(_sDateFormat) ? DEFAULT_DATEFORMAT : _sDateFormat); 
         
         // Process idColumn parameters...
         //
@@ -247,194 +273,98 @@ public class WriteGeoJSONFile {
         setGeometryProcessingOptions(metaData,
                                      /* aggregate */ ( _aggregateMultipleGeometryColumns > 0 ));
         
-/**
-System.out.print("Number of columns in result set = " + metaData.getColumnCount());
-System.out.print("Indexes of Geometry Columns: ");
-        Iterator geoIter = geomColumnIndices.iterator();
-        int geoIndex = 1;
-        while (geoIter.hasNext()) {
-            geoIndex = ((Integer)geoIter.next()).intValue();
-System.out.print(geoIndex + " ");
-        }
-System.out.println(" ");
-System.out.print("Indexes of Geometry Columns: ");
-                Iterator attIter = attrColumnIndices.iterator();
-                int attIndex = 1;
-                while (attIter.hasNext()) {
-                    attIndex = ((Integer)attIter.next()).intValue();
-System.out.print(attIndex + " ");
-                }
-System.out.println("");
-**/
-        bbox           = (_bbox == 0 ? false : true);
-        commit         = (_commit==0 ?   100 : Math.abs(_commit));
-        sdf            = new SimpleDateFormat(DATEFORMAT); 
-        jsonFileName = FileUtils.FileNameBuilder(_outputDirectory,_fileName,jsonFileExtension); 
-        jsonFileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(jsonFileName)),"UTF-8"));
+        bbox   = (_bbox == 0 ? false : true);
+        String jsonFileName = FileUtils.FileNameBuilder(_outputDirectory,_fileName,jsonFileExtension); 
         
         // Turn provided number of decimal digits of precision to something JTS can use.
         double              precision = Tools.getPrecisionScale(_decimalDigitsOfPrecision);
         PrecisionModel precisionModel = new PrecisionModel(precision);
-        GeoJSONWriter.setFormatter(precisionModel);
         GeometryFactory   geomFactory = new GeometryFactory(precisionModel);
         OraReader        oracleReader = new OraReader(geomFactory);
         
+        // The GeoJSONWriter does its own buffering, writing to the file only when its buffer fills
+        jsonWriter = new GeoJSONWriter(new OutputStreamWriter(new FileOutputStream(new File(jsonFileName)),"UTF-8"),
+                                       precisionModel);
+        
         // sort through resultset
         Object                    idValue = null;
         String                   outValue = "";
         STRUCT                  oraStruct = null;
         Geometry                 geometry = null;
-        GeometryCollection geomCollection = null;
-        Geometry          featureEnvelope = null;
-        int                     geomIndex = 0;
+        Geometry[]             geometries = new Geometry[geomColumnIndices.size()];
+        int[]                  zOrdinates = new int[geometries.length];
+        boolean                  features = getGeoJsonFeatureOption().toUpperCase().startsWith(featureOption);
+        boolean               aggregating = getGeoJsonGeometryOption().equalsIgnoreCase(geometryCollectionOption);
         int                     attrIndex = 0;
         boolean             hasAttributes = !( attrColumnIndices.size()==1 && idColumnIndex != idColumnDoesNotExist);
         
         try {
-            start(DBConnection.getCharacterSet(conn)); // "UTF-8");
+            start(features);
             while (oraResultSet.next()) 
             {
-                startRow();
-                
-                // Process geometry columns independently of attributes as may aggregate multiple columns
-                //
-                
                 // Feature/FeatureCollections can have ID ...
                 //
-                if (getGeoJsonFeatureOption().toUpperCase().startsWith(featureOption) 
-                    && 
-                    idColumnIndex != idColumnDoesNotExist ) 
-                {
-                    idValue = oraResultSet.getObject(idColumnIndex).toString();
+                idValue = null;
+                if ( features && idColumnIndex != idColumnDoesNotExist ) {
+                    idValue = oraResultSet.getObject(idColumnIndex);
+                    if ( idValue != null && !(idValue instanceof Number) ) {
+                        idValue = idValue.toString();
+                    }
                 }
-System.out.println(getGeoJsonFeatureOption());
-System.out.println("NumGeoms=" + geomColumnIndices.size());
-System.out.println("ID (index,Value)=(" + idColumnIndex + "," + (idValue!=null?idValue.toString():"null") + ")");
-                if ( geomColumnIndices.size()==1 ) 
-                {
-                    geomIndex = ((Integer)geomColumnIndices.get(0)).intValue();
-                    oraStruct = (STRUCT)oraResultSet.getObject(geomIndex);
-                    geometry = SDO.asJTSGeometry(oraStruct, 
-                                                           oracleReader, 
-                                                           geomFactory);
-                    
-                    // If Feature (can't be Collection as size==1) we need to wrap geometry in Feature tags.
-                    // if not, standard GeoJSON geometry written completely by GeoJSONWriter.write function.
-                    //
-                    if (getGeoJsonFeatureOption().toUpperCase().startsWith(featureOption) ) 
-                    {
-                        featureEnvelope = bbox ? geometry.getEnvelope() : null;
-                        GeoJSONWriter.appendFeatureBeginText(featureEnvelope,
-                                                             idValue,
-                                                             jsonFileBuffer);
-                    } else {
-                        GeoJSONWriter.setCURRENT(GeoJSONWriter.getCURRENT()+1);
+                
+                // Convert all geometry columns, main geometry first
+                // (a feature that is not aggregating only needs the main geometry)
+                //
+                for (int g = 0; g < (features && !aggregating ? Math.min(1,geometries.length) : geometries.length); g++) {
+                    oraStruct     = (STRUCT)oraResultSet.getObject(((Integer)geomColumnIndices.get(g)).intValue());
+                    geometries[g] = oraStruct == null ? null : SDO.asJTSGeometry(oraStruct, oracleReader, geomFactory);
+                    zOrdinates[g] = zOrdinate(oraStruct);
+                    if ( g == 0 ) {
+                        fetchSizer.rowFetched(oraResultSet,oraStruct);
                     }
-                    
-                    // Convert geometry to GeoJSON.
-                    // Create BBOX for individual geometry only if not already created at feature level
+                }
+                geometry = geometries.length == 1 || !aggregating 
+                           ? null 
+                           : geomFactory.createGeometryCollection(nonNull(geometries));
+                if ( geometry != null ) {
+                    jsonWriter.setZOrdinate(commonZOrdinate(geometries,zOrdinates));
+                }
+                
+                if ( ! features ) {
+                    // Geometries are members of the document's GeometryCollection
                     //
-                    GeoJSONWriter.write(/* JTS Geometry */                geometry,
-                                        /* _featureType*/getGeoJsonFeatureOption(),
-                                        /* _bbox       */                     bbox,
-                                        /* _writer     */           jsonFileBuffer);
-                    
-                    /* Terminate Feature tags if Feature */
-                    if (getGeoJsonFeatureOption().toUpperCase().startsWith(featureOption) ) {
-                        GeoJSONWriter.appendFeatureEndText(hasAttributes,
-                                                           jsonFileBuffer);
+                    if ( geometry != null ) {
+                        jsonWriter.writeMember(geometry,bbox);
                     } else {
-                        GeoJSONWriter.setCURRENT(GeoJSONWriter.getCURRENT()-1);
-                    }
-                    
-                } else { // Multiple Geometry Columns 
-                    
-                    // Cache all geometries regardless as to bbox or collection processing options.
-                    //
-                    geomCollection     = null;
-                    geomCollectionList = new ArrayList/*<Geometry>*/(geomColumnIndices.size());
-                    Iterator/*<Integer>*/ geomIter = geomColumnIndices.iterator();
-                    int collectionIndex = 0;
-                    while (geomIter.hasNext()) {
-                        int geomIndexIndex = ((Integer)geomIter.next()).intValue();
-                        oraStruct = (STRUCT)oraResultSet.getObject(geomIndexIndex);
-                        geometry = SDO.asJTSGeometry(oraStruct, 
-                                                               oracleReader, 
-                                                               geomFactory);
-                        geomCollectionList.add(collectionIndex++, 
-                                               geometry);
-                    }
-
-                    // If BBOX needed at feature/featureCollection level we need geomCollection
-                    //
-                    featureEnvelope = null;
-                    if ( bbox 
-                         ||
-                         (getGeoJsonGeometryOption().equalsIgnoreCase(geometryCollectionOption) &&
-                          getGeoJsonFeatureOption().equalsIgnoreCase(featureOption)
-                         )
-                       )
-                    {
-                        geomCollection = new GeometryCollection((Geometry[])geomCollectionList.toArray(new Geometry[] {}), 
-                                                                geomFactory);
-                        featureEnvelope = geomCollection.getEnvelope();
-                    }
-                    
-                    // Now write cached geometries according to requirements
-                    //    
-                    if (getGeoJsonFeatureOption().toUpperCase().equalsIgnoreCase(featureOption) ) {
-                        // Writing as Feature so all columns written as a single Geometrycollection
-                        //
-                        GeoJSONWriter.appendFeatureBeginText(bbox ? featureEnvelope : null,
-                                                             idValue,
-                                                             jsonFileBuffer);
-                        GeoJSONWriter.write(/* JTS Geometry */                  geomCollection,
-                                            /* _featureType*/        getGeoJsonFeatureOption(),
-                                            /* _bbox       */bbox && (featureEnvelope == null),
-                                            /* _writer     */                  jsonFileBuffer);
-                        GeoJSONWriter.appendFeatureEndText(hasAttributes,
-                                                           jsonFileBuffer);
-                    } else { 
-                        // Write Header
-                        GeoJSONWriter.appendFeatureCollectionBeginText(bbox ? featureEnvelope : null,
-                                                                       idValue,
-                                                                       jsonFileBuffer);
-                        
-                        // Write Individual geometries within FeatureCollection wrapper
-                        // 
-                        Iterator/*<Geometry>*/ geomObjectsIter = geomCollectionList.iterator();
-                        geomIndex = 0;
-                        while (geomObjectsIter.hasNext()) {
-                            geometry = (Geometry)geomObjectsIter.next();
-                            GeoJSONWriter.write(/* JTS Geometry */                          geometry, 
-                                                /* _featureType */         getGeoJsonFeatureOption(),
-                                                /* _bbox        */ bbox && (featureEnvelope == null),
-                                                /* _writer      */                    jsonFileBuffer);
-                            if ( geomIndex == 0 ) {
-                                jsonFileBuffer.append(",");
-                            }
-                            geomIndex++;
+                        for (int g = 0; g < geometries.length; g++) {
+                            jsonWriter.setZOrdinate(zOrdinates[g]);
+                            jsonWriter.writeMember(geometries[g],bbox);
                         }
-                        GeoJSONWriter.appendFeatureCollectionEndText(jsonFileBuffer);
                     }
+                    endRow();
+                    continue;
                 }
-
+                
+                // One feature per row: all geometry columns as a GeometryCollection 
+                // when aggregating, otherwise the chosen geometry column
+                //
+                Geometry featureGeometry = geometry;
+                if ( geometry == null && geometries.length > 0 ) {
+                    featureGeometry = geometries[0];
+                    jsonWriter.setZOrdinate(zOrdinates[0]);
+                }
+                jsonWriter.startFeature(idValue,
+                                        bbox && featureGeometry != null && !featureGeometry.isEmpty()
+                                        ? featureGeometry.getEnvelopeInternal() 
+                                        : null);
+                jsonWriter.writeGeometry(featureGeometry,false);
+                
                 // Write Properties if have attributes but not single ID in feature set
                 //
-                if ( getGeoJsonFeatureOption().toUpperCase().startsWith(featureOption) 
-                     &&
-                     hasAttributes )
+                if ( hasAttributes )
                 {
-                    int first = 0;
+                    jsonWriter.startProperties();
                     Iterator/*<Integer>*/ attrIter = attrColumnIndices.iterator();
-                    attrIndex = 0;
-                    jsonFileBuffer.append(newLine);
-                    GeoJSONWriter.setCURRENT(GeoJSONWriter.getCURRENT()+1);
-                    GeoJSONWriter.indent(GeoJSONWriter.getCURRENT(),
-                                         jsonFileBuffer,
-                                         "\"properties\": { ",
-                                         true);
-                    GeoJSONWriter.setCURRENT(GeoJSONWriter.getCURRENT()+1);
                     while (attrIter.hasNext()) {
                         attrIndex = ((Integer)attrIter.next()).intValue();
                         if ( attrIndex == idColumnIndex ) {
@@ -448,17 +378,15 @@ System.out.println("ID (index,Value)=(" + idColumnIndex + "," + (idValue!=null?i
                                                                /* _sDelimiter      */  "",
                                                                /* SimpleDateFormat */sdf);
                         if (oraResultSet.wasNull()) { 
-                            outValue = "NULL";
+                            outValue = null;
                         }
-                        printColumn(outValue, SQLConversionTools.isString(metaData.getColumnType(attrIndex)),
-                                       first==0,
-                                       metaData.getColumnLabel(attrIndex) );
-                        first++;
-                   } // while
-                    GeoJSONWriter.setCURRENT(GeoJSONWriter.getCURRENT()-1);
-                   jsonFileBuffer.append(newLine);
-                    GeoJSONWriter.indent(GeoJSONWriter.getCURRENT(), jsonFileBuffer, "}", true);
+                        printColumn(outValue, 
+                                    SQLConversionTools.isString(metaData.getColumnType(attrIndex)),
+                                    metaData.getColumnLabel(attrIndex) );
+                    } // while
+                    jsonWriter.endProperties();
                 } // Has properties to write
+                jsonWriter.endFeature();
                 endRow();
             } // while
             end();
@@ -466,27 +394,69 @@ System.out.println("ID (index,Value)=(" + idColumnIndex + "," + (idValue!=null?i
         catch (SQLException sqle) {
             throw new SQLException("Error executing SQL: " + sqle);
         }
+        finally {
+            close();
+        }
+    }
+
+    /**
+     * GeoJSON positions have no measure (as for GML): the measure of XYM and XYZM
+     * geometries is not written, and only real Z values are.
+     * @return int : Ordinate written as a position's Z, or GeoJSONWriter.NO_Z
+     */
+    private static int zOrdinate(STRUCT _struct) {
+        if ( _struct == null ) {
+            return GeoJSONWriter.NO_Z;
+        }
+        int dimension = SDO.getDimension(_struct, 2),
+              measure = SDO.getMeasureDimension(_struct);
+        if ( (measure > 0 ? dimension - 1 : dimension) < 3 ) {
+            return GeoJSONWriter.NO_Z;
+        }
+        return measure == 3 && dimension == 4 ? 3 : CoordinateSequence.Z;
+    }
+
+    /**
+     * A GeometryCollection of the geometry columns is written with one Z ordinate:
+     * Z is only written if every non-null column has it at the same ordinate.
+     */
+    private static int commonZOrdinate(Geometry[] _geometries, int[] _zOrdinates) {
+        int zOrdinate = GeoJSONWriter.NO_Z;
+        boolean first = true;
+        for (int g = 0; g < _geometries.length; g++) {
+            if ( _geometries[g] == null ) {
+                continue;
+            }
+            if ( first ) {
+                zOrdinate = _zOrdinates[g];
+                first = false;
+            } else if ( zOrdinate != _zOrdinates[g] ) {
+                return GeoJSONWriter.NO_Z;
+            }
+        }
+        return zOrdinate;
     }
-    
-    public static void start(String _encoding) 
-    {
-        row = 0;
-        jsonFileBuffer = new StringBuffer(100000);
-        GeoJSONWriter.startDocument(jsonFileBuffer);
-   }
 
-    public static void startRow() 
+    private static Geometry[] nonNull(Geometry[] _geometries) {
+        List geoms = new ArrayList(_geometries.length);
+        for (int g = 0; g < _geometries.length; g++) {
+            if ( _geometries[g] != null ) {
+                geoms.add(_geometries[g]);
+            }
+        }
+        return (Geometry[])geoms.toArray(new Geometry[geoms.size()]);
+    }
+    
+    private void start(boolean _features) 
     throws IOException 
     {
-        if ( row > 0) {
-            jsonFileBuffer.append(","+newLine);
-        }
+        row = 0;
+        jsonWriter.startDocument(_features);
     }
 
-    public static void printColumn(String  _object,
-                                   boolean _isString,
-                                   boolean _firstAttribute,
-                                   String  _columnName) 
+    private void printColumn(String  _object,
+                             boolean _isString,
+                             String  _columnName) 
     throws IOException 
     {
         /**
@@ -495,61 +465,44 @@ System.out.println("ID (index,Value)=(" + idColumnIndex + "," + (idValue!=null?i
         *        "prop1": 0.0
         *      }
         */
-        jsonFileBuffer.append( _firstAttribute ? "" : (","+ newLine) );
-        GeoJSONWriter.indent(GeoJSONWriter.getCURRENT(),
-                             jsonFileBuffer,
-                             "\"" + _columnName + "\": " + 
-                               (_isString?"\"":"")  + _object + (_isString?"\"":""),
-                             false);
+        jsonWriter.writeProperty(_columnName,_object,_isString);
     }
 
-    public static void endRow() throws IOException {
+    private void endRow() 
+    {
         row++;
-        GeoJSONWriter.setCURRENT(GeoJSONWriter.getCURRENT()-1);
-        GeoJSONWriter.indent(GeoJSONWriter.getCURRENT(), jsonFileBuffer, "}", false);
-        if ( (row % getCommit()) == 0 ) {
-            jsonFileWriter.write(jsonFileBuffer.toString());
-            jsonFileBuffer = new StringBuffer(100000);
-            jsonFileWriter.flush();
-        }
     }
 
-    public static void end() 
+    private void end() 
     throws IOException 
     {
-        GeoJSONWriter.endDocument(jsonFileBuffer);
-        if ( jsonFileBuffer.length() > 0 ) {
-            jsonFileWriter.write(jsonFileBuffer.toString());
-        }  
-        jsonFileWriter.flush();
+        jsonWriter.endDocument();
     }
 
-    public static  void close() {
+    private void close() {
         try {
-            jsonFileWriter.close();
-            jsonFileWriter = null;
+            if ( jsonWriter != null ) {
+                jsonWriter.close();
+                jsonWriter = null;
+            }
         } catch (IOException ioe) {
           // Do nothing.
         }
     }
 
-    private static int getCommit() {
-        return commit;
-    }
-
-    public static String getGeoJsonGeometryOption() {
+    public String getGeoJsonGeometryOption() {
         return geoJsonGeometryOption;
     }
 
-    public static void setGeoJsonGeometryOption(String geoJsonGeometryOption) {
-        WriteGeoJSONFile.geoJsonGeometryOption = geoJsonGeometryOption;
+    public void setGeoJsonGeometryOption(String _geoJsonGeometryOption) {
+        this.geoJsonGeometryOption = _geoJsonGeometryOption;
     }
 
-    public static String getGeoJsonFeatureOption() {
+    public String getGeoJsonFeatureOption() {
         return geoJsonFeatureOption;
     }
 
-    public static void setGeoJsonFeatureOption(String geoJsonFeatureOption) {
-        WriteGeoJSONFile.geoJsonFeatureOption = geoJsonFeatureOption;
+    public void setGeoJsonFeatureOption(String _geoJsonFeatureOption) {
+        this.geoJsonFeatureOption = _geoJsonFeatureOption;
     }
 }
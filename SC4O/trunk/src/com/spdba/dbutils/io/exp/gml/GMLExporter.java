@@ -39,6 +39,12 @@ import oracle.sql.STRUCT;
 
 import org.geotools.data.shapefile.shp.ShapeType;
 
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.io.oracle.OraReader;
+
 public class GMLExporter 
 implements IExporter 
 {
@@ -65,8 +71,14 @@ implements IExporter
     private int                                 prevSRID = SDO.SRID_NULL;
     private Envelope                          fileExtent = null;
     private String                           gmlFilename = "";
-    private StringBuffer                       rowBuffer = null;
-    private BufferedWriter                       gmlFile = null;
+    private GMLGeometryWriter                    gmlFile = null;
+    private GeometryFactory                  geomFactory = null;
+    private OraReader                      geomConverter = null;
+    private String                         flavourPrefix = null;
+    private String                    featureMemberStart = null;
+    private String                      featureMemberEnd = null;
+    private String                 geometryPropertyStart = null;
+    private String                   geometryPropertyEnd = null;
     private boolean                      needsIdentifier = false;
     private POLYGON_RING_ORIENTATION     polyOrientation = POLYGON_RING_ORIENTATION.ORACLE;
     private int                 decimalDigitsOfPrecision = 3;
@@ -309,33 +321,48 @@ implements IExporter
         
         writeXSD((OracleResultSet)this.resultSet);
         
-        this.rowBuffer = new StringBuffer(10000);
         if (Strings.isEmpty(gmlFilename) ) {
             throw new IOException("Filename not set");
         }
-        this.gmlFile      = new BufferedWriter(new FileWriter(this.gmlFilename));
+        this.geomFactory   = new GeometryFactory(new PrecisionModel(Math.pow(10,decimalDigitsOfPrecision)));
+        this.geomConverter = new OraReader(this.geomFactory);
+        this.gmlFile       = new GMLGeometryWriter(new FileWriter(this.gmlFilename),
+                                                   this.geomFactory.getPrecisionModel());
         this.row          = 0;
         this.fileExtent   = new Envelope(Constants.MAX_PRECISION);
         this.srsName      = null;
         this.srsNameSpace = null; 
         this.prevSRID     = SDO.SRID_NULL;
         this.srsDimension = 2;
-        this.gmlFile.write("<?xml version='1.0'  encoding='" + _encoding + "' ?>" + newLine);
+        
+        // Text written for every row
+        //
+        String prefix = this.getXMLFlavourPrefix(this.XMLFlavour);
+        boolean hasAttributes = this.hasAttributes() && ! this.XMLFlavour.equals(Constants.XMLAttributeFlavour.GML);
+        this.flavourPrefix         = prefix + ":";
+        this.featureMemberStart    = "  <gml:featureMember>" + newLine +
+                                     (hasAttributes ? "    <" + prefix + ":" + this.baseName + ">" + newLine : "");
+        this.featureMemberEnd      = (hasAttributes ? "    </" + prefix + ":" + this.baseName + ">" + newLine : "") +
+                                     "  </gml:featureMember>" + newLine;
+        this.geometryPropertyStart = "      <" + prefix + ":geometryProperty>" + newLine + "        ";
+        this.geometryPropertyEnd   = newLine + "      </" + prefix + ":geometryProperty>" + newLine;
+        
+        this.gmlFile.append("<?xml version='1.0'  encoding='" + _encoding + "' ?>" + newLine);
         if ( this.XMLFlavour.equals(Constants.XMLAttributeFlavour.OGR) ) {
-          this.gmlFile.write("<ogr:FeatureCollection" + newLine + 
+          this.gmlFile.append("<ogr:FeatureCollection" + newLine + 
                               "     xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"" + newLine +
                               "     " + GmlNameSpace + newLine +
                               "     xmlns:ogr=\"http://ogr.maptools.org/\"" + newLine +
                               "     xsi:schemaLocation=\"http://ogr.maptools.org/" + this.baseName + ".xsd\">" + newLine );
         } else if (this.XMLFlavour.equals(Constants.XMLAttributeFlavour.FME)) {
-          this.gmlFile.write("<gml:FeatureCollection" + newLine + 
+          this.gmlFile.append("<gml:FeatureCollection" + newLine + 
                               "     xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"" + newLine +
                               "     xmlns:xlink=\"http://www.w3.org/1999/xlink\"" + newLine +
                               "     " + GmlNameSpace + newLine +
                               "     xmlns:fme=\"http://www.safe.com/gml/fme\"" + newLine +
                               "     xsi:schemaLocation=\"http://www.safe.com/gml/fme/" + this.baseName + ".xsd\">" + newLine); 
         } else {
-          this.gmlFile.write("<gml:FeatureCollection " + newLine + 
+          this.gmlFile.append("<gml:FeatureCollection " + newLine + 
                               "     xmlns:xlink=\"http://www.w3.org/1999/xlink\" " + newLine +
                               "     " + GmlNameSpace + " " + newLine +
                               "     xsi:schemaLocation=\"file:///" + this.gmlFilename.replace(".gml",".xsd").replace("\\","/") + "\"" + newLine + 
@@ -345,37 +372,29 @@ implements IExporter
 
     @Override    
     public void startRow() throws IOException {
-        this.rowBuffer.append("  <gml:featureMember>" + newLine);
-        if ( this.hasAttributes() ) {
-            if ( this.XMLFlavour.equals(Constants.XMLAttributeFlavour.OGR)  ) {
-                this.rowBuffer.append("    <ogr:" + this.baseName + /* " ogr:fid=\"F" + String.valueOf(row) + "\""*/ ">" + newLine);
-            } else if ( this.XMLFlavour.equals(Constants.XMLAttributeFlavour.FME) ) {
-                this.rowBuffer.append("    <fme:" + this.baseName + /* " fme:id=\"" + String.valueOf(row) + "\"" */ ">" + newLine);
-            }
-        }
+        this.gmlFile.append(this.featureMemberStart);
     }
 
     @Override    
     public void printColumn(Object                _object, 
                             OraRowSetMetaDataImpl _columnMetaData) 
     {
-        String gmlText = "";
-        STRUCT stValue = null; 
         try {
             boolean isGeometryColumn = ! Strings.isEmpty(_columnMetaData.getCatalogName(1));
             // Mappable column?
-            // System.out.println("CatalogName: ****"+_columnMetaData.getCatalogName(1)+"*** Type: " + _columnMetaData.getColumnTypeName(1) + " => isGeometryColumn=" + String.valueOf(isGeometryColumn) );
             if ( isGeometryColumn )   // Catalog name holds name of actual geometry column 
             {
                 if ( _columnMetaData.getColumnTypeName(1).equalsIgnoreCase(SDO.TAG_MDSYS_SDO_GEOMETRY) ) 
                 {
-                    gmlText = "";
-                    stValue = (STRUCT)_object; 
+                    STRUCT stValue = (STRUCT)_object; 
                     if ( stValue == null ) {
                         LOGGER.warn("NULL Geometry: No featureMember element written for row " + (row+1));
                         // Will produce an empty featureMember
-                       return;
+                        return;
                     }
+                    // Geometries with circular arcs, which JTS cannot represent, 
+                    // are written with Oracle's GML3 encoder
+                    Geometry geom = SDO.hasArc(stValue) ? null : this.geomConverter.read(stValue);
                     
                     // get SRID
                     int SRID = SDO.getSRID(stValue, SDO.SRID_NULL);
@@ -397,41 +416,58 @@ implements IExporter
                         }
                         this.prevSRID = SRID;
                     }
+                    // GML has no measures: the measure ordinate (eg the third of a 3302 or 4302) is not written as a Z
+                    int dimension = SDO.getDimension(stValue, 2),
+                          measure = SDO.getMeasureDimension(stValue);
+                    this.srsDimension = measure > 0 ? dimension - 1 : dimension;
+                    this.gmlFile.setZOrdinate(measure == 3 && dimension == 4 ? 3 : CoordinateSequence.Z);
                     
-                    int dim = SDO.getDimension(stValue, 2);
-                    if ( dim != this.srsDimension ) {
-                        this.srsDimension = dim; 
-                    }
-                    // Use SDO Exporter.
-                    // TODO: Support for JTS's GMLWriter
-                    //
-                    gmlText = GML3.to_GML3Geometry(stValue);
-                    if ( this.XMLFlavour.equals(Constants.XMLAttributeFlavour.FME) ) {
-                        gmlText = gmlText.replaceAll(GmlNameSpace,"");
-                        gmlText = gmlText.replace("srsName=\"SDO:" + String.valueOf(SRID) + "\"",
-                                                  "srsName=\"EPSG:" + String.valueOf(SRID) + "\"");
-                    } else {
-                        gmlText = gmlText.replaceAll(GmlNameSpace, "xmlns:urn=\"" + this.srsNameSpace + "\"");
-                        gmlText = gmlText.replace("srsName=\"SDO:" + String.valueOf(SRID) + "\"", "srsName=\"urn:" + this.srsName + "\" ");
+                    try {
+                        this.gmlFile.append(this.geometryPropertyStart);
+                        if ( geom != null ) {
+                            if ( this.XMLFlavour.equals(Constants.XMLAttributeFlavour.FME) ) {
+                                this.gmlFile.writeGeometry(geom,"EPSG:" + SRID,null,this.srsDimension,null);
+                            } else {
+                                this.gmlFile.writeGeometry(geom,
+                                                           "urn:" + this.srsName,
+                                                           "xmlns:urn=\"" + this.srsNameSpace + "\"",
+                                                           this.srsDimension,
+                                                           null);
+                            }
+                        } else {
+                            // Circular arcs: use SDO Exporter.
+                            //
+                            String gmlText = GML3.to_GML3Geometry(stValue);
+                            if ( this.XMLFlavour.equals(Constants.XMLAttributeFlavour.FME) ) {
+                                gmlText = gmlText.replaceAll(GmlNameSpace,"");
+                                gmlText = gmlText.replace("srsName=\"SDO:" + String.valueOf(SRID) + "\"",
+                                                          "srsName=\"EPSG:" + String.valueOf(SRID) + "\"");
+                            } else {
+                                gmlText = gmlText.replaceAll(GmlNameSpace, "xmlns:urn=\"" + this.srsNameSpace + "\"");
+                                gmlText = gmlText.replace("srsName=\"SDO:" + String.valueOf(SRID) + "\"", "srsName=\"urn:" + this.srsName + "\" ");
+                            }
+                            this.gmlFile.append(gmlText);
+                        }
+                        this.gmlFile.append(this.geometryPropertyEnd);
+                    } catch (IOException ioe) {
+                        throw new SQLException("GMLExporter: Failed to write geometry for row " + (row+1) + " - " + ioe.getMessage());
                     }
-
-                    // Update GML file's envelope
-                    //
-                    Envelope geomMBR = SDO.getGeoMBR(stValue);
-                    this.fileExtent.setMaxMBR(geomMBR);
-                    this.rowBuffer.append("      <" + this.getXMLFlavourPrefix(this.XMLFlavour) + ":geometryProperty>" + newLine + 
-                                          "        " + gmlText + newLine + 
-                                          "      </" + this.getXMLFlavourPrefix(this.XMLFlavour) + ":geometryProperty>" + newLine);
                 } 
             } else { // Process Attribute column
                 // Passed in _object is already a string
                 //
                 try {
-                    String line2Write = 
-                         "      <" + this.getXMLFlavourPrefix(this.XMLFlavour) + ":" + _columnMetaData.getColumnName(1) + ">" +
-                                   _object.toString() +
-                               "</" + this.getXMLFlavourPrefix(this.XMLFlavour) + ":" + _columnMetaData.getColumnName(1) + ">" + newLine;
-                    this.rowBuffer.append(line2Write);
+                    String name = _columnMetaData.getColumnName(1);
+                    this.gmlFile.append("      <");
+                    this.gmlFile.append(this.flavourPrefix);
+                    this.gmlFile.append(name);
+                    this.gmlFile.append('>');
+                    this.gmlFile.append(_object.toString());
+                    this.gmlFile.append("</");
+                    this.gmlFile.append(this.flavourPrefix);
+                    this.gmlFile.append(name);
+                    this.gmlFile.append('>');
+                    this.gmlFile.append(newLine);
                 } catch (Exception e) {
                     LOGGER.warn("Conversion of " + _columnMetaData.getColumnName(1) + "/" + _columnMetaData.getColumnTypeName(1) + " failed at row " + (this.row+1) + " - " + e.getMessage());
                 }
@@ -455,7 +491,7 @@ implements IExporter
     {
         if ( ! Strings.isEmpty(_object) ) {
             try {
-                this.gmlFile.write(_object);
+                this.gmlFile.append(_object);
             } catch (IOException e) {
                 System.err.println("GMLExporter.printColumn() failed with " + e.getLocalizedMessage());
             }
@@ -465,21 +501,11 @@ implements IExporter
     @Override    
     public void endRow() throws IOException {        
         this.row++;
-        if ( this.hasAttributes() ) {
-            this.rowBuffer.append("    </" + this.getXMLFlavourPrefix(this.XMLFlavour) + ":" + this.baseName + ">" + newLine);
-        }
-        this.rowBuffer.append("  </gml:featureMember>" + newLine);
-        if ( this.row % this.getCommit() == 0 ) {
-            this.gmlFile.write(this.rowBuffer.toString());
-            this.rowBuffer = new StringBuffer(10000);
-        }
+        this.gmlFile.append(this.featureMemberEnd);
     }
 
     @Override    
     public void end() throws IOException {
-        if ( this.rowBuffer.length() > 0 ) {
-            this.gmlFile.write(this.rowBuffer.toString());
-        } 
         String srsNameEnv = "";
         if ( this.XMLFlavour.equals(Constants.XMLAttributeFlavour.FME) ) {
             srsNameEnv = "srsName=\"EPSG:" + this.prevSRID +  "\" ";
@@ -487,7 +513,7 @@ implements IExporter
             srsNameEnv = "srsName=\"urn:" + this.srsName + "\" ";
         }
         String srsDimEnv = this.XMLFlavour.equals(Constants.XMLAttributeFlavour.FME) ? "" : ("srsDimension=\"" + srsDimension + "\"");
-        gmlFile.write(
+        gmlFile.append(
               "<gml:boundedBy>" + newLine +                        
               "  <gml:Envelope " + srsNameEnv + srsDimEnv + ">" + newLine + 
               "    <gml:lowerCorner>" + this.fileExtent.getMinX() + " " + fileExtent.getMinY() + "</gml:lowerCorner>" + newLine + 
@@ -497,9 +523,9 @@ implements IExporter
         );
         // Should be one line </ogr/fme:
         if ( this.XMLFlavour.equals(Constants.XMLAttributeFlavour.OGR) ) {
-            this.gmlFile.write("</ogr:FeatureCollection>");
+            this.gmlFile.append("</ogr:FeatureCollection>");
         } else {
-            this.gmlFile.write("</gml:FeatureCollection>");
+            this.gmlFile.append("</gml:FeatureCollection>");
         }
         this.gmlFile.flush();
     }
@@ -0,0 +1,235 @@
+package com.spdba.dbutils.io.exp.gml;
+
+import com.spdba.dbutils.io.exp.BufferedTextWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.PrecisionModel;
+
+/**
+ * Streaming GML 3.1.1 / 3.2 geometry encoder.
+ * <p>
+ * Writes JTS geometries (eg from OraReader) as the same simple feature GML3 elements
+ * as oracle.spatial.util.GML3: Point/pos, LineString/posList, Polygon with
+ * exterior/interior LinearRings, MultiPoint, MultiCurve, MultiSurface and MultiGeometry.
+ * Ordinates are written from the CoordinateSequences straight into the writer's
+ * buffer with the PrecisionModel's decimal places; the rest of a document (feature
+ * elements, attributes) is written through the same writer with append/appendXMLText.
+ * <p>
+ * GML 3.2 requires a gml:id on every geometry: ids are generated from the id
+ * passed to writeGeometry (or a document wide counter).
+ */
+public class GMLGeometryWriter
+extends BufferedTextWriter
+{
+    public static final String GML_NAMESPACE   = "http://www.opengis.net/gml";
+    public static final String GML32_NAMESPACE = "http://www.opengis.net/gml/3.2";
+
+    private boolean     gml32 = false;
+    private long geometryIds = 0;
+    private String     rootId = null;
+    private int       childId = 0;
+    private int     zOrdinate = CoordinateSequence.Z;
+
+    public GMLGeometryWriter(Writer         _out,
+                             PrecisionModel _precisionModel)
+    {
+        this(_out,_precisionModel,DEFAULT_BUFFER_SIZE);
+    }
+
+    public GMLGeometryWriter(Writer         _out,
+                             PrecisionModel _precisionModel,
+                             int            _bufferSize)
+    {
+        super(_out,_precisionModel,_bufferSize);
+    }
+
+    /**
+     * @param _gml32 : boolean : Write GML 3.2 (gml:id on each geometry) rather than GML 3.1.1
+     */
+    public void setGML32(boolean _gml32) {
+        this.gml32 = _gml32;
+    }
+
+    public boolean isGML32() {
+        return this.gml32;
+    }
+
+    public String getNamespace() {
+        return this.gml32 ? GML32_NAMESPACE : GML_NAMESPACE;
+    }
+
+    /**
+     * Sets the ordinate of each coordinate written as the Z of an srsDimension 3 position.
+     * OraReader keeps a measured geometry's ordinates in SDO order, so the Z of a
+     * 4302 geometry (measure third) is ordinate 3.
+     * @param _zOrdinate : int : Ordinate index (CoordinateSequence.Z by default)
+     */
+    public void setZOrdinate(int _zOrdinate) {
+        this.zOrdinate = _zOrdinate;
+    }
+
+    /**
+     * Writes a geometry element.
+     * @param _geometry   : Geometry : Geometry to write
+     * @param _srsName    : String   : srsName attribute of the outermost element, or null
+     * @param _attributes : String   : Other attributes of the outermost element (eg xmlns:...="..."), or null
+     * @param _dimension  : int      : srsDimension: 2 or 3 (Z from the coordinate sequence)
+     * @param _gmlId      : String   : gml:id of the outermost element (GML 3.2), or null to generate one
+     */
+    public void writeGeometry(Geometry _geometry,
+                              String   _srsName,
+                              String   _attributes,
+                              int      _dimension,
+                              String   _gmlId)
+    throws IOException
+    {
+        if ( _geometry == null ) {
+            return;
+        }
+        if ( this.gml32 ) {
+            this.rootId  = _gmlId == null ? "geom" + (++this.geometryIds) : _gmlId;
+            this.childId = 0;
+        }
+        writeElement(_geometry,_srsName,_attributes,_dimension < 3 ? 2 : 3,true);
+    }
+
+    private void writeElement(Geometry _geometry,
+                              String   _srsName,
+                              String   _attributes,
+                              int      _dimension,
+                              boolean  _root)
+    throws IOException
+    {
+        String name = elementName(_geometry);
+        append("<gml:");
+        append(name);
+        if ( this.gml32 ) {
+            append(" gml:id=\"");
+            appendXMLText(this.rootId);
+            if ( ! _root ) {
+                append('.');
+                appendLong(++this.childId);
+            }
+            append('"');
+        }
+        if ( _srsName != null ) {
+            append(" srsName=\"");
+            appendXMLText(_srsName);
+            append('"');
+        }
+        if ( _attributes != null ) {
+            append(' ');
+            append(_attributes);
+        }
+        append('>');
+        if ( _geometry instanceof Point ) {
+            if ( ! _geometry.isEmpty() ) {
+                startPositions("pos",_dimension);
+                appendPositions(((Point)_geometry).getCoordinateSequence(),_dimension);
+                append("</gml:pos>");
+            }
+        } else if ( _geometry instanceof LineString ) {
+            appendPosList(((LineString)_geometry).getCoordinateSequence(),_dimension);
+        } else if ( _geometry instanceof Polygon ) {
+            Polygon polygon = (Polygon)_geometry;
+            if ( ! polygon.isEmpty() ) {
+                appendRing("exterior",polygon.getExteriorRing(),_dimension);
+                for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                    appendRing("interior",polygon.getInteriorRingN(i),_dimension);
+                }
+            }
+        } else {
+            String member = memberName(_geometry);
+            for (int i = 0; i < _geometry.getNumGeometries(); i++) {
+                append("<gml:");
+                append(member);
+                append('>');
+                writeElement(_geometry.getGeometryN(i),null,null,_dimension,false);
+                append("</gml:");
+                append(member);
+                append('>');
+            }
+        }
+        append("</gml:");
+        append(name);
+        append('>');
+    }
+
+    private static String elementName(Geometry _geometry) {
+        if ( _geometry instanceof Point )           return "Point";
+        if ( _geometry instanceof LineString )      return "LineString";  // Rings are only written inside Polygons
+        if ( _geometry instanceof Polygon )         return "Polygon";
+        if ( _geometry instanceof MultiPoint )      return "MultiPoint";
+        if ( _geometry instanceof MultiLineString ) return "MultiCurve";
+        if ( _geometry instanceof MultiPolygon )    return "MultiSurface";
+        return "MultiGeometry";
+    }
+
+    private static String memberName(Geometry _geometry) {
+        if ( _geometry instanceof MultiPoint )      return "pointMember";
+        if ( _geometry instanceof MultiLineString ) return "curveMember";
+        if ( _geometry instanceof MultiPolygon )    return "surfaceMember";
+        return "geometryMember";
+    }
+
+    private void appendRing(String     _boundary,
+                            LineString _ring,
+                            int        _dimension)
+    throws IOException
+    {
+        append("<gml:");
+        append(_boundary);
+        append("><gml:LinearRing>");
+        appendPosList(_ring.getCoordinateSequence(),_dimension);
+        append("</gml:LinearRing></gml:");
+        append(_boundary);
+        append('>');
+    }
+
+    private void appendPosList(CoordinateSequence _sequence,
+                               int                _dimension)
+    throws IOException
+    {
+        startPositions("posList",_dimension);
+        appendPositions(_sequence,_dimension);
+        append("</gml:posList>");
+    }
+
+    private void startPositions(String _element,
+                                int    _dimension)
+    throws IOException
+    {
+        append("<gml:");
+        append(_element);
+        append(_dimension == 3 ? " srsDimension=\"3\">" : " srsDimension=\"2\">");
+    }
+
+    private void appendPositions(CoordinateSequence _sequence,
+                                 int                _dimension)
+    throws IOException
+    {
+        boolean hasZ = _dimension == 3 && _sequence.getDimension() > this.zOrdinate;
+        for (int i = 0; i < _sequence.size(); i++) {
+            if ( i > 0 ) {
+                append(' ');
+            }
+            appendNumber(_sequence.getX(i));
+            append(' ');
+            appendNumber(_sequence.getY(i));
+            if ( _dimension == 3 ) {
+                append(' ');
+                appendNumber(hasZ ? _sequence.getOrdinate(i,this.zOrdinate) : Double.NaN);
+            }
+        }
+    }
+}
@@ -16,32 +16,31 @@ import com.spdba.dbutils.sql.SQLConversionTools;
 
 import org.geotools.data.shapefile.shp.ShapeType;
 
-import org.locationtech.jts.io.kml.KMLWriter;
-
 import com.spdba.dbutils.tools.FileUtils;
 import com.spdba.dbutils.tools.LOGGER;
 import com.spdba.dbutils.tools.Strings;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringWriter;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
-import java.text.SimpleDateFormat;
-
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
+import java.util.List;
 
 import javax.sql.RowSetMetaData;
 
-import oracle.spatial.util.GML3;
-
 import oracle.sql.STRUCT;
 
-import org.locationtech.jts.io.WKTWriter;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.io.oracle.OraReader;
 
 
 public class KMLExporter 
@@ -53,33 +52,71 @@ implements IExporter
     private Connection            conn = null;
     private ResultSet        resultSet = null;
 
-    private static String DATEFORMAT =  "yyyy/MM/dd hh:mm:ss a";
-    private static Hashtable     PlaceMarkAttributes = new Hashtable();
-    private final static String         KmlNameSpace = "\"http://www.opengis.net/kml/2.2\"";
-    private final static String            placeMark = "<Placemark id=\"PMID%d\">";
     private static String                    newLine = System.getProperty("line.separator");
     private static String            defaultSyleName = "SPDBADefaultSyles";
-    private static int                styleUrlColumn = Integer.MIN_VALUE;
+    private static final String        ALTITUDE_MODE = "clampToGround";
+
+    // Default Styling depending on geometryType
+    private static final String       DEFAULT_STYLES = 
+                "    <Style id=\"" + defaultSyleName + "\">" + newLine +
+                "      <IconStyle>" + newLine + 
+                "        <color>a1ff00ff</color>" + newLine + 
+                "        <scale>1.0</scale>" + newLine + 
+                "        <Icon>" + newLine + 
+                "          <href>http://maps.google.com/mapfiles/kml/pushpin/ylw-pushpin.png</href>" + newLine + 
+                "        </Icon>" + newLine + 
+                "      </IconStyle>" + newLine + 
+                "      <LabelStyle>" + newLine + 
+                "        <color>7fffaaff</color>" + newLine + 
+                "        <scale>1.0</scale>" + newLine + 
+                "      </LabelStyle>" + newLine +
+                "      <LineStyle>" + newLine + 
+                "        <color>ffffffff</color>" + newLine + 
+                "        <colorMode>random</colorMode>" + newLine + 
+                "        <width>2</width>" + newLine + 
+                "      </LineStyle>" + newLine +
+                "      <PolyStyle>" + newLine + 
+                "        <color>ffffffff</color>" + newLine + 
+                "        <colorMode>random</colorMode>" + newLine + 
+                "      </PolyStyle>" + newLine + 
+                "    </Style>" + newLine;
+
+    /** Placemark element for each column name (in the order KML requires), with the element's start tag */
+    private static final String[]  PLACEMARK_COLUMNS = { "name", "visibility", "open", "author",      "link",      "address", "phoneNumber", "Snippet",              "description", "styleUrl" };
+    private static final String[] PLACEMARK_ELEMENTS = { "name", "visibility", "open", "atom:author", "atom:link", "address", "phoneNumber", "Snippet maxLines=\"2\"", "description", "styleUrl" };
+    private static final int          STYLE_URL = PLACEMARK_COLUMNS.length - 1;
+
     private int                       geoColumnIndex = -1;
     private String                     geoColumnName = "";
-    private static String               extendedData = "";
-    private static String               geometryData = "";
-    private static int                           row = 0;
+    private int                                  row = 0;
     private int                            totalRows = 0;    
     private boolean                  needsIdentifier = false;
+    private Envelope                      fileExtent = null;
+
+    // Current placemark
+    private String                       placemarkId = null;
+    private String[]                 placemarkValues = new String[PLACEMARK_COLUMNS.length];
+    private List<String>           extendedDataNames = new ArrayList<String>();
+    private List<String>          extendedDataValues = new ArrayList<String>();
+    private Geometry                 placemarkGeometry = null;
+    private int                     placemarkZOrdinate = KMLStreamWriter.NO_Z;
 
-    private static SimpleDateFormat              sdf = null; 
     // Main KML Writer
-    private KMLWriter                      kmlWriter = null;
-    private static String                kmlFilename = "";
-    private static BufferedWriter            kmlFile = null;
-    private static StringBuffer            rowBuffer = null;
+    private KMLStreamWriter                kmlWriter = null;
+    private String                       kmlFilename = "";
+    private boolean                              kmz = false;
     private static int                        commit = 100;
+    private GeometryFactory              geomFactory = null;
+
+    // Super-overlay: placemarks are held and written as Region tiles in end()
+    private int                   tileFeatureCount = 0;
+    private KMLSuperOverlayWriter       superOverlay = null;
+    private StringWriter             placemarkBuffer = null;
+    private KMLStreamWriter          placemarkWriter = null;
+    private OraReader                  geomConverter = null;
  
-    protected static int         precisionModelScale = 3;
     private POLYGON_RING_ORIENTATION polyOrientation = POLYGON_RING_ORIENTATION.ORACLE;
     private int             decimalDigitsOfPrecision = 3;
-    private WKTWriter                      wktWriter = null;
     private GEO_RENDERER_FORMAT      geoRenderFormat = GEO_RENDERER_FORMAT.WKT;
     private GEO_RENDERER_FORMAT           kmlVersion = GEO_RENDERER_FORMAT.KML2;
     private Constants.XMLAttributeFlavour XMLFlavour = Constants.XMLAttributeFlavour.OGR;
@@ -98,16 +135,6 @@ implements IExporter
         polyOrientation = (_polygonOrientation==null) ? POLYGON_RING_ORIENTATION.INVERSE : _polygonOrientation;
         SDO.setPolygonRingOrientation(polyOrientation);
         decimalDigitsOfPrecision = _decimalDigitsOfPrecision;
-        GML3.setConnection(this.conn);
-        // Main KML Writer
-        kmlWriter = new KMLWriter();
-        kmlWriter.setAltitudeMode(KMLWriter.ALTITUDE_MODE_CLAMPTOGROUND);
-        kmlWriter.setPrecision(_decimalDigitsOfPrecision);
-        kmlWriter.setMaximumCoordinatesPerLine(10);
-        kmlWriter.setLinePrefix("      "); // 6 chars
-        wktWriter = new WKTWriter(); 
-        wktWriter.setMaxCoordinatesPerLine(10);
-        wktWriter.setFormatted(true);
     }
 
     @Override
@@ -152,7 +179,32 @@ implements IExporter
 
     @Override
     public String getFileExtension() {
-        return "kml";
+        return this.kmz ? "kmz" : "kml";
+    }
+
+    /**
+     * @param _kmz : boolean : Write a KMZ file (the KML document deflated into a zip as doc.kml)
+     */
+    public void setKMZ(boolean _kmz) {
+        this.kmz = _kmz;
+    }
+
+    public boolean isKMZ() {
+        return this.kmz;
+    }
+
+    /**
+     * Writes a super-overlay: the file holds the top level of a quadtree of
+     * Region tiles, linked by NetworkLinks, with simplified geometry above the leaf tiles.
+     * See KMLSuperOverlayWriter.
+     * @param _tileFeatureCount : int : Placemarks in a tile before it is split; 0 writes one document
+     */
+    public void setSuperOverlay(int _tileFeatureCount) {
+        this.tileFeatureCount = Math.max(0,_tileFeatureCount);
+    }
+
+    public int getSuperOverlay() {
+        return this.tileFeatureCount;
     }
 
     @Override
@@ -263,13 +315,12 @@ implements IExporter
 
     @Override
     public void setPrecisionScale(int _precisionScale) {
-        // TODO Implement this method
+        this.decimalDigitsOfPrecision = _precisionScale;
     }
 
     @Override
     public int getPrecisionScale() {
-        // TODO Implement this method
-        return 0;
+        return this.decimalDigitsOfPrecision;
     }
 
     @Override    
@@ -312,18 +363,19 @@ implements IExporter
 
     @Override
     public Envelope getExtent() {
-        // TODO Implement this method
-        return null;
+        return this.fileExtent;
     }
 
     @Override
     public void setExtent(Envelope _extent) {
-        // TODO Implement this method
+        this.fileExtent = _extent;
     }
 
     @Override
     public void updateExtent(Envelope _e) {
-        // TODO Implement this method
+        if ( _e != null ) {
+            this.fileExtent.setMaxMBR(_e);
+        }
     }
 
     @Override
@@ -363,76 +415,67 @@ implements IExporter
         this.needsIdentifier = _hasAttributes;                                         
     }
 
+    /**
+     * KML is always written as UTF-8, whatever the database character set (_encoding).
+     */
     @Override
     public void start(String _encoding) throws Exception 
     {
-        this.kmlFile    = new BufferedWriter(new FileWriter(this.kmlFilename));
-        this.row        = 0;
-        this.rowBuffer  = new StringBuffer(100000);
-        String baseName = Strings.isEmpty(kmlFilename)
-                          ? ""
-                          : "    <name>" + kmlFilename + "</name>" + newLine;            
-        this.rowBuffer.append("<?xml version='1.0'  encoding='" + _encoding + "' ?>" + newLine +
-                             "<kml xmlns= " + KmlNameSpace + ">" + newLine +
-                             "  <Document>" + newLine +
-                             baseName );
-            
-        // Default Styling depending on geometryType
-        String defaultStyles = 
-                "    <Style id=\"" + defaultSyleName + "\">" + newLine +
-                "      <IconStyle>" + newLine + 
-                "        <color>a1ff00ff</color>" + newLine + 
-                "        <scale>1.0</scale>" + newLine + 
-                "        <Icon>" + newLine + 
-                "          <href>http://maps.google.com/mapfiles/kml/pushpin/ylw-pushpin.png</href>" + newLine + 
-                "        </Icon>" + newLine + 
-                "      </IconStyle>" + newLine + 
-                "      <LabelStyle>" + newLine + 
-                "        <color>7fffaaff</color>" + newLine + 
-                "        <scale>1.0</scale>" + newLine + 
-                "      </LabelStyle>" + newLine +
-                "      <LineStyle>" + newLine + 
-                "        <color>ffffffff</color>" + newLine + 
-                "        <colorMode>random</colorMode>" + newLine + 
-                "        <width>2</width>" + newLine + 
-                "      </LineStyle>" + newLine +
-                "      <PolyStyle>" + newLine + 
-                "        <color>ffffffff</color>" + newLine + 
-                "        <colorMode>random</colorMode>" + newLine + 
-                "      </PolyStyle>" + newLine + 
-                "    </Style>" + newLine;
-            
-        rowBuffer.append(defaultStyles);    
+        if (Strings.isEmpty(kmlFilename) ) {
+            throw new IOException("Filename not set");
+        }
+        this.geomFactory   = new GeometryFactory(new PrecisionModel(Math.pow(10,decimalDigitsOfPrecision)));
+        this.geomConverter = new OraReader(this.geomFactory);
+        this.row           = 0;
+        this.fileExtent    = new Envelope(Constants.MAX_PRECISION);
+        if ( this.tileFeatureCount > 0 ) {
+            this.superOverlay = new KMLSuperOverlayWriter(this.kmlFilename,this.kmz,this.geomFactory.getPrecisionModel());
+            this.superOverlay.setMaxFeaturesPerTile(this.tileFeatureCount);
+            this.superOverlay.setAltitudeMode(ALTITUDE_MODE);
+            this.superOverlay.setDocumentHeader(DEFAULT_STYLES);
+            // Placemark elements are rendered to text held until the tiles are written
+            this.placemarkBuffer = new StringWriter();
+            this.placemarkWriter = new KMLStreamWriter(this.placemarkBuffer,this.geomFactory.getPrecisionModel());
+            return;
+        }
+        this.kmlWriter     = KMLStreamWriter.open(this.kmlFilename,this.kmz,this.geomFactory.getPrecisionModel());
+        this.kmlWriter.setAltitudeMode(ALTITUDE_MODE);
+        this.kmlWriter.startDocument(this.kmlFilename);
+        this.kmlWriter.append(DEFAULT_STYLES);    
     }
 
     @Override
     public void startRow() throws IOException {
-        PlaceMarkAttributes.clear();
-        geometryData = "";
-        extendedData = "";
+        this.placemarkId       = null;
+        this.placemarkGeometry = null;
+        Arrays.fill(this.placemarkValues,null);
+        this.extendedDataNames.clear();
+        this.extendedDataValues.clear();
     }
 
     @Override    
     public void printColumn(Object                _object, 
                             OraRowSetMetaDataImpl _columnMetaData) 
     {
-        String kmlText = "";
-        STRUCT stValue = null; 
         try {
-            
             boolean isGeometryColumn = ! Strings.isEmpty(_columnMetaData.getCatalogName(1));
             // Mappable column?
-            // System.out.println("CatalogName: ****"+_columnMetaData.getCatalogName(1)+"*** Type: " + _columnMetaData.getColumnTypeName(1) + " => isGeometryColumn=" + String.valueOf(isGeometryColumn) );
             if ( isGeometryColumn )   // Catalog name holds name of actual geometry column 
             {
                 if ( _columnMetaData.getColumnTypeName(1).equalsIgnoreCase(SDO.TAG_MDSYS_SDO_GEOMETRY) ) 
                 {
-                    kmlText = "";
-                    stValue = (STRUCT)_object; 
+                    STRUCT stValue = (STRUCT)_object; 
                     if ( stValue == null ) {
-                        LOGGER.warn("NULL Geometry: No featureMember element written for row " + (row+1));
-                       return;
-                    }                    
+                        LOGGER.warn("NULL Geometry: No geometry written for Placemark at row " + (row+1));
+                        return;
+                    }
+                    // KML cannot hold circular arcs or measures: geometries with arcs are not exported.
+                    if ( SDO.hasArc(stValue) ) {
+                        throw new SQLException("Cannot write (" + getGeoColumnName() + ") SDO_GEOMETRY object with CircularArcs to KML.");
+                    }
+                    // Written in endRow after the Placemark's other elements
+                    this.placemarkGeometry = this.geomConverter.read(stValue);
+                    this.placemarkZOrdinate = zOrdinate(stValue);
                 } 
             } else { // Process Attribute column
                 // Passed in _object is already a string
@@ -447,7 +490,7 @@ implements IExporter
                 }
             }
         } catch (Exception e) {
-            LOGGER.warn("GMLExporter.printColumn(object,ResultSetMetadata) = " + e.getMessage());
+            LOGGER.warn("KMLExporter.printColumn(object,ResultSetMetadata) = " + e.getMessage());
         }
     }
 
@@ -457,111 +500,105 @@ implements IExporter
                             String _columnTypeName) 
     throws SQLException 
     {
-        if ( (_columnTypeName.equalsIgnoreCase(SDO.TAG_MDSYS_SDO_GEOMETRY) || 
-              _columnTypeName.indexOf("MDSYS.ST_")>=0 
-             ) 
-             &&
-             _columnName.equalsIgnoreCase(geoColumnName) ) {
-                // System.out.println("    printColumn->"+_columnTypeName+"->" +_columnName);
-                geometryData += _object.replaceFirst(" </altitudeMode>",
-                                                     "</altitudeMode>");
-        } else { // Process Attribute column
-            // System.out.println("    printColumn->" + _columnName);
-            // Passed in object is already a string
-            //
-            String columnName = _columnName;
-                   if ( columnName.equalsIgnoreCase("id") )             { PlaceMarkAttributes.put( "id",           (String)_object);
-            } else if ( columnName.equalsIgnoreCase("name") )           { PlaceMarkAttributes.put( "name",         "      <name>" + ((String)_object) + "</name>"  );
-            } else if ( columnName.equalsIgnoreCase("visibility") )     { PlaceMarkAttributes.put( "visibility",   "      <visibility>" + ((String)_object) + "</visibility>" );
-            } else if ( columnName.equalsIgnoreCase("open") )           { PlaceMarkAttributes.put( "open",         "      <open>" + ((String)_object) + "</open>" );
-            } else if ( columnName.equalsIgnoreCase("author") )         { PlaceMarkAttributes.put( "author",       "      <atom:author>" + ((String)_object) + "</atom:author>" );
-            } else if ( columnName.equalsIgnoreCase("link") )           { PlaceMarkAttributes.put( "link",         "      <atom:link>" + ((String)_object) + "</atom:link>" );
-            } else if ( columnName.equalsIgnoreCase("address") )        { PlaceMarkAttributes.put( "address",      "      <address>" + ((String)_object) + "</address>" );
-            } else if ( columnName.equalsIgnoreCase("phoneNumber") )    { PlaceMarkAttributes.put( "phoneNumber",  "      <phoneNumber>" + ((String)_object) + "</phoneNumber>" );
-            } else if ( columnName.equalsIgnoreCase("Snippet") )        { PlaceMarkAttributes.put( "Snippet",      "      <Snippet maxLines=\"2\">" + ((String)_object) + "</phoneNumber>" );
-            } else if ( columnName.equalsIgnoreCase("description") )    { PlaceMarkAttributes.put( "description",  "      <description>" + ((String)_object) + "</description>"   );
-            } else if ( columnName.equalsIgnoreCase("styleUrl")    )    { PlaceMarkAttributes.put( "styleUrl",     "      <styleUrl>" + ((String)_object) + "</styleUrl>" );
-            } else {
-                    /**
-                    * <ExtendedData>             OR  <ExtendedData xmlns:prefix="camp">           OR <ExtendedData>
-                    *   <Data name="holeNumber">       <camp:number>14</camp:number>                   <SchemaData schemaUrl="#TrailHeadTypeId">
-                    *     <value>1</value>             <camp:parkingSpaces>2</camp:parkingSpaces>        <SimpleData name="TrailHeadName">Mount Everest</SimpleData>
-                    *   </Data>                        <camp:tentSites>4</camp:tentSites>                <SimpleData name="TrailLength">347.45</SimpleData>
-                    *   <Data name="holePar">                                                            <SimpleData name="ElevationGain">10000</SimpleData>
-                    *     <value>4</value>                                                             </SchemaData>
-                    *   </Data>
-                    * </ExtendedData>                </ExtendedData>                                 </ExtendedData> 
-                    *                                // Where camp will be the tablename/filename 
-                    */
-                    extendedData += "        <Data name=" + "\"" + columnName + "\">" + newLine +
-                                    "          <value>" +
-                    Strings.escapeHTML((String)_object) + "</value>" + newLine +
-                                    "        </Data>" + newLine;
+        if ( _object == null ) {
+            return;
+        }
+        if ( _columnName.equalsIgnoreCase("id") ) { 
+            this.placemarkId = _object;
+            return;
+        }
+        for (int i = 0; i < PLACEMARK_COLUMNS.length; i++) {
+            if ( _columnName.equalsIgnoreCase(PLACEMARK_COLUMNS[i]) ) {
+                this.placemarkValues[i] = _object;
+                return;
             }
         }
+        /**
+         * <ExtendedData>
+         *   <Data name="holeNumber">
+         *     <value>1</value>
+         *   </Data>
+         * </ExtendedData>
+         */
+        this.extendedDataNames.add(_columnName);
+        this.extendedDataValues.add(_object);
     }
 
     @Override
     public void endRow() throws IOException {
         row++;
 
-        String idValue = "";
-        if ( !Strings.isEmpty((String)PlaceMarkAttributes.get("id")) ) { 
-            idValue = (String)PlaceMarkAttributes.get("id");
-        } else {
-            idValue = String.valueOf(row);
+        String id = Strings.isEmpty(this.placemarkId) ? String.valueOf(row) : this.placemarkId;
+        if ( this.superOverlay != null ) {
+            writePlacemarkElements(this.placemarkWriter);
+            this.placemarkWriter.flush();
+            if ( ! this.superOverlay.add(id,this.placemarkBuffer.toString(),this.placemarkGeometry,this.placemarkZOrdinate) ) {
+                LOGGER.warn("Placemark at row " + row + " has no geometry and is not written to the super-overlay.");
+            }
+            this.placemarkBuffer.getBuffer().setLength(0);
+            return;
         }
-        rowBuffer.append("    " + placeMark.replaceFirst("%d",idValue) + newLine);
-        
-        if ( styleUrlColumn == Integer.MIN_VALUE) {
-            PlaceMarkAttributes.put( "styleUrl","      <styleUrl>#" + defaultSyleName + "</styleUrl>");
-        } 
-
-        // Print out attributes in correct order for placemark
-        
-        if ( !Strings.isEmpty((String)PlaceMarkAttributes.get("name"))        ) { rowBuffer.append(PlaceMarkAttributes.get("name"        ) + newLine); }
-        if ( !Strings.isEmpty((String)PlaceMarkAttributes.get("visibility"))  ) { rowBuffer.append(PlaceMarkAttributes.get("visibility"  ) + newLine); }
-        if ( !Strings.isEmpty((String)PlaceMarkAttributes.get("open"))        ) { rowBuffer.append(PlaceMarkAttributes.get("open"        ) + newLine); }
-        if ( !Strings.isEmpty((String)PlaceMarkAttributes.get("author"))      ) { rowBuffer.append(PlaceMarkAttributes.get("author"      ) + newLine); }
-        if ( !Strings.isEmpty((String)PlaceMarkAttributes.get("link"))        ) { rowBuffer.append(PlaceMarkAttributes.get("link"        ) + newLine); }
-        if ( !Strings.isEmpty((String)PlaceMarkAttributes.get("address"))     ) { rowBuffer.append(PlaceMarkAttributes.get("address"     ) + newLine); }
-        if ( !Strings.isEmpty((String)PlaceMarkAttributes.get("phoneNumber")) ) { rowBuffer.append(PlaceMarkAttributes.get("phoneNumber" ) + newLine); }
-        if ( !Strings.isEmpty((String)PlaceMarkAttributes.get("Snippet"))     ) { rowBuffer.append(PlaceMarkAttributes.get("Snippet"     ) + newLine); }
-        if ( !Strings.isEmpty((String)PlaceMarkAttributes.get("description")) ) { rowBuffer.append(PlaceMarkAttributes.get("description" ) + newLine); }
-        if ( !Strings.isEmpty((String)PlaceMarkAttributes.get("styleUrl"))    ) { rowBuffer.append(PlaceMarkAttributes.get("styleUrl"    ) + newLine); }
-        
-        if ( extendedData.length() > 0 ) {
-            rowBuffer.append("      <ExtendedData>" + newLine +
-                             extendedData + 
-                             "      </ExtendedData>" + newLine);
+        this.kmlWriter.startPlacemark(id);
+        writePlacemarkElements(this.kmlWriter);
+        this.kmlWriter.setZOrdinate(this.placemarkZOrdinate);
+        this.kmlWriter.writeGeometry(this.placemarkGeometry);
+        this.kmlWriter.endPlacemark();
+    }
+
+    /** Ordinate written as the altitude: KML has no measure, so an XYM geometry has none */
+    private static int zOrdinate(STRUCT _struct) {
+        int dimension = SDO.getDimension(_struct, 2),
+              measure = SDO.getMeasureDimension(_struct);
+        if ( (measure > 0 ? dimension - 1 : dimension) < 3 ) {
+            return KMLStreamWriter.NO_Z;
         }
+        return measure == 3 && dimension == 4 ? 3 : CoordinateSequence.Z;
+    }
 
-        rowBuffer.append(geometryData);
+    private void writePlacemarkElements(KMLStreamWriter _writer) 
+    throws IOException 
+    {
+        if ( Strings.isEmpty(this.placemarkValues[STYLE_URL]) ) {
+            this.placemarkValues[STYLE_URL] = "#" + defaultSyleName;
+        } 
 
-        rowBuffer.append("    </Placemark>" + newLine);
-        
-        if ( (row % getCommit()) == 0 ) {
-            kmlFile.write(rowBuffer.toString());
-            rowBuffer = new StringBuffer(100000);
-            kmlFile.flush();
+        // Print out attributes in correct order for placemark
+        for (int i = 0; i < PLACEMARK_COLUMNS.length; i++) {
+            if ( ! Strings.isEmpty(this.placemarkValues[i]) ) {
+                _writer.writeElement("      ",PLACEMARK_ELEMENTS[i],this.placemarkValues[i]);
+            }
         }
+        _writer.writeExtendedData(this.extendedDataNames,this.extendedDataValues);
     }
 
     @Override
     public void end() throws IOException {
-        if ( rowBuffer.length() > 0 ) {
-            kmlFile.write(rowBuffer.toString());
-        }  
-        kmlFile.write("  </Document>" + newLine + 
-                           "</kml>" + newLine);
-        kmlFile.flush();
+        if ( this.superOverlay != null ) {
+            org.locationtech.jts.geom.Envelope extent = null;
+            if ( this.fileExtent != null && this.fileExtent.isSet() ) {
+                extent = new org.locationtech.jts.geom.Envelope(this.fileExtent.getMinX(),this.fileExtent.getMaxX(),
+                                                                this.fileExtent.getMinY(),this.fileExtent.getMaxY());
+            }
+            int tiles = this.superOverlay.write(extent);
+            LOGGER.info("KMLExporter: " + this.superOverlay.getFeatureCount() + " placemarks written to " + tiles + " super-overlay documents.");
+            this.superOverlay = null;
+            return;
+        }
+        this.kmlWriter.endDocument();
     }
 
     @Override
     public void close() {
+        if ( this.superOverlay != null ) {
+            // Export failed before end(): drop the spilled placemarks
+            this.superOverlay.close();
+            this.superOverlay = null;
+        }
         try {
-            kmlFile.close();
-            kmlFile = null;
+            if ( this.kmlWriter != null ) {
+                this.kmlWriter.close();
+            }
+            this.kmlWriter = null;
         } catch (IOException ioe) {
           // Do nothing.
         }
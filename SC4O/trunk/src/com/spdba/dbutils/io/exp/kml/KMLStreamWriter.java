@@ -0,0 +1,380 @@
+package com.spdba.dbutils.io.exp.kml;
+
+import com.spdba.dbutils.io.exp.BufferedTextWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.PrecisionModel;
+
+/**
+ * Streaming KML 2.2 encoder.
+ * <p>
+ * Placemarks, their elements and geometries are written straight into the writer's
+ * buffer as each row is processed: nothing is built up per row or per commit interval.
+ * Use open() to write a .kml file, or a .kmz file whose doc.kml entry is deflated
+ * as it is written.
+ */
+public class KMLStreamWriter
+extends BufferedTextWriter
+{
+    public static final String KML_NAMESPACE  = "http://www.opengis.net/kml/2.2";
+    public static final String ATOM_NAMESPACE = "http://www.w3.org/2005/Atom";
+    /** Name of the KML document inside a KMZ */
+    public static final String KMZ_ENTRY_NAME = "doc.kml";
+    /** setZOrdinate value for coordinates written without an altitude */
+    public static final int NO_Z = -1;
+
+    private static final String GEOMETRY_INDENT = "      ";
+
+    private final String     newLine = System.getProperty("line.separator");
+    private String      altitudeMode = null;
+    private int            zOrdinate = CoordinateSequence.Z;
+
+    public KMLStreamWriter(Writer         _out,
+                           PrecisionModel _precisionModel)
+    {
+        super(_out,_precisionModel,DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Opens a KML writer on a file.
+     * @param _fileName       : String : File to write
+     * @param _kmz            : boolean : Write a KMZ (zip) file with the document deflated as entry doc.kml
+     * @param _precisionModel : PrecisionModel : Sets decimal places of ordinates
+     * @return KMLStreamWriter
+     * @throws IOException
+     */
+    public static KMLStreamWriter open(String         _fileName,
+                                       boolean        _kmz,
+                                       PrecisionModel _precisionModel)
+    throws IOException
+    {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(_fileName)),DEFAULT_BUFFER_SIZE);
+        if ( _kmz ) {
+            ZipOutputStream zip = new ZipOutputStream(out);
+            zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+            zip.putNextEntry(new ZipEntry(KMZ_ENTRY_NAME));
+            out = zip;
+        }
+        // KML is always UTF-8; closing the writer finishes the zip entry and file
+        return new KMLStreamWriter(new OutputStreamWriter(out,"UTF-8"),_precisionModel);
+    }
+
+    /**
+     * @param _altitudeMode : String : eg clampToGround, written in each geometry; null to omit
+     */
+    public void setAltitudeMode(String _altitudeMode) {
+        this.altitudeMode = _altitudeMode;
+    }
+
+    public String getAltitudeMode() {
+        return this.altitudeMode;
+    }
+
+    /**
+     * Sets the ordinate of each coordinate written as its altitude.
+     * KML has no measure: for a measured geometry the measure is never written,
+     * so use NO_Z for XYM (eg 3302) and 3 for XYMZ (4302) geometries.
+     * @param _zOrdinate : int : Ordinate index (CoordinateSequence.Z by default), or NO_Z
+     */
+    public void setZOrdinate(int _zOrdinate) {
+        this.zOrdinate = _zOrdinate;
+    }
+
+    /** =============== Document structure ================= **/
+
+    /**
+     * @param _name : String : Document name, or null
+     */
+    public void startDocument(String _name)
+    throws IOException
+    {
+        append("<?xml version='1.0' encoding='UTF-8' ?>");
+        append(newLine);
+        append("<kml xmlns=\"" + KML_NAMESPACE + "\" xmlns:atom=\"" + ATOM_NAMESPACE + "\">");
+        append(newLine);
+        append("  <Document>");
+        append(newLine);
+        if ( _name != null ) {
+            writeName(_name);
+        }
+    }
+
+    public void endDocument()
+    throws IOException
+    {
+        append("  </Document>");
+        append(newLine);
+        append("</kml>");
+        append(newLine);
+        flush();
+    }
+
+    /**
+     * @param _name : String : Folder name
+     */
+    public void startFolder(String _name)
+    throws IOException
+    {
+        append("    <Folder>");
+        append(newLine);
+        writeName(_name);
+    }
+
+    /** Writes a Document or Folder name, escaped */
+    private void writeName(String _name)
+    throws IOException
+    {
+        append("    <name>");
+        appendXMLText(_name);
+        append("</name>");
+        append(newLine);
+    }
+
+    public void endFolder()
+    throws IOException
+    {
+        append("    </Folder>");
+        append(newLine);
+    }
+
+    /**
+     * @param _id : String : Written as id="PMID_id"
+     */
+    public void startPlacemark(String _id)
+    throws IOException
+    {
+        append("    <Placemark id=\"PMID");
+        appendXMLText(_id);
+        append("\">");
+        append(newLine);
+    }
+
+    public void endPlacemark()
+    throws IOException
+    {
+        append("    </Placemark>");
+        append(newLine);
+    }
+
+    /**
+     * Writes an element whose value is already KML (eg description with CDATA).
+     * @param _indent  : String : Leading spaces
+     * @param _element : String : Element name, may have attributes (eg Snippet maxLines="2")
+     * @param _value   : String : Value written as is
+     */
+    public void writeElement(String _indent,
+                             String _element,
+                             String _value)
+    throws IOException
+    {
+        append(_indent);
+        append('<');
+        append(_element);
+        append('>');
+        append(_value);
+        append("</");
+        int space = _element.indexOf(' ');
+        append(space < 0 ? _element : _element.substring(0,space));
+        append('>');
+        append(newLine);
+    }
+
+    /**
+     * Writes ExtendedData/Data elements, escaping values.
+     * @param _names  : List : Data names
+     * @param _values : List : Data values (same size as names)
+     */
+    public void writeExtendedData(List<String> _names,
+                                  List<String> _values)
+    throws IOException
+    {
+        if ( _names.isEmpty() ) {
+            return;
+        }
+        append("      <ExtendedData>");
+        append(newLine);
+        for (int i = 0; i < _names.size(); i++) {
+            append("        <Data name=\"");
+            appendXMLText(_names.get(i));
+            append("\">");
+            append(newLine);
+            append("          <value>");
+            appendXMLText(_values.get(i));
+            append("</value>");
+            append(newLine);
+            append("        </Data>");
+            append(newLine);
+        }
+        append("      </ExtendedData>");
+        append(newLine);
+    }
+
+    /** =============== Regions ================= **/
+
+    /**
+     * Writes a Region: content is shown only when the box is in view
+     * and covers between _minLodPixels and _maxLodPixels on screen.
+     * @param _indent       : String : Leading spaces
+     * @param _box          : Envelope : Longitude/latitude extent
+     * @param _minLodPixels : int : Minimum size on screen (pixels)
+     * @param _maxLodPixels : int : Maximum size on screen (pixels), -1 for no maximum
+     */
+    public void writeRegion(String   _indent,
+                            Envelope _box,
+                            int      _minLodPixels,
+                            int      _maxLodPixels)
+    throws IOException
+    {
+        append(_indent);
+        append("<Region><LatLonAltBox><north>");
+        appendNumber(_box.getMaxY());
+        append("</north><south>");
+        appendNumber(_box.getMinY());
+        append("</south><east>");
+        appendNumber(_box.getMaxX());
+        append("</east><west>");
+        appendNumber(_box.getMinX());
+        append("</west></LatLonAltBox><Lod><minLodPixels>");
+        appendLong(_minLodPixels);
+        append("</minLodPixels><maxLodPixels>");
+        appendLong(_maxLodPixels);
+        append("</maxLodPixels></Lod></Region>");
+        append(newLine);
+    }
+
+    /**
+     * Writes a NetworkLink that loads _href when its Region becomes active.
+     * @param _name         : String : Link name
+     * @param _href         : String : Linked document, relative to this one
+     * @param _box          : Envelope : Longitude/latitude extent of linked document
+     * @param _minLodPixels : int : See writeRegion
+     * @param _maxLodPixels : int : See writeRegion
+     */
+    public void writeNetworkLink(String   _name,
+                                 String   _href,
+                                 Envelope _box,
+                                 int      _minLodPixels,
+                                 int      _maxLodPixels)
+    throws IOException
+    {
+        append("    <NetworkLink>");
+        append(newLine);
+        append("      <name>");
+        appendXMLText(_name);
+        append("</name>");
+        append(newLine);
+        writeRegion("      ",_box,_minLodPixels,_maxLodPixels);
+        append("      <Link><href>");
+        appendXMLText(_href);
+        append("</href><viewRefreshMode>onRegion</viewRefreshMode></Link>");
+        append(newLine);
+        append("    </NetworkLink>");
+        append(newLine);
+    }
+
+    /** =============== Geometry ================= **/
+
+    /**
+     * Writes a KML geometry on one line.
+     * Multi geometries and collections are written as MultiGeometry.
+     */
+    public void writeGeometry(Geometry _geometry)
+    throws IOException
+    {
+        if ( _geometry == null || _geometry.isEmpty() ) {
+            return;
+        }
+        append(GEOMETRY_INDENT);
+        writeElement(_geometry);
+        append(newLine);
+    }
+
+    private void writeElement(Geometry _geometry)
+    throws IOException
+    {
+        if ( _geometry instanceof Point ) {
+            append("<Point>");
+            appendAltitudeMode();
+            appendCoordinates(((Point)_geometry).getCoordinateSequence());
+            append("</Point>");
+        } else if ( _geometry instanceof LineString ) {
+            append("<LineString>");
+            appendAltitudeMode();
+            appendCoordinates(((LineString)_geometry).getCoordinateSequence());
+            append("</LineString>");
+        } else if ( _geometry instanceof Polygon ) {
+            Polygon polygon = (Polygon)_geometry;
+            append("<Polygon>");
+            appendAltitudeMode();
+            append("<outerBoundaryIs><LinearRing>");
+            appendCoordinates(polygon.getExteriorRing().getCoordinateSequence());
+            append("</LinearRing></outerBoundaryIs>");
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                append("<innerBoundaryIs><LinearRing>");
+                appendCoordinates(polygon.getInteriorRingN(i).getCoordinateSequence());
+                append("</LinearRing></innerBoundaryIs>");
+            }
+            append("</Polygon>");
+        } else {
+            append("<MultiGeometry>");
+            for (int i = 0; i < _geometry.getNumGeometries(); i++) {
+                if ( ! _geometry.getGeometryN(i).isEmpty() ) {
+                    writeElement(_geometry.getGeometryN(i));
+                }
+            }
+            append("</MultiGeometry>");
+        }
+    }
+
+    private void appendAltitudeMode()
+    throws IOException
+    {
+        if ( this.altitudeMode != null ) {
+            append("<altitudeMode>");
+            append(this.altitudeMode);
+            append("</altitudeMode>");
+        }
+    }
+
+    /** lon,lat[,alt] tuples separated by spaces; a measure is never written as the altitude */
+    private void appendCoordinates(CoordinateSequence _sequence)
+    throws IOException
+    {
+        boolean hasZ = this.zOrdinate != NO_Z && _sequence.getDimension() > this.zOrdinate;
+        append("<coordinates>");
+        for (int i = 0; i < _sequence.size(); i++) {
+            if ( i > 0 ) {
+                append(' ');
+            }
+            appendNumber(_sequence.getX(i));
+            append(',');
+            appendNumber(_sequence.getY(i));
+            if ( hasZ ) {
+                double z = _sequence.getOrdinate(i,this.zOrdinate);
+                if ( ! Double.isNaN(z) ) {
+                    append(',');
+                    appendNumber(z);
+                }
+            }
+        }
+        append("</coordinates>");
+    }
+}
@@ -0,0 +1,584 @@
+package com.spdba.dbutils.io.exp.kml;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.CoordinateSequenceFilter;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
+import org.locationtech.jts.io.WKBWriter;
+import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
+
+/**
+ * Writes placemarks as a KML super-overlay: a quadtree of Region based documents
+ * linked by NetworkLinks, so a viewer only loads the tiles in view, at a level of
+ * detail that suits the scale.
+ * <p>
+ * The root document (the file name given) covers the whole extent. A tile holding more
+ * than maxFeaturesPerTile placemarks is split into four child tiles, written to
+ * the directory &lt;file name&gt;_tiles as &lt;level&gt;_&lt;x&gt;_&lt;y&gt;.kml (.kmz).
+ * A placemark belongs to the child tile holding the centre of its envelope.
+ * <ul>
+ * <li>Leaf tiles hold their placemarks with their original geometry.</li>
+ * <li>Other tiles hold their largest maxFeaturesPerTile placemarks, simplified to the size of
+ *     one pixel of the tile (TopologyPreservingSimplifier). Lines and polygons
+ *     smaller than a pixel are left out. They are hidden once the tile covers more than
+ *     TILE_PIXELS on screen, when the child tiles are loaded in their place.</li>
+ * </ul>
+ * Tiles are written in parallel (threads do not run concurrently inside the Oracle JVM).
+ * Placemarks (their text and WKB geometry) are spilled to a temporary file beside the root
+ * document as they are added; only the centre, size and file offset of each is held in
+ * memory. write() reads them back tile by tile and deletes the file, as does close().
+ * Geometries must be longitude/latitude.
+ */
+public class KMLSuperOverlayWriter
+{
+    /** Size on screen (pixels) at which a tile is replaced by its children */
+    public static final int TILE_PIXELS = 256;
+    /** Size on screen (pixels) at which a child tile is loaded */
+    public static final int MIN_LOD_PIXELS = TILE_PIXELS / 2;
+
+    public static final int DEFAULT_MAX_FEATURES_PER_TILE = 1000;
+    public static final int DEFAULT_MAX_LEVELS = 16;
+
+    private final String           fileName;
+    private final boolean               kmz;
+    private final PrecisionModel precisionModel;
+    private String             tileDirectory = null;
+    private String                 tilesHref = null;
+    private String                 extension = null;
+
+    private int           maxFeaturesPerTile = DEFAULT_MAX_FEATURES_PER_TILE;
+    private int                    maxLevels = DEFAULT_MAX_LEVELS;
+    private int                  threadCount = Runtime.getRuntime().availableProcessors();
+    private String              altitudeMode = null;
+    private String            documentHeader = null;
+
+    private File                   spillFile = null;
+    private DataOutputStream           spill = null;
+    private long                 spillOffset = 0L;
+    private final WKBWriter        wkbWriter = new WKBWriter(3);
+    private final WKBWriter      wkbWriter2D = new WKBWriter(2);
+    private final Envelope    featureExtent = new Envelope();
+
+    // Feature i is at offsets[i] in the spill file; offsets[featureCount] is its end
+    private int                 featureCount = 0;
+    private long[]                   offsets = new long[1024];
+    private double[]                 centreX = new double[1024],
+                                     centreY = new double[1024],
+                                        size = new double[1024];
+    private boolean[]                  point = new boolean[1024];
+
+    /**
+     * @param _fileName       : String : Root document; tiles are written to the directory _fileName (less extension) + "_tiles"
+     * @param _kmz            : boolean : Write each document as a KMZ
+     * @param _precisionModel : PrecisionModel : Sets decimal places of ordinates
+     */
+    public KMLSuperOverlayWriter(String         _fileName,
+                                 boolean        _kmz,
+                                 PrecisionModel _precisionModel)
+    {
+        this.fileName       = _fileName;
+        this.kmz            = _kmz;
+        this.precisionModel = _precisionModel;
+        this.extension      = _kmz ? "kmz" : "kml";
+        File   file = new File(_fileName);
+        String name = file.getName();
+        int     dot = name.lastIndexOf('.');
+        this.tilesHref      = (dot > 0 ? name.substring(0,dot) : name) + "_tiles";
+        this.tileDirectory  = new File(file.getAbsoluteFile().getParentFile(),this.tilesHref).getPath();
+    }
+
+    /**
+     * @param _maxFeaturesPerTile : int : Placemarks in a tile before it is split (values < 1 set the default)
+     */
+    public void setMaxFeaturesPerTile(int _maxFeaturesPerTile) {
+        this.maxFeaturesPerTile = _maxFeaturesPerTile < 1 ? DEFAULT_MAX_FEATURES_PER_TILE : _maxFeaturesPerTile;
+    }
+
+    public int getMaxFeaturesPerTile() {
+        return this.maxFeaturesPerTile;
+    }
+
+    /**
+     * @param _maxLevels : int : Deepest level of tiles (root is level 0)
+     */
+    public void setMaxLevels(int _maxLevels) {
+        this.maxLevels = Math.max(0,_maxLevels);
+    }
+
+    public int getMaxLevels() {
+        return this.maxLevels;
+    }
+
+    /**
+     * @param _threadCount : int : Threads writing tiles (values < 1 write on the calling thread)
+     */
+    public void setThreadCount(int _threadCount) {
+        this.threadCount = _threadCount;
+    }
+
+    public int getThreadCount() {
+        return this.threadCount;
+    }
+
+    public void setAltitudeMode(String _altitudeMode) {
+        this.altitudeMode = _altitudeMode;
+    }
+
+    /**
+     * @param _documentHeader : String : KML (eg Styles) written at the start of every document
+     */
+    public void setDocumentHeader(String _documentHeader) {
+        this.documentHeader = _documentHeader;
+    }
+
+    public String getTileDirectory() {
+        return this.tileDirectory;
+    }
+
+    /**
+     * Adds a placemark, writing it to the spill file. Placemarks without a geometry are not written.
+     * @param _id        : String : Placemark id
+     * @param _placemark : String : KML of the placemark's elements other than its geometry
+     * @param _geometry  : Geometry : Longitude/latitude geometry
+     * @return boolean : false if the placemark has no geometry
+     * @throws IOException
+     */
+    public boolean add(String   _id,
+                       String   _placemark,
+                       Geometry _geometry)
+    throws IOException
+    {
+        return add(_id,_placemark,_geometry,CoordinateSequence.Z);
+    }
+
+    /**
+     * Adds a placemark whose altitude is not the third ordinate (see KMLStreamWriter.setZOrdinate).
+     * @param _zOrdinate : int : Ordinate written as the altitude, or KMLStreamWriter.NO_Z
+     */
+    public boolean add(String   _id,
+                       String   _placemark,
+                       Geometry _geometry,
+                       int      _zOrdinate)
+    throws IOException
+    {
+        if ( _geometry == null || _geometry.isEmpty() ) {
+            return false;
+        }
+        if ( this.spill == null ) {
+            File parent = new File(this.fileName).getAbsoluteFile().getParentFile();
+            this.spillFile = File.createTempFile(this.tilesHref,".tmp",parent);
+            this.spill     = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.spillFile),65536));
+        }
+        if ( this.featureCount + 1 >= this.offsets.length ) {
+            int capacity = this.offsets.length * 2;
+            this.offsets = Arrays.copyOf(this.offsets,capacity);
+            this.centreX = Arrays.copyOf(this.centreX,capacity);
+            this.centreY = Arrays.copyOf(this.centreY,capacity);
+            this.size    = Arrays.copyOf(this.size,capacity);
+            this.point   = Arrays.copyOf(this.point,capacity);
+        }
+        Envelope envelope = _geometry.getEnvelopeInternal();
+        this.featureExtent.expandToInclude(envelope);
+        int f = this.featureCount++;
+        this.offsets[f] = this.spillOffset;
+        this.centreX[f] = (envelope.getMinX() + envelope.getMaxX()) / 2.0;
+        this.centreY[f] = (envelope.getMinY() + envelope.getMaxY()) / 2.0;
+        this.size[f]    = Math.max(envelope.getWidth(),envelope.getHeight());
+        this.point[f]   = _geometry.getDimension() == 0;
+        this.spillOffset += writeBytes(_id == null ? null : _id.getBytes("UTF-8"))
+                          + writeBytes(_placemark == null ? null : _placemark.getBytes("UTF-8"))
+                          + writeBytes(toWKB(_geometry,_zOrdinate));
+        this.offsets[this.featureCount] = this.spillOffset;
+        return true;
+    }
+
+    /** The spilled WKB holds lon,lat[,alt]: a measure is dropped and a 4302's altitude moved to the third ordinate */
+    private byte[] toWKB(Geometry  _geometry,
+                         final int _zOrdinate)
+    {
+        if ( _zOrdinate == KMLStreamWriter.NO_Z ) {
+            return this.wkbWriter2D.write(_geometry);
+        }
+        if ( _zOrdinate == CoordinateSequence.Z ) {
+            return this.wkbWriter.write(_geometry);
+        }
+        Geometry geometry = _geometry.copy();
+        geometry.apply(new CoordinateSequenceFilter() {
+            public void filter(CoordinateSequence _sequence, int _i) {
+                _sequence.setOrdinate(_i,CoordinateSequence.Z,
+                                      _sequence.getDimension() > _zOrdinate ? _sequence.getOrdinate(_i,_zOrdinate) : Double.NaN);
+            }
+            public boolean isDone() {
+                return false;
+            }
+            public boolean isGeometryChanged() {
+                return false;
+            }
+        });
+        return this.wkbWriter.write(geometry);
+    }
+
+    /** Writes a length (-1 for null) then the bytes; returns the bytes written */
+    private int writeBytes(byte[] _bytes)
+    throws IOException
+    {
+        if ( _bytes == null ) {
+            this.spill.writeInt(-1);
+            return 4;
+        }
+        this.spill.writeInt(_bytes.length);
+        this.spill.write(_bytes);
+        return 4 + _bytes.length;
+    }
+
+    public int getFeatureCount() {
+        return this.featureCount;
+    }
+
+    /**
+     * Deletes the spill file, if write() has not.
+     */
+    public void close() {
+        try {
+            if ( this.spill != null ) {
+                this.spill.close();
+            }
+        } catch (IOException ioe) {
+          // Do nothing.
+        }
+        this.spill = null;
+        if ( this.spillFile != null ) {
+            this.spillFile.delete();
+            this.spillFile = null;
+        }
+    }
+
+    /**
+     * Tiles the placemarks and writes the documents.
+     * @param _extent : Envelope : Extent of the layer; if null or empty, that of the placemarks is used
+     * @return int : Number of documents written
+     * @throws IOException
+     */
+    public int write(Envelope _extent)
+    throws IOException
+    {
+        try {
+            if ( this.spill != null ) {
+                this.spill.close();
+            }
+            return writeTiles(_extent);
+        } finally {
+            close();
+        }
+    }
+
+    private int writeTiles(Envelope _extent)
+    throws IOException
+    {
+        Envelope extent = new Envelope();
+        if ( _extent != null ) {
+            extent.expandToInclude(_extent);
+        }
+        extent.expandToInclude(this.featureExtent);
+        int[] all = new int[this.featureCount];
+        for (int f = 0; f < all.length; f++) {
+            all[f] = f;
+        }
+        Tile root = new Tile(0,0,0,extent,all);
+        List<Tile> tiles = new ArrayList<Tile>();
+        split(root,tiles);
+        if ( tiles.size() > 1 && ! new File(this.tileDirectory).mkdirs() && ! new File(this.tileDirectory).isDirectory() ) {
+            throw new IOException("Cannot create tile directory " + this.tileDirectory);
+        }
+
+        if ( this.threadCount < 1 || tiles.size() == 1 ) {
+            for (Tile tile : tiles) {
+                writeTile(tile);
+            }
+            return tiles.size();
+        }
+        ExecutorService writers = Executors.newFixedThreadPool(Math.min(this.threadCount,tiles.size()));
+        try {
+            List<Future<Object>> written = new ArrayList<Future<Object>>(tiles.size());
+            for (final Tile tile : tiles) {
+                written.add(writers.submit(new Callable<Object>() {
+                    public Object call() throws IOException {
+                        writeTile(tile);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Object> future : written) {
+                future.get();
+            }
+        } catch (InterruptedException ie) {
+            throw new IOException("Interrupted writing tiles: " + ie.getMessage());
+        } catch (ExecutionException ee) {
+            if ( ee.getCause() instanceof IOException ) {
+                throw (IOException)ee.getCause();
+            }
+            throw new IOException("Error writing tiles: " + ee.getCause());
+        } finally {
+            writers.shutdownNow();
+        }
+        return tiles.size();
+    }
+
+    /** Builds the quadtree below _tile, adding each tile to _tiles */
+    private void split(Tile       _tile,
+                       List<Tile> _tiles)
+    {
+        _tiles.add(_tile);
+        if ( _tile.features.length <= this.maxFeaturesPerTile || _tile.level >= this.maxLevels ) {
+            return;
+        }
+        // Placemarks all at one point cannot be split
+        if ( _tile.box.getWidth() == 0.0 && _tile.box.getHeight() == 0.0 ) {
+            return;
+        }
+        double midX = _tile.box.centre().x,
+               midY = _tile.box.centre().y;
+        // Quadrant 0 is lower left, 1 lower right, 2 upper left, 3 upper right
+        byte[] quadrant = new byte[_tile.features.length];
+        int[]    counts = new int[4];
+        for (int i = 0; i < _tile.features.length; i++) {
+            int f = _tile.features[i];
+            quadrant[i] = (byte)((this.centreX[f] < midX ? 0 : 1) + (this.centreY[f] < midY ? 0 : 2));
+            counts[quadrant[i]]++;
+        }
+        int[][] quadrants = new int[4][];
+        for (int q = 0; q < 4; q++) {
+            quadrants[q] = new int[counts[q]];
+            counts[q] = 0;
+        }
+        // Features stay in spill file order
+        for (int i = 0; i < _tile.features.length; i++) {
+            quadrants[quadrant[i]][counts[quadrant[i]]++] = _tile.features[i];
+        }
+        _tile.children = new ArrayList<Tile>(4);
+        for (int q = 0; q < 4; q++) {
+            if ( quadrants[q].length == 0 ) {
+                continue;
+            }
+            int    right = q % 2,
+                   upper = q / 2;
+            Envelope box = new Envelope(right == 0 ? _tile.box.getMinX() : midX,
+                                        right == 0 ? midX : _tile.box.getMaxX(),
+                                        upper == 0 ? _tile.box.getMinY() : midY,
+                                        upper == 0 ? midY : _tile.box.getMaxY());
+            Tile child = new Tile(_tile.level + 1,
+                                  _tile.x * 2 + right,
+                                  _tile.y * 2 + upper,
+                                  box,
+                                  quadrants[q]);
+            _tile.children.add(child);
+            split(child,_tiles);
+        }
+    }
+
+    private void writeTile(Tile _tile)
+    throws IOException
+    {
+        boolean isRoot = _tile.level == 0;
+        boolean isLeaf = _tile.children == null;
+        String    file = isRoot ? this.fileName : new File(this.tileDirectory,_tile.name() + "." + this.extension).getPath();
+        KMLStreamWriter writer = KMLStreamWriter.open(file,this.kmz,this.precisionModel);
+        SpillReader     reader = new SpillReader();
+        try {
+            writer.setAltitudeMode(this.altitudeMode);
+            writer.startDocument(isRoot ? new File(this.fileName).getName() : _tile.name());
+            // The tile, including its links, is active once it covers MIN_LOD_PIXELS; the root always
+            if ( ! isRoot ) {
+                writer.writeRegion("    ",_tile.box,MIN_LOD_PIXELS,-1);
+            }
+            if ( this.documentHeader != null ) {
+                writer.append(this.documentHeader);
+            }
+            if ( isLeaf ) {
+                for (int f : _tile.features) {
+                    Feature feature = reader.read(f);
+                    writePlacemark(writer,feature,feature.geometry);
+                }
+            } else {
+                // Simplified placemarks are hidden when the children take over
+                writer.startFolder(_tile.name());
+                writer.writeRegion("    ",_tile.box,isRoot ? 0 : MIN_LOD_PIXELS,TILE_PIXELS);
+                writeSimplified(writer,reader,_tile);
+                writer.endFolder();
+                String path = isRoot ? this.tilesHref + "/" : "";
+                for (Tile child : _tile.children) {
+                    writer.writeNetworkLink(child.name(),
+                                            path + child.name() + "." + this.extension,
+                                            child.box,
+                                            MIN_LOD_PIXELS,
+                                            -1);
+                }
+            }
+            writer.endDocument();
+        } finally {
+            reader.close();
+            writer.close();
+        }
+    }
+
+    /** Writes the tile's largest placemarks simplified to one pixel */
+    private void writeSimplified(KMLStreamWriter _writer,
+                                 SpillReader     _reader,
+                                 Tile            _tile)
+    throws IOException
+    {
+        double tolerance = Math.max(_tile.box.getWidth(),_tile.box.getHeight()) / TILE_PIXELS;
+        // The largest maxFeaturesPerTile visible placemarks; the smallest kept is at the head
+        PriorityQueue<Integer> largest = new PriorityQueue<Integer>(this.maxFeaturesPerTile + 1,new Comparator<Integer>() {
+            public int compare(Integer _f1, Integer _f2) {
+                return Double.compare(size[_f1.intValue()],size[_f2.intValue()]);
+            }
+        });
+        for (int f : _tile.features) {
+            if ( this.point[f] || this.size[f] >= tolerance ) {
+                largest.add(Integer.valueOf(f));
+                if ( largest.size() > this.maxFeaturesPerTile ) {
+                    largest.poll();
+                }
+            }
+        }
+        int[] visible = new int[largest.size()];
+        for (int i = visible.length - 1; i >= 0; i--) {
+            visible[i] = largest.poll().intValue();
+        }
+        for (int f : visible) {
+            Feature  feature = _reader.read(f);
+            Geometry simplified = feature.geometry;
+            if ( simplified.getDimension() > 0 ) {
+                simplified = TopologyPreservingSimplifier.simplify(simplified,tolerance);
+            }
+            if ( ! simplified.isEmpty() ) {
+                writePlacemark(_writer,feature,simplified);
+            }
+        }
+    }
+
+    private static void writePlacemark(KMLStreamWriter _writer,
+                                       Feature         _feature,
+                                       Geometry        _geometry)
+    throws IOException
+    {
+        _writer.startPlacemark(_feature.id);
+        if ( _feature.placemark != null ) {
+            _writer.append(_feature.placemark);
+        }
+        _writer.writeGeometry(_geometry);
+        _writer.endPlacemark();
+    }
+
+    private static class Feature
+    {
+        final String         id;
+        final String  placemark;
+        final Geometry geometry;
+
+        Feature(String _id, String _placemark, Geometry _geometry) {
+            this.id        = _id;
+            this.placemark = _placemark;
+            this.geometry  = _geometry;
+        }
+    }
+
+    /** Reads placemarks back from the spill file; one per tile being written */
+    private class SpillReader
+    {
+        private RandomAccessFile       file = null;
+        private final WKBReader   wkbReader = new WKBReader(new GeometryFactory(precisionModel));
+        private byte[]               record = new byte[4096];
+
+        Feature read(int _feature)
+        throws IOException
+        {
+            if ( this.file == null ) {
+                this.file = new RandomAccessFile(spillFile,"r");
+            }
+            int length = (int)(offsets[_feature + 1] - offsets[_feature]);
+            if ( length > this.record.length ) {
+                this.record = new byte[Math.max(length,this.record.length * 2)];
+            }
+            this.file.seek(offsets[_feature]);
+            this.file.readFully(this.record,0,length);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(this.record,0,length));
+            String        id = readString(in),
+                   placemark = readString(in);
+            byte[]       wkb = new byte[in.readInt()];
+            in.readFully(wkb);
+            try {
+                return new Feature(id,placemark,this.wkbReader.read(wkb));
+            } catch (ParseException pe) {
+                throw new IOException("Placemark " + id + " not read back from " + spillFile + ": " + pe.getMessage());
+            }
+        }
+
+        private String readString(DataInputStream _in)
+        throws IOException
+        {
+            int length = _in.readInt();
+            if ( length < 0 ) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            _in.readFully(bytes);
+            return new String(bytes,"UTF-8");
+        }
+
+        void close()
+        throws IOException
+        {
+            if ( this.file != null ) {
+                this.file.close();
+            }
+        }
+    }
+
+    private static class Tile
+    {
+        final int              level,
+                                   x,
+                                   y;
+        final Envelope           box;
+        final int[]         features;
+        List<Tile>          children = null;
+
+        Tile(int _level, int _x, int _y, Envelope _box, int[] _features) {
+            this.level    = _level;
+            this.x        = _x;
+            this.y        = _y;
+            this.box      = _box;
+            this.features = _features;
+        }
+
+        String name() {
+            return this.level + "_" + this.x + "_" + this.y;
+        }
+    }
+}
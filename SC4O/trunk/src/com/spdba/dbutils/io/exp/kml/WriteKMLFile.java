@@ -13,7 +13,6 @@ import com.spdba.dbutils.sql.SQLConversionTools;
 import com.spdba.dbutils.tools.FileUtils;
 import com.spdba.dbutils.tools.LOGGER;
 import com.spdba.dbutils.tools.Strings;
-import com.spdba.dbutils.tools.Tools;
 
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
@@ -22,12 +21,7 @@ import org.locationtech.jts.io.WKTWriter;
 import org.locationtech.jts.io.kml.KMLWriter;
 import org.locationtech.jts.io.oracle.OraReader;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -72,8 +66,6 @@ public class WriteKMLFile
     private static int                           row = 0;
     private static String                kmlFilename = "";
     private static SimpleDateFormat              sdf = null; 
-    private static Writer                    kmlFile = null;
-    private static StringBuffer            rowBuffer = null;
     private static int                        commit = 100;
     protected static int         precisionModelScale = 3;
 
@@ -110,6 +102,60 @@ public class WriteKMLFile
             IllegalArgumentException,
             IOException 
     {
+        write(_resultSet,_outputDirectory,_fileName,_geomColumnName,_sDateFormat,_geomRenderFormat,_decimalDigitsOfPrecision,_commit,0);
+    }
+
+    /**
+     * Writes the given result as a KML file, or as a KMZ file when _kmz is 1.
+     * <p>
+     * A KMZ is a zip holding the KML document as doc.kml: it is deflated as it is
+     * written, so it needs no more memory or temporary space than a KML file.
+     *
+     * @param _kmz 1 to write a KMZ (.kmz) file, 0 for a KML (.kml) file.
+     * @see #write(ResultSet,String,String,String,String,String,int,int)
+     */
+    public static void write(java.sql.ResultSet _resultSet, 
+                             java.lang.String   _outputDirectory, 
+                             java.lang.String   _fileName, 
+                             java.lang.String   _geomColumnName,
+                             java.lang.String   _sDateFormat,
+                             java.lang.String   _geomRenderFormat,
+                             int                _decimalDigitsOfPrecision,
+                             int                _commit,
+                             int                _kmz)
+    throws  SQLException, 
+            IllegalArgumentException,
+            IOException 
+    {
+        write(_resultSet,_outputDirectory,_fileName,_geomColumnName,_sDateFormat,_geomRenderFormat,_decimalDigitsOfPrecision,_commit,_kmz,0);
+    }
+
+    /**
+     * Writes the given result as a KML super-overlay when _tileFeatures is > 0.
+     * <p>
+     * The file holds the top level of a quadtree of Region tiles linked by NetworkLinks;
+     * the tiles are written to the directory &lt;_fileName&gt;_tiles. A tile holding more than
+     * _tileFeatures placemarks is split into four, and tiles above the leaves hold simplified
+     * geometry, so a viewer loads only the tiles in view at a suitable level of detail.
+     * Geometries must be longitude/latitude (eg SRID 4326).
+     *
+     * @param _tileFeatures Placemarks in a tile before it is split; 0 writes a single document.
+     * @see #write(ResultSet,String,String,String,String,String,int,int,int)
+     */
+    public static void write(java.sql.ResultSet _resultSet, 
+                             java.lang.String   _outputDirectory, 
+                             java.lang.String   _fileName, 
+                             java.lang.String   _geomColumnName,
+                             java.lang.String   _sDateFormat,
+                             java.lang.String   _geomRenderFormat,
+                             int                _decimalDigitsOfPrecision,
+                             int                _commit,
+                             int                _kmz,
+                             int                _tileFeatures)
+    throws  SQLException, 
+            IllegalArgumentException,
+            IOException 
+    {
 /* Add
 _KMLVersion
 _attributeFlavour,
@@ -134,18 +180,9 @@ _polygonOrientation.toUpperCase()
         
         sdf = new SimpleDateFormat(DATEFORMAT);
         
-        kmlFilename = FileUtils.FileNameBuilder(_outputDirectory,
-                                                _fileName,
-                                                "kml");
-        kmlFile = new BufferedWriter(
-                      new OutputStreamWriter(
-                          new FileOutputStream(
-                              new File(kmlFilename)
-                          ),
-                       "UTF-8") // GetDBCharSet
-                  );
-        double precision    = Tools.getPrecisionScale(_decimalDigitsOfPrecision);        
-        String fullFileName = FileUtils.FileNameBuilder(_outputDirectory,_fileName,"kml");
+        boolean kmz         = _kmz == 1;
+        String fullFileName = FileUtils.FileNameBuilder(_outputDirectory,_fileName,kmz ? "kmz" : "kml");
+        kmlFilename         = fullFileName;
 
         DBConnection.setConnection((OracleConnection)_resultSet.getStatement().getConnection());        
         OracleResultSet oResultSet = (OracleResultSet)_resultSet;
@@ -173,6 +210,8 @@ String _attributeGroupName = null;
             kmlExporter.setPrecisionScale(_decimalDigitsOfPrecision );
         }
         kmlExporter.setKMLVersion("KML2"); // _KMLVersion);
+        kmlExporter.setKMZ(kmz);
+        kmlExporter.setSuperOverlay(_tileFeatures);
         kmlExporter.setCommit(_commit <= 0 ? 100 : _commit);
         boolean hasAttributes = SQLConversionTools.hasAttributeColumns(oResultSet,geomColumnIndex);
         kmlExporter.setGenerateIdentifier(! hasAttributes );
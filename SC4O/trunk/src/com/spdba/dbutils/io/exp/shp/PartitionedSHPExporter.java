@@ -0,0 +1,160 @@
+package com.spdba.dbutils.io.exp.shp;
+
+import com.spdba.dbutils.io.GeometryProperties;
+import com.spdba.dbutils.spatial.Envelope;
+import com.spdba.dbutils.spatial.SDO.POLYGON_RING_ORIENTATION;
+import com.spdba.dbutils.sql.OraRowSetMetaDataImpl;
+
+import java.io.IOException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import java.util.LinkedHashMap;
+
+import javax.sql.RowSetMetaData;
+
+/**
+ * Writes one scan of a result set as several shapefiles (parts), routing each row to
+ * one part's SHPExporter.
+ * <p>
+ * A row goes to the part given by the hash of its partition key column's value, or,
+ * without a key, to the parts in turn. ExportTask drives this exporter as it does a
+ * single SHPExporter: the row is routed in startRow() and its columns, extent and
+ * endRow() go to that part. Each part is configured as this exporter is (geometry
+ * column, shape type, commit, part size ...) and splits itself further if it reaches
+ * its part size.
+ */
+class PartitionedSHPExporter
+extends SHPExporter
+{
+    private final SHPExporter[]    parts;
+    private final String    partitionKey;
+    private SHPExporter          current = null;
+    private int               rowsRouted = 0;
+
+    /**
+     * @param _conn                     : Connection : Connection the result set is read through
+     * @param _fileName                 : String : Shapefile the parts are named after
+     * @param _polygonOrientation       : POLYGON_RING_ORIENTATION : Orientation of polygon shells and holes
+     * @param _decimalDigitsOfPrecision : int : Round ordinates to decimal places eg 3 = mm
+     * @param _parts                    : SHPExporter[] : Exporter of each part, all reading the same result set
+     * @param _partitionKey             : String : Column of the result set to route rows by; null routes rows to the parts in turn
+     */
+    PartitionedSHPExporter(Connection               _conn,
+                           String                   _fileName,
+                           POLYGON_RING_ORIENTATION _polygonOrientation,
+                           int                      _decimalDigitsOfPrecision,
+                           SHPExporter[]            _parts,
+                           String                   _partitionKey)
+    {
+        super(_conn,_fileName,0,_polygonOrientation,_decimalDigitsOfPrecision);
+        this.parts        = _parts;
+        this.partitionKey = _partitionKey;
+    }
+
+    @Override
+    public void setExportMetadata(LinkedHashMap<Integer, RowSetMetaData> _exportMetadata) {
+        super.setExportMetadata(_exportMetadata);
+        for (SHPExporter part : this.parts) {
+            part.setExportMetadata(_exportMetadata);
+        }
+    }
+
+    @Override
+    public void setGeometryProperties(GeometryProperties _geometryProperties) {
+        super.setGeometryProperties(_geometryProperties);
+        for (SHPExporter part : this.parts) {
+            part.setGeometryProperties(_geometryProperties);
+        }
+    }
+
+    @Override
+    public void start(String _encoding)
+    throws Exception
+    {
+        this.rowsRouted = 0;
+        for (SHPExporter part : this.parts) {
+            part.start(_encoding);
+        }
+    }
+
+    /**
+     * Chooses the part the result set's current row is written to.
+     */
+    @Override
+    public void startRow()
+    throws IOException
+    {
+        int part = this.rowsRouted % this.parts.length;
+        if ( this.partitionKey != null ) {
+            try {
+                Object key = this.getResultSet().getObject(this.partitionKey);
+                part = key == null ? 0 : (key.hashCode() & Integer.MAX_VALUE) % this.parts.length;
+            } catch (SQLException sqle) {
+                throw new IOException("PartitionedSHPExporter: Error reading partition key " + this.partitionKey + " (" + sqle.getMessage() + ")");
+            }
+        }
+        this.rowsRouted++;
+        this.current = this.parts[part];
+        this.current.startRow();
+    }
+
+    @Override
+    public void printColumn(Object                _object,
+                            OraRowSetMetaDataImpl _columnMetaData)
+    throws SQLException
+    {
+        this.current.printColumn(_object,_columnMetaData);
+    }
+
+    @Override
+    public void printColumn(String _object,
+                            String _columnName,
+                            String _columnTypeName)
+    throws SQLException
+    {
+        this.current.printColumn(_object,_columnName,_columnTypeName);
+    }
+
+    @Override
+    public void updateExtent(Envelope _e) {
+        super.updateExtent(_e);
+        this.current.updateExtent(_e);
+    }
+
+    @Override
+    public void endRow()
+    throws IOException
+    {
+        this.current.endRow();
+    }
+
+    @Override
+    public void end()
+    throws IOException
+    {
+        for (SHPExporter part : this.parts) {
+            part.end();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (SHPExporter part : this.parts) {
+            part.close();
+        }
+    }
+
+    /**
+     * @return int : Rows written to all parts
+     */
+    @Override
+    public int getRowCount() {
+        int rows = 0;
+        for (SHPExporter part : this.parts) {
+            rows += part.getRowCount();
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,341 @@
+package com.spdba.dbutils.io.exp.shp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Writes a quadtree spatial index (.qix) for a shapefile, in the format created by
+ * MapServer's shptree and read by MapServer, GDAL/OGR and GeoTools.
+ * <p>
+ * Shape envelopes are collected as the shapefile is written (add) and the tree is
+ * built and written when the shapefile's extent is known (write). The tree is built
+ * as shptree builds it: each node is split into four overlapping quadrants (each
+ * half is 55% of the node's longer side) and a shape is stored in the deepest node
+ * whose rectangle contains its envelope. As GeoTools' indexer does, the default depth
+ * gives leaves of about LEAF_SHAPES shapes, empty nodes are removed, nodes holding
+ * no shapes and one child are replaced by the child, and node rectangles are shrunk
+ * to their contents, so the index is smaller and searches visit fewer nodes.
+ * <p>
+ * File layout (little endian):
+ * <pre>
+ *   Header : "SQT", byte order (1 = LSB), version (1), 3 reserved bytes,
+ *            int number of shapes, int maximum depth
+ *   Node   : int bytes of all descendant nodes, double minx, miny, maxx, maxy,
+ *            int number of shapes, int shape ids[] (0 based record numbers),
+ *            int number of child nodes; followed by the child nodes
+ * </pre>
+ */
+public class QIXWriter
+{
+    private static final double SPLIT_RATIO = 0.55;
+    /** Shapes per leaf used to compute the default depth */
+    public static final int     LEAF_SHAPES = 8;
+    /** Node size less its shape ids: offset, 4 doubles, shape count, child count */
+    private static final int    NODE_LENGTH = 4 + 32 + 4 + 4;
+    private static final int    BUFFER_SIZE = 64 * 1024;
+
+    private int       maxDepth = 0;     // 0 = computed from number of shapes
+    private int[]     shapeIds = new int[1024];
+    private double[]    bounds = new double[4 * 1024];
+    private int          count = 0;
+
+    public QIXWriter() {
+        super();
+    }
+
+    /**
+     * @param _maxDepth : int : Depth of tree; 0 computes it from the number of shapes
+     */
+    public void setMaxDepth(int _maxDepth) {
+        this.maxDepth = Math.max(0,_maxDepth);
+    }
+
+    public int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    public int getShapeCount() {
+        return this.count;
+    }
+
+    /**
+     * Records a shape's envelope. Null shapes are not indexed.
+     * @param _shapeId  : int : 0 based record number of the shape in the .shp
+     * @param _envelope : Envelope : Shape's envelope
+     */
+    public void add(int      _shapeId,
+                    Envelope _envelope)
+    {
+        if ( _envelope == null || _envelope.isNull() ) {
+            return;
+        }
+        if ( this.count == this.shapeIds.length ) {
+            int[] ids = new int[this.count * 2];
+            System.arraycopy(this.shapeIds,0,ids,0,this.count);
+            this.shapeIds = ids;
+            double[] rects = new double[this.count * 2 * 4];
+            System.arraycopy(this.bounds,0,rects,0,this.count * 4);
+            this.bounds = rects;
+        }
+        int i = this.count * 4;
+        this.bounds[i]   = _envelope.getMinX();
+        this.bounds[i+1] = _envelope.getMinY();
+        this.bounds[i+2] = _envelope.getMaxX();
+        this.bounds[i+3] = _envelope.getMaxY();
+        this.shapeIds[this.count++] = _shapeId;
+    }
+
+    /**
+     * Builds the tree and writes the index.
+     * @param _qixFile   : File : Index file (shapefile name with extension .qix)
+     * @param _extent    : Envelope : Extent of the shapefile (header bounds)
+     * @param _numShapes : int : Number of records in the shapefile, including null shapes
+     * @throws IOException
+     */
+    public void write(File     _qixFile,
+                      Envelope _extent,
+                      int      _numShapes)
+    throws IOException
+    {
+        Envelope extent = new Envelope(_extent == null ? new Envelope() : _extent);
+        for (int i = 0; i < this.count; i++) {
+            extent.expandToInclude(this.bounds[i*4],  this.bounds[i*4+1]);
+            extent.expandToInclude(this.bounds[i*4+2],this.bounds[i*4+3]);
+        }
+        if ( extent.isNull() ) {
+            extent.init(0.0,0.0,0.0,0.0);
+        }
+        int depth = this.maxDepth;
+        if ( depth == 0 ) {
+            long leaves = 1;
+            depth = 1;
+            while ( leaves * LEAF_SHAPES < this.count ) {
+                depth++;
+                leaves *= 4;
+            }
+        }
+        Node root = new Node(extent.getMinX(),extent.getMinY(),extent.getMaxX(),extent.getMaxY());
+        for (int i = 0; i < this.count; i++) {
+            root.add(i,
+                     this.bounds[i*4],this.bounds[i*4+1],this.bounds[i*4+2],this.bounds[i*4+3],
+                     depth);
+        }
+        // The root is kept, even if empty or with one child
+        for (int i = 0; root.children != null && i < root.children.length; i++) {
+            root.children[i] = root.children[i].trim(this.bounds);
+        }
+        root.sizeTree();
+
+        FileOutputStream output  = new FileOutputStream(_qixFile);
+        FileChannel      channel = output.getChannel();
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.put((byte)'S').put((byte)'Q').put((byte)'T');
+            buffer.put((byte)1);  // LSB order
+            buffer.put((byte)1);  // Version
+            buffer.put((byte)0).put((byte)0).put((byte)0);
+            buffer.putInt(_numShapes);
+            buffer.putInt(depth);
+            buffer = writeNode(root,this.shapeIds,buffer,channel);
+            drain(buffer,channel);
+        } finally {
+            channel.close();
+            output.close();
+        }
+    }
+
+    /** Writes a node and then its children */
+    private static ByteBuffer writeNode(Node        _node,
+                                        int[]       _shapeIds,
+                                        ByteBuffer  _buffer,
+                                        FileChannel _channel)
+    throws IOException
+    {
+        ByteBuffer buffer = _buffer;
+        int length = NODE_LENGTH + 4 * _node.count;
+        if ( buffer.remaining() < length ) {
+            drain(buffer,_channel);
+            if ( buffer.capacity() < length ) {
+                buffer = ByteBuffer.allocate(length);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        buffer.putInt(_node.subtreeBytes);
+        buffer.putDouble(_node.minX).putDouble(_node.minY).putDouble(_node.maxX).putDouble(_node.maxY);
+        buffer.putInt(_node.count);
+        for (int i = 0; i < _node.count; i++) {
+            buffer.putInt(_shapeIds[_node.ids[i]]);
+        }
+        buffer.putInt(_node.childCount());
+        if ( _node.children != null ) {
+            for (Node child : _node.children) {
+                if ( child != null ) {
+                    buffer = writeNode(child,_shapeIds,buffer,_channel);
+                }
+            }
+        }
+        return buffer;
+    }
+
+    private static void drain(ByteBuffer  _buffer,
+                              FileChannel _channel)
+    throws IOException
+    {
+        _buffer.flip();
+        while (_buffer.remaining() > 0) {
+            _channel.write(_buffer);
+        }
+        _buffer.clear();
+    }
+
+    private static class Node
+    {
+        double minX, minY, maxX, maxY;
+        int[]           ids = null;   // Positions of shapes in bounds
+        int           count = 0;
+        Node[]     children = null;
+        int    subtreeBytes = 0;
+
+        Node(double _minX, double _minY, double _maxX, double _maxY) {
+            this.minX = _minX;
+            this.minY = _minY;
+            this.maxX = _maxX;
+            this.maxY = _maxY;
+        }
+
+        boolean contains(double _minX, double _minY, double _maxX, double _maxY) {
+            return _minX >= this.minX && _maxX <= this.maxX && _minY >= this.minY && _maxY <= this.maxY;
+        }
+
+        /** As shptree: the shape goes to the first quadrant containing it, else stays here */
+        void add(int _position, double _minX, double _minY, double _maxX, double _maxY, int _depth) {
+            if ( _depth > 1 ) {
+                if ( this.children == null ) {
+                    Node[] quadrants = split();
+                    for (Node quadrant : quadrants) {
+                        if ( quadrant.contains(_minX,_minY,_maxX,_maxY) ) {
+                            this.children = quadrants;
+                            break;
+                        }
+                    }
+                }
+                if ( this.children != null ) {
+                    for (Node child : this.children) {
+                        if ( child.contains(_minX,_minY,_maxX,_maxY) ) {
+                            child.add(_position,_minX,_minY,_maxX,_maxY,_depth - 1);
+                            return;
+                        }
+                    }
+                }
+            }
+            if ( this.ids == null ) {
+                this.ids = new int[4];
+            } else if ( this.count == this.ids.length ) {
+                int[] grown = new int[this.count * 2];
+                System.arraycopy(this.ids,0,grown,0,this.count);
+                this.ids = grown;
+            }
+            this.ids[this.count++] = _position;
+        }
+
+        /** Splits the longer side, then each half, into overlapping parts */
+        private Node[] split() {
+            Node[] halves = splitBounds(this);
+            Node[] first  = splitBounds(halves[0]);
+            Node[] second = splitBounds(halves[1]);
+            return new Node[] { first[0], first[1], second[0], second[1] };
+        }
+
+        private static Node[] splitBounds(Node _node) {
+            if ( (_node.maxX - _node.minX) > (_node.maxY - _node.minY) ) {
+                double range = _node.maxX - _node.minX;
+                return new Node[] { new Node(_node.minX,_node.minY,_node.minX + range * SPLIT_RATIO,_node.maxY),
+                                    new Node(_node.maxX - range * SPLIT_RATIO,_node.minY,_node.maxX,_node.maxY) };
+            }
+            double range = _node.maxY - _node.minY;
+            return new Node[] { new Node(_node.minX,_node.minY,_node.maxX,_node.minY + range * SPLIT_RATIO),
+                                new Node(_node.minX,_node.maxY - range * SPLIT_RATIO,_node.maxX,_node.maxY) };
+        }
+
+        /**
+         * Removes empty nodes and shrinks rectangles to their contents.
+         * @return Node : This node, its only child if it holds no shapes, or null if empty
+         */
+        Node trim(double[] _bounds) {
+            int children = 0;
+            Node     last = null;
+            if ( this.children != null ) {
+                for (int i = 0; i < this.children.length; i++) {
+                    if ( this.children[i] != null ) {
+                        this.children[i] = this.children[i].trim(_bounds);
+                    }
+                    if ( this.children[i] != null ) {
+                        children++;
+                        last = this.children[i];
+                    }
+                }
+                if ( children == 0 ) {
+                    this.children = null;
+                }
+            }
+            if ( this.count == 0 ) {
+                if ( children == 0 ) return null;
+                if ( children == 1 ) return last;
+            }
+            this.minX = this.minY = Double.MAX_VALUE;
+            this.maxX = this.maxY = -Double.MAX_VALUE;
+            for (int i = 0; i < this.count; i++) {
+                int b = this.ids[i] * 4;
+                expand(_bounds[b],_bounds[b+1],_bounds[b+2],_bounds[b+3]);
+            }
+            if ( this.children != null ) {
+                for (Node child : this.children) {
+                    if ( child != null ) {
+                        expand(child.minX,child.minY,child.maxX,child.maxY);
+                    }
+                }
+            }
+            return this;
+        }
+
+        private void expand(double _minX, double _minY, double _maxX, double _maxY) {
+            this.minX = Math.min(this.minX,_minX);
+            this.minY = Math.min(this.minY,_minY);
+            this.maxX = Math.max(this.maxX,_maxX);
+            this.maxY = Math.max(this.maxY,_maxY);
+        }
+
+        int childCount() {
+            int children = 0;
+            if ( this.children != null ) {
+                for (Node child : this.children) {
+                    if ( child != null ) {
+                        children++;
+                    }
+                }
+            }
+            return children;
+        }
+
+        /** Sets subtreeBytes of this node and its descendants; returns this node's size including them */
+        int sizeTree() {
+            this.subtreeBytes = 0;
+            if ( this.children != null ) {
+                for (Node child : this.children) {
+                    if ( child != null ) {
+                        this.subtreeBytes += child.sizeTree();
+                    }
+                }
+            }
+            return NODE_LENGTH + 4 * this.count + this.subtreeBytes;
+        }
+    }
+}
@@ -35,9 +35,9 @@ import java.sql.SQLException;
 
 import java.text.SimpleDateFormat;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.logging.Logger;
 
 import javax.sql.RowSetMetaData;
@@ -68,6 +68,9 @@ implements IExporter
 {
 
     private static final Logger LOGGER = Logging.getLogger("com.spdba.io.export.shp");
+
+    /** Default size at which a new .shp/.dbf part is started: a margin below the 2GB limit */
+    public static final long DEFAULT_PART_SIZE = 2000000000L;
     
     private Connection                                      conn = null;
     private ResultSet                                  resultSet = null;
@@ -82,7 +85,7 @@ implements IExporter
     private Constants.XMLAttributeFlavour                      XMLFlavour = Constants.XMLAttributeFlavour.OGR;
     private DBFTypes                                   xBaseType = DBFTypes.DBASEIII;
     
-    protected LinkedHashSet<Geometry>                    geomSet = null;
+    protected ArrayList<Geometry>                       geomList = null;
     private Geometry                                        geom = null;
     private int                                           commit = 100;
     private OraReader                              geomConverter = null; 
@@ -93,7 +96,14 @@ implements IExporter
     private int                         decimalDigitsOfPrecision = 3;
     public Envelope                                   fileExtent = null;
     private boolean                             skipNullGeometry = true;
+    private boolean                                 spatialIndex = false;
     public String                               recordIdentifier = null;
+    private long                                        partSize = DEFAULT_PART_SIZE;
+    private int                                             part = 0;
+    private String                                      partName = null;
+    private long                                    pendingBytes = 0L;   // .shp bytes of geomList
+    private String                                      encoding = null;
+    private ShapeType                                shpFileType = null;  // Type given to ShapefileWriter
 
     protected ShapefileWriter                          shpWriter = null;
     protected DBaseWriter                            dbaseWriter = null;
@@ -367,8 +377,8 @@ implements IExporter
 //System.out.println("SHPExporter: SHPExporter.start");
         this.row = 0;
         try {
-            if ( this.geomSet == null ) {
-                this.geomSet = new LinkedHashSet<Geometry>(this.getCommit());
+            if ( this.geomList == null ) {
+                this.geomList = new ArrayList<Geometry>(this.getCommit());
             }
             // Create required sdo_geometry to shape conversion functions
             //
@@ -389,17 +399,10 @@ implements IExporter
             } else if ( SHPFileType.equals(ShapeType.UNDEFINED) ) {
                 throw new Exception("ShapefileWriter: Unknown or unsupported shapeType (" + SHPFileType.toString() + ") provided.");
             }
-            String dirName = FileUtils.getDirectory(this.SHPFilename);
-            String fNameNoExt = FileUtils.getFileNameFromPath(this.SHPFilename,true);
-            this.shpWriter   = new ShapefileWriter(dirName, 
-                                                   fNameNoExt, 
-                                                   SHPFileType, 
-                                                   this.getTotalRows());
-            this.dbaseWriter = new DBaseWriter();
-            this.dbaseWriter.setRecordIdentiferName(this.getRecordIdentifier());
-            this.dbaseWriter.setXBaseType(this.xBaseType);
-            this.dbaseWriter.createDBF(FileUtils.FileNameBuilder(dirName, fNameNoExt, "dbf"),_encoding);
-            this.dbaseWriter.createHeader(this.exportMetadata,this.geoColumnName);
+            this.shpFileType = SHPFileType;
+            this.encoding    = _encoding;
+            this.part        = 0;
+            this.openPart();
 //System.out.println("this.dbasewriter FieldsListCount: " + this.dbaseWriter.getFields().size());
         } catch (ShapefileException se) {
             throw new Exception("SHPExporter.start: Shapefile Exception " + se.getMessage());
@@ -412,6 +415,62 @@ implements IExporter
         } 
     }
 
+    /**
+     * Creates the .shp/.shx and .dbf writers for the current part.
+     * The first part is named after the shapefile, later parts have _001, _002 ... appended.
+     */
+    private void openPart() 
+    throws Exception 
+    {
+        String dirName = FileUtils.getDirectory(this.SHPFilename);
+        this.partName  = getPartName(FileUtils.getFileNameFromPath(this.SHPFilename,true),this.part);
+        this.shpWriter = new ShapefileWriter(dirName, 
+                                             this.partName, 
+                                             this.shpFileType, 
+                                             this.getTotalRows());
+        this.shpWriter.setSpatialIndex(this.spatialIndex);
+        this.dbaseWriter = new DBaseWriter();
+        this.dbaseWriter.setRecordIdentiferName(this.getRecordIdentifier());
+        this.dbaseWriter.setXBaseType(this.xBaseType);
+        this.dbaseWriter.setBulkWrite(true);  // Header count written on close
+        this.dbaseWriter.createDBF(FileUtils.FileNameBuilder(dirName, this.partName, "dbf"),this.encoding);
+        this.dbaseWriter.createHeader(this.exportMetadata,this.geoColumnName);
+    }
+
+    /**
+     * Finishes the current part and starts the next.
+     * Called between rows so every part's .shp and .dbf records stay aligned.
+     */
+    private void nextPart() 
+    throws IOException 
+    {
+        if ( this.geomList.size() > 0 ) {
+            this.writeGeomList();
+        }
+        this.writePrj();
+        this.close();
+        this.part++;
+        LOGGER.info("SHPExporter: " + this.row + " rows written, starting part " + this.part);
+        try {
+            this.openPart();
+        } catch (IOException ioe) {
+            throw ioe;
+        } catch (Exception e) {
+            throw new IOException("SHPExporter: Error starting part " + this.part + " (" + e.getMessage() + ")");
+        }
+    }
+
+    /**
+     * @param _baseName : String : Shapefile name without extension
+     * @param _part     : int : 0 based part number
+     * @return String : _baseName for the first part, otherwise _baseName_nnn 
+     */
+    public static String getPartName(String _baseName, 
+                                     int    _part) 
+    {
+        return _part == 0 ? _baseName : _baseName + "_" + String.format("%03d",_part);
+    }
+
     @Override
     public void startRow() 
     throws IOException 
@@ -470,7 +529,7 @@ implements IExporter
         {
             // We may have a non-null geoStruct
             if ( _object == null ) {
-                this.addToGeomSet((STRUCT)_object);
+                this.addToGeomList((STRUCT)_object);
                 return;                    
             }
             // Certain geometry types cannot be written to a shapefile/tab file as are unsupported
@@ -483,7 +542,7 @@ implements IExporter
             {
                 throw new SQLException("Cannot write (" + getGeoColumnName() + ") SDO_GEOMETRY object with CircularArcs to a shapefile.");
             } 
-            this.addToGeomSet((STRUCT)_object);
+            this.addToGeomList((STRUCT)_object);
             return;
         } 
         
@@ -547,17 +606,24 @@ implements IExporter
         
         // Write geometry objects only if we have hit the commit point
         //
-        //LOGGER.info("endRow: this.row="+this.row+" geomSet.size= " + this.geomSet.size() + "  " + getCommit());
-        if ( this.geomSet.size() == getCommit() ) {
-            this.writeGeomSet();
+        //LOGGER.info("endRow: this.row="+this.row+" geomList.size= " + this.geomList.size() + "  " + getCommit());
+        if ( this.geomList.size() >= getCommit() ) {
+            this.writeGeomList();
         }
-        // For now, write each and every DBF record
+        // Each DBF record is buffered by the DBaseWriter's bulk mode
         //
         try {
             this.dbaseWriter.write();
         } catch (xBaseJException e) {
             throw new IOException("DBase file write error " + e.getMessage());
         }
+        // Start a new part once either file reaches the part size
+        //
+        if ( this.partSize > 0 &&
+             ( this.shpWriter.getFileLength() + this.pendingBytes >= this.partSize ||
+               this.dbaseWriter.getFileLength() >= this.partSize ) ) {
+            this.nextPart();
+        }
     }
 
     @Override
@@ -566,18 +632,25 @@ implements IExporter
     {
       // make sure to write the last Geometry set feature...
       //
-      if ( this.geomSet.size() > 0 ) {
-          this.writeGeomSet();
+      if ( this.geomList != null && this.geomList.size() > 0 ) {
+          this.writeGeomList();
       }
-      
-      if ( !Strings.isEmpty(this.prjContents) ) {
+      this.writePrj();
+    }
+
+    /**
+     * Writes the current part's PRJ file
+     */
+    private void writePrj() 
+    throws IOException 
+    {
+      if ( !Strings.isEmpty(this.prjContents) && this.partName != null ) {
           String dirName = FileUtils.getDirectory(this.SHPFilename);
-          String fNameNoExt = FileUtils.getFileNameFromPath(this.SHPFilename,true);
           // Only write Prj is SRID is value
           // Should be in ExporterDialog
           if ( getGeometryProperties().getSRID() != SDO.SRID_NULL ) {
               writePrjFile(FileUtils.FileNameBuilder(dirName,
-                                                     fNameNoExt,
+                                                     this.partName,
                                                      "prj"),
                            this.prjContents);
           }
@@ -654,6 +727,40 @@ implements IExporter
         return this.xBaseType;
     }
     
+    /**
+     * Also write a .qix quadtree spatial index, so MapServer, GDAL and GeoTools
+     * read only the shapes in a requested extent.
+     * @param _spatialIndex true to write the .qix
+     */
+    public void setSpatialIndex(boolean _spatialIndex) {
+        this.spatialIndex = _spatialIndex;
+    }
+
+    public boolean isSpatialIndex() {
+        return this.spatialIndex;
+    }
+
+    /**
+     * Size in bytes at which the .shp or .dbf being written is closed and the next part 
+     * (name_001, name_002 ...) started. Each part has its own .shx, .dbf, .prj and .qix.
+     * Parts must stay under 2GB as most readers hold file offsets in signed 32 bit integers.
+     * @param _partSize bytes; 0 or less never splits (ShapefileWriter refuses to go past 2GB)
+     */
+    public void setPartSize(long _partSize) {
+        this.partSize = Math.min(_partSize,ShapefileWriter.MAX_FILE_LENGTH);
+    }
+
+    public long getPartSize() {
+        return this.partSize;
+    }
+
+    /**
+     * @return int : Number of parts written or being written
+     */
+    public int getPartCount() {
+        return this.part + 1;
+    }
+
     public void setPrjContents(String _prjString) {
         this.prjContents = _prjString;
     }
@@ -669,25 +776,32 @@ implements IExporter
                                                  _shape);
     }
     
-    protected void addToGeomSet(STRUCT _shape) 
+    protected void addToGeomList(STRUCT _shape) 
     {
-        Geometry geom = SDO.Struct2Geometry(this.geomConverter, 
-                                                     this.geomFactory,
-                                                     _shape);
-        if ( geom == null ) {
-          this.geomSet.add((Geometry)null);
-        } else {
-          this.geomSet.add(geom);
-        }
+        this.addToGeomList(SDO.Struct2Geometry(this.geomConverter, 
+                                               this.geomFactory,
+                                               _shape));
+    }
+    
+    /**
+     * Adds the shape (or a null shape) to the list of geometries to be written.
+     * A List is used so that equal geometries and nulls each keep their own record,
+     * keeping .shp records aligned with .dbf records.
+     */
+    protected void addToGeomList(Geometry _geom) 
+    {
+        this.geomList.add(_geom);
+        this.pendingBytes += this.shpWriter.getRecordLength(_geom);
     }
     
-    protected void writeGeomSet() 
+    protected void writeGeomList() 
     throws IOException 
     {
-        // Write the collection
+        // Write the collection (ShapefileWriter buffers the records)
         //
-        this.shpWriter.write(this.geomSet);
-        this.geomSet = new LinkedHashSet<Geometry>(this.getCommit());
+        this.shpWriter.write(this.geomList);
+        this.geomList.clear();
+        this.pendingBytes = 0L;
     }
 
     @Override
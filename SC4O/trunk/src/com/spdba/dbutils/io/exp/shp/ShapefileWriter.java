@@ -32,8 +32,8 @@ import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 
+import java.util.Collection;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
 
 import org.geotools.data.shapefile.shp.ShapeHandler;
 import org.geotools.data.shapefile.shp.ShapeType;
@@ -69,10 +69,21 @@ import org.geotools.resources.NIOUtilities;
  */
 public class ShapefileWriter 
 {
+    /** Default size of the .shp record buffer (a power of 2 so NIOUtilities can pool it) */
+    public static final int DEFAULT_SHAPE_BUFFER_SIZE = 1024 * 1024;
+    /** Size of the .shx record buffer: 8 bytes per shape */
+    public static final int INDEX_BUFFER_SIZE         = 64 * 1024;
+
+    /** Largest .shp readers accept: record offsets are signed 32 bit byte counts in most */
+    public static final long MAX_FILE_LENGTH          = Integer.MAX_VALUE;
+
+    private static final int HEADER_LENGTH = 100;
+
     private FileChannel      shpChannel;  // FileChannels are public because ShapefileReader.java requires it!
     private FileChannel      shxChannel;
     private ByteBuffer      shapeBuffer;
     private ByteBuffer      indexBuffer;
+    private int        shapeBufferSize = DEFAULT_SHAPE_BUFFER_SIZE;
 
     private Envelope        shpEnvelope;
     
@@ -80,15 +91,17 @@ public class ShapefileWriter
     private FileOutputStream  shxOutput;
     private File                shpFile;
     private File                shxFile;
+    private File                qixFile;
+    private QIXWriter         qixWriter = null;
     
     private ShapefileHeader      header;
     private ShapeHandler        handler;
     private ShapeType         shapeType = ShapeType.UNDEFINED;
     private int     totalNumberOfShapes = 0;
     private int           shapesWritten = 0;
-    private int          bufferPosition = 0;
-    private int              fileLength = 100;
-    private static int           offset = 50;
+    private int              fileLength = HEADER_LENGTH;
+    private int                  offset = HEADER_LENGTH / 2;  // Record offset in 16 bit words
+    private static int     sharedOffset = HEADER_LENGTH / 2;  // Only for the deprecated getOffset()/setOffset()
     
     /** Creates a new instance of ShapeFileWriter 
     * @throws IOException */
@@ -114,17 +127,18 @@ public class ShapefileWriter
         }
         shpFile     = new File(FileUtils.FileNameBuilder(_outputDirectory,_fileName,".shp"));
         shxFile     = new File(FileUtils.FileNameBuilder(_outputDirectory,_fileName,".shx"));
+        qixFile     = new File(FileUtils.FileNameBuilder(_outputDirectory,_fileName,".qix"));
         shpOutput   = new FileOutputStream(shpFile);
         shpChannel  = shpOutput.getChannel();
         shxOutput   = new FileOutputStream(shxFile);
         shxChannel  = shxOutput.getChannel();
         header      = new ShapefileHeader();
         shpEnvelope = new Envelope();
-        ShapefileWriter.setOffset(50);
         totalNumberOfShapes = _totalNumberOfShapes==0?1:_totalNumberOfShapes;
         shapesWritten       = 0;
         allocateBuffers();
         writeHeaders(Math.max(totalNumberOfShapes,shapesWritten));
+        skipHeaders();
     }
 
     public void setTotalShapes(int _totalShapes   ) {
@@ -144,6 +158,19 @@ public class ShapefileWriter
           this.shpEnvelope.expandToInclude(_envelope);
     }
         
+    /**
+     * Write a .qix quadtree spatial index (MapServer/GDAL/GeoTools format) on close.
+     * Must be set before any shapes are written.
+     * @param _spatialIndex true to write the .qix
+     */
+    public void setSpatialIndex(boolean _spatialIndex) {
+        this.qixWriter = _spatialIndex ? new QIXWriter() : null;
+    }
+
+    public boolean isSpatialIndex() {
+        return this.qixWriter != null;
+    }
+
     public FileChannel getShpChannel() {
       return shpChannel; 
     }
@@ -151,89 +178,166 @@ public class ShapefileWriter
     public FileChannel getShxChannel() {
       return shxChannel;
     }
+
+    /**
+     * Sets the size of the .shp record buffer. Records are only written
+     * to the file when the buffer fills (a single record larger than the buffer
+     * is written via a temporarily enlarged buffer).
+     * @param _bytes Buffer size in bytes
+     * @throws IOException if buffered records cannot be written
+     */
+    public void setBufferSize(int _bytes) 
+    throws IOException 
+    {
+        this.shapeBufferSize = Math.max(_bytes,1024);
+        if ( shapeBuffer != null ) {
+            flush();
+            NIOUtilities.clean(shapeBuffer,false);
+            shapeBuffer = NIOUtilities.allocate(this.shapeBufferSize);
+        }
+    }
+    
+    public int getBufferSize() {
+        return this.shapeBufferSize;
+    }
+
+    /**
+     * @return long : Length of the .shp in bytes, including buffered records
+     */
+    public long getFileLength() {
+        return this.fileLength;
+    }
+
+    /**
+     * Number of .shp bytes writing a geometry will add.
+     * @param _geom Geometry to be written (null for a null shape)
+     * @return int : record length in bytes including its 8 byte record header
+     */
+    public int getRecordLength(Geometry _geom) {
+        return (_geom == null ? 4 : handler.getLength(_geom)) + 8;
+    }
+
+    /**
+     * Ensures a record of _size bytes can be added without the .shp exceeding MAX_FILE_LENGTH.
+     */
+    private void checkFileLength(int _size) 
+    throws IOException 
+    {
+        if ( (long)this.fileLength + (long)_size > MAX_FILE_LENGTH ) {
+            throw new IOException("Shape " + (this.shapesWritten + 1) + " would take " + shpFile.getName() + 
+                                  " past " + MAX_FILE_LENGTH + " bytes.");
+        }
+    }
     
     /**
      * Allocate some buffers for writing.
      */
     private void allocateBuffers() {
-        shapeBuffer = NIOUtilities.allocate(16 * 1024);
-        indexBuffer = NIOUtilities.allocate(100);
+        shapeBuffer = NIOUtilities.allocate(this.shapeBufferSize);
+        indexBuffer = NIOUtilities.allocate(INDEX_BUFFER_SIZE);
     }
     
     /**
-     * Make sure our shape buffer is of size.
+     * Make sure our shape buffer has room for the next record,
+     * writing out buffered records or growing the buffer as needed.
      */ 
-    private void checkShapeBuffer(int _sizeBytes) {
-      if (shapeBuffer.capacity() < _sizeBytes) {
-          if( shapeBuffer!=null ) {
-              NIOUtilities.clean(shapeBuffer,false);
-          }
-          shapeBuffer = NIOUtilities.allocate(_sizeBytes);
-      }
+    private void checkShapeBuffer(int _sizeBytes) 
+    throws IOException 
+    {
+        if (shapeBuffer.remaining() >= _sizeBytes) {
+            return;
+        }
+        drain(shapeBuffer,shpChannel);
+        if (shapeBuffer.capacity() < _sizeBytes) {
+            NIOUtilities.clean(shapeBuffer,false);
+            shapeBuffer = NIOUtilities.allocate(_sizeBytes);
+        }
     }
 
+    /**
+     * Write all bytes in a buffer to a channel at its current position, and clear the buffer.
+     */
+    private static void drain(ByteBuffer  _buffer,
+                              FileChannel _channel) 
+    throws IOException 
+    {
+        _buffer.flip();
+        while (_buffer.remaining() > 0) {
+            _channel.write(_buffer);
+        }
+        _buffer.clear();
+    }
 
     /**
-     * Drain internal buffers into underlying channels.
+     * Write any buffered records to the underlying channels.
      */
-    private void drain() 
+    public void flush() 
     throws IOException 
     {
-        shapeBuffer.flip();
-        indexBuffer.flip();
-        while (shapeBuffer.remaining() > 0) {
-            shpChannel.write(shapeBuffer);
+        if (shapeBuffer != null) {
+            drain(shapeBuffer,shpChannel);
         }
-        while (indexBuffer.remaining() > 0) {
-            shxChannel.write(indexBuffer);
+        if (indexBuffer != null) {
+            drain(indexBuffer,shxChannel);
         }
-        shapeBuffer.flip().limit(shapeBuffer.capacity());
-        indexBuffer.flip().limit(indexBuffer.capacity());
     }
 
     /**
-     * Allocate internal buffers and position the channels to the beginning or
-     * the record section of the shapefile. The headers MUST be rewritten after
-     * this operation, or the file may be corrupt...
+     * Position the channels at the beginning of the record section of the shapefile.
+     * The headers MUST be rewritten after records are written, or the file may be corrupt...
      */
     public void skipHeaders() throws IOException {
         if (shapeBuffer == null)
             allocateBuffers();
-        shpChannel.position(100);
-        shxChannel.position(100);
+        flush();
+        if (shpChannel.position() < HEADER_LENGTH) 
+            shpChannel.position(HEADER_LENGTH);
+        if (shxChannel.position() < HEADER_LENGTH) 
+            shxChannel.position(HEADER_LENGTH);
     }
     
     /**
      * Write the headers for this shapefile including the bounds, shape type,
      * the number of geometries and the total fileLength (in actual bytes, NOT
      * 16 bit words).
+     * Any buffered records are written first. The headers are written at file
+     * offset 0 without moving the channels' record positions.
      */
     public void writeHeaders(int _numberOfGeometries) 
     throws IOException 
     {
-
         if (shapeBuffer == null) {
             allocateBuffers();
         }
+        flush();
         
         Envelope shapeEnvelope = this.getEnvelope();
 
-        header.write(this.shapeBuffer,
+        ByteBuffer headerBuffer = ByteBuffer.allocate(HEADER_LENGTH);
+        header.write(headerBuffer,
                      this.shapeType, 
                      this.fileLength / 2,
                      shapeEnvelope);
+        writeAt(headerBuffer,shpChannel,0);
 
-        header.write(this.indexBuffer, 
+        headerBuffer.clear();
+        header.write(headerBuffer, 
                      this.shapeType,
-                     50 + 4 * _numberOfGeometries, 
+                     (HEADER_LENGTH / 2) + 4 * _numberOfGeometries, 
                      shapeEnvelope);
+        writeAt(headerBuffer,shxChannel,0);
+    }
 
-        ShapefileWriter.setOffset(50);
-        
-        shpChannel.position(0);
-        shxChannel.position(0);
-
-        drain();
+    private static void writeAt(ByteBuffer  _buffer,
+                                FileChannel _channel,
+                                long        _position) 
+    throws IOException 
+    {
+        _buffer.flip();
+        long position = _position;
+        while (_buffer.remaining() > 0) {
+            position += _channel.write(_buffer,position);
+        }
     }
 
     /**
@@ -244,26 +348,30 @@ public class ShapefileWriter
     throws IOException 
     {
         int length = 0;
-        bufferPosition = shapeBuffer.position();
-        this.shapesWritten++;
+        // Counted once written: a shape refused by checkFileLength is not in the header count
+        int shapeNumber = this.shapesWritten + 1;
         if(_geom == null) {
-            length = writeNullGeometry(this.shapesWritten);
+            length = writeNullGeometry(shapeNumber);
         } else {
-            length = writeNonNullGeometry(_geom,this.shapesWritten);
+            length = writeNonNullGeometry(_geom,shapeNumber);
             Envelope envelope = _geom.getEnvelopeInternal();
             if (!envelope.isNull()) {
                 this.shpEnvelope.expandToInclude(envelope);
+                if (this.qixWriter != null) {
+                    this.qixWriter.add(shapeNumber - 1,envelope);
+                }
             }
         }
-        assert (length * 2 == (shapeBuffer.position() - bufferPosition) - 8);
-        bufferPosition = shapeBuffer.position();
+        this.shapesWritten = shapeNumber;
         
         // write to the shx
-        indexBuffer.putInt(ShapefileWriter.getOffset());
+        if (indexBuffer.remaining() < 8) {
+            drain(indexBuffer,shxChannel);
+        }
+        indexBuffer.order(ByteOrder.BIG_ENDIAN);
+        indexBuffer.putInt(this.offset);
         indexBuffer.putInt(length);
-        offset += length + 4;
-        drain();
-        assert (shapeBuffer.position() == 0);
+        this.offset += length + 4;
     }
 
     /**
@@ -275,10 +383,13 @@ public class ShapefileWriter
      */
     private int writeNonNullGeometry(Geometry _geom,
                                      int      _shapeNumber) 
+    throws IOException 
     {
         int length = handler.getLength(_geom);
         int size = length + 8;
+        checkFileLength(size);
         checkShapeBuffer(size);
+        int bufferPosition = shapeBuffer.position();
         fileLength += size;
         length /= 2;
         shapeBuffer.order(ByteOrder.BIG_ENDIAN);
@@ -287,6 +398,7 @@ public class ShapefileWriter
         shapeBuffer.order(ByteOrder.LITTLE_ENDIAN);
         shapeBuffer.putInt(this.shapeType.id);
         handler.write(shapeBuffer, _geom);
+        assert (length * 2 == (shapeBuffer.position() - bufferPosition) - 8);
         return length;
     }
 
@@ -302,6 +414,7 @@ public class ShapefileWriter
     {
         int length = 4;
         int size = length + 8;
+        checkFileLength(size);
         checkShapeBuffer(size);
         fileLength += size;
         length /= 2;
@@ -314,22 +427,24 @@ public class ShapefileWriter
     }
 
     /**
-     * Writes collection of geometries to shapefile.
+     * Writes collection of geometries to shapefile in iteration order.
+     * Null entries are written as null shapes, so the collection must be one
+     * that keeps duplicates and nulls (eg a List) for .shp records to stay
+     * aligned with .dbf records.
      * @param _geometries
      * @throws IOException
      * @method write
      * @author Simon Greener, February 2011
      **/
-    public void write(LinkedHashSet<Geometry>  _geometries) 
+    public void write(Collection<Geometry>  _geometries) 
     throws IOException 
     {
         if ( _geometries == null || _geometries.size() == 0 ) {
             return;
         }
-        Iterator iter = _geometries.iterator();
+        Iterator<Geometry> iter = _geometries.iterator();
         while (iter.hasNext()) {
-            Geometry geom = (Geometry)iter.next();
-            writeGeometry(geom);
+            writeGeometry(iter.next());
         }
     }
 
@@ -343,7 +458,11 @@ public class ShapefileWriter
         // Take shapesWritten value as it may not include unwritten nulls in original set.
         //
         //LOGGER.info("ShapesWritten=" + this.shapesWritten + " out of " + this.totalNumberOfShapes);
-        writeHeaders(this.shapesWritten);  // writeHeaders calls drain()
+        writeHeaders(this.shapesWritten);  // writeHeaders calls flush()
+        if (this.qixWriter != null) {
+            this.qixWriter.write(this.qixFile,this.shpEnvelope,this.shapesWritten);
+            this.qixWriter = null;
+        }
         
         if( shpChannel!=null && shpChannel.isOpen()){
             shpChannel.close();
@@ -354,22 +473,41 @@ public class ShapefileWriter
         shpChannel = null;
         shxChannel = null;
         handler    = null;
-        if(indexBuffer instanceof MappedByteBuffer && indexBuffer!=null) {
-            NIOUtilities.clean(indexBuffer);
+        if(indexBuffer!=null) {
+            NIOUtilities.clean(indexBuffer,indexBuffer instanceof MappedByteBuffer);
         }
-        if(shapeBuffer instanceof MappedByteBuffer && shapeBuffer!=null) {
-            NIOUtilities.clean(shapeBuffer);
+        if(shapeBuffer!=null) {
+            NIOUtilities.clean(shapeBuffer,shapeBuffer instanceof MappedByteBuffer);
         }
         indexBuffer = null;
         shapeBuffer = null;
     }
 
+    /**
+     * @return int : Offset, in 16 bit words, at which this writer's next record will be written
+     */
+    public int getRecordOffset() {
+        return this.offset;
+    }
+
+    /**
+     * @deprecated The record offset is now kept by each writer, see {@link #getRecordOffset()}.
+     * This returns the value last given to {@link #setOffset(int)}, which no writer reads.
+     */
     public static int getOffset() {
-        return offset;
+        return sharedOffset;
     }
 
+    /**
+     * @deprecated The record offset is now kept by each writer, and each
+     * new writer starts after the file header. This value is not used.
+     */
     public static void setOffset(int _offset) {
-        offset = _offset;
+        sharedOffset = _offset;
+    }
+
+    public int getShapesWritten() {
+        return this.shapesWritten;
     }
     
     public void write(GeometryCollection _geometries)
@@ -384,4 +522,3 @@ public class ShapefileWriter
         }
     }
 }
-
@@ -10,11 +10,21 @@ import com.spdba.dbutils.tools.Strings;
 
 import java.io.IOException;
 
+import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Types;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import oracle.jdbc.OracleConnection;
 import oracle.jdbc.OracleResultSet;
 import oracle.jdbc.OracleResultSetMetaData;
@@ -41,6 +51,9 @@ import org.xBaseJ.micro.DBFTypes;
  */
 public class WriteSHPFile {
 
+    /** Part size, in megabytes, of writes that do not give one: SHPExporter.DEFAULT_PART_SIZE */
+    public static final int DEFAULT_PART_SIZE_MB = (int)(SHPExporter.DEFAULT_PART_SIZE / (1024L * 1024L));
+
     private static int   geomColumnIndex = -1;
     private static String geomColumnName = "";
     
@@ -150,6 +163,322 @@ public class WriteSHPFile {
             IOException, 
             IllegalArgumentException 
     {  
+        write(_resultSet,_outputDirectory,_fileName,_shapeType,_geomColumnName,_polygonOrientation,
+              _dbaseType,_geomRenderFormat,_prjString,_decimalDigitsOfPrecision,_commit,0);
+    }
+
+    /**
+     * Writes the given result as shape files with PRJ and, if _spatialIndex is 1,
+     * a .qix quadtree spatial index (as created by MapServer's shptree) for indexed
+     * reads by MapServer, GDAL/OGR and GeoTools.
+     *
+     * @param _spatialIndex 1 to write a .qix spatial index, 0 not to.
+     * @see #write(ResultSet,String,String,String,String,String,String,String,String,int,int)
+     */
+    public static void write(java.sql.ResultSet _resultSet, 
+                             java.lang.String   _outputDirectory, 
+                             java.lang.String   _fileName, 
+                             java.lang.String   _shapeType,
+                             java.lang.String   _geomColumnName,
+                             java.lang.String   _polygonOrientation,
+                             java.lang.String   _dbaseType,
+                             java.lang.String   _geomRenderFormat,
+                             java.lang.String   _prjString,
+                             int                _decimalDigitsOfPrecision,
+                             int                _commit,
+                             int                _spatialIndex )
+    throws  SQLException, 
+            IOException, 
+            IllegalArgumentException 
+    {  
+        write(_resultSet,_outputDirectory,_fileName,_shapeType,_geomColumnName,_polygonOrientation,
+              _dbaseType,_geomRenderFormat,_prjString,_decimalDigitsOfPrecision,_commit,_spatialIndex,DEFAULT_PART_SIZE_MB);
+    }
+
+    /**
+     * Writes the given result as shape files, starting a new part (_fileName_001, _fileName_002 ...)
+     * whenever the .shp or .dbf being written reaches _partSizeMB megabytes. Each part is a 
+     * complete shapefile with its own .shx, .dbf, .prj and (optional) .qix.
+     *
+     * @param _partSizeMB Size of each part in megabytes; 0 or less never splits, so no .shp or .dbf may then reach 2GB.
+     *                    DEFAULT_PART_SIZE_MB is just under that limit.
+     * @see #write(ResultSet,String,String,String,String,String,String,String,String,int,int,int)
+     */
+    public static void write(java.sql.ResultSet _resultSet, 
+                             java.lang.String   _outputDirectory, 
+                             java.lang.String   _fileName, 
+                             java.lang.String   _shapeType,
+                             java.lang.String   _geomColumnName,
+                             java.lang.String   _polygonOrientation,
+                             java.lang.String   _dbaseType,
+                             java.lang.String   _geomRenderFormat,
+                             java.lang.String   _prjString,
+                             int                _decimalDigitsOfPrecision,
+                             int                _commit,
+                             int                _spatialIndex,
+                             int                _partSizeMB )
+    throws  SQLException, 
+            IOException, 
+            IllegalArgumentException 
+    {  
+        ShapeType sType = validateParameters(_outputDirectory,_fileName,_shapeType);
+
+        DBConnection.setConnection((OracleConnection)_resultSet.getStatement().getConnection());
+        setGeometryColumnIndexAndName((OracleResultSetMetaData) _resultSet.getMetaData(),
+                                      _geomColumnName);
+        SHPExporter geoExporter = createExporter(DBConnection.getConnection(),
+                                                 _resultSet,
+                                                 FileUtils.FileNameBuilder(_outputDirectory,_fileName,"shp"),
+                                                 sType,
+                                                 geomColumnIndex,
+                                                 geomColumnName,
+                                                 _polygonOrientation,
+                                                 _dbaseType,
+                                                 _geomRenderFormat,
+                                                 _prjString,
+                                                 _decimalDigitsOfPrecision,
+                                                 _commit,
+                                                 _spatialIndex,
+                                                 _partSizeMB);
+        // Now process the resultset and create SHP file...
+        try {
+            ExportTask et = new ExportTask(geoExporter);
+            et.Export();
+        } catch (Exception e) {
+            e.printStackTrace();
+            LOGGER.info("WriteSHPFile: Error Writing Shapefile (" + e.getLocalizedMessage() + ")");
+        }
+    }    
+
+    /**
+     * Writes the rows of _sql as _parts shapefiles (_fileName_001 ... _fileName_nnn).
+     * Each part is split further (_fileName_001_001 ...) if it reaches _partSizeMB.
+     * <p>
+     * The query is run once, through the session's connection, and each row written to
+     * the part given by the hash of its _partitionKey value (or to the parts in turn),
+     * so every row is in exactly one part. See write(Connection[],...) for parts read
+     * in parallel by a client with a connection per part.
+     *
+     * @param _sql          : Query returning the rows to export, including a geometry column.
+     * @param _partitionKey : Column of _sql's select list to partition rows by; 
+     *                        if null rows are written to the parts in turn.
+     * @param _parts        : Number of parts to write.
+     * @see #write(ResultSet,String,String,String,String,String,String,String,String,int,int,int,int)
+     */
+    public static void write(java.lang.String   _sql,
+                             java.lang.String   _partitionKey,
+                             int                _parts,
+                             java.lang.String   _outputDirectory, 
+                             java.lang.String   _fileName, 
+                             java.lang.String   _shapeType,
+                             java.lang.String   _geomColumnName,
+                             java.lang.String   _polygonOrientation,
+                             java.lang.String   _dbaseType,
+                             java.lang.String   _geomRenderFormat,
+                             java.lang.String   _prjString,
+                             int                _decimalDigitsOfPrecision,
+                             int                _commit,
+                             int                _spatialIndex,
+                             int                _partSizeMB )
+    throws  SQLException, 
+            IOException, 
+            IllegalArgumentException 
+    {  
+        write(new Connection[] { DBConnection.getConnection() },
+              _sql,_partitionKey,_parts,_outputDirectory,_fileName,_shapeType,_geomColumnName,_polygonOrientation,
+              _dbaseType,_geomRenderFormat,_prjString,_decimalDigitsOfPrecision,_commit,_spatialIndex,_partSizeMB);
+    }
+
+    /**
+     * Writes the rows of _sql as _parts shapefiles.
+     * <p>
+     * With a connection per part the parts are read and written in parallel, part i
+     * running _sql restricted to the rows where ORA_HASH(_partitionKey,_parts-1) = i-1
+     * (ROWID if no key is given, when _sql must be of a single table or key preserved view).
+     * Each part's query is a scan of _sql, run concurrently in its own session.
+     * <p>
+     * With fewer connections than parts, _sql is run once through _connections[0] and
+     * its rows routed to the parts by the hash of the _partitionKey column's value (or to
+     * the parts in turn), rather than scanning _sql once per part on a shared connection.
+     * 
+     * @param _connections : Connections to read parts through; one per part for parts to be read in parallel.
+     * @return int : Number of rows written
+     * @see #write(String,String,int,String,String,String,String,String,String,String,String,int,int,int,int)
+     */
+    public static int write(final Connection[]   _connections,
+                            final String         _sql,
+                            final String         _partitionKey,
+                            final int            _parts,
+                            final String         _outputDirectory, 
+                            final String         _fileName, 
+                            final String         _shapeType,
+                            final String         _geomColumnName,
+                            final String         _polygonOrientation,
+                            final String         _dbaseType,
+                            final String         _geomRenderFormat,
+                            final String         _prjString,
+                            final int            _decimalDigitsOfPrecision,
+                            final int            _commit,
+                            final int            _spatialIndex,
+                            final int            _partSizeMB )
+    throws  SQLException, 
+            IOException, 
+            IllegalArgumentException 
+    {  
+        final ShapeType sType = validateParameters(_outputDirectory,_fileName,_shapeType);
+        if (Strings.isEmpty(_sql) ) {
+            throw new IllegalArgumentException("SQL must be provided");
+        }
+        if (_connections == null || _connections.length == 0 || _connections[0] == null ) {
+            throw new IllegalArgumentException("At least one connection must be provided");
+        }
+        final int     parts = Math.max(1,_parts);
+        final String baseName = FileUtils.getFileNameFromPath(_fileName,true);
+        if ( _connections.length < parts ) {
+            return writeRouted(_connections[0],_sql,_partitionKey,parts,_outputDirectory,baseName,sType,
+                               _geomColumnName,_polygonOrientation,_dbaseType,_geomRenderFormat,_prjString,
+                               _decimalDigitsOfPrecision,_commit,_spatialIndex,_partSizeMB);
+        }
+        ExecutorService workers = Executors.newFixedThreadPool(parts);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>(parts);
+            for (int i = 0; i < parts; i++) {
+                final int part = i;
+                results.add(workers.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        Connection conn = _connections[part];
+                        Statement  stmt = conn.createStatement();
+                        try {
+                            ResultSet rSet = stmt.executeQuery(partitionSQL(_sql,_partitionKey,parts,part));
+                            SHPExporter geoExporter = null;
+                            // Geometry column index and name are held statically
+                            synchronized (WriteSHPFile.class) {
+                                setGeometryColumnIndexAndName((OracleResultSetMetaData)rSet.getMetaData(),
+                                                              _geomColumnName);
+                                geoExporter = createExporter(conn,
+                                                             rSet,
+                                                             FileUtils.FileNameBuilder(_outputDirectory,
+                                                                                       SHPExporter.getPartName(baseName,part+1),
+                                                                                       "shp"),
+                                                             sType,
+                                                             geomColumnIndex,
+                                                             geomColumnName,
+                                                             _polygonOrientation,
+                                                             _dbaseType,
+                                                             _geomRenderFormat,
+                                                             _prjString,
+                                                             _decimalDigitsOfPrecision,
+                                                             _commit,
+                                                             _spatialIndex,
+                                                             _partSizeMB);
+                            }
+                            new ExportTask(geoExporter).Export();
+                            return geoExporter.getRowCount();
+                        } finally {
+                            stmt.close();
+                        }
+                    }
+                }));
+            }
+            int rows = 0;
+            for (int i = 0; i < parts; i++) {
+                try {
+                    rows += results.get(i).get();
+                } catch (ExecutionException ee) {
+                    throw new IOException("WriteSHPFile: Error writing part " + (i+1) + " (" + ee.getCause().getMessage() + ")");
+                } catch (InterruptedException ie) {
+                    throw new IOException("WriteSHPFile: Interrupted writing part " + (i+1));
+                }
+            }
+            LOGGER.info("WriteSHPFile: Wrote " + rows + " rows in " + parts + " parts");
+            return rows;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs _sql once and writes its rows to _parts shapefiles through a PartitionedSHPExporter.
+     * @return int : Number of rows written
+     */
+    private static int writeRouted(Connection _conn,
+                                   String     _sql,
+                                   String     _partitionKey,
+                                   int        _parts,
+                                   String     _outputDirectory,
+                                   String     _baseName,
+                                   ShapeType  _shapeType,
+                                   String     _geomColumnName,
+                                   String     _polygonOrientation,
+                                   String     _dbaseType,
+                                   String     _geomRenderFormat,
+                                   String     _prjString,
+                                   int        _decimalDigitsOfPrecision,
+                                   int        _commit,
+                                   int        _spatialIndex,
+                                   int        _partSizeMB)
+    throws SQLException,
+           IOException
+    {
+        Statement stmt = _conn.createStatement();
+        try {
+            ResultSet rSet = stmt.executeQuery(_sql);
+            PartitionedSHPExporter geoExporter = null;
+            synchronized (WriteSHPFile.class) {
+                setGeometryColumnIndexAndName((OracleResultSetMetaData)rSet.getMetaData(),
+                                              _geomColumnName);
+                SHPExporter[] partExporters = new SHPExporter[_parts];
+                for (int i = 0; i < _parts; i++) {
+                    partExporters[i] = createExporter(_conn,rSet,
+                                                      FileUtils.FileNameBuilder(_outputDirectory,
+                                                                                SHPExporter.getPartName(_baseName,i+1),
+                                                                                "shp"),
+                                                      _shapeType,geomColumnIndex,geomColumnName,_polygonOrientation,
+                                                      _dbaseType,_geomRenderFormat,_prjString,_decimalDigitsOfPrecision,
+                                                      _commit,_spatialIndex,_partSizeMB);
+                }
+                geoExporter = new PartitionedSHPExporter(_conn,
+                                                         FileUtils.FileNameBuilder(_outputDirectory,_baseName,"shp"),
+                                                         SDO.getPolygonRingOrientation(),
+                                                         _decimalDigitsOfPrecision,
+                                                         partExporters,
+                                                         Strings.isEmpty(_partitionKey) ? null : _partitionKey);
+                configureExporter(geoExporter,rSet,_shapeType,geomColumnIndex,geomColumnName,_polygonOrientation,
+                                  _dbaseType,_geomRenderFormat,_prjString,_decimalDigitsOfPrecision,
+                                  _commit,_spatialIndex,_partSizeMB);
+            }
+            try {
+                new ExportTask(geoExporter).Export();
+            } catch (Exception e) {
+                throw new IOException("WriteSHPFile: Error writing " + _parts + " parts (" + e.getMessage() + ")");
+            }
+            int rows = geoExporter.getRowCount();
+            LOGGER.info("WriteSHPFile: Wrote " + rows + " rows in " + _parts + " parts from one scan");
+            return rows;
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * @return String : _sql restricted to the rows of part _part (0 based) of _parts
+     */
+    public static String partitionSQL(String _sql,
+                                      String _partitionKey,
+                                      int    _parts,
+                                      int    _part)
+    {
+        if ( _parts <= 1 ) {
+            return _sql;
+        }
+        return "SELECT * FROM (" + _sql + ") WHERE ORA_HASH(" + 
+               (Strings.isEmpty(_partitionKey) ? "ROWID" : _partitionKey) + "," + (_parts - 1) + ") = " + _part;
+    }
+
+    private static ShapeType validateParameters(String _outputDirectory,
+                                                String _fileName,
+                                                String _shapeType)
+    {
         // Check input
         if (Strings.isEmpty(_outputDirectory) ) {
             // though this may not work inside Oracle if user calling procedure has not had granted write permissions
@@ -167,46 +496,72 @@ public class WriteSHPFile {
         if ( sType == ShapeType.UNDEFINED) {
             throw new IllegalArgumentException("Unknown shapeType (" + _shapeType + ") provided.");
         }
+        return sType;
+    }
 
-        DBConnection.setConnection((OracleConnection)_resultSet.getStatement().getConnection());
-        OracleResultSet oResultSet = (OracleResultSet)_resultSet;
-        setGeometryColumnIndexAndName((OracleResultSetMetaData) _resultSet.getMetaData(),
-                                      _geomColumnName);
-
+    private static SHPExporter createExporter(Connection _conn,
+                                              ResultSet  _resultSet,
+                                              String     _fullFileName,
+                                              ShapeType  _shapeType,
+                                              int        _geomColumnIndex,
+                                              String     _geomColumnName,
+                                              String     _polygonOrientation,
+                                              String     _dbaseType,
+                                              String     _geomRenderFormat,
+                                              String     _prjString,
+                                              int        _decimalDigitsOfPrecision,
+                                              int        _commit,
+                                              int        _spatialIndex,
+                                              int        _partSizeMB)
+    throws SQLException
+    {
         SHPExporter geoExporter;
-        String fullFileName = FileUtils.FileNameBuilder(_outputDirectory,_fileName,"shp");
         geoExporter = new SHPExporter(
-                             DBConnection.getConnection(),
-                             fullFileName,
+                             _conn,
+                             _fullFileName,
                              _resultSet.getStatement().getMaxRows(),
                              SDO.getPolygonRingOrientation(),
                              _decimalDigitsOfPrecision
                       );
         //geoExporter.setConnection(DBConnection.getConnection());
-        geoExporter.setBaseName(FileUtils.getFileNameFromPath(_fileName,true));
-        geoExporter.setResultSet(oResultSet);
-        geoExporter.setPrecisionScale(_decimalDigitsOfPrecision);
-        geoExporter.setPrjContents(_prjString);
-        geoExporter.setGeometryFormat(_geomRenderFormat);
-        geoExporter.setGeoColumnIndex(geomColumnIndex);
-        geoExporter.setGeoColumnName(geomColumnName);
-        geoExporter.setShapefileType(sType);
+        geoExporter.setBaseName(FileUtils.getFileNameFromPath(_fullFileName,true));
+        configureExporter(geoExporter,_resultSet,_shapeType,_geomColumnIndex,_geomColumnName,_polygonOrientation,
+                          _dbaseType,_geomRenderFormat,_prjString,_decimalDigitsOfPrecision,
+                          _commit,_spatialIndex,_partSizeMB);
+        return geoExporter;
+    }
+
+    private static void configureExporter(SHPExporter _exporter,
+                                          ResultSet   _resultSet,
+                                          ShapeType   _shapeType,
+                                          int         _geomColumnIndex,
+                                          String      _geomColumnName,
+                                          String      _polygonOrientation,
+                                          String      _dbaseType,
+                                          String      _geomRenderFormat,
+                                          String      _prjString,
+                                          int         _decimalDigitsOfPrecision,
+                                          int         _commit,
+                                          int         _spatialIndex,
+                                          int         _partSizeMB)
+    {
+        _exporter.setResultSet((OracleResultSet)_resultSet);
+        _exporter.setPrecisionScale(_decimalDigitsOfPrecision);
+        _exporter.setPrjContents(_prjString);
+        _exporter.setGeometryFormat(_geomRenderFormat);
+        _exporter.setGeoColumnIndex(_geomColumnIndex);
+        _exporter.setGeoColumnName(_geomColumnName);
+        _exporter.setShapefileType(_shapeType);
         if (_decimalDigitsOfPrecision >= 0) {
-            geoExporter.setPrecisionScale(_decimalDigitsOfPrecision );
+            _exporter.setPrecisionScale(_decimalDigitsOfPrecision );
         }
         SDO.setPolygonRingOrientation(SDO.POLYGON_RING_ORIENTATION.fromString(_polygonOrientation.toUpperCase()));
-        geoExporter.setPolygonOrientation(SDO.getPolygonRingOrientation());
-        geoExporter.setXBaseType(DBFTypes.getDBFType(_dbaseType));
-        geoExporter.setCommit(_commit <= 0 ? 100 : _commit);
-        geoExporter.setRecordIdentifier(geoExporter.hasAttributes() ? null : "FID");
-        // Now process the resultset and create SHP file...
-        try {
-            ExportTask et = new ExportTask(geoExporter);
-            et.Export();
-        } catch (Exception e) {
-            e.printStackTrace();
-            LOGGER.info("WriteSHPFile: Error Writing Shapefile (" + e.getLocalizedMessage() + ")");
-        }
-    }    
+        _exporter.setPolygonOrientation(SDO.getPolygonRingOrientation());
+        _exporter.setXBaseType(DBFTypes.getDBFType(_dbaseType));
+        _exporter.setCommit(_commit <= 0 ? 100 : _commit);
+        _exporter.setSpatialIndex(_spatialIndex == 1);
+        _exporter.setPartSize(_partSizeMB <= 0 ? 0L : (long)_partSizeMB * 1024L * 1024L);
+        _exporter.setRecordIdentifier(_exporter.hasAttributes() ? null : "FID");
+    }
 
 }
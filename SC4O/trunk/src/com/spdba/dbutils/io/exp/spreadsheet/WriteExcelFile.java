@@ -545,6 +545,24 @@ public class WriteExcelFile {
         return cellObject;
     }
 
+    /**
+     * Create default fonts and Formats if null
+     */
+    protected static void createDefaultFormats()
+    throws WriteException
+    {
+        if (numberFormat   == null) numberFormat  = new WritableCellFormat(createFont("TIMES", 10, false, false, "BLUE", "NORMAL_SCRIPT", null),
+                                                                           NumberFormats.DEFAULT);
+        if (integerFormat  == null) integerFormat = new WritableCellFormat(createFont("TIMES", 10, false, false, "GREEN", "NORMAL_SCRIPT", null),
+                                                                           NumberFormats.INTEGER);
+        if (stringFormat   == null) setStringFormat(  "ARIEL",12, false,false, "BLACK",      "NORMAL_SCRIPT",null);;
+        if (geomFormat     == null) setGeomCellFormat("TIMES", 8, false,false, "SEA_GREEN",  "NORMAL_SCRIPT",null);
+        if (dateFormat     == null) setDateFormat(    "ARIEL", 10, true,false, "DARK_YELLOW","NORMAL_SCRIPT", null);
+        if (datetimeFormat == null) setDatetimeFormat("ARIEL",10,  true,false, "DARK_YELLOW","NORMAL_SCRIPT", null);
+        if (timeFormatter  == null) setDatetimeFormat("ARIEL",10,  true,false, "DARK_YELLOW","NORMAL_SCRIPT", null);
+        if (boolFormat == null)     boolFormat = new WritableCellFormat(createFont("COURIER", 10, true, false, "OLIVE_GREEN", "NORMAL_SCRIPT",null));
+    }
+
     /**
      * Creates column names in to first row of spreadsheet
      * @throws SQLException if there is an error reading the result set metadata. 
@@ -560,17 +578,7 @@ public class WriteExcelFile {
                 throw new Exception("No heading columns written to sheet " + 
                                     _workbook.getSheet(0).getName());
 
-            // Create default fonts and Formats if null
-            if (numberFormat   == null) numberFormat  = new WritableCellFormat(createFont("TIMES", 10, false, false, "BLUE", "NORMAL_SCRIPT", null),
-                                                                               NumberFormats.DEFAULT);
-            if (integerFormat  == null) integerFormat = new WritableCellFormat(createFont("TIMES", 10, false, false, "GREEN", "NORMAL_SCRIPT", null),
-                                                                               NumberFormats.INTEGER);
-            if (stringFormat   == null) setStringFormat(  "ARIEL",12, false,false, "BLACK",      "NORMAL_SCRIPT",null);;
-            if (geomFormat     == null) setGeomCellFormat("TIMES", 8, false,false, "SEA_GREEN",  "NORMAL_SCRIPT",null);
-            if (dateFormat     == null) setDateFormat(    "ARIEL", 10, true,false, "DARK_YELLOW","NORMAL_SCRIPT", null);
-            if (datetimeFormat == null) setDatetimeFormat("ARIEL",10,  true,false, "DARK_YELLOW","NORMAL_SCRIPT", null);
-            if (timeFormatter  == null) setDatetimeFormat("ARIEL",10,  true,false, "DARK_YELLOW","NORMAL_SCRIPT", null);
-            if (boolFormat == null)     boolFormat = new WritableCellFormat(createFont("COURIER", 10, true, false, "OLIVE_GREEN", "NORMAL_SCRIPT",null));
+            createDefaultFormats();
 
             // Get ResultSet metdata to determine if a field is supported
             ResultSetMetaData metaData = _resultSet.getMetaData();
@@ -761,7 +769,9 @@ public class WriteExcelFile {
             integerFormat = null;
             numberFormat = null;
             stringFormat = null;
+            stringFormatWrapped = null;
             geomFormat = null;
+            geomFormatWrapped = null;
             dateFormat = null;
             datetimeFormat = null;
             timeFormat = null;
@@ -777,4 +787,180 @@ public class WriteExcelFile {
         }
     }
 
+    /**
+     * Writes column names as the first row of the current .xlsx sheet
+     * @throws SQLException if there is an error reading the result set metadata. 
+     */
+    protected static void writeColumnHeadings(ResultSetMetaData _metaData,
+                                              XLSXStreamWriter  _writer) 
+    throws SQLException, 
+           IOException,
+           WriteException
+    { 
+        WritableFont headingFont = new WritableFont(WritableFont.ARIAL, 12, WritableFont.BOLD);         
+        headingFont.setColour(Colour.GRAY_80);
+        int headingStyle = _writer.addStyle(new WritableCellFormat(headingFont));
+        _writer.startRow();
+        for (int i = 1; i <= _metaData.getColumnCount(); i++) 
+        {
+            if (SQLConversionTools.isSupportedType(_metaData.getColumnType(i),
+                                                   _metaData.getColumnTypeName(i)))
+            {
+                _writer.writeString(_metaData.getColumnName(i),headingStyle);
+            }
+        }
+        _writer.endRow();
+    }
+
+    /**
+     * Streams the rows of the resultSet to .xlsx sheets. Each sheet holds up to
+     * XLSXStreamWriter.MAX_ROWS rows including its headings. Further rows go to new
+     * sheets (_sheetName_2, _sheetName_3 ...) whatever the stratification, so no row is lost.
+     * A sheet has room for more columns than a SELECT can return so V is not needed.
+     * @throws SQLException if there is an error reading the result set.
+     */
+    protected static void writeData(java.sql.ResultSet _resultSet,
+                                    XLSXStreamWriter   _writer,
+                                    String             _sheetName) 
+    throws SQLException, 
+           IOException,
+           WriteException
+    { 
+        createDefaultFormats();
+        int numberStyle       = _writer.addStyle(numberFormat),
+            integerStyle      = _writer.addStyle(integerFormat),
+            stringStyle       = _writer.addStyle(stringFormat),
+            stringWrapStyle   = _writer.addStyle(stringFormatWrapped),
+            geomWrapStyle     = _writer.addStyle(geomFormatWrapped),
+            dateStyle         = _writer.addStyle(dateFormat),
+            datetimeStyle     = _writer.addStyle(datetimeFormat),
+            timeStyle         = _writer.addStyle(timeFormat == null ? datetimeFormat : timeFormat),
+            boolStyle         = _writer.addStyle(boolFormat);
+
+        ResultSetMetaData metaData = _resultSet.getMetaData();
+        int columns = metaData.getColumnCount();
+        boolean[] supported = new boolean[columns + 1];
+        int[]     types     = new int[columns + 1];
+        for (int i = 1; i <= columns; i++) {
+            supported[i] = SQLConversionTools.isSupportedType(metaData.getColumnType(i),
+                                                              metaData.getColumnTypeName(i));
+            types[i]     = metaData.getColumnType(i);
+        }
+        GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(getPrecision()));
+        OraReader             converter = new OraReader(geometryFactory);
+        Object               fieldValue;
+        while ( _resultSet.next() )
+        {
+            if ( _writer.getRowCount() == XLSXStreamWriter.MAX_ROWS ) {
+                _writer.startSheet(_sheetName + "_" + String.valueOf(_writer.getSheetCount() + 1));
+                writeColumnHeadings(metaData,_writer);
+            }
+            _writer.startRow();
+            for (int i = 1; i <= columns; i++) 
+            {
+                if ( ! supported[i] ) {
+                    continue;
+                }
+                fieldValue = getValue(_resultSet,
+                                      i,
+                                      converter,
+                                      geometryFactory,
+                                      charSetName);
+                if (_resultSet.wasNull() || fieldValue == null) {
+                    _writer.writeBlank();
+                } else if (types[i] == OracleTypes.STRUCT) {
+                    _writer.writeString(fieldValue.toString(),geomWrapStyle);
+                } else if (fieldValue instanceof String) {
+                    String fValue = (String)fieldValue;
+                    _writer.writeString(fValue,fValue.length() > 255 ? stringWrapStyle : stringStyle);
+                } else if (fieldValue instanceof Timestamp) {
+                    _writer.writeDate((Timestamp)fieldValue,datetimeStyle);
+                } else if (fieldValue instanceof Time) {
+                    _writer.writeDate((Time)fieldValue,timeStyle);
+                } else if (fieldValue instanceof java.util.Date) {
+                    _writer.writeDate((java.util.Date)fieldValue,dateStyle);
+                } else if (fieldValue instanceof java.lang.Boolean) {
+                    _writer.writeBoolean(((java.lang.Boolean)fieldValue).booleanValue(),boolStyle);
+                } else if (fieldValue instanceof Long || 
+                           fieldValue instanceof Integer || 
+                           fieldValue instanceof Short) {
+                    _writer.writeNumber(((java.lang.Number)fieldValue).longValue(),integerStyle);
+                } else if (fieldValue instanceof java.lang.Number) {
+                    _writer.writeNumber(((java.lang.Number)fieldValue).doubleValue(),numberStyle);
+                } else {
+                    _writer.writeString(fieldValue.toString(),stringStyle);
+                }
+            }
+            _writer.endRow();
+        }
+    }
+
+    /**
+     * Creates and writes an Excel spreadsheet from the passed in resultSet as
+     * write(ResultSet,String,String,String,String,String,String,String,String,int) does 
+     * or, if _xlsx is 1, as an Excel 2007+ .xlsx workbook.
+     * <p>
+     * An .xlsx workbook is streamed to disk a row at a time so memory use does not grow with
+     * the number of rows, and each sheet holds up to 1,048,576 rows (including headings) 
+     * rather than 65,535. The setStringFormat, setGeomCellFormat, setDateFormat etc cell formats apply to both.
+     * 
+     * @param _xlsx - 1 to write an .xlsx workbook, 0 an .xls workbook
+     */
+    public static void write(java.sql.ResultSet _resultSet, 
+                             java.lang.String   _outputDirectory, 
+                             java.lang.String   _fileName,
+                             java.lang.String   _sheetName,
+                             java.lang.String   _stratification,
+                             java.lang.String   _geomFormat,
+                             java.lang.String   _dateFormat,
+                             java.lang.String   _timeFormat,
+                             java.lang.String   _charSetName,
+                             int                _precision,
+                             int                _xlsx) 
+    throws IOException, Exception
+    {
+        if ( _xlsx != 1 ) {
+            write(_resultSet,_outputDirectory,_fileName,_sheetName,_stratification,
+                  _geomFormat,_dateFormat,_timeFormat,_charSetName,_precision);
+            return;
+        }
+        // Check input
+        if (Strings.isEmpty(_outputDirectory)) throw new IllegalArgumentException("Output directory must be provided and Oracle user must have write permission.");
+        if (Strings.isEmpty(_fileName))        throw new IllegalArgumentException("Filename must be provided");
+        setStratification(_stratification.charAt(0));   
+        setGeometryFormat(_geomFormat);
+        setDateFormatString(_dateFormat);
+        setTimeFormatString(_timeFormat);
+        setPrecisionScale(_precision);
+        setCharSetName(_charSetName,_resultSet);
+
+        String sheetName = Strings.isEmpty(_sheetName) ? "Sheet" : _sheetName;
+        XLSXStreamWriter writer = null;
+        try {            
+            writer = new XLSXStreamWriter(new File(FileUtils.FileNameBuilder(_outputDirectory,_fileName,"xlsx")));
+            writer.startSheet(sheetName);
+            writeColumnHeadings(_resultSet.getMetaData(),writer);
+            writeData(_resultSet,writer,sheetName);
+            writer.close();
+            writer = null;
+        } finally {
+            integerFormat = null;
+            numberFormat = null;
+            stringFormat = null;
+            stringFormatWrapped = null;
+            geomFormat = null;
+            geomFormatWrapped = null;
+            dateFormat = null;
+            datetimeFormat = null;
+            timeFormat = null;
+            boolFormat = null;
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (Exception e) {
+                }
+            }
+        }
+    }
+
 }
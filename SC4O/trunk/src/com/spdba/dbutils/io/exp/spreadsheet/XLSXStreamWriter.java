@@ -0,0 +1,585 @@
+package com.spdba.dbutils.io.exp.spreadsheet;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import jxl.format.CellFormat;
+import jxl.format.Font;
+import jxl.format.Format;
+import jxl.format.RGB;
+import jxl.format.ScriptStyle;
+import jxl.format.UnderlineStyle;
+
+import jxl.biff.DisplayFormat;
+import jxl.biff.XFRecord;
+
+/**
+ * Writes an Excel 2007+ (.xlsx, Office Open XML) workbook a row at a time.
+ * <p>
+ * Each worksheet's XML is written straight into its zip entry as rows are added, so
+ * memory use does not grow with the number of rows (unlike jxl, which holds the whole
+ * workbook until it is written). Only the styles and a bounded shared strings table are
+ * kept: a string is shared (stored once and referenced by index) if it is no longer than
+ * getSharedStringLength() and the table has fewer than getSharedStrings() entries, which
+ * suits repeated codes and names; all other strings (eg geometry text) are written inline.
+ * The shared strings, styles and workbook parts are written when the workbook is closed.
+ * <p>
+ * Cell formats are jxl CellFormats (as built by WriteExcelFile's setStringFormat etc):
+ * their font, number/date format and wrapping are converted to .xlsx styles.
+ * Sheets are written one after another: a sheet is ended by starting the next or closing.
+ */
+public class XLSXStreamWriter
+{
+    /** Limits of a single .xlsx worksheet */
+    public static final int MAX_ROWS      = 1048576;
+    public static final int MAX_COLS      = 16384;
+    public static final int MAX_CELL_SIZE = 32767;
+
+    /** Default maximum number of entries in the shared strings table */
+    public static final int DEFAULT_SHARED_STRINGS       = 16384;
+    /** Default maximum length of a string that is shared */
+    public static final int DEFAULT_SHARED_STRING_LENGTH = 64;
+
+    private static final String SPREADSHEET_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String RELATIONSHIP_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String OFFICE_DOCUMENT = "http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument";
+    private static final String CONTENT_TYPE    = "application/vnd.openxmlformats-officedocument.spreadsheetml.";
+    /** First id available for custom number formats */
+    private static final int    CUSTOM_FORMAT_ID = 164;
+    /** Days from Excel's epoch (1899-12-30) to 1970-01-01 */
+    private static final double EPOCH_DAYS = 25569.0;
+    private static final double DAY_MILLIS = 86400000.0;
+
+    private ZipOutputStream                   zip = null;
+    private Writer                         writer = null;
+    private List<String>               sheetNames = new ArrayList<String>();
+    private Set<String>               usedSheetNames = new HashSet<String>();  // upper case: Excel ignores case
+    private boolean                       inSheet = false;
+    private int                               row = 0;    // rows written to current sheet
+    private int                            column = 0;    // next column in current row
+
+    private Map<CellFormat,Integer>        styles = new IdentityHashMap<CellFormat,Integer>();
+    private List<CellFormat>          styleFormats = new ArrayList<CellFormat>();
+
+    private LinkedHashMap<String,Integer> strings = new LinkedHashMap<String,Integer>();
+    private int                     sharedStrings = DEFAULT_SHARED_STRINGS;
+    private int                sharedStringLength = DEFAULT_SHARED_STRING_LENGTH;
+    private long                 sharedReferences = 0;
+
+    private String[]                  columnNames = new String[0];
+    private TimeZone                     timeZone = TimeZone.getDefault();
+
+    public XLSXStreamWriter(File _file)
+    throws IOException
+    {
+        this.zip    = new ZipOutputStream(new FileOutputStream(_file));
+        this.writer = new BufferedWriter(new OutputStreamWriter(this.zip,"UTF-8"),64 * 1024);
+    }
+
+    /**
+     * @param _sharedStrings : int : Maximum entries in the shared strings table; 0 writes all strings inline
+     */
+    public void setSharedStrings(int _sharedStrings) {
+        this.sharedStrings = Math.max(0,_sharedStrings);
+    }
+
+    public int getSharedStrings() {
+        return this.sharedStrings;
+    }
+
+    /**
+     * @param _length : int : Longest string that is added to the shared strings table
+     */
+    public void setSharedStringLength(int _length) {
+        this.sharedStringLength = Math.max(0,_length);
+    }
+
+    public int getSharedStringLength() {
+        return this.sharedStringLength;
+    }
+
+    /**
+     * @return int : Number of distinct strings in the shared strings table
+     */
+    public int getSharedStringCount() {
+        return this.strings.size();
+    }
+
+    /**
+     * Registers a cell format, returning the style index cells are written with.
+     * The same CellFormat object always returns the same index; null is the default style (0).
+     */
+    public int addStyle(CellFormat _format) {
+        if ( _format == null ) {
+            return 0;
+        }
+        Integer style = this.styles.get(_format);
+        if ( style == null ) {
+            this.styleFormats.add(_format);
+            style = Integer.valueOf(this.styleFormats.size());
+            this.styles.put(_format,style);
+        }
+        return style.intValue();
+    }
+
+    /**
+     * @return int : Rows written to the current sheet
+     */
+    public int getRowCount() {
+        return this.row;
+    }
+
+    public int getSheetCount() {
+        return this.sheetNames.size();
+    }
+
+    /**
+     * @param _sheet : int : 1 based sheet number
+     * @return String : Name the sheet was given
+     */
+    public String getSheetName(int _sheet) {
+        return this.sheetNames.get(_sheet - 1);
+    }
+
+    /**
+     * Ends any current sheet and starts a new one.
+     * @param _name : String : Sheet name; characters Excel does not allow are replaced and it is cut to 31 characters.
+     *                         A name already used (ignoring case) has _2, _3 ... put in place of its last characters.
+     */
+    public void startSheet(String _name)
+    throws IOException
+    {
+        if ( this.inSheet ) {
+            endSheet();
+        }
+        String name = (_name == null || _name.length() == 0 ? "Sheet" : _name).replaceAll("[\\[\\]:*?/\\\\]","_");
+        if ( name.length() > 31 ) {
+            name = name.substring(0,31);
+        }
+        String unique = name;
+        for (int n = 2; this.usedSheetNames.contains(unique.toUpperCase()); n++) {
+            String suffix = "_" + n;
+            unique = name.substring(0,Math.min(name.length(),31 - suffix.length())) + suffix;
+        }
+        this.usedSheetNames.add(unique.toUpperCase());
+        this.sheetNames.add(unique);
+        this.zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + this.sheetNames.size() + ".xml"));
+        this.writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        this.writer.write("<worksheet xmlns=\"" + SPREADSHEET_NS + "\" xmlns:r=\"" + RELATIONSHIP_NS + "\"><sheetData>\n");
+        this.inSheet = true;
+        this.row     = 0;
+        this.column  = -1;
+    }
+
+    public void startRow()
+    throws IOException
+    {
+        if ( this.row == MAX_ROWS ) {
+            throw new IOException("A worksheet can hold at most " + MAX_ROWS + " rows");
+        }
+        this.row++;
+        this.column = 0;
+        this.writer.write("<row r=\"");
+        this.writer.write(String.valueOf(this.row));
+        this.writer.write("\">");
+    }
+
+    public void endRow()
+    throws IOException
+    {
+        this.writer.write("</row>\n");
+        this.column = -1;
+    }
+
+    /** Leaves the next cell of the row empty */
+    public void writeBlank() {
+        this.column++;
+    }
+
+    public void writeString(String _value,
+                            int    _style)
+    throws IOException
+    {
+        if ( _value == null ) {
+            writeBlank();
+            return;
+        }
+        String value = _value.length() > MAX_CELL_SIZE ? _value.substring(0,MAX_CELL_SIZE) : _value;
+        Integer index = null;
+        if ( value.length() <= this.sharedStringLength ) {
+            index = this.strings.get(value);
+            if ( index == null && this.strings.size() < this.sharedStrings ) {
+                index = Integer.valueOf(this.strings.size());
+                this.strings.put(value,index);
+            }
+        }
+        if ( index != null ) {
+            this.sharedReferences++;
+            startCell(_style,"s");
+            this.writer.write("<v>");
+            this.writer.write(index.toString());
+            this.writer.write("</v></c>");
+        } else {
+            startCell(_style,"inlineStr");
+            this.writer.write("<is>");
+            writeText(this.writer,value);
+            this.writer.write("</is></c>");
+        }
+    }
+
+    public void writeNumber(double _value,
+                            int    _style)
+    throws IOException
+    {
+        if ( Double.isNaN(_value) || Double.isInfinite(_value) ) {
+            writeBlank();
+            return;
+        }
+        startCell(_style,null);
+        this.writer.write("<v>");
+        this.writer.write(_value == Math.rint(_value) && Math.abs(_value) < 1.0E15
+                          ? String.valueOf((long)_value)
+                          : String.valueOf(_value));
+        this.writer.write("</v></c>");
+    }
+
+    public void writeBoolean(boolean _value,
+                             int     _style)
+    throws IOException
+    {
+        startCell(_style,"b");
+        this.writer.write(_value ? "<v>1</v></c>" : "<v>0</v></c>");
+    }
+
+    /**
+     * Writes a date (and time) as an Excel serial day number in the writer's time zone.
+     * A java.sql.Time is written as a fraction of a day only.
+     */
+    public void writeDate(java.util.Date _value,
+                          int            _style)
+    throws IOException
+    {
+        if ( _value == null ) {
+            writeBlank();
+            return;
+        }
+        long   millis = _value.getTime() + this.timeZone.getOffset(_value.getTime());
+        double serial = EPOCH_DAYS + (double)millis / DAY_MILLIS;
+        if ( _value instanceof java.sql.Time ) {
+            serial = serial - Math.floor(serial);
+        }
+        writeNumber(serial,_style);
+    }
+
+    private void startCell(int    _style,
+                           String _type)
+    throws IOException
+    {
+        if ( this.column >= MAX_COLS ) {
+            throw new IOException("A worksheet can hold at most " + MAX_COLS + " columns");
+        }
+        this.writer.write("<c r=\"");
+        this.writer.write(columnName(this.column));
+        this.writer.write(String.valueOf(this.row));
+        this.writer.write('"');
+        if ( _style > 0 ) {
+            this.writer.write(" s=\"");
+            this.writer.write(String.valueOf(_style));
+            this.writer.write('"');
+        }
+        if ( _type != null ) {
+            this.writer.write(" t=\"");
+            this.writer.write(_type);
+            this.writer.write('"');
+        }
+        this.writer.write('>');
+        this.column++;
+    }
+
+    /** Column letters (A, B ... Z, AA ...) for a 0 based column, cached */
+    private String columnName(int _column) {
+        if ( _column >= this.columnNames.length ) {
+            String[] names = new String[Math.min(MAX_COLS,Math.max(_column + 1,this.columnNames.length * 2 + 26))];
+            System.arraycopy(this.columnNames,0,names,0,this.columnNames.length);
+            for (int i = this.columnNames.length; i < names.length; i++) {
+                StringBuilder name = new StringBuilder(3);
+                for (int c = i + 1; c > 0; c = (c - 1) / 26) {
+                    name.insert(0,(char)('A' + (c - 1) % 26));
+                }
+                names[i] = name.toString();
+            }
+            this.columnNames = names;
+        }
+        return this.columnNames[_column];
+    }
+
+    public void endSheet()
+    throws IOException
+    {
+        if ( ! this.inSheet ) {
+            return;
+        }
+        this.writer.write("</sheetData></worksheet>\n");
+        this.writer.flush();
+        this.zip.closeEntry();
+        this.inSheet = false;
+    }
+
+    /**
+     * Ends the current sheet, writes the shared strings, styles and workbook parts and closes the file.
+     */
+    public void close()
+    throws IOException
+    {
+        if ( this.zip == null ) {
+            return;
+        }
+        try {
+            if ( this.sheetNames.isEmpty() ) {
+                startSheet("Sheet");
+            }
+            endSheet();
+            writeSharedStrings();
+            writeStyles();
+            writeWorkbook();
+            this.writer.flush();
+            this.zip.finish();
+        } finally {
+            this.writer.close();
+            this.zip     = null;
+            this.writer  = null;
+            this.strings = null;
+        }
+    }
+
+    private void startEntry(String _name)
+    throws IOException
+    {
+        this.zip.putNextEntry(new ZipEntry(_name));
+        this.writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+    }
+
+    private void endEntry()
+    throws IOException
+    {
+        this.writer.flush();
+        this.zip.closeEntry();
+    }
+
+    private void writeSharedStrings()
+    throws IOException
+    {
+        startEntry("xl/sharedStrings.xml");
+        this.writer.write("<sst xmlns=\"" + SPREADSHEET_NS + "\" count=\"" + this.sharedReferences + "\" uniqueCount=\"" + this.strings.size() + "\">");
+        for (String value : this.strings.keySet()) {
+            this.writer.write("<si>");
+            writeText(this.writer,value);
+            this.writer.write("</si>");
+        }
+        this.writer.write("</sst>\n");
+        endEntry();
+    }
+
+    private void writeStyles()
+    throws IOException
+    {
+        // Custom number formats (jxl built in formats have the same ids in .xlsx)
+        LinkedHashMap<String,Integer> numberFormats = new LinkedHashMap<String,Integer>();
+        int[] formatIds = new int[this.styleFormats.size()];
+        for (int i = 0; i < formatIds.length; i++) {
+            CellFormat cellFormat = this.styleFormats.get(i);
+            Format format = cellFormat.getFormat();
+            if ( format == null && cellFormat instanceof XFRecord ) {
+                // A writable format's number format is only returned by getFormat once it is in a workbook
+                DisplayFormat displayFormat = ((XFRecord)cellFormat).getDisplayFormat();
+                if ( displayFormat instanceof Format ) {
+                    format = (Format)displayFormat;
+                }
+            }
+            if ( format == null ) {
+                formatIds[i] = 0;
+            } else if ( format instanceof DisplayFormat && ((DisplayFormat)format).isBuiltIn() ) {
+                formatIds[i] = ((DisplayFormat)format).getFormatIndex();
+            } else {
+                Integer id = numberFormats.get(format.getFormatString());
+                if ( id == null ) {
+                    id = Integer.valueOf(CUSTOM_FORMAT_ID + numberFormats.size());
+                    numberFormats.put(format.getFormatString(),id);
+                }
+                formatIds[i] = id.intValue();
+            }
+        }
+        startEntry("xl/styles.xml");
+        StringBuilder xml = new StringBuilder(1024);
+        xml.append("<styleSheet xmlns=\"").append(SPREADSHEET_NS).append("\">");
+        if ( numberFormats.size() > 0 ) {
+            xml.append("<numFmts count=\"").append(numberFormats.size()).append("\">");
+            for (Map.Entry<String,Integer> numberFormat : numberFormats.entrySet()) {
+                xml.append("<numFmt numFmtId=\"").append(numberFormat.getValue()).append("\" formatCode=\"");
+                escape(xml,numberFormat.getKey(),true);
+                xml.append("\"/>");
+            }
+            xml.append("</numFmts>");
+        }
+        xml.append("<fonts count=\"").append(this.styleFormats.size() + 1).append("\">");
+        xml.append("<font><sz val=\"11\"/><name val=\"Calibri\"/><family val=\"2\"/></font>");
+        for (CellFormat format : this.styleFormats) {
+            appendFont(xml,format.getFont());
+        }
+        xml.append("</fonts>");
+        xml.append("<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill><fill><patternFill patternType=\"gray125\"/></fill></fills>");
+        xml.append("<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>");
+        xml.append("<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>");
+        xml.append("<cellXfs count=\"").append(this.styleFormats.size() + 1).append("\">");
+        xml.append("<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>");
+        for (int i = 0; i < formatIds.length; i++) {
+            xml.append("<xf numFmtId=\"").append(formatIds[i]).append("\" fontId=\"").append(i + 1)
+               .append("\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyFont=\"1\"");
+            if ( formatIds[i] != 0 ) {
+                xml.append(" applyNumberFormat=\"1\"");
+            }
+            if ( this.styleFormats.get(i).getWrap() ) {
+                xml.append(" applyAlignment=\"1\"><alignment wrapText=\"1\"/></xf>");
+            } else {
+                xml.append("/>");
+            }
+        }
+        xml.append("</cellXfs>");
+        xml.append("<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>");
+        xml.append("</styleSheet>\n");
+        this.writer.write(xml.toString());
+        endEntry();
+    }
+
+    private static void appendFont(StringBuilder _xml,
+                                   Font          _font)
+    {
+        _xml.append("<font>");
+        if ( _font != null ) {
+            if ( _font.getBoldWeight() >= 700 )  _xml.append("<b/>");
+            if ( _font.isItalic() )              _xml.append("<i/>");
+            if ( _font.isStruckout() )           _xml.append("<strike/>");
+            UnderlineStyle underline = _font.getUnderlineStyle();
+            if ( underline == UnderlineStyle.SINGLE )                 _xml.append("<u/>");
+            else if ( underline == UnderlineStyle.DOUBLE )            _xml.append("<u val=\"double\"/>");
+            else if ( underline == UnderlineStyle.SINGLE_ACCOUNTING ) _xml.append("<u val=\"singleAccounting\"/>");
+            else if ( underline == UnderlineStyle.DOUBLE_ACCOUNTING ) _xml.append("<u val=\"doubleAccounting\"/>");
+            ScriptStyle script = _font.getScriptStyle();
+            if ( script == ScriptStyle.SUPERSCRIPT )     _xml.append("<vertAlign val=\"superscript\"/>");
+            else if ( script == ScriptStyle.SUBSCRIPT )  _xml.append("<vertAlign val=\"subscript\"/>");
+            _xml.append("<sz val=\"").append(_font.getPointSize()).append("\"/>");
+            if ( _font.getColour() != null ) {
+                RGB rgb = _font.getColour().getDefaultRGB();
+                _xml.append("<color rgb=\"FF").append(String.format("%02X%02X%02X",rgb.getRed(),rgb.getGreen(),rgb.getBlue())).append("\"/>");
+            }
+            _xml.append("<name val=\"");
+            escape(_xml,_font.getName(),true);
+            _xml.append("\"/>");
+        } else {
+            _xml.append("<sz val=\"11\"/><name val=\"Calibri\"/>");
+        }
+        _xml.append("</font>");
+    }
+
+    private void writeWorkbook()
+    throws IOException
+    {
+        int sheets = this.sheetNames.size();
+        StringBuilder xml = new StringBuilder(1024);
+        xml.append("<workbook xmlns=\"").append(SPREADSHEET_NS).append("\" xmlns:r=\"").append(RELATIONSHIP_NS).append("\"><sheets>");
+        for (int i = 1; i <= sheets; i++) {
+            xml.append("<sheet name=\"");
+            escape(xml,this.sheetNames.get(i-1),true);
+            xml.append("\" sheetId=\"").append(i).append("\" r:id=\"rId").append(i).append("\"/>");
+        }
+        xml.append("</sheets></workbook>\n");
+        startEntry("xl/workbook.xml");
+        this.writer.write(xml.toString());
+        endEntry();
+
+        xml.setLength(0);
+        xml.append("<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">");
+        for (int i = 1; i <= sheets; i++) {
+            xml.append("<Relationship Id=\"rId").append(i)
+               .append("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\" Target=\"worksheets/sheet")
+               .append(i).append(".xml\"/>");
+        }
+        xml.append("<Relationship Id=\"rId").append(sheets + 1)
+           .append("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles\" Target=\"styles.xml\"/>");
+        xml.append("<Relationship Id=\"rId").append(sheets + 2)
+           .append("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/sharedStrings\" Target=\"sharedStrings.xml\"/>");
+        xml.append("</Relationships>\n");
+        startEntry("xl/_rels/workbook.xml.rels");
+        this.writer.write(xml.toString());
+        endEntry();
+
+        startEntry("_rels/.rels");
+        this.writer.write("<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">" +
+                          "<Relationship Id=\"rId1\" Type=\"" + OFFICE_DOCUMENT + "\" Target=\"xl/workbook.xml\"/></Relationships>\n");
+        endEntry();
+
+        xml.setLength(0);
+        xml.append("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">");
+        xml.append("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>");
+        xml.append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>");
+        xml.append("<Override PartName=\"/xl/workbook.xml\" ContentType=\"").append(CONTENT_TYPE).append("sheet.main+xml\"/>");
+        for (int i = 1; i <= sheets; i++) {
+            xml.append("<Override PartName=\"/xl/worksheets/sheet").append(i).append(".xml\" ContentType=\"")
+               .append(CONTENT_TYPE).append("worksheet+xml\"/>");
+        }
+        xml.append("<Override PartName=\"/xl/styles.xml\" ContentType=\"").append(CONTENT_TYPE).append("styles+xml\"/>");
+        xml.append("<Override PartName=\"/xl/sharedStrings.xml\" ContentType=\"").append(CONTENT_TYPE).append("sharedStrings+xml\"/>");
+        xml.append("</Types>\n");
+        startEntry("[Content_Types].xml");
+        this.writer.write(xml.toString());
+        endEntry();
+    }
+
+    /** Writes a &lt;t&gt; element, preserving leading and trailing spaces */
+    private static void writeText(Writer _writer,
+                                  String _value)
+    throws IOException
+    {
+        boolean preserve = _value.length() > 0 &&
+                           (Character.isWhitespace(_value.charAt(0)) || Character.isWhitespace(_value.charAt(_value.length()-1)));
+        _writer.write(preserve ? "<t xml:space=\"preserve\">" : "<t>");
+        StringBuilder text = new StringBuilder(_value.length() + 16);
+        escape(text,_value,false);
+        _writer.write(text.toString());
+        _writer.write("</t>");
+    }
+
+    /** Escapes XML markup and drops characters XML 1.0 does not allow */
+    private static void escape(StringBuilder _xml,
+                               String        _value,
+                               boolean       _attribute)
+    {
+        for (int i = 0; i < _value.length(); i++) {
+            char c = _value.charAt(i);
+            switch (c) {
+                case '&' : _xml.append("&amp;"); break;
+                case '<' : _xml.append("&lt;");  break;
+                case '>' : _xml.append("&gt;");  break;
+                case '"' : if ( _attribute ) { _xml.append("&quot;"); } else { _xml.append(c); } break;
+                default  : if ( c >= 0x20 || c == '\t' || c == '\n' || c == '\r' ) {
+                               if ( c < 0xFFFE ) _xml.append(c);
+                           }
+            }
+        }
+    }
+}
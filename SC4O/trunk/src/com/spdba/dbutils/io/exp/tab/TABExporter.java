@@ -59,6 +59,16 @@ public class TABExporter
               _polygonOrientation,
               _decimalDigitsOfPrecision
              );
+        this.setPartSize(0);
+    }
+
+    /**
+     * A TAB file wraps a single .dbf so the export is never split into parts:
+     * the part size is always 0 whatever is asked for.
+     */
+    @Override
+    public void setPartSize(long _partSize) {
+        super.setPartSize(0);
     }
 
     @Override
@@ -88,8 +98,8 @@ public class TABExporter
         try {
             // make sure to write the last Geometry set feature...
             //
-            if ( super.geomSet.size() > 0 ) {
-                super.writeGeomSet();
+            if ( super.geomList.size() > 0 ) {
+                super.writeGeomList();
             }
 
             String directoryName = FileUtils.getDirectory(super.getFileName());
@@ -144,7 +154,8 @@ public class TABExporter
 
     @Override
     public void close() {
-        // TODO Implement this method
+        // Writes the shapefile headers
+        super.close();
     }
 
     /**
@@ -1,117 +1,221 @@
 package com.spdba.dbutils.io.exp.wkb;
 
 
-import com.spdba.dbutils.spatial.SDO;
+import com.spdba.dbutils.JTS;
 import com.spdba.dbutils.sql.DBConnection;
-import com.spdba.dbutils.sql.SQLConversionTools;
+import com.spdba.dbutils.sql.FetchSizer;
 import com.spdba.dbutils.tools.Strings;
-import com.spdba.dbutils.tools.Tools;
 
 import es.upv.jaspa.Core;
 import es.upv.jaspa.exceptions.JASPAGeomParseException;
 import es.upv.jaspa.exceptions.JASPAIllegalArgumentException;
-import es.upv.jaspa.io.JTS2WKT;
-import es.upv.jaspa.io.WKT2JTS;
-
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import es.upv.jaspa.io.BinaryFormat;
+import es.upv.jaspa.io.JTS2GBLOB;
 
+import java.sql.ResultSet;
 import java.sql.SQLException;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import oracle.jdbc.OracleConnection;
+
+import oracle.sql.ARRAY;
+import oracle.sql.ArrayDescriptor;
 import oracle.sql.BLOB;
-import oracle.sql.CLOB;
 import oracle.sql.STRUCT;
 
 import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.GeometryFactory;
-import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.io.oracle.OraDescriptorCache;
 import org.locationtech.jts.io.oracle.OraReader;
-import org.locationtech.jts.io.oracle.OraWriter;
 
 
 public class EWKBExporter {
-            
+
+    /** Collection type of the BLOBs returned by the set based functions when none is given */
+    public static final String DEFAULT_BLOBSET_TYPE = "T_BLOBSET";
+
+    /**
+     * Shared by all calls: the reader holds no state between reads and sets
+     * each geometry's SRID from its SDO_GEOMETRY.
+     */
+    private static final OraReader READER = new OraReader();
+
     public static BLOB ST_AsBinary(STRUCT _geom)
-    throws SQLException 
+    throws SQLException
     {
-        // Check geometry parameters
-        //
-        if ( _geom == null ) {
-           throw new SQLException("Supplied Sdo_Geometry is NULL.");
+        return toBLOB(toBytes(_geom,BinaryFormat.defaultByteOrder,BinaryFormat.wkbPostGISwithoutSRID),
+                      DBConnection.getConnection());
+    }
+
+    public static BLOB ST_AsBinary(STRUCT _geom, String _byteOrder)
+    throws SQLException
+    {
+        Integer order = getByteOrder(_byteOrder,null);
+        if (order == null) {
+            return null;
         }
-        try
-        {
-            // Convert Geometries
-            //
-            int SRID = SDO.getSRID(_geom, SDO.SRID_NULL);
-            PrecisionModel  pm = new PrecisionModel();
-            GeometryFactory gf = new GeometryFactory(pm,SRID); 
-            OraReader       or = new OraReader(gf);
-            Geometry       geo = or.read(_geom);
-            
-            // Check converted geometries are valid
-            //
-            if ( geo == null ) {
-               throw new SQLException("SDO_Geometry conversion to JTS geometry returned NULL.");
-            }
+        return toBLOB(toBytes(_geom,order.intValue(),BinaryFormat.wkbPostGISwithoutSRID),
+                      DBConnection.getConnection());
+    }
 
-            // read geometry into a byte array 
-            byte[] bGeom = Core.getWKBFromJTSGeometry(geo);
-            // write the array of binary data to a BLOB
-            BLOB outBlob;
-            outBlob = new BLOB(DBConnection.getConnection(),bGeom);
-            return outBlob;
-        } catch (JASPAGeomParseException ge ) {
-            throw new SQLException(ge.getMessage());
+    public static BLOB ST_AsEWKB(STRUCT _geom)
+    throws SQLException {
+        return toBLOB(toBytes(_geom,BinaryFormat.defaultByteOrder,BinaryFormat.wkbPostGISwithSRID),
+                      DBConnection.getConnection());
+    }
+
+    public static BLOB ST_AsEWKB(STRUCT _geom, String _byteOrder)
+    throws SQLException
+    {
+        Integer order = getByteOrder(_byteOrder,null);
+        if (order == null) {
+            return null;
         }
+        return toBLOB(toBytes(_geom,order.intValue(),BinaryFormat.wkbPostGISwithSRID),
+                      DBConnection.getConnection());
     }
 
-    public static BLOB ST_AsBinary(STRUCT _geom, String _byteOrder)
-    throws SQLException 
+    /* ================== Set based conversion ================== */
+
+    /**
+     * Converts an array of SDO_GEOMETRY to an array of WKB BLOBs.
+     * @param _geomSet     : ARRAY : eg MDSYS.SDO_GEOMETRY_ARRAY
+     * @param _byteOrder   : String : NDR or XDR; NULL for the default (NDR)
+     * @param _blobSetType : String : Collection of BLOB type to return eg GIS.T_BLOBSET; NULL for DEFAULT_BLOBSET_TYPE
+     * @return ARRAY : A BLOB for each geometry, in order. A NULL or empty geometry gives a NULL element.
+     * @throws SQLException
+     */
+    public static ARRAY ST_AsBinary(ARRAY  _geomSet,
+                                    String _byteOrder,
+                                    String _blobSetType)
+    throws SQLException
     {
-        // Check geometry parameters
-        //
-        if ( _geom == null ) {
-           throw new SQLException("Supplied Sdo_Geometry is NULL.");
+        return toBLOBs(_geomSet,getByteOrder(_byteOrder,BinaryFormat.defaultByteOrder).intValue(),
+                       BinaryFormat.wkbPostGISwithoutSRID,_blobSetType);
+    }
+
+    /**
+     * Converts an array of SDO_GEOMETRY to an array of EWKB BLOBs.
+     * @param _geomSet     : ARRAY : eg MDSYS.SDO_GEOMETRY_ARRAY
+     * @param _byteOrder   : String : NDR or XDR; NULL for the default (NDR)
+     * @param _blobSetType : String : Collection of BLOB type to return eg GIS.T_BLOBSET; NULL for DEFAULT_BLOBSET_TYPE
+     * @return ARRAY : A BLOB for each geometry, in order. A NULL geometry gives a NULL element.
+     * @throws SQLException
+     */
+    public static ARRAY ST_AsEWKB(ARRAY  _geomSet,
+                                  String _byteOrder,
+                                  String _blobSetType)
+    throws SQLException
+    {
+        return toBLOBs(_geomSet,getByteOrder(_byteOrder,BinaryFormat.defaultByteOrder).intValue(),
+                       BinaryFormat.wkbPostGISwithSRID,_blobSetType);
+    }
+
+    /**
+     * Converts the first SDO_GEOMETRY column of a ResultSet to an array of WKB BLOBs.
+     * @param _resultSet   : ResultSet : eg SELECT id, geom FROM parcels ORDER BY id
+     * @param _byteOrder   : String : NDR or XDR; NULL for the default (NDR)
+     * @param _blobSetType : String : Collection of BLOB type to return eg GIS.T_BLOBSET; NULL for DEFAULT_BLOBSET_TYPE
+     * @return ARRAY : A BLOB for each row, in order. A NULL or empty geometry gives a NULL element.
+     * @throws SQLException
+     */
+    public static ARRAY ST_AsBinary(ResultSet _resultSet,
+                                    String    _byteOrder,
+                                    String    _blobSetType)
+    throws SQLException
+    {
+        return toBLOBs(_resultSet,getByteOrder(_byteOrder,BinaryFormat.defaultByteOrder).intValue(),
+                       BinaryFormat.wkbPostGISwithoutSRID,_blobSetType);
+    }
+
+    /**
+     * Converts the first SDO_GEOMETRY column of a ResultSet to an array of EWKB BLOBs.
+     * @param _resultSet   : ResultSet : eg SELECT id, geom FROM parcels ORDER BY id
+     * @param _byteOrder   : String : NDR or XDR; NULL for the default (NDR)
+     * @param _blobSetType : String : Collection of BLOB type to return eg GIS.T_BLOBSET; NULL for DEFAULT_BLOBSET_TYPE
+     * @return ARRAY : A BLOB for each row, in order. A NULL geometry gives a NULL element.
+     * @throws SQLException
+     */
+    public static ARRAY ST_AsEWKB(ResultSet _resultSet,
+                                  String    _byteOrder,
+                                  String    _blobSetType)
+    throws SQLException
+    {
+        return toBLOBs(_resultSet,getByteOrder(_byteOrder,BinaryFormat.defaultByteOrder).intValue(),
+                       BinaryFormat.wkbPostGISwithSRID,_blobSetType);
+    }
+
+    private static ARRAY toBLOBs(ARRAY  _geomSet,
+                                 int    _byteOrder,
+                                 int    _format,
+                                 String _blobSetType)
+    throws SQLException
+    {
+        if ( _geomSet == null ) {
+           throw new SQLException("Supplied Sdo_Geometry array is NULL.");
         }
-        try
-        {
-            // Convert Geometries
-            //
-            int SRID = SDO.getSRID(_geom, SDO.SRID_NULL);
-            PrecisionModel  pm = new PrecisionModel();
-            GeometryFactory gf = new GeometryFactory(pm,SRID); 
-            OraReader       or = new OraReader(gf);
-            Geometry       geo = or.read(_geom);
-            
-            // Check converted geometries are valid
-            //
-            if ( geo == null ) {
-               throw new SQLException("SDO_Geometry conversion to JTS geometry returned NULL.");
+        Object[]   geoms = (Object[])_geomSet.getArray();
+        OracleConnection conn = DBConnection.getConnection();
+        BLOB[]     blobs = new BLOB[geoms.length];
+        for (int i = 0; i < geoms.length; i++) {
+            if ( geoms[i] != null ) {
+                blobs[i] = toBLOB(toBytes((STRUCT)geoms[i],_byteOrder,_format,i + 1),conn);
             }
+        }
+        return toARRAY(blobs,_blobSetType,conn);
+    }
 
-            // Now convert to WKB
-            Integer order = Core.getByteOrderFromText(_byteOrder);
-            if (order == null) {
-                return null;
+    private static ARRAY toBLOBs(ResultSet _resultSet,
+                                 int       _byteOrder,
+                                 int       _format,
+                                 String    _blobSetType)
+    throws SQLException
+    {
+        if ( _resultSet == null ) {
+           throw new SQLException("Supplied ResultSet is NULL.");
+        }
+        try {
+            int geometryColumn = JTS.firstSdoGeometryColumn(_resultSet.getMetaData());
+            if ( geometryColumn == -1 ) {
+                throw new SQLException("No SDO_GEOMETRY column can be found in resultset.");
             }
-            
-            // read geometry into a byte array 
-            byte[] bGeom = Core.getWKBFromJTSGeometry(geo, order.intValue());
-            // write the array of binary data to a BLOB
-            BLOB outBlob;
-            outBlob = new BLOB(DBConnection.getConnection(),bGeom);
-            return outBlob;
+            OracleConnection conn = DBConnection.getConnection();
+            List<BLOB>      blobs = new ArrayList<BLOB>();
+            FetchSizer fetchSizer = new FetchSizer();
+            fetchSizer.start(_resultSet);
+            while ( _resultSet.next() ) {
+                STRUCT geom = (STRUCT)_resultSet.getObject(geometryColumn);
+                fetchSizer.rowFetched(_resultSet,geom);
+                blobs.add(geom == null
+                          ? null
+                          : toBLOB(toBytes(geom,_byteOrder,_format,blobs.size() + 1),conn));
+            }
+            return toARRAY(blobs.toArray(new BLOB[blobs.size()]),_blobSetType,conn);
+        } finally {
+            _resultSet.close();
+        }
+    }
+
+    private static Integer getByteOrder(String  _byteOrder,
+                                        Integer _default)
+    throws SQLException
+    {
+        if ( Strings.isEmpty(_byteOrder) ) {
+            return _default;
+        }
+        try {
+            return Core.getByteOrderFromText(_byteOrder);
         } catch (JASPAIllegalArgumentException e) {
             throw new SQLException(e.getMessage());
-        } catch (JASPAGeomParseException ge ) {
-            throw new SQLException(ge.getMessage());
         }
     }
-    
-    public static BLOB ST_AsEWKB(STRUCT _geom)
-    throws SQLException {
+
+    private static byte[] toBytes(STRUCT _geom,
+                                  int    _byteOrder,
+                                  int    _format)
+    throws SQLException
+    {
         // Check geometry parameters
         //
         if ( _geom == null ) {
@@ -121,66 +225,59 @@ public class EWKBExporter {
         {
             // Convert Geometries
             //
-            int SRID = SDO.getSRID(_geom, SDO.SRID_NULL);
-            PrecisionModel  pm = new PrecisionModel();
-            GeometryFactory gf = new GeometryFactory(pm,SRID); 
-            OraReader       or = new OraReader(gf);
-            Geometry       geo = or.read(_geom);
-            
+            Geometry geo = READER.read(_geom);
+
             // Check converted geometries are valid
             //
             if ( geo == null ) {
                throw new SQLException("SDO_Geometry conversion to JTS geometry returned NULL.");
             }
-            // read geometry into a byte array 
-            byte[] bGeom = Core.getEWKBFromJTSGeometry(geo);
-            // write the array of binary data to a BLOB
-            BLOB outBlob;
-            outBlob = new BLOB(DBConnection.getConnection(),bGeom);
-            return outBlob;
+            // WKB of an empty geometry is NULL
+            if ( _format == BinaryFormat.wkbPostGISwithoutSRID && Core.isEmptyOrNullGeometry(geo) ) {
+                return null;
+            }
+            return JTS2GBLOB.instance(_byteOrder).write(geo,_format);
         } catch (JASPAGeomParseException ge ) {
             throw new SQLException(ge.getMessage());
         }
     }
 
-    public static BLOB ST_AsEWKB(STRUCT _geom, String _byteOrder)
+    private static byte[] toBytes(STRUCT _geom,
+                                  int    _byteOrder,
+                                  int    _format,
+                                  int    _element)
     throws SQLException
     {
-        // Check geometry parameters
-        //
-        if ( _geom == null ) {
-           throw new SQLException("Supplied Sdo_Geometry is NULL.");
+        try {
+            return toBytes(_geom,_byteOrder,_format);
+        } catch (SQLException sqle) {
+            throw new SQLException("Sdo_Geometry " + _element + ": " + sqle.getMessage());
         }
-        try
-        {
-            // Convert Geometries
-            //
-            int SRID = SDO.getSRID(_geom, SDO.SRID_NULL);
-            PrecisionModel  pm = new PrecisionModel();
-            GeometryFactory gf = new GeometryFactory(pm,SRID); 
-            OraReader       or = new OraReader(gf);
-            Geometry       geo = or.read(_geom);
-            
-            // Check converted geometries are valid
-            //
-            if ( geo == null ) {
-               throw new SQLException("SDO_Geometry conversion to JTS geometry returned NULL.");
-            }
+    }
 
-            // Now convert to WKT/EWKT
-            Integer order = Core.getByteOrderFromText(_byteOrder);
-            if (order == null) return null;
-            // read geometry into a byte array 
-            byte[] bGeom = Core.getEWKBFromJTSGeometry(geo, order.intValue());
-            // write the array of binary data to a BLOB
-            BLOB outBlob;
-            outBlob = new BLOB(DBConnection.getConnection(),bGeom);
-            return outBlob;
-        } catch (JASPAIllegalArgumentException e) {
-            throw new SQLException(e.getMessage());
-        } catch (JASPAGeomParseException ge ) {
-            throw new SQLException(ge.getMessage());
+    /**
+     * Writes the array of binary data to a temporary BLOB
+     */
+    private static BLOB toBLOB(byte[]           _bytes,
+                               OracleConnection _conn)
+    throws SQLException
+    {
+        if ( _bytes == null ) {
+            return null;
         }
+        BLOB outBlob = BLOB.createTemporary(_conn,true,BLOB.DURATION_SESSION);
+        outBlob.setBytes(1L,_bytes);
+        return outBlob;
+    }
+
+    private static ARRAY toARRAY(BLOB[]           _blobs,
+                                 String           _blobSetType,
+                                 OracleConnection _conn)
+    throws SQLException
+    {
+        String blobSetType = Strings.isEmpty(_blobSetType) ? DEFAULT_BLOBSET_TYPE : _blobSetType.toUpperCase();
+        ArrayDescriptor descriptor = OraDescriptorCache.getArrayDescriptor(blobSetType,_conn);
+        return new ARRAY(descriptor,_conn,_blobs);
     }
 
 }
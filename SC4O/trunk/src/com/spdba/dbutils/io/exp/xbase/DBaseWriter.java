@@ -85,6 +85,8 @@ public class DBaseWriter {
     public LinkedHashMap<String,Field>     fields = null;
     private SimpleDateFormat                   df = null; 
     private String           recordIdentifierName = null;
+    private boolean                     bulkWrite = false;
+    private int                checkpointInterval = 0;
 
     public DBaseWriter() {
         this.df = new SimpleDateFormat(DATEFORMAT); 
@@ -102,6 +104,42 @@ public class DBaseWriter {
         return this.recordIdentifierName;
     }
     
+    /**
+     * Sets whether records are written via the DBF's buffered, append only bulk mode
+     * or one at a time with a header rewrite after each record (the default).
+     */
+    public void setBulkWrite(boolean _bulkWrite) {
+        this.bulkWrite = _bulkWrite;
+    }
+
+    public boolean isBulkWrite() {
+        return this.bulkWrite;
+    }
+
+    /**
+     * In bulk mode, the number of records after which the DBF header record count
+     * is rewritten (0, the default, means only on close).
+     */
+    public void setCheckpointInterval(int _checkpointInterval) {
+        this.checkpointInterval = _checkpointInterval < 0 ? 0 : _checkpointInterval;
+    }
+
+    public int getCheckpointInterval() {
+        return this.checkpointInterval;
+    }
+
+    /**
+     * Length of the DBF in bytes (header, records written or buffered, end of file marker).
+     * Memo (.dbt) contents are not included.
+     */
+    public long getFileLength() {
+        if ( this.DBFile == null ) {
+            return 0L;
+        }
+        return (long)this.DBFile.offset +
+               (long)this.DBFile.lrecl * (long)this.DBFile.getRecordCount() + 1L;
+    }
+
     // DBase dates have to be in format CCYYMMDD
     public SimpleDateFormat getDateFormat() {
       return this.df;
@@ -486,6 +524,10 @@ public class DBaseWriter {
     public void write() 
     throws xBaseJException, 
            IOException {
+        // Bulk mode can only start once all fields are added to the header
+        if ( this.bulkWrite && ! this.DBFile.isBulkWrite() ) {
+            this.DBFile.startBulkWrite(DBF.DEFAULT_BULK_BUFFER_SIZE,this.checkpointInterval);
+        }
         this.DBFile.write();
     }
 
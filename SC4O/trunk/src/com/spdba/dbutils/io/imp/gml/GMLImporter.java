@@ -0,0 +1,554 @@
+package com.spdba.dbutils.io.imp.gml;
+
+import com.spdba.dbutils.spatial.SDO;
+import com.spdba.dbutils.sql.DBConnection;
+import com.spdba.dbutils.tools.Strings;
+import com.spdba.dbutils.tools.Tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import oracle.sql.CLOB;
+import oracle.sql.STRUCT;
+
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequence;
+import org.locationtech.jts.io.oracle.OraWriter;
+
+/**
+ * Streaming (StAX) reader of GML 2, 3.1 and 3.2 geometries.
+ * <p>
+ * The document is pulled one event at a time and each top level geometry
+ * (eg the geometry of each feature in a FeatureCollection) is returned as soon as
+ * its end tag is read, so only one geometry is held at a time. Elements that are
+ * not geometries, such as feature properties and gml:boundedBy, are passed over.
+ * Coordinates (gml:pos, gml:posList, gml:coordinates, gml:coord) are parsed
+ * straight into a reused double array and become PackedCoordinateSequences.
+ * <p>
+ * An srsName ending in a number (EPSG:4326, urn:ogc:def:crs:EPSG::4326, ...#4326, SDO:8307)
+ * sets the geometry's SRID; otherwise the GeometryFactory's SRID is used.
+ */
+public class GMLImporter
+implements Iterator<Geometry>
+{
+    private static final String GML_NAMESPACE = "http://www.opengis.net/gml";  // GML 2/3.1; 3.2 is http://www.opengis.net/gml/3.2
+
+    private static final String[] GEOMETRY_ELEMENTS = {
+        "Point", "LineString", "LinearRing", "Curve", "Polygon", "Surface", "PolygonPatch",
+        "MultiPoint", "MultiLineString", "MultiCurve", "MultiPolygon", "MultiSurface",
+        "MultiGeometry", "GeometryCollection", "Envelope", "Box"
+    };
+
+    private final XMLStreamReader reader;
+    private final GeometryFactory geometryFactory;
+    private Geometry         nextGeometry = null;
+    private boolean              finished = false;
+    private long           geometriesRead = 0;
+
+    // Reused coordinate buffer
+    private double[]   ordinates = new double[1024];
+    private int   ordinateCount = 0;
+    private int       dimension = 2;
+
+    public GMLImporter(Reader          _gml,
+                       GeometryFactory _geometryFactory)
+    throws XMLStreamException
+    {
+        this(newInputFactory().createXMLStreamReader(_gml),_geometryFactory);
+    }
+
+    public GMLImporter(InputStream     _gml,
+                       GeometryFactory _geometryFactory)
+    throws XMLStreamException
+    {
+        this(newInputFactory().createXMLStreamReader(_gml),_geometryFactory);
+    }
+
+    private GMLImporter(XMLStreamReader _reader,
+                        GeometryFactory _geometryFactory)
+    {
+        this.reader          = _reader;
+        this.geometryFactory = _geometryFactory;
+    }
+
+    private static XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING,Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD,Boolean.FALSE);
+        return factory;
+    }
+
+    /* ============================== Iteration ======================================= */
+
+    public boolean hasNext()
+    {
+        if ( this.nextGeometry == null && ! this.finished ) {
+            try {
+                this.nextGeometry = readNextGeometry();
+            } catch (XMLStreamException e) {
+                throw new IllegalStateException("GMLImporter: " + e.getMessage());
+            }
+        }
+        return this.nextGeometry != null;
+    }
+
+    public Geometry next()
+    {
+        if ( ! hasNext() ) {
+            throw new NoSuchElementException();
+        }
+        Geometry geom = this.nextGeometry;
+        this.nextGeometry = null;
+        this.geometriesRead++;
+        return geom;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("remove");
+    }
+
+    /**
+     * @param _maximum : int : Largest number of geometries to return
+     * @return List : Next geometries (empty at end of document)
+     */
+    public List<Geometry> readBatch(int _maximum)
+    {
+        List<Geometry> batch = new ArrayList<Geometry>(Math.max(1,Math.min(_maximum,1024)));
+        while ( batch.size() < _maximum && hasNext() ) {
+            batch.add(next());
+        }
+        return batch;
+    }
+
+    public long getGeometriesRead() {
+        return this.geometriesRead;
+    }
+
+    public void close()
+    {
+        this.finished = true;
+        try {
+            this.reader.close();
+        } catch (XMLStreamException e) {
+            // Nothing to do
+        }
+    }
+
+    /* ============================== Parsing ======================================= */
+
+    private Geometry readNextGeometry()
+    throws XMLStreamException
+    {
+        while ( this.reader.hasNext() ) {
+            if ( this.reader.next() != XMLStreamConstants.START_ELEMENT || ! isGML() ) {
+                continue;
+            }
+            String name = this.reader.getLocalName();
+            if ( name.equals("boundedBy") ) {
+                skipElement();
+            } else if ( isGeometry(name) ) {
+                return readGeometry(this.geometryFactory.getSRID(),2);
+            }
+        }
+        this.finished = true;
+        return null;
+    }
+
+    private boolean isGML() {
+        String ns = this.reader.getNamespaceURI();
+        return ns == null || ns.startsWith(GML_NAMESPACE);
+    }
+
+    private static boolean isGeometry(String _localName) {
+        for (int i = 0; i < GEOMETRY_ELEMENTS.length; i++) {
+            if ( GEOMETRY_ELEMENTS[i].equals(_localName) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Skips to the END_ELEMENT of the current START_ELEMENT */
+    private void skipElement()
+    throws XMLStreamException
+    {
+        int depth = 1;
+        while ( depth > 0 && this.reader.hasNext() ) {
+            int event = this.reader.next();
+            if ( event == XMLStreamConstants.START_ELEMENT ) {
+                depth++;
+            } else if ( event == XMLStreamConstants.END_ELEMENT ) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Reads the geometry whose START_ELEMENT is current, leaving the reader on its END_ELEMENT.
+     */
+    private Geometry readGeometry(int _srid,
+                                  int _dimension)
+    throws XMLStreamException
+    {
+        String name = this.reader.getLocalName();
+        int    srid = parseSRID(this.reader.getAttributeValue(null,"srsName"),_srid);
+        int     dim = parseInt(this.reader.getAttributeValue(null,"srsDimension"),_dimension);
+        Geometry geom = null;
+        if ( name.equals("Point") ) {
+            CoordinateSequence seq = readCoordinates(name,dim,false);
+            geom = this.geometryFactory.createPoint(seq.size() == 0 ? null : seq);
+        } else if ( name.equals("LineString") || name.equals("LinearRing") ) {
+            geom = this.geometryFactory.createLineString(readCoordinates(name,dim,false));
+        } else if ( name.equals("Curve") ) {
+            geom = this.geometryFactory.createLineString(readCoordinates(name,dim,true));
+        } else if ( name.equals("Polygon") || name.equals("PolygonPatch") ) {
+            geom = readPolygon(name,dim);
+        } else if ( name.equals("Envelope") || name.equals("Box") ) {
+            geom = readEnvelope(name,dim);
+        } else {
+            // Surface (of patches) and all Multi geometries are read as collections of their member geometries
+            geom = readCollection(name,srid,dim);
+        }
+        geom.setSRID(srid);
+        return geom;
+    }
+
+    private Polygon readPolygon(String _name,
+                                int    _dimension)
+    throws XMLStreamException
+    {
+        LinearRing       shell = null;
+        List<LinearRing> holes = new ArrayList<LinearRing>();
+        while ( this.reader.hasNext() ) {
+            int event = this.reader.next();
+            if ( event == XMLStreamConstants.END_ELEMENT && this.reader.getLocalName().equals(_name) ) {
+                break;
+            }
+            if ( event != XMLStreamConstants.START_ELEMENT ) {
+                continue;
+            }
+            String name = this.reader.getLocalName();
+            if ( name.equals("exterior") || name.equals("outerBoundaryIs") ) {
+                shell = this.geometryFactory.createLinearRing(readCoordinates(name,_dimension,true));
+            } else if ( name.equals("interior") || name.equals("innerBoundaryIs") ) {
+                holes.add(this.geometryFactory.createLinearRing(readCoordinates(name,_dimension,true)));
+            }
+        }
+        return this.geometryFactory.createPolygon(shell,holes.toArray(new LinearRing[holes.size()]));
+    }
+
+    private Geometry readEnvelope(String _name,
+                                  int    _dimension)
+    throws XMLStreamException
+    {
+        CoordinateSequence corners = readCoordinates(_name,_dimension,false);
+        if ( corners.size() < 2 ) {
+            return this.geometryFactory.createPolygon((LinearRing)null,null);
+        }
+        double minX = corners.getX(0), minY = corners.getY(0);
+        double maxX = corners.getX(1), maxY = corners.getY(1);
+        return this.geometryFactory.toGeometry(new org.locationtech.jts.geom.Envelope(minX,maxX,minY,maxY));
+    }
+
+    private Geometry readCollection(String _name,
+                                    int    _srid,
+                                    int    _dimension)
+    throws XMLStreamException
+    {
+        List<Geometry> members = new ArrayList<Geometry>();
+        while ( this.reader.hasNext() ) {
+            int event = this.reader.next();
+            if ( event == XMLStreamConstants.END_ELEMENT && this.reader.getLocalName().equals(_name) ) {
+                break;
+            }
+            if ( event == XMLStreamConstants.START_ELEMENT && isGeometry(this.reader.getLocalName()) ) {
+                members.add(readGeometry(_srid,_dimension));
+            }
+        }
+        if ( _name.equals("MultiPoint") ) {
+            return this.geometryFactory.createMultiPoint(members.toArray(new Point[members.size()]));
+        }
+        if ( _name.equals("MultiLineString") || _name.equals("MultiCurve") ) {
+            return allOf(members,LineString.class)
+                   ? this.geometryFactory.createMultiLineString(members.toArray(new LineString[members.size()]))
+                   : this.geometryFactory.buildGeometry(members);
+        }
+        if ( _name.equals("MultiPolygon") || _name.equals("MultiSurface") ) {
+            return allOf(members,Polygon.class)
+                   ? this.geometryFactory.createMultiPolygon(members.toArray(new Polygon[members.size()]))
+                   : this.geometryFactory.buildGeometry(members);
+        }
+        if ( _name.equals("Surface") && members.size() == 1 ) {
+            return members.get(0);
+        }
+        if ( _name.equals("Surface") ) {
+            return this.geometryFactory.buildGeometry(members);
+        }
+        return this.geometryFactory.createGeometryCollection(members.toArray(new Geometry[members.size()]));
+    }
+
+    private static boolean allOf(List<Geometry> _geometries, Class _class) {
+        for (Geometry geom : _geometries) {
+            if ( ! _class.isInstance(geom) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads all coordinates inside the current element, up to its END_ELEMENT.
+     * @param _name         : String  : Local name of current element
+     * @param _dimension    : int     : Inherited srsDimension
+     * @param _joinSegments : boolean : Drop the first point of a posList/coordinates that repeats the previous point (curve segments, ring members)
+     */
+    private CoordinateSequence readCoordinates(String  _name,
+                                               int     _dimension,
+                                               boolean _joinSegments)
+    throws XMLStreamException
+    {
+        this.ordinateCount = 0;
+        this.dimension     = _dimension;
+        int depth = 0;
+        while ( this.reader.hasNext() ) {
+            int event = this.reader.next();
+            if ( event == XMLStreamConstants.END_ELEMENT ) {
+                if ( depth == 0 && this.reader.getLocalName().equals(_name) ) {
+                    break;
+                }
+                depth--;
+                continue;
+            }
+            if ( event != XMLStreamConstants.START_ELEMENT ) {
+                continue;
+            }
+            String name = this.reader.getLocalName();
+            if ( name.equals("pos") || name.equals("lowerCorner") || name.equals("upperCorner") ) {
+                this.dimension = parseInt(this.reader.getAttributeValue(null,"srsDimension"),this.dimension);
+                parseOrdinates(this.reader.getElementText(),false);
+            } else if ( name.equals("posList") ) {
+                this.dimension = parseInt(this.reader.getAttributeValue(null,"srsDimension"),this.dimension);
+                parseOrdinates(this.reader.getElementText(),_joinSegments);
+            } else if ( name.equals("coordinates") ) {
+                parseCoordinates(this.reader.getAttributeValue(null,"decimal"),
+                                 this.reader.getAttributeValue(null,"cs"),
+                                 this.reader.getAttributeValue(null,"ts"),
+                                 this.reader.getElementText(),
+                                 _joinSegments);
+            } else if ( name.equals("X") || name.equals("Y") || name.equals("Z") ) {
+                // gml:coord
+                if ( name.equals("X") ) {
+                    this.dimension = 2;
+                } else if ( name.equals("Z") ) {
+                    this.dimension = 3;
+                }
+                addOrdinate(Double.parseDouble(this.reader.getElementText().trim()));
+            } else {
+                depth++;
+            }
+        }
+        int points = this.dimension == 0 ? 0 : this.ordinateCount / this.dimension;
+        double[] packed = new double[points * this.dimension];
+        System.arraycopy(this.ordinates,0,packed,0,packed.length);
+        return new PackedCoordinateSequence.Double(packed,this.dimension);
+    }
+
+    /** Parses whitespace separated ordinates (gml:pos, gml:posList) */
+    private void parseOrdinates(String  _text,
+                                boolean _joinSegments)
+    {
+        int start = this.ordinateCount;
+        int length = _text.length();
+        int i = 0;
+        while ( i < length ) {
+            while ( i < length && Character.isWhitespace(_text.charAt(i)) ) {
+                i++;
+            }
+            int tokenStart = i;
+            while ( i < length && ! Character.isWhitespace(_text.charAt(i)) ) {
+                i++;
+            }
+            if ( i > tokenStart ) {
+                addOrdinate(Double.parseDouble(_text.substring(tokenStart,i)));
+            }
+        }
+        if ( _joinSegments ) {
+            joinSegment(start);
+        }
+    }
+
+    /** Parses GML 2 gml:coordinates with its decimal, cs and ts separators */
+    private void parseCoordinates(String  _decimal,
+                                  String  _cs,
+                                  String  _ts,
+                                  String  _text,
+                                  boolean _joinSegments)
+    {
+        char  decimal = Strings.isEmpty(_decimal) ? '.' : _decimal.charAt(0);
+        char       cs = Strings.isEmpty(_cs)      ? ',' : _cs.charAt(0);
+        char       ts = Strings.isEmpty(_ts)      ? ' ' : _ts.charAt(0);
+        int     start = this.ordinateCount;
+        int    length = _text.length();
+        int tupleSize = 0;
+        int dimension = 0;
+        int         i = 0;
+        while ( i < length ) {
+            char c = _text.charAt(i);
+            if ( c == ts || Character.isWhitespace(c) ) {
+                i++;
+                continue;
+            }
+            int tokenStart = i;
+            while ( i < length && _text.charAt(i) != cs && _text.charAt(i) != ts && ! Character.isWhitespace(_text.charAt(i)) ) {
+                i++;
+            }
+            String token = _text.substring(tokenStart,i);
+            addOrdinate(Double.parseDouble(decimal == '.' ? token : token.replace(decimal,'.')));
+            tupleSize++;
+            if ( i < length && _text.charAt(i) == cs ) {
+                i++;
+            } else {
+                // End of tuple
+                if ( dimension == 0 ) {
+                    dimension = tupleSize;
+                }
+                tupleSize = 0;
+            }
+        }
+        if ( dimension > 0 ) {
+            this.dimension = dimension;
+        }
+        if ( _joinSegments ) {
+            joinSegment(start);
+        }
+    }
+
+    /** Drops the first point of the segment starting at _start if it repeats the point before it */
+    private void joinSegment(int _start)
+    {
+        int d = this.dimension;
+        if ( _start < d || this.ordinateCount - _start < d ) {
+            return;
+        }
+        for (int o = 0; o < d; o++) {
+            if ( this.ordinates[_start - d + o] != this.ordinates[_start + o] ) {
+                return;
+            }
+        }
+        System.arraycopy(this.ordinates,_start + d,this.ordinates,_start,this.ordinateCount - _start - d);
+        this.ordinateCount -= d;
+    }
+
+    private void addOrdinate(double _ordinate)
+    {
+        if ( this.ordinateCount == this.ordinates.length ) {
+            double[] larger = new double[this.ordinates.length * 2];
+            System.arraycopy(this.ordinates,0,larger,0,this.ordinateCount);
+            this.ordinates = larger;
+        }
+        this.ordinates[this.ordinateCount++] = _ordinate;
+    }
+
+    private static int parseInt(String _value, int _default)
+    {
+        if ( Strings.isEmpty(_value) ) {
+            return _default;
+        }
+        try {
+            return Integer.parseInt(_value.trim());
+        } catch (NumberFormatException nfe) {
+            return _default;
+        }
+    }
+
+    /** SRID from the number at the end of an srsName */
+    private static int parseSRID(String _srsName, int _default)
+    {
+        if ( Strings.isEmpty(_srsName) ) {
+            return _default;
+        }
+        int end = _srsName.length();
+        int start = end;
+        while ( start > 0 && Character.isDigit(_srsName.charAt(start - 1)) ) {
+            start--;
+        }
+        return start == end ? _default : parseInt(_srsName.substring(start,end),_default);
+    }
+
+    /* ============================== IMPORT ======================================= */
+
+    public static STRUCT ST_GeomFromGML(String _gml)
+    throws SQLException
+    {
+        if (Strings.isEmpty(_gml) ) {
+           throw new SQLException("Supplied GML is NULL.");
+        }
+        return fromGML(new StringReader(_gml));
+    }
+
+    public static STRUCT ST_GeomFromGML(CLOB _gml)
+    throws SQLException
+    {
+        if ( _gml == null || _gml.length()==0 ) {
+           throw new SQLException("Supplied GML is NULL.");
+        }
+        return fromGML(_gml.getCharacterStream());
+    }
+
+    /**
+     * Reads all geometries in a GML document: one is returned as is, more (eg a FeatureCollection)
+     * as the simplest collection that holds them.
+     */
+    private static STRUCT fromGML(Reader _gml)
+    throws SQLException
+    {
+        GeometryFactory gf = new GeometryFactory(new PrecisionModel(),SDO.SRID_NULL);
+        GMLImporter    gml = null;
+        try {
+            gml = new GMLImporter(_gml,gf);
+            List<Geometry> geoms = new ArrayList<Geometry>();
+            while ( gml.hasNext() ) {
+                geoms.add(gml.next());
+            }
+            if ( geoms.size() == 0 ) {
+                return null;
+            }
+            Geometry geom = geoms.size() == 1 ? geoms.get(0) : gf.buildGeometry(geoms);
+            if ( geoms.size() > 1 ) {
+                geom.setSRID(geoms.get(0).getSRID());
+            }
+            OraWriter ow = new OraWriter(Tools.getCoordDim(geom));
+            return ow.write(geom,DBConnection.getConnection());
+        } catch (XMLStreamException e) {
+            throw new SQLException("ST_GeomFromGML: " + e.getMessage());
+        } catch (IllegalStateException e) {
+            throw new SQLException("ST_GeomFromGML: " + e.getMessage());
+        } finally {
+            if ( gml != null ) {
+                gml.close();
+            }
+            try { _gml.close(); } catch (IOException ioe) { }
+        }
+    }
+}
@@ -2,21 +2,27 @@ package com.spdba.dbutils.io.imp.wkb;
 
 import com.spdba.dbutils.spatial.SDO;
 import com.spdba.dbutils.sql.DBConnection;
+import com.spdba.dbutils.sql.FetchSizer;
 import com.spdba.dbutils.tools.Tools;
 
-import es.upv.jaspa.Core;
-import es.upv.jaspa.exceptions.JASPAGeomParseException;
+import java.sql.Blob;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
-import java.sql.SQLException;
+import oracle.jdbc.OracleConnection;
+import oracle.jdbc.OracleTypes;
 
+import oracle.sql.ARRAY;
+import oracle.sql.ArrayDescriptor;
 import oracle.sql.BLOB;
 import oracle.sql.STRUCT;
 
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.oracle.OraDescriptorCache;
 import org.locationtech.jts.io.oracle.OraWriter;
 
 public class EWKBImporter {
@@ -26,44 +32,133 @@ public class EWKBImporter {
     {
         return ST_GeomFromEWKB(_ewkb, SDO.SRID_NULL);
     }
-    
+
     public static STRUCT ST_GeomFromEWKB(BLOB _ewkb, int _SRID)
-    throws SQLException 
+    throws SQLException
     {
         if ( _ewkb == null ) {
            throw new SQLException("Supplied EWKB is NULL.");
         }
-        STRUCT resultSDOGeom = null;
+        EWKBReader reader = new EWKBReader((int)Math.min(_ewkb.length(),EWKBReader.DEFAULT_BUFFER_SIZE));
+        Geometry     geom = reader.read(_ewkb,_SRID);
+        if ( geom == null ) {
+            return null;
+        }
+        // Now convert new JTS Geometry to STRUCT
+        OraWriter ow = new OraWriter(Tools.getCoordDim(geom));
+        return ow.write(geom,DBConnection.getConnection());
+    }
+
+    /* ================== Set based conversion ================== */
+
+    /**
+     * Converts an array of WKB/EWKB BLOBs to an array of SDO_GEOMETRY.
+     * @param _ewkbSet : ARRAY : Collection of BLOBs eg T_BLOBSET
+     * @param _SRID    : int : SRID given to geometries without one (SDO.SRID_NULL for none)
+     * @return ARRAY : MDSYS.SDO_GEOMETRY_ARRAY with an element for each BLOB, in order.
+     *                 A NULL BLOB, or one holding an empty geometry, gives a NULL element.
+     * @throws SQLException
+     */
+    public static ARRAY ST_GeomFromEWKB(ARRAY _ewkbSet, int _SRID)
+    throws SQLException
+    {
+        if ( _ewkbSet == null ) {
+           throw new SQLException("Supplied EWKB array is NULL.");
+        }
+        Object[]     blobs = (Object[])_ewkbSet.getArray();
+        OracleConnection conn = DBConnection.getConnection();
+        EWKBReader  reader = new EWKBReader();
+        OraWriter       ow = new OraWriter();
+        STRUCT[]  geometries = new STRUCT[blobs.length];
+        for (int i = 0; i < blobs.length; i++) {
+            geometries[i] = toSTRUCT(reader,ow,(Blob)blobs[i],_SRID,conn,i + 1);
+        }
+        return toARRAY(geometries,conn);
+    }
+
+    /**
+     * Converts the WKB/EWKB BLOBs in the first BLOB column of a ResultSet to an array of SDO_GEOMETRY.
+     * @param _resultSet : ResultSet : eg SELECT id, ewkb FROM staging ORDER BY id
+     * @param _SRID      : int : SRID given to geometries without one (SDO.SRID_NULL for none)
+     * @return ARRAY : MDSYS.SDO_GEOMETRY_ARRAY with an element for each row, in order.
+     *                 A NULL BLOB, or one holding an empty geometry, gives a NULL element.
+     * @throws SQLException
+     */
+    public static ARRAY ST_GeomFromEWKB(ResultSet _resultSet, int _SRID)
+    throws SQLException
+    {
+        if ( _resultSet == null ) {
+           throw new SQLException("Supplied ResultSet is NULL.");
+        }
         try {
-            BLOB outBlob = BLOB.createTemporary(DBConnection.getConnection(), true, BLOB.DURATION_SESSION);
-            InputStream inputStream = _ewkb.getBinaryStream();
-            int inByte;
-            byte[] geomBytes;
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            while ((inByte = inputStream.read()) != -1)
-            {
-                byteArrayOutputStream.write(inByte);
+            int blobColumn = firstBlobColumn(_resultSet.getMetaData());
+            if ( blobColumn == -1 ) {
+                throw new SQLException("No BLOB column can be found in resultset.");
             }
-            geomBytes = byteArrayOutputStream.toByteArray();
-            Geometry geom = Core.getJTSGeometryFromGBLOB(geomBytes);
-            // Convert to SDO_GEOMETRY            
-            if (geom != null && !geom.isEmpty()) {
-                if (geom.getSRID() == SDO.SRID_NULL && _SRID != SDO.SRID_NULL ) {
-                    geom.setSRID(_SRID);
-                }
-                // Now convert new JTS Geometry to STRUCT
-                // 
-                OraWriter  ow = new OraWriter(Tools.getCoordDim(geom));
-                resultSDOGeom = ow.write(geom,
-                                         DBConnection.getConnection());
-                return resultSDOGeom;
+            OracleConnection conn = DBConnection.getConnection();
+            EWKBReader     reader = new EWKBReader();
+            OraWriter          ow = new OraWriter();
+            List<STRUCT> geometries = new ArrayList<STRUCT>();
+            FetchSizer fetchSizer = new FetchSizer();
+            fetchSizer.start(_resultSet);
+            while ( _resultSet.next() ) {
+                Blob blob = _resultSet.getBlob(blobColumn);
+                fetchSizer.rowFetched(_resultSet,blob == null || fetchSizer.isSettled() ? 0L : blob.length());
+                geometries.add(toSTRUCT(reader,ow,blob,_SRID,conn,geometries.size() + 1));
             }
-        } catch (IOException ioe) {
-            throw new SQLException("Failed to read EWKB: " + ioe.getMessage());
-        } catch (JASPAGeomParseException e) {
-            throw new SQLException(e.getMessage());
+            return toARRAY(geometries.toArray(new STRUCT[geometries.size()]),conn);
+        } finally {
+            _resultSet.close();
         }
-        return resultSDOGeom;
+    }
+
+    /**
+     * Finds first BLOB column in resultset metadata
+     * @param _metaData : ResultSetMetaData
+     * @return int : Position of the BLOB column, or -1 if there is none.
+     * @throws SQLException
+     */
+    public static int firstBlobColumn(ResultSetMetaData _metaData)
+    throws SQLException
+    {
+        for (int i = 1; i <= _metaData.getColumnCount(); i++) {
+            if ( _metaData.getColumnType(i) == OracleTypes.BLOB ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static STRUCT toSTRUCT(EWKBReader       _reader,
+                                   OraWriter        _writer,
+                                   Blob             _blob,
+                                   int              _SRID,
+                                   OracleConnection _conn,
+                                   int              _element)
+    throws SQLException
+    {
+        if ( _blob == null ) {
+            return null;
+        }
+        Geometry geom = null;
+        try {
+            geom = _reader.read(_blob,_SRID);
+        } catch (SQLException sqle) {
+            throw new SQLException("EWKB " + _element + ": " + sqle.getMessage());
+        }
+        if ( geom == null ) {
+            return null;
+        }
+        _writer.setDimension(Math.max(2,Tools.getCoordDim(geom)));
+        return _writer.write(geom,_conn);
+    }
+
+    private static ARRAY toARRAY(STRUCT[]         _geometries,
+                                 OracleConnection _conn)
+    throws SQLException
+    {
+        ArrayDescriptor descriptor = OraDescriptorCache.getArrayDescriptor(SDO.TAG_MDSYS_SDO_GEOMETRY_ARRAY,_conn);
+        return new ARRAY(descriptor,_conn,_geometries);
     }
 
 }
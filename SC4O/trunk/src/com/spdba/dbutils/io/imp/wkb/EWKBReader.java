@@ -0,0 +1,139 @@
+package com.spdba.dbutils.io.imp.wkb;
+
+import com.spdba.dbutils.spatial.SDO;
+
+import es.upv.jaspa.Core;
+import es.upv.jaspa.exceptions.JASPAGeomParseException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.BufferUnderflowException;
+
+import java.sql.Blob;
+import java.sql.SQLException;
+
+import java.util.Arrays;
+
+import org.locationtech.jts.geom.Geometry;
+
+/**
+ * Reads WKB or EWKB geometries from BLOBs into a reused byte buffer.
+ * <p>
+ * Each BLOB is read in blocks straight into the buffer, which is sized from the
+ * BLOB's length and only grows. Only the BLOB's own bytes are parsed (a copy of
+ * them when the buffer is longer), so a truncated BLOB raises an SQLException
+ * rather than being completed by zeros or bytes left by a longer geometry.
+ * <p>
+ * A reader is not thread safe; use one per set being converted.
+ */
+public class EWKBReader
+{
+    public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+    /** Bytes requested from the BLOB stream in each read */
+    private static final int         BLOCK_SIZE = 32 * 1024;
+
+    private byte[] buffer;
+    private int    length = 0;   // Bytes of the current geometry
+
+    public EWKBReader() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param _bufferSize : int : Initial buffer size in bytes
+     */
+    public EWKBReader(int _bufferSize) {
+        this.buffer = new byte[Math.max(_bufferSize,64)];
+    }
+
+    /**
+     * @return int : Number of bytes of the last BLOB read
+     */
+    public int getLength() {
+        return this.length;
+    }
+
+    /**
+     * @return int : Current size of the buffer
+     */
+    public int getBufferSize() {
+        return this.buffer.length;
+    }
+
+    /**
+     * Reads the BLOB into the buffer.
+     * @param _blob : Blob : WKB or EWKB
+     * @return byte[] : The buffer, holding the BLOB in its first getLength() bytes.
+     * @throws SQLException
+     * @throws IOException
+     */
+    public byte[] readBytes(Blob _blob)
+    throws SQLException,
+           IOException
+    {
+        long blobLength = _blob.length();
+        if ( blobLength > Integer.MAX_VALUE - 8 ) {
+            throw new IOException("BLOB of " + blobLength + " bytes is too large to convert.");
+        }
+        int size = (int)blobLength;
+        if ( size > this.buffer.length ) {
+            this.buffer = new byte[Math.max(size,Math.min(this.buffer.length * 2,Integer.MAX_VALUE - 8))];
+        }
+        InputStream inputStream = _blob.getBinaryStream();
+        try {
+            int offset = 0;
+            int read;
+            while ( offset < size &&
+                    (read = inputStream.read(this.buffer,offset,Math.min(BLOCK_SIZE,size - offset))) != -1 ) {
+                offset += read;
+            }
+            this.length = offset;
+        } finally {
+            inputStream.close();
+        }
+        return this.buffer;
+    }
+
+    /**
+     * Reads the BLOB and converts it to a JTS Geometry.
+     * @param _blob : Blob : WKB or EWKB
+     * @param _SRID : int : SRID given to geometries that do not have one (SDO.SRID_NULL for none)
+     * @return Geometry : null if the BLOB is null or holds an empty geometry
+     * @throws SQLException
+     */
+    public Geometry read(Blob _blob,
+                         int  _SRID)
+    throws SQLException
+    {
+        if ( _blob == null ) {
+            return null;
+        }
+        try {
+            readBytes(_blob);
+            if ( this.length == 0 ) {
+                return null;
+            }
+            Geometry geom = Core.getJTSGeometryFromGBLOB(this.length == this.buffer.length
+                                                         ? this.buffer
+                                                         : Arrays.copyOf(this.buffer,this.length));
+            if ( geom == null || geom.isEmpty() ) {
+                return null;
+            }
+            if ( geom.getSRID() == SDO.SRID_NULL && _SRID != SDO.SRID_NULL ) {
+                geom.setSRID(_SRID);
+            }
+            return geom;
+        } catch (IOException ioe) {
+            throw new SQLException("Failed to read EWKB: " + ioe.getMessage());
+        } catch (JASPAGeomParseException e) {
+            throw new SQLException(e.getMessage());
+        } catch (IndexOutOfBoundsException ioobe) {
+            // The parser reads past the end of a truncated BLOB
+            throw new SQLException("Truncated EWKB: " + this.length + " bytes do not hold a whole geometry");
+        } catch (BufferUnderflowException bue) {
+            throw new SQLException("Truncated EWKB: " + this.length + " bytes do not hold a whole geometry");
+        }
+    }
+
+}
@@ -0,0 +1,482 @@
+package com.spdba.dbutils.lrs;
+
+import com.spdba.dbutils.JTS;
+import com.spdba.dbutils.sql.DBConnection;
+import com.spdba.dbutils.sql.FetchSizer;
+import com.spdba.dbutils.tools.Strings;
+
+import java.math.BigDecimal;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import oracle.jdbc.OracleConnection;
+
+import oracle.sql.ARRAY;
+import oracle.sql.ArrayDescriptor;
+import oracle.sql.STRUCT;
+import oracle.sql.StructDescriptor;
+
+import org.locationtech.jts.io.oracle.OraDescriptorCache;
+
+/**
+ * Locates many events against many routes in one pass (dynamic segmentation).
+ * <p>
+ * Events and routes are read from two cursors, both in route id order, and merged:
+ * each route is read once, and its {@link MeasuredLine} built only if it has events,
+ * so all the events on a route are located against one table of its measures.
+ * A point event (no end measure) is located as ST_LRS_Locate_Measure, a linear event
+ * as ST_LRS_Locate_Between. Offsets follow T_GEOMETRY: negative to the left, positive
+ * to the right.
+ * <p>
+ * Route ids are compared as numbers if both cursors' route id columns are numeric,
+ * otherwise as strings (so character ids must be sorted with NLS_SORT=BINARY).
+ * <p>
+ * The located events are returned in batches: ST_LRS_Dynamic_Segment_Open starts a merge
+ * of the two cursors, each ST_LRS_Dynamic_Segment_Fetch continues it for a number of
+ * events, and the cursors are closed when the last batch has been fetched or by
+ * ST_LRS_Dynamic_Segment_Close. Only one batch of located events is held at a time
+ * however many events there are.
+ * <p>
+ * An event whose route cannot be read (not a linestring, or with circular arcs) or that
+ * cannot be located on it (a linear event on a route whose measures decrease) is
+ * returned with a NULL geom; the other events are still located.
+ */
+public class DynamicSegmentation
+{
+    /** Object type of the located events returned when none is given */
+    public static final String DEFAULT_EVENT_TYPE     = "T_LOCATEDEVENT";
+    /** Collection type of the located events returned when none is given */
+    public static final String DEFAULT_EVENT_SET_TYPE = "T_LOCATEDEVENTSET";
+
+    /** Merges opened in this session, by handle */
+    private static final Map<Integer,Segmentation> segmentations = new HashMap<Integer,Segmentation>();
+    private static int lastHandle = 0;
+
+    /**
+     * A source of rows, in order.
+     */
+    interface Cursor<T>
+    {
+        /** @return T : The next row, or null when there are no more */
+        T next() throws SQLException;
+    }
+
+    /**
+     * Receives each event with the route it is on.
+     */
+    interface Locator
+    {
+        /**
+         * @param _event : Event : Event
+         * @param _route : MeasuredLine : Its route, null if its route id is NULL or has no route
+         */
+        void locate(Event _event, MeasuredLine _route) throws SQLException;
+    }
+
+    static class Event
+    {
+        final Comparable routeKey;
+        final String     routeId;
+        final String     eventId;
+        final Double     startMeasure;
+        final Double     endMeasure;   // NULL for a point event
+        final double     offset;
+
+        Event(Comparable _routeKey, String _routeId, String _eventId, Double _startMeasure, Double _endMeasure, double _offset) {
+            this.routeKey     = _routeKey;
+            this.routeId      = _routeId;
+            this.eventId      = _eventId;
+            this.startMeasure = _startMeasure;
+            this.endMeasure   = _endMeasure;
+            this.offset       = _offset;
+        }
+    }
+
+    static class Route
+    {
+        final Comparable     routeKey;
+        private STRUCT       geom;
+        private int          precision;
+        private MeasuredLine line;
+
+        Route(Comparable _routeKey, STRUCT _geom, int _precision) {
+            this.routeKey  = _routeKey;
+            this.geom      = _geom;
+            this.precision = _precision;
+        }
+
+        Route(Comparable _routeKey, MeasuredLine _line) {
+            this.routeKey = _routeKey;
+            this.line     = _line;
+        }
+
+        /**
+         * Builds the route's MeasuredLine when first needed.
+         * @return MeasuredLine, null if the route has no geometry or it is not a linestring without circular arcs
+         */
+        MeasuredLine getLine() {
+            if ( this.line == null && this.geom != null ) {
+                STRUCT route = this.geom;
+                this.geom = null;
+                try {
+                    this.line = LRS.read(route,this.precision);
+                } catch (SQLException sqle) {
+                    // Its events are returned with a NULL geom
+                    this.line = null;
+                }
+            }
+            return this.line;
+        }
+    }
+
+    /**
+     * Merges events with routes, both in route id order, one event at a time.
+     */
+    static class Merge
+    {
+        private final Cursor<Event> events;
+        private final Cursor<Route> routes;
+        private Route               route;
+        private Comparable          lastEventKey = null,
+                                    lastRouteKey = null;
+        private boolean             started      = false;
+
+        Merge(Cursor<Event> _events,
+              Cursor<Route> _routes)
+        {
+            this.events = _events;
+            this.routes = _routes;
+        }
+
+        /**
+         * Passes the next event and its route to _locator.
+         * A route's line is only built if it has an event.
+         * @return boolean : false if there are no more events
+         * @throws SQLException if either cursor is not in route id order, or _locator fails
+         */
+        boolean next(Locator _locator)
+        throws SQLException
+        {
+            if ( ! this.started ) {
+                this.started      = true;
+                this.route        = this.routes.next();
+                this.lastRouteKey = this.route == null ? null : this.route.routeKey;
+            }
+            Event event = this.events.next();
+            if ( event == null ) {
+                return false;
+            }
+            MeasuredLine line = null;
+            if ( event.routeKey != null ) {
+                if ( this.lastEventKey != null && event.routeKey.compareTo(this.lastEventKey) < 0 ) {
+                    throw new SQLException("Events are not in route id order: route " + event.routeId + " follows a later route.");
+                }
+                this.lastEventKey = event.routeKey;
+                while ( this.route != null && ( this.route.routeKey == null || this.route.routeKey.compareTo(event.routeKey) < 0 ) ) {
+                    this.route = this.routes.next();
+                    if ( this.route != null && this.route.routeKey != null ) {
+                        if ( this.lastRouteKey != null && this.route.routeKey.compareTo(this.lastRouteKey) < 0 ) {
+                            throw new SQLException("Routes are not in route id order: route " + this.route.routeKey + " follows a later route.");
+                        }
+                        this.lastRouteKey = this.route.routeKey;
+                    }
+                }
+                if ( this.route != null && this.route.routeKey != null && this.route.routeKey.compareTo(event.routeKey) == 0 ) {
+                    line = this.route.getLine();
+                }
+            }
+            try {
+                _locator.locate(event,line);
+            } catch (SQLException sqle) {
+                throw new SQLException("Route " + event.routeId + ", event " + event.eventId + ": " + sqle.getMessage());
+            }
+            return true;
+        }
+    }
+
+    /**
+     * An open merge of an events and a routes cursor, returning located events as objects of the event type.
+     */
+    private static class Segmentation
+    implements Locator
+    {
+        private final ResultSet        eventSet;
+        private final ResultSet        routeSet;
+        private final Merge            merge;
+        private final OracleConnection conn;
+        private final StructDescriptor eventDescriptor;
+        private final ArrayDescriptor  eventSetDescriptor;
+        private final List<STRUCT>     batch = new ArrayList<STRUCT>();
+
+        Segmentation(ResultSet _events,
+                     ResultSet _routes,
+                     int       _precision,
+                     String    _eventType,
+                     String    _eventSetType)
+        throws SQLException
+        {
+            this.eventSet = _events;
+            this.routeSet = _routes;
+            this.conn     = DBConnection.getConnection();
+            this.eventDescriptor    = OraDescriptorCache.getStructDescriptor(_eventType,this.conn);
+            this.eventSetDescriptor = OraDescriptorCache.getArrayDescriptor(_eventSetType,this.conn);
+
+            ResultSetMetaData eventsMeta = _events.getMetaData(),
+                              routesMeta = _routes.getMetaData();
+            if ( eventsMeta.getColumnCount() < 3 ) {
+                throw new SQLException("Events resultset must have route_id, event_id and measure columns.");
+            }
+            int geometryColumn = JTS.firstSdoGeometryColumn(routesMeta);
+            if ( geometryColumn == -1 ) {
+                throw new SQLException("No SDO_GEOMETRY column can be found in routes resultset.");
+            }
+            int routeIdColumn = geometryColumn == 1 ? 2 : 1;
+            if ( routeIdColumn > routesMeta.getColumnCount() ) {
+                throw new SQLException("No route_id column can be found in routes resultset.");
+            }
+            boolean numeric = isNumeric(eventsMeta.getColumnType(1)) && isNumeric(routesMeta.getColumnType(routeIdColumn));
+            this.merge = new Merge(events(_events,numeric),
+                                   routes(_routes,routeIdColumn,geometryColumn,numeric,_precision));
+        }
+
+        public void locate(Event _event, MeasuredLine _route) throws SQLException {
+            STRUCT geom = null;
+            if ( _route != null ) {
+                try {
+                    if ( _event.endMeasure != null ) {
+                        geom = LRS.locateBetween(_route,_event.startMeasure,_event.endMeasure,_event.offset,this.conn);
+                    } else if ( _event.startMeasure != null ) {
+                        geom = LRS.toPoint(_route,_route.locate(_event.startMeasure.doubleValue(),_event.offset),this.conn);
+                    }
+                } catch (SQLException sqle) {
+                    // Not locatable on this route (eg its measures decrease): NULL geom
+                    geom = null;
+                }
+            }
+            this.batch.add(new STRUCT(this.eventDescriptor,this.conn,new Object[] { _event.routeId, _event.eventId, geom }));
+        }
+
+        /**
+         * @return ARRAY : Up to _batchSize located events, null when there are no more
+         */
+        ARRAY fetch(int _batchSize)
+        throws SQLException
+        {
+            this.batch.clear();
+            while ( this.batch.size() < _batchSize && this.merge.next(this) ) { }
+            if ( this.batch.isEmpty() ) {
+                return null;
+            }
+            ARRAY located = new ARRAY(this.eventSetDescriptor,this.conn,this.batch.toArray(new STRUCT[this.batch.size()]));
+            this.batch.clear();
+            return located;
+        }
+
+        void close()
+        throws SQLException
+        {
+            try {
+                this.eventSet.close();
+            } finally {
+                this.routeSet.close();
+            }
+        }
+    }
+
+    /**
+     * Starts locating events against routes.
+     * @param _events       : ResultSet : route_id, event_id, measure [, end_measure [, offset]] in route_id order.
+     *                                    A row with a NULL (or no) end_measure is a point event.
+     * @param _routes       : ResultSet : route_id and sdo_geometry in route_id order.
+     *                                    The route id is the first column that is not the first SDO_GEOMETRY column.
+     * @param _precision    : int    : Number of decimal places of precision
+     * @param _eventType    : String : Object type of the located events eg GIS.T_LOCATEDEVENT; NULL for DEFAULT_EVENT_TYPE
+     * @param _eventSetType : String : Collection type eg GIS.T_LOCATEDEVENTSET; NULL for DEFAULT_EVENT_SET_TYPE
+     * @return int : Handle to pass to ST_LRS_Dynamic_Segment_Fetch and ST_LRS_Dynamic_Segment_Close.
+     *               The cursors are read, and must stay open, until the last batch is fetched or the handle is closed.
+     * @throws SQLException if a cursor is NULL or lacks its columns
+     */
+    public static int ST_LRS_Dynamic_Segment_Open(ResultSet _events,
+                                                  ResultSet _routes,
+                                                  int       _precision,
+                                                  String    _eventType,
+                                                  String    _eventSetType)
+    throws SQLException
+    {
+        if ( _events == null || _routes == null ) {
+            if ( _events != null ) { _events.close(); }
+            if ( _routes != null ) { _routes.close(); }
+            throw new SQLException("One or other of supplied ResultSets is NULL.");
+        }
+        Segmentation segmentation;
+        try {
+            segmentation = new Segmentation(_events,
+                                            _routes,
+                                            _precision,
+                                            Strings.isEmpty(_eventType)    ? DEFAULT_EVENT_TYPE     : _eventType.toUpperCase(),
+                                            Strings.isEmpty(_eventSetType) ? DEFAULT_EVENT_SET_TYPE : _eventSetType.toUpperCase());
+        } catch (SQLException sqle) {
+            try { _events.close(); } finally { _routes.close(); }
+            throw sqle;
+        }
+        synchronized (segmentations) {
+            segmentations.put(Integer.valueOf(++lastHandle),segmentation);
+            return lastHandle;
+        }
+    }
+
+    /**
+     * Locates the next events.
+     * @param _handle    : int : Handle from ST_LRS_Dynamic_Segment_Open
+     * @param _batchSize : int : Most events to return
+     * @return ARRAY : (route_id, event_id, geom) for up to _batchSize events in cursor order, NULL when there are no more
+     *                 (the handle is then closed). geom is NULL where the event's route is missing or unreadable,
+     *                 or its measures are not on the route.
+     * @throws SQLException if the handle is not open, or either cursor is not in route id order (the handle is closed)
+     */
+    public static ARRAY ST_LRS_Dynamic_Segment_Fetch(int _handle,
+                                                     int _batchSize)
+    throws SQLException
+    {
+        Segmentation segmentation;
+        synchronized (segmentations) {
+            segmentation = segmentations.get(Integer.valueOf(_handle));
+        }
+        if ( segmentation == null ) {
+            throw new SQLException("Dynamic segmentation " + _handle + " is not open.");
+        }
+        ARRAY located = null;
+        try {
+            located = segmentation.fetch(Math.max(_batchSize,1));
+        } finally {
+            if ( located == null ) {
+                ST_LRS_Dynamic_Segment_Close(_handle);
+            }
+        }
+        return located;
+    }
+
+    /**
+     * Closes a merge and its cursors; does nothing if it is already closed.
+     * @param _handle : int : Handle from ST_LRS_Dynamic_Segment_Open
+     * @throws SQLException
+     */
+    public static void ST_LRS_Dynamic_Segment_Close(int _handle)
+    throws SQLException
+    {
+        Segmentation segmentation;
+        synchronized (segmentations) {
+            segmentation = segmentations.remove(Integer.valueOf(_handle));
+        }
+        if ( segmentation != null ) {
+            segmentation.close();
+        }
+    }
+
+    /**
+     * Merges events with routes, both in route id order, passing each event and its route to _locator.
+     * @throws SQLException if either is not in route id order, or locating an event fails
+     */
+    static void segment(Cursor<Event> _events,
+                        Cursor<Route> _routes,
+                        Locator       _locator)
+    throws SQLException
+    {
+        Merge merge = new Merge(_events,_routes);
+        while ( merge.next(_locator) ) { }
+    }
+
+    private static Cursor<Event> events(final ResultSet _resultSet,
+                                        final boolean   _numeric)
+    throws SQLException
+    {
+        final int   columns = _resultSet.getMetaData().getColumnCount();
+        final FetchSizer fs = new FetchSizer();
+        fs.start(_resultSet);
+        return new Cursor<Event>() {
+            public Event next() throws SQLException {
+                if ( ! _resultSet.next() ) {
+                    return null;
+                }
+                fs.rowFetched(_resultSet,(STRUCT)null);
+                Double start  = getDouble(_resultSet,3),
+                       end    = columns > 3 ? getDouble(_resultSet,4) : null,
+                       offset = columns > 4 ? getDouble(_resultSet,5) : null;
+                return new Event(key(_resultSet,1,_numeric),
+                                 _resultSet.getString(1),
+                                 _resultSet.getString(2),
+                                 start,
+                                 end,
+                                 offset == null ? 0.0 : offset.doubleValue());
+            }
+        };
+    }
+
+    private static Cursor<Route> routes(final ResultSet _resultSet,
+                                        final int       _routeIdColumn,
+                                        final int       _geometryColumn,
+                                        final boolean   _numeric,
+                                        final int       _precision)
+    throws SQLException
+    {
+        final FetchSizer fs = new FetchSizer();
+        fs.start(_resultSet);
+        return new Cursor<Route>() {
+            public Route next() throws SQLException {
+                if ( ! _resultSet.next() ) {
+                    return null;
+                }
+                STRUCT geom = (STRUCT)_resultSet.getObject(_geometryColumn);
+                fs.rowFetched(_resultSet,geom);
+                return new Route(key(_resultSet,_routeIdColumn,_numeric),geom,_precision);
+            }
+        };
+    }
+
+    private static Comparable key(ResultSet _resultSet,
+                                  int       _column,
+                                  boolean   _numeric)
+    throws SQLException
+    {
+        if ( _numeric ) {
+            BigDecimal key = _resultSet.getBigDecimal(_column);
+            // Equal values compare equal whatever their scale
+            return key == null ? null : key.stripTrailingZeros();
+        }
+        return _resultSet.getString(_column);
+    }
+
+    private static Double getDouble(ResultSet _resultSet,
+                                    int       _column)
+    throws SQLException
+    {
+        double value = _resultSet.getDouble(_column);
+        return _resultSet.wasNull() ? null : Double.valueOf(value);
+    }
+
+    private static boolean isNumeric(int _sqlType) {
+        switch (_sqlType) {
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+            case Types.BIGINT:
+            case Types.FLOAT:
+            case Types.REAL:
+            case Types.DOUBLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+}
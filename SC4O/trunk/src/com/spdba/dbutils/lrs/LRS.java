@@ -0,0 +1,388 @@
+package com.spdba.dbutils.lrs;
+
+import com.spdba.dbutils.spatial.SDO;
+import com.spdba.dbutils.sql.DBConnection;
+
+import java.sql.SQLException;
+
+import java.util.List;
+
+import oracle.jdbc.OracleConnection;
+
+import oracle.sql.ARRAY;
+import oracle.sql.ArrayDescriptor;
+import oracle.sql.Datum;
+import oracle.sql.NUMBER;
+import oracle.sql.STRUCT;
+
+import org.locationtech.jts.io.oracle.OraDescriptorCache;
+import org.locationtech.jts.io.oracle.OraUtil;
+
+/**
+ * Linear referencing functions over (multi)linestrings for SC4O, backing the
+ * ST_LRS_* members of T_GEOMETRY for planar geometries.
+ * <p>
+ * Each function reads the SDO_GEOMETRY's ordinates once into a {@link MeasuredLine}.
+ * The set based functions locate or project many measures or points against one
+ * route in a single call.
+ * <p>
+ * Offsets follow T_GEOMETRY: negative to the left, positive to the right.
+ * Distances are planar.
+ */
+public class LRS
+{
+    public static final String TAG_MDSYS_SDO_NUMBER_ARRAY = SDO.MDSYS_SCHEMA + ".SDO_NUMBER_ARRAY";
+
+    /**
+     * Finds the point at a measure along a linestring, as T_GEOMETRY.ST_LRS_Locate_Measure.
+     * @param _lrsSegment : STRUCT : (Multi)linestring, measured or not
+     * @param _measure    : double : Measure (length along the line if it is not measured)
+     * @param _offset     : double : Perpendicular offset (negative left, positive right)
+     * @param _precision  : int    : Number of decimal places of precision
+     * @return STRUCT : Point; if the line is not measured the measure is added as Z (or W if 3D).
+     *                  NULL if the measure is not on the line.
+     * @throws SQLException
+     */
+    public static STRUCT ST_LRS_Locate_Measure(STRUCT _lrsSegment,
+                                               double _measure,
+                                               double _offset,
+                                               int    _precision)
+    throws SQLException
+    {
+        MeasuredLine line = read(_lrsSegment,_precision);
+        if ( line == null ) {
+            return null;
+        }
+        return toPoint(line,line.locate(_measure,_offset),DBConnection.getConnection());
+    }
+
+    /**
+     * Finds the part of a linestring between two measures, as T_GEOMETRY.ST_LRS_Locate_Measures.
+     * @param _lrsSegment   : STRUCT : (Multi)linestring whose measures increase
+     * @param _startMeasure : Double : Start measure, 0 if NULL
+     * @param _endMeasure   : Double : End measure, the line's end measure if NULL
+     * @param _offset       : double : Perpendicular offset (negative left, positive right)
+     * @param _precision    : int    : Number of decimal places of precision
+     * @return STRUCT : (Multi)linestring with the sdo_gtype of _lrsSegment, a point if the measures are equal,
+     *                  NULL if the measures are not on the line.
+     * @throws SQLException if the line's measures do not increase
+     */
+    public static STRUCT ST_LRS_Locate_Between(STRUCT _lrsSegment,
+                                               Double _startMeasure,
+                                               Double _endMeasure,
+                                               double _offset,
+                                               int    _precision)
+    throws SQLException
+    {
+        MeasuredLine line = read(_lrsSegment,_precision);
+        if ( line == null ) {
+            return null;
+        }
+        return locateBetween(line,_startMeasure,_endMeasure,_offset,DBConnection.getConnection());
+    }
+
+    /**
+     * Snaps a point to a linestring, as T_GEOMETRY.ST_LRS_Project_Point.
+     * @param _lrsSegment : STRUCT : (Multi)linestring
+     * @param _point      : STRUCT : Point
+     * @param _precision  : int    : Number of decimal places of precision
+     * @return STRUCT : Nearest point on the line, with the line's dimensions (Z and M interpolated)
+     * @throws SQLException
+     */
+    public static STRUCT ST_LRS_Project_Point(STRUCT _lrsSegment,
+                                              STRUCT _point,
+                                              int    _precision)
+    throws SQLException
+    {
+        MeasuredLine line = read(_lrsSegment,_precision);
+        double[]       xy = readPoint(_point);
+        if ( line == null || xy == null ) {
+            return null;
+        }
+        return toPoint(line,line.projectPoint(xy[0],xy[1]),DBConnection.getConnection());
+    }
+
+    /**
+     * Finds the measure of the point on a linestring nearest a point, as T_GEOMETRY.ST_LRS_Find_MeasureN(p_point,1).
+     * @param _lrsSegment : STRUCT : (Multi)linestring
+     * @param _point      : STRUCT : Point
+     * @param _precision  : int    : Number of decimal places of precision
+     * @return Double : Measure (length along the line if it is not measured)
+     * @throws SQLException
+     */
+    public static Double ST_LRS_Find_Measure(STRUCT _lrsSegment,
+                                             STRUCT _point,
+                                             int    _precision)
+    throws SQLException
+    {
+        MeasuredLine line = read(_lrsSegment,_precision);
+        double[]       xy = readPoint(_point);
+        if ( line == null || xy == null ) {
+            return null;
+        }
+        return Double.valueOf(line.findMeasure(xy[0],xy[1]));
+    }
+
+    /**
+     * Rescales the measures of a linestring, as T_GEOMETRY.ST_LRS_Scale_Measures.
+     * @param _lrsSegment   : STRUCT : Measured (multi)linestring
+     * @param _startMeasure : double : New start measure
+     * @param _endMeasure   : double : New end measure
+     * @param _shiftMeasure : double : Amount added to each new measure
+     * @param _precision    : int    : Number of decimal places of precision
+     * @return STRUCT : Linestring with new measures
+     * @throws SQLException if the line is not measured
+     */
+    public static STRUCT ST_LRS_Scale_Measures(STRUCT _lrsSegment,
+                                               double _startMeasure,
+                                               double _endMeasure,
+                                               double _shiftMeasure,
+                                               int    _precision)
+    throws SQLException
+    {
+        MeasuredLine line = read(_lrsSegment,_precision);
+        if ( line == null ) {
+            return null;
+        }
+        Datum data[] = _lrsSegment.getOracleAttributes();
+        return toSTRUCT(line.getGType(),
+                        line.getSRID(),
+                        null,
+                        OraUtil.toIntArray((ARRAY)data[3],0),
+                        line.scaleMeasures(_startMeasure,_endMeasure,_shiftMeasure),
+                        DBConnection.getConnection());
+    }
+
+    /**
+     * Splits a linestring at a measure, as T_GEOMETRY.ST_Split(p_measure).
+     * The line is read once for both parts.
+     * @param _lrsSegment : STRUCT : (Multi)linestring whose measures increase
+     * @param _measure    : double : Measure at which to split the line
+     * @param _precision  : int    : Number of decimal places of precision
+     * @return ARRAY : MDSYS.SDO_GEOMETRY_ARRAY of the part of the line up to _measure and the part from it,
+     *                 either a point if _measure is at that end of the line. NULL if _measure is not on the line.
+     * @throws SQLException if the line's measures do not increase
+     */
+    public static ARRAY ST_LRS_Split(STRUCT _lrsSegment,
+                                     double _measure,
+                                     int    _precision)
+    throws SQLException
+    {
+        MeasuredLine line = read(_lrsSegment,_precision);
+        if ( line == null || _measure < line.getStartMeasure() || _measure > line.getEndMeasure() ) {
+            return null;
+        }
+        OracleConnection conn = DBConnection.getConnection();
+        STRUCT[]        parts = new STRUCT[] {
+                                    locateBetween(line,Double.valueOf(0.0),Double.valueOf(_measure),0.0,conn),
+                                    locateBetween(line,Double.valueOf(_measure),null,0.0,conn) };
+        ArrayDescriptor descriptor = OraDescriptorCache.getArrayDescriptor(SDO.TAG_MDSYS_SDO_GEOMETRY_ARRAY,conn);
+        return new ARRAY(descriptor,conn,parts);
+    }
+
+    /**
+     * Finds the points at many measures along one linestring.
+     * @param _lrsSegment : STRUCT : (Multi)linestring, measured or not
+     * @param _measures   : ARRAY  : MDSYS.SDO_NUMBER_ARRAY of measures
+     * @param _offsets    : ARRAY  : MDSYS.SDO_NUMBER_ARRAY of the offset of each measure; NULL (or a NULL element) for none
+     * @param _precision  : int    : Number of decimal places of precision
+     * @return ARRAY : MDSYS.SDO_GEOMETRY_ARRAY of the point at each measure, in order, NULL where a measure is NULL or not on the line.
+     * @throws SQLException
+     */
+    public static ARRAY ST_LRS_Locate_Measures(STRUCT _lrsSegment,
+                                               ARRAY  _measures,
+                                               ARRAY  _offsets,
+                                               int    _precision)
+    throws SQLException
+    {
+        MeasuredLine line = read(_lrsSegment,_precision);
+        if ( line == null || _measures == null ) {
+            return null;
+        }
+        double[] measures = OraUtil.toDoubleArray(_measures,Double.NaN),
+                  offsets = _offsets == null ? null : OraUtil.toDoubleArray(_offsets,0.0);
+        OracleConnection conn = DBConnection.getConnection();
+        STRUCT[]       points = new STRUCT[measures.length];
+        for (int i = 0; i < measures.length; i++) {
+            if ( ! Double.isNaN(measures[i]) ) {
+                double offset = offsets == null || i >= offsets.length ? 0.0 : offsets[i];
+                points[i] = toPoint(line,line.locate(measures[i],offset),conn);
+            }
+        }
+        ArrayDescriptor descriptor = OraDescriptorCache.getArrayDescriptor(SDO.TAG_MDSYS_SDO_GEOMETRY_ARRAY,conn);
+        return new ARRAY(descriptor,conn,points);
+    }
+
+    /**
+     * Finds the measures of many points against one linestring.
+     * @param _lrsSegment : STRUCT : (Multi)linestring, measured or not
+     * @param _points     : ARRAY  : MDSYS.SDO_GEOMETRY_ARRAY of points
+     * @param _precision  : int    : Number of decimal places of precision
+     * @return ARRAY : MDSYS.SDO_NUMBER_ARRAY of the measure of the nearest point on the line to each point, in order,
+     *                 NULL where a point is NULL.
+     * @throws SQLException
+     */
+    public static ARRAY ST_LRS_Find_Measures(STRUCT _lrsSegment,
+                                             ARRAY  _points,
+                                             int    _precision)
+    throws SQLException
+    {
+        MeasuredLine line = read(_lrsSegment,_precision);
+        if ( line == null || _points == null ) {
+            return null;
+        }
+        Object[] points = (Object[])_points.getArray();
+        NUMBER[] measures = new NUMBER[points.length];
+        for (int i = 0; i < points.length; i++) {
+            double[] xy = readPoint((STRUCT)points[i]);
+            if ( xy != null ) {
+                measures[i] = new NUMBER(line.findMeasure(xy[0],xy[1]));
+            }
+        }
+        OracleConnection conn = DBConnection.getConnection();
+        ArrayDescriptor descriptor = OraDescriptorCache.getArrayDescriptor(TAG_MDSYS_SDO_NUMBER_ARRAY,conn);
+        return new ARRAY(descriptor,conn,measures);
+    }
+
+    /**
+     * Reads a linestring SDO_GEOMETRY.
+     * @return MeasuredLine, or null if _geom is NULL or has no ordinates
+     */
+    static MeasuredLine read(STRUCT _geom,
+                             int    _precision)
+    throws SQLException
+    {
+        if ( _geom == null ) {
+            return null;
+        }
+        Datum data[] = _geom.getOracleAttributes();
+        if ( data[4] == null ) {
+            return null;
+        }
+        int gType = OraUtil.toInteger(data[0],0);
+        return MeasuredLine.create(gType,
+                                   OraUtil.toInteger(data[1],SDO.SRID_NULL),
+                                   OraUtil.toIntArray((ARRAY)data[3],0),
+                                   OraUtil.toDoubleArray((ARRAY)data[4],Double.NaN),
+                                   _precision);
+    }
+
+    /**
+     * @return double[] : X and Y of a point SDO_GEOMETRY (its first vertex), null if NULL or empty
+     */
+    static double[] readPoint(STRUCT _point)
+    throws SQLException
+    {
+        if ( _point == null ) {
+            return null;
+        }
+        Datum data[] = _point.getOracleAttributes();
+        double[] xy = data[2] != null ? OraUtil.toDoubleArray((STRUCT)data[2],Double.NaN)
+                                      : (data[4] != null ? OraUtil.toDoubleArray((ARRAY)data[4],Double.NaN) : null);
+        if ( xy == null || xy.length < 2 || Double.isNaN(xy[0]) || Double.isNaN(xy[1]) ) {
+            return null;
+        }
+        return new double[] { xy[0], xy[1] };
+    }
+
+    /**
+     * Finds the part of a line between two measures, as ST_LRS_Locate_Between.
+     * @return STRUCT : (Multi)linestring, a point if the measures are equal, null if the measures are not on the line
+     * @throws SQLException if the line's measures do not increase
+     */
+    static STRUCT locateBetween(MeasuredLine     _line,
+                                Double           _startMeasure,
+                                Double           _endMeasure,
+                                double           _offset,
+                                OracleConnection _conn)
+    throws SQLException
+    {
+        if ( ! _line.isMeasureIncreasing() ) {
+            throw new SQLException("Geometries with reversed measured currently not handled. Reverse before use.");
+        }
+        double startMeasure = _startMeasure == null ? 0.0 : _startMeasure.doubleValue(),
+                 endMeasure = _endMeasure   == null ? _line.getEndMeasure() : _endMeasure.doubleValue();
+        if ( _line.getEndMeasure() < startMeasure || endMeasure < startMeasure ) {
+            return null;
+        }
+        if ( startMeasure == endMeasure ) {
+            return toPoint(_line,_line.locate(startMeasure,_offset),_conn);
+        }
+        return toLine(_line,_line.locateBetween(startMeasure,endMeasure,_offset),_conn);
+    }
+
+    /**
+     * Writes a vertex from a MeasuredLine as a point.
+     * A vertex of up to 3 ordinates is written as an SDO_POINT, 4 as an ordinate array.
+     */
+    static STRUCT toPoint(MeasuredLine     _line,
+                          double[]         _vertex,
+                          OracleConnection _conn)
+    throws SQLException
+    {
+        if ( _vertex == null ) {
+            return null;
+        }
+        // Measures added to unmeasured lines are written as Z or W, as T_GEOMETRY does
+        int gType = (_vertex.length * 1000) + (_vertex.length == _line.getDimensions() ? _line.getMeasureDimension() * 100 : 0) + 1;
+        if ( _vertex.length <= 3 ) {
+            return toSTRUCT(gType,_line.getSRID(),_vertex,null,null,_conn);
+        }
+        return toSTRUCT(gType,_line.getSRID(),null,new int[] { 1, 1, 1 },_vertex,_conn);
+    }
+
+    /**
+     * Writes the parts found by MeasuredLine.locateBetween.
+     * @return STRUCT : (Multi)linestring with the line's sdo_gtype, null if there are no parts
+     */
+    static STRUCT toLine(MeasuredLine     _line,
+                         List<double[]>   _parts,
+                         OracleConnection _conn)
+    throws SQLException
+    {
+        if ( _parts.size() == 0 ) {
+            return null;
+        }
+        int     size = 0;
+        for (double[] part : _parts) {
+            size += part.length;
+        }
+        int[]    elemInfo  = new int[_parts.size() * 3];
+        double[] ordinates = new double[size];
+        int ord = 0;
+        for (int p = 0; p < _parts.size(); p++) {
+            elemInfo[p * 3]     = ord + 1;
+            elemInfo[p * 3 + 1] = 2;
+            elemInfo[p * 3 + 2] = 1;
+            System.arraycopy(_parts.get(p),0,ordinates,ord,_parts.get(p).length);
+            ord += _parts.get(p).length;
+        }
+        return toSTRUCT(_line.getGType(),_line.getSRID(),null,elemInfo,ordinates,_conn);
+    }
+
+    private static STRUCT toSTRUCT(int              _gType,
+                                   int              _srid,
+                                   double[]         _point,
+                                   int[]            _elemInfo,
+                                   double[]         _ordinates,
+                                   OracleConnection _conn)
+    throws SQLException
+    {
+        STRUCT sdoPoint = null;
+        if ( _point != null ) {
+            Datum data[] = new Datum[] {
+                OraUtil.toNUMBER(_point[0]), OraUtil.toNUMBER(_point[1]),
+                _point.length > 2 ? OraUtil.toNUMBER(_point[2]) : null };
+            sdoPoint = OraUtil.toSTRUCT(data,SDO.TAG_MDSYS_SDO_POINT_TYPE,_conn);
+        }
+        Datum sdoGeometry[] = new Datum[] {
+            new NUMBER(_gType),
+            _srid == SDO.SRID_NULL ? null : new NUMBER(_srid),
+            sdoPoint,
+            _elemInfo  == null ? null : OraUtil.toARRAY(_elemInfo,SDO.TAG_MDSYS_SDO_ELEM_ARRAY,_conn),
+            _ordinates == null ? null : OraUtil.toARRAY(_ordinates,SDO.TAG_MDSYS_SDO_ORD_ARRAY,_conn)
+        };
+        return OraUtil.toSTRUCT(sdoGeometry,SDO.TAG_MDSYS_SDO_GEOMETRY,_conn);
+    }
+
+}
@@ -0,0 +1,563 @@
+package com.spdba.dbutils.lrs;
+
+import com.spdba.dbutils.tools.Tools;
+
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.strtree.ItemBoundable;
+import org.locationtech.jts.index.strtree.ItemDistance;
+import org.locationtech.jts.index.strtree.STRtree;
+
+/**
+ * A (multi)linestring held as the packed ordinates of an SDO_GEOMETRY, with the
+ * measure of each vertex, for linear referencing.
+ * <p>
+ * The measure of a vertex is its M ordinate or, if the linestring is not measured,
+ * its cumulative (planar) length from the start of the linestring.
+ * Measures are tabled once when the line is created, so measures are located
+ * within each part by binary search, and many measures can be located against one
+ * line without reading its ordinates again.
+ * <p>
+ * Measures are compared after rounding to the line's precision, as T_GEOMETRY does.
+ * Offsets are perpendicular distances: negative to the left, positive to the right.
+ * Only linestrings of straight segments are supported (no circular arcs).
+ */
+public class MeasuredLine
+{
+    private final int      gType;
+    private final int      srid;
+    private final int      dims;
+    private final int      measureOrdinate;  // Position of M in a vertex (0 based), -1 if not measured
+    private final double[] ordinates;
+    private final int[]    parts;            // First vertex of each part, followed by the number of vertices
+    private final double[] measures;         // Measure of each vertex
+    private final double[] rounded;          // Measure of each vertex rounded to precision
+    private final int[]    directions;       // Of each part: 1 measures ascending, -1 descending, 0 neither
+    private final double   scale;
+
+    /** Lines with this many segments are projected onto using an STRtree of their segments */
+    private static final int INDEX_MINIMUM_SEGMENTS = 64;
+
+    private STRtree index;  // Of the segments, built when first projected onto
+
+    private MeasuredLine(int      _gType,
+                         int      _srid,
+                         int[]    _parts,
+                         double[] _ordinates,
+                         int      _precision)
+    {
+        this.gType     = _gType;
+        this.srid      = _srid;
+        this.dims      = _gType / 1000;
+        int lrsDim     = (_gType / 100) % 10;
+        this.measureOrdinate = lrsDim > 0 ? lrsDim - 1 : (this.dims == 4 ? 3 : -1);
+        this.ordinates = _ordinates;
+        this.parts     = _parts;
+        this.scale     = Tools.getPrecisionScale(_precision);
+
+        int vertices    = _ordinates.length / this.dims;
+        this.measures   = new double[vertices];
+        this.rounded    = new double[vertices];
+        this.directions = new int[_parts.length - 1];
+        double length   = 0.0;
+        for (int p = 0; p < this.directions.length; p++) {
+            int first = _parts[p], last = _parts[p + 1] - 1;
+            boolean ascending = true, descending = true;
+            for (int v = first; v <= last; v++) {
+                if ( this.measureOrdinate >= 0 ) {
+                    this.measures[v] = _ordinates[v * this.dims + this.measureOrdinate];
+                } else {
+                    if ( v > first ) {
+                        length += segmentLength(v - 1);
+                    }
+                    this.measures[v] = length;
+                }
+                this.rounded[v] = round(this.measures[v]);
+                if ( v > first ) {
+                    ascending  = ascending  && this.rounded[v] >= this.rounded[v - 1];
+                    descending = descending && this.rounded[v] <= this.rounded[v - 1];
+                }
+            }
+            this.directions[p] = ascending ? 1 : (descending ? -1 : 0);
+        }
+    }
+
+    /**
+     * Creates a MeasuredLine from the attributes of an SDO_GEOMETRY.
+     * @param _gType     : int      : SDO_GTYPE eg 3302
+     * @param _srid      : int      : SDO_SRID
+     * @param _elemInfo  : int[]    : SDO_ELEM_INFO
+     * @param _ordinates : double[] : SDO_ORDINATES (not copied)
+     * @param _precision : int      : Number of decimal places of precision of measures and computed ordinates
+     * @return MeasuredLine
+     * @throws SQLException if the geometry is not a (multi)linestring or has circular arcs
+     */
+    public static MeasuredLine create(int      _gType,
+                                      int      _srid,
+                                      int[]    _elemInfo,
+                                      double[] _ordinates,
+                                      int      _precision)
+    throws SQLException
+    {
+        int dims = _gType / 1000;
+        if ( ( _gType % 10 != 2 && _gType % 10 != 6 ) || dims < 2 ) {
+            throw new SQLException("Geometry (" + _gType + ") is not a (Multi)Linestring.");
+        }
+        if ( _elemInfo == null || _elemInfo.length < 3 || _ordinates == null || _ordinates.length < dims * 2 ) {
+            throw new SQLException("Linestring has no segments.");
+        }
+        int[] parts = new int[_elemInfo.length / 3 + 1];
+        for (int e = 0; e < _elemInfo.length / 3; e++) {
+            if ( _elemInfo[e * 3 + 1] != 2 ) {
+                throw new SQLException("Element " + (e + 1) + " (etype " + _elemInfo[e * 3 + 1] + ") is not a linestring.");
+            }
+            if ( _elemInfo[e * 3 + 2] != 1 ) {
+                throw new SQLException("Linestrings with circular arcs are not supported.");
+            }
+            parts[e] = (_elemInfo[e * 3] - 1) / dims;
+        }
+        parts[parts.length - 1] = _ordinates.length / dims;
+        return new MeasuredLine(_gType,_srid,parts,_ordinates,_precision);
+    }
+
+    public int getGType() {
+        return this.gType;
+    }
+
+    public int getSRID() {
+        return this.srid;
+    }
+
+    public int getDimensions() {
+        return this.dims;
+    }
+
+    /**
+     * @return boolean : True if the line has an M ordinate
+     */
+    public boolean isMeasured() {
+        return this.measureOrdinate >= 0;
+    }
+
+    /**
+     * @return int : Position of the measure in a vertex (eg 3 for 3302), 0 if not measured (as ST_Lrs_Dim)
+     */
+    public int getMeasureDimension() {
+        return this.measureOrdinate + 1;
+    }
+
+    public int getNumParts() {
+        return this.directions.length;
+    }
+
+    public double getStartMeasure() {
+        return this.measures[0];
+    }
+
+    public double getEndMeasure() {
+        return this.measures[this.measures.length - 1];
+    }
+
+    /**
+     * @return boolean : True if the measures of every part never decrease
+     */
+    public boolean isMeasureIncreasing() {
+        for (int p = 0; p < this.directions.length; p++) {
+            if ( this.directions[p] != 1 ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rounds a value to the precision of the line.
+     */
+    public double round(double _value) {
+        return Math.round(_value * this.scale) / this.scale;
+    }
+
+    /**
+     * Finds the point at a measure.
+     * The first position along the line (part by part) with the measure is returned.
+     * @param _measure : double : Measure to locate
+     * @param _offset  : double : Perpendicular offset (negative left, positive right)
+     * @return double[] : Vertex with the line's ordinates, its measure set to _measure;
+     *                    if the line is not measured, the measure is added as an extra ordinate.
+     *                    Null if no part has the measure.
+     */
+    public double[] locate(double _measure,
+                           double _offset)
+    {
+        double measure = round(_measure);
+        for (int p = 0; p < this.directions.length; p++) {
+            double position = find(p,measure);
+            if ( ! Double.isNaN(position) ) {
+                double[] vertex = vertexAt(p,position,_measure,_offset);
+                if ( this.measureOrdinate >= 0 ) {
+                    return vertex;
+                }
+                double[] measured = new double[this.dims + 1];
+                System.arraycopy(vertex,0,measured,0,this.dims);
+                measured[this.dims] = round(_measure);
+                return measured;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the parts of the line between two measures.
+     * Every part's measures must be ascending (see isMeasureIncreasing).
+     * @param _startMeasure : double : Measure at which the result starts
+     * @param _endMeasure   : double : Measure at which the result ends (greater than _startMeasure)
+     * @param _offset       : double : Perpendicular offset (negative left, positive right)
+     * @return List<double[]> : Packed ordinates (with the line's dimensions) of each part between the measures.
+     *                          Parts that only touch the range are not returned.
+     */
+    public List<double[]> locateBetween(double _startMeasure,
+                                        double _endMeasure,
+                                        double _offset)
+    {
+        List<double[]> pieces = new ArrayList<double[]>();
+        double start = round(_startMeasure),
+                 end = round(_endMeasure);
+        for (int p = 0; p < this.directions.length; p++) {
+            int first = this.parts[p], last = this.parts[p + 1] - 1;
+            if ( last <= first || Math.max(this.rounded[first],start) >= Math.min(this.rounded[last],end) ) {
+                continue;
+            }
+            double startPosition = start <= this.rounded[first] ? first : find(p,start),
+                     endPosition = end   >= this.rounded[last]  ? last  : find(p,end);
+            int   firstInterior = (int)Math.floor(startPosition) + 1,
+                   lastInterior = (int)Math.ceil(endPosition) - 1;
+            double[] piece = new double[(Math.max(lastInterior - firstInterior + 1,0) + 2) * this.dims];
+            int ord = 0;
+            double[] vertex = vertexAt(p,startPosition,startPosition == first ? Double.NaN : _startMeasure,_offset);
+            System.arraycopy(vertex,0,piece,ord,this.dims);
+            ord += this.dims;
+            for (int v = firstInterior; v <= lastInterior; v++) {
+                vertex = vertexAt(p,v,Double.NaN,_offset);
+                System.arraycopy(vertex,0,piece,ord,this.dims);
+                ord += this.dims;
+            }
+            vertex = vertexAt(p,endPosition,endPosition == last ? Double.NaN : _endMeasure,_offset);
+            System.arraycopy(vertex,0,piece,ord,this.dims);
+            pieces.add(piece);
+        }
+        return pieces;
+    }
+
+    /**
+     * Finds the position on the line nearest a point.
+     * Where several segments are equally near, the first is used.
+     * @param _x : double : X of point
+     * @param _y : double : Y of point
+     * @return double : Position as vertex index plus ratio along the following segment eg 3.25
+     */
+    public double project(double _x,
+                          double _y)
+    {
+        int segments = this.measures.length - this.directions.length;
+        if ( segments >= INDEX_MINIMUM_SEGMENTS ) {
+            return projectIndexed(_x,_y);
+        }
+        double nearest = Double.MAX_VALUE, position = 0.0;
+        for (int p = 0; p < this.directions.length; p++) {
+            for (int v = this.parts[p]; v < this.parts[p + 1] - 1; v++) {
+                double[] distance = distance(v,_x,_y);
+                if ( distance[0] < nearest ) {
+                    nearest  = distance[0];
+                    position = v + distance[1];
+                }
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Finds the nearest segment in an STRtree of the segments, then checks all
+     * segments within that distance so the first of equally near segments is used.
+     */
+    private double projectIndexed(final double _x,
+                                  final double _y)
+    {
+        if ( this.index == null ) {
+            STRtree tree = new STRtree();
+            for (int p = 0; p < this.directions.length; p++) {
+                for (int v = this.parts[p]; v < this.parts[p + 1] - 1; v++) {
+                    int o = v * this.dims;
+                    tree.insert(new Envelope(this.ordinates[o],this.ordinates[o + this.dims],
+                                             this.ordinates[o + 1],this.ordinates[o + this.dims + 1]),
+                                Integer.valueOf(v));
+                }
+            }
+            tree.build();
+            this.index = tree;
+        }
+        final Integer query = Integer.valueOf(-1);
+        Integer nearestSegment = (Integer)this.index.nearestNeighbour(new Envelope(_x,_x,_y,_y),query,new ItemDistance() {
+            public double distance(ItemBoundable _item1, ItemBoundable _item2) {
+                Integer segment = (Integer)(_item1.getItem() == query ? _item2.getItem() : _item1.getItem());
+                return Math.sqrt(MeasuredLine.this.distance(segment.intValue(),_x,_y)[0]);
+            }
+        });
+        double reach = Math.sqrt(distance(nearestSegment.intValue(),_x,_y)[0]) + 1e-9;
+        List candidates = this.index.query(new Envelope(_x - reach,_x + reach,_y - reach,_y + reach));
+        Collections.sort(candidates);
+        double nearest = Double.MAX_VALUE, position = 0.0;
+        for (int i = 0; i < candidates.size(); i++) {
+            int v = ((Integer)candidates.get(i)).intValue();
+            double[] distance = distance(v,_x,_y);
+            if ( distance[0] < nearest ) {
+                nearest  = distance[0];
+                position = v + distance[1];
+            }
+        }
+        return position;
+    }
+
+    /**
+     * @return double[] : Squared distance from a point to the segment starting at _vertex,
+     *                    and the ratio along the segment of the nearest point
+     */
+    private double[] distance(int    _vertex,
+                              double _x,
+                              double _y)
+    {
+        int o = _vertex * this.dims;
+        double x1 = this.ordinates[o],
+               y1 = this.ordinates[o + 1],
+               dx = this.ordinates[o + this.dims]     - x1,
+               dy = this.ordinates[o + this.dims + 1] - y1,
+            ratio = 0.0,
+           length = dx * dx + dy * dy;
+        if ( length > 0.0 ) {
+            ratio = Math.max(0.0,Math.min(1.0,((_x - x1) * dx + (_y - y1) * dy) / length));
+        }
+        double px = x1 + ratio * dx - _x,
+               py = y1 + ratio * dy - _y;
+        return new double[] { px * px + py * py, ratio };
+    }
+
+    /**
+     * Snaps a point to the line.
+     * @param _x : double : X of point
+     * @param _y : double : Y of point
+     * @return double[] : Nearest vertex on the line, with the line's ordinates (Z and M interpolated)
+     */
+    public double[] projectPoint(double _x,
+                                 double _y)
+    {
+        double position = project(_x,_y);
+        return vertexAt(part((int)position),position,Double.NaN,0.0);
+    }
+
+    /**
+     * @param _x : double : X of point
+     * @param _y : double : Y of point
+     * @return double : Measure of the nearest point on the line (its length along the line if not measured)
+     */
+    public double findMeasure(double _x,
+                              double _y)
+    {
+        return measureAt(project(_x,_y));
+    }
+
+    /**
+     * Rescales the measures of the line as ST_LRS_Scale_Measures.
+     * @param _startMeasure : double : New start measure
+     * @param _endMeasure   : double : New end measure
+     * @param _shiftMeasure : double : Amount added to all new measures
+     * @return double[] : New ordinates
+     * @throws SQLException if the line is not measured or its measure range is zero
+     */
+    public double[] scaleMeasures(double _startMeasure,
+                                  double _endMeasure,
+                                  double _shiftMeasure)
+    throws SQLException
+    {
+        if ( this.measureOrdinate < 0 ) {
+            throw new SQLException("Geometry is not measured.");
+        }
+        double range = getEndMeasure() - getStartMeasure();
+        if ( range == 0.0 || Double.isNaN(range) ) {
+            throw new SQLException("Geometry's measure range is zero or undefined.");
+        }
+        double[] scaled = this.ordinates.clone();
+        double    ratio = (_endMeasure - _startMeasure) / range,
+                    sum = 0.0;
+        for (int v = 0; v < this.measures.length; v++) {
+            if ( v > 0 ) {
+                sum += (this.measures[v] - this.measures[v - 1]) * ratio;
+            }
+            scaled[v * this.dims + this.measureOrdinate] = _startMeasure + _shiftMeasure + sum;
+        }
+        return scaled;
+    }
+
+    /**
+     * Finds the first position in a part with a (rounded) measure.
+     * @return double : Vertex index plus ratio along the following segment, NaN if not in the part.
+     */
+    private double find(int    _part,
+                        double _measure)
+    {
+        int first = this.parts[_part], last = this.parts[_part + 1] - 1;
+        if ( last <= first ) {
+            return Double.NaN;
+        }
+        int direction = this.directions[_part];
+        if ( direction == 0 ) {
+            // Measures go up and down: check each segment in turn
+            for (int v = first; v < last; v++) {
+                if ( this.rounded[v] == _measure ) {
+                    return v;
+                }
+                if ( this.rounded[v + 1] == _measure ) {
+                    if ( v + 1 == last ) {
+                        return last;
+                    }
+                    continue;  // Found as the start of the next segment
+                }
+                if ( _measure > Math.min(this.rounded[v],this.rounded[v + 1]) &&
+                     _measure < Math.max(this.rounded[v],this.rounded[v + 1]) ) {
+                    return v + ratio(v,_measure);
+                }
+            }
+            return Double.NaN;
+        }
+        // First vertex whose measure is not before _measure
+        double target = direction * _measure;
+        if ( direction * this.rounded[last] < target || direction * this.rounded[first] > target ) {
+            return Double.NaN;
+        }
+        int low = first, high = last;
+        while ( low < high ) {
+            int middle = (low + high) >>> 1;
+            if ( direction * this.rounded[middle] < target ) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if ( this.rounded[low] == _measure ) {
+            return low;
+        }
+        return (low - 1) + ratio(low - 1,_measure);
+    }
+
+    private double ratio(int    _vertex,
+                         double _measure)
+    {
+        double range = this.measures[_vertex + 1] - this.measures[_vertex];
+        return range == 0.0 ? 0.0 : Math.max(0.0,Math.min(1.0,(_measure - this.measures[_vertex]) / range));
+    }
+
+    private int part(int _vertex) {
+        int p = 0;
+        while ( this.parts[p + 1] <= _vertex ) {
+            p++;
+        }
+        return p;
+    }
+
+    private double measureAt(double _position) {
+        int    v = (int)Math.floor(_position);
+        double t = _position - v;
+        if ( t == 0.0 ) {
+            return this.measures[v];
+        }
+        return round(this.measures[v] + t * (this.measures[v + 1] - this.measures[v]));
+    }
+
+    /**
+     * Computes the vertex at a position in a part.
+     * At a vertex between two segments the offset is along the bisector of their angle,
+     * elsewhere it is perpendicular to the segment.
+     * @param _part     : int    : Part
+     * @param _position : double : Vertex index plus ratio along the following segment
+     * @param _measure  : double : Measure to set, NaN to interpolate
+     * @param _offset   : double : Offset
+     */
+    private double[] vertexAt(int    _part,
+                              double _position,
+                              double _measure,
+                              double _offset)
+    {
+        int first = this.parts[_part], last = this.parts[_part + 1] - 1;
+        int     v = (int)Math.floor(_position);
+        double  t = _position - v;
+        double[] vertex = new double[this.dims];
+        if ( t == 0.0 ) {
+            System.arraycopy(this.ordinates,v * this.dims,vertex,0,this.dims);
+            if ( _offset != 0.0 ) {
+                double[] normal = v == first ? normal(v)
+                                : v == last  ? normal(v - 1)
+                                : bisector(v);
+                offset(vertex,normal,_offset);
+            }
+        } else {
+            int o = v * this.dims;
+            for (int d = 0; d < this.dims; d++) {
+                vertex[d] = round(this.ordinates[o + d] + t * (this.ordinates[o + this.dims + d] - this.ordinates[o + d]));
+            }
+            offset(vertex,normal(v),_offset);
+        }
+        if ( this.measureOrdinate >= 0 ) {
+            vertex[this.measureOrdinate] = Double.isNaN(_measure) ? measureAt(_position) : round(_measure);
+        }
+        return vertex;
+    }
+
+    private void offset(double[] _vertex,
+                        double[] _normal,
+                        double   _offset)
+    {
+        if ( _offset == 0.0 || _normal == null ) {
+            return;
+        }
+        _vertex[0] = round(_vertex[0] + _offset * _normal[0]);
+        _vertex[1] = round(_vertex[1] + _offset * _normal[1]);
+    }
+
+    /**
+     * @return double[] : Unit normal to the right of the segment starting at _vertex, null if the segment has no length
+     */
+    private double[] normal(int _vertex) {
+        int    o = _vertex * this.dims;
+        double dx = this.ordinates[o + this.dims]     - this.ordinates[o],
+               dy = this.ordinates[o + this.dims + 1] - this.ordinates[o + 1],
+           length = Math.sqrt(dx * dx + dy * dy);
+        return length == 0.0 ? null : new double[] { dy / length, -dx / length };
+    }
+
+    /**
+     * @return double[] : Unit vector bisecting the angle at _vertex, on the right of the line
+     */
+    private double[] bisector(int _vertex) {
+        double[] before = normal(_vertex - 1),
+                  after = normal(_vertex);
+        if ( before == null || after == null ) {
+            return before == null ? after : before;
+        }
+        double x = before[0] + after[0],
+               y = before[1] + after[1],
+          length = Math.sqrt(x * x + y * y);
+        // Line doubles back on itself
+        return length < 1e-12 ? before : new double[] { x / length, y / length };
+    }
+
+    private double segmentLength(int _vertex) {
+        int o = _vertex * this.dims;
+        double dx = this.ordinates[o + this.dims]     - this.ordinates[o],
+               dy = this.ordinates[o + this.dims + 1] - this.ordinates[o + 1];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+}
@@ -17,6 +17,7 @@ import org.locationtech.jts.geom.LinearRing;
 import org.locationtech.jts.geom.MultiPolygon;
 import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.io.oracle.OraDescriptorCache;
 import org.locationtech.jts.io.oracle.OraReader;
 
 import java.awt.geom.Point2D;
@@ -32,6 +33,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.StringTokenizer;
 
+import oracle.jdbc.OracleConnection;
+
 import oracle.spatial.geometry.J3D_Geometry;
 import oracle.spatial.geometry.JGeometry;
 
@@ -58,6 +61,7 @@ public class SDO
     public static final String TAG_SDO_POINT_TYPE     = "SDO_POINT_TYPE";
     public static final String TAG_SDO_ELEM_ARRAY     = "SDO_ELEM_INFO_ARRAY";
     public static final String TAG_SDO_ORD_ARRAY      = "SDO_ORDINATE_ARRAY";
+    public static final String TAG_SDO_GEOMETRY_ARRAY = "SDO_GEOMETRY_ARRAY";
     public static final String TAG_VERTEX_TYPE        = "VERTEX_TYPE";    
     public static final String TAG_SDO_DIM_ARRAY      = "SDO_DIM_ARRAY";
     public static final String TAG_SDO_ELEMENT        = "SDO_DIM_ELEMENT";
@@ -80,6 +84,7 @@ public class SDO
     public static final String TAG_MDSYS_SDO_POINT_TYPE     = MDSYS_SCHEMA + "." + TAG_SDO_POINT_TYPE;
     public static final String TAG_MDSYS_SDO_ELEM_ARRAY     = MDSYS_SCHEMA + "." + TAG_SDO_ELEM_ARRAY;
     public static final String TAG_MDSYS_SDO_ORD_ARRAY      = MDSYS_SCHEMA + "." + TAG_SDO_ORD_ARRAY;
+    public static final String TAG_MDSYS_SDO_GEOMETRY_ARRAY = MDSYS_SCHEMA + "." + TAG_SDO_GEOMETRY_ARRAY;
     public static final String TAG_MDSYS_VERTEX_TYPE        = MDSYS_SCHEMA + "." + TAG_VERTEX_TYPE;
     public static final String TAG_MDSYS_SDO_DIMARRAY       = MDSYS_SCHEMA + "." + TAG_SDO_DIM_ARRAY;
     public static final String TAG_MDSYS_SDO_ELEMENT        = MDSYS_SCHEMA + "." + TAG_SDO_ELEMENT;
@@ -751,7 +756,9 @@ public class SDO
         if( _dataType.startsWith("*.")){
             _dataType = "DRA."+_dataType.substring(2);
         }
-        StructDescriptor descriptor = StructDescriptor.createDescriptor( _dataType, _conn );
+        StructDescriptor descriptor = ( _conn instanceof OracleConnection )
+                                      ? OraDescriptorCache.getStructDescriptor( _dataType, (OracleConnection)_conn )
+                                      : StructDescriptor.createDescriptor( _dataType, _conn );
         return new STRUCT( descriptor, _conn, _attributes );
     }
 
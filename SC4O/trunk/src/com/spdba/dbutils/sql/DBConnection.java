@@ -26,7 +26,7 @@ public class DBConnection {
         super();
     }
     
-    public static void setConnection(OracleConnection _conn) {
+    public static synchronized void setConnection(OracleConnection _conn) {
         if (_conn != null) {
             g_connection = _conn;
         }
@@ -40,7 +40,7 @@ public class DBConnection {
      * @license          : Creative Commons Attribution-Share Alike 2.5 Australia License.
      *                     http://creativecommons.org/licenses/by-sa/2.5/au/
      */
-    public static OracleConnection getConnection() 
+    public static synchronized OracleConnection getConnection() 
     throws SQLException {
         if (g_connection == null || g_connection.isClosed()) {
             OracleDataSource ods;
@@ -104,7 +104,7 @@ public class DBConnection {
         //            "\n? = " + _srid +
         //            "\n? = " + _srid );
         
-        ps.setFetchSize(100); // default is 10
+        ps.setFetchSize(1); // Only the first row is read
         ps.setFetchDirection(ResultSet.FETCH_FORWARD);
         ResultSet rSet = ps.executeQuery();
         String sep = Strings.isEmpty(_separator) ? "," : _separator;
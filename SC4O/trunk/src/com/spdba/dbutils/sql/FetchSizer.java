@@ -0,0 +1,334 @@
+package com.spdba.dbutils.sql;
+
+import com.spdba.dbutils.spatial.SDO;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.sql.RowSetMetaData;
+
+import oracle.jdbc.OracleTypes;
+
+import oracle.sql.ARRAY;
+import oracle.sql.Datum;
+import oracle.sql.STRUCT;
+
+/**
+ * Chooses the JDBC fetch size for a ResultSet so that one fetch holds about
+ * memoryBudget bytes, rather than a fixed number of rows.
+ * <p>
+ * The initial fetch size comes from a row width estimated from the column metadata.
+ * As rows are read their actual width (attributes as estimated, plus the measured
+ * size of the SDO_GEOMETRY) is accumulated, and after each fetch's worth of rows the
+ * fetch size is recalculated from the average; if it has changed by more than a quarter
+ * the ResultSet's fetch size is reset, which the driver applies to its next round trip.
+ * Once SETTLE_CHECKS checks in a row leave the fetch size unchanged it is settled:
+ * rows are then only counted, and their geometries are no longer measured.
+ * <p>
+ * A fixed fetch size can be set instead, in which case no rows are measured or adjustment made.
+ * <p>
+ * The memory budget of the FetchSizers used by the exporters and set based functions
+ * is set for the session by SC4O.ST_SetFetchMemoryBudget (see setDefaultMemoryBudget).
+ */
+public class FetchSizer {
+
+    public static final long DEFAULT_MEMORY_BUDGET = 4L * 1024L * 1024L;
+    public static final int         MIN_FETCH_SIZE = 10;
+    public static final int         MAX_FETCH_SIZE = 2000;
+
+    /** Estimated bytes of an SDO_GEOMETRY before any have been measured */
+    public static final int DEFAULT_GEOMETRY_BYTES = 2048;
+    /** Estimated bytes of a LOB or other unbounded column */
+    public static final int      DEFAULT_LOB_BYTES = 4000;
+    /** Per column overhead */
+    private static final int       COLUMN_OVERHEAD = 8;
+    /** Fixed part of a measured SDO_GEOMETRY (gtype, srid, point) */
+    private static final int      GEOMETRY_OVERHEAD = 64;
+    /** Number of checks in a row that must leave the fetch size unchanged for it to be settled */
+    public static final int          SETTLE_CHECKS = 2;
+
+    private static long defaultMemoryBudget = DEFAULT_MEMORY_BUDGET;
+
+    private long         memoryBudget;
+    private int        fixedFetchSize = 0;
+    private long       attributeBytes = 0;
+    private int       geometryColumns = 0;
+    private int      initialFetchSize = 0;
+    private int             fetchSize = 0;
+    private int     smallestFetchSize = 0;
+    private int      largestFetchSize = 0;
+    private int           adjustments = 0;
+    private long                 rows = 0;
+    private long          sampledRows = 0;
+    private long                bytes = 0;
+    private int        rowsSinceCheck = 0;
+    private int          stableChecks = 0;
+
+    public FetchSizer() {
+        this(defaultMemoryBudget);
+    }
+
+    /**
+     * @param _memoryBudget : long : Bytes a single fetch should hold (values < 1 set the default budget)
+     */
+    public FetchSizer(long _memoryBudget) {
+        this.setMemoryBudget(_memoryBudget);
+    }
+
+    /**
+     * Sets the memory budget used by FetchSizers created without one, for the session.
+     * @param _memoryBudget : long : Bytes a single fetch should hold (values < 1 reset DEFAULT_MEMORY_BUDGET)
+     */
+    public static void setDefaultMemoryBudget(long _memoryBudget) {
+        defaultMemoryBudget = _memoryBudget < 1 ? DEFAULT_MEMORY_BUDGET : _memoryBudget;
+    }
+
+    public static long getDefaultMemoryBudget() {
+        return defaultMemoryBudget;
+    }
+
+    public void setMemoryBudget(long _memoryBudget) {
+        this.memoryBudget = _memoryBudget < 1 ? defaultMemoryBudget : _memoryBudget;
+    }
+
+    public long getMemoryBudget() {
+        return this.memoryBudget;
+    }
+
+    /**
+     * @param _fetchSize : int : Fetch size to use without adjustment, or 0 to size from the memory budget
+     */
+    public void setFixedFetchSize(int _fetchSize) {
+        this.fixedFetchSize = Math.max(0,_fetchSize);
+    }
+
+    public int getFixedFetchSize() {
+        return this.fixedFetchSize;
+    }
+
+    /**
+     * Estimates the row width from the ResultSet's metadata and sets its initial fetch size.
+     * @param _resultSet : ResultSet : ResultSet about to be read forward
+     * @return int : Fetch size set
+     */
+    public int start(ResultSet _resultSet)
+    throws SQLException
+    {
+        ResultSetMetaData meta = _resultSet.getMetaData();
+        this.attributeBytes  = 0;
+        this.geometryColumns = 0;
+        for (int col = 1; col <= meta.getColumnCount(); col++) {
+            addColumn(meta.getColumnType(col),meta.getColumnTypeName(col),meta.getColumnDisplaySize(col));
+        }
+        return this.setInitialFetchSize(_resultSet);
+    }
+
+    /**
+     * Estimates the row width from export metadata (see SQLConversionTools.getExportMetadata)
+     * and sets the ResultSet's initial fetch size.
+     * @param _resultSet  : ResultSet : ResultSet about to be read forward
+     * @param _exportMeta : Map : Single column metadata for each column, keyed by column number
+     * @return int : Fetch size set
+     */
+    public int start(ResultSet                   _resultSet,
+                     Map<Integer,RowSetMetaData> _exportMeta)
+    throws SQLException
+    {
+        this.attributeBytes  = 0;
+        this.geometryColumns = 0;
+        Iterator<RowSetMetaData> iter = _exportMeta.values().iterator();
+        while (iter.hasNext()) {
+            RowSetMetaData rsMD = iter.next();
+            addColumn(rsMD.getColumnType(1),rsMD.getColumnTypeName(1),rsMD.getColumnDisplaySize(1));
+        }
+        return this.setInitialFetchSize(_resultSet);
+    }
+
+    private void addColumn(int    _columnType,
+                           String _columnTypeName,
+                           int    _displaySize)
+    {
+        if ( SDO.TAG_MDSYS_SDO_GEOMETRY.equalsIgnoreCase(_columnTypeName) ) {
+            this.geometryColumns++;
+            return;
+        }
+        switch (_columnType) {
+            case OracleTypes.BLOB   :
+            case OracleTypes.CLOB   :
+            case OracleTypes.NCLOB  :
+            case OracleTypes.BFILE  :
+            case OracleTypes.STRUCT :
+            case OracleTypes.ARRAY  :
+            case OracleTypes.OPAQUE : this.attributeBytes += DEFAULT_LOB_BYTES; break;
+            default                 : this.attributeBytes += (_displaySize <= 0 ? DEFAULT_LOB_BYTES : Math.min(_displaySize,DEFAULT_LOB_BYTES));
+        }
+        this.attributeBytes += COLUMN_OVERHEAD;
+    }
+
+    private int setInitialFetchSize(ResultSet _resultSet)
+    throws SQLException
+    {
+        this.rows             = 0;
+        this.sampledRows      = 0;
+        this.bytes            = 0;
+        this.rowsSinceCheck   = 0;
+        this.stableChecks     = 0;
+        this.adjustments      = 0;
+        this.initialFetchSize = this.fixedFetchSize > 0
+                                ? this.fixedFetchSize
+                                : sizeFor(this.attributeBytes + this.geometryColumns * (long)DEFAULT_GEOMETRY_BYTES);
+        this.fetchSize         = this.initialFetchSize;
+        this.smallestFetchSize = this.initialFetchSize;
+        this.largestFetchSize  = this.initialFetchSize;
+        _resultSet.setFetchDirection(ResultSet.FETCH_FORWARD);
+        _resultSet.setFetchSize(this.initialFetchSize);
+        return this.initialFetchSize;
+    }
+
+    private int sizeFor(long _rowBytes) {
+        long size = this.memoryBudget / Math.max(_rowBytes,1L);
+        return (int)Math.max(MIN_FETCH_SIZE,Math.min(MAX_FETCH_SIZE,size));
+    }
+
+    /**
+     * @return boolean : true once the fetch size is fixed or settled, so rows need no longer be measured
+     */
+    public boolean isSettled() {
+        return this.fixedFetchSize > 0 || this.stableChecks >= SETTLE_CHECKS;
+    }
+
+    /**
+     * Records a row read from the ResultSet, measuring its geometry until the fetch size is settled.
+     * @param _resultSet : ResultSet : ResultSet the row was read from
+     * @param _geometry  : STRUCT : The row's SDO_GEOMETRY (null if none, or not read)
+     */
+    public void rowFetched(ResultSet _resultSet,
+                           STRUCT    _geometry)
+    {
+        if ( this.isSettled() ) {
+            this.rows++;
+            return;
+        }
+        long rowBytes = this.attributeBytes;
+        if ( _geometry != null ) {
+            rowBytes += geometryBytes(_geometry);
+        } else if ( this.geometryColumns > 0 ) {
+            rowBytes += GEOMETRY_OVERHEAD;
+        }
+        this.rowFetched(_resultSet,rowBytes);
+    }
+
+    /**
+     * Records a row read from the ResultSet, and adjusts the fetch size
+     * once a fetch's worth of rows has been read. Once the fetch size is
+     * settled _rowBytes is ignored.
+     * @param _resultSet : ResultSet : ResultSet the row was read from
+     * @param _rowBytes  : long : Measured or estimated bytes in the row
+     */
+    public void rowFetched(ResultSet _resultSet,
+                           long      _rowBytes)
+    {
+        this.rows++;
+        if ( this.isSettled() ) {
+            return;
+        }
+        this.sampledRows++;
+        this.bytes += _rowBytes;
+        if ( ++this.rowsSinceCheck < this.fetchSize ) {
+            return;
+        }
+        this.rowsSinceCheck = 0;
+        int newFetchSize = sizeFor(this.getAverageRowBytes());
+        if ( Math.abs(newFetchSize - this.fetchSize) * 4 <= this.fetchSize ) {
+            this.stableChecks++;
+            return;
+        }
+        try {
+            _resultSet.setFetchSize(newFetchSize);
+            this.fetchSize         = newFetchSize;
+            this.smallestFetchSize = Math.min(this.smallestFetchSize,newFetchSize);
+            this.largestFetchSize  = Math.max(this.largestFetchSize,newFetchSize);
+            this.adjustments++;
+            this.stableChecks      = 0;
+        } catch (SQLException sqle) {
+            // Keep current fetch size
+            this.stableChecks++;
+        }
+    }
+
+    /**
+     * Approximate size of an SDO_GEOMETRY from the lengths of its SDO_ELEM_INFO and SDO_ORDINATES arrays.
+     * @param _geometry : STRUCT : SDO_GEOMETRY
+     * @return long : Approximate bytes
+     */
+    public static long geometryBytes(STRUCT _geometry)
+    {
+        if ( _geometry == null ) {
+            return 0;
+        }
+        long size = GEOMETRY_OVERHEAD;
+        try {
+            Datum[] data = _geometry.getOracleAttributes();
+            if ( data.length < 5 ) {
+                // eg ST_Geometry
+                return DEFAULT_GEOMETRY_BYTES;
+            }
+            if ( data[3] != null ) {
+                size += ((ARRAY)data[3]).length() * 4L;
+            }
+            if ( data[4] != null ) {
+                size += ((ARRAY)data[4]).length() * 8L;
+            }
+        } catch (Exception e) {
+            return DEFAULT_GEOMETRY_BYTES;
+        }
+        return size;
+    }
+
+    public int getFetchSize() {
+        return this.fetchSize;
+    }
+
+    public int getInitialFetchSize() {
+        return this.initialFetchSize;
+    }
+
+    public int getAdjustments() {
+        return this.adjustments;
+    }
+
+    public long getRowCount() {
+        return this.rows;
+    }
+
+    /**
+     * @return long : Number of rows measured before the fetch size settled
+     */
+    public long getSampledRowCount() {
+        return this.sampledRows;
+    }
+
+    /**
+     * @return long : Average bytes of the rows measured
+     */
+    public long getAverageRowBytes() {
+        return this.sampledRows == 0 ? 0 : this.bytes / this.sampledRows;
+    }
+
+    /**
+     * @return String : Fetch sizes chosen and the row widths they were chosen from, for reporting
+     */
+    public String toString() {
+        return "fetch size " + (this.fixedFetchSize > 0 ? "fixed at " + this.fixedFetchSize
+                                                        : "initial " + this.initialFetchSize +
+                                                          ", final " + this.fetchSize +
+                                                          " (" + this.smallestFetchSize + "-" + this.largestFetchSize + ", " +
+                                                          this.adjustments + " adjustments, budget " + this.memoryBudget + " bytes)") +
+               ", " + this.rows + " rows" +
+               (this.sampledRows == 0 ? "" : ", " + this.sampledRows + " measured averaging " + this.getAverageRowBytes() + " bytes");
+    }
+}
@@ -85,7 +85,12 @@ public class Tools {
         return "(" + dFormat.format(_X) + "," + dFormat.format(_Y) + ")";
     }
 
-    protected static double precisionModelScale = Math.pow(10,3);
+    /**
+     * Default scale, read only by functions that are not given a precision.
+     * Functions that are given one pass it on with getPrecisionScale(int), so
+     * concurrent calls (and any threads they start) never depend on this value.
+     */
+    protected static volatile double precisionModelScale = Math.pow(10,3);
     
     /**
      * setPrecisionScale
@@ -98,9 +103,7 @@ public class Tools {
      */
     public static void setPrecisionScale(int _numDecPlaces)
     {
-        precisionModelScale = _numDecPlaces < 0 
-                              ? (double)(1.0/Math.pow(10, Math.abs(_numDecPlaces))) 
-                              : (double)Math.pow(10, _numDecPlaces);
+        precisionModelScale = getPrecisionScale(_numDecPlaces);
     }
 
     /**
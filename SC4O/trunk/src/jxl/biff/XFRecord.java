@@ -1325,6 +1325,17 @@ public class XFRecord extends WritableRecordData implements CellFormat
     return excelFormat;
   }
 
+  /**
+   * Gets the display format this format was created with.  Unlike getFormat,
+   * this is available for writable formats before they are added to a workbook
+   *
+   * @return the display format, or null if this format was read in
+   */
+  public DisplayFormat getDisplayFormat()
+  {
+    return format;
+  }
+
   /**
    * Gets the font used by this format
    *
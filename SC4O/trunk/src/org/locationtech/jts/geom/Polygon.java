@@ -421,14 +421,26 @@ public class Polygon
     if (ring.isEmpty()) {
       return;
     }
-    Coordinate[] uniqueCoordinates = new Coordinate[ring.getCoordinates().length - 1];
-    System.arraycopy(ring.getCoordinates(), 0, uniqueCoordinates, 0, uniqueCoordinates.length);
-    Coordinate minCoordinate = CoordinateArrays.minCoordinate(ring.getCoordinates());
-    CoordinateArrays.scroll(uniqueCoordinates, minCoordinate);
-    System.arraycopy(uniqueCoordinates, 0, ring.getCoordinates(), 0, uniqueCoordinates.length);
-    ring.getCoordinates()[uniqueCoordinates.length] = uniqueCoordinates[0];
-    if (Orientation.isCCW(ring.getCoordinates()) == clockwise) {
-      CoordinateArrays.reverse(ring.getCoordinates());
+    // The ring is normalized through its sequence rather than getCoordinates(),
+    // since for sequences such as PackedCoordinateSequence 
+    // the coordinate array is only a copy of the ordinates.
+    CoordinateSequence seq = ring.getCoordinateSequence();
+    int nUnique = seq.size() - 1;
+    int minIndex = 0;
+    for (int i = 1; i < nUnique; i++) {
+      if (seq.getCoordinate(i).compareTo(seq.getCoordinate(minIndex)) < 0) {
+        minIndex = i;
+      }
+    }
+    if (minIndex > 0) {
+      CoordinateSequence unique = seq.copy();
+      for (int i = 0; i < nUnique; i++) {
+        CoordinateSequences.copyCoord(unique, (minIndex + i) % nUnique, seq, i);
+      }
+      CoordinateSequences.copyCoord(seq, 0, seq, nUnique);
+    }
+    if (Orientation.isCCW(seq.toCoordinateArray()) == clockwise) {
+      CoordinateSequences.reverse(seq);
     }
   }
 
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2016 Vivid Solutions.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v. 1.0 which accompanies this distribution.
+ * The Eclipse Public License is available at http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ */
+
+package org.locationtech.jts.io.oracle;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import oracle.jdbc.OracleConnection;
+import oracle.sql.ArrayDescriptor;
+import oracle.sql.StructDescriptor;
+
+/**
+ * Caches the Oracle type descriptors needed to construct
+ * <code>SDO_GEOMETRY</code> STRUCTs and their component ARRAYs.
+ * <p>
+ * Creating an {@link ArrayDescriptor} or {@link StructDescriptor} requires
+ * a type lookup against the database. Since every geometry written by {@link OraWriter}
+ * needs the same three or four descriptors, these are cached per connection,
+ * keyed by connection identity and type name.
+ * <p>
+ * Entries are held against the connection weakly, so that the cache does not keep
+ * connections alive. A cached entry is discarded when its connection is found to be closed,
+ * or when {@link #invalidate(OracleConnection)} is called.
+ * <p>
+ * The factory used to create descriptors may be replaced (eg by a stub for disconnected testing)
+ * using {@link #setDescriptorFactory(DescriptorFactory)}.
+ */
+public class OraDescriptorCache
+{
+  /**
+   * Creates the descriptors held by the cache.
+   */
+  public interface DescriptorFactory
+  {
+    ArrayDescriptor createArrayDescriptor(String dataType, OracleConnection connection)
+        throws SQLException;
+
+    StructDescriptor createStructDescriptor(String dataType, OracleConnection connection)
+        throws SQLException;
+  }
+
+  /**
+   * The default factory, which creates descriptors using the Oracle JDBC driver.
+   */
+  public static final DescriptorFactory ORACLE_FACTORY = new DescriptorFactory()
+  {
+    public ArrayDescriptor createArrayDescriptor(String dataType, OracleConnection connection)
+        throws SQLException
+    {
+      return ArrayDescriptor.createDescriptor(dataType, connection);
+    }
+
+    public StructDescriptor createStructDescriptor(String dataType, OracleConnection connection)
+        throws SQLException
+    {
+      return StructDescriptor.createDescriptor(dataType, connection);
+    }
+  };
+
+  /**
+   * Map of connection to (Map of type name to descriptor).
+   * Connections do not override equals, so the map is keyed by connection identity.
+   */
+  private static final Map connectionCache = new WeakHashMap();
+
+  /**
+   * Returned by lookup when no descriptor is cached.
+   * (A stub factory may legitimately create null descriptors.)
+   */
+  private static final Object NOT_CACHED = new Object();
+
+  private static DescriptorFactory factory = ORACLE_FACTORY;
+  private static boolean isEnabled = true;
+  private static long hits = 0;
+  private static long misses = 0;
+
+  /**
+   * Sets the factory used to create descriptors.
+   * Any cached descriptors are discarded.
+   *
+   * @param descriptorFactory the factory to use, or null to use {@link #ORACLE_FACTORY}
+   */
+  public static synchronized void setDescriptorFactory(DescriptorFactory descriptorFactory)
+  {
+    factory = descriptorFactory == null ? ORACLE_FACTORY : descriptorFactory;
+    clear();
+  }
+
+  /**
+   * Sets whether descriptors are cached.
+   * If caching is disabled a new descriptor is created on every request.
+   * The default setting is <code>true</code>.
+   *
+   * @param enabled whether to cache descriptors
+   */
+  public static synchronized void setEnabled(boolean enabled)
+  {
+    isEnabled = enabled;
+    if (!enabled)
+      clear();
+  }
+
+  /**
+   * Gets the descriptor for an Oracle collection type (eg MDSYS.SDO_ORDINATE_ARRAY).
+   *
+   * @param dataType the fully qualified type name
+   * @param connection the connection the descriptor is valid for
+   * @return the array descriptor
+   * @throws SQLException if the descriptor cannot be created
+   */
+  public static ArrayDescriptor getArrayDescriptor(String dataType, OracleConnection connection)
+      throws SQLException
+  {
+    Object cached = lookup(dataType, connection);
+    if (cached != NOT_CACHED)
+      return (ArrayDescriptor) cached;
+    ArrayDescriptor descriptor = currentFactory().createArrayDescriptor(dataType, connection);
+    store(dataType, connection, descriptor);
+    return descriptor;
+  }
+
+  /**
+   * Gets the descriptor for an Oracle object type (eg MDSYS.SDO_GEOMETRY).
+   *
+   * @param dataType the fully qualified type name
+   * @param connection the connection the descriptor is valid for
+   * @return the struct descriptor
+   * @throws SQLException if the descriptor cannot be created
+   */
+  public static StructDescriptor getStructDescriptor(String dataType, OracleConnection connection)
+      throws SQLException
+  {
+    Object cached = lookup(dataType, connection);
+    if (cached != NOT_CACHED)
+      return (StructDescriptor) cached;
+    StructDescriptor descriptor = currentFactory().createStructDescriptor(dataType, connection);
+    store(dataType, connection, descriptor);
+    return descriptor;
+  }
+
+  /**
+   * Discards all descriptors cached for a connection.
+   *
+   * @param connection the connection to discard descriptors for
+   */
+  public static synchronized void invalidate(OracleConnection connection)
+  {
+    if (connection != null)
+      connectionCache.remove(connection);
+  }
+
+  /**
+   * Discards all cached descriptors and resets the hit/miss counters.
+   */
+  public static synchronized void clear()
+  {
+    connectionCache.clear();
+    hits = 0;
+    misses = 0;
+  }
+
+  public static synchronized long getHits()
+  {
+    return hits;
+  }
+
+  public static synchronized long getMisses()
+  {
+    return misses;
+  }
+
+  private static synchronized DescriptorFactory currentFactory()
+  {
+    return factory;
+  }
+
+  private static Object lookup(String dataType, OracleConnection connection)
+      throws SQLException
+  {
+    // checked outside the lock as it may require a round trip
+    boolean isClosed = connection == null || connection.isClosed();
+    synchronized (OraDescriptorCache.class) {
+      if (!isEnabled || connection == null) {
+        misses++;
+        return NOT_CACHED;
+      }
+      if (isClosed) {
+        connectionCache.remove(connection);
+        misses++;
+        return NOT_CACHED;
+      }
+      Map types = (Map) connectionCache.get(connection);
+      if (types == null || !types.containsKey(dataType)) {
+        misses++;
+        return NOT_CACHED;
+      }
+      hits++;
+      return types.get(dataType);
+    }
+  }
+
+  private static synchronized void store(String dataType, OracleConnection connection, Object descriptor)
+  {
+    if (!isEnabled || connection == null)
+      return;
+    Map types = (Map) connectionCache.get(connection);
+    if (types == null) {
+      types = new HashMap();
+      connectionCache.put(connection, types);
+    }
+    types.put(dataType, descriptor);
+  }
+
+}
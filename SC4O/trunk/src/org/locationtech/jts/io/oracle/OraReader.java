@@ -39,6 +39,7 @@ import org.locationtech.jts.geom.MultiPolygon;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequence;
 
 import oracle.sql.ARRAY;
 import oracle.sql.Datum;
@@ -80,6 +81,17 @@ import oracle.sql.STRUCT;
  * </ul>
  * The Geometry SRID field is populated from the input Geometry.
  * <p>
+ * By default coordinates are read into {@link PackedCoordinateSequence}s 
+ * which wrap the primitive <code>SDO_ORDINATE_ARRAY</code> values directly, 
+ * so that no per-vertex {@link Coordinate} objects are created.
+ * The ordinate array is only copied when an element does not span the whole array,
+ * or when the output dimension differs from the input dimension.
+ * This can be disabled by {@link #setPackedCoordinates(boolean)},
+ * in which case sequences are created by the factory's {@link CoordinateSequenceFactory}.
+ * Only 2D ordinate arrays are read as primitives: 
+ * a 3D or 4D array may hold NULL Z or M ordinates, which must be read as NaN,
+ * so its values are still converted one at a time.
+ * <p>
  * To use this class a suitable Oracle JDBC JAR must be present in the classpath.
  * 
  * <h3>LIMITATIONS</h3>
@@ -101,6 +113,8 @@ public class OraReader
 
 	private int outputDimension = OraGeom.NULL_DIMENSION;
 
+	private boolean isPackedCoordinates = true;
+
 	/**
 	 * Creates a new reader, with a default {@link GeometryFactory}.
 	 *
@@ -147,6 +161,18 @@ public class OraReader
         this.outputDimension = outputDimension;
     }
 
+    /**
+     * Sets whether coordinates are read into {@link PackedCoordinateSequence}s
+     * wrapping the ordinate array, rather than sequences created
+     * by the {@link CoordinateSequenceFactory} of the geometry factory.
+     * The default setting is <code>true</code>.
+     * 
+     * @param isPackedCoordinates whether to read packed coordinate sequences
+     */
+    public void setPackedCoordinates(boolean isPackedCoordinates) {
+        this.isPackedCoordinates = isPackedCoordinates;
+    }
+
 	/**
 	 * Reads a {@link Geometry} representing the MDSYS.GEOMETRY
 	 * provided in the STRUCT. The type of geometry created 
@@ -171,7 +197,10 @@ public class OraReader
 		int SRID = OraUtil.toInteger(data[1], OraGeom.SRID_NULL);
 		double point[] = OraUtil.toDoubleArray((STRUCT) data[2], Double.NaN);
 		int elemInfo[] = OraUtil.toIntArray((ARRAY) data[3], 0);
-		double ordinates[] = OraUtil.toDoubleArray((ARRAY) data[4], Double.NaN);
+		// NULL ordinates (read as NaN) are only meaningful for Z/M ordinates, 
+		// so 2D ordinates can be read as primitives directly
+		boolean isNullFree = (gType / 1000) == 2;
+		double ordinates[] = OraUtil.toDoubleArray((ARRAY) data[4], Double.NaN, isNullFree);
                 if ( point == null && elemInfo==null && ordinates==null ) {
                     throw new IllegalArgumentException("SDO_GEOMETRY with NULL elements detected.");
                 }
@@ -754,6 +783,9 @@ public class OraReader
       if ((ordinates == null) || (ordinates.length == 0)) {
         return csFactory.create(new Coordinate[0]);
       }
+      if (isPackedCoordinates) {
+        return extractPackedCoords(oraGeom, ordinates, start, end);
+      }
       int ordDim = oraGeom.ordDim();
       
       /**
@@ -780,6 +812,48 @@ public class OraReader
       return cs;
     }
 
+    /**
+     * Constructs a {@link PackedCoordinateSequence} over the ordinates for an element.
+     * If the element spans the entire ordinate array and no change of dimension is required
+     * the ordinate array is used directly, otherwise the element's ordinates are copied.
+     *
+     * @param oraGeom the input geometry
+     * @param ordinates the ordinate array
+     * @param start the 1-based starting offset of the element
+     * @param end the 1-based starting offset of the following element
+     * @return a packed coordinate sequence
+     */
+    private CoordinateSequence extractPackedCoords(OraGeom oraGeom, double[] ordinates, int start, int end)
+    {
+      int ordDim = oraGeom.ordDim();
+      int csDim = (outputDimension == OraGeom.NULL_DIMENSION) ? ordDim : outputDimension;
+      int nCoord = (ordDim == 0 ? 0 : (end - start) / ordDim);
+      int nOrds = nCoord * ordDim;
+
+      double[] packed;
+      if (csDim == ordDim) {
+        if (start == 1 && nOrds == ordinates.length) {
+          packed = ordinates;
+        }
+        else {
+          packed = new double[nOrds];
+          System.arraycopy(ordinates, start - 1, packed, 0, nOrds);
+        }
+      }
+      else {
+        packed = new double[nCoord * csDim];
+        int readDim = Math.min(csDim, ordDim);
+        for (int iCoord = 0; iCoord < nCoord; iCoord++) {
+          int ordIndex = start - 1 + iCoord * ordDim;
+          int csIndex = iCoord * csDim;
+          for (int iDim = 0; iDim < csDim; iDim++) {
+            packed[csIndex + iDim] = iDim < readDim ? ordinates[ordIndex + iDim] : Double.NaN;
+          }
+        }
+      }
+      return new PackedCoordinateSequence.Double(packed, csDim);
+    }
+
     private static void checkETYPE(int eType, int val1, String geomType)
     {
     	checkETYPE(eType,val1, -1, -1, geomType);
@@ -103,6 +103,30 @@ public class OraUtil
     return toDoubleArray(array.getOracleArray(), defaultValue);
   }
 
+  /**
+   * Presents array as a double[].
+   * <p>
+   * If the array is known not to contain NULL values 
+   * the primitive values are read directly using {@link ARRAY#getDoubleArray()},
+   * avoiding the creation of a <code>NUMBER</code> for each element.
+   * Otherwise NULLs are replaced by the default value.
+   * 
+   * @param array an Oracle ARRAY of numeric values
+   * @param defaultValue the value to use for NULL values
+   * @param isNullFree true if the array cannot contain NULL values
+   * @return an array of doubles
+   * @throws SQLException if an error was encountered
+   */
+  public static double[] toDoubleArray(ARRAY array, final double defaultValue, boolean isNullFree)
+      throws SQLException
+  {
+    if (array == null)
+      return null;
+    if (isNullFree)
+      return array.getDoubleArray();
+    return toDoubleArray(array, defaultValue);
+  }
+
   /** Presents struct as a double[] */
   public static double[] toDoubleArray(STRUCT struct, final double defaultValue)
       throws SQLException
@@ -136,12 +160,14 @@ public class OraUtil
 
   /**
    * Convience method for ARRAY construction.
+   * <p>
+   * The type descriptor is obtained from the {@link OraDescriptorCache}.
    * </p>
    */
   public static ARRAY toARRAY(double[] doubles, String dataType,
       OracleConnection connection) throws SQLException
   {
-    ArrayDescriptor descriptor = ArrayDescriptor.createDescriptor(dataType,
+    ArrayDescriptor descriptor = OraDescriptorCache.getArrayDescriptor(dataType,
         connection);
     return new ARRAY(descriptor, connection, doubles);
   }
@@ -152,7 +178,7 @@ public class OraUtil
   public static ARRAY toARRAY(int[] ints, String dataType,
       OracleConnection connection) throws SQLException
   {
-    ArrayDescriptor descriptor = ArrayDescriptor.createDescriptor(dataType,
+    ArrayDescriptor descriptor = OraDescriptorCache.getArrayDescriptor(dataType,
         connection);
     return new ARRAY(descriptor, connection, ints);
   }
@@ -165,7 +191,7 @@ public class OraUtil
     if (dataType.startsWith("*.")) {
       dataType = "DRA." + dataType.substring(2);
     }
-    StructDescriptor descriptor = StructDescriptor.createDescriptor(dataType,
+    StructDescriptor descriptor = OraDescriptorCache.getStructDescriptor(dataType,
         connection);
     return new STRUCT(descriptor, connection, attributes);
   }
@@ -88,6 +88,16 @@ public class DBF extends Object {
     public static long results = 0;
     public MDXFile MDXfile = null;
 
+    /*  bulk (append only) write mode  */
+
+    public static final int DEFAULT_BULK_BUFFER_SIZE = 256 * 1024;
+
+    private boolean bulkWrite = false;
+    private byte bulkBuffer[] = null;
+    private int bulkUsed = 0;
+    private int bulkFirstRecord = 0;
+    private int bulkCheckpoint = 0;
+
     /*
         public static final byte  DBASEIII  = 3;
 	public static final byte  DBASEIV  = 4;
@@ -1187,6 +1197,7 @@ public class DBF extends Object {
         if ((recno > count) || (recno < 1)) {
             throw new xBaseJException("Invalid Record Number " + recno);
         }
+        flushBulkWrite();
         current_record = recno;
 
         seek(recno - 1);
@@ -1255,6 +1266,11 @@ public class DBF extends Object {
         byte wb;
         Field tField;
 
+        if (bulkWrite) {
+            write_bulk();
+            return;
+        }
+
         Index NDXes;
         for (i = 1; i <= jNDXes.size(); i++) {
             NDXes = (Index) jNDXes.elementAt(i - 1);
@@ -1300,6 +1316,94 @@ public class DBF extends Object {
 
     }
 
+    /**
+     * starts append only bulk writing.
+     * Records passed to write() are encoded into a buffer, and the buffer is written to the file
+     * in a single block when full. The header record count is only rewritten at each
+     * checkpoint and when bulk writing ends, rather than after every record.
+     * Records in the buffer are not visible in the file until flushBulkWrite or endBulkWrite is called
+     * (gotoRecord and update flush first).
+     * @param bufferSize size of the record buffer in bytes (at least one record is buffered)
+     * @param checkpointInterval rewrite the header after every checkpointInterval records, 0 for only at the end
+     * @exception xBaseJException
+     *                                    database is read only or has indexes
+     */
+    public void startBulkWrite(int bufferSize, int checkpointInterval) throws xBaseJException {
+        if (readonly)
+            throw new xBaseJException("Database is read only");
+        if (jNDXes.size() > 0)
+            throw new xBaseJException("Bulk write is not supported for indexed databases");
+        bulkBuffer = new byte[Math.max(bufferSize / lrecl, 1) * lrecl];
+        bulkUsed = 0;
+        bulkFirstRecord = count;
+        bulkCheckpoint = checkpointInterval;
+        bulkWrite = true;
+    }
+
+    public void startBulkWrite() throws xBaseJException {
+        startBulkWrite(DEFAULT_BULK_BUFFER_SIZE, 0);
+    }
+
+    public boolean isBulkWrite() {
+        return bulkWrite;
+    }
+
+    private void write_bulk() throws xBaseJException, IOException {
+        int i;
+        int pos;
+        Field tField;
+
+        if (bulkUsed + lrecl > bulkBuffer.length)
+            flushBulkWrite();
+
+        delete_ind = NOTDELETED;
+        bulkBuffer[bulkUsed] = delete_ind;
+        pos = bulkUsed + 1;
+        for (i = 0; i < fldcount; i++) {
+            tField = (Field) fld_root.elementAt(i);
+            pos = tField.writeTo(bulkBuffer, pos);
+        }
+        bulkUsed += lrecl;
+
+        count++;
+        current_record = count;
+
+        if (bulkCheckpoint > 0 && (count % bulkCheckpoint) == 0) {
+            flushBulkWrite();
+            update_dbhead();
+        }
+    }
+
+    /**
+     * writes any buffered records, followed by the end of file marker.
+     * The header is not updated.
+     * @exception IOException
+     *                                    Java error caused by called methods
+     */
+    public void flushBulkWrite() throws IOException {
+        if (!bulkWrite || bulkUsed == 0)
+            return;
+        seek(bulkFirstRecord);
+        file.write(bulkBuffer, 0, bulkUsed);
+        file.writeByte(0x1a);
+        bulkFirstRecord += bulkUsed / lrecl;
+        bulkUsed = 0;
+    }
+
+    /**
+     * writes any buffered records, updates the header and returns to record at a time writing
+     * @exception IOException
+     *                                    Java error caused by called methods
+     */
+    public void endBulkWrite() throws IOException {
+        if (!bulkWrite)
+            return;
+        flushBulkWrite();
+        update_dbhead();
+        bulkWrite = false;
+        bulkBuffer = null;
+    }
+
     /**
      * updates the record at the current position
      * @exception xBaseJException
@@ -1318,6 +1422,7 @@ public class DBF extends Object {
         if ((current_record < 1) || (current_record > count)) {
             throw new xBaseJException("Invalid current record pointer");
         }
+        flushBulkWrite();
 
         seek(current_record - 1);
         file.readByte(); // don't change delete indicator let delete/undelete do that.
@@ -1418,6 +1523,8 @@ public class DBF extends Object {
         /** closes the DBF. Presently no method to reopen the database. */
         short i;
 
+        endBulkWrite();
+
 
         if (dbtobj != null)
             dbtobj.close();
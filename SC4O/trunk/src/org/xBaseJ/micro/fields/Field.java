@@ -259,6 +259,18 @@ public abstract class Field extends Object implements Cloneable, Externalizable
         file.write(buffer, 0, Length);
     }
 
+    /**
+     * copies the field contents into a record buffer instead of the file,
+     * used by the DBF bulk write mode
+     * @param record buffer holding the record being built
+     * @param pos position of this field in the record buffer
+     * @return position following this field
+     */
+    public int writeTo(byte record[], int pos) throws IOException, xBaseJException {
+        System.arraycopy(buffer, 0, record, pos, Length);
+        return pos + Length;
+    }
+
     /**
      * set field contents, no database updates until a DBF update or write is issued
      * @param inValue value to set
@@ -240,5 +240,12 @@ public void update()
     super.write();
   }
 
+public int writeTo(byte record[], int pos)
+     throws IOException, xBaseJException
+  {
+    super.buffer = dbtobj.write(value, originalSize, true, super.buffer);
+    return super.writeTo(record, pos);
+  }
+
 
 }
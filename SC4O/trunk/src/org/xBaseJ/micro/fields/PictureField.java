@@ -174,5 +174,12 @@ public void update()
     super.write();
   }
 
+public int writeTo(byte record[], int pos)
+     throws IOException, xBaseJException
+  {
+    super.buffer = dbtobj.write(byteValue, originalSize, true, super.buffer);
+    return super.writeTo(record, pos);
+  }
+
 
 }
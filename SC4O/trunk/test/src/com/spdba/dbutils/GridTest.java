@@ -0,0 +1,219 @@
+package com.spdba.dbutils;
+
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.Polygonal;
+
+/**
+ * Tiles a jagged polygon with holes, a multipolygon with a part on the tile lines and a
+ * winding linestring with Grid, for each option, and checks the tiles against those
+ * found as T_GEOMETRY.ST_Tile finds them: every cell of the grid tested against (and,
+ * when clipping, clipped by) the whole geometry. Then times a fine grid over the polygon
+ * against the brute force.
+ * <p>
+ * No database connection is needed.
+ * Usage: GridTest [vertices] [tileSize]
+ */
+public class GridTest {
+
+    private static boolean passed = true;
+    private static final GeometryFactory gf = new GeometryFactory();
+    private static final String[] OPTIONS = { "MBR", "TOUCH", "CLIP", "HALFCLIP", "HALFTOUCH" };
+
+    public static void main(String[] args)
+    {
+        int vertices = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        double  tile = args.length > 1 ? Double.parseDouble(args[1]) : 25.0;
+        try {
+            Random random = new Random(42L);
+            Geometry polygon = polygon(random,new Coordinate(350000,5050000),10000.0,vertices);
+            Geometry   multi = gf.createMultiPolygon(new Polygon[] {
+                                   (Polygon)polygon(random,new Coordinate(1000,1000),400.0,200),
+                                   (Polygon)gf.toGeometry(new Envelope(2000,2300,1000,1200)) });
+            Geometry    line = line(random,new Coordinate(5000,5000),300);
+
+            for (String option : OPTIONS) {
+                check("Polygon " + option,polygon,500.0,400.0,option);
+                check("MultiPolygon " + option,multi,100.0,100.0,option);
+                check("Line " + option,line,50.0,50.0,option);
+            }
+
+            // Fine grid
+            final int[] count = new int[1];
+            long start = System.nanoTime();
+            Grid.tile(polygon,tile,tile,"TOUCH",new Grid.Visitor() {
+                public void visit(long _col, long _row, Geometry _clip) { count[0]++; }
+            });
+            long gridNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            int bruteCount = bruteForce(polygon,tile,tile,"TOUCH").size();
+            long bruteNanos = System.nanoTime() - start;
+            if ( count[0] != bruteCount ) {
+                System.out.println("Fine grid: " + count[0] + " tiles expected " + bruteCount);
+                passed = false;
+            }
+            start = System.nanoTime();
+            Grid.tile(polygon,tile,tile,"CLIP",new Grid.Visitor() {
+                public void visit(long _col, long _row, Geometry _clip) { }
+            });
+            long clipNanos = System.nanoTime() - start;
+            System.out.println(count[0] + " " + tile + "m tiles over a " + polygon.getNumPoints() + " vertex polygon: " +
+                               (gridNanos / 1000000L) + "ms (" + (clipNanos / 1000000L) + "ms clipped), " +
+                               "testing every cell in " + (bruteNanos / 1000000L) + "ms");
+            System.out.println(passed ? "PASSED" : "FAILED");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void check(String         _name,
+                              final Geometry _geom,
+                              final double   _tileX,
+                              final double   _tileY,
+                              String         _option)
+    throws SQLException
+    {
+        final List<Object[]> tiles = new ArrayList<Object[]>();
+        Grid.tile(_geom,_tileX,_tileY,_option,new Grid.Visitor() {
+            public void visit(long _col, long _row, Geometry _clip) {
+                tiles.add(new Object[] { Long.valueOf(_col), Long.valueOf(_row),
+                                         _clip == null ? cell(_col,_row,_tileX,_tileY) : _clip });
+            }
+        });
+        List<Object[]> expected = bruteForce(_geom,_tileX,_tileY,_option);
+        if ( tiles.size() != expected.size() ) {
+            System.out.println(_name + ": " + tiles.size() + " tiles expected " + expected.size());
+            passed = false;
+            return;
+        }
+        for (int i = 0; i < tiles.size(); i++) {
+            Object[] tile = tiles.get(i),
+                   expect = expected.get(i);
+            Geometry geom = (Geometry)tile[2],
+                   expectGeom = (Geometry)expect[2];
+            if ( ! tile[0].equals(expect[0]) || ! tile[1].equals(expect[1]) ||
+                 Math.abs(geom.getArea() - expectGeom.getArea()) > 1e-6 ||
+                 ! equal(geom.getEnvelopeInternal(),expectGeom.getEnvelopeInternal()) ||
+                 ( geom instanceof Polygonal && expectGeom instanceof Polygonal &&
+                   geom.symDifference(expectGeom).getArea() > 1e-6 ) ) {
+                System.out.println(_name + ": tile " + i + " (" + tile[0] + "," + tile[1] + ") area " + geom.getArea() +
+                                   " expected (" + expect[0] + "," + expect[1] + ") area " + expectGeom.getArea());
+                passed = false;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Tiles as T_GEOMETRY.ST_Tile finds them: every cell tested against the geometry.
+     * @return List : { col, row, geometry } for each tile
+     */
+    private static List<Object[]> bruteForce(Geometry _geom,
+                                             double   _tileX,
+                                             double   _tileY,
+                                             String   _option)
+    {
+        Envelope mbr = _geom.getEnvelopeInternal();
+        double  minX = mbr.getMinX(), maxX = mbr.getMaxX(),
+                minY = mbr.getMinY(), maxY = mbr.getMaxY();
+        if ( maxX - minX < _tileX ) { minX -= _tileX / 2.0; maxX += _tileX / 2.0; }
+        if ( maxY - minY < _tileY ) { minY -= _tileY / 2.0; maxY += _tileY / 2.0; }
+        boolean clip = _geom instanceof Polygonal;
+        List<Object[]> tiles = new ArrayList<Object[]>();
+        for (long col = (long)(minX / _tileX); col <= (long)Math.ceil(maxX / _tileX) - 1; col++) {
+            for (long row = (long)(minY / _tileY); row <= (long)Math.ceil(maxY / _tileY) - 1; row++) {
+                Geometry cell = cell(col,row,_tileX,_tileY);
+                if ( _option.equals("MBR") ) {
+                    tiles.add(new Object[] { Long.valueOf(col), Long.valueOf(row), cell });
+                    continue;
+                }
+                if ( ! _geom.intersects(cell) ) {
+                    continue;
+                }
+                if ( _option.equals("TOUCH") || ! clip ) {
+                    tiles.add(new Object[] { Long.valueOf(col), Long.valueOf(row), cell });
+                    continue;
+                }
+                Geometry clipped = _geom.intersection(cell);
+                if ( _option.equals("CLIP") ) {
+                    if ( ! clipped.isEmpty() ) {
+                        tiles.add(new Object[] { Long.valueOf(col), Long.valueOf(row), clipped });
+                    }
+                } else if ( clipped.getArea() >= _tileX * _tileY / 2.0 ) {
+                    tiles.add(new Object[] { Long.valueOf(col), Long.valueOf(row), _option.equals("HALFCLIP") ? clipped : cell });
+                }
+            }
+        }
+        return tiles;
+    }
+
+    private static boolean equal(Envelope _first, Envelope _second) {
+        return Math.abs(_first.getMinX() - _second.getMinX()) < 1e-6 && Math.abs(_first.getMaxX() - _second.getMaxX()) < 1e-6 &&
+               Math.abs(_first.getMinY() - _second.getMinY()) < 1e-6 && Math.abs(_first.getMaxY() - _second.getMaxY()) < 1e-6;
+    }
+
+    private static Geometry cell(long _col, long _row, double _tileX, double _tileY) {
+        return gf.toGeometry(new Envelope(_col * _tileX,(_col * _tileX) + _tileX,_row * _tileY,(_row * _tileY) + _tileY));
+    }
+
+    /**
+     * A jagged star shaped polygon with a few jagged holes.
+     */
+    private static Geometry polygon(Random     _random,
+                                    Coordinate _centre,
+                                    double     _radius,
+                                    int        _vertices)
+    {
+        LinearRing shell = ring(_random,_centre,_radius,_vertices);
+        LinearRing[] holes = new LinearRing[_vertices >= 1000 ? 4 : 1];
+        for (int h = 0; h < holes.length; h++) {
+            double angle = h * Math.PI * 2.0 / holes.length;
+            holes[h] = ring(_random,
+                            new Coordinate(_centre.x + Math.cos(angle) * _radius * 0.4,_centre.y + Math.sin(angle) * _radius * 0.4),
+                            _radius * 0.15,
+                            Math.max(20,_vertices / 20));
+        }
+        return gf.createPolygon(shell,holes);
+    }
+
+    private static LinearRing ring(Random     _random,
+                                   Coordinate _centre,
+                                   double     _radius,
+                                   int        _vertices)
+    {
+        Coordinate[] coords = new Coordinate[_vertices + 1];
+        for (int v = 0; v < _vertices; v++) {
+            double angle = v * Math.PI * 2.0 / _vertices,
+                  radius = _radius * (0.8 + _random.nextDouble() * 0.2);
+            coords[v] = new Coordinate(Math.rint(_centre.x + Math.cos(angle) * radius),
+                                       Math.rint(_centre.y + Math.sin(angle) * radius));
+        }
+        coords[_vertices] = new Coordinate(coords[0]);
+        return gf.createLinearRing(coords);
+    }
+
+    private static Geometry line(Random     _random,
+                                 Coordinate _start,
+                                 int        _vertices)
+    {
+        Coordinate[] coords = new Coordinate[_vertices];
+        double x = _start.x, y = _start.y, angle = 0.0;
+        for (int v = 0; v < _vertices; v++) {
+            coords[v] = new Coordinate(x,y);
+            angle += _random.nextGaussian() * 0.3;
+            x += Math.cos(angle) * 20.0;
+            y += Math.sin(angle) * 20.0;
+        }
+        return gf.createLineString(coords);
+    }
+}
@@ -0,0 +1,231 @@
+package com.spdba.dbutils;
+
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.spdba.dbutils.sql.DBConnection;
+import com.spdba.dbutils.tools.Tools;
+
+import oracle.jdbc.OracleConnection;
+
+import oracle.sql.ARRAY;
+import oracle.sql.STRUCT;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.io.oracle.OraReader;
+
+/**
+ * Multi-threaded stress test of the collection based JTS functions
+ * (LineMerger, PolygonBuilder, DelaunayTriangles and Voronoi).
+ * <p>
+ * Each function is first run on a single thread to give the expected result.
+ * The functions are then run repeatedly on many threads at once, with each result
+ * compared to the expected result. Any difference means conversion or processing
+ * state is being shared between calls.
+ * <p>
+ * The first pass runs on JTS geometries only. If a JDBC url, user and password are
+ * given, a second pass calls the SDO_GEOMETRY_ARRAY and cursor entry points, so the
+ * _convertArray and _convertResultSet conversions run concurrently; each array is
+ * shared by all threads and each cursor call opens its own cursor. Calls alternate
+ * between precisions 1 and 3, so a precision scale leaking between calls (or not
+ * reaching a thread) shows as a wrong result.
+ * Usage: JTSConcurrencyTester [threads] [iterations] [jdbcUrl user password]
+ */
+public class JTSConcurrencyTester {
+
+    private static final int THREADS    = 8;
+    private static final int ITERATIONS = 50;
+
+    /** Noded grid of unit segments which polygonizes into 20*20 cells */
+    private static final String LINES_SQL =
+        "with n as (select level-1 as i from dual connect by level <= 21), " +
+        "     m as (select level-1 as j from dual connect by level <= 20) " +
+        "select mdsys.sdo_geometry(2002,NULL,NULL,mdsys.sdo_elem_info_array(1,2,1),mdsys.sdo_ordinate_array(n.i,m.j,n.i,m.j+1)) as geom from n, m " +
+        "union all " +
+        "select mdsys.sdo_geometry(2002,NULL,NULL,mdsys.sdo_elem_info_array(1,2,1),mdsys.sdo_ordinate_array(m.j,n.i,m.j+1,n.i)) as geom from n, m";
+
+    /** 500 scattered points with two decimal places */
+    private static final String POINTS_SQL =
+        "select mdsys.sdo_geometry(2001,NULL,mdsys.sdo_point_type(mod(level*7919,100000)/100,mod(level*104729,100000)/100,NULL),NULL,NULL) as geom " +
+        "  from dual connect by level <= 500";
+
+    public static void main(String[] args)
+    {
+        int threads    = args.length > 0 ? Integer.parseInt(args[0]) : THREADS;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : ITERATIONS;
+        try {
+            final GeometryFactory gf = new GeometryFactory(new PrecisionModel(Tools.getPrecisionScale(3)),0);
+            final Collection    grid = gridLines(gf,20);
+            final Collection  points = randomPoints(gf,500,42L);
+
+            List tasks = new ArrayList();
+            tasks.add(new Task("ST_LineMerger") {
+                Geometry run() { return JTS.lineMerger(grid,gf); }
+            });
+            tasks.add(new Task("ST_PolygonBuilder") {
+                Geometry run() throws Exception { return JTS.polygonBuilder(grid,gf); }
+            });
+            tasks.add(new Task("ST_DelaunayTriangles") {
+                Geometry run() { return JTS.createTriangles(points,0.0,gf); }
+            });
+            tasks.add(new Task("ST_Voronoi") {
+                Geometry run() { return JTS.createVoronoi(points,null,0.0,gf); }
+            });
+            if ( args.length > 4 ) {
+                Class.forName("oracle.jdbc.driver.OracleDriver");
+                final OracleConnection conn = (OracleConnection)DriverManager.getConnection(args[2],args[3],args[4]);
+                DBConnection.setConnection(conn);
+                final ARRAY  lines = collect(conn,LINES_SQL);
+                final ARRAY pointSet = collect(conn,POINTS_SQL);
+                for (int p = 1; p <= 3; p += 2) {
+                    final int precision = p;
+                    tasks.add(new Task("ST_LineMerger(ARRAY," + precision + ")") {
+                        Geometry run() throws Exception { return read(JTS.ST_LineMerger(lines,precision)); }
+                    });
+                    tasks.add(new Task("ST_LineMerger(cursor," + precision + ")") {
+                        Geometry run() throws Exception {
+                            Statement statement = conn.createStatement();
+                            try { return read(JTS.ST_LineMerger(statement.executeQuery(LINES_SQL),precision)); }
+                            finally { statement.close(); }
+                        }
+                    });
+                    tasks.add(new Task("ST_PolygonBuilder(ARRAY," + precision + ")") {
+                        Geometry run() throws Exception { return read(JTS.ST_PolygonBuilder(lines,precision)); }
+                    });
+                    tasks.add(new Task("ST_PolygonBuilder(cursor," + precision + ")") {
+                        Geometry run() throws Exception {
+                            Statement statement = conn.createStatement();
+                            try { return read(JTS.ST_PolygonBuilder(statement.executeQuery(LINES_SQL),precision)); }
+                            finally { statement.close(); }
+                        }
+                    });
+                    tasks.add(new Task("ST_DelaunayTriangles(ARRAY," + precision + ")") {
+                        Geometry run() throws Exception { return read(JTS.ST_DelaunayTriangles(pointSet,0.0,precision)); }
+                    });
+                    tasks.add(new Task("ST_DelaunayTriangles(cursor," + precision + ")") {
+                        Geometry run() throws Exception {
+                            Statement statement = conn.createStatement();
+                            try { return read(JTS.ST_DelaunayTriangles(statement.executeQuery(POINTS_SQL),0.0,precision)); }
+                            finally { statement.close(); }
+                        }
+                    });
+                    tasks.add(new Task("ST_Voronoi(ARRAY," + precision + ")") {
+                        Geometry run() throws Exception { return read(JTS.ST_Voronoi(pointSet,null,0.0,precision)); }
+                    });
+                    tasks.add(new Task("ST_Voronoi(cursor," + precision + ")") {
+                        Geometry run() throws Exception {
+                            Statement statement = conn.createStatement();
+                            try { return read(JTS.ST_Voronoi(statement.executeQuery(POINTS_SQL),null,0.0,precision)); }
+                            finally { statement.close(); }
+                        }
+                    });
+                }
+            } else {
+                System.out.println("No jdbcUrl user password given: SDO_GEOMETRY_ARRAY and cursor conversions not tested.");
+            }
+
+            int failures = 0;
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                // Expected results, each from a single threaded run
+                Geometry[] expected = new Geometry[tasks.size()];
+                for (int t = 0; t < tasks.size(); t++) {
+                    expected[t] = normalize(((Task)tasks.get(t)).run());
+                }
+                // All tasks interleaved, so different functions and precisions run at once
+                List futures = new ArrayList();
+                for (int i = 0; i < threads * iterations; i++) {
+                    futures.add(pool.submit((Task)tasks.get(i % tasks.size())));
+                }
+                int[] mismatches = new int[tasks.size()];
+                for (int i = 0; i < futures.size(); i++) {
+                    int t = i % tasks.size();
+                    Geometry actual = normalize((Geometry)((Future)futures.get(i)).get());
+                    if ( expected[t] == null ? actual != null : ! expected[t].equalsExact(actual) ) {
+                        mismatches[t]++;
+                    }
+                }
+                for (int t = 0; t < tasks.size(); t++) {
+                    System.out.println(((Task)tasks.get(t)).name + ": " + mismatches[t] + " non-deterministic results");
+                    failures += mismatches[t];
+                }
+            } finally {
+                pool.shutdown();
+            }
+            System.out.println(failures == 0 ? "PASSED" : "FAILED (" + failures + ")");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private abstract static class Task implements Callable {
+        final String name;
+        Task(String _name) { this.name = _name; }
+        abstract Geometry run() throws Exception;
+        public Object call() throws Exception { return run(); }
+    }
+
+    private static Geometry normalize(Geometry _geom) {
+        if ( _geom == null ) {
+            return null;
+        }
+        Geometry g = (Geometry)_geom.clone();
+        g.normalize();
+        return g;
+    }
+
+    private static Geometry read(STRUCT _geom)
+    throws SQLException
+    {
+        return _geom == null ? null : new OraReader(new GeometryFactory()).read(_geom);
+    }
+
+    private static ARRAY collect(OracleConnection _conn, String _sql)
+    throws SQLException
+    {
+        Statement statement = _conn.createStatement();
+        try {
+            ResultSet rs = statement.executeQuery("select cast(collect(g.geom) as mdsys.sdo_geometry_array) from (" + _sql + ") g");
+            rs.next();
+            return (ARRAY)rs.getObject(1);
+        } finally {
+            statement.close();
+        }
+    }
+
+    /** Noded grid of unit segments which polygonizes into n*n cells */
+    private static Collection gridLines(GeometryFactory _gf, int _n) {
+        Collection lines = new ArrayList();
+        for (int i = 0; i <= _n; i++) {
+            for (int j = 0; j < _n; j++) {
+                lines.add(_gf.createLineString(new Coordinate[] { new Coordinate(i,j),   new Coordinate(i,j+1) }));
+                lines.add(_gf.createLineString(new Coordinate[] { new Coordinate(j,i),   new Coordinate(j+1,i) }));
+            }
+        }
+        return lines;
+    }
+
+    private static Collection randomPoints(GeometryFactory _gf, int _count, long _seed) {
+        Random random = new Random(_seed);
+        Collection points = new ArrayList();
+        for (int i = 0; i < _count; i++) {
+            points.add(_gf.createPoint(new Coordinate(Math.floor(random.nextDouble() * 100000.0) / 100.0,
+                                                      Math.floor(random.nextDouble() * 100000.0) / 100.0)));
+        }
+        return points;
+    }
+}
@@ -0,0 +1,134 @@
+package com.spdba.dbutils;
+
+import java.util.Random;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+
+/**
+ * Relates a large query polygon to a set of points, lines and polygons with the
+ * masks ST_Relate answers with prepared geometry predicates, checking each result
+ * against the one derived from the full intersection matrix (DETERMINE), including
+ * for a geometry equal to the query polygon. Then times a join like
+ * <code>ST_Relate(:poly,'ANYINTERACT',t.geom,3)</code> with and without the
+ * PreparedGeometryCache, and checks its hit and miss counts.
+ * <p>
+ * No database connection is needed.
+ * Usage: PreparedRelateTest [geometries]
+ */
+public class PreparedRelateTest {
+
+    private static final String[] MASKS = {
+        "ANYINTERACT", "INTERSECTS", "DISJOINT", "CONTAINS", "COVERS", "WITHIN", "COVEREDBY", "CONTAINS,COVERS", "DISJOINT,INTERSECTS"
+    };
+
+    public static void main(String[] args)
+    {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        try {
+            GeometryFactory gf = new GeometryFactory(new PrecisionModel(),28355);
+            Random      random = new Random(42L);
+            // A ring of 2000 vertices around a 10km square of geometries
+            Coordinate[] ring = new Coordinate[2001];
+            for (int v = 0; v < 2000; v++) {
+                double angle = 2.0 * Math.PI * v / 2000,
+                      radius = 4000.0 + 500.0 * Math.sin(angle * 12.0);
+                ring[v] = new Coordinate(505000.0 + radius * Math.cos(angle),5205000.0 + radius * Math.sin(angle));
+            }
+            ring[2000] = new Coordinate(ring[0]);
+            Geometry query = gf.createPolygon(ring);
+
+            Geometry[] geometries = new Geometry[count];
+            for (int i = 0; i < count; i++) {
+                double x = 500000.0 + random.nextDouble() * 10000.0,
+                       y = 5200000.0 + random.nextDouble() * 10000.0;
+                switch (i % 3) {
+                    case 0  : geometries[i] = gf.createPoint(new Coordinate(x,y)); break;
+                    case 1  : geometries[i] = gf.createLineString(new Coordinate[] { new Coordinate(x,y), new Coordinate(x + 300.0,y + 200.0) }); break;
+                    default : geometries[i] = gf.createPoint(new Coordinate(x,y)).buffer(50.0 + random.nextDouble() * 200.0,4);
+                }
+            }
+            geometries[0] = (Geometry)query.clone();
+
+            boolean passed = true;
+            PreparedGeometryCache.clear();
+            PreparedGeometryCache.Entry first = PreparedGeometryCache.get(query,3,"first");
+            for (int i = 0; i < Math.min(count,3000) && passed; i++) {
+                PreparedGeometryCache.Entry second = PreparedGeometryCache.get(geometries[i],3,"second");
+                for (int m = 0; m < MASKS.length && passed; m++) {
+                    // Both ways round so each side is prepared
+                    String[] actual   = { Comparitor.relate(first,MASKS[m],second), Comparitor.relate(second,MASKS[m],first) };
+                    String[] expected = { expected(Comparitor.relate(first,"DETERMINE",second),MASKS[m]),
+                                          expected(Comparitor.relate(second,"DETERMINE",first),MASKS[m]) };
+                    for (int j = 0; j < 2; j++) {
+                        if ( ! actual[j].equals(expected[j]) ) {
+                            System.out.println("Geometry " + i + " " + MASKS[m] + (j == 0 ? "" : " reversed") + ": " + actual[j] + " expected " + expected[j]);
+                            passed = false;
+                        }
+                    }
+                }
+            }
+            if ( ! Comparitor.relate(first,"ANYINTERACT",PreparedGeometryCache.get(geometries[0],3,"second")).equals("EQUAL") ) {
+                System.out.println("Equal geometries not EQUAL");
+                passed = false;
+            }
+
+            long[] nanos = new long[2];
+            int[] interacting = new int[2];
+            for (int run = 0; run < 2; run++) {
+                PreparedGeometryCache.setMaximumSize(run == 0 ? 0 : PreparedGeometryCache.DEFAULT_MAXIMUM_SIZE);
+                PreparedGeometryCache.clear();
+                long start = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    String result = Comparitor.relate(PreparedGeometryCache.get(query,3,"first"),
+                                                      "ANYINTERACT",
+                                                      PreparedGeometryCache.get(geometries[i],3,"second"));
+                    if ( ! result.equals("FALSE") ) {
+                        interacting[run]++;
+                    }
+                }
+                nanos[run] = System.nanoTime() - start;
+            }
+            System.out.println(count + " ANYINTERACT comparisons: " + (nanos[0] / 1000000L) + "ms without cache, " +
+                               (nanos[1] / 1000000L) + "ms with cache (" + PreparedGeometryCache.getStatistics() + ")");
+            if ( interacting[0] != interacting[1] ) {
+                System.out.println(interacting[0] + " interacting without cache, " + interacting[1] + " with");
+                passed = false;
+            }
+            // The query polygon misses once then hits, as does its copy; each other geometry misses
+            if ( PreparedGeometryCache.getHits() != count || PreparedGeometryCache.getMisses() != count ||
+                 PreparedGeometryCache.getSize() != PreparedGeometryCache.DEFAULT_MAXIMUM_SIZE ) {
+                System.out.println("Unexpected cache statistics " + PreparedGeometryCache.getStatistics());
+                passed = false;
+            }
+            System.out.println(passed ? "PASSED" : "FAILED");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The result ST_Relate gives for a mask, from the DETERMINE result.
+     */
+    private static String expected(String _determine,
+                                   String _mask)
+    {
+        if ( _determine.equals("EQUAL") ) {
+            return "EQUAL";
+        }
+        java.util.List relations = java.util.Arrays.asList(_determine.split(","));
+        if ( _mask.equals("ANYINTERACT") ) {
+            return relations.contains("DISJOINT") ? "FALSE" : "TRUE";
+        }
+        String result = "";
+        String[] tokens = _mask.split(",");
+        for (int i = 0; i < tokens.length; i++) {
+            if ( relations.contains(tokens[i]) ) {
+                result += (result.length() == 0 ? "" : ",") + tokens[i];
+            }
+        }
+        return result.length() == 0 ? "FALSE" : result;
+    }
+}
@@ -0,0 +1,241 @@
+package com.spdba.dbutils;
+
+import java.io.StringWriter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+/**
+ * Checks the bit interleaved Space.Morton against the original loop over bit pairs
+ * and its inverse, and that it rejects cells outside 32 bits, then builds a quadtree over clustered points, small polygons and
+ * long lines and checks its tiles against a quadtree built as the PL/SQL builds it,
+ * counting every feature for every quad. Checks the tiles' Morton keys are unique
+ * and decode to their lower left cells, that a build on four threads gives the same
+ * tiles, and times the build against the brute force one.
+ * <p>
+ * No database connection is needed.
+ * Usage: QuadTreeTest [features] [maxLevel] [maxCount]
+ */
+public class QuadTreeTest {
+
+    private static boolean passed = true;
+    private static final GeometryFactory gf = new GeometryFactory();
+
+    public static void main(String[] args)
+    {
+        int featureCount = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int     maxLevel = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int     maxCount = args.length > 2 ? Integer.parseInt(args[2]) : 25;
+        try {
+            // Morton keys
+            Random random = new Random(42L);
+            check("Morton(0,0)",Space.Morton(0,0),0);
+            check("Morton(1,0)",Space.Morton(1,0),1);
+            check("Morton(0,1)",Space.Morton(0,1),2);
+            check("Morton(3,5)",Space.Morton(3,5),39);
+            rejected(-1,0);
+            rejected(0,-1);
+            rejected(0x100000000L,0);
+            for (int i = 0; i < 100000; i++) {
+                long col = random.nextInt(Integer.MAX_VALUE),
+                     row = random.nextInt(Integer.MAX_VALUE);
+                long key = Space.Morton(col,row);
+                if ( key != loopMorton(col,row) ) {
+                    check("Morton(" + col + "," + row + ")",key,loopMorton(col,row));
+                }
+                long[] colRow = Space.MortonColRow(key);
+                if ( colRow[0] != col || colRow[1] != row ) {
+                    check("MortonColRow(" + key + ") col",colRow[0],col);
+                    check("MortonColRow(" + key + ") row",colRow[1],row);
+                }
+            }
+
+            // Clustered features over a 100km square
+            Envelope extent = new Envelope(300000,400000,5000000,5100000);
+            List<Geometry> features = features(random,extent,featureCount);
+
+            long start = System.nanoTime();
+            List<QuadTree.Tile> tiles = new QuadTree(features,maxLevel,maxCount,1).build(extent);
+            long builtNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<double[]> expected = new ArrayList<double[]>();
+            bruteForce(features,extent.getMinX(),extent.getMinY(),extent.getMaxX(),extent.getMaxY(),0,maxLevel,maxCount,expected);
+            long bruteNanos = System.nanoTime() - start;
+
+            check("Tiles",tiles.size(),expected.size());
+            for (int i = 0; i < Math.min(tiles.size(),expected.size()); i++) {
+                QuadTree.Tile tile = tiles.get(i);
+                double[]  expect = expected.get(i);
+                if ( tile.getQuadId() != i || tile.getLevel() != (int)expect[0] || tile.getFeatureCount() != (int)expect[1] ||
+                     tile.getXlo() != expect[2] || tile.getYlo() != expect[3] || tile.getXhi() != expect[4] || tile.getYhi() != expect[5] ) {
+                    System.out.println("Tile " + i + ": level " + tile.getLevel() + " count " + tile.getFeatureCount() +
+                                       " expected level " + (int)expect[0] + " count " + (int)expect[1]);
+                    passed = false;
+                    break;
+                }
+            }
+
+            // Morton keys are those of the tiles' lower left cells at the deepest level
+            Set<Long> keys = new HashSet<Long>();
+            double cellWidth  = extent.getWidth()  / (1L << maxLevel),
+                   cellHeight = extent.getHeight() / (1L << maxLevel);
+            for (QuadTree.Tile tile : tiles) {
+                long[] colRow = Space.MortonColRow(tile.getMortonKey());
+                if ( ! keys.add(Long.valueOf(tile.getMortonKey())) ||
+                     Math.abs(extent.getMinX() + colRow[0] * cellWidth  - tile.getXlo()) > 1e-6 ||
+                     Math.abs(extent.getMinY() + colRow[1] * cellHeight - tile.getYlo()) > 1e-6 ) {
+                    System.out.println("Tile " + tile.getQuadId() + ": Morton key " + tile.getMortonKey() + " is not its lower left cell's");
+                    passed = false;
+                    break;
+                }
+            }
+
+            // Four threads give the same tiles
+            start = System.nanoTime();
+            List<QuadTree.Tile> parallel = new QuadTree(features,maxLevel,maxCount,4).build(extent);
+            long parallelNanos = System.nanoTime() - start;
+            StringWriter sequentialCsv = new StringWriter(),
+                           parallelCsv = new StringWriter();
+            QuadTree.write(tiles,sequentialCsv);
+            QuadTree.write(parallel,parallelCsv);
+            if ( ! sequentialCsv.toString().equals(parallelCsv.toString()) ) {
+                System.out.println("Tiles built on four threads differ");
+                passed = false;
+            }
+
+            System.out.println(features.size() + " features, " + tiles.size() + " tiles to level " + maxLevel + ": built in " +
+                               (builtNanos / 1000000L) + "ms (" + (parallelNanos / 1000000L) + "ms on four threads), " +
+                               "counting every feature for every quad in " + (bruteNanos / 1000000L) + "ms");
+            System.out.println(passed ? "PASSED" : "FAILED");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Space.Morton as it was: a loop over the bit pairs.
+     */
+    private static long loopMorton(long _col, long _row)
+    {
+        long key = 0L, row = _row, col = _col;
+        for (long level = 0L; row > 0L || col > 0L; level++) {
+            key += ((col % 2L) + 2L * (row % 2L)) << (int)(2L * level);
+            row /= 2L;
+            col /= 2L;
+        }
+        return key;
+    }
+
+    /**
+     * Points around a few towns, small square polygons and long lines.
+     */
+    private static List<Geometry> features(Random   _random,
+                                           Envelope _extent,
+                                           int      _count)
+    {
+        List<Geometry> features = new ArrayList<Geometry>(_count);
+        Coordinate[] towns = new Coordinate[12];
+        for (int t = 0; t < towns.length; t++) {
+            towns[t] = new Coordinate(_extent.getMinX() + _random.nextDouble() * _extent.getWidth(),
+                                      _extent.getMinY() + _random.nextDouble() * _extent.getHeight());
+        }
+        for (int i = 0; i < _count; i++) {
+            Coordinate town = towns[_random.nextInt(towns.length)];
+            double x = Math.max(_extent.getMinX(),Math.min(_extent.getMaxX(),town.x + _random.nextGaussian() * 5000.0)),
+                   y = Math.max(_extent.getMinY(),Math.min(_extent.getMaxY(),town.y + _random.nextGaussian() * 5000.0));
+            switch (i % 10) {
+                case 0 :
+                case 1 :
+                    double size = 10.0 + _random.nextDouble() * 200.0;
+                    features.add(gf.toGeometry(new Envelope(x,x + size,y,y + size)).buffer(size / 4.0,2));
+                    break;
+                case 2 :
+                    if ( i % 100 == 2 ) {
+                        Coordinate[] line = new Coordinate[50];
+                        double angle = _random.nextDouble() * Math.PI * 2.0;
+                        for (int v = 0; v < line.length; v++) {
+                            line[v] = new Coordinate(x,y);
+                            angle += _random.nextGaussian() * 0.2;
+                            x += Math.cos(angle) * 500.0;
+                            y += Math.sin(angle) * 500.0;
+                        }
+                        features.add(gf.createLineString(line));
+                        break;
+                    }
+                default :
+                    features.add(gf.createPoint(new Coordinate(x,y)));
+            }
+        }
+        return features;
+    }
+
+    /**
+     * Quadtree as TESSELATE.QuadTree builds it: every feature counted for every quad.
+     * Adds { level, count, xlo, ylo, xhi, yhi } for each tile.
+     */
+    private static void bruteForce(List<Geometry> _features,
+                                   double         _xlo,
+                                   double         _ylo,
+                                   double         _xhi,
+                                   double         _yhi,
+                                   int            _level,
+                                   int            _maxLevel,
+                                   int            _maxCount,
+                                   List<double[]> _tiles)
+    {
+        if ( _level != 0 ) {
+            Geometry quad = gf.toGeometry(new Envelope(_xlo,_xhi,_ylo,_yhi));
+            int count = 0;
+            for (Geometry feature : _features) {
+                count += feature.intersects(quad) ? 1 : 0;
+            }
+            if ( count == 0 ) {
+                return;
+            }
+            if ( count <= _maxCount ) {
+                _tiles.add(new double[] { _level, count, _xlo, _ylo, _xhi, _yhi });
+                return;
+            }
+        }
+        if ( _level + 1 > _maxLevel ) {
+            return;
+        }
+        double xmid = _xlo + (_xhi - _xlo) / 2.0,
+               ymid = _ylo + (_yhi - _ylo) / 2.0;
+        bruteForce(_features,_xlo,_ylo,xmid,ymid,_level + 1,_maxLevel,_maxCount,_tiles);
+        bruteForce(_features,_xlo,ymid,xmid,_yhi,_level + 1,_maxLevel,_maxCount,_tiles);
+        bruteForce(_features,xmid,_ylo,_xhi,ymid,_level + 1,_maxLevel,_maxCount,_tiles);
+        bruteForce(_features,xmid,ymid,_xhi,_yhi,_level + 1,_maxLevel,_maxCount,_tiles);
+    }
+
+    private static void check(String _name,
+                              long   _actual,
+                              long   _expected)
+    {
+        if ( _actual != _expected ) {
+            System.out.println(_name + ": " + _actual + " expected " + _expected);
+            passed = false;
+        }
+    }
+
+    private static void rejected(long _col,
+                                 long _row)
+    {
+        try {
+            long key = Space.Morton(_col,_row);
+            System.out.println("Morton(" + _col + "," + _row + "): " + key + " expected an error");
+            passed = false;
+        } catch (IllegalArgumentException iae) {
+            // Expected
+        }
+    }
+}
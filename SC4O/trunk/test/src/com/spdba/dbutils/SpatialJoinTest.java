@@ -0,0 +1,132 @@
+package com.spdba.dbutils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+
+/**
+ * Joins a set of parcels (polygons) to a set of points, lines and polygons with
+ * SpatialJoin for several masks, checking the pairs found are those given by relating
+ * every pair, in the same order, as a row by row ST_Relate would. Then times
+ * an ANYINTERACT join of two larger sets.
+ * <p>
+ * No database connection is needed.
+ * Usage: SpatialJoinTest [first set size] [second set size]
+ */
+public class SpatialJoinTest {
+
+    private static final String[] MASKS = { "ANYINTERACT", "CONTAINS", "WITHIN,COVEREDBY", "DETERMINE", "T********" };
+
+    public static void main(String[] args)
+    {
+        int size1 = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int size2 = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+        try {
+            GeometryFactory gf = new GeometryFactory(new PrecisionModel(),28355);
+            Random      random = new Random(42L);
+            boolean     passed = true;
+
+            List<String>   ids1 = new ArrayList<String>(), ids2 = new ArrayList<String>();
+            List<Geometry> set1 = new ArrayList<Geometry>(), set2 = new ArrayList<Geometry>();
+            create(gf,random,300,true,ids1,set1);
+            create(gf,random,400,false,ids2,set2);
+            set1.set(7,null);
+            set2.set(3,(Geometry)set1.get(5).clone());
+            for (int m = 0; m < MASKS.length; m++) {
+                long start = System.nanoTime();
+                List<String[]> joined = SpatialJoin.join(ids1,set1,ids2,set2,MASKS[m],3);
+                long joinNanos = System.nanoTime() - start;
+                start = System.nanoTime();
+                List<String[]> expected = new ArrayList<String[]>();
+                for (int i = 0; i < set1.size(); i++) {
+                    for (int j = 0; j < set2.size() && set1.get(i) != null; j++) {
+                        String relation = Comparitor.relate(PreparedGeometryCache.get(set1.get(i),3,"first"),
+                                                            MASKS[m],
+                                                            PreparedGeometryCache.get(set2.get(j),3,"second"));
+                        if ( ! relation.equals("FALSE") && ! relation.equals("DISJOINT") ) {
+                            expected.add(new String[] { ids1.get(i), ids2.get(j), relation });
+                        }
+                    }
+                }
+                long pairNanos = System.nanoTime() - start;
+                String differences = "";
+                for (int p = 0; p < Math.max(joined.size(),expected.size()); p++) {
+                    String actualPair   = p < joined.size()   ? toString(joined.get(p))   : "none",
+                           expectedPair = p < expected.size() ? toString(expected.get(p)) : "none";
+                    if ( ! actualPair.equals(expectedPair) ) {
+                        differences = " first difference at pair " + p + ": " + actualPair + " expected " + expectedPair;
+                        break;
+                    }
+                }
+                System.out.println(MASKS[m] + ": " + joined.size() + " pairs joined in " + (joinNanos / 1000000L) + "ms, " +
+                                   expected.size() + " pairs by relating every pair in " + (pairNanos / 1000000L) + "ms" + differences);
+                if ( differences.length() > 0 || expected.size() == 0 ) {
+                    passed = false;
+                }
+            }
+            String[] disjointMasks = { "DISJOINT", "FF*FF****", "F********" };
+            for (int m = 0; m < disjointMasks.length; m++) {
+                try {
+                    SpatialJoin.join(ids1,set1,ids2,set2,disjointMasks[m],3);
+                    System.out.println(disjointMasks[m] + " mask accepted");
+                    passed = false;
+                } catch (java.sql.SQLException e) {
+                    // Expected
+                }
+            }
+
+            ids1.clear(); set1.clear(); ids2.clear(); set2.clear();
+            create(gf,random,size1,true,ids1,set1);
+            create(gf,random,size2,false,ids2,set2);
+            long start = System.nanoTime();
+            List<String[]> joined = SpatialJoin.join(ids1,set1,ids2,set2,"ANYINTERACT",3);
+            System.out.println(size1 + " x " + size2 + " ANYINTERACT join: " + joined.size() + " pairs in " +
+                               ((System.nanoTime() - start) / 1000000L) + "ms");
+            System.out.println(passed ? "PASSED" : "FAILED");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Parcels are squarish polygons; features are points, lines and small polygons,
+     * all spread over the same 10km square.
+     */
+    private static void create(GeometryFactory _gf,
+                               Random          _random,
+                               int             _count,
+                               boolean         _parcels,
+                               List<String>    _ids,
+                               List<Geometry>  _geometries)
+    {
+        double extent = 10000.0,
+                 side = extent / Math.sqrt(_count) * 1.5;
+        for (int i = 0; i < _count; i++) {
+            double x = 500000.0 + _random.nextDouble() * extent,
+                   y = 5200000.0 + _random.nextDouble() * extent;
+            Geometry geom;
+            if ( _parcels ) {
+                geom = _gf.createPolygon(new Coordinate[] {
+                    new Coordinate(x,y), new Coordinate(x + side,y), new Coordinate(x + side,y + side * 0.8),
+                    new Coordinate(x + side * 0.1,y + side), new Coordinate(x,y) });
+            } else if ( i % 3 == 0 ) {
+                geom = _gf.createPoint(new Coordinate(x,y));
+            } else if ( i % 3 == 1 ) {
+                geom = _gf.createLineString(new Coordinate[] { new Coordinate(x,y), new Coordinate(x + side / 2.0,y + side / 3.0) });
+            } else {
+                geom = _gf.createPoint(new Coordinate(x,y)).buffer(side / 6.0,4);
+            }
+            _ids.add((_parcels ? "P" : "F") + (i + 1));
+            _geometries.add(geom);
+        }
+    }
+
+    private static String toString(String[] _pair) {
+        return _pair[0] + "/" + _pair[1] + "/" + _pair[2];
+    }
+}
@@ -0,0 +1,153 @@
+package com.spdba.dbutils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.locationtech.jts.algorithm.RobustLineIntersector;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+
+/**
+ * Builds travelling salesman routes through random stops with TravellingSalesman,
+ * with and without a geo-fence (a hard 3D fence, a soft one that may be crossed, and a
+ * 2D fence), and checks each is the route found by a brute force nearest neighbour search
+ * that tests every remaining stop against every fence segment. Then times a route
+ * through a larger set of stops.
+ * <p>
+ * No database connection is needed.
+ * Usage: TravellingSalesmanTest [stops]
+ */
+public class TravellingSalesmanTest {
+
+    public static void main(String[] args)
+    {
+        int stops = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        try {
+            GeometryFactory gf = new GeometryFactory();
+            Coordinate[] points = stops(1500,new Random(42L));
+            // Two repeated stops
+            points[10] = new Coordinate(points[11]);
+            points[20] = new Coordinate(points[21]);
+            List<LineString> hard = new ArrayList<LineString>(),
+                             soft = new ArrayList<LineString>(),
+                             flat = new ArrayList<LineString>();
+            hard.add(gf.createLineString(new Coordinate[] { new Coordinate(5000,-10,9), new Coordinate(5000,10010,9) }));
+            hard.add(gf.createLineString(new Coordinate[] { new Coordinate(-10,2500,1), new Coordinate(10010,2500,1) }));
+            soft.add(gf.createLineString(new Coordinate[] { new Coordinate(5000,-10,5), new Coordinate(5000,10010,5) }));
+            flat.add(gf.createLineString(new Coordinate[] { new Coordinate(-10,2500), new Coordinate(10010,2500) }));
+            // A box around one corner that must be crossed once to get in and once to get out
+            flat.add(gf.createLineString(new Coordinate[] { new Coordinate(8000,8000), new Coordinate(8000,10010) }));
+            flat.add(gf.createLineString(new Coordinate[] { new Coordinate(8000,8000), new Coordinate(10010,8000) }));
+
+            boolean passed = true;
+            Object[][] cases = {
+                { "No fence",      null, null, new Coordinate(0,0) },
+                { "Hard fence",    hard, Double.valueOf(points[7].z), null },
+                { "Soft fence",    soft, null, new Coordinate(2000,2000) },
+                { "2D fence",      flat, Double.valueOf(points[99].z), null }
+            };
+            for (int c = 0; c < cases.length; c++) {
+                List<LineString> fence = (List<LineString>)cases[c][1];
+                long start = System.nanoTime();
+                Coordinate[] route = TravellingSalesman.route(points,(Double)cases[c][2],(Coordinate)cases[c][3],fence);
+                long nanos = System.nanoTime() - start;
+                Coordinate[] expected = bruteForce(points,(Double)cases[c][2],(Coordinate)cases[c][3],fence);
+                int difference = -1;
+                for (int i = 0; i < Math.max(route.length,expected.length) && difference == -1; i++) {
+                    if ( i >= route.length || i >= expected.length || ! route[i].equals3D(expected[i]) ) {
+                        difference = i;
+                    }
+                }
+                System.out.println(cases[c][0] + ": " + route.length + " vertex route in " + (nanos / 1000000L) + "ms, length " +
+                                   Math.round(gf.createLineString(route).getLength()) +
+                                   (difference == -1 ? "" : "; differs from brute force at vertex " + difference));
+                passed = passed && difference == -1 && route.length == points.length + (cases[c][3] == null ? 0 : 1);
+            }
+
+            points = stops(stops,new Random(7L));
+            long start = System.nanoTime();
+            Coordinate[] route = TravellingSalesman.route(points,null,new Coordinate(0,0),hard);
+            System.out.println(stops + " stops with a fence: " + route.length + " vertex route in " +
+                               ((System.nanoTime() - start) / 1000000L) + "ms");
+            passed = passed && route.length == stops + 1;
+            System.out.println(passed ? "PASSED" : "FAILED");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops spread over a 10km square, with their position in the set as Z (the id)
+     */
+    private static Coordinate[] stops(int _count, Random _random) {
+        Coordinate[] points = new Coordinate[_count];
+        for (int i = 0; i < _count; i++) {
+            points[i] = new Coordinate(Math.round(_random.nextDouble() * 1000000.0) / 100.0,
+                                       Math.round(_random.nextDouble() * 1000000.0) / 100.0,
+                                       i + 1);
+        }
+        return points;
+    }
+
+    private static Coordinate[] bruteForce(Coordinate[]     _points,
+                                           Double           _startId,
+                                           Coordinate       _start,
+                                           List<LineString> _fence)
+    {
+        List<Coordinate[]> segments = new ArrayList<Coordinate[]>();
+        boolean hasZ = false;
+        for (int f = 0; _fence != null && f < _fence.size(); f++) {
+            hasZ = hasZ || ! Double.isNaN(_fence.get(f).getCoordinateN(0).z);
+        }
+        for (int f = 0; _fence != null && f < _fence.size(); f++) {
+            Coordinate[] coords = _fence.get(f).getCoordinates();
+            for (int i = 1; i < coords.length; i++) {
+                if ( ! hasZ || Math.max(coords[i - 1].z,coords[i].z) >= TravellingSalesman.HARD_FENCE_Z ) {
+                    segments.add(new Coordinate[] { coords[i - 1], coords[i] });
+                }
+            }
+        }
+        RobustLineIntersector li = new RobustLineIntersector();
+        boolean[] visited = new boolean[_points.length];
+        List<Coordinate> route = new ArrayList<Coordinate>();
+        Coordinate current = _start;
+        if ( _startId != null ) {
+            int start = 0;
+            while ( _points[start].z != _startId.doubleValue() ) {
+                start++;
+            }
+            visited[start] = true;
+            current = _points[start];
+        }
+        route.add(current);
+        for (int step = route.size() - (_startId != null ? 0 : 1); step < _points.length; step++) {
+            int nearest = -1, nearestFenced = -1;
+            for (int i = 0; i < _points.length; i++) {
+                if ( visited[i] ) {
+                    continue;
+                }
+                if ( nearestFenced == -1 || _points[i].distance(current) < _points[nearestFenced].distance(current) ) {
+                    nearestFenced = i;
+                }
+                if ( nearest != -1 && _points[i].distance(current) >= _points[nearest].distance(current) ) {
+                    continue;
+                }
+                boolean crosses = false;
+                for (int s = 0; s < segments.size() && ! crosses; s++) {
+                    li.computeIntersection(current,_points[i],segments.get(s)[0],segments.get(s)[1]);
+                    crosses = li.hasIntersection();
+                }
+                if ( ! crosses ) {
+                    nearest = i;
+                }
+            }
+            int next = nearest != -1 ? nearest : nearestFenced;
+            visited[next] = true;
+            current = _points[next];
+            route.add(current);
+        }
+        return route.toArray(new Coordinate[route.size()]);
+    }
+}
@@ -0,0 +1,108 @@
+package com.spdba.dbutils.aggr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.operation.union.CascadedPolygonUnion;
+
+/**
+ * Benchmark of PartitionedUnion (given the whole collection, and streamed) and StreamingUnion against a single CascadedPolygonUnion
+ * over a synthetic grid of overlapping square polygons.
+ * <p>
+ * Each configuration is checked against the single union result (by area and
+ * a normalized exact comparison) as well as being timed.
+ * <p>
+ * Runs on JTS geometries only, so no database connection is needed.
+ * Usage: UnionBenchmark [gridSize] [partitionSize] [maxThreads]
+ */
+public class UnionBenchmark {
+
+    public static void main(String[] args)
+    {
+        int gridSize      = args.length > 0 ? Integer.parseInt(args[0]) : 150;
+        int partitionSize = args.length > 1 ? Integer.parseInt(args[1]) : PartitionedUnion.DEFAULT_PARTITION_SIZE;
+        int maxThreads    = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        GeometryFactory gf = new GeometryFactory(new PrecisionModel(1000.0),0);
+        Collection   polys = polygonGrid(gf,gridSize);
+        System.out.println(polys.size() + " polygons, partition size " + partitionSize);
+
+        // Warm up
+        CascadedPolygonUnion.union(polygonGrid(gf,gridSize/4));
+        new PartitionedUnion(gf,true,2,partitionSize).union(polygonGrid(gf,gridSize/4));
+
+        long start = System.nanoTime();
+        Geometry expected = CascadedPolygonUnion.union(polys);
+        long single = System.nanoTime() - start;
+        expected.normalize();
+        System.out.println("CascadedPolygonUnion: " + (single / 1000000L) + " ms, area " + expected.getArea());
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            start = System.nanoTime();
+            Geometry actual = new PartitionedUnion(gf,true,threads,partitionSize).union(polys);
+            long elapsed = System.nanoTime() - start;
+            actual.normalize();
+            boolean same = expected.equalsExact(actual) ||
+                           Math.abs(expected.getArea() - actual.getArea()) < 1.0E-6 * expected.getArea();
+            System.out.println("PartitionedUnion(" + threads + " threads): " + (elapsed / 1000000L) + " ms, area " + actual.getArea() +
+                               ", speedup " + ((double)single / (double)Math.max(elapsed,1)) + "x" +
+                               (same ? "" : " RESULT DIFFERS"));
+        }
+
+        // PartitionedUnion streamed, fed one polygon at a time as Aggregate does from a cursor
+        //
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            start = System.nanoTime();
+            PartitionedUnion pu = new PartitionedUnion(gf,true,threads,partitionSize);
+            Iterator iter = polys.iterator();
+            while ( iter.hasNext() ) {
+                pu.add((Geometry)iter.next());
+            }
+            Geometry actual = pu.getResult();
+            long elapsed = System.nanoTime() - start;
+            actual.normalize();
+            boolean same = expected.equalsExact(actual) ||
+                           Math.abs(expected.getArea() - actual.getArea()) < 1.0E-6 * expected.getArea();
+            System.out.println("PartitionedUnion streamed(" + threads + " threads): " + (elapsed / 1000000L) + " ms, area " + actual.getArea() +
+                               ", speedup " + ((double)single / (double)Math.max(elapsed,1)) + "x" +
+                               (same ? "" : " RESULT DIFFERS"));
+        }
+
+        // StreamingUnion is fed one polygon at a time, as from a cursor
+        //
+        start = System.nanoTime();
+        StreamingUnion su = new StreamingUnion(gf,true,partitionSize);
+        Iterator iter = polys.iterator();
+        while ( iter.hasNext() ) {
+            su.add((Geometry)iter.next());
+        }
+        Geometry actual = su.getResult();
+        long elapsed = System.nanoTime() - start;
+        actual.normalize();
+        boolean same = expected.equalsExact(actual) ||
+                       Math.abs(expected.getArea() - actual.getArea()) < 1.0E-6 * expected.getArea();
+        System.out.println("StreamingUnion(batch " + partitionSize + "): " + (elapsed / 1000000L) + " ms, area " + actual.getArea() +
+                           (same ? "" : " RESULT DIFFERS"));
+    }
+
+    /** n*n squares of side 1.5 on a unit grid, so each overlaps its neighbours */
+    private static Collection polygonGrid(GeometryFactory _gf, int _n) {
+        Collection polys = new ArrayList(_n * _n);
+        for (int i = 0; i < _n; i++) {
+            for (int j = 0; j < _n; j++) {
+                polys.add(_gf.createPolygon(new Coordinate[] {
+                              new Coordinate(i,      j),
+                              new Coordinate(i+1.5,  j),
+                              new Coordinate(i+1.5,  j+1.5),
+                              new Coordinate(i,      j+1.5),
+                              new Coordinate(i,      j) }));
+            }
+        }
+        return polys;
+    }
+}
@@ -0,0 +1,211 @@
+package com.spdba.dbutils.io.exp.geojson;
+
+import com.spdba.dbutils.tools.Strings;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+
+/**
+ * Throughput benchmark (features/second) of GeoJSONWriter against the approach it replaced:
+ * text built with DecimalFormat, string concatenation and a new indentation string per line
+ * into a StringBuffer that is written out every 100 features.
+ * GeoJSONWriter is also timed flushed every 100 features, as WriteGeoJSONFile used
+ * to do, to show the cost of flushing rather than letting its buffer fill.
+ * <p>
+ * Each feature is a 5 vertex polygon with three properties. The GeoJSONWriter output is
+ * then checked for balanced brackets outside strings and the expected number of features.
+ * <p>
+ * No database connection is needed.
+ * Usage: GeoJSONWriterBenchmark [features] [outputDirectory] [decimalPlaces]
+ */
+public class GeoJSONWriterBenchmark {
+
+    private static String newLine = System.getProperty("line.separator");
+
+    public static void main(String[] args)
+    {
+        int      features = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        String     outDir = args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir");
+        int decimalPlaces = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        try {
+            GeometryFactory gf = new GeometryFactory(new PrecisionModel(Math.pow(10,decimalPlaces)));
+            File      previous = new File(outDir,"geojsonbench_previous.geojson");
+            File     streaming = new File(outDir,"geojsonbench_streaming.geojson");
+
+            // Warm up
+            runPrevious(gf,features/10,previous);
+            runStreaming(gf,features/10,streaming,0);
+
+            long previousNanos  = runPrevious(gf,features,previous);
+            long flushedNanos   = runStreaming(gf,features,streaming,100);
+            long streamingNanos = runStreaming(gf,features,streaming,0);
+            System.out.println(" Previous: " + rate(features,previousNanos)  + " features/s, " + previous.length()  + " bytes");
+            System.out.println("  Flushed: " + rate(features,flushedNanos)   + " features/s (every 100 features)");
+            System.out.println("Streaming: " + rate(features,streamingNanos) + " features/s, " + streaming.length() + " bytes");
+            System.out.println("  Speedup: " + ((double)previousNanos / (double)Math.max(streamingNanos,1)) + "x" +
+                               " (" + ((double)previousNanos / (double)Math.max(flushedNanos,1)) + "x flushed)");
+            System.out.println(check(streaming,features) ? "PASSED: well formed, " + features + " features" : "FAILED");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static long rate(int _features, long _nanos) {
+        return (long)((double)_features / ((double)Math.max(_nanos,1) / 1.0E9));
+    }
+
+    private static Geometry polygon(GeometryFactory _gf, int _i) {
+        double x = 300000.123456 + (_i % 1000) * 10.0;
+        double y = 5200000.654321 + (_i / 1000) * 10.0;
+        return _gf.createPolygon(new Coordinate[] {
+                   new Coordinate(x,y), new Coordinate(x,y+9.25), new Coordinate(x+9.5,y+9.25),
+                   new Coordinate(x+9.5,y), new Coordinate(x,y) });
+    }
+
+    /** @param _flushEvery : int : Features between flushes, 0 to flush only at the end */
+    private static long runStreaming(GeometryFactory _gf, int _features, File _file, int _flushEvery)
+    throws IOException
+    {
+        long start = System.nanoTime();
+        GeoJSONWriter writer = new GeoJSONWriter(new OutputStreamWriter(new FileOutputStream(_file),"UTF-8"),
+                                                 _gf.getPrecisionModel());
+        writer.startDocument(true);
+        for (int i = 0; i < _features; i++) {
+            Geometry geom = polygon(_gf,i);
+            writer.startFeature(new Integer(i),null);
+            writer.writeGeometry(geom,false);
+            writer.startProperties();
+            writer.writeProperty("NAME","Feature " + i,true);
+            writer.writeProperty("AREA",String.valueOf(geom.getArea()),false);
+            writer.writeProperty("CLASS",null,true);
+            writer.endProperties();
+            writer.endFeature();
+            if ( _flushEvery > 0 && (i + 1) % _flushEvery == 0 ) {
+                writer.flush();
+            }
+        }
+        writer.endDocument();
+        writer.close();
+        return System.nanoTime() - start;
+    }
+
+    /** Reproduces the StringBuffer, DecimalFormat and per line indentation approach */
+    private static long runPrevious(GeometryFactory _gf, int _features, File _file)
+    throws IOException
+    {
+        long start = System.nanoTime();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(_file),"UTF-8"));
+        DecimalFormatSymbols symbols = new DecimalFormatSymbols();
+        symbols.setDecimalSeparator('.');
+        DecimalFormat formatter = new DecimalFormat("#." + Strings.stringOfChar('#',_gf.getPrecisionModel().getMaximumSignificantDigits()),symbols);
+        StringBuffer buffer = new StringBuffer(100000);
+        buffer.append("{" + newLine);
+        for (int i = 0; i < _features; i++) {
+            if ( i > 0 ) {
+                buffer.append("," + newLine);
+            }
+            Geometry geom = polygon(_gf,i);
+            indent(buffer,2,"{",true);
+            indent(buffer,3,"\"type\": \"Feature\",",true);
+            indent(buffer,3,"\"id\": " + i + ",",true);
+            indent(buffer,3,"\"geometry\": ",false);
+            buffer.append("{" + newLine);
+            indent(buffer,4,"\"type\": \"Polygon\",",true);
+            indent(buffer,4,"\"coordinates\": [",true);
+            Coordinate[] coords = geom.getCoordinates();
+            buffer.append(Strings.stringOfChar(' ',2 * 6));
+            for (int c = 0; c < coords.length; c++) {
+                if ( c > 0 ) {
+                    buffer.append(", ");
+                }
+                buffer.append("[" + formatter.format(coords[c].x) + ", " + formatter.format(coords[c].y) + "]");
+            }
+            buffer.append(newLine);
+            indent(buffer,4,"]",true);
+            indent(buffer,3,"},",true);
+            indent(buffer,4,"\"properties\": { ",true);
+            indent(buffer,5,"\"NAME\": \"Feature " + i + "\"",false);
+            buffer.append("," + newLine);
+            indent(buffer,5,"\"AREA\": " + String.valueOf(geom.getArea()),false);
+            buffer.append("," + newLine);
+            indent(buffer,5,"\"CLASS\": NULL",false);
+            buffer.append(newLine);
+            indent(buffer,4,"}",true);
+            indent(buffer,2,"}",false);
+            if ( (i + 1) % 100 == 0 ) {
+                writer.write(buffer.toString());
+                buffer = new StringBuffer(100000);
+                writer.flush();
+            }
+        }
+        buffer.append(newLine + "}");
+        writer.write(buffer.toString());
+        writer.close();
+        return System.nanoTime() - start;
+    }
+
+    private static void indent(StringBuffer _buffer, int _level, String _value, boolean _newLine) {
+        _buffer.append(Strings.stringOfChar(' ',2 * (_level-1)) + _value + (_newLine ? newLine : ""));
+    }
+
+    /** Checks brackets balance outside strings and counts Feature objects */
+    private static boolean check(File _file, int _features)
+    throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(_file),"UTF-8"));
+        int        depth = 0;
+        int     featureCount = 0;
+        boolean inString = false;
+        boolean  escaped = false;
+        StringBuffer token = new StringBuffer();
+        int c;
+        try {
+            while ( (c = reader.read()) != -1 ) {
+                if ( inString ) {
+                    if ( escaped ) {
+                        escaped = false;
+                    } else if ( c == '\\' ) {
+                        escaped = true;
+                    } else if ( c == '"' ) {
+                        inString = false;
+                        if ( token.toString().equals("Feature") ) {
+                            featureCount++;
+                        }
+                    } else {
+                        token.append((char)c);
+                    }
+                    continue;
+                }
+                switch (c) {
+                    case '"' : inString = true; token.setLength(0); break;
+                    case '{' :
+                    case '[' : depth++; break;
+                    case '}' :
+                    case ']' : if ( --depth < 0 ) { return false; } break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if ( depth != 0 || inString || featureCount != _features ) {
+            System.out.println("Depth " + depth + ", features " + featureCount + " expected " + _features);
+            return false;
+        }
+        return true;
+    }
+}
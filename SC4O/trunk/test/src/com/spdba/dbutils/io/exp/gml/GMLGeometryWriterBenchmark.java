@@ -0,0 +1,182 @@
+package com.spdba.dbutils.io.exp.gml;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.io.gml2.GMLWriter;
+
+/**
+ * Throughput benchmark (features/second) of GMLGeometryWriter against the
+ * approach GMLExporter used: a GML String built per geometry, namespace and srsName
+ * patched with replaceAll/replace, and the featureMember concatenated with + into a
+ * StringBuffer written out every 100 rows.
+ * <p>
+ * oracle.spatial.util.GML3 needs a database connection so the per geometry String is
+ * produced here by the JTS GMLWriter; the Oracle encoder, which also re-reads the
+ * STRUCT, is slower than this, so the speedup shown is a lower bound.
+ * <p>
+ * Each feature is a 5 vertex polygon with two attributes. The GMLGeometryWriter output is
+ * parsed with StAX to check it is well formed and has the expected number of Polygons.
+ * <p>
+ * No database connection is needed.
+ * Usage: GMLGeometryWriterBenchmark [features] [outputDirectory] [decimalPlaces]
+ */
+public class GMLGeometryWriterBenchmark {
+
+    private static String newLine = System.getProperty("line.separator");
+
+    private static final String GmlNameSpace = "xmlns:gml=\"http://www.opengis.net/gml\"";
+    private static final String      srsName = "EPSG:28355";
+    private static final String srsNameSpace = "urn:ogc:def:crs:EPSG";
+
+    public static void main(String[] args)
+    {
+        int      features = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        String     outDir = args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir");
+        int decimalPlaces = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        try {
+            GeometryFactory gf = new GeometryFactory(new PrecisionModel(Math.pow(10,decimalPlaces)));
+            File      previous = new File(outDir,"gmlbench_previous.gml");
+            File     streaming = new File(outDir,"gmlbench_streaming.gml");
+
+            // Warm up
+            runPrevious(gf,features/10,previous);
+            runStreaming(gf,features/10,streaming);
+
+            long previousNanos  = runPrevious(gf,features,previous);
+            long streamingNanos = runStreaming(gf,features,streaming);
+            System.out.println(" Previous: " + rate(features,previousNanos)  + " features/s, " + previous.length()  + " bytes");
+            System.out.println("Streaming: " + rate(features,streamingNanos) + " features/s, " + streaming.length() + " bytes");
+            System.out.println("  Speedup: " + ((double)previousNanos / (double)Math.max(streamingNanos,1)) + "x");
+            System.out.println(check(streaming,features) ? "PASSED: well formed, " + features + " polygons" : "FAILED");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static long rate(int _features, long _nanos) {
+        return (long)((double)_features / ((double)Math.max(_nanos,1) / 1.0E9));
+    }
+
+    private static Geometry polygon(GeometryFactory _gf, int _i) {
+        double x = 300000.123456 + (_i % 1000) * 10.0;
+        double y = 5200000.654321 + (_i / 1000) * 10.0;
+        return _gf.createPolygon(new Coordinate[] {
+                   new Coordinate(x,y), new Coordinate(x+9.5,y), new Coordinate(x+9.5,y+9.25),
+                   new Coordinate(x,y+9.25), new Coordinate(x,y) });
+    }
+
+    private static void header(Writer _writer)
+    throws IOException
+    {
+        _writer.write("<?xml version='1.0'  encoding='UTF-8' ?>" + newLine +
+                      "<ogr:FeatureCollection " + GmlNameSpace + " xmlns:ogr=\"http://ogr.maptools.org/\">" + newLine);
+    }
+
+    private static long runStreaming(GeometryFactory _gf, int _features, File _file)
+    throws IOException
+    {
+        long start = System.nanoTime();
+        GMLGeometryWriter writer = new GMLGeometryWriter(new OutputStreamWriter(new FileOutputStream(_file),"UTF-8"),
+                                                         _gf.getPrecisionModel());
+        String featureMemberStart    = "  <gml:featureMember>" + newLine + "    <ogr:bench>" + newLine;
+        String featureMemberEnd      = "    </ogr:bench>" + newLine + "  </gml:featureMember>" + newLine;
+        String geometryPropertyStart = "      <ogr:geometryProperty>" + newLine + "        ";
+        String geometryPropertyEnd   = newLine + "      </ogr:geometryProperty>" + newLine;
+        String srsNameAttribute      = "urn:" + srsName;
+        String namespaceAttribute    = "xmlns:urn=\"" + srsNameSpace + "\"";
+        writer.append("<?xml version='1.0'  encoding='UTF-8' ?>" + newLine +
+                      "<ogr:FeatureCollection " + GmlNameSpace + " xmlns:ogr=\"http://ogr.maptools.org/\">" + newLine);
+        for (int i = 0; i < _features; i++) {
+            Geometry geom = polygon(_gf,i);
+            writer.append(featureMemberStart);
+            writer.append(geometryPropertyStart);
+            writer.writeGeometry(geom,srsNameAttribute,namespaceAttribute,2,null);
+            writer.append(geometryPropertyEnd);
+            writer.append("      <ogr:ID>");
+            writer.appendLong(i);
+            writer.append("</ogr:ID>");
+            writer.append(newLine);
+            writer.append("      <ogr:AREA>");
+            writer.append(String.valueOf(geom.getArea()));
+            writer.append("</ogr:AREA>");
+            writer.append(newLine);
+            writer.append(featureMemberEnd);
+        }
+        writer.append("</ogr:FeatureCollection>");
+        writer.close();
+        return System.nanoTime() - start;
+    }
+
+    /** Reproduces the per geometry String, replace and StringBuffer approach */
+    private static long runPrevious(GeometryFactory _gf, int _features, File _file)
+    throws IOException
+    {
+        long start = System.nanoTime();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(_file),"UTF-8"));
+        header(writer);
+        GMLWriter gmlWriter = new GMLWriter(true);
+        gmlWriter.setSrsName("SDO:28355");
+        StringBuffer rowBuffer = new StringBuffer(10000);
+        for (int i = 0; i < _features; i++) {
+            Geometry geom = polygon(_gf,i);
+            rowBuffer.append("  <gml:featureMember>" + newLine);
+            rowBuffer.append("    <ogr:bench>" + newLine);
+            String gmlText = gmlWriter.write(geom);
+            gmlText = gmlText.replaceAll(GmlNameSpace, "xmlns:urn=\"" + srsNameSpace + "\"");
+            gmlText = gmlText.replace("srsName=\"SDO:28355\"", "srsName=\"urn:" + srsName + "\" ");
+            rowBuffer.append("      <ogr:geometryProperty>" + newLine +
+                             "        " + gmlText + newLine +
+                             "      </ogr:geometryProperty>" + newLine);
+            rowBuffer.append("      <ogr:ID>" + String.valueOf(i) + "</ogr:ID>" + newLine);
+            rowBuffer.append("      <ogr:AREA>" + String.valueOf(geom.getArea()) + "</ogr:AREA>" + newLine);
+            rowBuffer.append("    </ogr:bench>" + newLine);
+            rowBuffer.append("  </gml:featureMember>" + newLine);
+            if ( (i + 1) % 100 == 0 ) {
+                writer.write(rowBuffer.toString());
+                rowBuffer = new StringBuffer(10000);
+            }
+        }
+        writer.write(rowBuffer.toString());
+        writer.write("</ogr:FeatureCollection>");
+        writer.close();
+        return System.nanoTime() - start;
+    }
+
+    /** Parses the document and counts gml:Polygon elements */
+    private static boolean check(File _file, int _features)
+    throws Exception
+    {
+        FileReader reader = new FileReader(_file);
+        XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(reader);
+        int polygons = 0;
+        try {
+            while ( xml.hasNext() ) {
+                if ( xml.next() == XMLStreamConstants.START_ELEMENT && xml.getLocalName().equals("Polygon") ) {
+                    polygons++;
+                }
+            }
+        } finally {
+            xml.close();
+            reader.close();
+        }
+        if ( polygons != _features ) {
+            System.out.println("Polygons " + polygons + " expected " + _features);
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,135 @@
+package com.spdba.dbutils.io.exp.kml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+
+/**
+ * Throughput (placemarks/second) and file size of KMLStreamWriter writing KML and KMZ.
+ * <p>
+ * Each placemark is a 5 vertex polygon with a name, description and two ExtendedData values.
+ * Both outputs are parsed with StAX (the KMZ through its doc.kml entry) to check they are
+ * well formed and hold the expected number of Placemarks and Polygons.
+ * <p>
+ * No database connection is needed.
+ * Usage: KMLStreamWriterBenchmark [placemarks] [outputDirectory] [decimalPlaces]
+ */
+public class KMLStreamWriterBenchmark {
+
+    public static void main(String[] args)
+    {
+        int    placemarks = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        String     outDir = args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir");
+        int decimalPlaces = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+        try {
+            GeometryFactory gf = new GeometryFactory(new PrecisionModel(Math.pow(10,decimalPlaces)));
+            File kml = new File(outDir,"kmlbench.kml");
+            File kmz = new File(outDir,"kmlbench.kmz");
+
+            // Warm up
+            run(gf,placemarks/10,kml,false);
+            run(gf,placemarks/10,kmz,true);
+
+            long kmlNanos = run(gf,placemarks,kml,false);
+            long kmzNanos = run(gf,placemarks,kmz,true);
+            System.out.println("KML: " + rate(placemarks,kmlNanos) + " placemarks/s, " + kml.length() + " bytes");
+            System.out.println("KMZ: " + rate(placemarks,kmzNanos) + " placemarks/s, " + kmz.length() + " bytes (" +
+                               (100L * kmz.length() / Math.max(kml.length(),1L)) + "% of KML)");
+            boolean passed = check(new FileInputStream(kml),false,placemarks) &&
+                             check(new FileInputStream(kmz),true,placemarks);
+            System.out.println(passed ? "PASSED: well formed, " + placemarks + " placemarks" : "FAILED");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static long rate(int _placemarks, long _nanos) {
+        return (long)((double)_placemarks / ((double)Math.max(_nanos,1) / 1.0E9));
+    }
+
+    private static Geometry polygon(GeometryFactory _gf, int _i) {
+        double x = 147.123456789 + (_i % 1000) * 0.001;
+        double y = -42.987654321 + (_i / 1000) * 0.001;
+        return _gf.createPolygon(new Coordinate[] {
+                   new Coordinate(x,y), new Coordinate(x+0.0009,y), new Coordinate(x+0.0009,y+0.0009),
+                   new Coordinate(x,y+0.0009), new Coordinate(x,y) });
+    }
+
+    private static long run(GeometryFactory _gf, int _placemarks, File _file, boolean _kmz)
+    throws IOException
+    {
+        long start = System.nanoTime();
+        KMLStreamWriter writer = KMLStreamWriter.open(_file.getPath(),_kmz,_gf.getPrecisionModel());
+        writer.setAltitudeMode("clampToGround");
+        writer.startDocument("kmlbench");
+        List<String> names  = new ArrayList<String>();
+        List<String> values = new ArrayList<String>();
+        names.add("ID");
+        names.add("OWNER");
+        for (int i = 0; i < _placemarks; i++) {
+            writer.startPlacemark(String.valueOf(i));
+            writer.writeElement("      ","name","Parcel " + i);
+            writer.writeElement("      ","description","<![CDATA[Lot <b>" + i + "</b>]]>");
+            values.clear();
+            values.add(String.valueOf(i));
+            values.add("Smith & Sons");
+            writer.writeExtendedData(names,values);
+            writer.writeGeometry(polygon(_gf,i));
+            writer.endPlacemark();
+        }
+        writer.endDocument();
+        writer.close();
+        return System.nanoTime() - start;
+    }
+
+    /** Parses the document and counts Placemark and Polygon elements */
+    private static boolean check(InputStream _in, boolean _kmz, int _placemarks)
+    throws Exception
+    {
+        InputStream in = _in;
+        if ( _kmz ) {
+            ZipInputStream zip = new ZipInputStream(_in);
+            ZipEntry entry = zip.getNextEntry();
+            if ( entry == null || ! entry.getName().equals(KMLStreamWriter.KMZ_ENTRY_NAME) ) {
+                System.out.println("KMZ has no " + KMLStreamWriter.KMZ_ENTRY_NAME);
+                zip.close();
+                return false;
+            }
+            in = zip;
+        }
+        XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(in,"UTF-8");
+        int placemarks = 0,
+              polygons = 0;
+        try {
+            while ( xml.hasNext() ) {
+                if ( xml.next() == XMLStreamConstants.START_ELEMENT ) {
+                    if ( xml.getLocalName().equals("Placemark") ) placemarks++;
+                    if ( xml.getLocalName().equals("Polygon") )   polygons++;
+                }
+            }
+        } finally {
+            xml.close();
+            in.close();
+        }
+        if ( placemarks != _placemarks || polygons != _placemarks ) {
+            System.out.println((_kmz ? "KMZ" : "KML") + " Placemarks " + placemarks + " Polygons " + polygons + " expected " + _placemarks);
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,165 @@
+package com.spdba.dbutils.io.exp.kml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+
+/**
+ * Writes a super-overlay of generated polygons (in longitude/latitude) and walks its
+ * NetworkLinks from the root document, checking each document is well formed, every
+ * polygon is in exactly one leaf tile and no tile holds more than maxFeaturesPerTile,
+ * and that the file the placemarks were spilled to has been deleted.
+ * Also reports how much smaller the root document is than the layer as one document.
+ * <p>
+ * No database connection is needed.
+ * Usage: KMLSuperOverlayWriterTest [polygons] [outputDirectory] [maxFeaturesPerTile]
+ */
+public class KMLSuperOverlayWriterTest {
+
+    public static void main(String[] args)
+    {
+        int       polygons = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        String      outDir = args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir");
+        int maxTileFeature = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        try {
+            GeometryFactory gf = new GeometryFactory(new PrecisionModel(1000000.0));
+            File          root = new File(outDir,"superoverlay.kml");
+            File        single = new File(outDir,"superoverlay_single.kml");
+
+            long start = System.nanoTime();
+            KMLSuperOverlayWriter overlay = new KMLSuperOverlayWriter(root.getPath(),false,gf.getPrecisionModel());
+            overlay.setMaxFeaturesPerTile(maxTileFeature);
+            for (int i = 0; i < polygons; i++) {
+                overlay.add(String.valueOf(i),"      <name>Polygon " + i + "</name>\n",polygon(gf,i,polygons));
+            }
+            int documents = overlay.write(null);
+            long nanos = System.nanoTime() - start;
+
+            KMLStreamWriter writer = KMLStreamWriter.open(single.getPath(),false,gf.getPrecisionModel());
+            writer.startDocument(single.getName());
+            for (int i = 0; i < polygons; i++) {
+                writer.startPlacemark(String.valueOf(i));
+                writer.writeElement("      ","name","Polygon " + i);
+                writer.writeGeometry(polygon(gf,i,polygons));
+                writer.endPlacemark();
+            }
+            writer.endDocument();
+            writer.close();
+
+            System.out.println(documents + " documents written in " + (nanos / 1000000L) + "ms (" + overlay.getThreadCount() + " threads)");
+            System.out.println("Root document " + root.length() + " bytes (" + placemarks(root) + " placemarks); single document " + single.length() + " bytes");
+            boolean passed = check(root,new File(overlay.getTileDirectory()),polygons,maxTileFeature,documents);
+            for (String name : new File(outDir).list()) {
+                if ( name.startsWith("superoverlay_tiles") && name.endsWith(".tmp") ) {
+                    System.out.println("Spill file " + name + " not deleted");
+                    passed = false;
+                }
+            }
+            System.out.println(passed ? "PASSED" : "FAILED");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Polygons of 40 vertices spread over Tasmania, denser in the south; one in 100 is large */
+    private static Geometry polygon(GeometryFactory _gf, int _i, int _polygons) {
+        double fraction = (double)_i / (double)_polygons;
+        double x = 144.5 + 4.0 * Math.sqrt((_i * 0.618034) % 1.0);
+        double y = -43.5 + 3.0 * Math.sqrt(fraction);
+        double r = (_i % 100 == 0 ? 0.05 : 0.0005) + 0.002 * ((_i * 7) % 11) / 11.0;
+        Coordinate[] ring = new Coordinate[41];
+        for (int v = 0; v < 40; v++) {
+            double angle = 2.0 * Math.PI * v / 40.0;
+            double  wave = 1.0 + 0.2 * Math.sin(angle * 5.0);
+            ring[v] = new Coordinate(x + r * wave * Math.cos(angle),y + r * wave * Math.sin(angle));
+        }
+        ring[40] = new Coordinate(ring[0]);
+        return _gf.createPolygon(ring);
+    }
+
+    private static int placemarks(File _document)
+    throws Exception
+    {
+        InputStream in = new FileInputStream(_document);
+        XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(in,"UTF-8");
+        int placemarks = 0;
+        try {
+            while ( xml.hasNext() ) {
+                if ( xml.next() == XMLStreamConstants.START_ELEMENT && xml.getLocalName().equals("Placemark") ) {
+                    placemarks++;
+                }
+            }
+        } finally {
+            xml.close();
+            in.close();
+        }
+        return placemarks;
+    }
+
+    private static boolean check(File _root, File _tiles, int _polygons, int _maxTileFeatures, int _documents)
+    throws Exception
+    {
+        Set<String>         leafIds = new HashSet<String>();
+        LinkedList<File>    pending = new LinkedList<File>();
+        pending.add(_root);
+        int documents = 0;
+        boolean passed = true;
+        while ( ! pending.isEmpty() ) {
+            File document = pending.removeFirst();
+            documents++;
+            int links = 0;
+            Set<String> ids = new HashSet<String>();
+            InputStream in = new FileInputStream(document);
+            XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(in,"UTF-8");
+            try {
+                while ( xml.hasNext() ) {
+                    if ( xml.next() != XMLStreamConstants.START_ELEMENT ) {
+                        continue;
+                    }
+                    if ( xml.getLocalName().equals("Placemark") ) {
+                        ids.add(xml.getAttributeValue(null,"id"));
+                    } else if ( xml.getLocalName().equals("href") ) {
+                        String href = xml.getElementText();
+                        if ( href.endsWith(".kml") ) {
+                            links++;
+                            pending.add(new File(_tiles,new File(href).getName()));
+                        }
+                    }
+                }
+            } finally {
+                xml.close();
+                in.close();
+            }
+            if ( ids.size() > _maxTileFeatures ) {
+                System.out.println(document.getName() + " has " + ids.size() + " placemarks");
+                passed = false;
+            }
+            if ( links == 0 ) {
+                for (String id : ids) {
+                    if ( ! leafIds.add(id) ) {
+                        System.out.println(id + " is in more than one leaf tile");
+                        passed = false;
+                    }
+                }
+            }
+        }
+        if ( documents != _documents || leafIds.size() != _polygons ) {
+            System.out.println(documents + " documents linked, " + _documents + " written; " + leafIds.size() + " polygons in leaf tiles, " + _polygons + " expected");
+            return false;
+        }
+        return passed;
+    }
+}
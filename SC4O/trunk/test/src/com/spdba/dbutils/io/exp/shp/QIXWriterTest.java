@@ -0,0 +1,134 @@
+package com.spdba.dbutils.io.exp.shp;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.geotools.data.shapefile.shp.ShapeType;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+/**
+ * Writes a polygon shapefile with a .qix spatial index, then reads the index back
+ * as MapServer does (skipping subtrees with each node's offset) and checks that
+ * window queries return every shape whose envelope intersects the window.
+ * Reports the fraction of shapes an indexed read visits compared with a full scan.
+ * <p>
+ * No database connection is needed.
+ * Usage: QIXWriterTest [shapes] [outputDirectory]
+ */
+public class QIXWriterTest {
+
+    public static void main(String[] args)
+    {
+        int    shapes = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        String outDir = args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir");
+        try {
+            GeometryFactory gf = new GeometryFactory();
+            Random      random = new Random(1234L);
+            List<Geometry> geoms = new ArrayList<Geometry>(shapes);
+            for (int i = 0; i < shapes; i++) {
+                // Every 50th shape is null; a few are large
+                if ( i % 50 == 49 ) {
+                    geoms.add(null);
+                    continue;
+                }
+                double x = 300000.0 + random.nextDouble() * 100000.0;
+                double y = 5200000.0 + random.nextDouble() * 100000.0;
+                double s = i % 1000 == 0 ? 20000.0 : 5.0 + random.nextDouble() * 50.0;
+                geoms.add(gf.createPolygon(new Coordinate[] {
+                              new Coordinate(x,y), new Coordinate(x+s,y), new Coordinate(x+s,y+s),
+                              new Coordinate(x,y+s), new Coordinate(x,y) }));
+            }
+            long start = System.nanoTime();
+            ShapefileWriter writer = new ShapefileWriter(outDir,"qixtest",ShapeType.POLYGON,shapes);
+            writer.setSpatialIndex(true);
+            writer.write(geoms);
+            writer.close();
+            System.out.println(shapes + " shapes and .qix written in " + ((System.nanoTime() - start) / 1000000L) + "ms");
+
+            File qix = new File(outDir,"qixtest.qix");
+            ByteBuffer index = read(qix);
+            if ( index.get() != 'S' || index.get() != 'Q' || index.get() != 'T' || index.get() != 1 || index.get() != 1 ) {
+                System.out.println("FAILED: bad header");
+                return;
+            }
+            index.position(8);
+            int numShapes = index.getInt();
+            int  maxDepth = index.getInt();
+            System.out.println(qix.length() + " byte index, " + numShapes + " shapes, depth " + maxDepth);
+
+            boolean passed = numShapes == shapes;
+            long visited = 0;
+            int  queries = 1000;
+            for (int q = 0; q < queries && passed; q++) {
+                double x = 300000.0 + random.nextDouble() * 100000.0;
+                double y = 5200000.0 + random.nextDouble() * 100000.0;
+                Envelope window = new Envelope(x,x + 2000.0,y,y + 2000.0);
+                Set<Integer> found = new HashSet<Integer>();
+                index.position(16);
+                search(index,window,found);
+                visited += found.size();
+                for (int i = 0; i < shapes; i++) {
+                    Geometry g = geoms.get(i);
+                    if ( g != null && g.getEnvelopeInternal().intersects(window) && ! found.contains(i) ) {
+                        System.out.println("Shape " + i + " missed by query " + q);
+                        passed = false;
+                        break;
+                    }
+                }
+            }
+            System.out.println("Indexed reads visit " + (100.0 * visited / ((double)queries * shapes)) + "% of shapes");
+            System.out.println(passed ? "PASSED" : "FAILED");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static ByteBuffer read(File _file)
+    throws Exception
+    {
+        RandomAccessFile raf = new RandomAccessFile(_file,"r");
+        try {
+            byte[] bytes = new byte[(int)raf.length()];
+            raf.readFully(bytes);
+            return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /** Reads the node at the buffer's position, adding its shapes and searching its children if it intersects */
+    private static void search(ByteBuffer _index, Envelope _window, Set<Integer> _found) {
+        int  offset = _index.getInt();
+        double minX = _index.getDouble(),
+               minY = _index.getDouble(),
+               maxX = _index.getDouble(),
+               maxY = _index.getDouble();
+        Envelope node = new Envelope(minX,maxX,minY,maxY);
+        int  numShapes = _index.getInt();
+        if ( ! node.intersects(_window) ) {
+            // Skip ids, child count and descendants
+            _index.position(_index.position() + 4 * numShapes + 4 + offset);
+            return;
+        }
+        for (int i = 0; i < numShapes; i++) {
+            _found.add(_index.getInt());
+        }
+        int children = _index.getInt();
+        for (int i = 0; i < children; i++) {
+            search(_index,_window,_found);
+        }
+    }
+}
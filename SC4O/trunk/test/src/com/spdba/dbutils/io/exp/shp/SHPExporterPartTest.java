@@ -0,0 +1,145 @@
+package com.spdba.dbutils.io.exp.shp;
+
+import com.spdba.dbutils.io.GeometryProperties;
+import com.spdba.dbutils.spatial.SDO.POLYGON_RING_ORIENTATION;
+import com.spdba.dbutils.tools.FileUtils;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import java.util.LinkedHashMap;
+
+import javax.sql.RowSetMetaData;
+
+import org.geotools.data.shapefile.shp.ShapeType;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+/**
+ * Exports polygons through SHPExporter with a small part size and checks the export
+ * rolls over to numbered parts, that every part is a complete shapefile (header lengths
+ * match the files, .shx and .dbf record counts match, record numbers start at 1,
+ * each has its .prj and .qix), no part exceeds the part size by more than a record
+ * and that no row is lost or repeated.
+ * <p>
+ * No database connection is needed.
+ * Usage: SHPExporterPartTest [rows] [outputDirectory] [partSizeBytes]
+ */
+public class SHPExporterPartTest {
+
+    public static void main(String[] args)
+    {
+        int      rows = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        String outDir = args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir");
+        long partSize = args.length > 2 ? Long.parseLong(args[2]) : 1024L * 1024L;
+        try {
+            GeometryFactory gf = new GeometryFactory();
+            SHPExporter exporter = new SHPExporter(null,
+                                                   FileUtils.FileNameBuilder(outDir,"parttest","shp"),
+                                                   rows,
+                                                   POLYGON_RING_ORIENTATION.INVERSE,
+                                                   3);
+            GeometryProperties properties = new GeometryProperties();
+            properties.setShapefileType(ShapeType.POLYGON);
+            properties.setSRID(28355);
+            exporter.setGeometryProperties(properties);
+            exporter.setGeoColumnName("GEOM");
+            exporter.setExportMetadata(new LinkedHashMap<Integer,RowSetMetaData>());
+            exporter.setRecordIdentifier("FID");
+            exporter.setPrjContents("PROJCS[\"GDA94 / MGA zone 55\"]");
+            exporter.setSpatialIndex(true);
+            exporter.setCommit(100);
+            exporter.setPartSize(partSize);
+
+            long start = System.nanoTime();
+            exporter.start("UTF-8");
+            for (int i = 0; i < rows; i++) {
+                exporter.startRow();
+                if ( i % 100 == 99 ) {
+                    exporter.addToGeomList((Geometry)null);
+                } else {
+                    // Polygons of 5 to 45 vertices so record lengths vary
+                    int vertices = 4 + (i % 41);
+                    double     x = 500000.0 + (i % 1000) * 10.0,
+                               y = 5200000.0 + (i / 1000) * 10.0;
+                    Coordinate[] ring = new Coordinate[vertices + 1];
+                    for (int v = 0; v < vertices; v++) {
+                        double angle = -2.0 * Math.PI * v / vertices;
+                        ring[v] = new Coordinate(x + 4.0 * Math.cos(angle),y + 4.0 * Math.sin(angle));
+                    }
+                    ring[vertices] = new Coordinate(ring[0]);
+                    exporter.addToGeomList(gf.createPolygon(ring));
+                }
+                exporter.endRow();
+            }
+            exporter.end();
+            exporter.close();
+            int parts = exporter.getPartCount();
+            System.out.println(rows + " rows written to " + parts + " parts in " + ((System.nanoTime() - start) / 1000000L) + "ms");
+
+            boolean passed = parts > 1;
+            int      total = 0;
+            for (int part = 0; part < parts && passed; part++) {
+                String name = SHPExporter.getPartName("parttest",part);
+                File shp = new File(outDir,name + ".shp"),
+                     shx = new File(outDir,name + ".shx"),
+                     dbf = new File(outDir,name + ".dbf");
+                ByteBuffer shpBytes = read(shp);
+                ByteBuffer shxBytes = read(shx);
+                ByteBuffer dbfBytes = read(dbf);
+                int  shpLength = shpBytes.order(ByteOrder.BIG_ENDIAN).getInt(24) * 2;
+                int  shxLength = shxBytes.order(ByteOrder.BIG_ENDIAN).getInt(24) * 2;
+                int    records = (shxLength - 100) / 8;
+                int dbfRecords = dbfBytes.order(ByteOrder.LITTLE_ENDIAN).getInt(4);
+                int firstShape = records == 0 ? 1 : shpBytes.order(ByteOrder.BIG_ENDIAN).getInt(100);
+                System.out.println(name + ": " + shp.length() + " byte .shp, " + dbf.length() + " byte .dbf, " + records + " records");
+                if ( shpLength != shp.length() || shxLength != shx.length() ) {
+                    System.out.println(name + " header lengths do not match files");
+                    passed = false;
+                } else if ( records != dbfRecords || firstShape != 1 ) {
+                    System.out.println(name + " has " + records + " shapes (first " + firstShape + ") and " + dbfRecords + " DBF records");
+                    passed = false;
+                } else if ( shp.length() > partSize + 1024 || dbf.length() > partSize + 1024 ) {
+                    System.out.println(name + " exceeds part size");
+                    passed = false;
+                } else if ( ! new File(outDir,name + ".prj").exists() || ! new File(outDir,name + ".qix").exists() ) {
+                    System.out.println(name + " has no .prj or .qix");
+                    passed = false;
+                } else {
+                    // FID continues across parts
+                    int fid = Integer.parseInt(new String(dbfBytes.array(),dbfBytes.getShort(8) + 1,15).trim());
+                    if ( records > 0 && fid != total + 1 ) {
+                        System.out.println(name + " starts with FID " + fid + ", expected " + (total + 1));
+                        passed = false;
+                    }
+                }
+                total += records;
+            }
+            if ( passed && total != rows ) {
+                System.out.println(total + " records written, " + rows + " expected");
+                passed = false;
+            }
+            System.out.println(passed ? "PASSED" : "FAILED");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static ByteBuffer read(File _file)
+    throws Exception
+    {
+        RandomAccessFile raf = new RandomAccessFile(_file,"r");
+        try {
+            byte[] bytes = new byte[(int)raf.length()];
+            raf.readFully(bytes);
+            return ByteBuffer.wrap(bytes);
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.spdba.dbutils.io.exp.shp;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.data.shapefile.shp.ShapeType;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.PrecisionModel;
+
+/**
+ * Throughput benchmark (shapes/second) of ShapefileWriter for point, line and polygon layers.
+ * <p>
+ * Each layer is written twice: once flushing the channels after every shape (as the writer
+ * used to) and once letting the writer flush only when its buffers fill. Geometries are handed
+ * to the writer in lists of commit size, as SHPExporter does (lines and polygons as
+ * MultiLineStrings and MultiPolygons, as the shape handlers require). After each run the .shp and .shx
+ * files are checked for a consistent record count and file length.
+ * <p>
+ * No database connection is needed.
+ * Usage: ShapefileWriterBenchmark [shapes] [outputDirectory] [commit]
+ */
+public class ShapefileWriterBenchmark {
+
+    public static void main(String[] args)
+    {
+        int    shapes = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        String outDir = args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir");
+        int    commit = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        try {
+            GeometryFactory gf = new GeometryFactory(new PrecisionModel(1000.0),0);
+            ShapeType[] types = { ShapeType.POINT, ShapeType.ARC, ShapeType.POLYGON };
+            for (int t = 0; t < types.length; t++) {
+                // Warm up
+                run(gf,types[t],shapes/10,outDir,commit,true);
+                run(gf,types[t],shapes/10,outDir,commit,false);
+
+                long perShape = run(gf,types[t],shapes,outDir,commit,true);
+                long buffered = run(gf,types[t],shapes,outDir,commit,false);
+                System.out.println(types[t] + ": flush per shape " + rate(shapes,perShape) + " shapes/s, " +
+                                   "buffered " + rate(shapes,buffered) + " shapes/s, " +
+                                   "speedup " + ((double)perShape / (double)Math.max(buffered,1)) + "x");
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static long rate(int _shapes, long _nanos) {
+        return (long)((double)_shapes / ((double)Math.max(_nanos,1) / 1.0E9));
+    }
+
+    private static long run(GeometryFactory _gf,
+                            ShapeType       _type,
+                            int             _shapes,
+                            String          _outDir,
+                            int             _commit,
+                            boolean         _flushEachShape)
+    throws Exception
+    {
+        String fileName = "shpbench_" + _type.id;
+        List<Geometry> geomList = new ArrayList<Geometry>(_commit);
+        long start = System.nanoTime();
+        ShapefileWriter writer = new ShapefileWriter(_outDir,fileName,_type,_shapes);
+        for (int i = 0; i < _shapes; i++) {
+            geomList.add(shape(_gf,_type,i));
+            if ( _flushEachShape ) {
+                writer.write(geomList);
+                writer.flush();
+                geomList.clear();
+            } else if ( geomList.size() >= _commit ) {
+                writer.write(geomList);
+                geomList.clear();
+            }
+        }
+        writer.write(geomList);
+        writer.close();
+        long elapsed = System.nanoTime() - start;
+        check(new File(_outDir,fileName + ".shp"),new File(_outDir,fileName + ".shx"),_shapes);
+        return elapsed;
+    }
+
+    private static Geometry shape(GeometryFactory _gf, ShapeType _type, int _i) {
+        double x = (_i % 1000) * 10.0;
+        double y = (_i / 1000) * 10.0;
+        if ( _type == ShapeType.POINT ) {
+            return _gf.createPoint(new Coordinate(x,y));
+        }
+        if ( _type == ShapeType.ARC ) {
+            return _gf.createMultiLineString(new LineString[] { _gf.createLineString(new Coordinate[] {
+                       new Coordinate(x,y), new Coordinate(x+5,y+2), new Coordinate(x+7,y+8), new Coordinate(x+9,y+9) }) });
+        }
+        return _gf.createMultiPolygon(new Polygon[] { _gf.createPolygon(new Coordinate[] {
+                   new Coordinate(x,y), new Coordinate(x,y+9), new Coordinate(x+9,y+9), new Coordinate(x+9,y), new Coordinate(x,y) }) });
+    }
+
+    /** Checks header lengths against file sizes, and that the .shx records point at consecutive .shp records */
+    private static void check(File _shp, File _shx, int _shapes)
+    throws IOException
+    {
+        RandomAccessFile shp = new RandomAccessFile(_shp,"r");
+        RandomAccessFile shx = new RandomAccessFile(_shx,"r");
+        try {
+            shp.seek(24);
+            long shpLength = shp.readInt() * 2L;
+            shx.seek(24);
+            long shxLength = shx.readInt() * 2L;
+            if ( shpLength != shp.length() || shxLength != shx.length() || (shxLength - 100) / 8 != _shapes ) {
+                throw new IOException("Header length mismatch: shp " + shpLength + "/" + shp.length() +
+                                      ", shx " + shxLength + "/" + shx.length());
+            }
+            long expectedOffset = 50;
+            DataInputStream records = new DataInputStream(new BufferedInputStream(new FileInputStream(_shx)));
+            records.skipBytes(100);
+            for (int i = 1; i <= _shapes; i++) {
+                int offset = records.readInt();
+                int length = records.readInt();
+                if ( offset != expectedOffset ) {
+                    throw new IOException("Record " + i + " offset " + offset + " expected " + expectedOffset);
+                }
+                expectedOffset += length + 4;
+            }
+            records.close();
+            if ( expectedOffset * 2 != shpLength ) {
+                throw new IOException("Index does not cover .shp file");
+            }
+        } finally {
+            shp.close();
+            shx.close();
+        }
+    }
+}
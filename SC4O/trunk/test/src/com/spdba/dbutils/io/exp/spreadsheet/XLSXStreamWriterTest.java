@@ -0,0 +1,163 @@
+package com.spdba.dbutils.io.exp.spreadsheet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import jxl.format.Colour;
+
+import jxl.write.DateFormat;
+import jxl.write.NumberFormats;
+import jxl.write.WritableCellFormat;
+import jxl.write.WritableFont;
+
+/**
+ * Writes a full 1,048,576 row sheet (headings plus 1,048,575 rows of five columns:
+ * integer, decimal, repeated code, unique text and date) with XLSXStreamWriter, then
+ * reads every part back with StAX checking the rows, cells, shared strings and number formats.
+ * Reports throughput and the heap in use while writing, which does not grow with rows.
+ * Also checks sheet names that are the same once cut to 31 characters are made unique.
+ * <p>
+ * No database connection is needed.
+ * Usage: XLSXStreamWriterTest [rows] [outputDirectory]
+ */
+public class XLSXStreamWriterTest {
+
+    public static void main(String[] args)
+    {
+        int    rows = args.length > 0 ? Integer.parseInt(args[0]) : XLSXStreamWriter.MAX_ROWS - 1;
+        String outDir = args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir");
+        try {
+            File file = new File(outDir,"xlsxtest.xlsx");
+            WritableFont font = new WritableFont(WritableFont.ARIAL,10,WritableFont.BOLD);
+            font.setColour(Colour.DARK_YELLOW);
+            WritableCellFormat integerFormat = new WritableCellFormat(NumberFormats.INTEGER),
+                                stringFormat = new WritableCellFormat(font,NumberFormats.TEXT),
+                                  dateFormat = new WritableCellFormat(font,new DateFormat("yyyy-MM-dd"));
+            stringFormat.setWrap(true);
+
+            Runtime runtime = Runtime.getRuntime();
+            long start = System.nanoTime(),
+                  heap = 0;
+            XLSXStreamWriter writer = new XLSXStreamWriter(file);
+            int integerStyle = writer.addStyle(integerFormat),
+                 stringStyle = writer.addStyle(stringFormat),
+                   dateStyle = writer.addStyle(dateFormat);
+            writer.startSheet("Parcels");
+            writer.startRow();
+            for (String heading : new String[] { "ID", "AREA", "ZONE", "OWNER", "REGISTERED" }) {
+                writer.writeString(heading,stringStyle);
+            }
+            writer.endRow();
+            java.util.Date date = new java.util.Date(1262304000000L);
+            for (int i = 0; i < rows; i++) {
+                writer.startRow();
+                writer.writeNumber(i,integerStyle);
+                writer.writeNumber(i * 0.25,0);
+                writer.writeString("ZONE_" + (i % 50),stringStyle);
+                if ( i % 10 == 9 ) {
+                    writer.writeBlank();
+                } else {
+                    writer.writeString("Owner <" + i + "> & Sons, Lot " + i + " of a long unique description of the registered proprietor",0);
+                }
+                writer.writeDate(date,dateStyle);
+                writer.endRow();
+                if ( i % 100000 == 0 ) {
+                    heap = Math.max(heap,runtime.totalMemory() - runtime.freeMemory());
+                }
+            }
+            writer.close();
+            long nanos = System.nanoTime() - start;
+            System.out.println((rows + 1) + " rows written in " + (nanos / 1000000L) + "ms, " +
+                               file.length() + " bytes, maximum heap in use " + (heap / (1024 * 1024)) + "MB");
+            System.out.println(check(file,rows) && checkSheetNames(new File(outDir,"xlsxsheets.xlsx")) ? "PASSED" : "FAILED");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static boolean check(File _file, int _rows)
+    throws Exception
+    {
+        ZipInputStream zip = new ZipInputStream(new FileInputStream(_file));
+        // The StAX parser closes its stream at the end of each part
+        InputStream part = new FilterInputStream(zip) {
+            public void close() { }
+        };
+        int parts = 0, sheetRows = 0, cells = 0, lastRow = 0, strings = 0, xfs = 0;
+        String numberFormats = "";
+        boolean passed = true;
+        try {
+            ZipEntry entry;
+            while ( (entry = zip.getNextEntry()) != null ) {
+                parts++;
+                XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(part,"UTF-8");
+                while ( xml.hasNext() ) {
+                    if ( xml.next() != XMLStreamConstants.START_ELEMENT ) {
+                        continue;
+                    }
+                    String element = xml.getLocalName();
+                    if ( entry.getName().equals("xl/worksheets/sheet1.xml") ) {
+                        if ( element.equals("row") ) {
+                            sheetRows++;
+                            lastRow = Integer.parseInt(xml.getAttributeValue(null,"r"));
+                        } else if ( element.equals("c") ) {
+                            cells++;
+                        }
+                    } else if ( entry.getName().equals("xl/sharedStrings.xml") && element.equals("si") ) {
+                        strings++;
+                    } else if ( entry.getName().equals("xl/styles.xml") && element.equals("cellXfs") ) {
+                        xfs = Integer.parseInt(xml.getAttributeValue(null,"count"));
+                    } else if ( entry.getName().equals("xl/styles.xml") && element.equals("xf") ) {
+                        numberFormats += xml.getAttributeValue(null,"numFmtId") + ",";
+                    } else if ( entry.getName().equals("xl/styles.xml") && element.equals("numFmt") ) {
+                        numberFormats += xml.getAttributeValue(null,"formatCode") + ",";
+                    }
+                }
+            }
+        } finally {
+            zip.close();
+        }
+        // Custom date format first, then cellStyleXfs and cellXfs: default, integer, text and the date
+        String expectedFormats = "yyyy-MM-dd,0,0,1,49,164,";
+        // 5 headings and 50 zones are shared; owners are too long to share
+        int expectedCells = 5 + _rows * 5 - _rows / 10;
+        if ( parts != 7 || sheetRows != _rows + 1 || lastRow != _rows + 1 || cells != expectedCells || strings != 55 || xfs != 4 || ! numberFormats.equals(expectedFormats) ) {
+            System.out.println(parts + " parts, " + sheetRows + " rows (last " + lastRow + "), " + cells + " cells (" + expectedCells + " expected), " +
+                               strings + " shared strings, " + xfs + " styles (number formats " + numberFormats + ")");
+            passed = false;
+        }
+        return passed;
+    }
+
+    private static boolean checkSheetNames(File _file)
+    throws Exception
+    {
+        String[] names = { "Cadastral Parcels of Southern Tasmania 2025",
+                           "Cadastral Parcels of Southern Tasmania 2026",
+                           "CADASTRAL PARCELS OF SOUTHERN TASMANIA",
+                           "Roads" };
+        XLSXStreamWriter writer = new XLSXStreamWriter(_file);
+        for (String name : names) {
+            writer.startSheet(name);
+        }
+        writer.close();
+        java.util.Set<String> unique = new java.util.HashSet<String>();
+        for (int i = 1; i <= writer.getSheetCount(); i++) {
+            String name = writer.getSheetName(i);
+            if ( name.length() > 31 || ! unique.add(name.toUpperCase()) ) {
+                System.out.println("Sheet " + i + " named " + name);
+                return false;
+            }
+        }
+        return true;
+    }
+}
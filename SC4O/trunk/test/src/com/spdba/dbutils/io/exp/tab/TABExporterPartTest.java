@@ -0,0 +1,110 @@
+package com.spdba.dbutils.io.exp.tab;
+
+import com.spdba.dbutils.io.GeometryProperties;
+import com.spdba.dbutils.io.exp.shp.SHPExporter;
+import com.spdba.dbutils.spatial.SDO.POLYGON_RING_ORIENTATION;
+import com.spdba.dbutils.tools.FileUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+
+import java.util.LinkedHashMap;
+
+import javax.sql.RowSetMetaData;
+
+import org.geotools.data.shapefile.shp.ShapeType;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+/**
+ * Exports points through TABExporter asking for a small part size and checks the
+ * export is not split: the one .tab file can only reference one .dbf, so parts
+ * (tabtest_001 ...) would be orphaned, and that closing the exporter completes the shapefile.
+ * <p>
+ * No database connection is needed.
+ * Usage: TABExporterPartTest [rows] [outputDirectory] [partSizeBytes]
+ */
+public class TABExporterPartTest {
+
+    public static void main(String[] args)
+    {
+        int      rows = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        String outDir = args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir");
+        long partSize = args.length > 2 ? Long.parseLong(args[2]) : 64L * 1024L;
+        try {
+            GeometryFactory gf = new GeometryFactory();
+            PointTABExporter exporter = new PointTABExporter(FileUtils.FileNameBuilder(outDir,"tabtest","shp"),rows);
+            GeometryProperties properties = new GeometryProperties();
+            properties.setShapefileType(ShapeType.POINT);
+            properties.setSRID(28355);
+            exporter.setGeometryProperties(properties);
+            exporter.setGeoColumnName("GEOM");
+            exporter.setExportMetadata(new LinkedHashMap<Integer,RowSetMetaData>());
+            exporter.setRecordIdentifier("FID");
+            exporter.setCoordSysString("CoordSys Earth Projection 8, 116, \"m\", 147, 0, 0.9996, 500000, 10000000");
+            exporter.setCommit(100);
+            exporter.setPartSize(partSize);
+
+            exporter.start("UTF-8");
+            for (int i = 0; i < rows; i++) {
+                exporter.startRow();
+                exporter.add(gf.createPoint(new Coordinate(500000.0 + i,5200000.0 + i)));
+                exporter.endRow();
+            }
+            exporter.end();
+            exporter.close();
+
+            boolean passed = true;
+            if ( exporter.getPartSize() != 0 || exporter.getPartCount() != 1 ) {
+                System.out.println("Part size " + exporter.getPartSize() + ", " + exporter.getPartCount() + " parts written");
+                passed = false;
+            } else if ( new File(outDir,SHPExporter.getPartName("tabtest",1) + ".dbf").exists() ) {
+                System.out.println("Orphaned part " + SHPExporter.getPartName("tabtest",1) + " written");
+                passed = false;
+            } else if ( new File(outDir,"tabtest.shp").length() != 100 + rows * 28L ) {
+                System.out.println("tabtest.shp is " + new File(outDir,"tabtest.shp").length() + " bytes, expected " + (100 + rows * 28L));
+                passed = false;
+            } else {
+                String dbf = null;
+                BufferedReader tab = new BufferedReader(new FileReader(new File(outDir,"tabtest.tab")));
+                try {
+                    String line;
+                    while ( (line = tab.readLine()) != null ) {
+                        if ( line.trim().startsWith("File ") ) {
+                            dbf = line.trim().substring(5).replace("\"","");
+                        }
+                    }
+                } finally {
+                    tab.close();
+                }
+                if ( ! "tabtest.dbf".equals(dbf) ) {
+                    System.out.println("tabtest.tab references " + dbf);
+                    passed = false;
+                }
+            }
+            System.out.println(passed ? "PASSED" : "FAILED");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Exposes SHPExporter's geometry list to rows built without a database */
+    private static class PointTABExporter
+    extends TABExporter
+    {
+        PointTABExporter(String _fileName,
+                         int    _rows)
+        {
+            super(null,_fileName,_rows,POLYGON_RING_ORIENTATION.INVERSE,3);
+        }
+
+        void add(Geometry _geom)
+        throws Exception
+        {
+            this.addToGeomList(_geom);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.spdba.dbutils.io.imp.gml;
+
+import com.spdba.dbutils.spatial.SDO;
+
+import java.io.StringReader;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.io.gml2.GMLReader;
+
+/**
+ * Compares the streaming GMLImporter with the JTS GMLReader on a generated
+ * FeatureCollection of square polygons, checking both read the same number
+ * of polygons and the same total area.
+ * <p>
+ * No database connection is needed.
+ * Usage: GMLImporterBenchmark [features]
+ */
+public class GMLImporterBenchmark {
+
+    public static void main(String[] args)
+    {
+        int features = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        try {
+            GeometryFactory gf = new GeometryFactory(new PrecisionModel(),SDO.SRID_NULL);
+            String  collection = featureCollection(features);
+            System.out.println("FeatureCollection of " + features + " polygons, " + collection.length() + " characters");
+
+            long start = System.nanoTime();
+            GMLImporter importer = new GMLImporter(new StringReader(collection),gf);
+            int    streamed = 0;
+            double streamedArea = 0.0;
+            while ( importer.hasNext() ) {
+                streamedArea += importer.next().getArea();
+                streamed++;
+            }
+            importer.close();
+            long streamedNanos = System.nanoTime() - start;
+
+            // GMLReader reads a single geometry so the features are presented as one MultiPolygon
+            String multiPolygon = "<gml:MultiPolygon xmlns:gml=\"http://www.opengis.net/gml\">" +
+                                  collection.substring(collection.indexOf('>') + 1,collection.lastIndexOf('<'))
+                                            .replace("featureMember","polygonMember") +
+                                  "</gml:MultiPolygon>";
+            start = System.nanoTime();
+            Geometry geom = new GMLReader().read(multiPolygon,gf);
+            long readerNanos = System.nanoTime() - start;
+
+            System.out.println("GMLImporter: " + streamed + " polygons, area " + streamedArea + ", " + (streamedNanos / 1000000) + "ms");
+            System.out.println("  GMLReader: " + geom.getNumGeometries() + " polygons, area " + geom.getArea() + ", " + (readerNanos / 1000000) + "ms");
+            System.out.println((streamed == geom.getNumGeometries() && Math.abs(streamedArea - geom.getArea()) < 1.0E-6)
+                               ? "PASSED" : "FAILED");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String featureCollection(int _features)
+    {
+        StringBuffer sb = new StringBuffer(_features * 200);
+        sb.append("<gml:FeatureCollection xmlns:gml=\"http://www.opengis.net/gml\">");
+        for (int i = 0; i < _features; i++) {
+            double x = 300000.0 + (i % 1000) * 10.0;
+            double y = 5200000.0 + (i / 1000) * 10.0;
+            sb.append("<gml:featureMember><gml:Polygon srsName=\"EPSG:28355\"><gml:outerBoundaryIs><gml:LinearRing><gml:coordinates>")
+              .append(x).append(',').append(y).append(' ')
+              .append(x).append(',').append(y + 9.5).append(' ')
+              .append(x + 9.5).append(',').append(y + 9.5).append(' ')
+              .append(x + 9.5).append(',').append(y).append(' ')
+              .append(x).append(',').append(y)
+              .append("</gml:coordinates></gml:LinearRing></gml:outerBoundaryIs></gml:Polygon></gml:featureMember>");
+        }
+        sb.append("</gml:FeatureCollection>");
+        return sb.toString();
+    }
+}
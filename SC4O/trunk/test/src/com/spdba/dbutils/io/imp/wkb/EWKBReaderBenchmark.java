@@ -0,0 +1,120 @@
+package com.spdba.dbutils.io.imp.wkb;
+
+import com.spdba.dbutils.spatial.SDO;
+
+import es.upv.jaspa.Core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import java.sql.Blob;
+import java.sql.SQLException;
+
+import javax.sql.rowset.serial.SerialBlob;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+
+/**
+ * Converts a set of EWKB BLOBs of polygons of varying size with one shared EWKBReader
+ * and, as ST_GeomFromEWKB did, by reading each BLOB a byte at a time, checking both
+ * give the same geometries and SRIDs. Also checks that a truncated polygon, line and point,
+ * each read after a longer geometry, raise an SQLException, and that a NULL BLOB gives a NULL geometry.
+ * <p>
+ * No database connection is needed.
+ * Usage: EWKBReaderBenchmark [geometries]
+ */
+public class EWKBReaderBenchmark {
+
+    public static void main(String[] args)
+    {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        try {
+            GeometryFactory gf = new GeometryFactory(new PrecisionModel(),28355);
+            Blob[]       blobs = new Blob[count];
+            long         bytes = 0;
+            for (int i = 0; i < count; i++) {
+                int vertices = 4 + (i % 200);
+                double     x = 500000.0 + (i % 100) * 100.0,
+                           y = 5200000.0 + (i / 100) * 100.0;
+                Coordinate[] ring = new Coordinate[vertices + 1];
+                for (int v = 0; v < vertices; v++) {
+                    double angle = 2.0 * Math.PI * v / vertices;
+                    ring[v] = new Coordinate(x + 40.0 * Math.cos(angle),y + 40.0 * Math.sin(angle));
+                }
+                ring[vertices] = new Coordinate(ring[0]);
+                Geometry polygon = gf.createPolygon(ring);
+                polygon.setSRID(i % 2 == 0 ? 28355 : SDO.SRID_NULL);
+                byte[] ewkb = Core.getEWKBFromJTSGeometry(polygon);
+                bytes += ewkb.length;
+                blobs[i] = new SerialBlob(ewkb);
+            }
+            System.out.println(count + " EWKB BLOBs, " + bytes + " bytes");
+
+            long start = System.nanoTime();
+            Geometry[] byteAtATime = new Geometry[count];
+            for (int i = 0; i < count; i++) {
+                InputStream inputStream = blobs[i].getBinaryStream();
+                ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+                int inByte;
+                while ((inByte = inputStream.read()) != -1) {
+                    byteArrayOutputStream.write(inByte);
+                }
+                byteAtATime[i] = Core.getJTSGeometryFromGBLOB(byteArrayOutputStream.toByteArray());
+                if (byteAtATime[i].getSRID() == SDO.SRID_NULL) {
+                    byteAtATime[i].setSRID(8311);
+                }
+            }
+            long byteNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            EWKBReader reader = new EWKBReader();
+            Geometry[] blocks = new Geometry[count];
+            for (int i = 0; i < count; i++) {
+                blocks[i] = reader.read(blobs[i],8311);
+            }
+            long blockNanos = System.nanoTime() - start;
+            System.out.println("Byte at a time: " + (byteNanos / 1000000L) + "ms; block reads into a shared " +
+                               reader.getBufferSize() + " byte buffer: " + (blockNanos / 1000000L) + "ms");
+
+            boolean passed = true;
+            for (int i = 0; i < count && passed; i++) {
+                if ( ! blocks[i].equalsExact(byteAtATime[i]) || blocks[i].getSRID() != byteAtATime[i].getSRID() ) {
+                    System.out.println("Geometry " + (i + 1) + " differs");
+                    passed = false;
+                }
+            }
+            if ( blocks[1].getSRID() != 8311 || blocks[2].getSRID() != 28355 ) {
+                System.out.println("SRIDs " + blocks[1].getSRID() + " and " + blocks[2].getSRID() + ", expected 8311 and 28355");
+                passed = false;
+            }
+            if ( reader.read(null,8311) != null ) {
+                System.out.println("NULL BLOB did not give a NULL geometry");
+                passed = false;
+            }
+            // The largest polygon, then the start of a smaller geometry
+            Geometry[] shorter = { byteAtATime[0],
+                                   gf.createLineString(new Coordinate[] { new Coordinate(500000,5200000), new Coordinate(500100,5200100),
+                                                                          new Coordinate(500200,5200000) }),
+                                   gf.createPoint(new Coordinate(500000,5200000)) };
+            for (Geometry geom : shorter) {
+                reader.read(blobs[199],SDO.SRID_NULL);
+                byte[] ewkb = Core.getEWKBFromJTSGeometry(geom);
+                byte[] truncated = new byte[ewkb.length - 8];
+                System.arraycopy(ewkb,0,truncated,0,truncated.length);
+                try {
+                    Geometry read = reader.read(new SerialBlob(truncated),SDO.SRID_NULL);
+                    System.out.println("Truncated " + geom.getGeometryType() + " read as " + read);
+                    passed = false;
+                } catch (SQLException e) {
+                    // Expected
+                }
+            }
+            System.out.println(passed ? "PASSED" : "FAILED");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.spdba.dbutils.lrs;
+
+import java.math.BigDecimal;
+
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Merges sorted events with sorted routes using DynamicSegmentation, some events
+ * being on routes that do not exist and some routes having no events, and checks
+ * each event is given its route and located where locating it against its own
+ * copy of the route (as a call per event does) puts it. Merges again a batch of
+ * events at a time, as ST_LRS_Dynamic_Segment_Fetch does. Then checks events or
+ * routes out of route id order are rejected, and times the merge against
+ * rebuilding the route for every event.
+ * <p>
+ * No database connection is needed.
+ * Usage: DynamicSegmentationTest [routes] [events]
+ */
+public class DynamicSegmentationTest {
+
+    private static boolean passed = true;
+
+    public static void main(String[] args)
+    {
+        int routeCount = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int eventCount = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        try {
+            Random random = new Random(42L);
+            // Every 7th route id has no route
+            final Map<BigDecimal,double[]> ordinates = new HashMap<BigDecimal,double[]>();
+            List<DynamicSegmentation.Route> routes = new ArrayList<DynamicSegmentation.Route>();
+            for (int r = 1; r <= routeCount; r++) {
+                if ( r % 7 == 0 ) {
+                    continue;
+                }
+                double[] route = route(random,100 + random.nextInt(900));
+                BigDecimal id = BigDecimal.valueOf(r);
+                ordinates.put(id,route);
+                routes.add(new DynamicSegmentation.Route(id,MeasuredLine.create(3302,28355,new int[] { 1,2,1 },route,3)));
+            }
+            // Events sorted by route, a few with no route id at the end
+            List<DynamicSegmentation.Event> events = new ArrayList<DynamicSegmentation.Event>();
+            int[] perRoute = new int[routeCount + 1];
+            for (int e = 0; e < eventCount - 10; e++) {
+                perRoute[1 + random.nextInt(routeCount)]++;
+            }
+            for (int r = 1; r <= routeCount; r++) {
+                double[] route = ordinates.get(BigDecimal.valueOf(r));
+                double endMeasure = route == null ? 1000.0 : route[route.length - 1];
+                for (int e = 0; e < perRoute[r]; e++) {
+                    double start = Math.round(random.nextDouble() * endMeasure * 1000.0) / 1000.0;
+                    Double   end = random.nextBoolean() ? null : Double.valueOf(Math.min(endMeasure,start + random.nextDouble() * 50.0));
+                    events.add(new DynamicSegmentation.Event(BigDecimal.valueOf(r),String.valueOf(r),r + "." + e,
+                                                             Double.valueOf(start),end,random.nextGaussian()));
+                }
+            }
+            for (int e = 0; e < 10; e++) {
+                events.add(new DynamicSegmentation.Event(null,null,"null." + e,Double.valueOf(1.0),null,0.0));
+            }
+
+            // Merge, checking each event against its own copy of its route
+            final int[] counts = new int[3];  // located, without route, wrong
+            long start = System.nanoTime();
+            DynamicSegmentation.segment(cursor(events),cursor(routes),new DynamicSegmentation.Locator() {
+                public void locate(DynamicSegmentation.Event _event, MeasuredLine _route) throws SQLException {
+                    double[] route = _event.routeKey == null ? null : ordinates.get(_event.routeKey);
+                    if ( route == null ) {
+                        counts[_route == null ? 1 : 2]++;
+                        return;
+                    }
+                    MeasuredLine own = MeasuredLine.create(3302,28355,new int[] { 1,2,1 },route,3);
+                    boolean same = _route != null && ( _event.endMeasure == null
+                                   ? equal(_route.locate(_event.startMeasure.doubleValue(),_event.offset),
+                                           own.locate(_event.startMeasure.doubleValue(),_event.offset))
+                                   : equal(_route.locateBetween(_event.startMeasure.doubleValue(),_event.endMeasure.doubleValue(),_event.offset),
+                                           own.locateBetween(_event.startMeasure.doubleValue(),_event.endMeasure.doubleValue(),_event.offset)) );
+                    counts[same ? 0 : 2]++;
+                }
+            });
+            long checkedNanos = System.nanoTime() - start;
+            int withoutRoute = 10;
+            for (int r = 7; r <= routeCount; r += 7) {
+                withoutRoute += perRoute[r];
+            }
+            System.out.println(counts[0] + " events located, " + counts[1] + " without a route, " + counts[2] + " wrong (" + (checkedNanos / 1000000L) + "ms)");
+            passed = passed && counts[2] == 0 && counts[1] == withoutRoute && counts[0] + counts[1] == events.size();
+
+            // A batch at a time, as ST_LRS_Dynamic_Segment_Fetch merges
+            final int[] batched = new int[2];  // with route, without
+            DynamicSegmentation.Merge merge = new DynamicSegmentation.Merge(cursor(events),cursor(routes));
+            DynamicSegmentation.Locator counter = new DynamicSegmentation.Locator() {
+                public void locate(DynamicSegmentation.Event _event, MeasuredLine _route) {
+                    batched[_route == null ? 1 : 0]++;
+                }
+            };
+            int batches = 0;
+            boolean more = true;
+            while ( more ) {
+                int batch = 0;
+                while ( batch < 1000 && (more = merge.next(counter)) ) {
+                    batch++;
+                }
+                batches += batch > 0 ? 1 : 0;
+            }
+            if ( batched[0] != counts[0] || batched[1] != counts[1] || batches != (events.size() + 999) / 1000 ) {
+                System.out.println("Batched: " + batched[0] + " events located, " + batched[1] + " without a route in " + batches + " batches");
+                passed = false;
+            }
+
+            // Out of order
+            List<DynamicSegmentation.Event> unordered = new ArrayList<DynamicSegmentation.Event>(events.subList(0,100));
+            unordered.add(events.get(0));
+            passed = passed && rejected("Events out of order",cursor(unordered),cursor(routes));
+            List<DynamicSegmentation.Route> unorderedRoutes = new ArrayList<DynamicSegmentation.Route>(routes);
+            unorderedRoutes.add(1,routes.get(5));
+            passed = passed && rejected("Routes out of order",cursor(events),cursor(unorderedRoutes));
+
+            // Merged against a route built for each event
+            final int[] located = new int[1];
+            start = System.nanoTime();
+            DynamicSegmentation.segment(cursor(events),cursor(routes),new DynamicSegmentation.Locator() {
+                public void locate(DynamicSegmentation.Event _event, MeasuredLine _route) throws SQLException {
+                    if ( _route != null ) {
+                        located[0] += DynamicSegmentationTest.locate(_route,_event) ? 1 : 0;
+                    }
+                }
+            });
+            long mergedNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            int perEvent = 0;
+            for (DynamicSegmentation.Event event : events) {
+                double[] route = event.routeKey == null ? null : ordinates.get(event.routeKey);
+                if ( route != null ) {
+                    perEvent += locate(MeasuredLine.create(3302,28355,new int[] { 1,2,1 },route,3),event) ? 1 : 0;
+                }
+            }
+            long perEventNanos = System.nanoTime() - start;
+            System.out.println(events.size() + " events on " + routes.size() + " routes: merged in " + (mergedNanos / 1000000L) + "ms, " +
+                               "route built per event in " + (perEventNanos / 1000000L) + "ms");
+            passed = passed && located[0] == perEvent;
+            System.out.println(passed ? "PASSED" : "FAILED");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * A winding 3302 route whose measures are its length
+     */
+    private static double[] route(Random _random, int _vertices) {
+        double[] route = new double[_vertices * 3];
+        double x = _random.nextDouble() * 100000.0, y = _random.nextDouble() * 100000.0, m = 0, angle = 0;
+        for (int v = 0; v < _vertices; v++) {
+            route[v * 3] = x; route[v * 3 + 1] = y; route[v * 3 + 2] = m;
+            angle += _random.nextGaussian() * 0.3;
+            double step = Math.round((1.0 + _random.nextDouble() * 20.0) * 1000.0) / 1000.0;
+            x += Math.cos(angle) * step;
+            y += Math.sin(angle) * step;
+            m += step;
+        }
+        return route;
+    }
+
+    private static boolean locate(MeasuredLine              _route,
+                                  DynamicSegmentation.Event _event)
+    {
+        if ( _event.endMeasure == null ) {
+            return _route.locate(_event.startMeasure.doubleValue(),_event.offset) != null;
+        }
+        return _route.locateBetween(_event.startMeasure.doubleValue(),_event.endMeasure.doubleValue(),_event.offset).size() > 0;
+    }
+
+    private static boolean rejected(String                                  _name,
+                                    DynamicSegmentation.Cursor<DynamicSegmentation.Event> _events,
+                                    DynamicSegmentation.Cursor<DynamicSegmentation.Route> _routes)
+    {
+        try {
+            DynamicSegmentation.segment(_events,_routes,new DynamicSegmentation.Locator() {
+                public void locate(DynamicSegmentation.Event _event, MeasuredLine _route) { }
+            });
+        } catch (SQLException sqle) {
+            return true;
+        }
+        System.out.println(_name + ": not rejected");
+        return false;
+    }
+
+    private static <T> DynamicSegmentation.Cursor<T> cursor(List<T> _rows) {
+        final Iterator<T> iterator = _rows.iterator();
+        return new DynamicSegmentation.Cursor<T>() {
+            public T next() {
+                return iterator.hasNext() ? iterator.next() : null;
+            }
+        };
+    }
+
+    private static boolean equal(double[] _first, double[] _second) {
+        if ( _first == null || _second == null ) {
+            return _first == _second;
+        }
+        if ( _first.length != _second.length ) {
+            return false;
+        }
+        for (int i = 0; i < _first.length; i++) {
+            if ( _first[i] != _second[i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equal(List<double[]> _first, List<double[]> _second) {
+        if ( _first.size() != _second.size() ) {
+            return false;
+        }
+        for (int i = 0; i < _first.size(); i++) {
+            if ( ! equal(_first.get(i),_second.get(i)) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
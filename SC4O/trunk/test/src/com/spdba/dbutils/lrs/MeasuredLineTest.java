@@ -0,0 +1,160 @@
+package com.spdba.dbutils.lrs;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks MeasuredLine against hand worked examples (an L shaped 3302 route, its
+ * unmeasured 2D form and a two part 3306 route), including the two parts
+ * ST_LRS_Split extracts, then locates random measures on a long route, checking
+ * each against a walk along every segment, finds the measures of some of its
+ * vertices, and times locating and finding many measures against the one route.
+ * <p>
+ * No database connection is needed.
+ * Usage: MeasuredLineTest [vertices] [measures]
+ */
+public class MeasuredLineTest {
+
+    private static boolean passed = true;
+
+    public static void main(String[] args)
+    {
+        int vertices = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int    count = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        try {
+            // (0,0) east to (10,0) then north to (10,10), measured 0..20
+            MeasuredLine line = MeasuredLine.create(3302,28355,new int[] { 1,2,1 },
+                                                    new double[] { 0,0,0, 10,0,10, 10,10,20 },3);
+            check("Start",             line.locate(0,0),        new double[] { 0,0,0 });
+            check("Along first",       line.locate(5,0),        new double[] { 5,0,5 });
+            check("Offset right",      line.locate(5,2),        new double[] { 5,-2,5 });
+            check("Offset left",       line.locate(5,-2),       new double[] { 5,2,5 });
+            check("Corner offset",     line.locate(10,-1),      new double[] { 10 - Math.sqrt(0.5),Math.sqrt(0.5),10 });
+            check("End offset",        line.locate(20,1),       new double[] { 11,10,20 });
+            check("Off line",          line.locate(21,0),       null);
+            check("Project",           line.projectPoint(12,4), new double[] { 10,4,14 });
+            check("Find measure",      new double[] { line.findMeasure(3,-1) }, new double[] { 3 });
+            List<double[]> between = line.locateBetween(5,15,0);
+            check("Between",           between.size() == 1 ? between.get(0) : null,
+                                       new double[] { 5,0,5, 10,0,10, 10,5,15 });
+            between = line.locateBetween(-5,5,1);
+            check("Between from start",between.size() == 1 ? between.get(0) : null,
+                                       new double[] { 0,-1,0, 5,-1,5 });
+            // Split at 12 as LRS.ST_LRS_Split: the parts meet at the split point
+            List<double[]> before = line.locateBetween(0,12,0),
+                            after = line.locateBetween(12,20,0);
+            check("Split before",      before.size() == 1 ? before.get(0) : null,
+                                       new double[] { 0,0,0, 10,0,10, 10,2,12 });
+            check("Split after",       after.size() == 1 ? after.get(0) : null,
+                                       new double[] { 10,2,12, 10,10,20 });
+            check("Scale",             line.scaleMeasures(100,140,5),
+                                       new double[] { 0,0,105, 10,0,125, 10,10,145 });
+
+            // Same route, not measured: measures are lengths, added to located points
+            line = MeasuredLine.create(2002,28355,new int[] { 1,2,1 },new double[] { 0,0, 10,0, 10,10 },3);
+            check("2D locate",         line.locate(12.5,0),     new double[] { 10,2.5,12.5 });
+            check("2D project",        line.projectPoint(12,4), new double[] { 10,4 });
+
+            // Two parts, the second continuing the measures of the first
+            line = MeasuredLine.create(3306,28355,new int[] { 1,2,1, 7,2,1 },
+                                       new double[] { 0,0,0, 10,0,10, 20,0,10, 30,0,20 },3);
+            check("Second part",       line.locate(15,0),       new double[] { 25,0,15 });
+            check("Part end",          line.locate(10,0),       new double[] { 10,0,10 });
+            between = line.locateBetween(5,15,0);
+            check("Between parts",     between.size() == 2 ? concat(between.get(0),between.get(1)) : null,
+                                       new double[] { 5,0,5, 10,0,10, 20,0,10, 25,0,15 });
+
+            // A long winding route with irregular measures
+            Random  random = new Random(42L);
+            double[] route = new double[vertices * 3];
+            double    x = 0, y = 0, m = 0, angle = 0;
+            for (int v = 0; v < vertices; v++) {
+                route[v * 3] = x; route[v * 3 + 1] = y; route[v * 3 + 2] = m;
+                angle += random.nextGaussian() * 0.3;
+                double step = 1.0 + random.nextDouble() * 20.0;
+                x += Math.cos(angle) * step;
+                y += Math.sin(angle) * step;
+                m = Math.round((m + step * (0.5 + random.nextDouble())) * 1000.0) / 1000.0;
+            }
+            line = MeasuredLine.create(3302,28355,new int[] { 1,2,1 },route,3);
+            double[] measures = new double[count];
+            for (int i = 0; i < count; i++) {
+                measures[i] = Math.round(random.nextDouble() * m * 1000.0) / 1000.0;
+            }
+            for (int i = 0; i < Math.min(count,200); i++) {
+                check("Measure " + measures[i],line.locate(measures[i],0),walk(route,measures[i]));
+            }
+            // Projection onto the long route uses an index of its segments
+            for (int v = 0; v < vertices; v += Math.max(1,vertices / 200)) {
+                check("Find measure " + v,new double[] { line.findMeasure(route[v * 3],route[v * 3 + 1]) },
+                                          new double[] { route[v * 3 + 2] });
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                line.locate(measures[i],1.0);
+            }
+            long locateNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < 1000; i++) {
+                line.findMeasure(route[i * 3 * (vertices / 1000)] + 0.5,route[i * 3 * (vertices / 1000) + 1] - 0.5);
+            }
+            long findNanos = System.nanoTime() - start;
+            System.out.println(count + " measures located on a " + vertices + " vertex route in " + (locateNanos / 1000000L) + "ms; " +
+                               "1000 measures found in " + (findNanos / 1000000L) + "ms");
+            System.out.println(passed ? "PASSED" : "FAILED");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Locates a measure by walking every segment of a 3302 route in turn.
+     */
+    private static double[] walk(double[] _route,
+                                 double   _measure)
+    {
+        for (int v = 0; v < _route.length / 3 - 1; v++) {
+            double m1 = _route[v * 3 + 2], m2 = _route[v * 3 + 5];
+            if ( _measure >= m1 && _measure <= m2 ) {
+                double t = m2 == m1 ? 0.0 : (_measure - m1) / (m2 - m1);
+                return new double[] { _route[v * 3] + t * (_route[v * 3 + 3] - _route[v * 3]),
+                                      _route[v * 3 + 1] + t * (_route[v * 3 + 4] - _route[v * 3 + 1]),
+                                      _measure };
+            }
+        }
+        return null;
+    }
+
+    private static double[] concat(double[] _first, double[] _second) {
+        double[] all = new double[_first.length + _second.length];
+        System.arraycopy(_first,0,all,0,_first.length);
+        System.arraycopy(_second,0,all,_first.length,_second.length);
+        return all;
+    }
+
+    private static void check(String   _name,
+                              double[] _actual,
+                              double[] _expected)
+    {
+        boolean same = (_actual == null) == (_expected == null) &&
+                       ( _actual == null || _actual.length == _expected.length );
+        for (int i = 0; same && _actual != null && i < _actual.length; i++) {
+            same = Math.abs(_actual[i] - _expected[i]) <= 0.0015;
+        }
+        if ( ! same ) {
+            System.out.println(_name + ": " + toString(_actual) + " expected " + toString(_expected));
+            passed = false;
+        }
+    }
+
+    private static String toString(double[] _ordinates) {
+        if ( _ordinates == null ) {
+            return "NULL";
+        }
+        StringBuffer sb = new StringBuffer("(");
+        for (int i = 0; i < _ordinates.length; i++) {
+            sb.append(i == 0 ? "" : ",").append(_ordinates[i]);
+        }
+        return sb.append(")").toString();
+    }
+}
@@ -0,0 +1,111 @@
+package com.spdba.dbutils.ora.io;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.sql.SQLException;
+
+import oracle.jdbc.OracleConnection;
+
+import oracle.sql.ArrayDescriptor;
+import oracle.sql.StructDescriptor;
+
+import org.locationtech.jts.io.oracle.OraDescriptorCache;
+
+/**
+ * Micro-benchmark of the descriptor lookups made by OraWriter.write() for each geometry.
+ * <p>
+ * A stub descriptor factory simulates the round trip Oracle makes to describe a type,
+ * and a stub connection stands in for the database, so no instance is needed.
+ * Each "write" acquires the SDO_ELEM_INFO_ARRAY, SDO_ORDINATE_ARRAY and SDO_GEOMETRY
+ * descriptors exactly as OraUtil.toARRAY/toSTRUCT do.
+ */
+public class DescriptorCacheBenchmark {
+
+    private static final String TYPE_GEOMETRY        = "MDSYS.SDO_GEOMETRY";
+    private static final String TYPE_ELEM_INFO_ARRAY = "MDSYS.SDO_ELEM_INFO_ARRAY";
+    private static final String TYPE_ORDINATE_ARRAY  = "MDSYS.SDO_ORDINATE_ARRAY";
+
+    private static long simulatedRoundTripNanos = 50000; // 50 microseconds
+    private static long descriptorsCreated = 0;
+
+    public static void main(String[] args)
+    {
+        int geometries = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        if ( args.length > 1 ) {
+            simulatedRoundTripNanos = Long.parseLong(args[1]);
+        }
+        try {
+            OracleConnection conn = stubConnection();
+            OraDescriptorCache.setDescriptorFactory(new StubDescriptorFactory());
+
+            // Warm up
+            OraDescriptorCache.setEnabled(false); run(conn,geometries/10);
+            OraDescriptorCache.setEnabled(true);  run(conn,geometries/10);
+
+            OraDescriptorCache.setEnabled(false);
+            descriptorsCreated = 0;
+            long uncached = run(conn,geometries);
+            System.out.println("Uncached: " + (uncached / geometries) + " ns/geometry (" + descriptorsCreated + " descriptors created)");
+
+            OraDescriptorCache.setEnabled(true);
+            descriptorsCreated = 0;
+            long cached = run(conn,geometries);
+            System.out.println("  Cached: " + (cached / geometries) + " ns/geometry (" + descriptorsCreated + " descriptors created, " +
+                               OraDescriptorCache.getHits() + " hits, " + OraDescriptorCache.getMisses() + " misses)");
+            System.out.println(" Speedup: " + ((double)uncached / (double)Math.max(cached,1)) + "x");
+        } catch (SQLException sqle) {
+            sqle.printStackTrace();
+        } finally {
+            OraDescriptorCache.setDescriptorFactory(null);
+        }
+    }
+
+    private static long run(OracleConnection _conn, int _geometries)
+    throws SQLException
+    {
+        long start = System.nanoTime();
+        for (int i = 0; i < _geometries; i++) {
+            OraDescriptorCache.getArrayDescriptor(TYPE_ELEM_INFO_ARRAY, _conn);
+            OraDescriptorCache.getArrayDescriptor(TYPE_ORDINATE_ARRAY,  _conn);
+            OraDescriptorCache.getStructDescriptor(TYPE_GEOMETRY,        _conn);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void roundTrip() {
+        descriptorsCreated++;
+        long end = System.nanoTime() + simulatedRoundTripNanos;
+        while (System.nanoTime() < end) { ; }
+    }
+
+    private static class StubDescriptorFactory
+                 implements OraDescriptorCache.DescriptorFactory
+    {
+        public ArrayDescriptor createArrayDescriptor(String _dataType, OracleConnection _conn) {
+            roundTrip();
+            return null;
+        }
+        public StructDescriptor createStructDescriptor(String _dataType, OracleConnection _conn) {
+            roundTrip();
+            return null;
+        }
+    }
+
+    private static OracleConnection stubConnection() {
+        return (OracleConnection)Proxy.newProxyInstance(
+                   OracleConnection.class.getClassLoader(),
+                   new Class[] { OracleConnection.class },
+                   new InvocationHandler() {
+                       public Object invoke(Object _proxy, Method _method, Object[] _args) {
+                           String name = _method.getName();
+                           if ( name.equals("isClosed") ) return Boolean.FALSE;
+                           if ( name.equals("hashCode") ) return Integer.valueOf(System.identityHashCode(_proxy));
+                           if ( name.equals("equals")   ) return Boolean.valueOf(_proxy == _args[0]);
+                           if ( name.equals("toString") ) return "StubOracleConnection";
+                           return null;
+                       }
+                   });
+    }
+}